@@ -23,6 +23,7 @@ import org.apache.manifoldcf.agents.interfaces.*;
 import org.apache.manifoldcf.authorities.interfaces.*;
 import org.apache.manifoldcf.authorities.system.Logging;
 import org.apache.manifoldcf.authorities.system.ManifoldCF;
+import org.apache.manifoldcf.connectorcommon.ldap.*;
 
 import java.io.*;
 import java.util.*;
@@ -53,15 +54,12 @@ public class ActiveDirectoryAuthority extends org.apache.manifoldcf.authorities.
   private long responseLifetime = 60000L;
   private int LRUsize = 1000;
 
-  /** Session information for all DC's we talk with. */
-  private Map<String,DCSessionInfo> sessionInfo = null;
-  
   /** Cache manager. */
   private ICacheManager cacheManager = null;
   
   
-  /** The length of time in milliseconds that the connection remains idle before expiring.  Currently 5 minutes. */
-  private static final long expirationInterval = 300000L;
+  /** Bound contexts for all DC's we talk with, shared by all instances of this connector in the process. */
+  private static final LDAPContextPool contextPool = new LDAPContextPool();
   
   /** Constructor.
   */
@@ -96,9 +94,6 @@ public class ActiveDirectoryAuthority extends org.apache.manifoldcf.authorities.
   {
     super.connect(configParams);
     
-    // Allocate the session data, currently empty
-    sessionInfo = new HashMap<String,DCSessionInfo>();
-    
     // Set up the DC param set, and the rules
     dCRules = new ArrayList<DCRule>();
     dCConnectionParameters = new HashMap<String,DCConnectionParameters>();
@@ -170,47 +165,95 @@ public class ActiveDirectoryAuthority extends org.apache.manifoldcf.authorities.
   {
     // Set up the basic session...
     getSessionParameters();
-    // Clear the DC session info, so we're forced to redo it
-    for (Map.Entry<String,DCSessionInfo> sessionEntry : sessionInfo.entrySet())
-    {
-      sessionEntry.getValue().closeConnection();
-    }
-    // Loop through all domain controllers and attempt to establish a session with each one.
+    // Loop through all domain controllers and attempt to establish a fresh session with each one.
     for (String domainController : dCConnectionParameters.keySet())
     {
-      createDCSession(domainController);
+      contextPool.flush(createPoolKey(domainController,dCConnectionParameters.get(domainController)));
+      contextPool.release(grabDCSession(domainController),this);
     }
     return super.check();
   }
 
-  /** Create or lookup a session for a domain controller.
+  /** Grab a pooled session for a domain controller.  The session must be released or
+  * invalidated when done.
   */
-  protected LdapContext createDCSession(String domainController)
+  protected LDAPSession grabDCSession(final String domainController)
     throws ManifoldCFException
   {
     getSessionParameters();
-    DCConnectionParameters parms = dCConnectionParameters.get(domainController);
-    // Find the session in the hash, if it exists
-    DCSessionInfo session = sessionInfo.get(domainController);
-    if (session == null)
+    final DCConnectionParameters parms = dCConnectionParameters.get(domainController);
+    return contextPool.grab(createPoolKey(domainController,parms),this,new LDAPContextPool.SessionFactory()
+      {
+        @Override
+        public LDAPSession createSession()
+          throws ManifoldCFException
+        {
+          return createDCSession(domainController,parms);
+        }
+      });
+  }
+  
+  /** Build the pool key for a domain controller. */
+  protected static String createPoolKey(String domainController, DCConnectionParameters params)
+    throws ManifoldCFException
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append(domainController).append("|").append(params.getAuthentication()).append("|").append(params.getUserName())
+      .append("|").append(params.getPassword() == null ? "" : ManifoldCF.hash(params.getPassword()));
+    return sb.toString();
+  }
+  
+  /** Bind a new session to a domain controller. */
+  protected static LDAPSession createDCSession(String domainControllerName, DCConnectionParameters params)
+    throws ManifoldCFException
+  {
+    String authentication = params.getAuthentication();
+    String userName = params.getUserName();
+    String password = params.getPassword();
+      
+    // Calculate the ldap url first
+    String ldapURL = "ldap://" + domainControllerName + ":389";
+          
+    Hashtable env = new Hashtable();
+    env.put(Context.INITIAL_CONTEXT_FACTORY,"com.sun.jndi.ldap.LdapCtxFactory");
+    env.put(Context.SECURITY_AUTHENTICATION,authentication);      
+    env.put(Context.SECURITY_PRINCIPAL,userName);
+    env.put(Context.SECURITY_CREDENTIALS,password);
+                                    
+    //connect to my domain controller
+    env.put(Context.PROVIDER_URL,ldapURL);
+                    
+    //specify attributes to be returned in binary format
+    env.put("java.naming.ldap.attributes.binary","tokenGroups objectSid");
+     
+    // Now, try the connection...
+    try
+    {
+      return new LDAPSession(new InitialLdapContext(env,null),null);
+    }
+    catch (AuthenticationException e)
+    {
+      // This means we couldn't authenticate!
+      throw new ManifoldCFException("Authentication problem authenticating admin user '"+userName+"': "+e.getMessage(),e);
+    }
+    catch (CommunicationException e)
     {
-      session = new DCSessionInfo();
-      sessionInfo.put(domainController,session);
+      // This means we couldn't connect, most likely
+      throw new ManifoldCFException("Couldn't communicate with domain controller '"+domainControllerName+"': "+e.getMessage(),e);
+    }
+    catch (NamingException e)
+    {
+      throw new ManifoldCFException(e.getMessage(),e);
     }
-    return session.getSession(domainController,parms);
   }
   
-  /** Poll.  The connection should be closed if it has been idle for too long.
+  /** Poll.  Pooled connections are closed if they have been idle for too long.
   */
   @Override
   public void poll()
     throws ManifoldCFException
   {
-    long currentTime = System.currentTimeMillis();
-    for (Map.Entry<String,DCSessionInfo> sessionEntry : sessionInfo.entrySet())
-    {
-      sessionEntry.getValue().closeIfExpired(currentTime);
-    }
+    contextPool.expireIdle(System.currentTimeMillis());
     super.poll();
   }
   
@@ -221,12 +264,8 @@ public class ActiveDirectoryAuthority extends org.apache.manifoldcf.authorities.
   @Override
   public boolean isConnected()
   {
-    for (Map.Entry<String,DCSessionInfo> sessionEntry : sessionInfo.entrySet())
-    {
-      if (sessionEntry.getValue().isOpen())
-        return true;
-    }
-    return false;
+    // Idle pooled connections are owned by the instance that last used them, so they count against the connection limit
+    return contextPool.isOwner(this);
   }
 
   /** Close the connection.  Call this before discarding the repository connector.
@@ -235,15 +274,9 @@ public class ActiveDirectoryAuthority extends org.apache.manifoldcf.authorities.
   public void disconnect()
     throws ManifoldCFException
   {
+    contextPool.closeOwned(this);
     hasSessionParameters = false;
 
-    // Close all connections
-    for (Map.Entry<String,DCSessionInfo> sessionEntry : sessionInfo.entrySet())
-    {
-      sessionEntry.getValue().closeConnection();
-    }
-    sessionInfo = null;
-    
     cacheLifetime = null;
     cacheLRUsize = null;
     super.disconnect();
@@ -359,10 +392,11 @@ public class ActiveDirectoryAuthority extends org.apache.manifoldcf.authorities.
       j = k+1;
     }
 
+    // Establish a session with the selected domain controller
+    LDAPSession session = grabDCSession(domainController);
     try
     {
-      // Establish a session with the selected domain controller
-      LdapContext ctx = createDCSession(domainController);  
+      LdapContext ctx = session.getContext();
     
       //Get DistinguishedName (for this method we are using DomainPart as a searchBase ie: DC=qa-ad-76,DC=metacarta,DC=com")
       String searchBase = getDistinguishedName(ctx, userPart, domainsb.toString(), userACLsUsername);
@@ -442,8 +476,21 @@ public class ActiveDirectoryAuthority extends org.apache.manifoldcf.authorities.
     catch (NamingException e)
     {
       // Unreachable
+      contextPool.invalidate(session);
+      session = null;
       return RESPONSE_UNREACHABLE;
     }
+    catch (ManifoldCFException e)
+    {
+      contextPool.invalidate(session);
+      session = null;
+      throw e;
+    }
+    finally
+    {
+      if (session != null)
+        contextPool.release(session,this);
+    }
   }
 
   /** Obtain the default access tokens for a given user name.
@@ -807,137 +854,6 @@ public class ActiveDirectoryAuthority extends org.apache.manifoldcf.authorities.
     return strSID.toString();
   }
 
-  /** Class representing the session information for a specific domain controller
-  * connection.
-  */
-  protected static class DCSessionInfo
-  {
-    /** The initialized LDAP context (which functions as a session) */
-    private LdapContext ctx = null;
-    /** The time of last access to this ctx object */
-    private long expiration = -1L;
-    
-    public DCSessionInfo()
-    {
-    }
-
-    /** Initialize the session. */
-    public LdapContext getSession(String domainControllerName, DCConnectionParameters params)
-      throws ManifoldCFException
-    {
-      String authentication = params.getAuthentication();
-      String userName = params.getUserName();
-      String password = params.getPassword();
-      
-      while (true)
-      {
-        if (ctx == null)
-        {
-          // Calculate the ldap url first
-          String ldapURL = "ldap://" + domainControllerName + ":389";
-          
-          Hashtable env = new Hashtable();
-          env.put(Context.INITIAL_CONTEXT_FACTORY,"com.sun.jndi.ldap.LdapCtxFactory");
-          env.put(Context.SECURITY_AUTHENTICATION,authentication);      
-          env.put(Context.SECURITY_PRINCIPAL,userName);
-          env.put(Context.SECURITY_CREDENTIALS,password);
-                                    
-          //connect to my domain controller
-          env.put(Context.PROVIDER_URL,ldapURL);
-                    
-          //specify attributes to be returned in binary format
-          env.put("java.naming.ldap.attributes.binary","tokenGroups objectSid");
-     
-          // Now, try the connection...
-          try
-          {
-            ctx = new InitialLdapContext(env,null);
-            // If successful, break
-            break;
-          }
-          catch (AuthenticationException e)
-          {
-            // This means we couldn't authenticate!
-            throw new ManifoldCFException("Authentication problem authenticating admin user '"+userName+"': "+e.getMessage(),e);
-          }
-          catch (CommunicationException e)
-          {
-            // This means we couldn't connect, most likely
-            throw new ManifoldCFException("Couldn't communicate with domain controller '"+domainControllerName+"': "+e.getMessage(),e);
-          }
-          catch (NamingException e)
-          {
-            throw new ManifoldCFException(e.getMessage(),e);
-          }
-        }
-        else
-        {
-          // Attempt to reconnect.  I *hope* this is efficient and doesn't do unnecessary work.
-          try
-          {
-            ctx.reconnect(null);
-            // Break on apparent success
-            break;
-          }
-          catch (AuthenticationException e)
-          {
-            // This means we couldn't authenticate!  Log it and retry creating a whole new context.
-            Logging.authorityConnectors.warn("Reconnect: Authentication problem authenticating admin user '"+userName+"': "+e.getMessage(),e);
-          }
-          catch (CommunicationException e)
-          {
-            // This means we couldn't connect, most likely.  Log it and retry creating a whole new context.
-            Logging.authorityConnectors.warn("Reconnect: Couldn't communicate with domain controller '"+domainControllerName+"': "+e.getMessage(),e);
-          }
-          catch (NamingException e)
-          {
-            Logging.authorityConnectors.warn("Reconnect: Naming exception: "+e.getMessage(),e);
-          }
-          
-          // So we have no chance of leaking resources, attempt to close the context.
-          closeConnection();
-          // Loop back around to try our luck with a fresh connection.
-
-        }
-      }
-      
-      // Set the expiration time anew
-      expiration = System.currentTimeMillis() + expirationInterval;
-      return ctx;
-    }
-    
-    /** Close the connection handle. */
-    protected void closeConnection()
-    {
-      if (ctx != null)
-      {
-        try
-        {
-          ctx.close();
-        }
-        catch (NamingException e)
-        {
-          // Eat this error
-        }
-        ctx = null;
-        expiration = -1L;
-      }
-    }
-
-    /** Close connection if it has expired. */
-    protected void closeIfExpired(long currentTime)
-    {
-      if (expiration != -1L && currentTime > expiration)
-        closeConnection();
-    }
-
-    /** Check if open */
-    protected boolean isOpen()
-    {
-      return ctx != null;
-    }
-  }
-
   /** Class describing a domain suffix and corresponding domain controller name rule.
   */
   protected static class DCRule
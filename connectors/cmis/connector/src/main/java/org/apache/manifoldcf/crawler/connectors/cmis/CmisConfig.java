@@ -52,6 +52,12 @@ public class CmisConfig {
   /** CMIS Query */
   public static final String CMIS_QUERY_PARAM = "cmisQuery";
   
+  /** Number of items to ask for in each page of seeding results */
+  public static final String MAX_ITEMS_PER_PAGE_PARAM = "maxItemsPerPage";
+  
+  /** Seed minimal crawls from the repository change log */
+  public static final String CHANGE_LOG_PARAM = "changeLog";
+  
   //default values
   public static final String USERNAME_DEFAULT_VALUE = "dummyuser";
   public static final String PASSWORD_DEFAULT_VALUE = "dummysecrect";
@@ -61,6 +67,8 @@ public class CmisConfig {
   public static final String BINDING_DEFAULT_VALUE = "atom";
   public static final String PATH_DEFAULT_VALUE = "/chemistry-opencmis-server-inmemory/atom";
   public static final String REPOSITORY_ID_DEFAULT_VALUE = StringUtils.EMPTY;
+  public static final String MAX_ITEMS_PER_PAGE_DEFAULT_VALUE = "500";
+  public static final String CHANGE_LOG_DEFAULT_VALUE = "false";
   public static final String BINDING_ATOM_VALUE = "atom";
   public static final String BINDING_WS_VALUE = "ws";
   
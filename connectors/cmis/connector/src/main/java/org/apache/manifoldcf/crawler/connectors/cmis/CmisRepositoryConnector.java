@@ -26,17 +26,25 @@ import java.math.BigInteger;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.chemistry.opencmis.client.api.CmisObject;
 import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.ChangeEvent;
+import org.apache.chemistry.opencmis.client.api.ChangeEvents;
 import org.apache.chemistry.opencmis.client.api.Folder;
 import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
 import org.apache.chemistry.opencmis.client.api.Property;
 import org.apache.chemistry.opencmis.client.api.QueryResult;
 import org.apache.chemistry.opencmis.client.api.Repository;
@@ -45,9 +53,15 @@ import org.apache.chemistry.opencmis.client.api.SessionFactory;
 import org.apache.chemistry.opencmis.client.runtime.SessionFactoryImpl;
 import org.apache.chemistry.opencmis.commons.PropertyIds;
 import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.data.RepositoryCapabilities;
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
 import org.apache.chemistry.opencmis.commons.enums.BindingType;
+import org.apache.chemistry.opencmis.commons.enums.CapabilityChanges;
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
+import org.apache.chemistry.opencmis.commons.enums.IncludeRelationships;
 import org.apache.chemistry.opencmis.commons.enums.PropertyType;
 import org.apache.chemistry.opencmis.commons.exceptions.CmisConnectionException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisInvalidArgumentException;
 import org.apache.chemistry.opencmis.commons.exceptions.CmisPermissionDeniedException;
 import org.apache.chemistry.opencmis.commons.impl.Constants;
 import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
@@ -56,6 +70,7 @@ import org.apache.commons.io.input.NullInputStream;
 import org.apache.commons.lang.StringUtils;
 import org.apache.manifoldcf.agents.interfaces.RepositoryDocument;
 import org.apache.manifoldcf.agents.interfaces.ServiceInterruption;
+import org.apache.manifoldcf.connectorcommon.common.XThreadStringBuffer;
 import org.apache.manifoldcf.core.interfaces.ConfigParams;
 import org.apache.manifoldcf.core.interfaces.Specification;
 import org.apache.manifoldcf.core.interfaces.IHTTPOutput;
@@ -79,6 +94,12 @@ public class CmisRepositoryConnector extends BaseRepositoryConnector {
 
   private static final String JOB_STARTPOINT_NODE_TYPE = "startpoint";
 
+  /** Seeding version prefix for a change log token */
+  private static final String CHANGE_LOG_MARKER = "C";
+
+  /** The maximum number of query result pages to fetch at once while seeding */
+  private static final int MAX_SEEDING_THREADS = 4;
+
   protected final static String ACTIVITY_READ = "read document";
   protected static final String RELATIONSHIP_CHILD = "child";
 
@@ -137,6 +158,12 @@ public class CmisRepositoryConnector extends BaseRepositoryConnector {
   protected String repositoryId = null;
   protected String binding = null;
 
+  /** Number of items to ask for in each page of seeding results */
+  protected int maxItemsPerPage = Integer.parseInt(CmisConfig.MAX_ITEMS_PER_PAGE_DEFAULT_VALUE);
+
+  /** True if minimal crawls are seeded from the change log */
+  protected boolean useChangeLog = false;
+
   protected SessionFactory factory = SessionFactoryImpl.newInstance();
   protected Map<String, String> parameters = new HashMap<String, String>();
 
@@ -380,6 +407,19 @@ public class CmisRepositoryConnector extends BaseRepositoryConnector {
     binding = params.getParameter(CmisConfig.BINDING_PARAM);
     if (StringUtils.isNotEmpty(params.getParameter(CmisConfig.REPOSITORY_ID_PARAM)))
       repositoryId = params.getParameter(CmisConfig.REPOSITORY_ID_PARAM);
+
+    maxItemsPerPage = Integer.parseInt(CmisConfig.MAX_ITEMS_PER_PAGE_DEFAULT_VALUE);
+    String maxItemsPerPageString = params.getParameter(CmisConfig.MAX_ITEMS_PER_PAGE_PARAM);
+    if (StringUtils.isNotEmpty(maxItemsPerPageString)) {
+      try {
+        maxItemsPerPage = Integer.parseInt(maxItemsPerPageString);
+      } catch (NumberFormatException e) {
+        Logging.connectors.warn("CMIS: Bad value for " + CmisConfig.MAX_ITEMS_PER_PAGE_PARAM + ": '" + maxItemsPerPageString + "'");
+      }
+    }
+    if (maxItemsPerPage < 1)
+      maxItemsPerPage = Integer.parseInt(CmisConfig.MAX_ITEMS_PER_PAGE_DEFAULT_VALUE);
+    useChangeLog = "true".equals(params.getParameter(CmisConfig.CHANGE_LOG_PARAM));
   }
 
   /** Test the connection.  Returns a string describing the connection integrity.
@@ -671,23 +711,304 @@ public class CmisRepositoryConnector extends BaseRepositoryConnector {
       }
     }
 
+    try {
+      return seedDocuments(activities, cmisQuery, lastSeedVersion);
+    } catch (CmisConnectionException e) {
+      // Transient problem: the repository can't be reached at the moment
+      Logging.connectors.warn("CMIS: Error connecting to the repository while seeding: " + e.getMessage(), e);
+      long currentTime = System.currentTimeMillis();
+      throw new ServiceInterruption(e.getMessage(), e, currentTime + 60000L, -1L, -1, false);
+    } catch (CmisPermissionDeniedException e) {
+      throw new ManifoldCFException("CMIS: Wrong credentials while seeding: " + e.getMessage(), e);
+    }
+  }
+
+  /** Seed the documents for a job, from the change log if we can.  Exceptions the repository throws are
+  * left to the caller.
+  *@return the seeding version string to store with the job.
+  */
+  protected String seedDocuments(ISeedingActivity activities, String cmisQuery, String lastSeedVersion)
+    throws ManifoldCFException, ServiceInterruption {
+    OperationContext context = createSeedingContext();
+
+    if (!useChangeLog) {
+      seedAll(activities, cmisQuery, context);
+      return "";
+    }
+
+    // Ask the repository directly; the session's copy of the repository info is as old as the session
+    RepositoryInfo repositoryInfo = session.getBinding().getRepositoryService()
+        .getRepositoryInfo(session.getRepositoryInfo().getId(), null);
+    if (!hasChangeLog(repositoryInfo)) {
+      if (Logging.connectors.isDebugEnabled())
+        Logging.connectors.debug("CMIS: The repository has no change log; seeding everything");
+      seedAll(activities, cmisQuery, context);
+      return "";
+    }
+
+    if (lastSeedVersion != null && lastSeedVersion.startsWith(CHANGE_LOG_MARKER)
+        && lastSeedVersion.length() > CHANGE_LOG_MARKER.length()) {
+      Set<String> changedIds = new LinkedHashSet<String>();
+      Set<String> deletedIds = new LinkedHashSet<String>();
+      String changeLogToken = readContentChanges(lastSeedVersion.substring(CHANGE_LOG_MARKER.length()),
+          changedIds, deletedIds);
+      if (changeLogToken != null) {
+        // Deleted objects are seeded so that processing finds them gone
+        for (String id : deletedIds) {
+          activities.addSeedDocument(id);
+        }
+        if (StringUtils.isEmpty(cmisQuery)) {
+          // Everything in the repository is in scope
+          for (String id : changedIds) {
+            activities.addSeedDocument(id);
+          }
+        } else if (!changedIds.isEmpty()) {
+          // We can't tell which changed objects match the query, so run it again
+          seedQueryResults(activities, cmisQuery, context);
+        }
+        return CHANGE_LOG_MARKER + changeLogToken;
+      }
+      Logging.connectors.warn("CMIS: The repository no longer knows the change log token; seeding everything");
+    }
+
+    // Take the token before seeding, so that changes made while we seed are picked up next time
+    String latestChangeLogToken = repositoryInfo.getLatestChangeLogToken();
+    seedAll(activities, cmisQuery, context);
+    if (StringUtils.isEmpty(latestChangeLogToken))
+      return "";
+    return CHANGE_LOG_MARKER + latestChangeLogToken;
+  }
+
+  /** Create the operation context used for seeding, which only needs object ids, a page at a time.
+  */
+  protected OperationContext createSeedingContext() {
+    OperationContext context = session.createOperationContext();
+    context.setMaxItemsPerPage(maxItemsPerPage);
+    context.setIncludeAllowableActions(false);
+    context.setIncludePathSegments(false);
+    context.setIncludeRelationships(IncludeRelationships.NONE);
+    context.setRenditionFilterString("cmis:none");
+    context.setCacheEnabled(false);
+    return context;
+  }
+
+  /** Seed everything the job covers: the children of the root folder, or the results of the query.
+  */
+  protected void seedAll(ISeedingActivity activities, String cmisQuery, OperationContext context)
+    throws ManifoldCFException, ServiceInterruption {
     if (StringUtils.isEmpty(cmisQuery)) {
       // get root Documents from the CMIS Repository
       ItemIterable<CmisObject> cmisObjects = session.getRootFolder()
-          .getChildren();
+          .getChildren(context);
       for (CmisObject cmisObject : cmisObjects) {
         activities.addSeedDocument(cmisObject.getId());
       }
     } else {
-      cmisQuery = CmisRepositoryConnectorUtils.getCmisQueryWithObjectId(cmisQuery);
-      ItemIterable<QueryResult> results = session.query(cmisQuery, false).getPage(1000000000);
-      for (QueryResult result : results) {
+      seedQueryResults(activities, cmisQuery, context);
+    }
+  }
+
+  /** Seed the results of a query.  The first page is read here.  If the repository says how many results
+  * there are, and the query orders them by object id, the rest of the pages are read in parallel;
+  * otherwise they are read one after another.
+  */
+  protected void seedQueryResults(ISeedingActivity activities, String cmisQuery, OperationContext context)
+    throws ManifoldCFException, ServiceInterruption {
+    cmisQuery = CmisRepositoryConnectorUtils.getCmisQueryWithObjectId(cmisQuery);
+
+    ItemIterable<QueryResult> firstPage = session.query(cmisQuery, false, context).getPage();
+    long firstPageCount = 0L;
+    for (QueryResult result : firstPage) {
+      String id = result.getPropertyValueById(PropertyIds.OBJECT_ID);
+      activities.addSeedDocument(id);
+      firstPageCount++;
+    }
+    if (!firstPage.getHasMoreItems())
+      return;
+
+    // The total is -1 if the repository doesn't know it
+    long totalCount = firstPage.getTotalNumItems();
+    long pageCount = (totalCount - firstPageCount + maxItemsPerPage - 1) / maxItemsPerPage;
+    // Pages read from separate requests only fit together if every request sorts the results the same way
+    if (pageCount < 2L || !CmisRepositoryConnectorUtils.isOrderedByObjectId(cmisQuery)) {
+      for (QueryResult result : session.query(cmisQuery, false, context).skipTo(firstPageCount)) {
         String id = result.getPropertyValueById(PropertyIds.OBJECT_ID);
         activities.addSeedDocument(id);
       }
+      return;
     }
 
-    return "";
+    int threadCount = (int)Math.min((long)MAX_SEEDING_THREADS, pageCount);
+    XThreadStringBuffer seedBuffer = new XThreadStringBuffer();
+    AtomicInteger runningThreads = new AtomicInteger(threadCount);
+    QueryPagesThread[] threads = new QueryPagesThread[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      threads[i] = new QueryPagesThread(cmisQuery, context, firstPageCount, pageCount, i, threadCount,
+        seedBuffer, runningThreads);
+    }
+    try {
+      for (QueryPagesThread t : threads) {
+        t.start();
+      }
+      boolean wasInterrupted = false;
+      try {
+        // Pick up the ids, and add them to the activities, as the threads find them.
+        while (true) {
+          String id = seedBuffer.fetch();
+          if (id == null)
+            break;
+          activities.addSeedDocument(id);
+        }
+      } catch (InterruptedException e) {
+        wasInterrupted = true;
+        throw e;
+      } catch (ManifoldCFException e) {
+        if (e.getErrorCode() == ManifoldCFException.INTERRUPTED)
+          wasInterrupted = true;
+        throw e;
+      } finally {
+        if (!wasInterrupted)
+          finishQueryPages(threads, seedBuffer);
+      }
+    } catch (InterruptedException e) {
+      for (QueryPagesThread t : threads) {
+        t.interrupt();
+      }
+      throw new ManifoldCFException("Interrupted: " + e.getMessage(), e,
+          ManifoldCFException.INTERRUPTED);
+    }
+  }
+
+  /** Stop the query page threads, wait for them, and rethrow the first exception any of them hit.
+  */
+  protected static void finishQueryPages(QueryPagesThread[] threads, XThreadStringBuffer seedBuffer)
+    throws InterruptedException {
+    seedBuffer.abandon();
+    for (QueryPagesThread t : threads) {
+      t.stopReading();
+    }
+    for (QueryPagesThread t : threads) {
+      t.join();
+    }
+    for (QueryPagesThread t : threads) {
+      Throwable thr = t.getException();
+      if (thr != null) {
+        if (thr instanceof RuntimeException)
+          throw (RuntimeException) thr;
+        else if (thr instanceof Error)
+          throw (Error) thr;
+        else
+          throw new RuntimeException("Unhandled exception of type: "+thr.getClass().getName(),thr);
+      }
+    }
+  }
+
+  /** Read the ids from every n-th page of query results into a shared buffer.  Each page is read from its
+  * offset to its nominal length, across as many requests as the repository needs; the last page is read to
+  * the end, in case results were added since the total was counted.  The last thread to finish tells the
+  * buffer that no more ids are coming.
+  */
+  protected class QueryPagesThread extends Thread {
+    protected final String cmisQuery;
+    protected final OperationContext context;
+    protected final long firstOffset;
+    protected final long pageCount;
+    protected final int firstPage;
+    protected final int pageStride;
+    protected final XThreadStringBuffer seedBuffer;
+    protected final AtomicInteger runningThreads;
+    protected volatile boolean stopped = false;
+    protected Throwable exception = null;
+
+    public QueryPagesThread(String cmisQuery, OperationContext context, long firstOffset, long pageCount,
+      int firstPage, int pageStride, XThreadStringBuffer seedBuffer, AtomicInteger runningThreads) {
+      super();
+      setDaemon(true);
+      this.cmisQuery = cmisQuery;
+      this.context = context;
+      this.firstOffset = firstOffset;
+      this.pageCount = pageCount;
+      this.firstPage = firstPage;
+      this.pageStride = pageStride;
+      this.seedBuffer = seedBuffer;
+      this.runningThreads = runningThreads;
+    }
+
+    public void run() {
+      try {
+        for (long page = firstPage; page < pageCount && !stopped; page += pageStride) {
+          long remaining = (page == pageCount - 1L) ? Long.MAX_VALUE : (long)maxItemsPerPage;
+          Iterator<QueryResult> results = session.query(cmisQuery, false, context)
+              .skipTo(firstOffset + page * maxItemsPerPage).iterator();
+          while (remaining > 0L && !stopped && results.hasNext()) {
+            String id = results.next().getPropertyValueById(PropertyIds.OBJECT_ID);
+            seedBuffer.add(id);
+            remaining--;
+          }
+        }
+      } catch (Throwable e) {
+        this.exception = e;
+      } finally {
+        if (runningThreads.decrementAndGet() == 0)
+          seedBuffer.signalDone();
+      }
+    }
+
+    /** Stop reading pages; nobody is taking ids from the buffer any more. */
+    public void stopReading() {
+      stopped = true;
+    }
+
+    public Throwable getException() {
+      return exception;
+    }
+  }
+
+  /** Check whether the repository keeps a change log we can seed from.  A log that doesn't go back to
+  * the creation of the repository is still usable; a token older than the log is rejected when we use it.
+  */
+  protected static boolean hasChangeLog(RepositoryInfo repositoryInfo) {
+    RepositoryCapabilities capabilities = repositoryInfo.getCapabilities();
+    return capabilities != null && capabilities.getChangesCapability() != null
+        && capabilities.getChangesCapability() != CapabilityChanges.NONE;
+  }
+
+  /** Read the change log from a token onwards.
+  *@param changeLogToken is the token to start from.
+  *@param changedIds is where the ids of created or changed objects are added.
+  *@param deletedIds is where the ids of deleted objects are added.
+  *@return the token to start from next time, or null if the repository no longer knows the token.
+  */
+  protected String readContentChanges(String changeLogToken, Set<String> changedIds, Set<String> deletedIds) {
+    while (true) {
+      ChangeEvents changeEvents;
+      try {
+        changeEvents = session.getContentChanges(changeLogToken, false, maxItemsPerPage);
+      } catch (CmisInvalidArgumentException e) {
+        return null;
+      } catch (CmisObjectNotFoundException e) {
+        return null;
+      }
+      for (ChangeEvent changeEvent : changeEvents.getChangeEvents()) {
+        String id = changeEvent.getObjectId();
+        if (id == null)
+          continue;
+        if (changeEvent.getChangeType() == ChangeType.DELETED)
+          deletedIds.add(id);
+        else
+          changedIds.add(id);
+      }
+      String nextToken = changeEvents.getLatestChangeLogToken();
+      if (StringUtils.isEmpty(nextToken))
+        return changeLogToken;
+      // Some repositories only say there are more changes through the total
+      boolean moreChanges = changeEvents.getHasMoreItems()
+          || changeEvents.getTotalNumItems() > (long)changeEvents.getChangeEvents().size();
+      // The event for the token we ask with comes back first, so a token that doesn't move means we're done
+      if (!moreChanges || nextToken.equals(changeLogToken))
+        return nextToken;
+      changeLogToken = nextToken;
+    }
   }
 
 
@@ -738,6 +1059,8 @@ public class CmisRepositoryConnector extends BaseRepositoryConnector {
     String path = parameters.getParameter(CmisConfig.PATH_PARAM);
     String repositoryId = parameters.getParameter(CmisConfig.REPOSITORY_ID_PARAM);
     String binding = parameters.getParameter(CmisConfig.BINDING_PARAM);
+    String maxItemsPerPage = parameters.getParameter(CmisConfig.MAX_ITEMS_PER_PAGE_PARAM);
+    String changeLog = parameters.getParameter(CmisConfig.CHANGE_LOG_PARAM);
 
     if(username == null)
       username = StringUtils.EMPTY;
@@ -757,6 +1080,10 @@ public class CmisRepositoryConnector extends BaseRepositoryConnector {
       repositoryId = StringUtils.EMPTY;
     if(binding == null)
       binding = CmisConfig.BINDING_ATOM_VALUE;
+    if(maxItemsPerPage == null)
+      maxItemsPerPage = CmisConfig.MAX_ITEMS_PER_PAGE_DEFAULT_VALUE;
+    if(changeLog == null)
+      changeLog = CmisConfig.CHANGE_LOG_DEFAULT_VALUE;
 
     newMap.put(CmisConfig.USERNAME_PARAM, username);
     newMap.put(CmisConfig.PASSWORD_PARAM, password);
@@ -766,6 +1093,8 @@ public class CmisRepositoryConnector extends BaseRepositoryConnector {
     newMap.put(CmisConfig.PATH_PARAM, path);
     newMap.put(CmisConfig.REPOSITORY_ID_PARAM, repositoryId);
     newMap.put(CmisConfig.BINDING_PARAM, binding);
+    newMap.put(CmisConfig.MAX_ITEMS_PER_PAGE_PARAM, maxItemsPerPage);
+    newMap.put(CmisConfig.CHANGE_LOG_PARAM, changeLog);
   }
 
   /**
@@ -911,6 +1240,21 @@ public class CmisRepositoryConnector extends BaseRepositoryConnector {
       parameters.setParameter(CmisConfig.REPOSITORY_ID_PARAM, repositoryId);
     }
 
+    String maxItemsPerPage = variableContext.getParameter(CmisConfig.MAX_ITEMS_PER_PAGE_PARAM);
+    if (maxItemsPerPage != null){
+      try {
+        if (Integer.parseInt(maxItemsPerPage) > 0)
+          parameters.setParameter(CmisConfig.MAX_ITEMS_PER_PAGE_PARAM, maxItemsPerPage);
+      } catch (NumberFormatException e) {
+
+      }
+    }
+
+    if (variableContext.getParameter(CmisConfig.CHANGE_LOG_PARAM + "_present") != null) {
+      String changeLog = variableContext.getParameter(CmisConfig.CHANGE_LOG_PARAM);
+      parameters.setParameter(CmisConfig.CHANGE_LOG_PARAM, "true".equals(changeLog) ? "true" : "false");
+    }
+
     return null;
   }
 
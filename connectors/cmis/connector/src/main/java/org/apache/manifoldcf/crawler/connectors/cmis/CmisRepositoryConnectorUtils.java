@@ -26,6 +26,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.apache.chemistry.opencmis.client.api.Document;
 import org.apache.chemistry.opencmis.client.api.Property;
 import org.apache.chemistry.opencmis.client.api.Session;
@@ -58,6 +60,7 @@ public class CmisRepositoryConnectorUtils {
     private static final String SELECT_CLAUSE_TERM_SEP = ",";
     private static final String SELECT_PREFIX = "select ";
     private final static String TOKENIZER_SEP = ",\n\t";
+    private static final Pattern ORDER_BY_PATTERN = Pattern.compile("\\border\\s+by\\s", Pattern.CASE_INSENSITIVE);
 
     public static final String getDocumentURL(final Document document, final Session session)
             throws ManifoldCFException {
@@ -379,4 +382,34 @@ public class CmisRepositoryConnectorUtils {
     public static boolean isWildcardQuery(String selectClause) {
         return selectClause.toLowerCase().startsWith(SELECT_STAR_CLAUSE);
     }
+
+    /**
+     * Utility method to understand if the results of a query come back in the same order every time
+     * @param cmisQuery
+     * @return TRUE if the order by clause includes the cmis:objectId property, otherwise it will return FALSE
+     */
+    public static boolean isOrderedByObjectId(String cmisQuery) {
+        Matcher matcher = ORDER_BY_PATTERN.matcher(cmisQuery);
+        String orderByClause = null;
+        while (matcher.find()) {
+            orderByClause = cmisQuery.substring(matcher.end());
+        }
+        if (orderByClause == null) {
+            return false;
+        }
+        StringTokenizer orderByTokenized = new StringTokenizer(orderByClause, SELECT_CLAUSE_TERM_SEP);
+        while (orderByTokenized.hasMoreElements()) {
+            //the property may be followed by ASC or DESC
+            String term = orderByTokenized.nextToken().trim().split("\\s+")[0];
+            //a prefix table may be used: d.cmis:objectId
+            int idx = term.indexOf(".");
+            if (idx > 0) {
+                term = term.substring(idx + 1);
+            }
+            if (term.equalsIgnoreCase(OBJECT_ID_PROPERTY)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
\ No newline at end of file
@@ -76,6 +76,12 @@ function checkConfigForSave()
     editconnection.path.focus();
     return false;
   }
+  if (!isInteger(editconnection.maxItemsPerPage.value) || parseInt(editconnection.maxItemsPerPage.value,10) < 1){
+    alert("$Encoder.bodyJavascriptEscape($ResourceBundle.getString('CmisRepositoryConnector.TheMaxItemsPerPageMustBeValidInteger'))");
+    SelectTab("$Encoder.bodyJavascriptEscape($ResourceBundle.getString('CmisRepositoryConnector.Server'))");
+    editconnection.maxItemsPerPage.focus();
+    return false;
+  }
   return true;
 }
 //-->
@@ -0,0 +1,29 @@
+package org.apache.manifoldcf.crawler.connectors.cmis.tests;
+
+import org.apache.manifoldcf.crawler.connectors.cmis.CmisRepositoryConnectorUtils;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CheckOrderByObjectIdTest {
+
+  @Test
+  public void testUnordered() {
+    assertFalse(CmisRepositoryConnectorUtils.isOrderedByObjectId("SELECT * FROM cmis:document"));
+    assertFalse(CmisRepositoryConnectorUtils.isOrderedByObjectId("SELECT cmis:objectId FROM cmis:document WHERE cmis:name='a'"));
+  }
+
+  @Test
+  public void testOrderedByOtherProperty() {
+    assertFalse(CmisRepositoryConnectorUtils.isOrderedByObjectId("SELECT cmis:objectId FROM cmis:document ORDER BY cmis:name"));
+    assertFalse(CmisRepositoryConnectorUtils.isOrderedByObjectId("SELECT * FROM cmis:document ORDER BY cmis:creationDate DESC"));
+  }
+
+  @Test
+  public void testOrderedByObjectId() {
+    assertTrue(CmisRepositoryConnectorUtils.isOrderedByObjectId("SELECT * FROM cmis:document ORDER BY cmis:objectId"));
+    assertTrue(CmisRepositoryConnectorUtils.isOrderedByObjectId("select * from cmis:document order by cmis:name, cmis:objectId desc"));
+    assertTrue(CmisRepositoryConnectorUtils.isOrderedByObjectId("SELECT d.cmis:name FROM cmis:document d ORDER BY d.cmis:objectId ASC"));
+    assertTrue(CmisRepositoryConnectorUtils.isOrderedByObjectId("SELECT * FROM cmis:document\nORDER BY\n\tcmis:objectId"));
+  }
+
+}
@@ -0,0 +1,246 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.cmis.tests;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.api.SessionFactory;
+import org.apache.chemistry.opencmis.client.runtime.SessionFactoryImpl;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.enums.BindingType;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ContentStreamImpl;
+import org.apache.manifoldcf.core.interfaces.ConfigParams;
+import org.apache.manifoldcf.core.interfaces.Specification;
+import org.apache.manifoldcf.core.interfaces.SpecificationNode;
+import org.apache.manifoldcf.crawler.connectors.cmis.CmisConfig;
+import org.apache.manifoldcf.crawler.connectors.cmis.CmisRepositoryConnector;
+import org.apache.manifoldcf.crawler.interfaces.ISeedingActivity;
+import org.apache.manifoldcf.crawler.system.Logging;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Seeds jobs straight from the connector against the in-memory OpenCMIS server, with a small query page size */
+public class SeedingIT
+{
+  private static final int DOCUMENT_COUNT = 7;
+  private static final String PAGE_SIZE = "2";
+  private static final String TOKEN_PREFIX = "token-";
+  private static final int EARLY_TOKEN = 4;
+
+  private static CMISServer cmisServer = null;
+
+  private Session cmisClientSession = null;
+  private Folder testFolder = null;
+  private List<String> documentIds = new ArrayList<String>();
+  private CmisRepositoryConnector connector = null;
+
+  @BeforeClass
+  public static void startServer()
+    throws Exception
+  {
+    // No properties file here, so set up only the logger the connector uses
+    if (Logging.connectors == null)
+      Logging.connectors = org.apache.log4j.Logger.getLogger("org.apache.manifoldcf.connectors");
+
+    String openCmisServerWarPath = "../../../lib/chemistry-opencmis-server-inmemory.war";
+    if (System.getProperty("openCmisServerWarPath") != null)
+      openCmisServerWarPath = System.getProperty("openCmisServerWarPath");
+    cmisServer = new CMISServer(Integer.parseInt(CmisConfig.PORT_DEFAULT_VALUE), openCmisServerWarPath);
+    cmisServer.start();
+  }
+
+  @AfterClass
+  public static void stopServer()
+    throws Exception
+  {
+    cmisServer.stop();
+  }
+
+  @Before
+  public void createTestArea()
+    throws Exception
+  {
+    cmisClientSession = getCmisClientSession();
+
+    Map<String, Object> folderProperties = new HashMap<String, Object>();
+    folderProperties.put(PropertyIds.OBJECT_TYPE_ID, "cmis:folder");
+    folderProperties.put(PropertyIds.NAME, "seedingdata" + System.currentTimeMillis());
+    testFolder = cmisClientSession.getRootFolder().createFolder(folderProperties);
+
+    for (int i = 0; i < DOCUMENT_COUNT; i++) {
+      documentIds.add(createDocument("seeding" + i + ".txt").getId());
+    }
+
+    connector = new CmisRepositoryConnector();
+    connector.connect(makeConfiguration());
+  }
+
+  @After
+  public void removeTestArea()
+    throws Exception
+  {
+    connector.disconnect();
+    testFolder.deleteTree(true, null, false);
+  }
+
+  @Test
+  public void orderedQueryIsSeededAcrossPages()
+    throws Exception
+  {
+    List<String> seeds = new ArrayList<String>();
+    connector.addSeedDocuments(makeActivities(seeds),
+      makeSpecification("SELECT cmis:objectId FROM cmis:document WHERE IN_FOLDER('" + testFolder.getId() + "') ORDER BY cmis:objectId"),
+      null, System.currentTimeMillis(), 0);
+    // Every document, each exactly once
+    assertEquals(DOCUMENT_COUNT, seeds.size());
+    assertEquals(new HashSet<String>(documentIds), new HashSet<String>(seeds));
+  }
+
+  @Test
+  public void unorderedQueryIsSeededAcrossPages()
+    throws Exception
+  {
+    List<String> seeds = new ArrayList<String>();
+    connector.addSeedDocuments(makeActivities(seeds),
+      makeSpecification("SELECT cmis:name FROM cmis:document WHERE IN_FOLDER('" + testFolder.getId() + "')"),
+      null, System.currentTimeMillis(), 0);
+    assertEquals(DOCUMENT_COUNT, seeds.size());
+    assertEquals(new HashSet<String>(documentIds), new HashSet<String>(seeds));
+  }
+
+  @Test
+  public void minimalSeedingReadsTheChangeLog()
+    throws Exception
+  {
+    Specification spec = makeSpecification("");
+
+    // The first pass seeds everything, and hands back the change log token
+    List<String> seeds = new ArrayList<String>();
+    String seedVersion = connector.addSeedDocuments(makeActivities(seeds), spec, null, System.currentTimeMillis(), 0);
+    assertTrue(seedVersion, seedVersion.startsWith("C" + TOKEN_PREFIX));
+    assertTrue(seeds.contains(testFolder.getId()));
+    int latestToken = Integer.parseInt(seedVersion.substring(1 + TOKEN_PREFIX.length()));
+
+    // The in-memory server serves a fixed change log, in which change n deletes the object "cl-n".
+    // Starting from an early token, every later change is seeded, a page of two at a time.
+    seeds = new ArrayList<String>();
+    String nextSeedVersion = connector.addSeedDocuments(makeActivities(seeds), spec, "C" + TOKEN_PREFIX + EARLY_TOKEN,
+      System.currentTimeMillis(), 0);
+    assertEquals(seedVersion, nextSeedVersion);
+    for (int i = EARLY_TOKEN + 1; i <= latestToken; i++) {
+      assertTrue("cl-" + i, seeds.contains("cl-" + i));
+    }
+    assertFalse(seeds.contains(testFolder.getId()));
+
+    // Nothing changed since the latest token
+    seeds = new ArrayList<String>();
+    connector.addSeedDocuments(makeActivities(seeds), spec, seedVersion, System.currentTimeMillis(), 0);
+    assertFalse(seeds.contains("cl-" + (latestToken - 1)));
+    assertFalse(seeds.contains(testFolder.getId()));
+
+    // A token the repository doesn't know means seeding everything again
+    seeds = new ArrayList<String>();
+    assertEquals(seedVersion,
+      connector.addSeedDocuments(makeActivities(seeds), spec, "Cnotatoken", System.currentTimeMillis(), 0));
+    assertTrue(seeds.contains(testFolder.getId()));
+  }
+
+  private Document createDocument(String name)
+    throws Exception
+  {
+    Map<String, Object> contentProperties = new HashMap<String, Object>();
+    contentProperties.put(PropertyIds.OBJECT_TYPE_ID, "cmis:document");
+    contentProperties.put(PropertyIds.NAME, name);
+    byte[] content = ("CMIS Testdata " + name).getBytes();
+    ByteArrayInputStream stream = new ByteArrayInputStream(content);
+    try {
+      return testFolder.createDocument(contentProperties,
+        new ContentStreamImpl(name, BigInteger.valueOf(content.length), "text/plain", stream), null);
+    } finally {
+      stream.close();
+    }
+  }
+
+  private static Session getCmisClientSession() {
+    SessionFactory factory = SessionFactoryImpl.newInstance();
+    Map<String, String> parameters = new HashMap<String, String>();
+    parameters.put(SessionParameter.USER, CmisConfig.USERNAME_DEFAULT_VALUE);
+    parameters.put(SessionParameter.PASSWORD, CmisConfig.PASSWORD_DEFAULT_VALUE);
+    parameters.put(SessionParameter.ATOMPUB_URL,
+      CmisConfig.PROTOCOL_DEFAULT_VALUE + "://" + CmisConfig.SERVER_DEFAULT_VALUE + ":" +
+      CmisConfig.PORT_DEFAULT_VALUE + CmisConfig.PATH_DEFAULT_VALUE);
+    parameters.put(SessionParameter.BINDING_TYPE, BindingType.ATOMPUB.value());
+    return factory.getRepositories(parameters).get(0).createSession();
+  }
+
+  private static ConfigParams makeConfiguration() {
+    ConfigParams params = new ConfigParams();
+    params.setParameter(CmisConfig.BINDING_PARAM, CmisConfig.BINDING_DEFAULT_VALUE);
+    params.setParameter(CmisConfig.USERNAME_PARAM, CmisConfig.USERNAME_DEFAULT_VALUE);
+    params.setParameter(CmisConfig.PASSWORD_PARAM, CmisConfig.PASSWORD_DEFAULT_VALUE);
+    params.setParameter(CmisConfig.PROTOCOL_PARAM, CmisConfig.PROTOCOL_DEFAULT_VALUE);
+    params.setParameter(CmisConfig.SERVER_PARAM, CmisConfig.SERVER_DEFAULT_VALUE);
+    params.setParameter(CmisConfig.PORT_PARAM, CmisConfig.PORT_DEFAULT_VALUE);
+    params.setParameter(CmisConfig.PATH_PARAM, CmisConfig.PATH_DEFAULT_VALUE);
+    params.setParameter(CmisConfig.MAX_ITEMS_PER_PAGE_PARAM, PAGE_SIZE);
+    params.setParameter(CmisConfig.CHANGE_LOG_PARAM, "true");
+    return params;
+  }
+
+  private static Specification makeSpecification(String cmisQuery) {
+    Specification spec = new Specification();
+    SpecificationNode sn = new SpecificationNode("startpoint");
+    sn.setAttribute(CmisConfig.CMIS_QUERY_PARAM, cmisQuery);
+    spec.addChild(spec.getChildCount(), sn);
+    return spec;
+  }
+
+  private static ISeedingActivity makeActivities(final List<String> seeds) {
+    return (ISeedingActivity)Proxy.newProxyInstance(ISeedingActivity.class.getClassLoader(),
+      new Class[]{ISeedingActivity.class},
+      new InvocationHandler()
+      {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+          if (method.getName().equals("addSeedDocument"))
+            seeds.add((String)args[0]);
+          return null;
+        }
+      });
+  }
+
+}
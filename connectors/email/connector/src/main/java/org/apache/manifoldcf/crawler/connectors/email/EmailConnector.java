@@ -71,6 +71,11 @@ public class EmailConnector extends org.apache.manifoldcf.crawler.connectors.Bas
 
   protected final static long SESSION_EXPIRATION_MILLISECONDS = 300000L;
   
+  /** Email ID prefix for messages identified by UIDVALIDITY and UID, rather than by Message-ID */
+  protected final static String UID_PREFIX = "UID";
+  /** Prefix of seeding version strings that hold the UID state of each folder */
+  protected final static String SEEDING_VERSION_PREFIX = "U";
+  
   // Local variables.
   protected long sessionExpiration = -1L;
   
@@ -268,14 +273,13 @@ public class EmailConnector extends org.apache.manifoldcf.crawler.connectors.Bas
     String lastSeedVersion, long seedTime, int jobMode)
     throws ManifoldCFException, ServiceInterruption {
 
-    long startTime;
-    if (lastSeedVersion == null)
-      startTime = 0L;
-    else
-    {
-      // Unpack seed time from seed version string
-      startTime = new Long(lastSeedVersion).longValue();
-    }
+    // Folders that support UIDs are seeded incrementally, from the UIDNEXT value seen last time
+    Map<String,FolderUIDState> lastFolderStates = unpackSeedingVersion(lastSeedVersion);
+    // Seeding versions from before UIDs were used just held the seed time
+    boolean legacySeedingVersion = lastSeedVersion != null && lastFolderStates == null;
+    if (lastFolderStates == null)
+      lastFolderStates = new HashMap<String,FolderUIDState>();
+    Map<String,FolderUIDState> folderStates = new HashMap<String,FolderUIDState>();
 
     getSession();
 
@@ -304,10 +308,48 @@ public class EmailConnector extends org.apache.manifoldcf.crawler.connectors.Bas
         Folder folder = oft.finishUp();
         try
         {
-          Message[] messages = findMessages(folder, startTime, seedTime, findMap);
-          for (Message message : messages) {
-            String emailID = ((MimeMessage) message).getMessageID();
-            activities.addSeedDocument(createDocumentIdentifier(folderName,emailID));
+          if (folder instanceof UIDFolder)
+          {
+            // Read the folder state before searching, so that messages arriving meanwhile are seeded again next time
+            GetFolderUIDStateThread gst = new GetFolderUIDStateThread(session, folder);
+            gst.start();
+            FolderUIDState state = gst.finishUp();
+            
+            Message[] candidates = null;
+            FolderUIDState lastState = lastFolderStates.get(folderName);
+            if (lastState != null && lastState.getUIDValidity() == state.getUIDValidity())
+            {
+              GetMessagesSinceUIDThread gmt = new GetMessagesSinceUIDThread(session, folder, lastState.getUIDNext());
+              gmt.start();
+              candidates = gmt.finishUp();
+            }
+            
+            Message[] messages = findMessages(folder, candidates, findMap);
+            if (messages.length > 0)
+            {
+              GetUIDsThread gut = new GetUIDsThread(session, folder, messages);
+              gut.start();
+              long[] uids = gut.finishUp();
+              for (int j = 0; j < messages.length; j++) {
+                activities.addSeedDocument(createUIDDocumentIdentifier(folderName,state.getUIDValidity(),uids[j]));
+                if (legacySeedingVersion)
+                {
+                  // Queue the Message-ID identifier this message was crawled under before, so that it gets removed
+                  String emailID = ((MimeMessage) messages[j]).getMessageID();
+                  if (emailID != null)
+                    activities.addSeedDocument(createDocumentIdentifier(folderName,emailID));
+                }
+              }
+            }
+            folderStates.put(folderName, state);
+          }
+          else
+          {
+            Message[] messages = findMessages(folder, null, findMap);
+            for (Message message : messages) {
+              String emailID = ((MimeMessage) message).getMessageID();
+              activities.addSeedDocument(createDocumentIdentifier(folderName,emailID));
+            }
           }
         }
         finally
@@ -323,14 +365,18 @@ public class EmailConnector extends org.apache.manifoldcf.crawler.connectors.Bas
       }
     }
 
-    return new Long(seedTime).toString();
+    return packSeedingVersion(folderStates);
   }
 
   /*
-  This method will return the list of messages which matches the given criteria
+  This method will return the list of messages which matches the given criteria.  If candidates is not null,
+  only those messages are considered; otherwise the whole folder is.
   */
-  private Message[] findMessages(Folder folder, long startTime, long endTime, Map<String,String> findMap)
+  private Message[] findMessages(Folder folder, Message[] candidates, Map<String,String> findMap)
     throws MessagingException, InterruptedException {
+    if (candidates != null && candidates.length == 0)
+      return candidates;
+
     String findParameterName;
     String findParameterValue;
     
@@ -371,13 +417,15 @@ public class EmailConnector extends org.apache.manifoldcf.crawler.connectors.Bas
     Message[] result;
     if (searchTerm == null)
     {
+      if (candidates != null)
+        return candidates;
       GetMessagesThread gmt = new GetMessagesThread(session, folder);
       gmt.start();
       result = gmt.finishUp();
     }
     else
     {
-      SearchMessagesThread smt = new SearchMessagesThread(session, folder, searchTerm);
+      SearchMessagesThread smt = new SearchMessagesThread(session, folder, searchTerm, candidates);
       smt.start();
       result = smt.finishUp();
     }
@@ -474,13 +522,37 @@ public class EmailConnector extends org.apache.manifoldcf.crawler.connectors.Bas
     Map<String,Folder> openFolders = new HashMap<String,Folder>();
     try {
 
+      String versionString = "_" + urlTemplate;   // NOT empty; we need to make ManifoldCF understand that this is a document that never will change.
+
+      // Find the documents we need to index, and group the ones with UID identifiers by folder
+      List<String> documentsToProcess = new ArrayList<String>();
+      Map<String,List<String>> uidDocuments = new HashMap<String,List<String>>();
+      Map<String,FolderUIDState> folderStates = new HashMap<String,FolderUIDState>();
       for (String documentIdentifier : documentIdentifiers) {
-        String versionString = "_" + urlTemplate;   // NOT empty; we need to make ManifoldCF understand that this is a document that never will change.
-        
+        // The version never changes, so identifiers that can no longer name a message must be removed before the version check
+        if (isObsoleteIdentifier(documentIdentifier, openFolders, folderStates)) {
+          activities.deleteDocument(documentIdentifier);
+          continue;
+        }
         // Check if we need to index
         if (!activities.checkDocumentNeedsReindexing(documentIdentifier,versionString))
           continue;
-        
+        documentsToProcess.add(documentIdentifier);
+        if (parseUIDEmailID(extractEmailIDFromDocumentIdentifier(documentIdentifier)) != null) {
+          String folderName = extractFolderNameFromDocumentIdentifier(documentIdentifier);
+          List<String> folderDocuments = uidDocuments.get(folderName);
+          if (folderDocuments == null) {
+            folderDocuments = new ArrayList<String>();
+            uidDocuments.put(folderName, folderDocuments);
+          }
+          folderDocuments.add(documentIdentifier);
+        }
+      }
+      
+      // Fetch those a folder at a time, rather than searching for each message
+      Map<String,Message> uidMessages = fetchMessagesByUID(uidDocuments, openFolders, folderStates);
+      
+      for (String documentIdentifier : documentsToProcess) {
         String compositeID = documentIdentifier;
         String version = versionString;
         String folderName = extractFolderNameFromDocumentIdentifier(compositeID);
@@ -492,37 +564,40 @@ public class EmailConnector extends org.apache.manifoldcf.crawler.connectors.Bas
         long startTime = System.currentTimeMillis();
         try {
           try {
-            Folder folder = openFolders.get(folderName);
-            if (folder == null)
-            {
-              getSession();
-              OpenFolderThread oft = new OpenFolderThread(session, folderName);
-              oft.start();
-              folder = oft.finishUp();
-              openFolders.put(folderName,folder);
-            }
+            Folder folder = getOpenFolder(folderName, openFolders);
             
             if (Logging.connectors.isDebugEnabled())
               Logging.connectors.debug("Email: Processing document identifier '"
                 + compositeID + "'");
-            SearchTerm messageIDTerm = new MessageIDTerm(id);
-              
-            getSession();
-            SearchMessagesThread smt = new SearchMessagesThread(session, folder, messageIDTerm);
-            smt.start();
-            Message[] message = smt.finishUp();
-
-            String msgURL = makeDocumentURI(urlTemplate, folderName, id);
 
             Message msg = null;
-            for (Message msg2 : message) {
-              msg = msg2;
+            if (parseUIDEmailID(id) != null) {
+              msg = uidMessages.get(documentIdentifier);
+              // The URL still refers to the message by its Message-ID
+              if (msg != null) {
+                String messageID = ((MimeMessage) msg).getMessageID();
+                if (messageID != null)
+                  id = messageID;
+              }
+            } else if (!(folder instanceof UIDFolder)) {
+              SearchTerm messageIDTerm = new MessageIDTerm(id);
+              
+              getSession();
+              SearchMessagesThread smt = new SearchMessagesThread(session, folder, messageIDTerm);
+              smt.start();
+              Message[] message = smt.finishUp();
+
+              for (Message msg2 : message) {
+                msg = msg2;
+              }
             }
             if (msg == null) {
               // email was not found
               activities.deleteDocument(documentIdentifier);
               continue;
             }
+
+            String msgURL = makeDocumentURI(urlTemplate, folderName, id);
               
             if (!activities.checkURLIndexable(msgURL)) {
               errorCode = activities.EXCLUDED_URL;
@@ -692,6 +767,115 @@ public class EmailConnector extends org.apache.manifoldcf.crawler.connectors.Bas
 
   }
 
+  /** Get an open folder, opening it if it isn't in the cache yet */
+  protected Folder getOpenFolder(String folderName, Map<String,Folder> openFolders)
+    throws ManifoldCFException, ServiceInterruption, MessagingException, InterruptedException {
+    Folder folder = openFolders.get(folderName);
+    if (folder == null)
+    {
+      getSession();
+      OpenFolderThread oft = new OpenFolderThread(session, folderName);
+      oft.start();
+      folder = oft.finishUp();
+      openFolders.put(folderName,folder);
+    }
+    return folder;
+  }
+
+  /** Get a folder's UIDVALIDITY and UIDNEXT, reading them only once per folder */
+  protected FolderUIDState getFolderUIDState(String folderName, Folder folder, Map<String,FolderUIDState> folderStates)
+    throws MessagingException, InterruptedException {
+    FolderUIDState state = folderStates.get(folderName);
+    if (state == null) {
+      GetFolderUIDStateThread gst = new GetFolderUIDStateThread(session, folder);
+      gst.start();
+      state = gst.finishUp();
+      folderStates.put(folderName,state);
+    }
+    return state;
+  }
+
+  /** Check whether a document identifier has been replaced by another one, and can no longer name a message.
+  * A Message-ID identifier in a folder that supports UIDs has been seeded again under its UID, and a UID
+  * identifier is worthless once its folder's UIDVALIDITY has changed.
+  *@param documentIdentifier is the document identifier.
+  *@param openFolders is the cache of open folders.
+  *@param folderStates is the cache of folder UID states.
+  *@return true if the document should be deleted.
+  */
+  protected boolean isObsoleteIdentifier(String documentIdentifier, Map<String,Folder> openFolders,
+    Map<String,FolderUIDState> folderStates)
+    throws ManifoldCFException, ServiceInterruption {
+    String folderName = extractFolderNameFromDocumentIdentifier(documentIdentifier);
+    try {
+      Folder folder = getOpenFolder(folderName, openFolders);
+      if (!(folder instanceof UIDFolder))
+        return false;
+      long[] uidEmailID = parseUIDEmailID(extractEmailIDFromDocumentIdentifier(documentIdentifier));
+      if (uidEmailID == null)
+        return true;
+      return uidEmailID[0] != getFolderUIDState(folderName, folder, folderStates).getUIDValidity();
+    } catch (InterruptedException e) {
+      throw new ManifoldCFException(e.getMessage(), ManifoldCFException.INTERRUPTED);
+    } catch (MessagingException e) {
+      handleMessagingException(e, "checking email identifiers");
+      return false;
+    }
+  }
+
+  /** Fetch the messages for documents with UID identifiers, in one request per folder.
+  * Messages that no longer exist, or whose folder's UIDVALIDITY has changed since they were seeded, are
+  * left out of the result.
+  *@param uidDocuments are the document identifiers, keyed by folder name.
+  *@param openFolders is the cache of open folders.
+  *@param folderStates is the cache of folder UID states.
+  *@return the messages, keyed by document identifier.
+  */
+  protected Map<String,Message> fetchMessagesByUID(Map<String,List<String>> uidDocuments, Map<String,Folder> openFolders,
+    Map<String,FolderUIDState> folderStates)
+    throws ManifoldCFException, ServiceInterruption {
+    Map<String,Message> rval = new HashMap<String,Message>();
+    for (Map.Entry<String,List<String>> entry : uidDocuments.entrySet()) {
+      String folderName = entry.getKey();
+      try {
+        Folder folder = getOpenFolder(folderName, openFolders);
+        if (!(folder instanceof UIDFolder))
+          continue;
+        
+        FolderUIDState state = getFolderUIDState(folderName, folder, folderStates);
+        
+        List<String> identifiers = new ArrayList<String>();
+        List<Long> uidList = new ArrayList<Long>();
+        for (String documentIdentifier : entry.getValue()) {
+          long[] uidEmailID = parseUIDEmailID(extractEmailIDFromDocumentIdentifier(documentIdentifier));
+          if (uidEmailID[0] != state.getUIDValidity())
+            continue;
+          identifiers.add(documentIdentifier);
+          uidList.add(new Long(uidEmailID[1]));
+        }
+        if (identifiers.size() == 0)
+          continue;
+        
+        long[] uids = new long[uidList.size()];
+        for (int i = 0; i < uids.length; i++) {
+          uids[i] = uidList.get(i).longValue();
+        }
+        GetMessagesByUIDThread gmt = new GetMessagesByUIDThread(session, folder, uids);
+        gmt.start();
+        Message[] messages = gmt.finishUp();
+        for (int i = 0; i < messages.length; i++) {
+          if (messages[i] != null)
+            rval.put(identifiers.get(i), messages[i]);
+        }
+      } catch (InterruptedException e) {
+        throw new ManifoldCFException(e.getMessage(), ManifoldCFException.INTERRUPTED);
+      } catch (MessagingException e) {
+        handleMessagingException(e, "fetching emails");
+      }
+    }
+    return rval;
+  }
+
   //////////////////////////////End of Repository Connector Methods///////////////////////////////////
 
 
@@ -1286,6 +1470,68 @@ public class EmailConnector extends org.apache.manifoldcf.crawler.connectors.Bas
     return makeSafeFolderName(folderName) + ":" + emailID;
   }
   
+  /** Create a document identifier for a message in a folder that supports UIDs */
+  protected static String createUIDDocumentIdentifier(String folderName, long uidValidity, long uid)
+  {
+    return createDocumentIdentifier(folderName, UID_PREFIX + uidValidity + "." + uid);
+  }
+  
+  /** Parse the email ID part of a document identifier made by createUIDDocumentIdentifier().
+  *@return the UIDVALIDITY and the UID, or null if the email ID is a Message-ID.
+  */
+  protected static long[] parseUIDEmailID(String emailID)
+  {
+    if (!emailID.startsWith(UID_PREFIX))
+      return null;
+    int index = emailID.indexOf(".");
+    if (index == -1)
+      return null;
+    try
+    {
+      return new long[]{Long.parseLong(emailID.substring(UID_PREFIX.length(),index)),
+        Long.parseLong(emailID.substring(index+1))};
+    }
+    catch (NumberFormatException e)
+    {
+      return null;
+    }
+  }
+  
+  /** Pack the UID state of each folder into a seeding version string */
+  protected static String packSeedingVersion(Map<String,FolderUIDState> folderStates)
+  {
+    List<String> values = new ArrayList<String>();
+    for (Map.Entry<String,FolderUIDState> entry : folderStates.entrySet())
+    {
+      values.add(entry.getKey());
+      values.add(Long.toString(entry.getValue().getUIDValidity()));
+      values.add(Long.toString(entry.getValue().getUIDNext()));
+    }
+    StringBuilder sb = new StringBuilder(SEEDING_VERSION_PREFIX);
+    packList(sb, values, '+');
+    return sb.toString();
+  }
+  
+  /** Unpack a seeding version string made by packSeedingVersion().
+  *@return the UID state of each folder, an empty map if there is no seeding version, or null if
+  * the seeding version predates UID seeding.
+  */
+  protected static Map<String,FolderUIDState> unpackSeedingVersion(String seedingVersion)
+  {
+    Map<String,FolderUIDState> rval = new HashMap<String,FolderUIDState>();
+    if (seedingVersion == null)
+      return rval;
+    if (!seedingVersion.startsWith(SEEDING_VERSION_PREFIX))
+      return null;
+    List<String> values = new ArrayList<String>();
+    unpackList(values, seedingVersion, SEEDING_VERSION_PREFIX.length(), '+');
+    for (int i = 0; i + 2 < values.size(); i += 3)
+    {
+      rval.put(values.get(i), new FolderUIDState(Long.parseLong(values.get(i+1)),Long.parseLong(values.get(i+2))));
+    }
+    return rval;
+  }
+  
   /** Find a folder name in a document identifier */
   protected static String extractFolderNameFromDocumentIdentifier(String di)
   {
@@ -1375,6 +1621,30 @@ public class EmailConnector extends org.apache.manifoldcf.crawler.connectors.Bas
     }
   }
 
+  /** The UIDVALIDITY and UIDNEXT values of a folder.
+  */
+  protected static class FolderUIDState
+  {
+    protected final long uidValidity;
+    protected final long uidNext;
+    
+    public FolderUIDState(long uidValidity, long uidNext)
+    {
+      this.uidValidity = uidValidity;
+      this.uidNext = uidNext;
+    }
+    
+    public long getUIDValidity()
+    {
+      return uidValidity;
+    }
+    
+    public long getUIDNext()
+    {
+      return uidNext;
+    }
+  }
+
   /** Class to set up connection.
   */
   protected static class ConnectThread extends Thread
@@ -1760,16 +2030,82 @@ public class EmailConnector extends org.apache.manifoldcf.crawler.connectors.Bas
     protected final EmailSession session;
     protected final Folder folder;
     protected final SearchTerm searchTerm;
+    protected final Message[] candidates;
     
     // Local messages
     protected Message[] messages = null;
     protected Throwable exception = null;
     
     public SearchMessagesThread(EmailSession session, Folder folder, SearchTerm searchTerm)
+    {
+      this(session, folder, searchTerm, null);
+    }
+    
+    /** Search only the given messages, or the whole folder if candidates is null */
+    public SearchMessagesThread(EmailSession session, Folder folder, SearchTerm searchTerm, Message[] candidates)
     {
       this.session = session;
       this.folder = folder;
       this.searchTerm = searchTerm;
+      this.candidates = candidates;
+      setDaemon(true);
+    }
+    
+    public void run()
+    {
+      try
+      {
+        if (candidates == null)
+          messages = session.search(folder, searchTerm);
+        else
+          messages = session.search(folder, searchTerm, candidates);
+      }
+      catch (Throwable e)
+      {
+        exception = e;
+      }
+    }
+    
+    public Message[] finishUp()
+      throws MessagingException, InterruptedException
+    {
+      try
+      {
+        join();
+        if (exception != null)
+        {
+          if (exception instanceof RuntimeException)
+            throw (RuntimeException)exception;
+          else if (exception instanceof Error)
+            throw (Error)exception;
+          else if (exception instanceof MessagingException)
+            throw (MessagingException)exception;
+          else
+            throw new RuntimeException("Unknown exception type: "+exception.getClass().getName()+": "+exception.getMessage(),exception);
+        }
+        return messages;
+      } catch (InterruptedException e) {
+        this.interrupt();
+        throw e;
+      }
+    }
+  }
+
+  /** Class to get the UIDVALIDITY and UIDNEXT values of a folder.
+  */
+  protected static class GetFolderUIDStateThread extends Thread
+  {
+    protected final EmailSession session;
+    protected final Folder folder;
+    
+    // Local state
+    protected FolderUIDState state = null;
+    protected Throwable exception = null;
+    
+    public GetFolderUIDStateThread(EmailSession session, Folder folder)
+    {
+      this.session = session;
+      this.folder = folder;
       setDaemon(true);
     }
     
@@ -1777,7 +2113,66 @@ public class EmailConnector extends org.apache.manifoldcf.crawler.connectors.Bas
     {
       try
       {
-        messages = session.search(folder, searchTerm);
+        long uidValidity = session.getUIDValidity(folder);
+        long uidNext = session.getUIDNext(folder);
+        state = new FolderUIDState(uidValidity, uidNext);
+      }
+      catch (Throwable e)
+      {
+        exception = e;
+      }
+    }
+    
+    public FolderUIDState finishUp()
+      throws MessagingException, InterruptedException
+    {
+      try
+      {
+        join();
+        if (exception != null)
+        {
+          if (exception instanceof RuntimeException)
+            throw (RuntimeException)exception;
+          else if (exception instanceof Error)
+            throw (Error)exception;
+          else if (exception instanceof MessagingException)
+            throw (MessagingException)exception;
+          else
+            throw new RuntimeException("Unknown exception type: "+exception.getClass().getName()+": "+exception.getMessage(),exception);
+        }
+        return state;
+      } catch (InterruptedException e) {
+        this.interrupt();
+        throw e;
+      }
+    }
+  }
+
+  /** Class to get the messages of a folder that arrived at or after a given UID.
+  */
+  protected static class GetMessagesSinceUIDThread extends Thread
+  {
+    protected final EmailSession session;
+    protected final Folder folder;
+    protected final long startUID;
+    
+    // Local messages
+    protected Message[] messages = null;
+    protected Throwable exception = null;
+    
+    public GetMessagesSinceUIDThread(EmailSession session, Folder folder, long startUID)
+    {
+      this.session = session;
+      this.folder = folder;
+      this.startUID = startUID;
+      setDaemon(true);
+    }
+    
+    public void run()
+    {
+      try
+      {
+        messages = session.getMessagesSinceUID(folder, startUID);
       }
       catch (Throwable e)
       {
@@ -1810,4 +2205,118 @@ public class EmailConnector extends org.apache.manifoldcf.crawler.connectors.Bas
     }
   }
 
+  /** Class to fetch a batch of messages by UID.
+  */
+  protected static class GetMessagesByUIDThread extends Thread
+  {
+    protected final EmailSession session;
+    protected final Folder folder;
+    protected final long[] uids;
+    
+    // Local messages
+    protected Message[] messages = null;
+    protected Throwable exception = null;
+    
+    public GetMessagesByUIDThread(EmailSession session, Folder folder, long[] uids)
+    {
+      this.session = session;
+      this.folder = folder;
+      this.uids = uids;
+      setDaemon(true);
+    }
+    
+    public void run()
+    {
+      try
+      {
+        messages = session.getMessagesByUID(folder, uids);
+      }
+      catch (Throwable e)
+      {
+        exception = e;
+      }
+    }
+    
+    public Message[] finishUp()
+      throws MessagingException, InterruptedException
+    {
+      try
+      {
+        join();
+        if (exception != null)
+        {
+          if (exception instanceof RuntimeException)
+            throw (RuntimeException)exception;
+          else if (exception instanceof Error)
+            throw (Error)exception;
+          else if (exception instanceof MessagingException)
+            throw (MessagingException)exception;
+          else
+            throw new RuntimeException("Unknown exception type: "+exception.getClass().getName()+": "+exception.getMessage(),exception);
+        }
+        return messages;
+      } catch (InterruptedException e) {
+        this.interrupt();
+        throw e;
+      }
+    }
+  }
+
+  /** Class to get the UIDs of a set of messages.
+  */
+  protected static class GetUIDsThread extends Thread
+  {
+    protected final EmailSession session;
+    protected final Folder folder;
+    protected final Message[] messages;
+    
+    // Local UIDs
+    protected long[] uids = null;
+    protected Throwable exception = null;
+    
+    public GetUIDsThread(EmailSession session, Folder folder, Message[] messages)
+    {
+      this.session = session;
+      this.folder = folder;
+      this.messages = messages;
+      setDaemon(true);
+    }
+    
+    public void run()
+    {
+      try
+      {
+        uids = session.getUIDs(folder, messages);
+      }
+      catch (Throwable e)
+      {
+        exception = e;
+      }
+    }
+    
+    public long[] finishUp()
+      throws MessagingException, InterruptedException
+    {
+      try
+      {
+        join();
+        if (exception != null)
+        {
+          if (exception instanceof RuntimeException)
+            throw (RuntimeException)exception;
+          else if (exception instanceof Error)
+            throw (Error)exception;
+          else if (exception instanceof MessagingException)
+            throw (MessagingException)exception;
+          else
+            throw new RuntimeException("Unknown exception type: "+exception.getClass().getName()+": "+exception.getMessage(),exception);
+        }
+        return uids;
+      } catch (InterruptedException e) {
+        this.interrupt();
+        throw e;
+      }
+    }
+  }
+
 }
\ No newline at end of file
@@ -119,7 +119,96 @@ public class EmailSession
   {
     return folder.search(searchTerm);
   }
-  
+
+  public Message[] search(Folder folder, SearchTerm searchTerm, Message[] messages)
+    throws MessagingException
+  {
+    return folder.search(searchTerm, messages);
+  }
+
+  /** Get the UIDVALIDITY value of a folder that supports UIDs */
+  public long getUIDValidity(Folder folder)
+    throws MessagingException
+  {
+    return ((UIDFolder)folder).getUIDValidity();
+  }
+
+  /** Get the UID the server will assign to the next message appended to a folder that supports UIDs.
+  * If the server does not report UIDNEXT, one past the highest UID in the folder is used instead.
+  */
+  public long getUIDNext(Folder folder)
+    throws MessagingException
+  {
+    if (folder instanceof com.sun.mail.imap.IMAPFolder)
+    {
+      long uidNext = ((com.sun.mail.imap.IMAPFolder)folder).getUIDNext();
+      if (uidNext > 0L)
+        return uidNext;
+    }
+    int messageCount = folder.getMessageCount();
+    if (messageCount <= 0)
+      return 1L;
+    return ((UIDFolder)folder).getUID(folder.getMessage(messageCount)) + 1L;
+  }
+
+  /** Get all messages in a folder whose UID is at least the given value */
+  public Message[] getMessagesSinceUID(Folder folder, long startUID)
+    throws MessagingException
+  {
+    UIDFolder uidFolder = (UIDFolder)folder;
+    Message[] messages = uidFolder.getMessagesByUID(startUID, UIDFolder.LASTUID);
+    // A range of n:* always includes the last message, even when its UID is below n
+    List<Message> rval = new ArrayList<Message>(messages.length);
+    for (Message message : messages)
+    {
+      if (message != null && uidFolder.getUID(message) >= startUID)
+        rval.add(message);
+    }
+    return rval.toArray(new Message[0]);
+  }
+
+  /** Get messages by UID, prefetching what is needed to process them.
+  *@return an array parallel to the UIDs, with null entries for messages that no longer exist.
+  */
+  public Message[] getMessagesByUID(Folder folder, long[] uids)
+    throws MessagingException
+  {
+    Message[] messages = ((UIDFolder)folder).getMessagesByUID(uids);
+    List<Message> existing = new ArrayList<Message>(messages.length);
+    for (Message message : messages)
+    {
+      if (message != null)
+        existing.add(message);
+    }
+    if (existing.size() > 0)
+    {
+      FetchProfile fetchProfile = new FetchProfile();
+      // For IMAP, the envelope includes the message size
+      fetchProfile.add(FetchProfile.Item.ENVELOPE);
+      fetchProfile.add(FetchProfile.Item.FLAGS);
+      fetchProfile.add(FetchProfile.Item.CONTENT_INFO);
+      fetchProfile.add(UIDFolder.FetchProfileItem.UID);
+      folder.fetch(existing.toArray(new Message[0]), fetchProfile);
+    }
+    return messages;
+  }
+
+  /** Get the UIDs of a set of messages, fetching them in one round trip */
+  public long[] getUIDs(Folder folder, Message[] messages)
+    throws MessagingException
+  {
+    FetchProfile fetchProfile = new FetchProfile();
+    fetchProfile.add(UIDFolder.FetchProfileItem.UID);
+    folder.fetch(messages, fetchProfile);
+    UIDFolder uidFolder = (UIDFolder)folder;
+    long[] rval = new long[messages.length];
+    for (int i = 0; i < messages.length; i++)
+    {
+      rval[i] = uidFolder.getUID(messages[i]);
+    }
+    return rval;
+  }
+
   public void close()
     throws MessagingException
   {
@@ -0,0 +1,84 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.email;
+
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Checks the UID document identifiers and the seeding version strings */
+public class EmailConnectorTest
+{
+
+  @Test
+  public void uidIdentifiersRoundTrip()
+  {
+    String documentIdentifier = EmailConnector.createUIDDocumentIdentifier("INBOX",1234L,56L);
+    assertEquals("INBOX",EmailConnector.extractFolderNameFromDocumentIdentifier(documentIdentifier));
+    long[] uidEmailID = EmailConnector.parseUIDEmailID(EmailConnector.extractEmailIDFromDocumentIdentifier(documentIdentifier));
+    assertNotNull(uidEmailID);
+    assertEquals(1234L,uidEmailID[0]);
+    assertEquals(56L,uidEmailID[1]);
+  }
+
+  @Test
+  public void messageIDsAreNotUIDs()
+  {
+    assertNull(EmailConnector.parseUIDEmailID("<1234.5678@example.com>"));
+    // Looks like a UID identifier, but isn't one
+    assertNull(EmailConnector.parseUIDEmailID("UID1234"));
+    assertNull(EmailConnector.parseUIDEmailID("UIDabc.12"));
+    assertNull(EmailConnector.parseUIDEmailID("UID12.34@example.com"));
+  }
+
+  @Test
+  public void seedingVersionRoundTrip()
+  {
+    Map<String,EmailConnector.FolderUIDState> folderStates = new HashMap<String,EmailConnector.FolderUIDState>();
+    folderStates.put("INBOX",new EmailConnector.FolderUIDState(1234L,57L));
+    // Folder names may contain the separator
+    folderStates.put("Lists+Archive",new EmailConnector.FolderUIDState(99L,1L));
+    String seedingVersion = EmailConnector.packSeedingVersion(folderStates);
+    assertTrue(seedingVersion.startsWith(EmailConnector.SEEDING_VERSION_PREFIX));
+
+    Map<String,EmailConnector.FolderUIDState> unpacked = EmailConnector.unpackSeedingVersion(seedingVersion);
+    assertEquals(2,unpacked.size());
+    assertEquals(1234L,unpacked.get("INBOX").getUIDValidity());
+    assertEquals(57L,unpacked.get("INBOX").getUIDNext());
+    assertEquals(99L,unpacked.get("Lists+Archive").getUIDValidity());
+    assertEquals(1L,unpacked.get("Lists+Archive").getUIDNext());
+
+    // No folders at all
+    String emptyVersion = EmailConnector.packSeedingVersion(new HashMap<String,EmailConnector.FolderUIDState>());
+    assertEquals(0,EmailConnector.unpackSeedingVersion(emptyVersion).size());
+  }
+
+  @Test
+  public void firstAndLegacySeedingVersions()
+  {
+    // A job that has never been seeded
+    Map<String,EmailConnector.FolderUIDState> unpacked = EmailConnector.unpackSeedingVersion(null);
+    assertNotNull(unpacked);
+    assertEquals(0,unpacked.size());
+    // Seeding versions from before UID seeding
+    assertNull(EmailConnector.unpackSeedingVersion(""));
+    assertNull(EmailConnector.unpackSeedingVersion("1400000000000"));
+  }
+
+}
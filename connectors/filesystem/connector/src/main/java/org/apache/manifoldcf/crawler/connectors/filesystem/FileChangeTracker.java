@@ -0,0 +1,257 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.filesystem;
+
+import org.apache.manifoldcf.crawler.system.Logging;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/** This class watches the directory tree under one start point, using a WatchService, and remembers which paths
+* changed.  Trackers live in a registry for the life of the agents process, and are found again by the ID
+* recorded in a job's seeding version string.  Each seeding pass drains the changes seen since the last one.
+* A tracker that is not found (because the process restarted, or seeding runs in another process), or that lost
+* events, means the caller must fall back to walking the tree.  Trackers whose jobs have gone away are closed once
+* they have been idle for long enough, or all at once when the connector is deregistered.
+*/
+public class FileChangeTracker
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** Trackers that have not been drained for this long are closed */
+  protected final static long TRACKER_EXPIRATION_MILLISECONDS = 24L * 60L * 60L * 1000L;
+
+  /** The registry of live trackers, keyed by tracker ID */
+  protected final static Map<String,FileChangeTracker> trackers = new HashMap<String,FileChangeTracker>();
+
+  /** The tracker ID */
+  protected final String trackerID;
+  /** The root of the tree being watched */
+  protected final Path root;
+  /** The watch service */
+  protected final WatchService watchService;
+  /** The watched directories, keyed by watch key */
+  protected final Map<WatchKey,Path> watchedDirectories = new HashMap<WatchKey,Path>();
+  /** The last time the tracker was drained */
+  protected long lastUsedTime;
+
+  /** Constructor.
+  */
+  protected FileChangeTracker(Path root)
+    throws IOException
+  {
+    this.trackerID = UUID.randomUUID().toString();
+    this.root = root;
+    this.watchService = root.getFileSystem().newWatchService();
+    this.lastUsedTime = System.currentTimeMillis();
+  }
+
+  /** Create a tracker for a tree, and add it to the registry.  The tracker watches nothing until directories
+  * are registered with it.
+  *@param root is the root of the tree.
+  *@return the new tracker.
+  */
+  public static FileChangeTracker create(Path root)
+    throws IOException
+  {
+    FileChangeTracker tracker = new FileChangeTracker(root);
+    synchronized (trackers)
+    {
+      expireTrackers(System.currentTimeMillis());
+      trackers.put(tracker.getTrackerID(),tracker);
+    }
+    return tracker;
+  }
+
+  /** Find a tracker in the registry.
+  *@param trackerID is the tracker ID.
+  *@param root is the root of the tree the tracker is supposed to watch.
+  *@return the tracker, or null if there is no such tracker in this process.
+  */
+  public static FileChangeTracker find(String trackerID, Path root)
+  {
+    synchronized (trackers)
+    {
+      expireTrackers(System.currentTimeMillis());
+      FileChangeTracker tracker = trackers.get(trackerID);
+      if (tracker == null || !tracker.root.equals(root))
+        return null;
+      return tracker;
+    }
+  }
+
+  /** Close trackers that have not been used for a while; their jobs have most likely gone away.
+  */
+  public static void expireTrackers()
+  {
+    synchronized (trackers)
+    {
+      expireTrackers(System.currentTimeMillis());
+    }
+  }
+
+  /** Close every tracker in the registry.
+  */
+  public static void closeAll()
+  {
+    List<FileChangeTracker> closing;
+    synchronized (trackers)
+    {
+      closing = new ArrayList<FileChangeTracker>(trackers.values());
+      trackers.clear();
+    }
+    for (FileChangeTracker tracker : closing)
+    {
+      tracker.closeWatchService();
+    }
+  }
+
+  protected static void expireTrackers(long currentTime)
+  {
+    Iterator<FileChangeTracker> iter = trackers.values().iterator();
+    while (iter.hasNext())
+    {
+      FileChangeTracker tracker = iter.next();
+      if (tracker.getLastUsedTime() + TRACKER_EXPIRATION_MILLISECONDS <= currentTime)
+      {
+        iter.remove();
+        tracker.closeWatchService();
+      }
+    }
+  }
+
+  /** Get the tracker ID.
+  */
+  public String getTrackerID()
+  {
+    return trackerID;
+  }
+
+  /** Get the last time this tracker was drained.
+  */
+  public synchronized long getLastUsedTime()
+  {
+    return lastUsedTime;
+  }
+
+  /** Start watching a directory.  Subdirectories are not watched until they are registered too.
+  *@param directory is the directory.
+  */
+  public synchronized void register(Path directory)
+    throws IOException
+  {
+    WatchKey key = directory.register(watchService,
+      StandardWatchEventKinds.ENTRY_CREATE,StandardWatchEventKinds.ENTRY_DELETE,StandardWatchEventKinds.ENTRY_MODIFY);
+    watchedDirectories.put(key,directory);
+  }
+
+  /** Collect the paths that changed since the last time this method was called.  Directories that were created
+  * in the meantime are watched from now on, and everything already in them is reported as changed.  New
+  * directories the filter rejects are neither watched nor looked into, just as a crawl would skip them.
+  *@param changes is where the changed paths are added.  Deleted paths are included.
+  *@param directoryFilter decides which new directories to watch.
+  *@return false if the watch service lost events, in which case the caller must walk the tree instead.
+  */
+  public synchronized boolean drainChanges(final Collection<Path> changes, final DirectoryStream.Filter<Path> directoryFilter)
+    throws IOException
+  {
+    lastUsedTime = System.currentTimeMillis();
+    boolean complete = true;
+    WatchKey key;
+    while ((key = watchService.poll()) != null)
+    {
+      Path directory = watchedDirectories.get(key);
+      for (WatchEvent<?> event : key.pollEvents())
+      {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+        {
+          complete = false;
+          continue;
+        }
+        if (directory == null)
+          continue;
+        Path child = directory.resolve((Path)event.context());
+        changes.add(child);
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child,LinkOption.NOFOLLOW_LINKS))
+        {
+          // A new directory: watch it, and report what got into it before we did
+          Files.walkFileTree(child,new SimpleFileVisitor<Path>()
+          {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+              throws IOException
+            {
+              if (!directoryFilter.accept(dir))
+                return FileVisitResult.SKIP_SUBTREE;
+              register(dir);
+              changes.add(dir);
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+            {
+              changes.add(file);
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e)
+            {
+              // Deleted again before we got to it
+              changes.add(file);
+              return FileVisitResult.CONTINUE;
+            }
+          });
+        }
+      }
+      if (!key.reset())
+        watchedDirectories.remove(key);
+    }
+    if (!complete)
+      Logging.connectors.warn("File system: Change tracking for '"+root+"' lost events; walking the tree instead");
+    return complete;
+  }
+
+  /** Remove this tracker from the registry, and stop watching.
+  */
+  public void close()
+  {
+    synchronized (trackers)
+    {
+      trackers.remove(trackerID);
+    }
+    closeWatchService();
+  }
+
+  protected synchronized void closeWatchService()
+  {
+    try
+    {
+      watchService.close();
+    }
+    catch (IOException e)
+    {
+      Logging.connectors.warn("File system: Error closing watch service for '"+root+"': "+e.getMessage(),e);
+    }
+    watchedDirectories.clear();
+  }
+
+}
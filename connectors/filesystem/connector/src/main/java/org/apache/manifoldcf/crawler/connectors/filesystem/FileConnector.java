@@ -27,6 +27,13 @@ import java.util.*;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /** This is the "repository connector" for a file system.  It's a relative of the share crawler, and should have
 * comparable basic functionality, with the exception of the ability to use ActiveDirectory and look at other shares.
@@ -56,6 +63,26 @@ public class FileConnector extends org.apache.manifoldcf.crawler.connectors.Base
   {
   }
 
+  /** Uninstall the connector.  Stops watching the trees of jobs that track changes.
+  */
+  @Override
+  public void deinstall(IThreadContext threadContext)
+    throws ManifoldCFException
+  {
+    FileChangeTracker.closeAll();
+    super.deinstall(threadContext);
+  }
+
+  /** Close the change trackers of jobs that have stopped seeding, such as deleted jobs.
+  */
+  @Override
+  public void poll()
+    throws ManifoldCFException
+  {
+    FileChangeTracker.expireTrackers();
+    super.poll();
+  }
+
   /** Tell the world what model this connector uses for getDocumentIdentifiers().
   * This must return a model value as specified above.
   *@return the model type value.
@@ -198,6 +225,7 @@ public class FileConnector extends org.apache.manifoldcf.crawler.connectors.Base
     String lastSeedVersion, long seedTime, int jobMode)
     throws ManifoldCFException, ServiceInterruption
   {
+    List<String> seeds = new ArrayList<String>();
     try
     {
       // Walk the specification for the "startpoint" types.  Amalgamate these into a list of strings.
@@ -214,6 +242,7 @@ public class FileConnector extends org.apache.manifoldcf.crawler.connectors.Base
             Logging.connectors.debug("Seed = '"+seed+"'");
           }
           activities.addSeedDocument(seed);
+          seeds.add(seed);
         }
       }
     }
@@ -221,7 +250,230 @@ public class FileConnector extends org.apache.manifoldcf.crawler.connectors.Base
     {
       throw new ManifoldCFException("Could not get a canonical path: "+e.getMessage(),e);
     }
-    return "";
+    if (!isChangeTrackingEnabled(spec))
+      return "";
+    return seedChanges(activities,spec,seeds,lastSeedVersion,seedTime);
+  }
+
+  /** Seed the paths under the start points that changed since the last seeding pass, for jobs that track changes.
+  * The changes come from the FileChangeTracker the last pass left behind, if this process has it; otherwise
+  * the tree is walked, and the paths modified since the last pass are seeded.  The first pass seeds every
+  * included path: it runs as a crawl from the beginning, which purges whatever it does not reach, and directories
+  * that have not changed are not listed again.
+  *@return the new seeding version string, which records the seed time and the tracker for each start point.
+  */
+  protected String seedChanges(ISeedingActivity activities, Specification spec, List<String> seeds,
+    String lastSeedVersion, long seedTime)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    // Unpack the last seed time, and the tracker IDs keyed by start point
+    long lastSeedTime = 0L;
+    Map<String,String> lastTrackerIDs = new HashMap<String,String>();
+    if (lastSeedVersion != null && lastSeedVersion.startsWith("T"))
+    {
+      StringBuilder sb = new StringBuilder();
+      int index = unpack(sb,lastSeedVersion,1,'+');
+      lastSeedTime = Long.parseLong(sb.toString());
+      List<String> values = new ArrayList<String>();
+      unpackList(values,lastSeedVersion,index,'+');
+      for (int i = 0; i + 1 < values.size(); i += 2)
+      {
+        lastTrackerIDs.put(values.get(i),values.get(i+1));
+      }
+    }
+
+    List<String> trackerValues = new ArrayList<String>();
+    for (String seed : seeds)
+    {
+      Path root = Paths.get(seed);
+      Set<Path> changes = new LinkedHashSet<Path>();
+      FileChangeTracker tracker = null;
+      String lastTrackerID = lastTrackerIDs.get(seed);
+      if (lastTrackerID != null && lastTrackerID.length() > 0)
+        tracker = FileChangeTracker.find(lastTrackerID,root);
+      try
+      {
+        if (tracker != null && !tracker.drainChanges(changes,new IncludeFilter(spec)))
+        {
+          tracker.close();
+          tracker = null;
+        }
+        if (tracker == null)
+        {
+          ChangeWalker walker = new ChangeWalker(root,lastSeedTime,spec,changes);
+          try
+          {
+            Files.walkFileTree(root,walker);
+          }
+          finally
+          {
+            tracker = walker.getTracker();
+          }
+        }
+
+        for (Path change : changes)
+        {
+          File file = change.toFile();
+          String canonicalPath = file.getCanonicalPath();
+          if (canonicalPath.equals(seed))
+            continue;
+          // Deleted paths are always seeded, so that they get removed
+          if (!file.exists() || checkIncludeTree(file,canonicalPath,seed,spec))
+            activities.addSeedDocument(canonicalPath);
+        }
+      }
+      catch (IOException e)
+      {
+        if (tracker != null)
+          tracker.close();
+        throw new ManifoldCFException("IO error finding changes under '"+seed+"': "+e.getMessage(),e);
+      }
+      if (Logging.connectors.isDebugEnabled())
+        Logging.connectors.debug("Found "+changes.size()+" changed paths under '"+seed+"'");
+      trackerValues.add(seed);
+      trackerValues.add((tracker == null)?"":tracker.getTrackerID());
+    }
+
+    StringBuilder sb = new StringBuilder("T");
+    pack(sb,Long.toString(seedTime),'+');
+    packList(sb,trackerValues,'+');
+    return sb.toString();
+  }
+
+  /** Check whether a changed path would be reached by crawling down from its start point, by checking it and
+  * every directory between it and the start point.
+  */
+  protected static boolean checkIncludeTree(File file, String canonicalPath, String seed, Specification spec)
+    throws ManifoldCFException, IOException
+  {
+    if (!checkInclude(file,canonicalPath,spec))
+      return false;
+    File parent = file.getParentFile();
+    while (parent != null)
+    {
+      String parentPath = parent.getCanonicalPath();
+      if (parentPath.length() <= seed.length())
+        break;
+      if (!checkInclude(parent,parentPath,spec))
+        return false;
+      parent = parent.getParentFile();
+    }
+    return true;
+  }
+
+  /** This filter accepts the directories that a crawl would go into.  The directories between them and the
+  * start point are presumed to have been accepted already.
+  */
+  protected static class IncludeFilter implements DirectoryStream.Filter<Path>
+  {
+    protected final Specification spec;
+
+    public IncludeFilter(Specification spec)
+    {
+      this.spec = spec;
+    }
+
+    @Override
+    public boolean accept(Path path)
+      throws IOException
+    {
+      File file = path.toFile();
+      try
+      {
+        return checkInclude(file,file.getCanonicalPath(),spec);
+      }
+      catch (ManifoldCFException e)
+      {
+        throw new IOException(e.getMessage(),e);
+      }
+    }
+  }
+
+  /** This class walks the tree under a start point, in one pass reading the attributes of every file.  It
+  * watches each included directory with a new FileChangeTracker, and collects the paths modified since the
+  * last seeding pass, or every path if there was no last pass.  Excluded directories are skipped, just as
+  * the crawl would skip them.
+  */
+  protected static class ChangeWalker extends SimpleFileVisitor<Path>
+  {
+    protected final Path root;
+    protected final long lastSeedTime;
+    protected final Collection<Path> changes;
+    protected final IncludeFilter directoryFilter;
+    protected FileChangeTracker tracker;
+
+    public ChangeWalker(Path root, long lastSeedTime, Specification spec, Collection<Path> changes)
+    {
+      this.root = root;
+      this.lastSeedTime = lastSeedTime;
+      this.directoryFilter = new IncludeFilter(spec);
+      this.changes = changes;
+      try
+      {
+        this.tracker = FileChangeTracker.create(root);
+      }
+      catch (IOException e)
+      {
+        Logging.connectors.warn("File system: Can't watch '"+root+"'; changes will be found by walking the tree: "+e.getMessage());
+        this.tracker = null;
+      }
+    }
+
+    /** Get the tracker, or null if the tree can't be watched.
+    */
+    public FileChangeTracker getTracker()
+    {
+      return tracker;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+      throws IOException
+    {
+      if (!dir.equals(root) && !directoryFilter.accept(dir))
+        return FileVisitResult.SKIP_SUBTREE;
+      if (tracker != null)
+      {
+        try
+        {
+          tracker.register(dir);
+        }
+        catch (IOException e)
+        {
+          // Most likely out of watches; keep walking, but without the tracker
+          Logging.connectors.warn("File system: Can't watch '"+dir+"'; changes under '"+root+"' will be found by walking the tree: "+e.getMessage());
+          tracker.close();
+          tracker = null;
+        }
+      }
+      if (isChanged(attrs))
+        changes.add(dir);
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+    {
+      if (isChanged(attrs))
+        changes.add(file);
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFileFailed(Path file, IOException e)
+    {
+      if (Logging.connectors.isDebugEnabled())
+        Logging.connectors.debug("File system: Can't read '"+file+"' while looking for changes: "+e.getMessage());
+      return FileVisitResult.CONTINUE;
+    }
+
+    protected boolean isChanged(BasicFileAttributes attrs)
+    {
+      if (lastSeedTime == 0L)
+        return true;
+      return attrs.lastModifiedTime().toMillis() >= lastSeedTime ||
+        attrs.creationTime().toMillis() >= lastSeedTime;
+    }
   }
   
   /** Process a set of documents.
@@ -261,6 +513,15 @@ public class FileConnector extends org.apache.manifoldcf.crawler.connectors.Base
 
         // No versioning; just reference children
         // Chained connectors scan parent nodes always
+        // ... unless the job tracks changes.  Then anything changed deeper down is seeded directly, so a
+        // directory only needs listing again when its own entries change, which does update its modified date.
+        String directoryVersion = null;
+        if (isChangeTrackingEnabled(spec))
+        {
+          directoryVersion = "D" + new Long(file.lastModified()).toString();
+          if (!activities.checkDocumentNeedsReindexing(documentIdentifier,directoryVersion))
+            continue;
+        }
         // Queue up stuff for directory
         long startTime = System.currentTimeMillis();
         String errorCode = null;
@@ -279,6 +540,8 @@ public class FileConnector extends org.apache.manifoldcf.crawler.connectors.Base
                   activities.addDocumentReference(canonicalPath,documentIdentifier,RELATIONSHIP_CHILD);
               }
             }
+            if (directoryVersion != null)
+              activities.noDocument(documentIdentifier,directoryVersion);
             errorCode = "OK";
           }
           catch (IOException e)
@@ -759,6 +1022,14 @@ public class FileConnector extends org.apache.manifoldcf.crawler.connectors.Base
 "      </table>\n"+
 "    </td>\n"+
 "  </tr>\n"+
+"  <tr><td class=\"separator\" colspan=\"3\"><hr/></td></tr>\n"+
+"  <tr>\n"+
+"    <td class=\"description\"><nobr>" + Messages.getBodyString(locale,"FileConnector.TrackChanges") + "</nobr></td>\n"+
+"    <td class=\"value\">\n"+
+"      <input type=\"hidden\" name=\""+seqPrefix+"changetracking_present\" value=\"true\"/>\n"+
+"      <input name=\""+seqPrefix+"changetracking\" type=\"checkbox\" value=\"true\""+(isChangeTrackingEnabled(ds)?" checked=\"true\"":"")+"/>\n"+
+"    </td>\n"+
+"  </tr>\n"+
 "</table>\n"
       );
     }
@@ -808,6 +1079,15 @@ public class FileConnector extends org.apache.manifoldcf.crawler.connectors.Base
       out.print(
 "<input type=\"hidden\" name=\""+seqPrefix+"pathcount\" value=\""+Integer.toString(k)+"\"/>\n"
       );
+      if (isChangeTrackingEnabled(ds))
+      {
+        out.print(
+"<input type=\"hidden\" name=\""+seqPrefix+"changetracking\" value=\"true\"/>\n"
+        );
+      }
+      out.print(
+"<input type=\"hidden\" name=\""+seqPrefix+"changetracking_present\" value=\"true\"/>\n"
+      );
     }
     
   }
@@ -941,6 +1221,26 @@ public class FileConnector extends org.apache.manifoldcf.crawler.connectors.Base
         ds.addChild(k,node);
       }
     }
+
+    if (variableContext.getParameter(seqPrefix+"changetracking_present") != null)
+    {
+      // Remove the old node, if any
+      for (int i = 0; i < ds.getChildCount(); i++)
+      {
+        if (ds.getChild(i).getType().equals("changetracking"))
+        {
+          ds.removeChild(i);
+          break;
+        }
+      }
+      String changeTracking = variableContext.getParameter(seqPrefix+"changetracking");
+      if (changeTracking != null && changeTracking.equals("true"))
+      {
+        SpecificationNode node = new SpecificationNode("changetracking");
+        node.setAttribute("value","true");
+        ds.addChild(ds.getChildCount(),node);
+      }
+    }
     
     return null;
   }
@@ -1070,12 +1370,32 @@ public class FileConnector extends org.apache.manifoldcf.crawler.connectors.Base
 "  </tr>\n"
     );
 
+    out.print(
+"  <tr>\n"+
+"    <td class=\"description\">" + Messages.getAttributeString(locale,"FileConnector.TrackChanges") + "</td>\n"+
+"    <td class=\"value\">"+(isChangeTrackingEnabled(ds)?Messages.getBodyString(locale,"FileConnector.Yes"):Messages.getBodyString(locale,"FileConnector.No"))+"</td>\n"+
+"  </tr>\n"
+    );
+
     out.print(
 "</table>\n"
     );
     
   }
 
+  /** Check whether a job tracks file system changes, seeding only the paths that changed.
+  */
+  protected static boolean isChangeTrackingEnabled(Specification spec)
+  {
+    for (int i = 0; i < spec.getChildCount(); i++)
+    {
+      SpecificationNode sn = spec.getChild(i);
+      if (sn.getType().equals("changetracking"))
+        return "true".equals(sn.getAttributeValue("value"));
+    }
+    return false;
+  }
+
   // Protected static methods
 
   /** Check if a file or directory should be included, given a document specification.
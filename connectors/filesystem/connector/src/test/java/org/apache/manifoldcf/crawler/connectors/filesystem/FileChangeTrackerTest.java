@@ -0,0 +1,152 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.filesystem;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Checks the change tracker registry, and the changes a tracker reports */
+public class FileChangeTrackerTest
+{
+  protected Path root;
+
+  @Before
+  public void createTree()
+    throws Exception
+  {
+    root = Files.createTempDirectory("changetracker").toRealPath();
+  }
+
+  @After
+  public void removeTree()
+    throws Exception
+  {
+    FileChangeTracker.closeAll();
+    Files.walkFileTree(root,new SimpleFileVisitor<Path>()
+    {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+        throws IOException
+      {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException e)
+        throws IOException
+      {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  @Test
+  public void registryFindsLiveTrackers()
+    throws Exception
+  {
+    FileChangeTracker tracker = FileChangeTracker.create(root);
+    assertSame(tracker,FileChangeTracker.find(tracker.getTrackerID(),root));
+    // A tracker only answers for the tree it watches
+    assertNull(FileChangeTracker.find(tracker.getTrackerID(),root.resolve("other")));
+    tracker.close();
+    assertNull(FileChangeTracker.find(tracker.getTrackerID(),root));
+  }
+
+  @Test
+  public void idleTrackersAreClosed()
+    throws Exception
+  {
+    FileChangeTracker older = FileChangeTracker.create(root);
+    FileChangeTracker newer = FileChangeTracker.create(root);
+    // A day later, both have been idle for too long
+    synchronized (FileChangeTracker.trackers)
+    {
+      FileChangeTracker.expireTrackers(newer.getLastUsedTime() + FileChangeTracker.TRACKER_EXPIRATION_MILLISECONDS);
+    }
+    assertNull(FileChangeTracker.find(older.getTrackerID(),root));
+    assertNull(FileChangeTracker.find(newer.getTrackerID(),root));
+
+    FileChangeTracker first = FileChangeTracker.create(root);
+    FileChangeTracker second = FileChangeTracker.create(root);
+    FileChangeTracker.expireTrackers();
+    assertSame(first,FileChangeTracker.find(first.getTrackerID(),root));
+    FileChangeTracker.closeAll();
+    assertNull(FileChangeTracker.find(first.getTrackerID(),root));
+    assertNull(FileChangeTracker.find(second.getTrackerID(),root));
+  }
+
+  @Test
+  public void newDirectoriesAreWatchedUnlessExcluded()
+    throws Exception
+  {
+    FileChangeTracker tracker = FileChangeTracker.create(root);
+    tracker.register(root);
+    DirectoryStream.Filter<Path> filter = new DirectoryStream.Filter<Path>()
+    {
+      @Override
+      public boolean accept(Path path)
+      {
+        return !path.getFileName().toString().equals("skip");
+      }
+    };
+
+    Path sub = Files.createDirectory(root.resolve("sub"));
+    Files.write(sub.resolve("b.txt"),new byte[]{1});
+    Path skip = Files.createDirectory(root.resolve("skip"));
+    Files.write(skip.resolve("c.txt"),new byte[]{1});
+    Files.write(root.resolve("a.txt"),new byte[]{1});
+
+    Set<Path> changes = waitForChanges(tracker,filter,root.resolve("a.txt"),sub,sub.resolve("b.txt"),skip);
+    // Nothing inside an excluded directory is reported
+    assertFalse(changes.contains(skip.resolve("c.txt")));
+
+    // The new directory is watched from now on, and the excluded one is not
+    Files.write(skip.resolve("d.txt"),new byte[]{1});
+    Files.write(sub.resolve("e.txt"),new byte[]{1});
+    changes = waitForChanges(tracker,filter,sub.resolve("e.txt"));
+    assertFalse(changes.contains(skip.resolve("d.txt")));
+
+    Files.delete(sub.resolve("e.txt"));
+    waitForChanges(tracker,filter,sub.resolve("e.txt"));
+  }
+
+  /** Drain a tracker until all the expected paths have been reported */
+  protected static Set<Path> waitForChanges(FileChangeTracker tracker, DirectoryStream.Filter<Path> filter, Path... expected)
+    throws Exception
+  {
+    Set<Path> changes = new HashSet<Path>();
+    long deadline = System.currentTimeMillis() + 30000L;
+    while (true)
+    {
+      assertTrue(tracker.drainChanges(changes,filter));
+      if (changes.containsAll(Arrays.asList(expected)))
+        return changes;
+      if (System.currentTimeMillis() > deadline)
+        fail("Changes "+Arrays.asList(expected)+" never reported; got "+changes);
+      Thread.sleep(50L);
+    }
+  }
+
+}
@@ -53,6 +53,7 @@ public class NavigationUITester
     HTMLTester.Selectbox selectbox;
     HTMLTester.Button button;
     HTMLTester.Radiobutton radiobutton;
+    HTMLTester.Checkbox checkbox;
     HTMLTester.Loop loop;
     
     window = testerInstance.openMainWindow(startURL);
@@ -194,6 +195,10 @@ public class NavigationUITester
     radiobutton.select();
     link = window.findLink(testerInstance.createStringDescription("Repository Paths tab"));
     link.click();
+    window = testerInstance.findWindow(null);
+    form = window.findForm(testerInstance.createStringDescription("editjob"));
+    checkbox = form.findCheckbox(testerInstance.createStringDescription("s0_changetracking"),testerInstance.createStringDescription("true"));
+    checkbox.select();
     // Add a record to the Paths list
     
     // MHL
@@ -20,7 +20,9 @@ package org.apache.manifoldcf.crawler.connectors.hdfs;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.manifoldcf.agents.interfaces.RepositoryDocument;
 import org.apache.manifoldcf.agents.interfaces.ServiceInterruption;
 import org.apache.manifoldcf.core.interfaces.*;
@@ -33,6 +35,7 @@ import org.apache.manifoldcf.connectorcommon.common.XThreadStringBuffer;
 import org.apache.manifoldcf.connectorcommon.extmimemap.ExtensionMimeMap;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -53,6 +56,15 @@ public class HDFSRepositoryConnector extends org.apache.manifoldcf.crawler.conne
   // Activities list
   protected static final String[] activitiesList = new String[]{ACTIVITY_READ};
 
+  /** The most threads that look up statuses for one batch of documents */
+  protected static final int MAX_STATUS_THREADS = 4;
+
+  /** Property naming the domain socket the local datanode listens on; if set, blocks on this host are read directly */
+  public static final String PROPERTY_HDFS_DOMAIN_SOCKET_PATH = "org.apache.manifoldcf.crawler.connectors.hdfs.domainsocketpath";
+
+  /** The domain socket path, or null */
+  protected String domainSocketPath = null;
+
   protected String nameNodeProtocol = null;
   protected String nameNodeHost = null;
   protected String nameNodePort = null;
@@ -111,7 +123,20 @@ public class HDFSRepositoryConnector extends org.apache.manifoldcf.crawler.conne
    */
   @Override
   public int getMaxDocumentRequest() {
-    return 1;
+    // The statuses of a batch are looked up in parallel
+    return 10;
+  }
+
+  /** Set thread context.
+   * Use the opportunity to pick up the properties we'll need.
+   */
+  @Override
+  public void setThreadContext(IThreadContext threadContext)
+    throws ManifoldCFException
+  {
+    super.setThreadContext(threadContext);
+    String socketPath = LockManagerFactory.getStringProperty(threadContext, PROPERTY_HDFS_DOMAIN_SOCKET_PATH, "");
+    domainSocketPath = (socketPath.length() > 0)?socketPath:null;
   }
 
   /* (non-Javadoc)
@@ -176,7 +201,7 @@ public class HDFSRepositoryConnector extends org.apache.manifoldcf.crawler.conne
 
       String nameNode = nameNodeProtocol+"://"+nameNodeHost+":"+nameNodePort;
 
-      GetSessionThread t = new GetSessionThread(nameNode,user);
+      GetSessionThread t = new GetSessionThread(nameNode,user,domainSocketPath);
       try {
         t.start();
         t.finishUp();
@@ -329,11 +354,19 @@ public class HDFSRepositoryConnector extends org.apache.manifoldcf.crawler.conne
     IProcessActivity activities, int jobMode, boolean usesDefaultAuthority)
     throws ManifoldCFException, ServiceInterruption {
       
-    for (String documentIdentifier : documentIdentifiers) {
+    // Look up the status of the whole batch at once
+    Path[] paths = new Path[documentIdentifiers.length];
+    for (int i = 0; i < documentIdentifiers.length; i++) {
+      paths[i] = new Path(documentIdentifiers[i]);
+    }
+    FileStatus[] fileStatuses = getObjects(paths);
+
+    for (int i = 0; i < documentIdentifiers.length; i++) {
       
+      String documentIdentifier = documentIdentifiers[i];
       String versionString;
       
-      FileStatus fileStatus = getObject(new Path(documentIdentifier));
+      FileStatus fileStatus = fileStatuses[i];
       if (fileStatus != null) {
         
         boolean isDirectory = fileStatus.isDirectory();
@@ -348,18 +381,7 @@ public class HDFSRepositoryConnector extends org.apache.manifoldcf.crawler.conne
           
           if (activities.checkDocumentNeedsReindexing(documentIdentifier,versionString)) {
             // Process directory!
-            String entityReference = documentIdentifier;
-            FileStatus[] fileStatuses = getChildren(fileStatus.getPath());
-            if (fileStatuses == null) {
-              continue;
-            }
-            for (int j = 0; j < fileStatuses.length; j++) {
-              FileStatus fs = fileStatuses[j++];
-              String canonicalPath = fs.getPath().toString();
-              if (checkInclude(session.getUri().toString(),fs,canonicalPath,spec)) {
-                activities.addDocumentReference(canonicalPath,documentIdentifier,RELATIONSHIP_CHILD);
-              }
-            }
+            addChildren(documentIdentifier,fileStatus.getPath(),spec,activities);
           }
         } else {
           long lastModified = fileStatus.getModificationTime();
@@ -1711,20 +1733,22 @@ public class HDFSRepositoryConnector extends org.apache.manifoldcf.crawler.conne
   protected static class GetSessionThread extends Thread {
     protected final String nameNode;
     protected final String user;
+    protected final String domainSocketPath;
     protected Throwable exception = null;
     protected HDFSSession session;
 
-    public GetSessionThread(String nameNode, String user) {
+    public GetSessionThread(String nameNode, String user, String domainSocketPath) {
       super();
       this.nameNode = nameNode;
       this.user = user;
+      this.domainSocketPath = domainSocketPath;
       setDaemon(true);
     }
 
     public void run() {
       try {
         // Create a session
-        session = new HDFSSession(nameNode, user);
+        session = new HDFSSession(nameNode, user, domainSocketPath);
       } catch (Throwable e) {
         this.exception = e;
       }
@@ -1752,13 +1776,40 @@ public class HDFSRepositoryConnector extends org.apache.manifoldcf.crawler.conne
     }
   }
 
-  protected FileStatus[] getChildren(Path path)
+  /** Add references to the included children of a directory.  The listing is streamed from a background
+   * thread, so that references are added while the namenode is still returning pages of it.
+   */
+  protected void addChildren(String documentIdentifier, Path path, Specification spec, IProcessActivity activities)
     throws ManifoldCFException, ServiceInterruption {
-    GetChildrenThread t = new GetChildrenThread(getSession(), path);
+    HDFSSession session = getSession();
+    GetChildrenThread t = new GetChildrenThread(session, path, session.getUri().toString(), spec);
     try {
       t.start();
-      t.finishUp();
-      return t.getResult();
+      boolean wasInterrupted = false;
+      try {
+        XThreadStringBuffer childBuffer = t.getBuffer();
+        // Pick up the paths, and add them to the activities, before we join with the child thread.
+        while (true) {
+          // The only kind of exceptions this can throw are going to shut the process down.
+          String canonicalPath = childBuffer.fetch();
+          if (canonicalPath == null) {
+            break;
+          }
+          activities.addDocumentReference(canonicalPath,documentIdentifier,RELATIONSHIP_CHILD);
+        }
+      } catch (InterruptedException e) {
+        wasInterrupted = true;
+        throw e;
+      } catch (ManifoldCFException e) {
+        if (e.getErrorCode() == ManifoldCFException.INTERRUPTED) {
+          wasInterrupted = true;
+        }
+        throw e;
+      } finally {
+        if (!wasInterrupted) {
+          t.finishUp();
+        }
+      }
     } catch (InterruptedException e) {
       t.interrupt();
       throw new ManifoldCFException("Interrupted: " + e.getMessage(), e, ManifoldCFException.INTERRUPTED);
@@ -1770,32 +1821,56 @@ public class HDFSRepositoryConnector extends org.apache.manifoldcf.crawler.conne
     } catch (IOException e) {
       handleIOException(e);
     }
-    return null;
   }
 
-  protected class GetChildrenThread extends Thread {
+  protected static class GetChildrenThread extends Thread {
     protected Throwable exception = null;
-    protected FileStatus[] result = null;
     protected final HDFSSession session;
     protected final Path path;
+    protected final String nameNode;
+    protected final Specification spec;
+    protected final XThreadStringBuffer childBuffer;
 
-    public GetChildrenThread(HDFSSession session, Path path) {
+    public GetChildrenThread(HDFSSession session, Path path, String nameNode, Specification spec) {
       super();
       this.session = session;
       this.path = path;
+      this.nameNode = nameNode;
+      this.spec = spec;
+      this.childBuffer = new XThreadStringBuffer();
       setDaemon(true);
     }
 
     @Override
     public void run() {
       try {
-        result = session.listStatus(path);
+        RemoteIterator<LocatedFileStatus> iter = session.listLocatedStatus(path);
+        if (iter != null) {
+          try {
+            while (iter.hasNext()) {
+              FileStatus fs = iter.next();
+              String canonicalPath = fs.getPath().toString();
+              if (checkInclude(nameNode,fs,canonicalPath,spec)) {
+                childBuffer.add(canonicalPath);
+              }
+            }
+          } catch (FileNotFoundException e) {
+            // The directory went away while we were listing it
+          }
+        }
       } catch (Throwable e) {
         this.exception = e;
+      } finally {
+        childBuffer.signalDone();
       }
     }
 
-    public void finishUp() throws InterruptedException, IOException {
+    public XThreadStringBuffer getBuffer() {
+      return childBuffer;
+    }
+
+    public void finishUp() throws InterruptedException, IOException, ManifoldCFException {
+      childBuffer.abandon();
       join();
       Throwable thr = exception;
       if (thr != null) {
@@ -1805,14 +1880,52 @@ public class HDFSRepositoryConnector extends org.apache.manifoldcf.crawler.conne
           throw (Error) thr;
         } else if (thr instanceof IOException) {
           throw (IOException) thr;
+        } else if (thr instanceof ManifoldCFException) {
+          throw (ManifoldCFException) thr;
+        } else if (thr instanceof InterruptedException) {
+          throw (InterruptedException) thr;
         } else {
           throw new RuntimeException("Unhandled exception of type: "+thr.getClass().getName(),thr);
         }
       }
     }
-    
-    public FileStatus[] getResult() {
-      return result;
+  }
+
+  /** Look up the status of several paths at once, using a few threads that share the work.
+   *@return the statuses, in the same order as the paths; null for paths that do not exist.
+   */
+  protected FileStatus[] getObjects(Path[] paths)
+    throws ManifoldCFException, ServiceInterruption {
+    HDFSSession session = getSession();
+    FileStatus[] rval = new FileStatus[paths.length];
+    AtomicInteger nextIndex = new AtomicInteger(0);
+    GetObjectsThread[] threads = new GetObjectsThread[Math.min(paths.length,MAX_STATUS_THREADS)];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new GetObjectsThread(session,paths,rval,nextIndex);
+      threads[i].start();
+    }
+    try {
+      for (int i = 0; i < threads.length; i++) {
+        threads[i].finishUp();
+      }
+      return rval;
+    } catch (InterruptedException e) {
+      interruptAll(threads);
+      throw new ManifoldCFException("Interrupted: " + e.getMessage(), e, ManifoldCFException.INTERRUPTED);
+    } catch (java.net.SocketTimeoutException e) {
+      handleIOException(e);
+    } catch (InterruptedIOException e) {
+      interruptAll(threads);
+      handleIOException(e);
+    } catch (IOException e) {
+      handleIOException(e);
+    }
+    return null;
+  }
+
+  protected static void interruptAll(Thread[] threads) {
+    for (Thread t : threads) {
+      t.interrupt();
     }
   }
 
@@ -1880,6 +1993,55 @@ public class HDFSRepositoryConnector extends org.apache.manifoldcf.crawler.conne
 
   }
 
+  /** Thread that looks up statuses, taking the next path that nobody has looked up yet until there are none left */
+  protected static class GetObjectsThread extends Thread {
+    protected final HDFSSession session;
+    protected final Path[] paths;
+    protected final FileStatus[] results;
+    protected final AtomicInteger nextIndex;
+    protected Throwable exception = null;
+
+    public GetObjectsThread(HDFSSession session, Path[] paths, FileStatus[] results, AtomicInteger nextIndex) {
+      super();
+      setDaemon(true);
+      this.session = session;
+      this.paths = paths;
+      this.results = results;
+      this.nextIndex = nextIndex;
+    }
+
+    public void run() {
+      try {
+        while (true) {
+          int index = nextIndex.getAndIncrement();
+          if (index >= paths.length) {
+            break;
+          }
+          results[index] = session.getObject(paths[index]);
+        }
+      } catch (Throwable e) {
+        this.exception = e;
+      }
+    }
+
+    public void finishUp() throws InterruptedException, IOException {
+      join();
+      Throwable thr = exception;
+      if (thr != null) {
+        if (thr instanceof RuntimeException) {
+          throw (RuntimeException) thr;
+        } else if (thr instanceof Error) {
+          throw (Error) thr;
+        } else if (thr instanceof IOException) {
+          throw (IOException) thr;
+        } else {
+          throw new RuntimeException("Unhandled exception of type: "+thr.getClass().getName(),thr);
+        }
+      }
+    }
+
+  }
+
   protected static class BackgroundStreamThread extends Thread
   {
     protected final HDFSSession session;
@@ -27,7 +27,9 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.manifoldcf.core.common.*;
 
 import java.io.FileNotFoundException;
@@ -48,7 +50,7 @@ public class HDFSSession {
   private final Configuration config;
   private final String user;
   
-  public HDFSSession(String nameNode, String user) throws URISyntaxException, IOException, InterruptedException {
+  public HDFSSession(String nameNode, String user, String domainSocketPath) throws URISyntaxException, IOException, InterruptedException {
     this.nameNode = nameNode;
     this.user = user;
     // Switch class loaders so that scheme registration works properly
@@ -57,6 +59,11 @@ public class HDFSSession {
       Thread.currentThread().setContextClassLoader(this.getClass().getClassLoader());
       config = new Configuration();
       config.set("fs.defaultFS", nameNode);
+      if (domainSocketPath != null) {
+        // Read blocks that live on this host straight from the local disk, bypassing the datanode
+        config.setBoolean("dfs.client.read.shortcircuit", true);
+        config.set("dfs.domain.socket.path", domainSocketPath);
+      }
       fileSystem = FileSystem.get(new URI(nameNode), config, user);
     } finally {
       Thread.currentThread().setContextClassLoader(ocl);
@@ -82,15 +89,19 @@ public class HDFSSession {
     return info;
   }
 
-  public FileStatus[] listStatus(Path path)
+  /** List a directory.  The namenode hands the entries back a page at a time, as the iterator is consumed,
+   * so even very large directories can be listed without holding them all in memory.
+   *@return the iterator, or null if the directory does not exist.
+   */
+  public RemoteIterator<LocatedFileStatus> listLocatedStatus(Path path)
     throws IOException {
     try {
-      return fileSystem.listStatus(path);
+      return fileSystem.listLocatedStatus(path);
     } catch (FileNotFoundException e) {
       return null;
     }
   }
-  
+
   public URI getUri() {
     return fileSystem.getUri();
   }
@@ -0,0 +1,99 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.sharedrive;
+
+import java.util.*;
+
+/** This is a size-bounded, in-memory cache whose entries expire after a while.  When it is full, the least
+* recently used entries are dropped first.  It is safe to use from several threads at once.
+*/
+public class ExpiringCache<V>
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** The entries, in access order */
+  protected final Map<String,Entry<V>> entries;
+
+  /** Constructor.
+  *@param maxEntries is the maximum number of entries to keep.
+  */
+  public ExpiringCache(final int maxEntries)
+  {
+    entries = new LinkedHashMap<String,Entry<V>>(16,0.75f,true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String,Entry<V>> eldest)
+      {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /** Look up a value.
+  *@param key is the key.
+  *@param currentTime is the current time in ms since epoch.
+  *@return the value, or null if there is no live entry for the key.
+  */
+  public synchronized V get(String key, long currentTime)
+  {
+    Entry<V> entry = entries.get(key);
+    if (entry == null)
+      return null;
+    if (entry.getExpirationTime() <= currentTime)
+    {
+      entries.remove(key);
+      return null;
+    }
+    return entry.getValue();
+  }
+
+  /** Save a value.
+  *@param key is the key.
+  *@param value is the value; must not be null.
+  *@param expirationTime is the time the entry expires, in ms since epoch.
+  */
+  public synchronized void put(String key, V value, long expirationTime)
+  {
+    entries.put(key,new Entry<V>(value,expirationTime));
+  }
+
+  /** A cached value, with its expiration time */
+  protected static class Entry<V>
+  {
+    protected final V value;
+    protected final long expirationTime;
+
+    public Entry(V value, long expirationTime)
+    {
+      this.value = value;
+      this.expirationTime = expirationTime;
+    }
+
+    public V getValue()
+    {
+      return value;
+    }
+
+    public long getExpirationTime()
+    {
+      return expirationTime;
+    }
+  }
+
+}
@@ -99,6 +99,12 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
 
   // Properties this connector needs (that can only be configured once)
   public final static String PROPERTY_JCIFS_USE_NTLM_V1 = "org.apache.manifoldcf.crawler.connectors.jcifs.usentlmv1";
+  public final static String PROPERTY_JCIFS_CACHE_SECONDS = "org.apache.manifoldcf.crawler.connectors.jcifs.cacheseconds";
+  
+  /** Share and directory security descriptors, shared by all connections in this process */
+  protected final static ExpiringCache<SecurityDescriptor> securityCache = new ExpiringCache<SecurityDescriptor>(10000);
+  /** Attributes of files and directories that were seen in a directory listing */
+  protected final static ExpiringCache<FileInfo> fileInfoCache = new ExpiringCache<FileInfo>(100000);
   
   // Static initialization of various system properties.  This hopefully takes place
   // before jcifs is loaded.
@@ -117,8 +123,11 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
   private String username = null;
   private String password = null;
   private boolean useSIDs = true;
+  private long cacheLifetime = 300000L;
 
   private NtlmPasswordAuthentication pa;
+  /** Prefix of this connection's cache keys; what a descriptor looks like depends on who reads it, and how */
+  private String cacheKeyPrefix = null;
   
   /** Deny access token for default authority */
   private final static String defaultAuthorityDenyToken = GLOBAL_DENY_TOKEN;
@@ -149,6 +158,7 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
       System.setProperty("jcifs.smb.lmCompatibility","0");
       System.setProperty("jcifs.smb.client.useExtendedSecurity","false");
     }
+    cacheLifetime = LockManagerFactory.getLongProperty(threadContext, PROPERTY_JCIFS_CACHE_SECONDS, 300L) * 1000L;
   }
   
   /** Establish a "session".  In the case of the jcifs connector, this just builds the appropriate smbconnectionPath string, and does the necessary checks. */
@@ -176,6 +186,7 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
         pa = new NtlmPasswordAuthentication(domain,username,password);
         SmbFile smbconnection = new SmbFile("smb://" + server + "/",pa);
         smbconnectionPath = getFileCanonicalPath(smbconnection);
+        cacheKeyPrefix = ((domain==null)?"":domain) + "\\" + username + "@" + server + (useSIDs?":S:":":N:");
       }
       catch (MalformedURLException e)
       {
@@ -206,6 +217,7 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
     password = null;
     pa = null;
     smbconnectionPath = null;
+    cacheKeyPrefix = null;
     super.disconnect();
   }
 
@@ -573,11 +585,13 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
       long lastModified = 0L;
       boolean fileExists = false;
       boolean fileIsDirectory = false;
+      // What the listing of the parent directory said about the file, if it was listed recently
+      FileInfo fileInfo = getCachedFileInfo(documentIdentifier);
       
       try
       {
         file = new SmbFile(documentIdentifier,pa);
-        fileExists = fileExists(file);
+        fileExists = (fileInfo != null) || fileExists(file);
 
         // File has to exist AND have a non-null canonical path to be readable.  If the canonical path is
         // null, it means that the windows permissions are not right and directory/file is not readable!!!
@@ -585,7 +599,7 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
         // We MUST check the specification here, otherwise a recrawl may not delete what it's supposed to!
         if (fileExists && newPath != null)
         {
-          fileIsDirectory = fileIsDirectory(file);
+          fileIsDirectory = (fileInfo != null)?fileInfo.isDirectory():fileIsDirectory(file);
           if (checkInclude(fileIsDirectory,newPath,spec))
           {
             if (fileIsDirectory)
@@ -601,7 +615,13 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
             }
             else
             {
-              fileLength = fileLength(file);
+              fileLength = (fileInfo != null)?fileInfo.getLength():fileLength(file);
+              if (fileInfo != null && checkIncludeFile(fileLength,newPath,spec,activities))
+              {
+                // A recent listing of the parent is good enough to filter on, but the version string, and what
+                // gets ingested, must describe the file as it is now
+                fileLength = fileLength(file);
+              }
               if (checkIncludeFile(fileLength,newPath,spec,activities))
               {
                 // It's a file of acceptable length.
@@ -620,7 +640,7 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
 
                 allowList.clear();
                 denyList.clear();
-                parentSecurityOn = getFileSecuritySet(allowList, denyList, parentFolder, parentFolderAcls);
+                parentSecurityOn = getDirectorySecuritySet(allowList, denyList, parentFolder, parentFolderAcls);
                 parentAllow = allowList.toArray(modelArray);
                 parentDeny = denyList.toArray(modelArray);
 
@@ -784,6 +804,21 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
 
                 // Use a filter to actually do the work here.  This prevents large arrays from being
                 // created when there are big directories.
+                // Fetch the directory's own security now, since all its files will want it as their parent folder security
+                if (parentFolderAcls != null && parentFolderAcls.length == 0)
+                {
+                  try
+                  {
+                    getCachedDirectorySecurity(file);
+                  }
+                  catch (SmbException e)
+                  {
+                    // Each file will ask again, and deal with the error then
+                    if (Logging.connectors.isDebugEnabled())
+                      Logging.connectors.debug("JCIFS: Couldn't read security of directory '"+documentIdentifier+"' ahead of its files: "+e.getMessage());
+                  }
+                }
+
                 ProcessDocumentsFilter filter = new ProcessDocumentsFilter(activities,spec);
                 fileListFiles(file,filter);
                 filter.checkAndThrow();
@@ -1190,6 +1225,29 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
       return false;
   }
 
+  protected boolean getDirectorySecuritySet(List<String> allowList, List<String> denyList, SmbFile directory, String[] forced)
+    throws ManifoldCFException, IOException
+  {
+    if (forced != null)
+    {
+      if (forced.length == 0)
+      {
+        convertACEs(allowList,denyList,getCachedDirectorySecurity(directory));
+      }
+      else
+      {
+        for (String forcedToken : forced)
+        {
+          allowList.add(forcedToken);
+        }
+        denyList.add(defaultAuthorityDenyToken);
+      }
+      return true;
+    }
+    else
+      return false;
+  }
+
   protected boolean getFileShareSecuritySet(List<String> allowList, List<String> denyList, SmbFile file, String[] forced)
     throws ManifoldCFException, IOException
   {
@@ -1197,7 +1255,7 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
     {
       if (forced.length == 0)
       {
-        convertACEs(allowList,denyList,getFileShareSecurity(file, useSIDs));
+        convertACEs(allowList,denyList,getCachedShareSecurity(file));
       }
       else
       {
@@ -2433,6 +2491,88 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
     throw currentException;
   }
 
+  /** Get the security of the share a file is on.  All files on a share have the same share security, so the
+  * answer is cached for a while, rather than asked of the server for each file.
+  */
+  protected ACE[] getCachedShareSecurity(SmbFile file)
+    throws IOException
+  {
+    if (cacheLifetime <= 0L)
+      return getFileShareSecurity(file, useSIDs);
+    String key = "S" + cacheKeyPrefix + getShareKey(file);
+    long currentTime = System.currentTimeMillis();
+    SecurityDescriptor descriptor = securityCache.get(key,currentTime);
+    if (descriptor == null)
+    {
+      descriptor = new SecurityDescriptor(getFileShareSecurity(file, useSIDs));
+      securityCache.put(key,descriptor,currentTime + cacheLifetime);
+    }
+    return descriptor.getACEs();
+  }
+
+  /** Get the security of a directory.  Every file in a directory needs it as its parent folder security, so the
+  * answer is cached for a while.  A file's own security is never cached, because an explicit entry on it can
+  * only be seen by reading its own descriptor, whatever it inherits.
+  */
+  protected ACE[] getCachedDirectorySecurity(SmbFile directory)
+    throws IOException
+  {
+    if (cacheLifetime <= 0L)
+      return getFileSecurity(directory, useSIDs);
+    String key = "D" + cacheKeyPrefix + getFileCanonicalPath(directory);
+    long currentTime = System.currentTimeMillis();
+    SecurityDescriptor descriptor = securityCache.get(key,currentTime);
+    if (descriptor == null)
+    {
+      descriptor = new SecurityDescriptor(getFileSecurity(directory, useSIDs));
+      securityCache.put(key,descriptor,currentTime + cacheLifetime);
+    }
+    return descriptor.getACEs();
+  }
+
+  /** Find the share a file really is on, following DFS referrals, as "server/share".
+  */
+  protected static String getShareKey(SmbFile file)
+    throws SmbException
+  {
+    String path = file.getDfsPath();
+    if (path == null)
+      return file.getServer() + "/" + file.getShare();
+    if (path.startsWith("smb:"))
+      path = path.substring("smb:".length());
+    while (path.startsWith("/"))
+      path = path.substring(1);
+    int index = path.indexOf("/");
+    if (index != -1)
+    {
+      index = path.indexOf("/",index+1);
+      if (index != -1)
+        path = path.substring(0,index);
+    }
+    return path;
+  }
+
+  /** Remember what the listing of its parent said about a file or directory.  This is only good enough to
+  * decide whether to skip the file; anything that is versioned or ingested must be read again.
+  */
+  protected void noteFileInfo(String canonicalPath, boolean isDirectory, long length)
+  {
+    if (cacheLifetime <= 0L)
+      return;
+    long currentTime = System.currentTimeMillis();
+    fileInfoCache.put(cacheKeyPrefix + canonicalPath,new FileInfo(isDirectory,length),currentTime + cacheLifetime);
+  }
+
+  /** Get what the listing of its parent said about a file or directory recently.
+  *@return the attributes, or null if there are none.
+  */
+  protected FileInfo getCachedFileInfo(String canonicalPath)
+  {
+    if (cacheLifetime <= 0L || cacheKeyPrefix == null)
+      return null;
+    return fileInfoCache.get(cacheKeyPrefix + canonicalPath,System.currentTimeMillis());
+  }
+
   /** Get file type */
   protected static int getFileType(SmbFile file)
     throws SmbException
@@ -4827,6 +4967,7 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
             {
               if (Logging.connectors.isDebugEnabled())
                 Logging.connectors.debug("JCIFS: Recorded path is '" + newPath + "' and is included.");
+              noteFileInfo(newPath, true, 0L);
               activities.addDocumentReference(newPath);
             }
             else
@@ -4836,6 +4977,8 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
               {
                 if (Logging.connectors.isDebugEnabled())
                   Logging.connectors.debug("JCIFS: Recorded path is '" + newPath + "' and is included.");
+                // The listing returned the attributes along with the name, so processing the file can filter without asking again
+                noteFileInfo(newPath, false, fileLength);
                 activities.addDocumentReference(newPath);
               }
               else
@@ -4882,4 +5025,44 @@ public class SharedDriveConnector extends org.apache.manifoldcf.crawler.connecto
     }
   }
 
+  /** A cached security descriptor.  A null list of entries means the share is public. */
+  protected static class SecurityDescriptor
+  {
+    protected final ACE[] aces;
+
+    public SecurityDescriptor(ACE[] aces)
+    {
+      this.aces = aces;
+    }
+
+    public ACE[] getACEs()
+    {
+      return aces;
+    }
+  }
+
+  /** The type and length of a file or directory, as returned by a directory listing */
+  protected static class FileInfo
+  {
+    protected final boolean isDirectory;
+    protected final long length;
+
+    public FileInfo(boolean isDirectory, long length)
+    {
+      this.isDirectory = isDirectory;
+      this.length = length;
+    }
+
+    public boolean isDirectory()
+    {
+      return isDirectory;
+    }
+
+    public long getLength()
+    {
+      return length;
+    }
+
+  }
+
 }
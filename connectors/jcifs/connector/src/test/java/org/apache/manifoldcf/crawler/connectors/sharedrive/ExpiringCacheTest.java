@@ -0,0 +1,64 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.sharedrive;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Checks expiration and the size bound of the expiring cache */
+public class ExpiringCacheTest
+{
+
+  @Test
+  public void entriesExpire()
+  {
+    ExpiringCache<String> cache = new ExpiringCache<String>(10);
+    cache.put("a","A",1000L);
+    assertEquals("A",cache.get("a",999L));
+    // The expiration time is exclusive
+    assertNull(cache.get("a",1000L));
+    // ... and the expired entry is gone for good
+    assertNull(cache.get("a",0L));
+    assertNull(cache.get("missing",0L));
+  }
+
+  @Test
+  public void putReplacesEntries()
+  {
+    ExpiringCache<String> cache = new ExpiringCache<String>(10);
+    cache.put("a","A",1000L);
+    cache.put("a","B",2000L);
+    assertEquals("B",cache.get("a",1500L));
+  }
+
+  @Test
+  public void leastRecentlyUsedEntriesAreDropped()
+  {
+    ExpiringCache<String> cache = new ExpiringCache<String>(2);
+    cache.put("a","A",1000L);
+    cache.put("b","B",1000L);
+    // Using "a" makes "b" the eldest
+    assertEquals("A",cache.get("a",0L));
+    cache.put("c","C",1000L);
+    assertEquals("A",cache.get("a",0L));
+    assertNull(cache.get("b",0L));
+    assertEquals("C",cache.get("c",0L));
+  }
+
+}
@@ -25,7 +25,9 @@ import org.apache.manifoldcf.crawler.system.Logging;
 import org.apache.manifoldcf.core.database.*;
 import org.apache.manifoldcf.connectorcommon.interfaces.*;
 import org.apache.manifoldcf.jdbc.JDBCConnection;
+import org.apache.manifoldcf.jdbc.JDBCConnectionFactory;
 import org.apache.manifoldcf.jdbc.JDBCConstants;
+import org.apache.manifoldcf.jdbc.TemporaryIDTable;
 import org.apache.manifoldcf.jdbc.IDynamicResultSet;
 import org.apache.manifoldcf.jdbc.IDynamicResultRow;
 
@@ -61,6 +63,11 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
   protected String rawDriverString = null;
   protected String userName = null;
   protected String password = null;
+  protected int fetchSize = JDBCConstants.defaultFetchSize;
+  protected int maxDocumentsPerRequest = JDBCConstants.defaultMaxDocumentsPerRequest;
+  protected int maxInListSize = JDBCConstants.defaultMaxInListSize;
+  protected int parallelQueries = JDBCConstants.defaultParallelQueries;
+  protected boolean useTempTable = false;
 
   /** Constructor.
   */
@@ -79,7 +86,7 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
       if ((host == null || host.length() == 0) && (rawDriverString == null || rawDriverString.length() == 0))
         throw new ManifoldCFException("Missing parameter '"+JDBCConstants.hostParameter+"' or '"+JDBCConstants.driverStringParameter+"'");
 
-      connection = new JDBCConnection(jdbcProvider,(accessMethod==null || accessMethod.equals("name")),host,databaseName,rawDriverString,userName,password);
+      connection = new JDBCConnection(jdbcProvider,(accessMethod==null || accessMethod.equals("name")),host,databaseName,rawDriverString,userName,password,fetchSize);
     }
   }
 
@@ -117,6 +124,33 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
     rawDriverString = configParams.getParameter(JDBCConstants.driverStringParameter);
     userName= configParams.getParameter(JDBCConstants.databaseUserName);
     password = configParams.getObfuscatedParameter(JDBCConstants.databasePassword);
+    fetchSize = readIntParameter(configParams,JDBCConstants.fetchSizeParameter,JDBCConstants.defaultFetchSize,0);
+    maxDocumentsPerRequest = readIntParameter(configParams,JDBCConstants.maxDocumentsPerRequestParameter,JDBCConstants.defaultMaxDocumentsPerRequest,1);
+    maxInListSize = readIntParameter(configParams,JDBCConstants.maxInListSizeParameter,JDBCConstants.defaultMaxInListSize,1);
+    // More queries than the pool has connections could never all run at once
+    parallelQueries = Math.min(readIntParameter(configParams,JDBCConstants.parallelQueriesParameter,JDBCConstants.defaultParallelQueries,1),
+      JDBCConnectionFactory.maxPoolConnections);
+    useTempTable = "true".equals(configParams.getParameter(JDBCConstants.useTempTableParameter));
+  }
+
+  /** Read an integer configuration parameter, falling back to a default if it is missing or bad.
+  */
+  protected static int readIntParameter(ConfigParams configParams, String parameterName, int defaultValue, int minimumValue)
+  {
+    String value = configParams.getParameter(parameterName);
+    if (value == null || value.length() == 0)
+      return defaultValue;
+    try
+    {
+      int rval = Integer.parseInt(value);
+      if (rval >= minimumValue)
+        return rval;
+    }
+    catch (NumberFormatException e)
+    {
+    }
+    Logging.connectors.warn("JDBC: Bad value '"+value+"' for parameter '"+parameterName+"'; using default");
+    return defaultValue;
   }
 
   /** Check status of connection.
@@ -154,6 +188,11 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
     rawDriverString = null;
     userName = null;
     password = null;
+    fetchSize = JDBCConstants.defaultFetchSize;
+    maxDocumentsPerRequest = JDBCConstants.defaultMaxDocumentsPerRequest;
+    maxInListSize = JDBCConstants.defaultMaxInListSize;
+    parallelQueries = JDBCConstants.defaultParallelQueries;
+    useTempTable = false;
 
     super.disconnect();
   }
@@ -322,39 +361,16 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
       VariableMap vm = new VariableMap();
       addConstant(vm,JDBCConstants.idReturnVariable,JDBCConstants.idReturnColumnName);
       addConstant(vm,JDBCConstants.versionReturnVariable,JDBCConstants.versionReturnColumnName);
-      if (addIDList(vm,JDBCConstants.idListVariable,documentIdentifiers,null))
+      // There is one query for each batch of identifiers that fits in an IN list.
+      for (IDBatchQuery query : buildIDQueries(ts.versionQuery,vm,documentIdentifiers,null,1))
       {
-        // Do the substitution
-        ArrayList paramList = new ArrayList();
-        StringBuilder sb = new StringBuilder();
-        substituteQuery(ts.versionQuery,vm,sb,paramList);
-
         // Now, build a result return, and a hash table so we can correlate the returned values with the place to put them.
         // We presume that if the row is missing, the document is gone.
-        // Fire off the query!
-        getSession();
-        IDynamicResultSet result;
-        String queryText = sb.toString();
-        long startTime = System.currentTimeMillis();
-        // Get a dynamic resultset.  Contract for dynamic resultset is that if
+        // Fire off the query!  Contract for dynamic resultset is that if
         // one is returned, it MUST be closed, or a connection will leak.
+        IDynamicResultSet result = runQuery(activities,query);
         try
         {
-          result = connection.executeUncachedQuery(queryText,paramList,-1);
-        }
-        catch (ManifoldCFException e)
-        {
-          // If failure, record the failure.
-          if (e.getErrorCode() != ManifoldCFException.INTERRUPTED)
-            activities.recordActivity(new Long(startTime), ACTIVITY_EXTERNAL_QUERY, null,
-              createQueryString(queryText,paramList), "ERROR", e.getMessage(), null);
-          throw e;
-        }
-        try
-        {
-          // If success, record that too.
-          activities.recordActivity(new Long(startTime), ACTIVITY_EXTERNAL_QUERY, null,
-            createQueryString(queryText,paramList), "OK", null, null);
           // Now, go through resultset
           while (true)
           {
@@ -418,37 +434,14 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
         VariableMap vm = new VariableMap();
         addConstant(vm,JDBCConstants.idReturnVariable,JDBCConstants.idReturnColumnName);
         addConstant(vm,JDBCConstants.tokenReturnVariable,JDBCConstants.tokenReturnColumnName);
-        if (addIDList(vm,JDBCConstants.idListVariable,documentIdentifiers,fetchDocuments))
+        // There is one query for each batch of identifiers that fits in an IN list.
+        for (IDBatchQuery query : buildIDQueries(ts.aclQuery,vm,documentIdentifiers,fetchDocuments,1))
         {
-          // Do the substitution
-          ArrayList paramList = new ArrayList();
-          StringBuilder sb = new StringBuilder();
-          substituteQuery(ts.aclQuery,vm,sb,paramList);
-
-          // Fire off the query!
-          getSession();
-          IDynamicResultSet result;
-          String queryText = sb.toString();
-          long startTime = System.currentTimeMillis();
-          // Get a dynamic resultset.  Contract for dynamic resultset is that if
+          // Fire off the query!  Contract for dynamic resultset is that if
           // one is returned, it MUST be closed, or a connection will leak.
+          IDynamicResultSet result = runQuery(activities,query);
           try
           {
-            result = connection.executeUncachedQuery(queryText,paramList,-1);
-          }
-          catch (ManifoldCFException e)
-          {
-            // If failure, record the failure.
-            if (e.getErrorCode() != ManifoldCFException.INTERRUPTED)
-              activities.recordActivity(new Long(startTime), ACTIVITY_EXTERNAL_QUERY, null,
-                createQueryString(queryText,paramList), "ERROR", e.getMessage(), null);
-            throw e;
-          }
-          try
-          {
-            // If success, record that too.
-            activities.recordActivity(new Long(startTime), ACTIVITY_EXTERNAL_QUERY, null,
-              createQueryString(queryText,paramList), "OK", null, null);
             // Now, go through resultset
             while (true)
             {
@@ -542,289 +535,296 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
     addConstant(vm,JDBCConstants.urlReturnVariable,JDBCConstants.urlReturnColumnName);
     addConstant(vm,JDBCConstants.dataReturnVariable,JDBCConstants.dataReturnColumnName);
     addConstant(vm,JDBCConstants.contentTypeReturnVariable,JDBCConstants.contentTypeReturnColumnName);
-    if (!addIDList(vm,JDBCConstants.idListVariable,documentIdentifiers,map.keySet()))
-      return;
-
-    // Do the substitution
-    ArrayList paramList = new ArrayList();
-    StringBuilder sb = new StringBuilder();
-    substituteQuery(ts.dataQuery,vm,sb,paramList);
-
-    // Execute the query
-    getSession();
-    IDynamicResultSet result;
-    String queryText = sb.toString();
-    long startTime = System.currentTimeMillis();
-    // Get a dynamic resultset.  Contract for dynamic resultset is that if
-    // one is returned, it MUST be closed, or a connection will leak.
-    try
-    {
-      result = connection.executeUncachedQuery(queryText,paramList,-1);
-    }
-    catch (ManifoldCFException e)
-    {
-      // If failure, record the failure.
-      activities.recordActivity(new Long(startTime), ACTIVITY_EXTERNAL_QUERY, null,
-        createQueryString(queryText,paramList), "ERROR", e.getMessage(), null);
-      throw e;
-    }
+    List<IDBatchQuery> queries = buildIDQueries(ts.dataQuery,vm,documentIdentifiers,map.keySet(),parallelQueries);
+
+    // The queries run on connections of their own, up to parallelQueries of them counting the one being read,
+    // while the rows are all handled here, one query after another.  Contract for dynamic resultset is that if
+    // one is started, it MUST be closed, or a connection will leak.
+    // The started queries are always the ones right after the one being read.  Only that one may wait for a
+    // connection, and it does so only when no other query is started, so this thread never waits on the pool
+    // while it holds connections that other threads may be waiting for.
+    JDBCConnection.JDBCResultSet[] started = new JDBCConnection.JDBCResultSet[queries.size()];
     try
     {
-      // If success, record that too.
-      activities.recordActivity(new Long(startTime), ACTIVITY_EXTERNAL_QUERY, null,
-        createQueryString(queryText,paramList), "OK", null, null);
-
-      while (true)
+      for (int i = 0; i < queries.size(); i++)
       {
-        IDynamicResultRow row = result.getNextRow();
-        if (row == null)
-          break;
+        if (started[i] == null)
+          started[i] = startQuery(queries.get(i));
+        for (int j = i + 1; j < queries.size() && j < i + parallelQueries; j++)
+        {
+          if (started[j] == null)
+          {
+            started[j] = startQueryIfAvailable(queries.get(j));
+            if (started[j] == null)
+              break;
+          }
+        }
+        IDynamicResultSet result = waitForQuery(activities,queries.get(i),started[i]);
+        started[i] = null;
         try
         {
-          Object o = row.getValue(JDBCConstants.idReturnColumnName);
-          if (o == null)
-            throw new ManifoldCFException("Bad document query; doesn't return $(IDCOLUMN) column.  Try using quotes around $(IDCOLUMN) variable, e.g. \"$(IDCOLUMN)\", or, for MySQL, select \"by label\" in your repository connection.");
-          String id = JDBCConnection.readAsString(o);
-          
-          String errorCode = null;
-          String errorDesc = null;
-          Long fileLengthLong = null;
-          long fetchStartTime = System.currentTimeMillis();
-          
-          try
+          while (true)
           {
-            String version = map.get(id);
-            if (version == null)
-              // Does not need refetching
-              continue;
-
-            // This document was marked as "not scan only", so we expect to find it.
-            if (Logging.connectors.isDebugEnabled())
-              Logging.connectors.debug("JDBC: Document data result found for '"+id+"'");
-            o = row.getValue(JDBCConstants.urlReturnColumnName);
-            if (o == null)
-            {
-              Logging.connectors.debug("JDBC: Document '"+id+"' has a null url - skipping");
-              errorCode = activities.NULL_URL;
-              errorDesc = "Excluded because document had a null URL";
-              activities.noDocument(id,version);
-              continue;
-            }
-            
-            // This is not right - url can apparently be a BinaryInput
-            String url = JDBCConnection.readAsString(o);
-            boolean validURL;
+            IDynamicResultRow row = result.getNextRow();
+            if (row == null)
+              break;
             try
             {
-              // Check to be sure url is valid
-              new java.net.URI(url);
-              validURL = true;
-            }
-            catch (java.net.URISyntaxException e)
-            {
-              validURL = false;
-            }
+              Object o = row.getValue(JDBCConstants.idReturnColumnName);
+              if (o == null)
+                throw new ManifoldCFException("Bad document query; doesn't return $(IDCOLUMN) column.  Try using quotes around $(IDCOLUMN) variable, e.g. \"$(IDCOLUMN)\", or, for MySQL, select \"by label\" in your repository connection.");
+              String id = JDBCConnection.readAsString(o);
+          
+              String errorCode = null;
+              String errorDesc = null;
+              Long fileLengthLong = null;
+              long fetchStartTime = System.currentTimeMillis();
+          
+              try
+              {
+                String version = map.get(id);
+                if (version == null)
+                  // Does not need refetching
+                  continue;
+
+                // This document was marked as "not scan only", so we expect to find it.
+                if (Logging.connectors.isDebugEnabled())
+                  Logging.connectors.debug("JDBC: Document data result found for '"+id+"'");
+                o = row.getValue(JDBCConstants.urlReturnColumnName);
+                if (o == null)
+                {
+                  Logging.connectors.debug("JDBC: Document '"+id+"' has a null url - skipping");
+                  errorCode = activities.NULL_URL;
+                  errorDesc = "Excluded because document had a null URL";
+                  activities.noDocument(id,version);
+                  continue;
+                }
+            
+                // This is not right - url can apparently be a BinaryInput
+                String url = JDBCConnection.readAsString(o);
+                boolean validURL;
+                try
+                {
+                  // Check to be sure url is valid
+                  new java.net.URI(url);
+                  validURL = true;
+                }
+                catch (java.net.URISyntaxException e)
+                {
+                  validURL = false;
+                }
 
-            if (!validURL)
-            {
-              Logging.connectors.debug("JDBC: Document '"+id+"' has an illegal url: '"+url+"' - skipping");
-              errorCode = activities.BAD_URL;
-              errorDesc = "Excluded because document had illegal URL ('"+url+"')";
-              activities.noDocument(id,version);
-              continue;
-            }
+                if (!validURL)
+                {
+                  Logging.connectors.debug("JDBC: Document '"+id+"' has an illegal url: '"+url+"' - skipping");
+                  errorCode = activities.BAD_URL;
+                  errorDesc = "Excluded because document had illegal URL ('"+url+"')";
+                  activities.noDocument(id,version);
+                  continue;
+                }
             
-            // Process the document itself
-            Object contents = row.getValue(JDBCConstants.dataReturnColumnName);
-            // Null data is allowed; we just ignore these
-            if (contents == null)
-            {
-              Logging.connectors.debug("JDBC: Document '"+id+"' seems to have null data - skipping");
-              errorCode = "NULLDATA";
-              errorDesc = "Excluded because document had null data";
-              activities.noDocument(id,version);
-              continue;
-            }
+                // Process the document itself
+                Object contents = row.getValue(JDBCConstants.dataReturnColumnName);
+                // Null data is allowed; we just ignore these
+                if (contents == null)
+                {
+                  Logging.connectors.debug("JDBC: Document '"+id+"' seems to have null data - skipping");
+                  errorCode = "NULLDATA";
+                  errorDesc = "Excluded because document had null data";
+                  activities.noDocument(id,version);
+                  continue;
+                }
             
-            // We will ingest something, so remove this id from the map in order that we know what we still
-            // need to delete when all done.
-            map.remove(id);
-            String contentType;
-            o = row.getValue(JDBCConstants.contentTypeReturnColumnName);
-            if (o != null)
-              contentType = JDBCConnection.readAsString(o);
-            else
-            {
-              if (contents instanceof BinaryInput)
-                contentType = "application/octet-stream";
-              else if (contents instanceof CharacterInput)
-                contentType = "text/plain; charset=utf-8";
-              else
-                contentType = "text/plain";
-            }
+                // We will ingest something, so remove this id from the map in order that we know what we still
+                // need to delete when all done.
+                map.remove(id);
+                String contentType;
+                o = row.getValue(JDBCConstants.contentTypeReturnColumnName);
+                if (o != null)
+                  contentType = JDBCConnection.readAsString(o);
+                else
+                {
+                  if (contents instanceof BinaryInput)
+                    contentType = "application/octet-stream";
+                  else if (contents instanceof CharacterInput)
+                    contentType = "text/plain; charset=utf-8";
+                  else
+                    contentType = "text/plain";
+                }
                     
-            if (!activities.checkMimeTypeIndexable(contentType))
-            {
-              Logging.connectors.debug("JDBC: Document '"+id+"' excluded because of mime type - skipping");
-              errorCode = activities.EXCLUDED_MIMETYPE;
-              errorDesc = "Excluded because of mime type ("+contentType+")";
-              activities.noDocument(id,version);
-              continue;
-            }
+                if (!activities.checkMimeTypeIndexable(contentType))
+                {
+                  Logging.connectors.debug("JDBC: Document '"+id+"' excluded because of mime type - skipping");
+                  errorCode = activities.EXCLUDED_MIMETYPE;
+                  errorDesc = "Excluded because of mime type ("+contentType+")";
+                  activities.noDocument(id,version);
+                  continue;
+                }
                     
-            if (!activities.checkURLIndexable(url))
-            {
-              Logging.connectors.debug("JDBC: Document '"+id+"' excluded because of url - skipping");
-              errorCode = activities.EXCLUDED_URL;
-              errorDesc = "Excluded because of URL ('"+url+"')";
-              activities.noDocument(id,version);
-              continue;
-            }
+                if (!activities.checkURLIndexable(url))
+                {
+                  Logging.connectors.debug("JDBC: Document '"+id+"' excluded because of url - skipping");
+                  errorCode = activities.EXCLUDED_URL;
+                  errorDesc = "Excluded because of URL ('"+url+"')";
+                  activities.noDocument(id,version);
+                  continue;
+                }
 
-            // An ingestion will take place for this document.
-            RepositoryDocument rd = new RepositoryDocument();
-            rd.setMimeType(contentType);
+                // An ingestion will take place for this document.
+                RepositoryDocument rd = new RepositoryDocument();
+                rd.setMimeType(contentType);
                         
-            applyAccessTokens(rd,documentAcls.get(id));
-            applyMetadata(rd,row);
+                applyAccessTokens(rd,documentAcls.get(id));
+                applyMetadata(rd,row);
 
-            if (contents instanceof BinaryInput)
-            {
+                if (contents instanceof BinaryInput)
+                {
 
-              BinaryInput bi = (BinaryInput)contents;
-              long fileLength = bi.getLength();
+                  BinaryInput bi = (BinaryInput)contents;
+                  long fileLength = bi.getLength();
                       
-              if (!activities.checkLengthIndexable(fileLength))
-              {
-                Logging.connectors.debug("JDBC: Document '"+id+"' excluded because of length - skipping");
-                errorCode = activities.EXCLUDED_LENGTH;
-                errorDesc = "Excluded because of length ("+fileLength+")";
-                activities.noDocument(id, version);
-                continue;
-              }
-
-              try
-              {
-                // Read the stream
-                InputStream is = bi.getStream();
-                try
-                {
-                  rd.setBinary(is,fileLength);
-                  activities.ingestDocumentWithException(id, version, url, rd);
-                  errorCode = "OK";
-                  fileLengthLong = new Long(fileLength);
+                  if (!activities.checkLengthIndexable(fileLength))
+                  {
+                    Logging.connectors.debug("JDBC: Document '"+id+"' excluded because of length - skipping");
+                    errorCode = activities.EXCLUDED_LENGTH;
+                    errorDesc = "Excluded because of length ("+fileLength+")";
+                    activities.noDocument(id, version);
+                    continue;
+                  }
+
+                  try
+                  {
+                    // Read the stream
+                    InputStream is = bi.getStream();
+                    try
+                    {
+                      rd.setBinary(is,fileLength);
+                      activities.ingestDocumentWithException(id, version, url, rd);
+                      errorCode = "OK";
+                      fileLengthLong = new Long(fileLength);
+                    }
+                    finally
+                    {
+                      is.close();
+                    }
+                  }
+                  catch (IOException e)
+                  {
+                    errorCode = e.getClass().getSimpleName().toUpperCase(Locale.ROOT);
+                    errorDesc = e.getMessage();
+                    handleIOException(id,e);
+                  }
                 }
-                finally
+                else if (contents instanceof CharacterInput)
                 {
-                  is.close();
-                }
-              }
-              catch (IOException e)
-              {
-                errorCode = e.getClass().getSimpleName().toUpperCase(Locale.ROOT);
-                errorDesc = e.getMessage();
-                handleIOException(id,e);
-              }
-            }
-            else if (contents instanceof CharacterInput)
-            {
-              CharacterInput ci = (CharacterInput)contents;
-              long fileLength = ci.getUtf8StreamLength();
+                  CharacterInput ci = (CharacterInput)contents;
+                  long fileLength = ci.getUtf8StreamLength();
               
-              if (!activities.checkLengthIndexable(fileLength))
-              {
-                Logging.connectors.debug("JDBC: Document '"+id+"' excluded because of length - skipping");
-                errorCode = activities.EXCLUDED_LENGTH;
-                errorDesc = "Excluded because of length ("+fileLength+")";
-                activities.noDocument(id, version);
-                continue;
-              }
+                  if (!activities.checkLengthIndexable(fileLength))
+                  {
+                    Logging.connectors.debug("JDBC: Document '"+id+"' excluded because of length - skipping");
+                    errorCode = activities.EXCLUDED_LENGTH;
+                    errorDesc = "Excluded because of length ("+fileLength+")";
+                    activities.noDocument(id, version);
+                    continue;
+                  }
                       
-              try
-              {
-                // Read the stream
-                InputStream is = ci.getUtf8Stream();
-                try
-                {
-                  rd.setBinary(is,fileLength);
-                  activities.ingestDocumentWithException(id, version, url, rd);
-                  errorCode = "OK";
-                  fileLengthLong = new Long(fileLength);
+                  try
+                  {
+                    // Read the stream
+                    InputStream is = ci.getUtf8Stream();
+                    try
+                    {
+                      rd.setBinary(is,fileLength);
+                      activities.ingestDocumentWithException(id, version, url, rd);
+                      errorCode = "OK";
+                      fileLengthLong = new Long(fileLength);
+                    }
+                    finally
+                    {
+                      is.close();
+                    }
+                  }
+                  catch (IOException e)
+                  {
+                    errorCode = e.getClass().getSimpleName().toUpperCase(Locale.ROOT);
+                    errorDesc = e.getMessage();
+                    handleIOException(id,e);
+                  }
                 }
-                finally
+                else
                 {
-                  is.close();
-                }
-              }
-              catch (IOException e)
-              {
-                errorCode = e.getClass().getSimpleName().toUpperCase(Locale.ROOT);
-                errorDesc = e.getMessage();
-                handleIOException(id,e);
-              }
-            }
-            else
-            {
-              // Turn it into a string, and then into a stream
-              String value = contents.toString();
-              byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
-              long fileLength = bytes.length;
+                  // Turn it into a string, and then into a stream
+                  String value = contents.toString();
+                  byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                  long fileLength = bytes.length;
               
-              if (!activities.checkLengthIndexable(fileLength))
-              {
-                Logging.connectors.debug("JDBC: Document '"+id+"' excluded because of length - skipping");
-                errorCode = activities.EXCLUDED_LENGTH;
-                errorDesc = "Excluded because of length ("+fileLength+")";
-                activities.noDocument(id, version);
-                continue;
+                  if (!activities.checkLengthIndexable(fileLength))
+                  {
+                    Logging.connectors.debug("JDBC: Document '"+id+"' excluded because of length - skipping");
+                    errorCode = activities.EXCLUDED_LENGTH;
+                    errorDesc = "Excluded because of length ("+fileLength+")";
+                    activities.noDocument(id, version);
+                    continue;
+                  }
+
+                  try
+                  {
+                    InputStream is = new ByteArrayInputStream(bytes);
+                    try
+                    {
+                      rd.setBinary(is,fileLength);
+                      activities.ingestDocumentWithException(id, version, url, rd);
+                      errorCode = "OK";
+                      fileLengthLong = new Long(fileLength);
+                    }
+                    finally
+                    {
+                      is.close();
+                    }
+                  }
+                  catch (IOException e)
+                  {
+                    errorCode = e.getClass().getSimpleName().toUpperCase(Locale.ROOT);
+                    errorDesc = e.getMessage();
+                    handleIOException(id,e);
+                  }
+                }
               }
-
-              try
+              catch (ManifoldCFException e)
               {
-                InputStream is = new ByteArrayInputStream(bytes);
-                try
-                {
-                  rd.setBinary(is,fileLength);
-                  activities.ingestDocumentWithException(id, version, url, rd);
-                  errorCode = "OK";
-                  fileLengthLong = new Long(fileLength);
-                }
-                finally
-                {
-                  is.close();
-                }
+                if (e.getErrorCode() == ManifoldCFException.INTERRUPTED)
+                  errorCode = null;
+                throw e;
               }
-              catch (IOException e)
+              finally
               {
-                errorCode = e.getClass().getSimpleName().toUpperCase(Locale.ROOT);
-                errorDesc = e.getMessage();
-                handleIOException(id,e);
+                if (errorCode != null)
+                  activities.recordActivity(new Long(fetchStartTime), ACTIVITY_FETCH,
+                    fileLengthLong, id, errorCode, errorDesc, null);
               }
             }
+            finally
+            {
+              row.close();
+            }
           }
-          catch (ManifoldCFException e)
-          {
-            if (e.getErrorCode() == ManifoldCFException.INTERRUPTED)
-              errorCode = null;
-            throw e;
-          }
-          finally
-          {
-            if (errorCode != null)
-              activities.recordActivity(new Long(fetchStartTime), ACTIVITY_FETCH,
-                fileLengthLong, id, errorCode, errorDesc, null);
-          }
+
         }
         finally
         {
-          row.close();
+          result.close();
         }
       }
-
     }
     finally
     {
-      result.close();
+      // Anything still started was never read; shut it down so its connection goes back to the pool.
+      for (JDBCConnection.JDBCResultSet result : started)
+      {
+        if (result != null)
+          closeQuietly(result);
+      }
     }
     
     // Now, go through the original id's, and see which ones are still in the map.  These
@@ -884,6 +884,7 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
     tabsArray.add(Messages.getString(locale,"JDBCConnector.DatabaseType"));
     tabsArray.add(Messages.getString(locale,"JDBCConnector.Server"));
     tabsArray.add(Messages.getString(locale,"JDBCConnector.Credentials"));
+    tabsArray.add(Messages.getString(locale,"JDBCConnector.Performance"));
 
     out.print(
 "<script type=\"text/javascript\">\n"+
@@ -904,6 +905,34 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
 "    editconnection.databasename.focus();\n"+
 "    return false;\n"+
 "  }\n"+
+"  if (editconnection.fetchsize.value != \"\" && !isInteger(editconnection.fetchsize.value))\n"+
+"  {\n"+
+"    alert(\"" + Messages.getBodyJavascriptString(locale,"JDBCConnector.FetchSizeMustBeAnInteger") + "\");\n"+
+"    SelectTab(\"" + Messages.getBodyJavascriptString(locale,"JDBCConnector.Performance") + "\");\n"+
+"    editconnection.fetchsize.focus();\n"+
+"    return false;\n"+
+"  }\n"+
+"  if (!isInteger(editconnection.maxdocumentsperrequest.value) || parseInt(editconnection.maxdocumentsperrequest.value) < 1)\n"+
+"  {\n"+
+"    alert(\"" + Messages.getBodyJavascriptString(locale,"JDBCConnector.DocumentsPerRequestMustBeAPositiveInteger") + "\");\n"+
+"    SelectTab(\"" + Messages.getBodyJavascriptString(locale,"JDBCConnector.Performance") + "\");\n"+
+"    editconnection.maxdocumentsperrequest.focus();\n"+
+"    return false;\n"+
+"  }\n"+
+"  if (!isInteger(editconnection.maxinlistsize.value) || parseInt(editconnection.maxinlistsize.value) < 1)\n"+
+"  {\n"+
+"    alert(\"" + Messages.getBodyJavascriptString(locale,"JDBCConnector.MaxINListSizeMustBeAPositiveInteger") + "\");\n"+
+"    SelectTab(\"" + Messages.getBodyJavascriptString(locale,"JDBCConnector.Performance") + "\");\n"+
+"    editconnection.maxinlistsize.focus();\n"+
+"    return false;\n"+
+"  }\n"+
+"  if (!isInteger(editconnection.parallelqueries.value) || parseInt(editconnection.parallelqueries.value) < 1)\n"+
+"  {\n"+
+"    alert(\"" + Messages.getBodyJavascriptString(locale,"JDBCConnector.ParallelDataQueriesMustBeAPositiveInteger") + "\");\n"+
+"    SelectTab(\"" + Messages.getBodyJavascriptString(locale,"JDBCConnector.Performance") + "\");\n"+
+"    editconnection.parallelqueries.focus();\n"+
+"    return false;\n"+
+"  }\n"+
 "  if (editconnection.username.value == \"\")\n"+
 "  {\n"+
 "    alert(\"" + Messages.getBodyJavascriptString(locale,"JDBCConnector.PleaseSupplyTheDatabaseUsernameForThisConnection") + "\");\n"+
@@ -939,6 +968,21 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
     String accessMethod = parameters.getParameter(JDBCConstants.methodParameter);
     if (accessMethod == null)
       accessMethod = "name";
+    String fetchSize = parameters.getParameter(JDBCConstants.fetchSizeParameter);
+    if (fetchSize == null)
+      fetchSize = Integer.toString(JDBCConstants.defaultFetchSize);
+    String maxDocumentsPerRequest = parameters.getParameter(JDBCConstants.maxDocumentsPerRequestParameter);
+    if (maxDocumentsPerRequest == null)
+      maxDocumentsPerRequest = Integer.toString(JDBCConstants.defaultMaxDocumentsPerRequest);
+    String maxInListSize = parameters.getParameter(JDBCConstants.maxInListSizeParameter);
+    if (maxInListSize == null)
+      maxInListSize = Integer.toString(JDBCConstants.defaultMaxInListSize);
+    String parallelQueries = parameters.getParameter(JDBCConstants.parallelQueriesParameter);
+    if (parallelQueries == null)
+      parallelQueries = Integer.toString(JDBCConstants.defaultParallelQueries);
+    String useTempTable = parameters.getParameter(JDBCConstants.useTempTableParameter);
+    if (useTempTable == null)
+      useTempTable = "false";
     String host = parameters.getParameter(JDBCConstants.hostParameter);
     if (host == null)
       host = "localhost";
@@ -1043,6 +1087,45 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
 "<input type=\"hidden\" name=\"password\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(databasePassword)+"\"/>\n"
       );
     }
+
+    // "Performance" tab
+    if (tabName.equals(Messages.getString(locale,"JDBCConnector.Performance")))
+    {
+      out.print(
+"<table class=\"displaytable\">\n"+
+"  <tr><td class=\"separator\" colspan=\"2\"><hr/></td></tr>\n"+
+"  <tr>\n"+
+"    <td class=\"description\"><nobr>" + Messages.getBodyString(locale,"JDBCConnector.FetchSize") + "</nobr></td><td class=\"value\"><input type=\"text\" size=\"8\" name=\"fetchsize\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(fetchSize)+"\"/></td>\n"+
+"  </tr>\n"+
+"  <tr>\n"+
+"    <td class=\"description\"><nobr>" + Messages.getBodyString(locale,"JDBCConnector.DocumentsPerRequest") + "</nobr></td><td class=\"value\"><input type=\"text\" size=\"8\" name=\"maxdocumentsperrequest\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(maxDocumentsPerRequest)+"\"/></td>\n"+
+"  </tr>\n"+
+"  <tr>\n"+
+"    <td class=\"description\"><nobr>" + Messages.getBodyString(locale,"JDBCConnector.MaxINListSize") + "</nobr></td><td class=\"value\"><input type=\"text\" size=\"8\" name=\"maxinlistsize\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(maxInListSize)+"\"/></td>\n"+
+"  </tr>\n"+
+"  <tr>\n"+
+"    <td class=\"description\"><nobr>" + Messages.getBodyString(locale,"JDBCConnector.ParallelDataQueries") + "</nobr></td><td class=\"value\"><input type=\"text\" size=\"8\" name=\"parallelqueries\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(parallelQueries)+"\"/></td>\n"+
+"  </tr>\n"+
+"  <tr>\n"+
+"    <td class=\"description\"><nobr>" + Messages.getBodyString(locale,"JDBCConnector.UseTemporaryIDTable") + "</nobr></td><td class=\"value\">\n"+
+"      <input type=\"hidden\" name=\"usetemptable_present\" value=\"true\"/>\n"+
+"      <input type=\"checkbox\" name=\"usetemptable\" value=\"true\" "+(useTempTable.equals("true")?"checked=\"true\"":"")+"/>\n"+
+"    </td>\n"+
+"  </tr>\n"+
+"</table>\n"
+      );
+    }
+    else
+    {
+      out.print(
+"<input type=\"hidden\" name=\"fetchsize\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(fetchSize)+"\"/>\n"+
+"<input type=\"hidden\" name=\"maxdocumentsperrequest\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(maxDocumentsPerRequest)+"\"/>\n"+
+"<input type=\"hidden\" name=\"maxinlistsize\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(maxInListSize)+"\"/>\n"+
+"<input type=\"hidden\" name=\"parallelqueries\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(parallelQueries)+"\"/>\n"+
+"<input type=\"hidden\" name=\"usetemptable_present\" value=\"true\"/>\n"+
+"<input type=\"hidden\" name=\"usetemptable\" value=\""+org.apache.manifoldcf.ui.util.Encoder.attributeEscape(useTempTable)+"\"/>\n"
+      );
+    }
   }
   
   /** Process a configuration post.
@@ -1067,6 +1150,28 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
     if (accessMethod != null)
       parameters.setParameter(JDBCConstants.methodParameter,accessMethod);
 
+    String fetchSize = variableContext.getParameter("fetchsize");
+    if (fetchSize != null)
+      parameters.setParameter(JDBCConstants.fetchSizeParameter,fetchSize);
+
+    String maxDocumentsPerRequest = variableContext.getParameter("maxdocumentsperrequest");
+    if (maxDocumentsPerRequest != null)
+      parameters.setParameter(JDBCConstants.maxDocumentsPerRequestParameter,maxDocumentsPerRequest);
+
+    String maxInListSize = variableContext.getParameter("maxinlistsize");
+    if (maxInListSize != null)
+      parameters.setParameter(JDBCConstants.maxInListSizeParameter,maxInListSize);
+
+    String parallelQueries = variableContext.getParameter("parallelqueries");
+    if (parallelQueries != null)
+      parameters.setParameter(JDBCConstants.parallelQueriesParameter,parallelQueries);
+
+    if (variableContext.getParameter("usetemptable_present") != null)
+    {
+      String useTempTable = variableContext.getParameter("usetemptable");
+      parameters.setParameter(JDBCConstants.useTempTableParameter,(useTempTable != null && useTempTable.equals("true"))?"true":"false");
+    }
+
     String host = variableContext.getParameter("databasehost");
     if (host != null)
       parameters.setParameter(JDBCConstants.hostParameter,host);
@@ -1829,8 +1934,8 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
   @Override
   public int getMaxDocumentRequest()
   {
-    // This is a number that is comfortably processed by the query processor as part of an IN clause.
-    return 100;
+    // Batches bigger than the IN list limit get split into several queries
+    return maxDocumentsPerRequest;
   }
 
 
@@ -1863,25 +1968,144 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
 
   /** Build an idlist variable, and add it to the specified variable map.
   */
-  protected static boolean addIDList(VariableMap map, String varName, String[] documentIdentifiers, Set<String> fetchDocuments)
+  protected static void addIDList(VariableMap map, String varName, List<String> documentIdentifiers)
   {
     ArrayList params = new ArrayList();
     StringBuilder sb = new StringBuilder(" (");
     int k = 0;
     for (String documentIdentifier : documentIdentifiers)
+    {
+      if (k > 0)
+        sb.append(",");
+      sb.append("?");
+      params.add(documentIdentifier);
+      k++;
+    }
+    sb.append(") ");
+    map.addVariable(varName,sb.toString(),params);
+  }
+
+  /** Build the queries needed to cover a set of document identifiers.  The identifiers are split evenly
+  * into as many batches as the requested parallelism, and further, where needed, so that no batch is
+  * bigger than the IN list limit.  If a temporary id table is in use, the IN list limit does not apply.
+  *@param fetchDocuments is the set of identifiers to include, or null for all of them.
+  *@return the queries, which may be none if there are no identifiers.
+  */
+  protected List<IDBatchQuery> buildIDQueries(String query, VariableMap vm, String[] documentIdentifiers,
+    Set<String> fetchDocuments, int parallelism)
+    throws ManifoldCFException
+  {
+    List<String> ids = new ArrayList<String>();
+    for (String documentIdentifier : documentIdentifiers)
     {
       if (fetchDocuments == null || fetchDocuments.contains(documentIdentifier))
+        ids.add(documentIdentifier);
+    }
+    List<IDBatchQuery> rval = new ArrayList<IDBatchQuery>();
+    if (ids.size() == 0)
+      return rval;
+
+    boolean useIDTable = useTempTable && TemporaryIDTable.isSupported(jdbcProvider) && TemporaryIDTable.canHold(ids);
+    int batchSize = (ids.size() + parallelism - 1) / parallelism;
+    if (!useIDTable && batchSize > maxInListSize)
+      batchSize = maxInListSize;
+    for (int i = 0; i < ids.size(); i += batchSize)
+    {
+      List<String> batch = ids.subList(i,Math.min(i + batchSize,ids.size()));
+      TemporaryIDTable idTable = null;
+      if (useIDTable)
       {
-        if (k > 0)
-          sb.append(",");
-        sb.append("?");
-        params.add(documentIdentifier);
-        k++;
+        idTable = new TemporaryIDTable(jdbcProvider,new ArrayList<String>(batch));
+        addConstant(vm,JDBCConstants.idListVariable,TemporaryIDTable.getSubquery(jdbcProvider));
       }
+      else
+        addIDList(vm,JDBCConstants.idListVariable,batch);
+      ArrayList paramList = new ArrayList();
+      StringBuilder sb = new StringBuilder();
+      substituteQuery(query,vm,sb,paramList);
+      rval.add(new IDBatchQuery(sb.toString(),paramList,idTable));
+    }
+    return rval;
+  }
+
+  /** Run a query, and record the outcome.  The returned resultset must be closed.
+  */
+  protected IDynamicResultSet runQuery(IProcessActivity activities, IDBatchQuery query)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    return waitForQuery(activities,query,startQuery(query));
+  }
+
+  /** Start a query on a connection of its own.  The returned resultset must be closed.
+  */
+  protected JDBCConnection.JDBCResultSet startQuery(IDBatchQuery query)
+    throws ManifoldCFException
+  {
+    getSession();
+    query.startTime = System.currentTimeMillis();
+    return connection.startUncachedQuery(query.queryText,query.params,-1,query.idTable);
+  }
+
+  /** Start a query on a connection of its own, but only if one is free right now.  The returned resultset,
+  * if any, must be closed.
+  *@return the resultset, or null if no connection was free.
+  */
+  protected JDBCConnection.JDBCResultSet startQueryIfAvailable(IDBatchQuery query)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    getSession();
+    query.startTime = System.currentTimeMillis();
+    return connection.startUncachedQueryIfAvailable(query.queryText,query.params,-1,query.idTable);
+  }
+
+  /** Wait for a started query to execute, and record the outcome.  If the query fails, the
+  * resultset is closed; otherwise the caller must close it.
+  */
+  protected IDynamicResultSet waitForQuery(IProcessActivity activities, IDBatchQuery query, JDBCConnection.JDBCResultSet result)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    try
+    {
+      result.waitForExecution();
+    }
+    catch (ManifoldCFException e)
+    {
+      closeQuietly(result);
+      // If failure, record the failure.
+      if (e.getErrorCode() != ManifoldCFException.INTERRUPTED)
+        activities.recordActivity(new Long(query.startTime), ACTIVITY_EXTERNAL_QUERY, null,
+          createQueryString(query.queryText,query.params), "ERROR", e.getMessage(), null);
+      throw e;
+    }
+    catch (ServiceInterruption e)
+    {
+      closeQuietly(result);
+      activities.recordActivity(new Long(query.startTime), ACTIVITY_EXTERNAL_QUERY, null,
+        createQueryString(query.queryText,query.params), "ERROR", e.getMessage(), null);
+      throw e;
+    }
+    // If success, record that too.
+    activities.recordActivity(new Long(query.startTime), ACTIVITY_EXTERNAL_QUERY, null,
+      createQueryString(query.queryText,query.params), "OK", null, null);
+    return result;
+  }
+
+  /** Close a resultset while another exception is already on its way out.
+  */
+  protected static void closeQuietly(IDynamicResultSet result)
+  {
+    try
+    {
+      result.close();
+    }
+    catch (ManifoldCFException e)
+    {
+      Logging.connectors.debug("JDBC: Error closing resultset: "+e.getMessage(),e);
+    }
+    catch (ServiceInterruption e)
+    {
+      Logging.connectors.debug("JDBC: Error closing resultset: "+e.getMessage(),e);
     }
-    sb.append(") ");
-    map.addVariable(varName,sb.toString(),params);
-    return (k > 0);
   }
 
   /** Given a query, and a parameter map, substitute it.
@@ -1969,6 +2193,23 @@ public class JDBCConnector extends org.apache.manifoldcf.crawler.connectors.Base
   }
 
 
+  /** A query over one batch of document identifiers.
+  */
+  protected static class IDBatchQuery
+  {
+    public final String queryText;
+    public final ArrayList params;
+    public final TemporaryIDTable idTable;
+    public long startTime = 0L;
+
+    public IDBatchQuery(String queryText, ArrayList params, TemporaryIDTable idTable)
+    {
+      this.queryText = queryText;
+      this.params = params;
+      this.idTable = idTable;
+    }
+  }
+
   /** Variable map entry.
   */
   protected static class VariableMapItem
@@ -22,6 +22,7 @@ import org.apache.manifoldcf.core.interfaces.*;
 import org.apache.manifoldcf.core.database.*;
 import org.apache.manifoldcf.core.jdbcpool.*;
 import org.apache.manifoldcf.agents.interfaces.*;
+import org.apache.manifoldcf.crawler.system.Logging;
 
 import java.nio.charset.StandardCharsets;
 import java.sql.*;
@@ -42,87 +43,33 @@ public class JDBCConnection
   protected String driverString = null;
   protected String userName = null;
   protected String password = null;
+  protected int fetchSize;
+
+  /** The number of rows a resultset reads ahead of its consumer */
+  protected static final int readAheadRows = 16;
 
   /** Constructor.
   */
   public JDBCConnection(String jdbcProvider, boolean useName, String host, String databaseName, String rawDriverString,
     String userName, String password)
     throws ManifoldCFException
+  {
+    this(jdbcProvider,useName,host,databaseName,rawDriverString,userName,password,JDBCConstants.defaultFetchSize);
+  }
+
+  /** Constructor.
+  *@param fetchSize is the number of rows the driver should fetch from the database at a time, or 0 for the driver's default.
+  */
+  public JDBCConnection(String jdbcProvider, boolean useName, String host, String databaseName, String rawDriverString,
+    String userName, String password, int fetchSize)
+    throws ManifoldCFException
   {
     this.jdbcProvider = jdbcProvider;
     this.useName = useName;
     this.driverString = JDBCConnectionFactory.getJDBCDriverString(jdbcProvider, host, databaseName, rawDriverString);
     this.userName = userName;
     this.password = password;
-  }
-
-  protected static IDynamicResultRow readNextResultRowViaThread(ResultSet rs, ResultSetMetaData rsmd, String[] resultCols)
-    throws ManifoldCFException, ServiceInterruption
-  {
-    NextResultRowThread t = new NextResultRowThread(rs,rsmd,resultCols);
-    try
-    {
-      t.start();
-      return t.finishUp();
-    }
-    catch (InterruptedException e)
-    {
-      t.interrupt();
-      throw new ManifoldCFException("Interrupted: "+e.getMessage(),e,ManifoldCFException.INTERRUPTED);
-    }
-  }
-
-  protected static class NextResultRowThread extends Thread
-  {
-    protected ResultSet rs;
-    protected ResultSetMetaData rsmd;
-    protected String[] resultCols;
-
-    protected Throwable exception = null;
-    protected IDynamicResultRow response = null;
-
-    public NextResultRowThread(ResultSet rs, ResultSetMetaData rsmd, String[] resultCols)
-    {
-      super();
-      setDaemon(true);
-      this.rs = rs;
-      this.rsmd = rsmd;
-      this.resultCols = resultCols;
-    }
-
-    public void run()
-    {
-      try
-      {
-        response = readNextResultRow(rs,rsmd,resultCols);
-      }
-      catch (Throwable e)
-      {
-        this.exception = e;
-      }
-    }
-
-    public IDynamicResultRow finishUp()
-      throws ManifoldCFException, ServiceInterruption, InterruptedException
-    {
-      join();
-      Throwable thr = exception;
-      if (thr != null)
-      {
-        if (thr instanceof java.sql.SQLException)
-          throw new ManifoldCFException("Error fetching next JDBC result row: "+thr.getMessage(),thr);
-        else if (thr instanceof ManifoldCFException)
-          throw (ManifoldCFException)thr;
-        else if (thr instanceof ServiceInterruption)
-          throw (ServiceInterruption)thr;
-        else if (thr instanceof RuntimeException)
-          throw (RuntimeException)thr;
-        else
-          throw (Error)thr;
-      }
-      return response;
-    }
-    
+    this.fetchSize = fetchSize;
   }
 
   protected static IDynamicResultRow readNextResultRow(ResultSet rs, ResultSetMetaData rsmd, String[] resultCols)
@@ -142,46 +89,6 @@ public class JDBCConnection
     }
   }
 
-  protected static void closeResultset(ResultSet rs)
-    throws ManifoldCFException, ServiceInterruption
-  {
-    try
-    {
-      rs.close();
-    }
-    catch (java.sql.SQLException e)
-    {
-      throw new ManifoldCFException("Exception closing resultset: "+e.getMessage(),e);
-    }
-  }
-
-  protected static void closeStmt(Statement stmt)
-    throws ManifoldCFException, ServiceInterruption
-  {
-    try
-    {
-      stmt.close();
-    }
-    catch (java.sql.SQLException e)
-    {
-      throw new ManifoldCFException("Exception closing statement: "+e.getMessage(),e);
-    }
-  }
-
-  protected static void closePS(PreparedStatement ps)
-    throws ManifoldCFException, ServiceInterruption
-  {
-    try
-    {
-      ps.close();
-    }
-    catch (java.sql.SQLException e)
-    {
-      throw new ManifoldCFException("Exception closing statement: "+e.getMessage(),e);
-    }
-  }
-
-
   /** Test connection.
   */
   public void testConnection()
@@ -214,7 +121,7 @@ public class JDBCConnection
     {
       try
       {
-        WrappedConnection tempConnection = JDBCConnectionFactory.getConnection(jdbcProvider,driverString,userName,password);
+        WrappedConnection tempConnection = getConnection();
         JDBCConnectionFactory.releaseConnection(tempConnection);
       }
       catch (Throwable e)
@@ -244,15 +151,55 @@ public class JDBCConnection
     }
   }
 
-  /** Execute query.
+  /** Get a pooled connection to the database.
+  */
+  protected WrappedConnection getConnection()
+    throws ManifoldCFException, ServiceInterruption
+  {
+    return JDBCConnectionFactory.getConnection(jdbcProvider,driverString,userName,password);
+  }
+
+  /** Get a pooled connection to the database, but only if one is free without waiting.
+  *@return the connection, or null if the pool's connections are all in use.
+  */
+  protected WrappedConnection getConnectionIfAvailable()
+    throws ManifoldCFException, ServiceInterruption
+  {
+    return JDBCConnectionFactory.getConnectionIfAvailable(jdbcProvider,driverString,userName,password);
+  }
+
+  /** Execute query.  The rows are streamed from the database as the caller reads them.
   */
   public IDynamicResultSet executeUncachedQuery(String query, ArrayList params, int maxResults)
     throws ManifoldCFException, ServiceInterruption
   {
-    if (params == null)
-      return new JDBCResultSet(query,maxResults);
-    else
-      return new JDBCPSResultSet(query,params,maxResults);
+    JDBCResultSet rval = new JDBCResultSet(query,params,maxResults,null,null);
+    rval.waitForExecution();
+    return rval;
+  }
+
+  /** Start a query on a connection of its own, without waiting for it to execute.  This allows
+  * several queries to run at the same time.  The returned resultset must be closed, whether or not
+  * waitForExecution() succeeds.
+  *@param idTable is the temporary id table the query refers to, or null.
+  */
+  public JDBCResultSet startUncachedQuery(String query, ArrayList params, int maxResults, TemporaryIDTable idTable)
+  {
+    return new JDBCResultSet(query,params,maxResults,idTable,null);
+  }
+
+  /** Start a query as startUncachedQuery() does, but only if the pool has a connection free right now.
+  * The connection is taken before this method returns, so a caller that only ever waits for a connection
+  * while it holds none cannot deadlock with other callers over the pool.
+  *@return the resultset, or null if no connection was free.
+  */
+  public JDBCResultSet startUncachedQueryIfAvailable(String query, ArrayList params, int maxResults, TemporaryIDTable idTable)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    WrappedConnection connection = getConnectionIfAvailable();
+    if (connection == null)
+      return null;
+    return new JDBCResultSet(query,params,maxResults,idTable,connection);
   }
 
   /** Execute operation.
@@ -368,7 +315,7 @@ public class JDBCConnection
     {
       try
       {
-        WrappedConnection tempConnection = JDBCConnectionFactory.getConnection(jdbcProvider,driverString,userName,password);
+        WrappedConnection tempConnection = getConnection();
         try
         {
           execute(tempConnection.getConnection(),query,params,false,0,useName);
@@ -540,6 +487,10 @@ public class JDBCConnection
               {
                 handleIOException(e,"reading blob");
               }
+              finally
+              {
+                freeLOB(blob);
+              }
             }
           }
           else if (isCLOB(rsmd,colnum))
@@ -555,6 +506,10 @@ public class JDBCConnection
               {
                 handleIOException(e,"reading clob");
               }
+              finally
+              {
+                freeLOB(clob);
+              }
             }
           }
           else
@@ -575,6 +530,29 @@ public class JDBCConnection
     }
   }
 
+  /** Release the database resources held by a BLOB or CLOB once it has been spooled, so that a long
+  * streamed resultset does not pile them up.  Older drivers don't support this, in which case the
+  * resources go when the resultset is closed.
+  */
+  protected static void freeLOB(Object lob)
+  {
+    try
+    {
+      if (lob instanceof Blob)
+        ((Blob)lob).free();
+      else if (lob instanceof Clob)
+        ((Clob)lob).free();
+    }
+    catch (java.sql.SQLException e)
+    {
+      // Not supported; ignore
+    }
+    catch (AbstractMethodError e)
+    {
+      // Pre-JDBC 4 driver; ignore
+    }
+  }
+
   protected static void handleIOException(IOException e, String context)
     throws ManifoldCFException
   {
@@ -931,36 +909,30 @@ public class JDBCConnection
     return result;
   }
 
-  protected class JDBCResultSet implements IDynamicResultSet
+  /** Dynamic resultset that streams its rows from a single reader thread.
+  * The reader thread owns the connection, statement, and resultset for the whole life of the
+  * resultset, so that no JDBC object is ever touched by more than one thread.  It reads ahead a
+  * bounded number of rows, which the caller picks up one at a time.
+  */
+  public class JDBCResultSet implements IDynamicResultSet
   {
-    protected WrappedConnection connection;
-    protected Statement stmt;
-    protected ResultSet rs;
-    protected ResultSetMetaData rsmd;
-    protected String[] resultCols;
-    protected int maxResults;
-
-    /** Constructor */
-    public JDBCResultSet(String query, int maxResults)
+    protected final ResultReaderThread reader;
+
+    /** Constructor.
+    *@param connection is the connection the query is to run on, or null if the reader thread should get one.
+    */
+    protected JDBCResultSet(String query, ArrayList params, int maxResults, TemporaryIDTable idTable, WrappedConnection connection)
+    {
+      reader = new ResultReaderThread(query,params,maxResults,idTable,connection);
+      reader.start();
+    }
+
+    /** Wait for the query to execute.
+    */
+    public void waitForExecution()
       throws ManifoldCFException, ServiceInterruption
     {
-      this.maxResults = maxResults;
-      StatementQueryThread t = new StatementQueryThread(query);
-      try
-      {
-        t.start();
-        t.finishUp();
-        connection = t.getConnection();
-        stmt = t.getStatement();
-        rs = t.getResultSet();
-        rsmd = t.getResultSetMetaData();
-        resultCols = t.getColumnNames();
-      }
-      catch (InterruptedException e)
-      {
-        t.interrupt();
-        throw new ManifoldCFException("Interrupted: "+e.getMessage(),e,ManifoldCFException.INTERRUPTED);
-      }
+      reader.waitForExecution();
     }
 
     /** Get the next row from the resultset.
@@ -969,14 +941,7 @@ public class JDBCConnection
     public IDynamicResultRow getNextRow()
       throws ManifoldCFException, ServiceInterruption
     {
-      if (maxResults == -1 || maxResults > 0)
-      {
-        IDynamicResultRow row = readNextResultRowViaThread(rs,rsmd,resultCols);
-        if (row != null && maxResults != -1)
-          maxResults--;
-        return row;
-      }
-      return null;
+      return reader.getNextRow();
     }
 
     /** Close this resultset.
@@ -984,473 +949,373 @@ public class JDBCConnection
     public void close()
       throws ManifoldCFException, ServiceInterruption
     {
-      ManifoldCFException rval = null;
-      Error error = null;
-      RuntimeException rtException = null;
-      if (rs != null)
-      {
-        try
-        {
-          closeResultset(rs);
-        }
-        catch (ManifoldCFException e)
-        {
-          if (rval == null || e.getErrorCode() == ManifoldCFException.INTERRUPTED)
-            rval = e;
-        }
-        catch (Error e)
-        {
-          error = e;
-        }
-        catch (RuntimeException e)
-        {
-          rtException = e;
-        }
-        finally
-        {
-          rs = null;
-        }
-      }
-      if (stmt != null)
-      {
-        try
-        {
-          closeStmt(stmt);
-        }
-        catch (ManifoldCFException e)
-        {
-          if (rval == null || e.getErrorCode() == ManifoldCFException.INTERRUPTED)
-            rval = e;
-        }
-        catch (Error e)
-        {
-          error = e;
-        }
-        catch (RuntimeException e)
-        {
-          rtException = e;
-        }
-        finally
-        {
-          stmt = null;
-        }
-      }
-      if (connection != null)
-      {
-        try
-        {
-          JDBCConnectionFactory.releaseConnection(connection);
-        }
-        catch (Error e)
-        {
-          error = e;
-        }
-        catch (RuntimeException e)
-        {
-          rtException = e;
-        }
-        finally
-        {
-          connection = null;
-        }
-      }
-      if (error != null)
-        throw error;
-      if (rtException != null)
-        throw rtException;
-      if (rval != null)
-        throw rval;
+      reader.finishUp();
     }
 
   }
 
-  protected class StatementQueryThread extends Thread
+  /** Thread that runs a query and reads its rows for a JDBCResultSet.
+  */
+  protected class ResultReaderThread extends Thread
   {
-    protected String query;
-
+    protected final String query;
+    protected final ArrayList params;
+    protected final int maxResults;
+    protected final TemporaryIDTable idTable;
+    /** Connection handed in by the caller, or null */
+    protected final WrappedConnection givenConnection;
+
+    /** Lock protecting everything below */
+    protected final Object lock = new Object();
+    /** Rows read ahead but not yet picked up */
+    protected final LinkedList<IDynamicResultRow> rows = new LinkedList<IDynamicResultRow>();
+    /** Set once the query has executed */
+    protected boolean executed = false;
+    /** Set once the last row has been read */
+    protected boolean endOfRows = false;
+    /** Set once the consumer is done with the resultset */
+    protected boolean closed = false;
+    /** Set if the consumer was interrupted, and the thread was abandoned */
+    protected boolean abandoned = false;
+    /** Exception that has not yet been reported to the consumer */
     protected Throwable exception = null;
-    protected WrappedConnection connection = null;
-    protected Statement stmt = null;
-    protected ResultSet rs = null;
-    protected ResultSetMetaData rsmd = null;
-    protected String[] resultCols = null;
 
-    public StatementQueryThread(String query)
+    public ResultReaderThread(String query, ArrayList params, int maxResults, TemporaryIDTable idTable, WrappedConnection givenConnection)
     {
       super();
       setDaemon(true);
       this.query = query;
+      this.params = params;
+      this.maxResults = maxResults;
+      this.idTable = idTable;
+      this.givenConnection = givenConnection;
     }
 
     public void run()
     {
       try
       {
-        connection = JDBCConnectionFactory.getConnection(jdbcProvider,driverString,userName,password);
-        // lightest statement type
-        stmt = connection.getConnection().createStatement();
-        stmt.execute(query);
-        rs = stmt.getResultSet();
-        rsmd = rs.getMetaData();
-        resultCols = readColumnNames(rsmd,useName);
-      }
-      catch (Throwable e)
-      {
-        this.exception = e;
-        if (rs != null)
+        WrappedConnection connection = (givenConnection != null)?givenConnection:getConnection();
+        try
         {
+          Connection c = connection.getConnection();
+          // Some drivers (PostgreSQL's, for one) ignore the fetch size, and read the whole resultset
+          // into memory, unless the query runs inside a transaction.
+          boolean autoCommit = c.getAutoCommit();
+          if (autoCommit)
+            c.setAutoCommit(false);
           try
           {
-            closeResultset(rs);
-          }
-          catch (ManifoldCFException e2)
-          {
-            if (e2.getErrorCode() == ManifoldCFException.INTERRUPTED)
-              this.exception = e2;
-            // Ignore
-          }
-          catch (Throwable e2)
-          {
-            // We already have an exception to report.
-            // Eat any other exceptions from closing
+            if (idTable != null)
+              idTable.create(c);
+            readRows(c);
           }
           finally
           {
-            rs = null;
+            // Nothing was written that needs keeping.  Roll back before dropping the id table, because
+            // after an error some databases refuse anything else in the transaction.
+            if (autoCommit)
+            {
+              try
+              {
+                c.rollback();
+              }
+              finally
+              {
+                c.setAutoCommit(true);
+              }
+            }
+            if (idTable != null)
+              idTable.drop(c);
           }
         }
-        if (stmt != null)
+        finally
         {
-          try
-          {
-            closeStmt(stmt);
-          }
-          catch (ManifoldCFException e2)
-          {
-            if (e2.getErrorCode() == ManifoldCFException.INTERRUPTED)
-              this.exception = e2;
-            // Ignore
-          }
-          catch (Throwable e2)
-          {
-            // We already have an exception to report.
-            // Eat any other exceptions from closing statements
-          }
-          finally
-          {
-            stmt = null;
-          }
+          JDBCConnectionFactory.releaseConnection(connection);
         }
-        if (connection != null)
+        cleanupParameters(params);
+        noteEndOfRows(null);
+      }
+      catch (Throwable e)
+      {
+        try
         {
-          JDBCConnectionFactory.releaseConnection(connection);
-          connection = null;
+          cleanupParameters(params);
+        }
+        catch (Throwable e2)
+        {
+          // We already have an exception to report.
         }
+        noteEndOfRows(e);
       }
     }
 
-    public void finishUp()
-      throws ManifoldCFException, ServiceInterruption, InterruptedException
+    /** Run the query on the thread's connection, and hand its rows to the consumer.
+    */
+    protected void readRows(Connection c)
+      throws ManifoldCFException, ServiceInterruption, SQLException, InterruptedException
     {
-      join();
-      Throwable thr = exception;
-      if (thr != null)
+      Statement stmt;
+      if (params == null)
+        stmt = c.createStatement(ResultSet.TYPE_FORWARD_ONLY,ResultSet.CONCUR_READ_ONLY);
+      else
+        stmt = c.prepareStatement(query,ResultSet.TYPE_FORWARD_ONLY,ResultSet.CONCUR_READ_ONLY);
+      try
       {
-        if (thr instanceof java.sql.SQLException)
-          throw new ManifoldCFException("Exception doing connector query '"+query+"': "+thr.getMessage(),thr);
-        else if (thr instanceof ManifoldCFException)
-          throw (ManifoldCFException)thr;
-        else if (thr instanceof ServiceInterruption)
-          throw (ServiceInterruption)thr;
-        else if (thr instanceof RuntimeException)
-          throw (RuntimeException)thr;
+        if (fetchSize > 0)
+          stmt.setFetchSize(fetchSize);
+        ResultSet rs;
+        if (params == null)
+        {
+          stmt.execute(query);
+          rs = stmt.getResultSet();
+        }
         else
-          throw (Error)thr;
+        {
+          PreparedStatement ps = (PreparedStatement)stmt;
+          loadPS(ps,params);
+          rs = ps.executeQuery();
+        }
+        if (rs == null)
+          throw new ManifoldCFException("Query did not return a resultset: '"+query+"'");
+        try
+        {
+          ResultSetMetaData rsmd = rs.getMetaData();
+          String[] resultCols = readColumnNames(rsmd,useName);
+          if (noteExecuted())
+          {
+            int rowCount = 0;
+            while ((maxResults == -1 || rowCount < maxResults) && waitForRoom())
+            {
+              IDynamicResultRow row = readNextResultRow(rs,rsmd,resultCols);
+              if (row == null)
+                break;
+              if (!addRow(row))
+              {
+                // Consumer went away while we were reading
+                row.close();
+                break;
+              }
+              rowCount++;
+            }
+          }
+        }
+        finally
+        {
+          rs.close();
+        }
+      }
+      finally
+      {
+        stmt.close();
       }
     }
 
-    public WrappedConnection getConnection()
-    {
-      return connection;
-    }
-
-    public Statement getStatement()
-    {
-      return stmt;
-    }
-
-    public ResultSet getResultSet()
-    {
-      return rs;
-    }
-
-    public ResultSetMetaData getResultSetMetaData()
-    {
-      return rsmd;
-    }
-
-    public String[] getColumnNames()
-    {
-      return resultCols;
-    }
-  }
-
-  protected class JDBCPSResultSet implements IDynamicResultSet
-  {
-    protected WrappedConnection connection;
-    protected PreparedStatement ps;
-    protected ResultSet rs;
-    protected ResultSetMetaData rsmd;
-    protected String[] resultCols;
-    protected int maxResults;
-    protected ArrayList params;
-
-    /** Constructor */
-    public JDBCPSResultSet(String query, ArrayList params, int maxResults)
+    /** Wait for the query to execute, or fail.
+    */
+    public void waitForExecution()
       throws ManifoldCFException, ServiceInterruption
     {
-      this.maxResults = maxResults;
-      this.params = params;
-      PreparedStatementQueryThread t = new PreparedStatementQueryThread(query,params);
       try
       {
-        t.start();
-        t.finishUp();
-        connection = t.getConnection();
-        ps = t.getPreparedStatement();
-        rs = t.getResultSet();
-        rsmd = t.getResultSetMetaData();
-        resultCols = t.getColumnNames();
+        synchronized (lock)
+        {
+          while (!executed && exception == null)
+          {
+            lock.wait();
+          }
+        }
+        if (exception != null)
+        {
+          // Make sure the connection is back in the pool before reporting
+          join();
+          throwException();
+        }
       }
       catch (InterruptedException e)
       {
-        cleanupParameters(params);
-        t.interrupt();
+        abandon();
         throw new ManifoldCFException("Interrupted: "+e.getMessage(),e,ManifoldCFException.INTERRUPTED);
       }
     }
 
-    /** Get the next row from the resultset.
-    *@return the immutable row description, or null if there is no such row.
+    /** Pick up the next row.
+    *@return the row, or null if there are no more rows.
     */
     public IDynamicResultRow getNextRow()
       throws ManifoldCFException, ServiceInterruption
     {
-      if (maxResults == -1 || maxResults > 0)
+      try
+      {
+        synchronized (lock)
+        {
+          while (true)
+          {
+            if (rows.size() > 0)
+            {
+              IDynamicResultRow row = rows.removeFirst();
+              lock.notifyAll();
+              return row;
+            }
+            if (exception != null)
+              break;
+            if (endOfRows)
+              return null;
+            lock.wait();
+          }
+        }
+        throwException();
+        return null;
+      }
+      catch (InterruptedException e)
       {
-        IDynamicResultRow row = readNextResultRowViaThread(rs,rsmd,resultCols);
-        if (row != null && maxResults != -1)
-          maxResults--;
-        return row;
+        abandon();
+        throw new ManifoldCFException("Interrupted: "+e.getMessage(),e,ManifoldCFException.INTERRUPTED);
       }
-      return null;
     }
 
-    /** Close this resultset.
+    /** Tell the thread we're done, and wait for it to release the connection.
     */
-    public void close()
+    public void finishUp()
       throws ManifoldCFException, ServiceInterruption
     {
-      ManifoldCFException rval = null;
-      Error error = null;
-      RuntimeException rtException = null;
-      if (rs != null)
+      List<IDynamicResultRow> unread;
+      synchronized (lock)
       {
-        try
-        {
-          closeResultset(rs);
-        }
-        catch (ServiceInterruption e)
-        {
-        }
-        catch (ManifoldCFException e)
-        {
-          if (rval == null || e.getErrorCode() == ManifoldCFException.INTERRUPTED)
-            rval = e;
-        }
-        catch (Error e)
-        {
-          error = e;
-        }
-        catch (RuntimeException e)
-        {
-          rtException = e;
-        }
-        finally
-        {
-          rs = null;
-        }
+        if (abandoned)
+          return;
+        closed = true;
+        unread = takeRows();
       }
-      if (ps != null)
+      discardRows(unread);
+      try
       {
-        try
-        {
-          closePS(ps);
-        }
-        catch (ServiceInterruption e)
-        {
-        }
-        catch (ManifoldCFException e)
-        {
-          if (rval == null || e.getErrorCode() == ManifoldCFException.INTERRUPTED)
-            rval = e;
-        }
-        catch (Error e)
-        {
-          error = e;
-        }
-        catch (RuntimeException e)
-        {
-          rtException = e;
-        }
-        finally
-        {
-          ps = null;
-        }
+        join();
       }
-      if (connection != null)
+      catch (InterruptedException e)
       {
-        try
-        {
-          JDBCConnectionFactory.releaseConnection(connection);
-        }
-        catch (Error e)
-        {
-          error = e;
-        }
-        catch (RuntimeException e)
-        {
-          rtException = e;
-        }
-        finally
-        {
-          connection = null;
-        }
+        abandon();
+        throw new ManifoldCFException("Interrupted: "+e.getMessage(),e,ManifoldCFException.INTERRUPTED);
       }
-      if (params != null)
+      throwException();
+    }
+
+    /** Called by the thread once the query has executed.
+    *@return false if the consumer has already gone away.
+    */
+    protected boolean noteExecuted()
+    {
+      synchronized (lock)
       {
-        try
-        {
-          cleanupParameters(params);
-        }
-        catch (ManifoldCFException e)
-        {
-          if (rval == null || e.getErrorCode() == ManifoldCFException.INTERRUPTED)
-            rval = e;
-        }
-        catch (Error e)
-        {
-          error = e;
-        }
-        catch (RuntimeException e)
-        {
-          rtException = e;
-        }
-        finally
+        executed = true;
+        lock.notifyAll();
+        return !closed;
+      }
+    }
+
+    /** Called by the thread before reading a row; waits until the read-ahead has room.
+    *@return false if the consumer has gone away.
+    */
+    protected boolean waitForRoom()
+      throws InterruptedException
+    {
+      synchronized (lock)
+      {
+        while (!closed && rows.size() >= readAheadRows)
         {
-          params = null;
+          lock.wait();
         }
+        return !closed;
       }
-      if (error != null)
-        throw error;
-      if (rtException != null)
-        throw rtException;
-      if (rval != null)
-        throw rval;
-
     }
 
-  }
-
-  protected class PreparedStatementQueryThread extends Thread
-  {
-    protected ArrayList params;
-    protected String query;
-
-    protected WrappedConnection connection = null;
-    protected Throwable exception = null;
-    protected PreparedStatement ps = null;
-    protected ResultSet rs = null;
-    protected ResultSetMetaData rsmd = null;
-    protected String[] resultCols = null;
+    /** Called by the thread to hand a row to the consumer.
+    *@return false if the consumer has gone away, in which case the row is still the thread's.
+    */
+    protected boolean addRow(IDynamicResultRow row)
+    {
+      synchronized (lock)
+      {
+        if (closed)
+          return false;
+        rows.add(row);
+        lock.notifyAll();
+        return true;
+      }
+    }
 
-    public PreparedStatementQueryThread(String query, ArrayList params)
+    /** Called by the thread once it is done, one way or another.
+    */
+    protected void noteEndOfRows(Throwable e)
     {
-      super();
-      setDaemon(true);
-      this.query = query;
-      this.params = params;
+      synchronized (lock)
+      {
+        endOfRows = true;
+        if (e != null && exception == null)
+          exception = e;
+        lock.notifyAll();
+      }
     }
 
-    public void run()
+    /** Give up on the thread without waiting for it.  It will release its connection on its own, and
+    * discard any row it reads from now on; the rows it has already read are discarded here.
+    */
+    protected void abandon()
     {
+      List<IDynamicResultRow> unread;
+      synchronized (lock)
+      {
+        closed = true;
+        abandoned = true;
+        unread = takeRows();
+      }
+      interrupt();
       try
       {
-        connection = JDBCConnectionFactory.getConnection(jdbcProvider,driverString,userName,password);
-        ps = connection.getConnection().prepareStatement(query);
-        loadPS(ps, params);
-        rs = ps.executeQuery();
-        rsmd = rs.getMetaData();
-        resultCols = readColumnNames(rsmd,useName);
+        discardRows(unread);
       }
-      catch (Throwable e)
+      catch (ManifoldCFException e)
       {
-        this.exception = e;
-        if (rs != null)
-        {
-          try
-          {
-            closeResultset(rs);
-          }
-          catch (ManifoldCFException e2)
-          {
-            if (e2.getErrorCode() == ManifoldCFException.INTERRUPTED)
-              this.exception = e2;
-          }
-          catch (Throwable e2)
-          {
-          }
-          finally
-          {
-            rs = null;
-          }
-        }
-        if (ps != null)
-        {
-          try
-          {
-            closePS(ps);
-          }
-          catch (ManifoldCFException e2)
-          {
-            if (e2.getErrorCode() == ManifoldCFException.INTERRUPTED)
-              this.exception = e2;
-          }
-          catch (Throwable e2)
-          {
-          }
-          finally
-          {
-            ps = null;
-          }
-        }
-        if (connection != null)
-        {
-          JDBCConnectionFactory.releaseConnection(connection);
-          connection = null;
-        }
+        // The consumer is reporting its interruption; don't hide that
+        Logging.connectors.warn("JDBC: Could not discard unread rows: "+e.getMessage(),e);
       }
     }
 
-    public void finishUp()
-      throws ManifoldCFException, ServiceInterruption, InterruptedException
+    /** Take the rows that have not been picked up, and wake the thread, which may be waiting for room.
+    * Call with the lock held.
+    */
+    protected List<IDynamicResultRow> takeRows()
     {
-      join();
-      Throwable thr = exception;
+      List<IDynamicResultRow> unread = new ArrayList<IDynamicResultRow>(rows);
+      rows.clear();
+      lock.notifyAll();
+      return unread;
+    }
+
+    /** Discard rows that will never be picked up, along with the temporary files holding their LOBs.
+    */
+    protected void discardRows(List<IDynamicResultRow> unread)
+      throws ManifoldCFException
+    {
+      for (IDynamicResultRow row : unread)
+      {
+        row.close();
+      }
+    }
+
+    /** Throw the exception the thread ran into, if it has not been reported already.
+    */
+    protected void throwException()
+      throws ManifoldCFException, ServiceInterruption
+    {
+      Throwable thr;
+      synchronized (lock)
+      {
+        thr = exception;
+        exception = null;
+      }
       if (thr != null)
       {
-        // Cleanup of parameters happens even if exception doing query
-        cleanupParameters(params);
         if (thr instanceof java.sql.SQLException)
           throw new ManifoldCFException("Exception doing connector query '"+query+"': "+thr.getMessage(),thr);
         else if (thr instanceof ManifoldCFException)
@@ -1463,31 +1328,6 @@ public class JDBCConnection
           throw (Error)thr;
       }
     }
-
-    public WrappedConnection getConnection()
-    {
-      return connection;
-    }
-
-    public PreparedStatement getPreparedStatement()
-    {
-      return ps;
-    }
-
-    public ResultSet getResultSet()
-    {
-      return rs;
-    }
-
-    public ResultSetMetaData getResultSetMetaData()
-    {
-      return rsmd;
-    }
-
-    public String[] getColumnNames()
-    {
-      return resultCols;
-    }
   }
 
   /** Dynamic result row implementation */
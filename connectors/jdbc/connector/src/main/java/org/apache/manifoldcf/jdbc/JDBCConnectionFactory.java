@@ -40,6 +40,9 @@ public class JDBCConnectionFactory
 
   private static ConnectionPoolManager _pool = null;
 
+  /** The most connections the pool opens to any one database as any one user */
+  public static final int maxPoolConnections = 30;
+
   static
   {
     driverMap = new HashMap<String,String>();
@@ -92,6 +95,22 @@ public class JDBCConnectionFactory
   
   public static WrappedConnection getConnection(String providerName, String jdbcDriverString, String userName, String password)
     throws ManifoldCFException, ServiceInterruption
+  {
+    return getConnection(providerName,jdbcDriverString,userName,password,true);
+  }
+
+  /** Get a connection, but only if the pool has one free without waiting.
+  *@return the connection, or null if all the pool's connections are in use.
+  */
+  public static WrappedConnection getConnectionIfAvailable(String providerName, String jdbcDriverString, String userName, String password)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    return getConnection(providerName,jdbcDriverString,userName,password,false);
+  }
+
+  protected static WrappedConnection getConnection(String providerName, String jdbcDriverString, String userName, String password,
+    boolean wait)
+    throws ManifoldCFException, ServiceInterruption
   {
     String driverClassName = driverMap.get(providerName);
     if (driverClassName == null)
@@ -126,10 +145,12 @@ public class JDBCConnectionFactory
             Class.forName(driverClassName);
             //System.out.println("Class name '"+driverClassName+"'; URL = '"+dburl+"'");
             cp =_pool.addAlias(poolKey, driverClassName, dburl,
-              userName, password, 30, 300000L);
+              userName, password, maxPoolConnections, 300000L);
           }
         }
-        return cp.getConnection();
+        if (wait)
+          return cp.getConnection();
+        return cp.getConnectionIfAvailable();
       }
       else
         throw new ManifoldCFException("Can't get connection since pool driver did not initialize properly");
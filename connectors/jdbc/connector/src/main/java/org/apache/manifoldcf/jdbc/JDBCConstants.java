@@ -38,6 +38,26 @@ public class JDBCConstants
   public static String databaseUserName = "User name";
   /** The password config parameter */
   public static String databasePassword = "Password";
+  /** The fetch size config parameter */
+  public static String fetchSizeParameter = "Fetch size";
+
+  /** The documents per request config parameter */
+  public static String maxDocumentsPerRequestParameter = "Documents per request";
+  /** The IN list size limit config parameter */
+  public static String maxInListSizeParameter = "Max IN list size";
+  /** The parallel data queries config parameter */
+  public static String parallelQueriesParameter = "Parallel data queries";
+  /** The temporary id table config parameter */
+  public static String useTempTableParameter = "Use temporary id table";
+
+  /** The fetch size used when none is configured */
+  public static final int defaultFetchSize = 100;
+  /** The documents per request used when none is configured */
+  public static final int defaultMaxDocumentsPerRequest = 100;
+  /** The IN list size limit used when none is configured.  Oracle won't take more than 1000. */
+  public static final int defaultMaxInListSize = 1000;
+  /** The number of parallel data queries used when none is configured */
+  public static final int defaultParallelQueries = 1;
 
   /** The node containing the identifier query */
   public static String idQueryNode = "idquery";
@@ -0,0 +1,153 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.jdbc;
+
+import org.apache.manifoldcf.crawler.system.Logging;
+
+import java.sql.*;
+import java.util.*;
+
+/** This class describes a session-scoped temporary table holding a list of document identifiers.
+* A query can join against such a table in place of a large IN list.  The table is filled on the
+* same connection the query runs on, right before the query, and dropped right after it.
+* Only some databases can create temporary tables on the fly; for the others, isSupported() returns false.
+*/
+public class TemporaryIDTable
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** The longest identifier the table can hold */
+  public static final int maxIDLength = 255;
+
+  protected final String jdbcProvider;
+  protected final List<String> ids;
+
+  /** Constructor.
+  *@param jdbcProvider is the jdbc provider of the connection the table will be created on.
+  *@param ids are the identifiers to put in the table.
+  */
+  public TemporaryIDTable(String jdbcProvider, List<String> ids)
+  {
+    this.jdbcProvider = jdbcProvider;
+    this.ids = ids;
+  }
+
+  /** Check whether a jdbc provider supports temporary id tables.
+  */
+  public static boolean isSupported(String jdbcProvider)
+  {
+    return jdbcProvider.equals("postgresql:") || jdbcProvider.equals("mysql:") || jdbcProvider.startsWith("jtds:");
+  }
+
+  /** Check whether all the given identifiers fit in a temporary id table.
+  */
+  public static boolean canHold(Collection<String> ids)
+  {
+    for (String id : ids)
+    {
+      if (id.length() > maxIDLength)
+        return false;
+    }
+    return true;
+  }
+
+  /** Get the subquery to use in place of an IN list, e.g. " (SELECT id FROM mcf_idlist)".
+  */
+  public static String getSubquery(String jdbcProvider)
+  {
+    return " (SELECT id FROM "+getTableName(jdbcProvider)+")";
+  }
+
+  protected static String getTableName(String jdbcProvider)
+  {
+    if (jdbcProvider.startsWith("jtds:"))
+      return "#mcf_idlist";
+    return "mcf_idlist";
+  }
+
+  /** Create and fill the table.
+  */
+  public void create(Connection connection)
+    throws SQLException
+  {
+    String tableName = getTableName(jdbcProvider);
+    Statement stmt = connection.createStatement();
+    try
+    {
+      // A previous user of this pooled connection may not have been able to drop its table
+      stmt.execute(getDropIfExistsStatement(tableName));
+      if (jdbcProvider.startsWith("jtds:"))
+        stmt.execute("CREATE TABLE "+tableName+" (id VARCHAR("+maxIDLength+"))");
+      else
+        stmt.execute("CREATE TEMPORARY TABLE "+tableName+" (id VARCHAR("+maxIDLength+"))");
+    }
+    finally
+    {
+      stmt.close();
+    }
+    PreparedStatement ps = connection.prepareStatement("INSERT INTO "+tableName+" (id) VALUES (?)");
+    try
+    {
+      for (String id : ids)
+      {
+        ps.setString(1,id);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    }
+    finally
+    {
+      ps.close();
+    }
+  }
+
+  /** Drop the table.  Failures are only logged; the next user of the connection drops the table anyway.
+  */
+  public void drop(Connection connection)
+  {
+    try
+    {
+      Statement stmt = connection.createStatement();
+      try
+      {
+        stmt.execute(getDropIfExistsStatement(getTableName(jdbcProvider)));
+      }
+      finally
+      {
+        stmt.close();
+      }
+    }
+    catch (SQLException e)
+    {
+      Logging.connectors.warn("JDBC: Could not drop temporary id table: "+e.getMessage(),e);
+    }
+  }
+
+  /** Build a statement that drops the temporary table, and never a permanent table of the same name.
+  */
+  protected String getDropIfExistsStatement(String tableName)
+  {
+    if (jdbcProvider.startsWith("jtds:"))
+      return "IF OBJECT_ID('tempdb.."+tableName+"') IS NOT NULL DROP TABLE "+tableName;
+    if (jdbcProvider.equals("mysql:"))
+      return "DROP TEMPORARY TABLE IF EXISTS "+tableName;
+    return "DROP TABLE IF EXISTS pg_temp."+tableName;
+  }
+
+}
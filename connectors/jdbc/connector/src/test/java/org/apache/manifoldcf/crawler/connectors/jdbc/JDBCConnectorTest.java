@@ -0,0 +1,139 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.jdbc;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.jdbc.JDBCConstants;
+
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Checks how the connector splits a batch of document identifiers into queries */
+public class JDBCConnectorTest
+{
+  protected final static String QUERY = "SELECT id FROM docs WHERE id IN $(IDLIST)";
+
+  @Test
+  public void splitsEvenlyForParallelism()
+  {
+    JDBCConnector connector = makeConnector("postgresql:",100,false);
+    List<JDBCConnector.IDBatchQuery> queries = build(connector,makeIDs(10),null,3);
+    assertEquals(3,queries.size());
+    assertEquals(Arrays.asList("doc0","doc1","doc2","doc3"),queries.get(0).params);
+    assertEquals(Arrays.asList("doc4","doc5","doc6","doc7"),queries.get(1).params);
+    assertEquals(Arrays.asList("doc8","doc9"),queries.get(2).params);
+    assertEquals("SELECT id FROM docs WHERE id IN  (?,?,?,?) ",queries.get(0).queryText);
+    assertNull(queries.get(0).idTable);
+  }
+
+  @Test
+  public void splitsAtTheInListLimit()
+  {
+    JDBCConnector connector = makeConnector("postgresql:",3,false);
+    List<JDBCConnector.IDBatchQuery> queries = build(connector,makeIDs(10),null,1);
+    assertEquals(4,queries.size());
+    assertEquals(3,queries.get(0).params.size());
+    assertEquals(Arrays.asList("doc9"),queries.get(3).params);
+    // The limit applies to the parallel batches, too
+    assertEquals(4,build(connector,makeIDs(10),null,2).size());
+  }
+
+  @Test
+  public void includesOnlyTheDocumentsToFetch()
+  {
+    JDBCConnector connector = makeConnector("postgresql:",100,false);
+    Set<String> fetchDocuments = new HashSet<String>(Arrays.asList("doc1","doc5"));
+    List<JDBCConnector.IDBatchQuery> queries = build(connector,makeIDs(10),fetchDocuments,4);
+    assertEquals(2,queries.size());
+    assertEquals(Arrays.asList("doc1"),queries.get(0).params);
+    assertEquals(Arrays.asList("doc5"),queries.get(1).params);
+    assertEquals(0,build(connector,makeIDs(10),new HashSet<String>(),4).size());
+  }
+
+  @Test
+  public void idTableLiftsTheInListLimit()
+  {
+    JDBCConnector connector = makeConnector("postgresql:",3,true);
+    List<JDBCConnector.IDBatchQuery> queries = build(connector,makeIDs(10),null,2);
+    assertEquals(2,queries.size());
+    assertEquals("SELECT id FROM docs WHERE id IN  (SELECT id FROM mcf_idlist)",queries.get(0).queryText);
+    assertEquals(0,queries.get(0).params.size());
+    assertNotNull(queries.get(0).idTable);
+    assertNotNull(queries.get(1).idTable);
+  }
+
+  @Test
+  public void fallsBackToInListsWithoutIdTableSupport()
+  {
+    // Oracle can't create temporary tables on the fly
+    JDBCConnector connector = makeConnector("oracle:thin:@",3,true);
+    List<JDBCConnector.IDBatchQuery> queries = build(connector,makeIDs(10),null,1);
+    assertEquals(4,queries.size());
+    assertNull(queries.get(0).idTable);
+
+    // Neither does an identifier too long for the table's column
+    connector = makeConnector("postgresql:",3,true);
+    String[] ids = makeIDs(4);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 300; i++)
+    {
+      sb.append("x");
+    }
+    ids[3] = sb.toString();
+    queries = build(connector,ids,null,1);
+    assertEquals(2,queries.size());
+    assertNull(queries.get(0).idTable);
+  }
+
+  protected static List<JDBCConnector.IDBatchQuery> build(JDBCConnector connector, String[] ids, Set<String> fetchDocuments, int parallelism)
+  {
+    try
+    {
+      return connector.buildIDQueries(QUERY,new JDBCConnector.VariableMap(),ids,fetchDocuments,parallelism);
+    }
+    catch (ManifoldCFException e)
+    {
+      throw new RuntimeException(e.getMessage(),e);
+    }
+  }
+
+  protected static String[] makeIDs(int count)
+  {
+    String[] rval = new String[count];
+    for (int i = 0; i < count; i++)
+    {
+      rval[i] = "doc"+i;
+    }
+    return rval;
+  }
+
+  protected static JDBCConnector makeConnector(String provider, int maxInListSize, boolean useTempTable)
+  {
+    ConfigParams configParams = new ConfigParams();
+    configParams.setParameter(JDBCConstants.providerParameter,provider);
+    configParams.setParameter(JDBCConstants.maxInListSizeParameter,Integer.toString(maxInListSize));
+    if (useTempTable)
+      configParams.setParameter(JDBCConstants.useTempTableParameter,"true");
+    JDBCConnector connector = new JDBCConnector();
+    connector.connect(configParams);
+    return connector;
+  }
+
+}
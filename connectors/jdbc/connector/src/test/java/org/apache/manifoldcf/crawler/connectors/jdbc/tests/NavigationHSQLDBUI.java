@@ -132,6 +132,13 @@ public class NavigationHSQLDBUI extends BaseUIHSQLDB
     link.click();
     window = testerInstance.findWindow(null);
     form = window.findForm(testerInstance.createStringDescription("editconnection"));
+    // Performance
+    link = window.findLink(testerInstance.createStringDescription("Performance tab"));
+    link.click();
+    window = testerInstance.findWindow(null);
+    form = window.findForm(testerInstance.createStringDescription("editconnection"));
+    textarea = form.findTextarea(testerInstance.createStringDescription("parallelqueries"));
+    textarea.setValue(testerInstance.createStringDescription("2"));
 
     // Go back to the Name tab
     link = window.findLink(testerInstance.createStringDescription("Name tab"));
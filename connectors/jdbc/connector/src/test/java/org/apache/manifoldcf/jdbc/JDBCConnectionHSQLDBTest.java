@@ -0,0 +1,278 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.jdbc;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.core.jdbcpool.*;
+import org.apache.manifoldcf.agents.interfaces.*;
+
+import java.sql.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Checks the streaming resultset against an in-memory HSQLDB database, with the framework set up
+* so that LOBs can be spooled to temporary files. */
+public class JDBCConnectionHSQLDBTest extends org.apache.manifoldcf.crawler.tests.ConnectorBaseHSQLDB
+{
+  protected final static String DB_URL = "jdbc:hsqldb:mem:jdbcconnectiontest";
+  protected final static int ROW_COUNT = 40;
+  /** Bigger than a TempFileInput keeps in memory */
+  protected final static int BODY_SIZE = 10000;
+
+  protected ConnectionPool pool;
+  protected Connection setupConnection;
+
+  @Before
+  public void createTable()
+    throws Exception
+  {
+    Class.forName("org.hsqldb.jdbcDriver");
+    pool = new ConnectionPool(DB_URL,"sa","",5,300000L,false);
+    setupConnection = DriverManager.getConnection(DB_URL,"sa","");
+    Statement stmt = setupConnection.createStatement();
+    try
+    {
+      stmt.execute("CREATE TABLE docs (id VARCHAR(32), body VARBINARY("+BODY_SIZE+"))");
+    }
+    finally
+    {
+      stmt.close();
+    }
+    PreparedStatement ps = setupConnection.prepareStatement("INSERT INTO docs (id,body) VALUES (?,?)");
+    try
+    {
+      for (int i = 0; i < ROW_COUNT; i++)
+      {
+        ps.setString(1,makeID(i));
+        ps.setBytes(2,new byte[BODY_SIZE]);
+        ps.executeUpdate();
+      }
+    }
+    finally
+    {
+      ps.close();
+    }
+  }
+
+  @After
+  public void dropTable()
+    throws Exception
+  {
+    pool.closePool();
+    Statement stmt = setupConnection.createStatement();
+    try
+    {
+      stmt.execute("DROP TABLE docs");
+    }
+    finally
+    {
+      stmt.close();
+    }
+    setupConnection.close();
+  }
+
+  @Test
+  public void streamsRowsInsideATransaction()
+    throws Exception
+  {
+    PoolConnection connection = new PoolConnection();
+    IDynamicResultSet set = connection.executeUncachedQuery("SELECT id, body FROM docs ORDER BY id",null,-1);
+    int count = 0;
+    try
+    {
+      while (true)
+      {
+        IDynamicResultRow row = set.getNextRow();
+        if (row == null)
+          break;
+        if (count == 0)
+          assertFalse(connection.getUsedConnection(0).getAutoCommit());
+        assertEquals(makeID(count),row.getValue("ID"));
+        row.close();
+        count++;
+      }
+    }
+    finally
+    {
+      set.close();
+    }
+    assertEquals(ROW_COUNT,count);
+    // The pooled connection goes back the way it came
+    assertTrue(connection.getUsedConnection(0).getAutoCommit());
+  }
+
+  @Test
+  public void failedQueryRestoresAutoCommit()
+    throws Exception
+  {
+    PoolConnection connection = new PoolConnection();
+    try
+    {
+      connection.executeUncachedQuery("SELECT nosuchcolumn FROM docs",null,-1);
+      fail("Bad query should have failed");
+    }
+    catch (ManifoldCFException e)
+    {
+      // Expected
+    }
+    assertTrue(connection.getUsedConnection(0).getAutoCommit());
+  }
+
+  @Test
+  public void abandonDiscardsUnreadRows()
+    throws Exception
+  {
+    PoolConnection connection = new PoolConnection();
+    JDBCConnection.JDBCResultSet set = (JDBCConnection.JDBCResultSet)connection.executeUncachedQuery(
+      "SELECT id, body FROM docs ORDER BY id",null,-1);
+    JDBCConnection.ResultReaderThread reader = set.reader;
+    List<IDynamicResultRow> unread = waitForReadAhead(reader);
+    for (IDynamicResultRow row : unread)
+    {
+      BinaryInput body = (BinaryInput)row.getValue("BODY");
+      assertNotNull(body.getStream());
+      body.doneWithStream();
+    }
+
+    reader.abandon();
+    synchronized (reader.lock)
+    {
+      assertEquals(0,reader.rows.size());
+    }
+    for (IDynamicResultRow row : unread)
+    {
+      // A discarded temporary file has nothing left to read
+      assertNull(((BinaryInput)row.getValue("BODY")).getStream());
+    }
+
+    // The thread stops reading, and gives its connection back
+    reader.join(10000L);
+    assertFalse(reader.isAlive());
+    assertTrue(connection.getUsedConnection(0).getAutoCommit());
+  }
+
+  @Test
+  public void readAheadQueryNeedsAFreeConnection()
+    throws Exception
+  {
+    pool.closePool();
+    pool = new ConnectionPool(DB_URL,"sa","",1,300000L,false);
+    PoolConnection connection = new PoolConnection();
+    JDBCConnection.JDBCResultSet first = connection.startUncachedQueryIfAvailable("SELECT id FROM docs",null,-1,null);
+    assertNotNull(first);
+    try
+    {
+      first.waitForExecution();
+      // The only connection is taken, and asking does not wait for it
+      assertNull(connection.startUncachedQueryIfAvailable("SELECT id FROM docs",null,-1,null));
+    }
+    finally
+    {
+      first.close();
+    }
+    JDBCConnection.JDBCResultSet second = connection.startUncachedQueryIfAvailable("SELECT id FROM docs",null,-1,null);
+    assertNotNull(second);
+    second.close();
+  }
+
+  protected static List<IDynamicResultRow> waitForReadAhead(JDBCConnection.ResultReaderThread reader)
+    throws Exception
+  {
+    long deadline = System.currentTimeMillis() + 10000L;
+    while (System.currentTimeMillis() < deadline)
+    {
+      synchronized (reader.lock)
+      {
+        if (reader.rows.size() == JDBCConnection.readAheadRows)
+          return new ArrayList<IDynamicResultRow>(reader.rows);
+      }
+      Thread.sleep(10L);
+    }
+    fail("Reader thread never filled its read-ahead");
+    return null;
+  }
+
+  protected static String makeID(int i)
+  {
+    return "doc"+((i < 10)?"0":"")+i;
+  }
+
+  /** Connection that takes its database connections from the test's pool, and remembers them */
+  protected class PoolConnection extends JDBCConnection
+  {
+    protected final List<Connection> usedConnections = new ArrayList<Connection>();
+
+    public PoolConnection()
+      throws ManifoldCFException
+    {
+      super("postgresql:",false,"localhost","test",null,"sa","");
+    }
+
+    @Override
+    protected WrappedConnection getConnection()
+      throws ManifoldCFException, ServiceInterruption
+    {
+      try
+      {
+        WrappedConnection connection = pool.getConnection();
+        synchronized (usedConnections)
+        {
+          usedConnections.add(connection.getConnection());
+        }
+        return connection;
+      }
+      catch (SQLException e)
+      {
+        throw new ManifoldCFException(e.getMessage(),e);
+      }
+      catch (InterruptedException e)
+      {
+        throw new ManifoldCFException(e.getMessage(),e,ManifoldCFException.INTERRUPTED);
+      }
+    }
+
+    @Override
+    protected WrappedConnection getConnectionIfAvailable()
+      throws ManifoldCFException, ServiceInterruption
+    {
+      try
+      {
+        return pool.getConnectionIfAvailable();
+      }
+      catch (SQLException e)
+      {
+        throw new ManifoldCFException(e.getMessage(),e);
+      }
+      catch (InterruptedException e)
+      {
+        throw new ManifoldCFException(e.getMessage(),e,ManifoldCFException.INTERRUPTED);
+      }
+    }
+
+    public Connection getUsedConnection(int index)
+    {
+      synchronized (usedConnections)
+      {
+        return usedConnections.get(index);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,132 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.jdbc;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Checks the statements a temporary id table issues for each kind of database */
+public class TemporaryIDTableTest
+{
+
+  @Test
+  public void knowsWhichDatabasesSupportIt()
+  {
+    assertTrue(TemporaryIDTable.isSupported("postgresql:"));
+    assertTrue(TemporaryIDTable.isSupported("mysql:"));
+    assertTrue(TemporaryIDTable.isSupported("jtds:sqlserver:"));
+    assertTrue(TemporaryIDTable.isSupported("jtds:sybase:"));
+    assertFalse(TemporaryIDTable.isSupported("oracle:thin:@"));
+  }
+
+  @Test
+  public void holdsOnlyShortIdentifiers()
+  {
+    char[] longID = new char[TemporaryIDTable.maxIDLength + 1];
+    Arrays.fill(longID,'x');
+    assertTrue(TemporaryIDTable.canHold(Arrays.asList("a","b")));
+    assertTrue(TemporaryIDTable.canHold(Arrays.asList(new String(longID,0,TemporaryIDTable.maxIDLength))));
+    assertFalse(TemporaryIDTable.canHold(Arrays.asList("a",new String(longID))));
+  }
+
+  @Test
+  public void createsAndDropsPostgresqlTable()
+    throws Exception
+  {
+    RecordingConnection recorder = new RecordingConnection();
+    TemporaryIDTable table = new TemporaryIDTable("postgresql:",Arrays.asList("a","b"));
+    table.create(recorder.connection);
+    table.drop(recorder.connection);
+    assertEquals(Arrays.asList(
+      "DROP TABLE IF EXISTS pg_temp.mcf_idlist",
+      "CREATE TEMPORARY TABLE mcf_idlist (id VARCHAR(255))",
+      "INSERT INTO mcf_idlist (id) VALUES (?)",
+      "DROP TABLE IF EXISTS pg_temp.mcf_idlist"),recorder.statements);
+    assertEquals(Arrays.asList("a","b"),recorder.batch);
+    assertEquals(" (SELECT id FROM mcf_idlist)",TemporaryIDTable.getSubquery("postgresql:"));
+  }
+
+  @Test
+  public void createsMySQLTable()
+    throws Exception
+  {
+    RecordingConnection recorder = new RecordingConnection();
+    new TemporaryIDTable("mysql:",Arrays.asList("a")).create(recorder.connection);
+    assertEquals("DROP TEMPORARY TABLE IF EXISTS mcf_idlist",recorder.statements.get(0));
+    assertEquals("CREATE TEMPORARY TABLE mcf_idlist (id VARCHAR(255))",recorder.statements.get(1));
+  }
+
+  @Test
+  public void createsSQLServerTable()
+    throws Exception
+  {
+    RecordingConnection recorder = new RecordingConnection();
+    new TemporaryIDTable("jtds:sqlserver:",Arrays.asList("a")).create(recorder.connection);
+    // Only a name starting with '#' makes a temporary table
+    assertEquals("IF OBJECT_ID('tempdb..#mcf_idlist') IS NOT NULL DROP TABLE #mcf_idlist",recorder.statements.get(0));
+    assertEquals("CREATE TABLE #mcf_idlist (id VARCHAR(255))",recorder.statements.get(1));
+    assertEquals("INSERT INTO #mcf_idlist (id) VALUES (?)",recorder.statements.get(2));
+    assertEquals(" (SELECT id FROM #mcf_idlist)",TemporaryIDTable.getSubquery("jtds:sqlserver:"));
+  }
+
+  /** A JDBC connection that only records the statements it is given */
+  protected static class RecordingConnection implements InvocationHandler
+  {
+    public final List<String> statements = new ArrayList<String>();
+    public final List<String> batch = new ArrayList<String>();
+    public final Connection connection;
+
+    public RecordingConnection()
+    {
+      connection = (Connection)Proxy.newProxyInstance(getClass().getClassLoader(),new Class[]{Connection.class},this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+    {
+      String name = method.getName();
+      if (name.equals("createStatement"))
+        return makeProxy(Statement.class);
+      if (name.equals("prepareStatement"))
+      {
+        statements.add((String)args[0]);
+        return makeProxy(PreparedStatement.class);
+      }
+      if (name.equals("execute"))
+      {
+        statements.add((String)args[0]);
+        return Boolean.FALSE;
+      }
+      if (name.equals("setString"))
+        batch.add((String)args[1]);
+      if (name.equals("executeBatch"))
+        return new int[batch.size()];
+      return null;
+    }
+
+    protected Object makeProxy(Class c)
+    {
+      return Proxy.newProxyInstance(getClass().getClassLoader(),new Class[]{c},this);
+    }
+  }
+
+}
@@ -29,6 +29,7 @@ import org.apache.manifoldcf.authorities.system.ManifoldCF;
 import org.apache.manifoldcf.authorities.system.Logging;
 import org.apache.manifoldcf.core.interfaces.*;
 import org.apache.manifoldcf.connectorcommon.interfaces.*;
+import org.apache.manifoldcf.connectorcommon.ldap.*;
 import org.apache.manifoldcf.ui.util.Encoder;
 import org.apache.manifoldcf.core.common.LDAPSSLSocketFactory;
 
@@ -44,12 +45,19 @@ public class LDAPAuthority extends org.apache.manifoldcf.authorities.authorities
   public static final String _rcsid = "@(#)$Id$";
 
   /**
-   * Session information for all DC's we talk with.
+   * Bound contexts, shared by all instances of this connector in the process.
    */
-  private LdapContext session = null;
-  private StartTlsResponse tls = null;
-  
-  private long sessionExpirationTime = -1L;
+  private static final LDAPContextPool contextPool = new LDAPContextPool();
+
+  /**
+   * Group-to-group membership, shared by all instances of this connector in the process.
+   */
+  private static final LDAPGroupCache groupCache = new LDAPGroupCache(60000L, 100000);
+
+  /**
+   * The deepest group nesting that is followed.
+   */
+  private static final int MAX_GROUP_DEPTH = 20;
 
   //private ConfigParams parameters;
 
@@ -65,6 +73,7 @@ public class LDAPAuthority extends org.apache.manifoldcf.authorities.authorities
   private String groupSearch;
   private String groupNameAttr;
   private boolean groupMemberDN;
+  private boolean groupNested;
   private boolean addUserRecord;
   private List<String> forcedTokens;
   private String userNameAttr;
@@ -126,6 +135,7 @@ public class LDAPAuthority extends org.apache.manifoldcf.authorities.authorities
     groupNameAttr = configParams.getParameter("ldapGroupNameAttr");
     userNameAttr = configParams.getParameter("ldapUserNameAttr");
     groupMemberDN = "1".equals(getParam(configParams, "ldapGroupMemberDn", ""));
+    groupNested = "1".equals(getParam(configParams, "ldapGroupNested", ""));
     addUserRecord = "1".equals(getParam(configParams, "ldapAddUserRecord", ""));
 
     forcedTokens = new ArrayList<String>();
@@ -143,114 +153,120 @@ public class LDAPAuthority extends org.apache.manifoldcf.authorities.authorities
   // on this instance!
   /**
    * Session setup. Anything that might need to throw an exception should go
-   * here.
+   * here. The session comes from the shared pool, and must be handed back to it
+   * (or invalidated) when done.
    */
-  protected LdapContext getSession()
+  protected LDAPSession grabSession()
     throws ManifoldCFException {
+    if (serverName == null || serverName.length() == 0) {
+      throw new ManifoldCFException("Server name parameter missing but required");
+    }
+    if (serverPort == null || serverPort.length() == 0) {
+      throw new ManifoldCFException("Server port parameter missing but required");
+    }
+    if (serverBase == null) {
+      throw new ManifoldCFException("Server base parameter missing but required");
+    }
+    if (userBase == null) {
+      throw new ManifoldCFException("User base parameter missing but required");
+    }
+    if (userSearch == null || userSearch.length() == 0) {
+      throw new ManifoldCFException("User search expression missing but required");
+    }
+    if (groupBase == null) {
+      throw new ManifoldCFException("Group base parameter missing but required");
+    }
+    if (groupSearch == null || groupSearch.length() == 0) {
+      throw new ManifoldCFException("Group search expression missing but required");
+    }
+    if (groupNameAttr == null || groupNameAttr.length() == 0) {
+      throw new ManifoldCFException("Group name attribute missing but required");
+    }
+    if (userNameAttr == null || userNameAttr.length() == 0) {
+      throw new ManifoldCFException("User name attribute missing but required");
+    }
 
-    try {
-      if (session == null) {
-        if (serverName == null || serverName.length() == 0) {
-          throw new ManifoldCFException("Server name parameter missing but required");
-        }
-        if (serverPort == null || serverPort.length() == 0) {
-          throw new ManifoldCFException("Server port parameter missing but required");
-        }
-        if (serverBase == null) {
-          throw new ManifoldCFException("Server base parameter missing but required");
-        }
-        if (userBase == null) {
-          throw new ManifoldCFException("User base parameter missing but required");
-        }
-        if (userSearch == null || userSearch.length() == 0) {
-          throw new ManifoldCFException("User search expression missing but required");
-        }
-        if (groupBase == null) {
-          throw new ManifoldCFException("Group base parameter missing but required");
-        }
-        if (groupSearch == null || groupSearch.length() == 0) {
-          throw new ManifoldCFException("Group search expression missing but required");
-        }
-        if (groupNameAttr == null || groupNameAttr.length() == 0) {
-          throw new ManifoldCFException("Group name attribute missing but required");
-        }
-        if (userNameAttr == null || userNameAttr.length() == 0) {
-          throw new ManifoldCFException("User name attribute missing but required");
-        }
+    if (sslKeystore == null) {
+      if (sslKeystoreData != null) {
+        sslKeystore = KeystoreManagerFactory.make("", sslKeystoreData);
+      } else {
+        sslKeystore = KeystoreManagerFactory.make("");
+      }
+    }
 
-        if (sslKeystoreData != null) {
-          sslKeystore = KeystoreManagerFactory.make("", sslKeystoreData);
-        } else {
-          sslKeystore = KeystoreManagerFactory.make("");
-        }
-        
-        // Set thread local for keystore stuff
-        LDAPSSLSocketFactory.setSocketFactoryProducer(sslKeystore);
-
-        final String protocolToUse;
-        final boolean useTls;
-        if (serverProtocol == null || serverProtocol.length() == 0) {
-          protocolToUse = "ldap";
-          useTls = false;
-        } else {
-          int plusIndex = serverProtocol.indexOf("+");
-          if (plusIndex == -1) {
-            plusIndex = serverProtocol.length();
-            useTls = false;
-          } else {
-            useTls = true;
-          }
-          protocolToUse = serverProtocol.substring(0,plusIndex);
-        }
+    // Set thread local for keystore stuff
+    LDAPSSLSocketFactory.setSocketFactoryProducer(sslKeystore);
 
-        final Hashtable env = new Hashtable();
-        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
-        env.put(Context.PROVIDER_URL, "ldap://" + serverName + ":" + serverPort + "/" + serverBase);
-        if (protocolToUse.equals("ldaps"))
-          env.put(Context.SECURITY_PROTOCOL, "ssl");
-        
-        env.put("java.naming.ldap.factory.socket", "org.apache.manifoldcf.core.common.LDAPSSLSocketFactory");
-
-        if (bindUser != null && !bindUser.isEmpty()) {
-          env.put(Context.SECURITY_AUTHENTICATION, "simple");
-          env.put(Context.SECURITY_PRINCIPAL, bindUser);
-          env.put(Context.SECURITY_CREDENTIALS, bindPass);
-        }
+    return contextPool.grab(createPoolKey(), this, new LDAPContextPool.SessionFactory() {
+      @Override
+      public LDAPSession createSession()
+        throws ManifoldCFException {
+        return createNewSession();
+      }
+    });
+  }
 
-        session = new InitialLdapContext(env, null);
-        
-        if (useTls) {
-          // Start TLS
-          StartTlsResponse tls = (StartTlsResponse) session.extendedOperation(new StartTlsRequest());
+  /**
+   * Bind a new session.
+   */
+  protected LDAPSession createNewSession()
+    throws ManifoldCFException {
+    final String protocolToUse;
+    final boolean useTls;
+    if (serverProtocol == null || serverProtocol.length() == 0) {
+      protocolToUse = "ldap";
+      useTls = false;
+    } else {
+      int plusIndex = serverProtocol.indexOf("+");
+      if (plusIndex == -1) {
+        plusIndex = serverProtocol.length();
+        useTls = false;
+      } else {
+        useTls = true;
+      }
+      protocolToUse = serverProtocol.substring(0,plusIndex);
+    }
+
+    final Hashtable env = new Hashtable();
+    env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+    env.put(Context.PROVIDER_URL, "ldap://" + serverName + ":" + serverPort + "/" + serverBase);
+    if (protocolToUse.equals("ldaps"))
+      env.put(Context.SECURITY_PROTOCOL, "ssl");
+    
+    env.put("java.naming.ldap.factory.socket", "org.apache.manifoldcf.core.common.LDAPSSLSocketFactory");
+
+    if (bindUser != null && !bindUser.isEmpty()) {
+      env.put(Context.SECURITY_AUTHENTICATION, "simple");
+      env.put(Context.SECURITY_PRINCIPAL, bindUser);
+      env.put(Context.SECURITY_CREDENTIALS, bindPass);
+    }
+
+    try {
+      LdapContext ctx = new InitialLdapContext(env, null);
+      StartTlsResponse tls = null;
+      if (useTls) {
+        // Start TLS
+        try {
+          tls = (StartTlsResponse) ctx.extendedOperation(new StartTlsRequest());
           tls.negotiate(sslKeystore.getSecureSocketFactory());
+        } catch (NamingException e) {
+          ctx.close();
+          throw e;
+        } catch (IOException e) {
+          ctx.close();
+          throw e;
         }
-        
-      } else {
-        // Set thread local for keystore stuff
-        LDAPSSLSocketFactory.setSocketFactoryProducer(sslKeystore);
-        session.reconnect(null);
       }
-      sessionExpirationTime = System.currentTimeMillis() + 300000L;
-      return session;
+      return new LDAPSession(ctx, tls);
     } catch (AuthenticationException e) {
-      session = null;
-      sessionExpirationTime = -1L;
       throw new ManifoldCFException("Authentication error: " + e.getMessage() + ", explanation: " + e.getExplanation(), e);
     } catch (CommunicationException e) {
-      session = null;
-      sessionExpirationTime = -1L;
       throw new ManifoldCFException("Communication error: " + e.getMessage(), e);
     } catch (NamingException e) {
-      session = null;
-      sessionExpirationTime = -1L;
       throw new ManifoldCFException("Naming error: " + e.getMessage(), e);
     } catch (InterruptedIOException e) {
-      session = null;
-      sessionExpirationTime = -1L;
       throw new ManifoldCFException(e.getMessage(), ManifoldCFException.INTERRUPTED);
     } catch (IOException e) {
-      session = null;
-      sessionExpirationTime = -1L;
       throw new ManifoldCFException("IO error: " + e.getMessage(), e);
     }
   }
@@ -261,8 +277,10 @@ public class LDAPAuthority extends org.apache.manifoldcf.authorities.authorities
   @Override
   public String check()
     throws ManifoldCFException {
-    disconnectSession();
-    getSession();
+    // Force a fresh bind, and forget any group structure we have seen
+    contextPool.flush(createPoolKey());
+    groupCache.invalidateNamespace(createGroupNamespace());
+    contextPool.release(grabSession(), this);
     // MHL for a real check of all the search etc.
     return super.check();
   }
@@ -274,48 +292,27 @@ public class LDAPAuthority extends org.apache.manifoldcf.authorities.authorities
   @Override
   public boolean isConnected()
   {
-    return session != null;
+    // Idle pooled contexts are owned by the instance that last used them, so they count against the connection limit
+    return contextPool.isOwner(this);
   }
 
   /**
-   * Poll. The connection should be closed if it has been idle for too long.
+   * Poll. Contexts in the shared pool are closed if they have been idle for too long.
    */
   @Override
   public void poll()
     throws ManifoldCFException {
-    if (session != null && System.currentTimeMillis() > sessionExpirationTime) {
-      disconnectSession();
-    }
+    contextPool.expireIdle(System.currentTimeMillis());
     super.poll();
   }
 
-  /**
-   * Disconnect a session.
-   */
-  protected void disconnectSession() {
-    if (session != null) {
-      try {
-        if (tls != null)
-          tls.close();
-        session.close();
-      } catch (NamingException e) {
-        // Eat this error
-      } catch (IOException e) {
-        // Eat this error
-      }
-      tls = null;
-      session = null;
-      sessionExpirationTime = -1L;
-    }
-  }
-
   /**
    * Close the connection. Call this before discarding the repository connector.
    */
   @Override
   public void disconnect()
     throws ManifoldCFException {
-    disconnectSession();
+    contextPool.closeOwned(this);
     super.disconnect();
     // Zero out all the stuff that we want to be sure we don't use again
     serverName = null;
@@ -332,6 +329,27 @@ public class LDAPAuthority extends org.apache.manifoldcf.authorities.authorities
     sslKeystore = null;
   }
 
+  /**
+   * Sessions are interchangeable when everything that goes into binding them is the same.
+   */
+  protected String createPoolKey()
+    throws ManifoldCFException {
+    StringBuilder sb = new StringBuilder();
+    sb.append(serverProtocol).append("|").append(createCacheConnectionString()).append("|").append(bindUser)
+      .append("|").append(bindPass == null ? "" : ManifoldCF.hash(bindPass))
+      .append("|").append(sslKeystoreData == null ? "" : ManifoldCF.hash(sslKeystoreData));
+    return sb.toString();
+  }
+
+  /**
+   * Group structure is shared by connections that search the same directory for groups the same way.
+   */
+  protected String createGroupNamespace() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(createCacheConnectionString()).append("|").append(bindUser).append("|").append(createGroupSearchString());
+    return sb.toString();
+  }
+
   protected String createCacheConnectionString() {
     StringBuilder sb = new StringBuilder();
     sb.append(serverName).append(":").append(serverPort).append("/").append(serverBase);
@@ -346,7 +364,7 @@ public class LDAPAuthority extends org.apache.manifoldcf.authorities.authorities
 
   protected String createGroupSearchString() {
     StringBuilder sb = new StringBuilder();
-    sb.append(groupBase).append("|").append(groupSearch).append("|").append(groupNameAttr).append("|").append(groupMemberDN ? 'Y' : 'N');
+    sb.append(groupBase).append("|").append(groupSearch).append("|").append(groupNameAttr).append("|").append(groupMemberDN ? 'Y' : 'N').append(groupNested ? 'Y' : 'N');
     return sb.toString();
   }
 
@@ -362,7 +380,6 @@ public class LDAPAuthority extends org.apache.manifoldcf.authorities.authorities
   public AuthorizationResponse getAuthorizationResponse(String userName)
     throws ManifoldCFException {
 
-    getSession();
     // Construct a cache description object
     ICacheDescription objectDescription = new LdapAuthorizationResponseDescription(userName,
       createCacheConnectionString(), createUserSearchString(), createGroupSearchString(), this.responseLifetime, this.LRUsize);
@@ -393,10 +410,11 @@ public class LDAPAuthority extends org.apache.manifoldcf.authorities.authorities
 
   protected AuthorizationResponse getAuthorizationResponseUncached(String userName)
     throws ManifoldCFException {
-    getSession();
+    LDAPSession session = grabSession();
     try {
+      final LdapContext ctx = session.getContext();
       //find user in LDAP tree
-      SearchResult usrRecord = getUserEntry(session, userName);
+      SearchResult usrRecord = getUserEntry(ctx, userName);
       if (usrRecord == null) {
         return RESPONSE_USERNOTFOUND;
       }
@@ -421,23 +439,22 @@ public class LDAPAuthority extends org.apache.manifoldcf.authorities.authorities
       }
 
       if (groupSearch != null && !groupSearch.isEmpty()) {
-        //specify the LDAP search filter
-        String searchFilter = groupSearch.replaceAll("\\{0\\}", escapeLDAPSearchFilter(groupMemberDN ? usrRecord.getNameInNamespace() : usrName));
-        SearchControls searchCtls = new SearchControls();
-        searchCtls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-        String returnedAtts[] = {groupNameAttr};
-        searchCtls.setReturningAttributes(returnedAtts);
-
-        NamingEnumeration answer = session.search(groupBase, searchFilter, searchCtls);
-
-        while (answer.hasMoreElements()) {
-          SearchResult sr = (SearchResult) answer.next();
-          Attributes attrs = sr.getAttributes();
-          if (attrs != null) {
-            NamingEnumeration values = attrs.get(groupNameAttr).getAll();
-            while (values.hasMore()) {
-              theGroups.add(values.next().toString());
+        final Map<String,String[]> groups;
+        if (groupMemberDN && groupNested) {
+          // Groups are members of other groups by DN, so follow the chain upwards
+          groups = groupCache.resolveGroups(createGroupNamespace(), usrRecord.getNameInNamespace(), new LDAPGroupCache.GroupLookup() {
+            @Override
+            public Map<String,String[]> findGroups(String memberDN)
+              throws NamingException, IOException {
+              return findDirectGroups(ctx, memberDN);
             }
+          }, MAX_GROUP_DEPTH);
+        } else {
+          groups = findDirectGroups(ctx, groupMemberDN ? usrRecord.getNameInNamespace() : usrName);
+        }
+        for (String[] groupNames : groups.values()) {
+          for (String groupName : groupNames) {
+            theGroups.add(groupName);
           }
         }
       }
@@ -456,8 +473,56 @@ public class LDAPAuthority extends org.apache.manifoldcf.authorities.authorities
       return RESPONSE_USERNOTFOUND;
     } catch (NamingException e) {
       // Unreachable
+      contextPool.invalidate(session);
+      session = null;
       return RESPONSE_UNREACHABLE;
+    } catch (InterruptedIOException e) {
+      contextPool.invalidate(session);
+      session = null;
+      throw new ManifoldCFException(e.getMessage(), ManifoldCFException.INTERRUPTED);
+    } catch (IOException e) {
+      contextPool.invalidate(session);
+      session = null;
+      return RESPONSE_UNREACHABLE;
+    } catch (ManifoldCFException e) {
+      contextPool.invalidate(session);
+      session = null;
+      throw e;
+    } finally {
+      if (session != null)
+        contextPool.release(session, this);
+    }
+  }
+
+  /**
+   * Find the groups that directly contain a member, a page at a time.
+   *
+   * @param ctx is the ldap context to use.
+   * @param memberValue is the value to substitute into the group search filter.
+   * @return the group names, keyed by group DN.
+   */
+  protected Map<String,String[]> findDirectGroups(LdapContext ctx, String memberValue)
+    throws NamingException, IOException {
+    //specify the LDAP search filter
+    String searchFilter = groupSearch.replaceAll("\\{0\\}", escapeLDAPSearchFilter(memberValue));
+    SearchControls searchCtls = new SearchControls();
+    searchCtls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+    String returnedAtts[] = {groupNameAttr};
+    searchCtls.setReturningAttributes(returnedAtts);
+
+    Map<String,String[]> groups = new LinkedHashMap<String,String[]>();
+    for (SearchResult sr : LDAPSearch.pagedSearch(ctx, groupBase, searchFilter, searchCtls, LDAPSearch.DEFAULT_PAGE_SIZE)) {
+      Attributes attrs = sr.getAttributes();
+      if (attrs != null) {
+        List<String> groupNames = new ArrayList<String>();
+        NamingEnumeration values = attrs.get(groupNameAttr).getAll();
+        while (values.hasMore()) {
+          groupNames.add(values.next().toString());
+        }
+        groups.put(sr.getNameInNamespace(), groupNames.toArray(new String[0]));
+      }
     }
+    return groups;
   }
 
   /**
@@ -573,6 +638,7 @@ public class LDAPAuthority extends org.apache.manifoldcf.authorities.authorities
     copyParam(variableContext, parameters, "ldapGroupNameAttr");
 
     copyParam(variableContext, parameters, "ldapGroupMemberDn", "0"); //checkbox boolean value
+    copyParam(variableContext, parameters, "ldapGroupNested", "0"); //checkbox boolean value
     copyParam(variableContext, parameters, "ldapAddUserRecord", "0"); //checkbox boolean value
 
     copyParam(variableContext, parameters, "ldapBindUser");
@@ -740,6 +806,7 @@ public class LDAPAuthority extends org.apache.manifoldcf.authorities.authorities
     velocityContext.put("FGROUPSEARCH", getParam(parameters, "ldapGroupSearch", "(&(objectClass=groupOfNames)(member={0}))"));
     velocityContext.put("FGROUPNAMEATTR", getParam(parameters, "ldapGroupNameAttr", "cn"));
     velocityContext.put("FGROUPMEMBERDN", getParam(parameters, "ldapGroupMemberDn", ""));
+    velocityContext.put("FGROUPNESTED", getParam(parameters, "ldapGroupNested", ""));
     velocityContext.put("FBINDUSER", getParam(parameters, "ldapBindUser", ""));
     String fBindPass = parameters.getObfuscatedParameter("ldapBindPass");
     if (fBindPass == null)
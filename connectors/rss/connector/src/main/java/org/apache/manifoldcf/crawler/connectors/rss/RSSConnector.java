@@ -906,9 +906,9 @@ public class RSSConnector extends org.apache.manifoldcf.crawler.connectors.BaseR
             // Note well: Non-continuous jobs cannot use etag because the rss document MUST be fetched each time for such jobs,
             // or the documents it points at would get deleted.
             //
-            // NOTE: I disabled this code because we really need the feed's TTL value in order to reschedule properly.  I can't get the
-            // TTL value without refetching the document - therefore ETag and Last-Modified cannot be used :-(
-            if (false && jobMode == JOBMODE_CONTINUOUS && oldVersionString != null && oldVersionString.startsWith("-"))
+            // A feed the server reports as unchanged keeps its old version, and so is skipped below exactly as a feed whose
+            // content checksum has not changed would be; we just don't transfer and parse the body to find that out.
+            if (jobMode == JOBMODE_CONTINUOUS && oldVersionString != null && oldVersionString.startsWith("-"))
             {
               // It's a feed, so the last etag and last-modified fields should be encoded in this version string.
               StringBuilder lastETagBuffer = new StringBuilder();
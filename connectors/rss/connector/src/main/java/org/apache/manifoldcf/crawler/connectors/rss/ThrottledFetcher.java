@@ -21,7 +21,8 @@ package org.apache.manifoldcf.crawler.connectors.rss;
 import org.apache.manifoldcf.core.interfaces.*;
 import org.apache.manifoldcf.connectorcommon.interfaces.*;
 import org.apache.manifoldcf.connectorcommon.common.XThreadInputStream;
-import org.apache.manifoldcf.connectorcommon.common.InterruptibleSocketFactory;
+import org.apache.manifoldcf.connectorcommon.common.HttpClientPool;
+import org.apache.manifoldcf.connectorcommon.common.HttpFetchSupport;
 import org.apache.manifoldcf.agents.interfaces.*;
 import org.apache.manifoldcf.crawler.interfaces.*;
 import org.apache.manifoldcf.crawler.system.Logging;
@@ -30,32 +31,13 @@ import java.util.*;
 import java.io.*;
 import java.net.*;
 
-import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.client.HttpClient;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.protocol.HttpRequestExecutor;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.config.SocketConfig;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.NTCredentials;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.impl.client.DefaultRedirectStrategy;
-import org.apache.http.util.EntityUtils;
 import org.apache.http.HttpStatus;
-import org.apache.http.HttpHost;
 import org.apache.http.Header;
-import org.apache.http.message.BasicHeader;
-import org.apache.http.client.HttpRequestRetryHandler;
-import org.apache.http.protocol.HttpContext;
 
 import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.client.CircularRedirectException;
@@ -69,9 +51,8 @@ import org.apache.http.HttpException;
 * the CF scheduler does that at a higher layer.
 * An instance of this class would very probably need to have a lifetime consistent with the long-term nature
 * of these values, and be static.
-* This class sets up a different Http connection pool for each server, so that we can foist off onto the httpclient
-* library the task of limiting the number of connections.  This means that we need periodic polling to determine
-* when idle pooled connections can be freed.
+* Connections are kept alive in a shared pool between fetches, since feeds are polled over and over; that means
+* we need periodic polling to determine when idle pooled connections can be freed.
 */
 public class ThrottledFetcher
 {
@@ -83,6 +64,13 @@ public class ThrottledFetcher
   /** The read chunk length */
   protected static final int READ_CHUNK_LENGTH = 4096;
 
+  /** How long a pooled connection may sit unused before it is closed */
+  protected static final long IDLE_TIMEOUT = 300000L;
+  /** The most connections the pool keeps open to one server */
+  protected static final int MAX_POOLED_CONNECTIONS_PER_SERVER = 100;
+  /** The most connections the pool keeps open in all */
+  protected static final int MAX_POOLED_CONNECTIONS = 1000;
+
   /** This counter keeps track of the total outstanding handles across everything, because we do try to control that */
   protected static int globalHandleCount = 0;
   /** This is the lock object for that global handle counter */
@@ -95,22 +83,8 @@ public class ThrottledFetcher
   /** Reference count for how many connections to this pool there are */
   protected int refCount = 0;
 
-  // Current host name
-  private static String currentHost = null;
-  static
-  {
-    // Find the current host name
-    try
-    {
-      java.net.InetAddress addr = java.net.InetAddress.getLocalHost();
-
-      // Get hostname
-      currentHost = addr.getHostName();
-    }
-    catch (java.net.UnknownHostException e)
-    {
-    }
-  }
+  /** The pooled http clients */
+  protected final HttpClientPool clientPool = new HttpClientPool(MAX_POOLED_CONNECTIONS_PER_SERVER,MAX_POOLED_CONNECTIONS);
 
   /** Note that we're about to need a handle (and make sure we have enough) */
   protected static void registerGlobalHandle(int maxHandles)
@@ -170,9 +144,11 @@ public class ThrottledFetcher
       serverMap.put(serverName,server);
     }
 
-    return new ThrottledConnection(serverName, server,
+    HttpClient httpClient = clientPool.getClient(connectionTimeoutMilliseconds,connectionTimeoutMilliseconds,
+      proxyHost,proxyPort,proxyAuthDomain,proxyAuthUsername,proxyAuthPassword);
+
+    return new ThrottledConnection(serverName, server, httpClient,
       connectionTimeoutMilliseconds,connectionLimit,
-      proxyHost,proxyPort,proxyAuthDomain,proxyAuthUsername,proxyAuthPassword,
       activities);
   }
 
@@ -181,7 +157,7 @@ public class ThrottledFetcher
   public synchronized void poll()
     throws ManifoldCFException
   {
-    // Nothing needed now; connections are released when we're done with them.
+    clientPool.closeIdleConnections(IDLE_TIMEOUT);
   }
 
   /** Note that there is a repository connection that is using this object. */
@@ -198,9 +174,8 @@ public class ThrottledFetcher
     refCount--;
     if (refCount == 0)
     {
-      // Since we don't have any actual pools here, this can be a no-op for now
-      // MHL
       serverMap.clear();
+      clientPool.closeAll();
     }
   }
 
@@ -216,9 +191,7 @@ public class ThrottledFetcher
     protected final IFetchThrottler fetchThrottler;
     /** Connection timeout in milliseconds */
     protected final int connectionTimeoutMilliseconds;
-    /** The client connection manager */
-    protected final HttpClientConnectionManager connectionManager;
-    /** The httpclient */
+    /** The httpclient, from the pool */
     protected final HttpClient httpClient;
 
     /** The method object */
@@ -247,72 +220,16 @@ public class ThrottledFetcher
     /** Constructor.
     */
     public ThrottledConnection(String serverName,
-      IConnectionThrottler connectionThrottler,
+      IConnectionThrottler connectionThrottler, HttpClient httpClient,
       int connectionTimeoutMilliseconds, int connectionLimit,
-      String proxyHost, int proxyPort, String proxyAuthDomain, String proxyAuthUsername, String proxyAuthPassword,
       IAbortActivity activities)
       throws ManifoldCFException, ServiceInterruption
     {
       this.serverName = serverName;
       this.connectionThrottler = connectionThrottler;
+      this.httpClient = httpClient;
       this.connectionTimeoutMilliseconds = connectionTimeoutMilliseconds;
       this.abortChecker = new AbortChecker(activities);
-      
-      // Create the https scheme for this connection
-      javax.net.ssl.SSLSocketFactory httpsSocketFactory = KeystoreManagerFactory.getTrustingSecureSocketFactory();;
-      SSLConnectionSocketFactory myFactory = new SSLConnectionSocketFactory(new InterruptibleSocketFactory(httpsSocketFactory,connectionTimeoutMilliseconds),
-        NoopHostnameVerifier.INSTANCE);
-
-      PoolingHttpClientConnectionManager poolingConnectionManager = new PoolingHttpClientConnectionManager();
-      poolingConnectionManager.setDefaultMaxPerRoute(1);
-      poolingConnectionManager.setValidateAfterInactivity(2000);
-      poolingConnectionManager.setDefaultSocketConfig(SocketConfig.custom()
-        .setTcpNoDelay(true)
-        .setSoTimeout(connectionTimeoutMilliseconds)
-        .build());
-      connectionManager = poolingConnectionManager;
-
-      CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-
-      RequestConfig.Builder requestBuilder = RequestConfig.custom()
-          .setCircularRedirectsAllowed(true)
-          .setSocketTimeout(connectionTimeoutMilliseconds)
-          .setExpectContinueEnabled(true)
-          .setConnectTimeout(connectionTimeoutMilliseconds)
-          .setConnectionRequestTimeout(connectionTimeoutMilliseconds);
-
-      // If there's a proxy, set that too.
-      if (proxyHost != null && proxyHost.length() > 0)
-      {
-
-        // Configure proxy authentication
-        if (proxyAuthUsername != null && proxyAuthUsername.length() > 0)
-        {
-          if (proxyAuthPassword == null)
-            proxyAuthPassword = "";
-          if (proxyAuthDomain == null)
-            proxyAuthDomain = "";
-
-          credentialsProvider.setCredentials(
-            new AuthScope(proxyHost, proxyPort),
-            new NTCredentials(proxyAuthUsername, proxyAuthPassword, currentHost, proxyAuthDomain));
-        }
-
-        HttpHost proxy = new HttpHost(proxyHost, proxyPort);
-
-        requestBuilder.setProxy(proxy);
-      }
-
-      httpClient = HttpClients.custom()
-        .setConnectionManager(connectionManager)
-        .setMaxConnTotal(1)
-        .disableAutomaticRetries()
-        .setDefaultRequestConfig(requestBuilder.build())
-        .setDefaultCredentialsProvider(credentialsProvider)
-        .setSSLSocketFactory(myFactory)
-        .setRequestExecutor(new HttpRequestExecutor(connectionTimeoutMilliseconds))
-        .setRedirectStrategy(new DefaultRedirectStrategy())
-        .build();
 
       registerGlobalHandle(connectionLimit);
       try
@@ -404,14 +321,8 @@ public class ThrottledFetcher
       startFetchTime = System.currentTimeMillis();
 
       // Set all appropriate headers
-      executeMethod.setHeader(new BasicHeader("User-Agent",userAgent));
-      executeMethod.setHeader(new BasicHeader("From",from));
-      executeMethod.setHeader(new BasicHeader("Accept","*/*"));
-
-      if (lastETag != null)
-        executeMethod.setHeader(new BasicHeader("ETag",lastETag));
-      if (lastModified != null)
-        executeMethod.setHeader(new BasicHeader("Last-Modified",lastModified));
+      HttpFetchSupport.setFetchHeaders(executeMethod,userAgent,from);
+      HttpFetchSupport.setConditionalHeaders(executeMethod,lastETag,lastModified);
       // Create the execution thread.
       methodThread = new ExecuteMethodThread(this, fetchThrottler,
         httpClient, executeMethod);
@@ -573,7 +484,10 @@ public class ThrottledFetcher
         throw new ManifoldCFException("Attempt to get an input stream when no method thread");
       try
       {
-        return methodThread.getSafeInputStream();
+        InputStream bodyStream = methodThread.getSafeInputStream();
+        if (bodyStream == null)
+          return null;
+        return HttpFetchSupport.decodeContent(bodyStream,methodThread.getContentEncoding());
       }
       catch (InterruptedException e)
       {
@@ -757,8 +671,7 @@ public class ThrottledFetcher
     public void close()
       throws ManifoldCFException
     {
-      // Clean up the connection pool.  This should do the necessary bookkeeping to release the one connection that's sitting there.
-      connectionManager.shutdown();
+      // The http connection, if it can be reused, went back to the pool when the fetch was done.
       connectionThrottler.noteConnectionDestroyed();
       releaseGlobalHandle();
     }
@@ -776,6 +689,8 @@ public class ThrottledFetcher
     protected final IStreamThrottler streamThrottler;
     /** The stream we are wrapping. */
     protected final InputStream inputStream;
+    /** Set when the wrapped stream has been read to the end */
+    protected volatile boolean endOfStream = false;
 
     /** Constructor.
     */
@@ -857,7 +772,10 @@ public class ThrottledFetcher
         finally
         {
           if (amt == -1)
+          {
+            endOfStream = true;
             streamThrottler.releaseReadPermission(len,0);
+          }
           else
           {
             streamThrottler.releaseReadPermission(len,amt);
@@ -873,6 +791,13 @@ public class ThrottledFetcher
       }
     }
 
+    /** Check whether the wrapped stream was read to the end.
+    */
+    public boolean isEndOfStream()
+    {
+      return endOfStream;
+    }
+
     /** Skip
     */
     public long skip(long n)
@@ -958,7 +883,9 @@ public class ThrottledFetcher
     protected HttpResponse response = null;
     protected Throwable responseException = null;
     protected XThreadInputStream threadStream = null;
-    protected InputStream bodyStream = null;
+    protected ThrottledInputstream bodyStream = null;
+    protected Header contentEncoding = null;
+    protected boolean noBody = false;
     protected boolean streamCreated = false;
     protected Throwable streamException = null;
 
@@ -1023,10 +950,15 @@ public class ThrottledFetcher
               {
                 try
                 {
-                  bodyStream = response.getEntity().getContent();
-                  if (bodyStream != null)
+                  // Responses such as 304 have no body at all
+                  HttpEntity entity = response.getEntity();
+                  InputStream entityStream = (entity == null)?null:entity.getContent();
+                  if (entityStream == null)
+                    noBody = true;
+                  else
                   {
-                    bodyStream = new ThrottledInputstream(theConnection,fetchThrottler.createFetchStream(),bodyStream);
+                    contentEncoding = entity.getContentEncoding();
+                    bodyStream = new ThrottledInputstream(theConnection,fetchThrottler.createFetchStream(),entityStream);
                     threadStream = new XThreadInputStream(bodyStream);
                   }
                   streamCreated = true;
@@ -1064,28 +996,34 @@ public class ThrottledFetcher
         }
         finally
         {
-          if (bodyStream != null)
+          // A connection whose response was read to the end has already gone back to the pool, to be
+          // kept alive for the next fetch.  Any other connection is dropped, rather than read to the end.
+          boolean complete = (noBody || (bodyStream != null && bodyStream.isEndOfStream()));
+          synchronized (this)
           {
-            try
-            {
-              bodyStream.close();
-            }
-            catch (IOException e)
+            if (!complete)
             {
+              try
+              {
+                executeMethod.abort();
+              }
+              catch (Throwable e)
+              {
+                shutdownException = e;
+              }
             }
-            bodyStream = null;
+            this.notifyAll();
           }
-          synchronized (this)
+          if (bodyStream != null)
           {
             try
             {
-              executeMethod.abort();
+              bodyStream.close();
             }
-            catch (Throwable e)
+            catch (IOException e)
             {
-              shutdownException = e;
             }
-            this.notifyAll();
+            bodyStream = null;
           }
         }
       }
@@ -1133,6 +1071,24 @@ public class ThrottledFetcher
       }
     }
       
+    public Header getContentEncoding()
+      throws InterruptedException, IOException, HttpException
+    {
+      // Must wait until stream is created, or until we note an exception was thrown.
+      while (true)
+      {
+        synchronized (this)
+        {
+          if (responseException != null)
+            throw new IllegalStateException("Check for response before getting stream");
+          checkException(streamException);
+          if (streamCreated)
+            return contentEncoding;
+          wait();
+        }
+      }
+    }
+
     public InputStream getSafeInputStream()
       throws InterruptedException, IOException, HttpException
     {
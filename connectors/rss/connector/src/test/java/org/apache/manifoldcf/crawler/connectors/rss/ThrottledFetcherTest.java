@@ -0,0 +1,346 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.rss;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.connectorcommon.interfaces.*;
+import org.apache.manifoldcf.connectorcommon.common.HttpClientPool;
+import org.apache.manifoldcf.crawler.interfaces.*;
+import org.apache.manifoldcf.crawler.system.Logging;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Checks how the throttled fetcher hands pooled connections back, against a local server */
+public class ThrottledFetcherTest
+{
+  protected final static String ETAG = "\"v1\"";
+
+  protected static Server server;
+  protected static DocumentServlet servlet;
+  protected static int port;
+
+  protected HttpClientPool clientPool;
+
+  @BeforeClass
+  public static void startServer()
+    throws Exception
+  {
+    // No properties file here, so set up only the logger the connection uses
+    if (Logging.connectors == null)
+      Logging.connectors = org.apache.log4j.Logger.getLogger("org.apache.manifoldcf.connectors");
+    server = new Server();
+    ServerConnector connector = new ServerConnector(server);
+    connector.setPort(0);
+    server.addConnector(connector);
+    servlet = new DocumentServlet();
+    ServletContextHandler context = new ServletContextHandler();
+    context.setContextPath("/");
+    context.addServlet(new ServletHolder(servlet), "/doc");
+    server.setHandler(context);
+    server.start();
+    port = connector.getLocalPort();
+  }
+
+  @AfterClass
+  public static void stopServer()
+    throws Exception
+  {
+    server.stop();
+  }
+
+  @Before
+  public void createPool()
+  {
+    clientPool = new HttpClientPool(10,10);
+    servlet.clearRemotePorts();
+  }
+
+  @After
+  public void closePool()
+  {
+    clientPool.closeAll();
+  }
+
+  @Test
+  public void fullyReadResponseKeepsConnection()
+    throws Exception
+  {
+    assertEquals(100,fetch(100,null,-1));
+    assertEquals(100,fetch(100,null,-1));
+    List<Integer> ports = servlet.getRemotePorts();
+    assertEquals(2,ports.size());
+    assertEquals(ports.get(0),ports.get(1));
+  }
+
+  @Test
+  public void partlyReadResponseDropsConnection()
+    throws Exception
+  {
+    // Much more than the fetcher buffers ahead of the reader
+    assertEquals(10,fetch(4000000,null,10));
+    assertEquals(100,fetch(100,null,-1));
+    List<Integer> ports = servlet.getRemotePorts();
+    assertEquals(2,ports.size());
+    assertFalse(ports.get(0).equals(ports.get(1)));
+  }
+
+  @Test
+  public void notModifiedResponseHasNoBody()
+    throws Exception
+  {
+    assertEquals(-1,fetch(100,ETAG,-1));
+    // Nothing was left to read, so the connection is reused
+    assertEquals(100,fetch(100,null,-1));
+    List<Integer> ports = servlet.getRemotePorts();
+    assertEquals(2,ports.size());
+    assertEquals(ports.get(0),ports.get(1));
+  }
+
+  /** Fetch a document of the given size, reading at most readLimit bytes of it (all, if -1).
+  *@return the number of bytes read, or -1 if the server answered that nothing changed.
+  */
+  protected int fetch(int size, String lastETag, int readLimit)
+    throws Exception
+  {
+    IProcessActivity activities = makeActivities();
+    IThrottledConnection connection = new ThrottledFetcher.ThrottledConnection("localhost",
+      new TestingConnectionThrottler(),clientPool.getClient(30000,30000,null,-1,null,null,null),
+      30000,10,activities);
+    try
+    {
+      connection.beginFetch("Data");
+      try
+      {
+        int status = connection.executeFetch("http",port,"/doc?size="+size,"test agent","test@example.com",
+          lastETag,null);
+        if (status == IThrottledConnection.STATUS_NOCHANGE)
+        {
+          assertNull(connection.getResponseBodyStream());
+          return -1;
+        }
+        assertEquals(IThrottledConnection.STATUS_OK,status);
+        InputStream is = connection.getResponseBodyStream();
+        try
+        {
+          int count = 0;
+          while (readLimit == -1 || count < readLimit)
+          {
+            if (is.read() == -1)
+              break;
+            count++;
+          }
+          return count;
+        }
+        finally
+        {
+          is.close();
+        }
+      }
+      finally
+      {
+        connection.doneFetch(activities);
+      }
+    }
+    finally
+    {
+      connection.close();
+    }
+  }
+
+  protected static IProcessActivity makeActivities()
+  {
+    return (IProcessActivity)Proxy.newProxyInstance(IProcessActivity.class.getClassLoader(),
+      new Class[]{IProcessActivity.class},
+      new InvocationHandler()
+      {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+          // Activity recording and abort checks have nothing to do here
+          return null;
+        }
+      });
+  }
+
+  /** Servlet that serves documents of a requested size, and notes the client port of each request */
+  protected static class DocumentServlet extends HttpServlet
+  {
+    protected final List<Integer> remotePorts = new ArrayList<Integer>();
+
+    @Override
+    public void service(HttpServletRequest req, HttpServletResponse res)
+      throws IOException
+    {
+      synchronized (remotePorts)
+      {
+        remotePorts.add(req.getRemotePort());
+      }
+      if (ETAG.equals(req.getHeader("If-None-Match")))
+      {
+        res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+      int size = Integer.parseInt(req.getParameter("size"));
+      res.setStatus(HttpServletResponse.SC_OK);
+      res.setContentType("text/plain");
+      res.setHeader("ETag",ETAG);
+      res.setContentLength(size);
+      byte[] chunk = new byte[8192];
+      Arrays.fill(chunk,(byte)'x');
+      OutputStream os = res.getOutputStream();
+      try
+      {
+        while (size > 0)
+        {
+          int amt = Math.min(size,chunk.length);
+          os.write(chunk,0,amt);
+          size -= amt;
+        }
+      }
+      catch (IOException e)
+      {
+        // The client may drop the connection part way through
+      }
+    }
+
+    public void clearRemotePorts()
+    {
+      synchronized (remotePorts)
+      {
+        remotePorts.clear();
+      }
+    }
+
+    public List<Integer> getRemotePorts()
+    {
+      synchronized (remotePorts)
+      {
+        return new ArrayList<Integer>(remotePorts);
+      }
+    }
+  }
+
+  /** Connection throttler that never makes anyone wait */
+  protected static class TestingConnectionThrottler implements IConnectionThrottler
+  {
+    @Override
+    public int waitConnectionAvailable()
+    {
+      return CONNECTION_FROM_CREATION;
+    }
+
+    @Override
+    public int waitConnectionAvailable(IBreakCheck breakCheck)
+    {
+      return CONNECTION_FROM_CREATION;
+    }
+
+    @Override
+    public IFetchThrottler getNewConnectionFetchThrottler()
+    {
+      return new TestingFetchThrottler();
+    }
+
+    @Override
+    public boolean noteReturnedConnection()
+    {
+      return true;
+    }
+
+    @Override
+    public boolean checkDestroyPooledConnection()
+    {
+      return false;
+    }
+
+    @Override
+    public boolean checkExpireConnection()
+    {
+      return false;
+    }
+
+    @Override
+    public void noteConnectionReturnedToPool()
+    {
+    }
+
+    @Override
+    public void noteConnectionDestroyed()
+    {
+    }
+  }
+
+  /** Fetch throttler that never makes anyone wait */
+  protected static class TestingFetchThrottler implements IFetchThrottler, IStreamThrottler
+  {
+    @Override
+    public boolean obtainFetchDocumentPermission()
+    {
+      return true;
+    }
+
+    @Override
+    public boolean obtainFetchDocumentPermission(IBreakCheck breakCheck)
+    {
+      return true;
+    }
+
+    @Override
+    public IStreamThrottler createFetchStream()
+    {
+      return this;
+    }
+
+    @Override
+    public boolean obtainReadPermission(int byteCount)
+    {
+      return true;
+    }
+
+    @Override
+    public boolean obtainReadPermission(int byteCount, IBreakCheck breakCheck)
+    {
+      return true;
+    }
+
+    @Override
+    public void releaseReadPermission(int origByteCount, int actualByteCount)
+    {
+    }
+
+    @Override
+    public void closeStream()
+    {
+    }
+  }
+
+}
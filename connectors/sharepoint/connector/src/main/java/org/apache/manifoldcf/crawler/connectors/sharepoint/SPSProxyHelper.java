@@ -771,6 +771,149 @@ public class SPSProxyHelper {
   }
 
 
+  /**
+  * Report the items of a list or library that changed since a change token was handed out.  Deletions are
+  * not reported, since SharePoint only describes them by item ID.
+  * @param fileStream receives the path of each item that was added or changed, or null if changes are not wanted.
+  * @param site is the encoded site path.
+  * @param guid is the list or library GUID.
+  * @param changeToken is the token returned by a previous call, or null to just get a token for the current state.
+  * @return the token to pass next time, or null if the token is no longer usable (because it expired, or the list
+  *   was restored or no longer exists), in which case the caller must enumerate the list instead.
+  */
+  public String getChangesSinceToken(IFileStream fileStream, String site, String guid, String changeToken)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    if (Logging.connectors.isDebugEnabled())
+      Logging.connectors.debug("SharePoint: In getChangesSinceToken; site='"+site+"', guid='"+guid+"', changeToken='"+changeToken+"'");
+
+    long currentTime;
+    try
+    {
+      if ( site.equals("/") ) site = ""; // root case
+
+      ListsWS lservice = new ListsWS(baseUrl + site, userName, password, configuration, httpClient );
+      ListsSoapStub stub1 = (ListsSoapStub)lservice.getListsSoapHandler();
+
+      // Without a token, SharePoint returns every matching item along with the current token, so match nothing.
+      GetListItemChangesSinceTokenQuery q;
+      if (changeToken == null)
+        q = buildChangeMatchQuery("ID","Counter","0");
+      else
+        q = null;
+      GetListItemChangesSinceTokenViewFields viewFields = buildChangeViewFields(new String[]{"FileRef","FSObjType"});
+
+      while (true)
+      {
+        GetListItemChangesSinceTokenResponseGetListItemChangesSinceTokenResult changes =
+          stub1.getListItemChangesSinceToken(guid, "", q, viewFields, "1000", buildChangeQueryOptions(), changeToken, null);
+        if (changes == null)
+          return null;
+
+        MessageElement[] list = changes.get_any();
+
+        final String xmlResponse = list[0].toString();
+        if (Logging.connectors.isDebugEnabled())
+          Logging.connectors.debug("SharePoint: getListItemChangesSinceToken xml response: '" + xmlResponse + "'");
+
+        ChangesPage page = parseChangesPage(new XMLDoc(xmlResponse), fileStream);
+        if (page == null)
+        {
+          if (Logging.connectors.isDebugEnabled())
+            Logging.connectors.debug("SharePoint: Change token for list "+guid+" in site "+site+" is no longer valid");
+          return null;
+        }
+
+        if (page.lastChangeToken == null)
+          throw new ManifoldCFException("Bad xml - missing change token for list "+guid+" in site "+site);
+
+        if (!page.moreChanges)
+          return page.lastChangeToken;
+
+        changeToken = page.lastChangeToken;
+      }
+    }
+    catch (java.net.MalformedURLException e)
+    {
+      throw new ManifoldCFException("Bad SharePoint url: "+e.getMessage(),e);
+    }
+    catch (javax.xml.rpc.ServiceException e)
+    {
+      if (Logging.connectors.isDebugEnabled())
+        Logging.connectors.debug("SharePoint: Got a service exception getting changes for site "+site+" guid "+guid+" - retrying",e);
+      currentTime = System.currentTimeMillis();
+      throw new ServiceInterruption("Service exception: "+e.getMessage(), e, currentTime + 300000L,
+        currentTime + 12 * 60 * 60000L,-1,true);
+    }
+    catch (org.apache.axis.AxisFault e)
+    {
+      currentTime = System.currentTimeMillis();
+      if (e.getFaultCode().equals(new javax.xml.namespace.QName("http://xml.apache.org/axis/","HTTP")))
+      {
+        org.w3c.dom.Element elem = e.lookupFaultDetail(new javax.xml.namespace.QName("http://xml.apache.org/axis/","HttpErrorCode"));
+        if (elem != null)
+        {
+          elem.normalize();
+          String httpErrorCode = elem.getFirstChild().getNodeValue().trim();
+          if (httpErrorCode.equals("404"))
+          {
+            // Page did not exist
+            if (Logging.connectors.isDebugEnabled())
+              Logging.connectors.debug("SharePoint: The page at "+baseUrl+site+" did not exist; no changes for list "+guid);
+            return null;
+          }
+          else if (httpErrorCode.equals("401"))
+          {
+            // User did not have permissions for this list
+            if (Logging.connectors.isDebugEnabled())
+              Logging.connectors.debug("SharePoint: The crawl user did not have access to list changes for "+baseUrl+site+"; skipping");
+            return null;
+          }
+          else if (httpErrorCode.equals("403"))
+            throw new ManifoldCFException("Http error "+httpErrorCode+" while reading from "+baseUrl+site+" - check IIS and SharePoint security settings! "+e.getMessage(),e);
+          else
+            throw new ManifoldCFException("Unexpected http error code "+httpErrorCode+" accessing SharePoint at "+baseUrl+site+": "+e.getMessage(),e);
+        }
+        throw new ManifoldCFException("Unknown http error occurred: "+e.getMessage(),e);
+      }
+      else if (e.getFaultCode().equals(new javax.xml.namespace.QName("http://schemas.xmlsoap.org/soap/envelope/","Server")))
+      {
+        org.w3c.dom.Element elem = e.lookupFaultDetail(new javax.xml.namespace.QName("http://schemas.microsoft.com/sharepoint/soap/","errorcode"));
+        if (elem != null)
+        {
+          // The list no longer exists, or SharePoint refused the token; either way the caller must start over
+          elem.normalize();
+          String sharepointErrorCode = elem.getFirstChild().getNodeValue().trim();
+          if (Logging.connectors.isDebugEnabled())
+            Logging.connectors.debug("SharePoint: Getting changes for the list "+guid+" in site "+site+" failed with SharePoint error code "+sharepointErrorCode+" - enumerating instead",e);
+          return null;
+        }
+        if (Logging.connectors.isDebugEnabled())
+          Logging.connectors.debug("SharePoint: Unknown SharePoint server error getting changes for site "+site+" guid "+guid+" - axis fault = "+e.getFaultCode().getLocalPart()+", detail = "+e.getFaultString()+" - retrying",e);
+
+        throw new ServiceInterruption("Unknown SharePoint server error: "+e.getMessage()+" - retrying",  e, currentTime + 300000L,
+          currentTime + 3 * 60 * 60000L,-1,false);
+      }
+
+      if (e.getFaultCode().equals(new javax.xml.namespace.QName("http://schemas.xmlsoap.org/soap/envelope/","Server.userException")))
+      {
+        String exceptionName = e.getFaultString();
+        if (exceptionName.equals("java.lang.InterruptedException"))
+          throw new ManifoldCFException("Interrupted",ManifoldCFException.INTERRUPTED);
+      }
+
+      if (Logging.connectors.isDebugEnabled())
+        Logging.connectors.debug("SharePoint: Got an unknown remote exception getting changes for site "+site+" guid "+guid+" - axis fault = "+e.getFaultCode().getLocalPart()+", detail = "+e.getFaultString()+" - retrying",e);
+      throw new ServiceInterruption("Remote procedure exception: "+e.getMessage(),  e, currentTime + 300000L,
+        currentTime + 3 * 60 * 60000L,-1,false);
+    }
+    catch (java.rmi.RemoteException e)
+    {
+      throw new ManifoldCFException("Unexpected remote exception occurred: "+e.getMessage(),e);
+    }
+  }
+
+
   /**
   *
   * @param parentSite
@@ -2615,6 +2758,79 @@ public class SPSProxyHelper {
     return value;
   }
   
+  /** Parse one page of a getListItemChangesSinceToken response, passing the path of each added or
+  * changed item to the file stream.
+  *@return the page's token and paging flag, or null if SharePoint reported that the token passed in can no
+  *  longer be used.
+  */
+  protected static ChangesPage parseChangesPage(XMLDoc doc, IFileStream fileStream)
+    throws ManifoldCFException
+  {
+    ArrayList nodeList = new ArrayList();
+
+    doc.processPath(nodeList, "*", null);
+    if (nodeList.size() != 1)
+      throw new ManifoldCFException("Bad xml - expecting one outer 'ns1:listitems' node - there are " + Integer.toString(nodeList.size()) + " nodes");
+
+    Object parent = nodeList.get(0);
+    if (!"ns1:listitems".equals(doc.getNodeName(parent)))
+      throw new ManifoldCFException("Bad xml - outer node is not 'ns1:listitems'");
+
+    nodeList.clear();
+    doc.processPath(nodeList, "*", parent);
+
+    ChangesPage rval = new ChangesPage();
+    for (Object node : nodeList)
+    {
+      String nodeName = doc.getNodeName(node);
+      if (nodeName.equals("Changes") || nodeName.endsWith(":Changes"))
+      {
+        String lastChangeToken = doc.getValue(node, "LastChangeToken");
+        if (lastChangeToken != null && lastChangeToken.length() > 0)
+          rval.lastChangeToken = lastChangeToken;
+        rval.moreChanges = "TRUE".equalsIgnoreCase(doc.getValue(node, "MoreChanges"));
+        ArrayList changeList = new ArrayList();
+        doc.processPath(changeList, "*", node);
+        for (Object change : changeList)
+        {
+          String changeType = doc.getValue(change, "ChangeType");
+          if ("InvalidToken".equals(changeType) || "Restore".equals(changeType))
+            return null;
+        }
+      }
+      else if (nodeName.equals("rs:data") && fileStream != null)
+      {
+        ArrayList rows = new ArrayList();
+        doc.processPath(rows, "*", node);
+        for (Object row : rows)
+        {
+          String fileRef = doc.getValue(row, "ows_FileRef");
+          if (fileRef == null || fileRef.length() == 0)
+            continue;
+          // Folders change whenever their contents do; only the items themselves are of interest
+          String objectType = doc.getValue(row, "ows_FSObjType");
+          if (objectType != null && valueMunge(objectType).equals("1"))
+            continue;
+          // FileRef values are server-relative, without a leading slash
+          fileRef = valueMunge(fileRef);
+          if (!fileRef.startsWith("/"))
+            fileRef = "/" + fileRef;
+          fileStream.addFile(fileRef, null);
+        }
+      }
+    }
+    return rval;
+  }
+
+  /** What one page of a getListItemChangesSinceToken response says about the next call */
+  protected static class ChangesPage
+  {
+    /** The token to pass next, or null if the response did not include one */
+    public String lastChangeToken = null;
+    /** True if SharePoint has more changes than it returned */
+    public boolean moreChanges = false;
+  }
+
   /** Build viewFields XML for the ListItems call.
   */
   protected static GetListItemsViewFields buildViewFields(String[] fieldNames)
@@ -2741,6 +2957,81 @@ public class SPSProxyHelper {
     }
   }
   
+  /** Build viewFields XML for the ListItemChangesSinceToken call.
+  */
+  protected static GetListItemChangesSinceTokenViewFields buildChangeViewFields(String[] fieldNames)
+    throws ManifoldCFException
+  {
+    try
+    {
+      GetListItemChangesSinceTokenViewFields rval = new GetListItemChangesSinceTokenViewFields();
+      MessageElement viewFieldsNode = new MessageElement((String)null,"ViewFields");
+      rval.set_any(new MessageElement[]{viewFieldsNode});
+      for (String fieldName : fieldNames)
+      {
+        MessageElement child = new MessageElement((String)null,"FieldRef");
+        viewFieldsNode.addChild(child);
+        child.addAttribute(null,"Name",fieldName);
+      }
+      return rval;
+    }
+    catch (javax.xml.soap.SOAPException e)
+    {
+      throw new ManifoldCFException(e.getMessage(),e);
+    }
+  }
+
+  /** Build a query XML object for the ListItemChangesSinceToken call that matches a specified field and value pair.
+  */
+  protected static GetListItemChangesSinceTokenQuery buildChangeMatchQuery(String fieldName, String type, String value)
+    throws ManifoldCFException
+  {
+    try
+    {
+      GetListItemChangesSinceTokenQuery rval = new GetListItemChangesSinceTokenQuery();
+      MessageElement queryNode = new MessageElement((String)null,"Query");
+      rval.set_any(new MessageElement[]{queryNode});
+      MessageElement whereNode = new MessageElement((String)null,"Where");
+      queryNode.addChild(whereNode);
+      MessageElement eqNode = new MessageElement((String)null,"Eq");
+      whereNode.addChild(eqNode);
+      MessageElement fieldRefNode = new MessageElement((String)null,"FieldRef");
+      eqNode.addChild(fieldRefNode);
+      fieldRefNode.addAttribute(null,"Name",fieldName);
+      MessageElement valueNode = new MessageElement((String)null,"Value");
+      eqNode.addChild(valueNode);
+      valueNode.addAttribute(null,"Type",type);
+      valueNode.addTextNode(value);
+      return rval;
+    }
+    catch (javax.xml.soap.SOAPException e)
+    {
+      throw new ManifoldCFException(e.getMessage(),e);
+    }
+  }
+
+  /** Build queryOptions XML object for the ListItemChangesSinceToken call, covering all folders.
+  */
+  protected static GetListItemChangesSinceTokenQueryOptions buildChangeQueryOptions()
+    throws ManifoldCFException
+  {
+    try
+    {
+      GetListItemChangesSinceTokenQueryOptions rval = new GetListItemChangesSinceTokenQueryOptions();
+      MessageElement queryOptionsNode = new MessageElement((String)null,"QueryOptions");
+      rval.set_any(new MessageElement[]{queryOptionsNode});
+      MessageElement viewAttributesNode = new MessageElement((String)null,"ViewAttributes");
+      queryOptionsNode.addChild(viewAttributesNode);
+      viewAttributesNode.addAttribute(null,"Scope","Recursive");
+
+      return rval;
+    }
+    catch (javax.xml.soap.SOAPException e)
+    {
+      throw new ManifoldCFException(e.getMessage(),e);
+    }
+  }
+  
   /**
   * SharePoint Permissions Service Wrapper Class
   */
@@ -53,6 +53,8 @@ public class SharePointConfig
   public static final String PARAM_PROXYPASSWORD = "proxyPassword";
   /** Proxy authentication domain */
   public static final String PARAM_PROXYDOMAIN = "proxyDomain";
+  /** Seed from change tokens ("true" or "false") */
+  public static final String PARAM_CHANGETRACKING = "changeTracking";
   
   /** Authority type */
   public static final String PARAM_AUTHORITYTYPE = "authorityType";
@@ -100,6 +100,7 @@ public class SharePointRepository extends org.apache.manifoldcf.crawler.connecto
   private boolean dspStsWorks = true;
   private boolean attachmentsSupported = false;
   private boolean activeDirectoryAuthority = true;
+  private boolean useChangeTokens = false;
   
   private String serverProtocol = null;
   private String serverUrl = null;
@@ -157,6 +158,32 @@ public class SharePointRepository extends org.apache.manifoldcf.crawler.connecto
   {
   }
 
+  /** Tell the world what model this connector uses for addSeedDocuments().
+  * With change tokens, the seeds include every item that changed, so minimal runs can skip everything else.
+  * Under that model a regular run is an incremental scan rather than a full one: every known item is still
+  * rechecked, and processDocuments() deletes the ones that are gone or out of scope, but items that are
+  * simply no longer reached are not purged at the end of the run.
+  *@return the model type value.
+  */
+  @Override
+  public int getConnectorModel()
+  {
+    if (params != null && useChangeTokens(params))
+      return MODEL_ADD_CHANGE;
+    return MODEL_ALL;
+  }
+
+  /** Check whether a connection is configured to seed from change tokens.  SharePoint 2003 has no change tokens.
+  */
+  protected static boolean useChangeTokens(ConfigParams params)
+  {
+    String serverVersion = params.getParameter( SharePointConfig.PARAM_SERVERVERSION );
+    if (serverVersion != null && serverVersion.equals("2.0"))
+      return false;
+    String changeTracking = params.getParameter( SharePointConfig.PARAM_CHANGETRACKING );
+    return changeTracking != null && changeTracking.equals("true");
+  }
+
   /** Set up a session */
   protected void getSession()
     throws ManifoldCFException
@@ -169,6 +196,7 @@ public class SharePointRepository extends org.apache.manifoldcf.crawler.connecto
       supportsItemSecurity = !serverVersion.equals("2.0");
       dspStsWorks = serverVersion.equals("2.0") || serverVersion.equals("3.0");
       attachmentsSupported = !serverVersion.equals("2.0");
+      useChangeTokens = useChangeTokens(params);
       
       String authorityType = params.getParameter( SharePointConfig.PARAM_AUTHORITYTYPE );
       if (authorityType == null)
@@ -727,7 +755,154 @@ public class SharePointRepository extends org.apache.manifoldcf.crawler.connecto
     getSession();
     // Add just the root.
     activities.addSeedDocument("/");
-    return "";
+    if (!useChangeTokens)
+      return "";
+
+    // Also seed what changed in each included list and library since the last time, and record new change tokens.
+    // Without a previous seeding version, the whole job is about to be rescanned, so only the tokens are needed.
+    Map<String,String[]> previousTokens = new HashMap<String,String[]>();
+    if (lastSeedVersion != null && lastSeedVersion.length() > 0 && lastSeedVersion.charAt(0) == CHANGE_TOKEN_MARKER)
+    {
+      List<String> containerIDs = new ArrayList<String>();
+      List<String> guids = new ArrayList<String>();
+      List<String> tokens = new ArrayList<String>();
+      int index = unpackList(containerIDs,lastSeedVersion,1,'+');
+      index = unpackList(guids,lastSeedVersion,index,'+');
+      index = unpackList(tokens,lastSeedVersion,index,'+');
+      for (int i = 0; i < containerIDs.size() && i < guids.size() && i < tokens.size(); i++)
+      {
+        previousTokens.put(containerIDs.get(i),new String[]{guids.get(i),tokens.get(i)});
+      }
+    }
+
+    ChangeTokens newTokens = new ChangeTokens();
+    if (checkIncludeSite("/",spec))
+      seedSiteChanges(activities, spec, "", previousTokens, lastSeedVersion != null, newTokens);
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(CHANGE_TOKEN_MARKER);
+    packList(sb,newTokens.containerIDs,'+');
+    packList(sb,newTokens.guids,'+');
+    packList(sb,newTokens.tokens,'+');
+    return sb.toString();
+  }
+
+  /** Marks a seeding version string that holds change tokens */
+  protected final static char CHANGE_TOKEN_MARKER = 'T';
+
+  /** The change tokens collected during one seeding pass, one per list or library */
+  protected static class ChangeTokens
+  {
+    public final List<String> containerIDs = new ArrayList<String>();
+    public final List<String> guids = new ArrayList<String>();
+    public final List<String> tokens = new ArrayList<String>();
+
+    public void add(String containerID, String guid, String token)
+    {
+      containerIDs.add(containerID);
+      guids.add(guid);
+      tokens.add(token);
+    }
+  }
+
+  /** Walk a site and its included subsites, seeding the changes in each included list and library.
+  *@param decodedSitePath is the site path, or "" for the root site.
+  *@param previousTokens are the change tokens from the last seeding pass, keyed by list or library identifier.
+  *@param seedChanges is false if only the change tokens are wanted.
+  *@param newTokens is where the new change tokens are recorded.
+  */
+  protected void seedSiteChanges(ISeedingActivity activities, Specification spec, String decodedSitePath,
+    Map<String,String[]> previousTokens, boolean seedChanges, ChangeTokens newTokens)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    String encodedSitePath = encodePath(decodedSitePath);
+
+    List<NameValue> libraries = proxy.getDocumentLibraries( encodedSitePath, decodedSitePath );
+    if (libraries != null)
+    {
+      for (NameValue library : libraries)
+      {
+        String newPath = decodedSitePath + "/" + library.getValue();
+        if (checkIncludeLibrary(newPath,spec))
+          seedContainerChanges(activities, spec, newPath, newPath + "//", false,
+            previousTokens, seedChanges, newTokens);
+      }
+    }
+
+    List<NameValue> lists = proxy.getLists( encodedSitePath, decodedSitePath );
+    if (lists != null)
+    {
+      for (NameValue list : lists)
+      {
+        String newPath = decodedSitePath + "/" + list.getValue();
+        if (checkIncludeList(newPath,spec))
+          seedContainerChanges(activities, spec, newPath, newPath + "///", true,
+            previousTokens, seedChanges, newTokens);
+      }
+    }
+
+    List<NameValue> subsites = proxy.getSites( encodedSitePath );
+    if (subsites != null)
+    {
+      for (NameValue subSiteName : subsites)
+      {
+        String newPath = decodedSitePath + "/" + subSiteName.getValue();
+        if (checkIncludeSite(newPath,spec))
+          seedSiteChanges(activities, spec, newPath, previousTokens, seedChanges, newTokens);
+      }
+    }
+  }
+
+  /** Seed the changes in one list or library, and record its new change token.  Changed items are seeded
+  * along with the list or library itself, whose rescan finds the items that are new.  A list or library
+  * whose token can't be used any more has all of its items seeded.
+  */
+  protected void seedContainerChanges(ISeedingActivity activities, Specification spec, String siteContainerPath,
+    String containerID, boolean isList, Map<String,String[]> previousTokens, boolean seedChanges, ChangeTokens newTokens)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    int cutoff = siteContainerPath.lastIndexOf( "/" );
+    String decodedSitePath = siteContainerPath.substring(0,cutoff);
+    String containerName = siteContainerPath.substring( cutoff + 1 );
+    String encodedSitePath = encodePath(decodedSitePath);
+
+    String[] previous = previousTokens.get(containerID);
+    if (seedChanges && previous != null)
+    {
+      SeedStream changeStream = new SeedStream(activities, spec, decodedSitePath, siteContainerPath, isList);
+      String token = proxy.getChangesSinceToken( changeStream, encodedSitePath, previous[0], previous[1] );
+      if (token != null)
+      {
+        if (changeStream.sawItems())
+          activities.addSeedDocument(containerID);
+        newTokens.add(containerID, previous[0], token);
+        return;
+      }
+      if (Logging.connectors.isDebugEnabled())
+        Logging.connectors.debug("SharePoint: Change token for '"+containerID+"' can't be used; seeding all of its items");
+    }
+
+    String guid;
+    if (isList)
+      guid = proxy.getListID( encodedSitePath, decodedSitePath, containerName );
+    else
+      guid = proxy.getDocLibID( encodedSitePath, decodedSitePath, containerName );
+    if (guid == null)
+      return;
+
+    // Take the token before looking at the items, so nothing that changes from here on is missed
+    String token = proxy.getChangesSinceToken( null, encodedSitePath, guid, null );
+    if (token == null)
+      return;
+
+    if (seedChanges)
+    {
+      activities.addSeedDocument(containerID);
+      // A list or library we didn't have a token for is new, so its rescan will find everything in it
+      if (previous != null)
+        proxy.getChildren( new SeedStream(activities, spec, decodedSitePath, siteContainerPath, isList), encodedSitePath, guid, dspStsWorks );
+    }
+    newTokens.add(containerID, guid, token);
   }
 
   protected static final String[] attachmentDataNames = new String[]{"createdDate","modifiedDate","accessTokens","denyTokens","url","guids"};
@@ -972,6 +1147,13 @@ public class SharePointRepository extends org.apache.manifoldcf.crawler.connecto
               // The document path includes the library, with no leading slash, and is decoded.
               String decodedItemPathWithoutSite = decodedItemPath.substring(cutoff+1);
               Map<String,String> values = proxy.getFieldValues( metadataDescription.toArray(new String[0]), encodedSitePath, listID, "/Lists/" + decodedItemPathWithoutSite, dspStsWorks );
+              if (values == null)
+              {
+                if (Logging.connectors.isDebugEnabled())
+                  Logging.connectors.debug("SharePoint: Can't get version of '"+documentIdentifier+"' because its list could not be read - removing");
+                activities.deleteDocument(documentIdentifier);
+                continue;
+              }
               String modifiedDate = values.get("Modified");
               String createdDate = values.get("Created");
               String id = values.get("ID");
@@ -1417,6 +1599,13 @@ public class SharePointRepository extends org.apache.manifoldcf.crawler.connecto
             int cutoff = decodedLibPath.lastIndexOf("/");
             String decodedDocumentPathWithoutSite = decodedDocumentPath.substring(cutoff);
             Map<String,String> values = proxy.getFieldValues( metadataDescription.toArray(new String[0]), encodedSitePath, libID, decodedDocumentPathWithoutSite, dspStsWorks );
+            if (values == null)
+            {
+              if (Logging.connectors.isDebugEnabled())
+                Logging.connectors.debug("SharePoint: Can't get version of '"+documentIdentifier+"' because its library could not be read - removing");
+              activities.deleteDocument(documentIdentifier);
+              continue;
+            }
 
             String modifiedDate = values.get("Modified");
             String createdDate = values.get("Created");
@@ -2070,33 +2259,44 @@ public class SharePointRepository extends org.apache.manifoldcf.crawler.connecto
       {
         relPath = rootPath + sitePath + "/" + relPath;
       }
+
+      String modifiedPath = makeFileIdentifier( relPath, rootPath, siteLibPath, spec );
+      if (modifiedPath != null)
+        activities.addDocumentReference( modifiedPath, documentIdentifier, null, fileStreamDataNames, dataValues );
+    }
+  }
+
+  /** Convert the full path of a file in a library to the file's document identifier.
+  *@return the identifier, or null if the file is not included.
+  */
+  protected String makeFileIdentifier(String relPath, String rootPath, String siteLibPath, Specification spec)
+    throws ManifoldCFException
+  {
+    // Now, strip away what we don't want - namely, the root path.  This makes the path relative to the root.
+    if ( relPath.startsWith(rootPath) )
+    {
+      relPath = relPath.substring(rootPath.length());
       
-      // Now, strip away what we don't want - namely, the root path.  This makes the path relative to the root.
-      if ( relPath.startsWith(rootPath) )
+      if ( checkIncludeFile( relPath, spec ) )
       {
-        relPath = relPath.substring(rootPath.length());
-      
-        if ( checkIncludeFile( relPath, spec ) )
+        // Since the processing for a file needs to know the library path, we need a way to signal the cutoff between library and folder levels.
+        // The way I've chosen to do this is to use a double slash at that point, as a separator.
+        if (relPath.startsWith(siteLibPath))
         {
-          // Since the processing for a file needs to know the library path, we need a way to signal the cutoff between library and folder levels.
-          // The way I've chosen to do this is to use a double slash at that point, as a separator.
-          if (relPath.startsWith(siteLibPath))
-          {
-            // Split at the libpath/file boundary
-            String modifiedPath = siteLibPath + "/" + relPath.substring(siteLibPath.length());
-            activities.addDocumentReference( modifiedPath, documentIdentifier, null, fileStreamDataNames, dataValues );
-          }
-          else
-          {
-            Logging.connectors.warn("SharePoint: Unexpected relPath structure; path is '"+relPath+"', but expected to see something beginning with '"+siteLibPath+"'");
-          }
+          // Split at the libpath/file boundary
+          return siteLibPath + "/" + relPath.substring(siteLibPath.length());
+        }
+        else
+        {
+          Logging.connectors.warn("SharePoint: Unexpected relPath structure; path is '"+relPath+"', but expected to see something beginning with '"+siteLibPath+"'");
         }
       }
-      else
-      {
-        Logging.connectors.warn("SharePoint: Unexpected relPath structure; path is '"+relPath+"', but expected to see something beginning with '"+rootPath+"'");
-      }
     }
+    else
+    {
+      Logging.connectors.warn("SharePoint: Unexpected relPath structure; path is '"+relPath+"', but expected to see something beginning with '"+rootPath+"'");
+    }
+    return null;
   }
   
   protected final static String[] listItemStreamDataNames = new String[]{"accessTokens", "denyTokens", "guids", "fields", "displayURLs"};
@@ -2139,58 +2339,115 @@ public class SharePointRepository extends org.apache.manifoldcf.crawler.connecto
         relPath = rootPath + sitePath + "/" + relPath;
       }
 
-      String fullPath = relPath;
-
-      // Now, strip away what we don't want - namely, the root path.  This makes the path relative to the root.
-      if ( relPath.startsWith(rootPath) )
+      String modifiedPath = makeListItemIdentifier( relPath, rootPath, sitePath, siteListPath, spec );
+      if (modifiedPath != null)
       {
-        relPath = relPath.substring(rootPath.length());
+        if (displayURL != null)
+          dataValues[4] = new String[]{displayURL};
+        else
+          dataValues[4] = new String[]{relPath};
+
+        activities.addDocumentReference( modifiedPath, documentIdentifier, null, listItemStreamDataNames, dataValues );
+      }
+    }
+
+  }
+
+  /** Convert the full path of a list item to the item's document identifier.
+  *@return the identifier, or null if the item is not included.
+  */
+  protected String makeListItemIdentifier(String relPath, String rootPath, String sitePath, String siteListPath, Specification spec)
+    throws ManifoldCFException
+  {
+    // Now, strip away what we don't want - namely, the root path.  This makes the path relative to the root.
+    if ( relPath.startsWith(rootPath) )
+    {
+      relPath = relPath.substring(rootPath.length());
 
-        if (relPath.startsWith(sitePath))
+      if (relPath.startsWith(sitePath))
+      {
+        relPath = relPath.substring(sitePath.length());
+        
+        // Now, strip "Lists" from relPath.  If it doesn't start with /Lists/, ignore it.
+        if (relPath.startsWith("/Lists/"))
         {
-          relPath = relPath.substring(sitePath.length());
-          
-          // Now, strip "Lists" from relPath.  If it doesn't start with /Lists/, ignore it.
-          if (relPath.startsWith("/Lists/"))
+          relPath = sitePath + relPath.substring("/Lists".length());
+          if ( checkIncludeListItem( relPath, spec ) )
           {
-            relPath = sitePath + relPath.substring("/Lists".length());
-            if ( checkIncludeListItem( relPath, spec ) )
+            if (relPath.startsWith(siteListPath))
             {
-              if (relPath.startsWith(siteListPath))
-              {
-                // Since the processing for a item needs to know the list path, we need a way to signal the cutoff between list and item levels.
-                // The way I've chosen to do this is to use a triple slash at that point, as a separator.
-                String modifiedPath = relPath.substring(0,siteListPath.length()) + "//" + relPath.substring(siteListPath.length());
-                
-                if (displayURL != null)
-                  dataValues[4] = new String[]{displayURL};
-                else
-                  dataValues[4] = new String[]{fullPath};
-
-                activities.addDocumentReference( modifiedPath, documentIdentifier, null, listItemStreamDataNames, dataValues );
-              }
-              else
-              {
-                Logging.connectors.warn("SharePoint: Unexpected relPath structure; site path is '"+relPath+"', but expected to see something beginning with '"+siteListPath+"'");
-              }
+              // Since the processing for a item needs to know the list path, we need a way to signal the cutoff between list and item levels.
+              // The way I've chosen to do this is to use a triple slash at that point, as a separator.
+              return relPath.substring(0,siteListPath.length()) + "//" + relPath.substring(siteListPath.length());
+            }
+            else
+            {
+              Logging.connectors.warn("SharePoint: Unexpected relPath structure; site path is '"+relPath+"', but expected to see something beginning with '"+siteListPath+"'");
             }
-          }
-          else
-          {
-            Logging.connectors.warn("SharePoint: Unexpected relPath structure; rel path is '"+relPath+"', but expected to see something beginning with '/Lists/'");
           }
         }
         else
         {
-          Logging.connectors.warn("SharePoint: Unexpected relPath structure; site path is '"+relPath+"', but expected to see something beginning with '"+sitePath+"'");
+          Logging.connectors.warn("SharePoint: Unexpected relPath structure; rel path is '"+relPath+"', but expected to see something beginning with '/Lists/'");
         }
       }
       else
       {
-        Logging.connectors.warn("SharePoint: Unexpected relPath structure; path is '"+relPath+"', but expected to see something beginning with '"+rootPath+"'");
+        Logging.connectors.warn("SharePoint: Unexpected relPath structure; site path is '"+relPath+"', but expected to see something beginning with '"+sitePath+"'");
       }
     }
+    else
+    {
+      Logging.connectors.warn("SharePoint: Unexpected relPath structure; path is '"+relPath+"', but expected to see something beginning with '"+rootPath+"'");
+    }
+    return null;
+  }
+
+  /** Seeds the items of a list or library, as they are reported by SharePoint */
+  protected class SeedStream implements IFileStream
+  {
+    protected final ISeedingActivity activities;
+    protected final Specification spec;
+    protected final String sitePath;
+    protected final String siteContainerPath;
+    protected final boolean isList;
+    protected boolean sawItems = false;
+
+    public SeedStream(ISeedingActivity activities, Specification spec, String sitePath, String siteContainerPath, boolean isList)
+    {
+      this.activities = activities;
+      this.spec = spec;
+      this.sitePath = sitePath;
+      this.siteContainerPath = siteContainerPath;
+      this.isList = isList;
+    }
 
+    @Override
+    public void addFile(String relPath, String displayURL)
+      throws ManifoldCFException
+    {
+      sawItems = true;
+
+      // First, convert the relative path to a full path
+      if ( !relPath.startsWith("/") )
+      {
+        relPath = encodedServerLocation + sitePath + "/" + relPath;
+      }
+
+      String modifiedPath;
+      if (isList)
+        modifiedPath = makeListItemIdentifier( relPath, encodedServerLocation, sitePath, siteContainerPath, spec );
+      else
+        modifiedPath = makeFileIdentifier( relPath, encodedServerLocation, siteContainerPath, spec );
+      if (modifiedPath != null)
+        activities.addSeedDocument( modifiedPath );
+    }
+
+    /** Check whether any item was reported */
+    public boolean sawItems()
+    {
+      return sawItems;
+    }
   }
   
 
@@ -2261,6 +2518,13 @@ public class SharePointRepository extends org.apache.manifoldcf.crawler.connecto
     if (serverVersion != null)
       parameters.setParameter(SharePointConfig.PARAM_SERVERVERSION,serverVersion);
 
+    String changeTrackingPresent = variableContext.getParameter("changeTracking_present");
+    if (changeTrackingPresent != null)
+    {
+      String changeTracking = variableContext.getParameter("changeTracking");
+      parameters.setParameter(SharePointConfig.PARAM_CHANGETRACKING,(changeTracking != null && changeTracking.equals("true"))?"true":"false");
+    }
+
     String serverProtocol = variableContext.getParameter("serverProtocol");
     if (serverProtocol != null)
       parameters.setParameter(SharePointConfig.PARAM_SERVERPROTOCOL,serverProtocol);
@@ -2408,6 +2672,10 @@ public class SharePointRepository extends org.apache.manifoldcf.crawler.connecto
     if (serverVersion == null)
       serverVersion = "4.0";
 
+    String changeTracking = parameters.getParameter(SharePointConfig.PARAM_CHANGETRACKING);
+    if (changeTracking == null)
+      changeTracking = "false";
+
     String serverProtocol = parameters.getParameter(SharePointConfig.PARAM_SERVERPROTOCOL);
     if (serverProtocol == null)
       serverProtocol = "http";
@@ -2479,6 +2747,7 @@ public class SharePointRepository extends org.apache.manifoldcf.crawler.connecto
 
     // Fill in context
     velocityContext.put("SERVERVERSION", serverVersion);
+    velocityContext.put("CHANGETRACKING", changeTracking);
     velocityContext.put("SERVERPROTOCOL", serverProtocol);
     velocityContext.put("SERVERNAME", serverName);
     velocityContext.put("SERVERPORT", serverPort);
@@ -0,0 +1,117 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.sharepoint;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.core.common.XMLDoc;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+/** Checks how one page of a getListItemChangesSinceToken response is read */
+public class SPSProxyHelperTest
+{
+  protected final static String TOKEN = "1;3;6f0bc1b4-0b4d-4f8f-9a6e-2f0bdd0b1a5e;634950240000000000;1234";
+
+  @Test
+  public void changesAndRows()
+    throws Exception
+  {
+    List<String> paths = new ArrayList<String>();
+    SPSProxyHelper.ChangesPage page = SPSProxyHelper.parseChangesPage(makeResponse(
+      "<Changes LastChangeToken=\""+TOKEN+"\"><Id ChangeType=\"Delete\">7</Id></Changes>",
+      "<z:row ows_FileRef=\"3;#Shared Documents/a.docx\" ows_FSObjType=\"3;#0\"/>"+
+      "<z:row ows_FileRef=\"4;#Shared Documents/Folder\" ows_FSObjType=\"4;#1\"/>"+
+      "<z:row ows_FileRef=\"/Shared Documents/Folder/b.docx\"/>"+
+      "<z:row ows_ID=\"6\"/>"),makeStream(paths));
+    assertNotNull(page);
+    assertEquals(TOKEN,page.lastChangeToken);
+    assertFalse(page.moreChanges);
+    // The folder and the row without a path are left out
+    assertEquals(Arrays.asList("/Shared Documents/a.docx","/Shared Documents/Folder/b.docx"),paths);
+  }
+
+  @Test
+  public void moreChanges()
+    throws Exception
+  {
+    SPSProxyHelper.ChangesPage page = SPSProxyHelper.parseChangesPage(makeResponse(
+      "<Changes LastChangeToken=\""+TOKEN+"\" MoreChanges=\"TRUE\"/>",""),null);
+    assertNotNull(page);
+    assertEquals(TOKEN,page.lastChangeToken);
+    assertTrue(page.moreChanges);
+  }
+
+  @Test
+  public void invalidToken()
+    throws Exception
+  {
+    List<String> paths = new ArrayList<String>();
+    assertNull(SPSProxyHelper.parseChangesPage(makeResponse(
+      "<Changes LastChangeToken=\""+TOKEN+"\"><Id ChangeType=\"InvalidToken\"/></Changes>",
+      "<z:row ows_FileRef=\"3;#Shared Documents/a.docx\"/>"),makeStream(paths)));
+    assertNull(SPSProxyHelper.parseChangesPage(makeResponse(
+      "<Changes LastChangeToken=\""+TOKEN+"\"><List ChangeType=\"Restore\"/></Changes>",""),null));
+  }
+
+  @Test
+  public void missingToken()
+    throws Exception
+  {
+    // Without a Changes element there is nothing to carry on from; the caller treats that as bad xml
+    SPSProxyHelper.ChangesPage page = SPSProxyHelper.parseChangesPage(makeResponse("",""),null);
+    assertNotNull(page);
+    assertNull(page.lastChangeToken);
+    page = SPSProxyHelper.parseChangesPage(makeResponse("<Changes/>",""),null);
+    assertNotNull(page);
+    assertNull(page.lastChangeToken);
+  }
+
+  @Test(expected=ManifoldCFException.class)
+  public void wrongOuterNode()
+    throws Exception
+  {
+    SPSProxyHelper.parseChangesPage(new XMLDoc("<ns1:Lists xmlns:ns1=\"http://schemas.microsoft.com/sharepoint/soap/\"/>"),null);
+  }
+
+  protected static XMLDoc makeResponse(String changes, String rows)
+    throws ManifoldCFException
+  {
+    return new XMLDoc("<ns1:listitems xmlns:ns1=\"http://schemas.microsoft.com/sharepoint/soap/\""+
+      " xmlns:rs=\"urn:schemas-microsoft-com:rowset\" xmlns:z=\"#RowsetSchema\">"+
+      changes+
+      "<rs:data ItemCount=\"0\">"+rows+"</rs:data>"+
+      "</ns1:listitems>");
+  }
+
+  protected static IFileStream makeStream(final List<String> paths)
+  {
+    return new IFileStream()
+    {
+      @Override
+      public void addFile(String relPath, String displayURI)
+      {
+        paths.add(relPath);
+      }
+    };
+  }
+
+}
@@ -0,0 +1,185 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler;
+
+/** This class computes a 64-bit SimHash of a document's text, incrementally, as the document's bytes
+* stream past.  Documents whose text is nearly the same get fingerprints that differ in only a few bits,
+* so near-duplicates can be found by comparing Hamming distances.
+*
+* The features are overlapping three-word shingles.  Markup between '<' and '>' is skipped, so that
+* pages which differ only in their links (session parameters, mirror host names) still match.  Words are
+* runs of ASCII letters and digits, plus any non-ASCII bytes, so multi-byte text in any ASCII-compatible
+* encoding is handled without decoding.
+*/
+public class ContentFingerprint
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** Number of bits in a fingerprint */
+  public static final int FINGERPRINT_BITS = 64;
+  /** Number of bands a fingerprint is split into for indexed lookup */
+  public static final int BAND_COUNT = 4;
+  /** Bits per band */
+  public static final int BAND_BITS = FINGERPRINT_BITS / BAND_COUNT;
+  /** The largest distance for which a band lookup is guaranteed to find every match */
+  public static final int MAX_INDEXED_DISTANCE = BAND_COUNT - 1;
+
+  /** Fewer features than this and the fingerprint is not considered meaningful */
+  protected static final int MIN_FEATURES = 8;
+
+  // 64-bit FNV-1a constants
+  protected static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  protected static final long FNV_PRIME = 0x100000001b3L;
+
+  /** Per-bit weights */
+  protected final int[] weights = new int[FINGERPRINT_BITS];
+  /** True if inside markup */
+  protected boolean inTag = false;
+  /** True if inside a word */
+  protected boolean inWord = false;
+  /** Hash of the current word */
+  protected long wordHash = FNV_OFFSET;
+  /** Hashes of the previous two words */
+  protected long previousWord1 = 0L;
+  protected long previousWord2 = 0L;
+  /** Number of words seen */
+  protected long wordCount = 0L;
+  /** Number of features added */
+  protected long featureCount = 0L;
+
+  /** Constructor.
+  */
+  public ContentFingerprint()
+  {
+  }
+
+  /** Add a block of document bytes.
+  *@param data is the buffer.
+  *@param offset is the start of the bytes to add.
+  *@param length is the number of bytes to add.
+  */
+  public void update(byte[] data, int offset, int length)
+  {
+    int end = offset + length;
+    for (int i = offset; i < end; i++)
+    {
+      int b = ((int)data[i]) & 0xff;
+      if (inTag)
+      {
+        if (b == '>')
+          inTag = false;
+        continue;
+      }
+      if (b == '<')
+      {
+        endWord();
+        inTag = true;
+        continue;
+      }
+      if (b >= 'A' && b <= 'Z')
+        b += 'a' - 'A';
+      if ((b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b >= 0x80)
+      {
+        wordHash = (wordHash ^ b) * FNV_PRIME;
+        inWord = true;
+      }
+      else
+        endWord();
+    }
+  }
+
+  /** Get the fingerprint of everything added so far.
+  *@return the fingerprint, or null if there was too little text to fingerprint meaningfully.
+  */
+  public Long getFingerprint()
+  {
+    endWord();
+    if (featureCount < MIN_FEATURES)
+      return null;
+    long rval = 0L;
+    for (int bit = 0; bit < FINGERPRINT_BITS; bit++)
+    {
+      if (weights[bit] > 0)
+        rval |= (1L << bit);
+    }
+    return new Long(rval);
+  }
+
+  /** Compute the Hamming distance between two fingerprints.
+  */
+  public static int distance(long fingerprint1, long fingerprint2)
+  {
+    return Long.bitCount(fingerprint1 ^ fingerprint2);
+  }
+
+  /** Extract one band of a fingerprint.  Two fingerprints within MAX_INDEXED_DISTANCE of each other
+  * always share at least one band exactly.
+  *@param fingerprint is the fingerprint.
+  *@param band is the band number, from 0 to BAND_COUNT-1.
+  *@return the band value.
+  */
+  public static long getBand(long fingerprint, int band)
+  {
+    return (fingerprint >>> (band * BAND_BITS)) & ((1L << BAND_BITS) - 1L);
+  }
+
+  /** Finish the current word, if any, and add the shingle it completes.
+  */
+  protected void endWord()
+  {
+    if (!inWord)
+      return;
+    long currentWord = wordHash;
+    wordHash = FNV_OFFSET;
+    inWord = false;
+    wordCount++;
+    if (wordCount >= 3)
+      addFeature(mix(mix(previousWord2) ^ previousWord1) ^ currentWord);
+    previousWord2 = previousWord1;
+    previousWord1 = currentWord;
+  }
+
+  /** Add a feature hash to the weights.
+  */
+  protected void addFeature(long featureHash)
+  {
+    long h = mix(featureHash);
+    for (int bit = 0; bit < FINGERPRINT_BITS; bit++)
+    {
+      if ((h & (1L << bit)) != 0L)
+        weights[bit]++;
+      else
+        weights[bit]--;
+    }
+    featureCount++;
+  }
+
+  /** Spread the bits of a hash value (the MurmurHash3 finalizer).
+  */
+  protected static long mix(long h)
+  {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+}
@@ -32,6 +32,8 @@ import org.apache.manifoldcf.crawler.system.Logging;
 * as well as in cache (up to a certain point).  The result is that there is a memory limited, database-backed repository
 * of DNS entries that we can draw on.
 * Note that this code is also responsible for efficiently caching the mapping of IP address to a canonical host name.
+* In front of both of these sits a process-wide in-memory tier (see HostDataCache), which absorbs most lookups.  Writes go
+* to that tier immediately and are persisted to the database in batches.
 * 
 * <br><br>
 * <b>dnsdata</b>
@@ -53,6 +55,15 @@ public class DNSManager extends org.apache.manifoldcf.core.database.BaseTable
   // Robots cache class.  Only one needed.
   protected static DNSCacheClass dnsCacheClass = new DNSCacheClass();
 
+  // Properties controlling the in-memory tier.  Write-behind batching is shared with RobotsManager.
+  public final static String PROPERTY_DNS_CACHE_SIZE = "org.apache.manifoldcf.crawler.connectors.webcrawler.dnscachesize";
+
+  // In-memory tier, shared by all connection instances in this process.
+  protected final static HostDataCache<DNSInfo> dnsTier = new HostDataCache<DNSInfo>("DNS",100000,100,10000L);
+  // Lock object which serializes this process's write-behind flushes, so that a failed flush can requeue its writes
+  // before a later flush runs.  Other processes flush independently; the last one to write a host's row wins.
+  protected final static Object flushLock = new Object();
+
   // Database fields
   protected final static String hostField = "hostname";
   protected final static String fqdnField = "canonicalhostname";
@@ -72,6 +83,9 @@ public class DNSManager extends org.apache.manifoldcf.core.database.BaseTable
   {
     super(database,"dnsdata");
     cacheManager = CacheManagerFactory.make(tc);
+    dnsTier.setLimits(LockManagerFactory.getIntProperty(tc,PROPERTY_DNS_CACHE_SIZE,100000),
+      LockManagerFactory.getIntProperty(tc,RobotsManager.PROPERTY_WRITEBEHIND_BATCH_SIZE,100),
+      LockManagerFactory.getLongProperty(tc,RobotsManager.PROPERTY_WRITEBEHIND_MAX_DELAY,10000L));
   }
 
   /** Install the manager.
@@ -123,6 +137,10 @@ public class DNSManager extends org.apache.manifoldcf.core.database.BaseTable
   public DNSInfo lookup(String hostName, long currentTime)
     throws ManifoldCFException
   {
+    DNSInfo rd = dnsTier.lookup(hostName,currentTime);
+    if (rd != null)
+      return rd;
+
     // Build description objects
     HostDescription[] objectDescriptions = new HostDescription[1];
     StringSetBuffer ssb = new StringSetBuffer();
@@ -133,13 +151,16 @@ public class DNSManager extends org.apache.manifoldcf.core.database.BaseTable
     cacheManager.findObjectsAndExecute(objectDescriptions,null,exec,getTransactionID());
 
     // DNSInfo object must be built if it isn't yet present.
-    DNSInfo rd = exec.getResults();
+    rd = exec.getResults();
     if (rd == null || rd.getExpirationTime() <= currentTime)
       return null;
+    dnsTier.put(hostName,rd,rd.getExpirationTime());
     return rd;
   }
 
   /** Write DNS data, replacing any existing row.
+  * The data is available immediately to all callers in this process; it is persisted to the
+  * database in a later batch (see flushPendingWrites()).
   *@param hostName is the host.
   *@param fqdn is the canonical host name.
   *@param ipaddress is the host ip address, in standard form.
@@ -147,9 +168,54 @@ public class DNSManager extends org.apache.manifoldcf.core.database.BaseTable
   */
   public void writeDNSData(String hostName, String fqdn, String ipaddress, long expirationTime)
     throws ManifoldCFException
+  {
+    DNSInfo info = new DNSInfo(ipaddress,fqdn,expirationTime,hostName);
+    long currentTime = System.currentTimeMillis();
+    dnsTier.write(hostName,info,expirationTime,info,currentTime);
+    if (dnsTier.isFlushNeeded(currentTime))
+      flushPendingWrites();
+  }
+
+  /** Persist all DNS data that has been written but not yet saved to the database.
+  * This is called periodically, and also whenever enough writes have accumulated.
+  */
+  public void flushPendingWrites()
+    throws ManifoldCFException
+  {
+    synchronized (flushLock)
+    {
+      List<HostDataCache.PendingWrite> writes = dnsTier.drainPendingWrites();
+      if (writes.size() == 0)
+        return;
+      try
+      {
+        persistDNSData(writes);
+      }
+      catch (ManifoldCFException e)
+      {
+        dnsTier.requeuePendingWrites(writes);
+        throw e;
+      }
+      catch (Error e)
+      {
+        dnsTier.requeuePendingWrites(writes);
+        throw e;
+      }
+    }
+    dnsTier.reportStatistics(System.currentTimeMillis());
+  }
+
+  /** Write a batch of DNS rows, replacing any existing rows, in a single transaction.
+  *@param writes is the list of pending writes.
+  */
+  protected void persistDNSData(List<HostDataCache.PendingWrite> writes)
+    throws ManifoldCFException
   {
     StringSetBuffer ssb = new StringSetBuffer();
-    ssb.add(getDNSKey(hostName));
+    for (HostDataCache.PendingWrite pw : writes)
+    {
+      ssb.add(getDNSKey(pw.getHostName()));
+    }
     StringSet cacheKeys = new StringSet(ssb);
     ICacheHandle ch = cacheManager.enterCache(null,cacheKeys,getTransactionID());
     try
@@ -157,32 +223,39 @@ public class DNSManager extends org.apache.manifoldcf.core.database.BaseTable
       beginTransaction();
       try
       {
-        // See whether the instance exists
-        ArrayList params = new ArrayList();
-        params.add(hostName);
-        IResultSet set = performQuery("SELECT * FROM "+getTableName()+" WHERE "+
-          hostField+"=?",params,null,null);
-        HashMap values = new HashMap();
-        values.put(expirationField,new Long(expirationTime));
-        if (fqdn == null)
-          fqdn = "";
-        values.put(fqdnField,fqdn);
-        if (ipaddress == null)
-          ipaddress = "";
-        values.put(ipaddressField, ipaddress);
-        if (set.getRowCount() > 0)
+        for (HostDataCache.PendingWrite pw : writes)
         {
-          // Update
-          params.clear();
+          String hostName = pw.getHostName();
+          DNSInfo info = (DNSInfo)pw.getWriteData();
+          // See whether the instance exists
+          ArrayList params = new ArrayList();
           params.add(hostName);
-          performUpdate(values," WHERE "+hostField+"=?",params,null);
-        }
-        else
-        {
-          // Insert
-          values.put(hostField,hostName);
-          // We only need the general key because this is new.
-          performInsert(values,null);
+          IResultSet set = performQuery("SELECT "+hostField+" FROM "+getTableName()+" WHERE "+
+            hostField+"=?",params,null,null);
+          HashMap values = new HashMap();
+          values.put(expirationField,new Long(info.getExpirationTime()));
+          String fqdn = info.getFQDN();
+          if (fqdn == null)
+            fqdn = "";
+          values.put(fqdnField,fqdn);
+          String ipaddress = info.getIPAddress();
+          if (ipaddress == null)
+            ipaddress = "";
+          values.put(ipaddressField, ipaddress);
+          if (set.getRowCount() > 0)
+          {
+            // Update
+            params.clear();
+            params.add(hostName);
+            performUpdate(values," WHERE "+hostField+"=?",params,null);
+          }
+          else
+          {
+            // Insert
+            values.put(hostField,hostName);
+            // We only need the general key because this is new.
+            performInsert(values,null);
+          }
         }
         cacheManager.invalidateKeys(ch);
       }
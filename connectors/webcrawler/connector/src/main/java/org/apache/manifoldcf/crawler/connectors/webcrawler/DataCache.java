@@ -23,6 +23,7 @@ import org.apache.manifoldcf.agents.interfaces.*;
 import org.apache.manifoldcf.crawler.interfaces.*;
 import org.apache.manifoldcf.crawler.system.Logging;
 import org.apache.manifoldcf.crawler.system.ManifoldCF;
+import org.apache.manifoldcf.connectorcommon.fuzzyml.*;
 import java.util.*;
 import java.io.*;
 
@@ -62,6 +63,39 @@ public class DataCache
   */
   public String addData(IProcessActivity activities, String documentIdentifier, IThrottledConnection connection)
     throws ManifoldCFException, ServiceInterruption
+  {
+    return addData(activities,documentIdentifier,connection,false);
+  }
+
+  /** Add a data entry into the cache, optionally computing a content fingerprint as the data streams in.
+  *@param documentIdentifier is the document identifier (url).
+  *@param connection is the connection, upon which a fetch has been done that needs to be
+  * cached.
+  *@param computeFingerprint is true if a near-duplicate fingerprint should be computed.
+  *@return a "checksum" value, to use as a version string.
+  */
+  public String addData(IProcessActivity activities, String documentIdentifier, IThrottledConnection connection,
+    boolean computeFingerprint)
+    throws ManifoldCFException, ServiceInterruption
+  {
+    return addData(activities,documentIdentifier,connection,computeFingerprint,null);
+  }
+
+  /** Add a data entry into the cache, optionally computing a content fingerprint and extracting html links
+  * as the data streams in.  When html extraction is requested and the response is a 200 that looks like text,
+  * the body is parsed in the same pass that writes it to the cache file, and the link-related events are
+  * kept (see getHTMLEvents()) so that link extraction does not have to read the file again.
+  *@param documentIdentifier is the document identifier (url).
+  *@param connection is the connection, upon which a fetch has been done that needs to be
+  * cached.
+  *@param computeFingerprint is true if a near-duplicate fingerprint should be computed.
+  *@param htmlEncoding is the character encoding to parse the body with, or null if the body should not
+  * be parsed while it is fetched.
+  *@return a "checksum" value, to use as a version string.
+  */
+  public String addData(IProcessActivity activities, String documentIdentifier, IThrottledConnection connection,
+    boolean computeFingerprint, String htmlEncoding)
+    throws ManifoldCFException, ServiceInterruption
   {
     // Grab the response code, and the content-type header
     int responseCode = connection.getResponseCode();
@@ -87,58 +121,45 @@ public class DataCache
           // tempFile.deleteOnExit();
           ManifoldCF.addFile(tempFile);
 
-          // Transfer data to temporary file
-          long checkSum = 0L;
+          // Transfer data to temporary file, parsing it on the way if asked
+          ContentFingerprint fingerprint = computeFingerprint?new ContentFingerprint():null;
+          HTMLLinkRecorder htmlEvents = null;
           OutputStream os = new FileOutputStream(tempFile);
+          SpoolingInputStream spool = new SpoolingInputStream(dataStream,os,fingerprint,activities);
           try
           {
-            byte[] byteArray = new byte[65536];
-            while (true)
+            try
             {
-              int amt;
-              try
-              {
-                amt = dataStream.read(byteArray,0,byteArray.length);
-              }
-              catch (java.net.SocketTimeoutException e)
-              {
-                Logging.connectors.warn("Socket timeout exception reading socket stream: "+e.getMessage(),e);
-                long currentTime = System.currentTimeMillis();
-                throw new ServiceInterruption("Socket timeout: "+e.getMessage(),e,currentTime + 300000L,
-                  currentTime + 12 * 60 * 60000L,-1,false);
-              }
-              catch (ConnectTimeoutException e)
-              {
-                Logging.connectors.warn("Socket connect timeout exception reading socket stream: "+e.getMessage(),e);
-                long currentTime = System.currentTimeMillis();
-                throw new ServiceInterruption("Socket timeout: "+e.getMessage(),e,currentTime + 300000L,
-                  currentTime + 12 * 60 * 60000L,-1,false);
-              }
-              catch (InterruptedIOException e)
-              {
-                //Logging.connectors.warn("IO interruption seen",e);
-                throw new ManifoldCFException("Interrupted: "+e.getMessage(),ManifoldCFException.INTERRUPTED);
-              }
-              catch (IOException e)
-              {
-                Logging.connectors.warn("IO exception reading socket stream: "+e.getMessage(),e);
-                long currentTime = System.currentTimeMillis();
-                throw new ServiceInterruption("Read timeout: "+e.getMessage(),e,currentTime + 300000L,
-                  currentTime + 12 * 60 * 60000L,-1,false);
-              }
-              if (amt == -1)
-                break;
-              int i = 0;
-              while (i < amt)
+              spool.sniff();
+              if (htmlEncoding != null && responseCode == 200)
               {
-                byte x = byteArray[i++];
-                long bytevalue = (long)x;
-                checkSum = (checkSum << 5) ^ (checkSum >> 3) ^ (bytevalue << 2) ^ (bytevalue >> 3);
+                htmlEvents = new HTMLLinkRecorder();
+                if (spool.isText())
+                {
+                  try
+                  {
+                    Parser p = new Parser();
+                    p.parseWithoutCharsetDetection(htmlEncoding,spool,new FormParseState(htmlEvents));
+                  }
+                  catch (UnsupportedEncodingException e)
+                  {
+                    // The encoding specified was crap, so don't handle this document.
+                    if (Logging.connectors.isDebugEnabled())
+                      Logging.connectors.debug("WEB: Document '"+documentIdentifier+"' had an unrecognized encoding '"+htmlEncoding+"'");
+                  }
+                }
+                else
+                {
+                  if (Logging.connectors.isDebugEnabled())
+                    Logging.connectors.debug("WEB: Document '"+documentIdentifier+"' is not text; can't extract links");
+                }
               }
-
-              os.write(byteArray,0,amt);
-              // Check if job is alive before looping
-              activities.checkJobStillActive();
+              // Whatever the parser did not need still has to go to the file
+              spool.drain();
+            }
+            catch (SpoolException e)
+            {
+              e.rethrow();
             }
           }
           finally
@@ -149,8 +170,9 @@ public class DataCache
           synchronized(this)
           {
             deleteData(documentIdentifier);
-            cacheData.put(documentIdentifier,new DocumentData(tempFile,responseCode,contentType,referralURI));
-            return new Long(checkSum).toString();
+            cacheData.put(documentIdentifier,new DocumentData(tempFile,responseCode,contentType,referralURI,
+              (fingerprint==null)?null:fingerprint.getFingerprint(),spool.isText(),htmlEvents));
+            return new Long(spool.getChecksum()).toString();
           }
 
         }
@@ -256,6 +278,42 @@ public class DataCache
     return dd.getReferralURI();
   }
 
+  /** Get the content fingerprint.
+  *@param documentIdentifier is the document identifier.
+  *@return the fingerprint, or null if none was computed.
+  */
+  public synchronized Long getFingerprint(String documentIdentifier)
+  {
+    DocumentData dd = cacheData.get(documentIdentifier);
+    if (dd == null)
+      return null;
+    return dd.getFingerprint();
+  }
+
+  /** Find out whether the document looked like text, judging by its first few kilobytes.
+  *@param documentIdentifier is the document identifier.
+  *@return true if the document is in the cache and is text.
+  */
+  public synchronized boolean isText(String documentIdentifier)
+  {
+    DocumentData dd = cacheData.get(documentIdentifier);
+    if (dd == null)
+      return false;
+    return dd.isText();
+  }
+
+  /** Get the html events recorded while the document was fetched.
+  *@param documentIdentifier is the document identifier.
+  *@return the recorded events, or null if the document was not parsed during the fetch.
+  */
+  public synchronized HTMLLinkRecorder getHTMLEvents(String documentIdentifier)
+  {
+    DocumentData dd = cacheData.get(documentIdentifier);
+    if (dd == null)
+      return null;
+    return dd.getHTMLEvents();
+  }
+
   /** Fetch binary data length.
   *@param documentIdentifier is the document identifier.
   *@return the length.
@@ -315,16 +373,26 @@ public class DataCache
     protected String contentType;
     /** The referral URI */
     protected String referralURI;
+    /** The content fingerprint, if computed */
+    protected Long fingerprint;
+    /** Whether the data looks like text */
+    protected boolean isText;
+    /** The html events recorded during the fetch, if any */
+    protected HTMLLinkRecorder htmlEvents;
 
     // More will probably go here later, but I can't think of much else at the moment.
 
     /** Constructor. */
-    public DocumentData(File data, int responseCode, String contentType, String referralURI)
+    public DocumentData(File data, int responseCode, String contentType, String referralURI, Long fingerprint,
+      boolean isText, HTMLLinkRecorder htmlEvents)
     {
       this.data = data;
       this.responseCode = responseCode;
       this.contentType = contentType;
       this.referralURI = referralURI;
+      this.fingerprint = fingerprint;
+      this.isText = isText;
+      this.htmlEvents = htmlEvents;
     }
 
     /** Get the data */
@@ -351,6 +419,225 @@ public class DataCache
       return referralURI;
     }
 
+    /** Get the fingerprint */
+    public Long getFingerprint()
+    {
+      return fingerprint;
+    }
+
+    /** Get whether the data is text */
+    public boolean isText()
+    {
+      return isText;
+    }
+
+    /** Get the recorded html events */
+    public HTMLLinkRecorder getHTMLEvents()
+    {
+      return htmlEvents;
+    }
+
+  }
+
+  /** This stream reads a response body and, as a side effect, copies every byte it reads into the cache
+  * file, computes the version checksum and the content fingerprint, and checks that the job is still active.
+  * A parser can therefore consume the body directly, with the cache file written in the same pass.
+  *
+  * The first few kilobytes can be read ahead (see sniff()) to decide whether the body is text at all before
+  * anybody parses it; those bytes are then handed out again by read() without being copied twice.
+  *
+  * Problems reading the body or checking the job are reported as SpoolException, so that they can be told
+  * apart from problems raised by the consumer.
+  */
+  protected static class SpoolingInputStream extends InputStream
+  {
+    /** Number of bytes looked at to decide if the body is text */
+    protected static final int SNIFF_SIZE = 4096;
+
+    protected final InputStream dataStream;
+    protected final OutputStream os;
+    protected final ContentFingerprint fingerprint;
+    protected final IProcessActivity activities;
+
+    /** The checksum so far */
+    protected long checkSum = 0L;
+    /** Bytes read ahead by sniff(), not yet returned by read() */
+    protected byte[] pending = null;
+    protected int pendingPosition = 0;
+    protected int pendingLength = 0;
+    /** Whether the sniffed bytes looked like text */
+    protected boolean isText = false;
+
+    public SpoolingInputStream(InputStream dataStream, OutputStream os, ContentFingerprint fingerprint, IProcessActivity activities)
+    {
+      this.dataStream = dataStream;
+      this.os = os;
+      this.fingerprint = fingerprint;
+      this.activities = activities;
+    }
+
+    /** Read ahead the first few kilobytes of the body, and decide whether it is text.
+    */
+    public void sniff()
+      throws IOException
+    {
+      pending = new byte[SNIFF_SIZE];
+      pendingLength = 0;
+      while (pendingLength < pending.length)
+      {
+        int amt = readSource(pending,pendingLength,pending.length-pendingLength);
+        if (amt == -1)
+          break;
+        pendingLength += amt;
+      }
+      isText = pendingLength > 0 && WebcrawlerConnector.isText(pending,pendingLength);
+    }
+
+    /** Read whatever is left of the body, so that all of it reaches the cache file.
+    */
+    public void drain()
+      throws IOException
+    {
+      pending = null;
+      byte[] byteArray = new byte[65536];
+      while (readSource(byteArray,0,byteArray.length) != -1)
+      {
+      }
+    }
+
+    /** Find out if the sniffed bytes looked like text. */
+    public boolean isText()
+    {
+      return isText;
+    }
+
+    /** Get the checksum of everything read so far. */
+    public long getChecksum()
+    {
+      return checkSum;
+    }
+
+    @Override
+    public int read()
+      throws IOException
+    {
+      byte[] oneByte = new byte[1];
+      int amt = read(oneByte,0,1);
+      if (amt == -1)
+        return -1;
+      return ((int)oneByte[0]) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+      throws IOException
+    {
+      if (len == 0)
+        return 0;
+      if (pending != null)
+      {
+        if (pendingPosition < pendingLength)
+        {
+          int amt = Math.min(len,pendingLength-pendingPosition);
+          System.arraycopy(pending,pendingPosition,b,off,amt);
+          pendingPosition += amt;
+          return amt;
+        }
+        pending = null;
+      }
+      return readSource(b,off,len);
+    }
+
+    /** Read from the response body, and spool what was read.
+    */
+    protected int readSource(byte[] b, int off, int len)
+      throws IOException
+    {
+      int amt;
+      try
+      {
+        amt = dataStream.read(b,off,len);
+      }
+      catch (IOException e)
+      {
+        throw new SpoolException(e);
+      }
+      if (amt == -1)
+        return -1;
+      int i = off;
+      int end = off + amt;
+      while (i < end)
+      {
+        byte x = b[i++];
+        long bytevalue = (long)x;
+        checkSum = (checkSum << 5) ^ (checkSum >> 3) ^ (bytevalue << 2) ^ (bytevalue >> 3);
+      }
+
+      if (fingerprint != null)
+        fingerprint.update(b,off,amt);
+
+      os.write(b,off,amt);
+      // Check if job is alive before continuing
+      try
+      {
+        activities.checkJobStillActive();
+      }
+      catch (ManifoldCFException e)
+      {
+        throw new SpoolException(e);
+      }
+      catch (ServiceInterruption e)
+      {
+        throw new SpoolException(e);
+      }
+      return amt;
+    }
+  }
+
+  /** Carries a problem reading the response body (or checking the job) through the parser, which can
+  * only throw IOException.
+  */
+  protected static class SpoolException extends IOException
+  {
+    public SpoolException(Throwable cause)
+    {
+      super(cause.getMessage(),cause);
+    }
+
+    /** Throw the underlying problem the way the connector expects it.
+    */
+    public void rethrow()
+      throws ManifoldCFException, ServiceInterruption
+    {
+      Throwable e = getCause();
+      if (e instanceof ManifoldCFException)
+        throw (ManifoldCFException)e;
+      if (e instanceof ServiceInterruption)
+        throw (ServiceInterruption)e;
+      if (e instanceof java.net.SocketTimeoutException)
+      {
+        Logging.connectors.warn("Socket timeout exception reading socket stream: "+e.getMessage(),e);
+        long currentTime = System.currentTimeMillis();
+        throw new ServiceInterruption("Socket timeout: "+e.getMessage(),e,currentTime + 300000L,
+          currentTime + 12 * 60 * 60000L,-1,false);
+      }
+      if (e instanceof ConnectTimeoutException)
+      {
+        Logging.connectors.warn("Socket connect timeout exception reading socket stream: "+e.getMessage(),e);
+        long currentTime = System.currentTimeMillis();
+        throw new ServiceInterruption("Socket timeout: "+e.getMessage(),e,currentTime + 300000L,
+          currentTime + 12 * 60 * 60000L,-1,false);
+      }
+      if (e instanceof InterruptedIOException)
+      {
+        //Logging.connectors.warn("IO interruption seen",e);
+        throw new ManifoldCFException("Interrupted: "+e.getMessage(),ManifoldCFException.INTERRUPTED);
+      }
+      Logging.connectors.warn("IO exception reading socket stream: "+e.getMessage(),e);
+      long currentTime = System.currentTimeMillis();
+      throw new ServiceInterruption("Read timeout: "+e.getMessage(),e,currentTime + 300000L,
+        currentTime + 12 * 60 * 60000L,-1,false);
+    }
   }
 
 }
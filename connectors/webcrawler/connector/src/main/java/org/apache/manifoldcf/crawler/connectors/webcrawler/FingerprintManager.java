@@ -0,0 +1,278 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler;
+
+import java.util.*;
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.crawler.interfaces.IJobManager;
+
+/** This class manages the database table that holds content fingerprints (see ContentFingerprint) for the
+* documents a job has indexed, so that near-duplicate pages can be recognized.  Rows are keyed by a
+* job-specific key plus the hash of the document identifier, so the table holds one small row per indexed
+* document.  Each fingerprint is also stored split into bands, which are indexed; a lookup fetches only the
+* rows that share a band with the candidate, and the exact distance is then checked here.
+*
+* <br><br>
+* <b>webfingerprints</b>
+* <table border="1" cellpadding="3" cellspacing="0">
+* <tr class="TableHeadingColor">
+* <th>Field</th><th>Type</th><th>Description&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;</th>
+* <tr><td>jobkey</td><td>VARCHAR(255)</td><td></td></tr>
+* <tr><td>dochash</td><td>VARCHAR(40)</td><td></td></tr>
+* <tr><td>fingerprint</td><td>BIGINT</td><td></td></tr>
+* <tr><td>band0</td><td>BIGINT</td><td></td></tr>
+* <tr><td>band1</td><td>BIGINT</td><td></td></tr>
+* <tr><td>band2</td><td>BIGINT</td><td></td></tr>
+* <tr><td>band3</td><td>BIGINT</td><td></td></tr>
+* </table>
+* <br><br>
+*
+*/
+public class FingerprintManager extends org.apache.manifoldcf.core.database.BaseTable
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  // Database fields
+  protected final static String jobKeyField = "jobkey";
+  protected final static String docHashField = "dochash";
+  protected final static String fingerprintField = "fingerprint";
+  protected final static String[] bandFields = new String[]{"band0","band1","band2","band3"};
+
+  /** Constructor.  Note that one fingerprint manager handle is only useful within a specific thread context,
+  * so the calling connector object logic must recreate the handle whenever the thread context changes.
+  *@param tc is the thread context.
+  *@param database is the database handle.
+  */
+  public FingerprintManager(IThreadContext tc, IDBInterface database)
+    throws ManifoldCFException
+  {
+    super(database,"webfingerprints");
+  }
+
+  /** Install the manager.
+  */
+  public void install()
+    throws ManifoldCFException
+  {
+    // Standard practice: outer loop on install methods, no transactions
+    while (true)
+    {
+      Map existing = getTableSchema(null,null);
+      if (existing == null)
+      {
+        // Install the table.
+        HashMap map = new HashMap();
+        map.put(jobKeyField,new ColumnDescription("VARCHAR(255)",false,false,null,null,false));
+        map.put(docHashField,new ColumnDescription("VARCHAR(40)",false,false,null,null,false));
+        map.put(fingerprintField,new ColumnDescription("BIGINT",false,false,null,null,false));
+        for (String bandField : bandFields)
+        {
+          map.put(bandField,new ColumnDescription("BIGINT",false,false,null,null,false));
+        }
+        performCreate(map,null);
+      }
+      else
+      {
+        // Upgrade code, if needed, goes here
+      }
+
+      // Index management
+      List<IndexDescription> desiredIndexes = new ArrayList<IndexDescription>();
+      desiredIndexes.add(new IndexDescription(true,new String[]{jobKeyField,docHashField}));
+      for (String bandField : bandFields)
+      {
+        desiredIndexes.add(new IndexDescription(false,new String[]{jobKeyField,bandField}));
+      }
+
+      // Get rid of indexes that shouldn't be there
+      Map indexes = getTableIndexes(null,null);
+      Iterator iter = indexes.keySet().iterator();
+      while (iter.hasNext())
+      {
+        String indexName = (String)iter.next();
+        IndexDescription id = (IndexDescription)indexes.get(indexName);
+
+        if (!desiredIndexes.remove(id) && indexName.indexOf("_pkey") == -1)
+          // This index shouldn't be here; drop it
+          performRemoveIndex(indexName);
+      }
+
+      // Add the ones we didn't find
+      for (IndexDescription id : desiredIndexes)
+      {
+        performAddIndex(null,id);
+      }
+
+      break;
+    }
+  }
+
+  /** Uninstall the manager.
+  */
+  public void deinstall()
+    throws ManifoldCFException
+  {
+    performDrop(null);
+  }
+
+  /** Look for a near-duplicate of a document among the documents already recorded for a job.
+  *@param jobKey is the job-specific key.
+  *@param docHash is the hash of the document identifier; the document's own row is never a match.
+  *@param fingerprint is the document's fingerprint.
+  *@param maxDistance is the largest Hamming distance that counts as a near-duplicate.  Values above
+  * ContentFingerprint.MAX_INDEXED_DISTANCE may miss matches.
+  *@return the document hash of a near-duplicate, or null if there is none.
+  */
+  public String findNearDuplicate(String jobKey, String docHash, long fingerprint, int maxDistance)
+    throws ManifoldCFException
+  {
+    StringBuilder sb = new StringBuilder("SELECT ");
+    sb.append(docHashField).append(",").append(fingerprintField).append(" FROM ").append(getTableName())
+      .append(" WHERE ").append(jobKeyField).append("=? AND (");
+    ArrayList params = new ArrayList();
+    params.add(jobKey);
+    for (int band = 0; band < bandFields.length; band++)
+    {
+      if (band > 0)
+        sb.append(" OR ");
+      sb.append(bandFields[band]).append("=?");
+      params.add(new Long(ContentFingerprint.getBand(fingerprint,band)));
+    }
+    sb.append(")");
+    IResultSet set = performQuery(sb.toString(),params,null,null);
+    for (int i = 0; i < set.getRowCount(); i++)
+    {
+      IResultRow row = set.getRow(i);
+      String rowDocHash = (String)row.getValue(docHashField);
+      if (rowDocHash.equals(docHash))
+        continue;
+      long rowFingerprint = ((Long)row.getValue(fingerprintField)).longValue();
+      if (ContentFingerprint.distance(fingerprint,rowFingerprint) <= maxDistance)
+        return rowDocHash;
+    }
+    return null;
+  }
+
+  /** Record (or replace) the fingerprint of a document.
+  *@param jobKey is the job-specific key.
+  *@param docHash is the hash of the document identifier.
+  *@param fingerprint is the fingerprint.
+  */
+  public void recordFingerprint(String jobKey, String docHash, long fingerprint)
+    throws ManifoldCFException
+  {
+    HashMap values = new HashMap();
+    values.put(fingerprintField,new Long(fingerprint));
+    for (int band = 0; band < bandFields.length; band++)
+    {
+      values.put(bandFields[band],new Long(ContentFingerprint.getBand(fingerprint,band)));
+    }
+    beginTransaction();
+    try
+    {
+      ArrayList params = new ArrayList();
+      params.add(jobKey);
+      params.add(docHash);
+      IResultSet set = performQuery("SELECT "+fingerprintField+" FROM "+getTableName()+" WHERE "+
+        jobKeyField+"=? AND "+docHashField+"=? FOR UPDATE",params,null,null);
+      if (set.getRowCount() > 0)
+      {
+        long existing = ((Long)set.getRow(0).getValue(fingerprintField)).longValue();
+        if (existing != fingerprint)
+          performUpdate(values," WHERE "+jobKeyField+"=? AND "+docHashField+"=?",params,null);
+      }
+      else
+      {
+        values.put(jobKeyField,jobKey);
+        values.put(docHashField,docHash);
+        performInsert(values,null);
+      }
+    }
+    catch (ManifoldCFException e)
+    {
+      signalRollback();
+      throw e;
+    }
+    catch (Error e)
+    {
+      signalRollback();
+      throw e;
+    }
+    finally
+    {
+      endTransaction();
+    }
+  }
+
+  /** Remove the fingerprints of jobs that no longer exist.
+  *@param jobManager is used to check whether each job still exists.
+  *@param simpleKey is the string from which the job-specific keys were created.
+  *@return the number of jobs whose fingerprints were removed.
+  */
+  public int removeDeletedJobs(IJobManager jobManager, String simpleKey)
+    throws ManifoldCFException
+  {
+    IResultSet set = performQuery("SELECT DISTINCT "+jobKeyField+" FROM "+getTableName(),null,null,null);
+    int removed = 0;
+    for (int i = 0; i < set.getRowCount(); i++)
+    {
+      String jobKey = (String)set.getRow(i).getValue(jobKeyField);
+      Long jobID = parseJobID(jobKey,simpleKey);
+      if (jobID == null || jobManager.load(jobID,true) != null)
+        continue;
+      ArrayList params = new ArrayList();
+      params.add(jobKey);
+      performDelete("WHERE "+jobKeyField+"=?",params,null);
+      removed++;
+    }
+    return removed;
+  }
+
+  /** Get the job ID back out of a job-specific key.
+  *@return the job ID, or null if the key was not made by ManifoldCF.createJobSpecificString() from simpleKey.
+  */
+  protected static Long parseJobID(String jobKey, String simpleKey)
+  {
+    String suffix = ":"+simpleKey;
+    if (!jobKey.startsWith("J ") || !jobKey.endsWith(suffix))
+      return null;
+    try
+    {
+      return new Long(jobKey.substring(2,jobKey.length()-suffix.length()));
+    }
+    catch (NumberFormatException e)
+    {
+      return null;
+    }
+  }
+
+  /** Forget the fingerprint of a document, e.g. because the document is gone.
+  *@param jobKey is the job-specific key.
+  *@param docHash is the hash of the document identifier.
+  */
+  public void removeFingerprint(String jobKey, String docHash)
+    throws ManifoldCFException
+  {
+    ArrayList params = new ArrayList();
+    params.add(jobKey);
+    params.add(docHash);
+    performDelete("WHERE "+jobKeyField+"=? AND "+docHashField+"=?",params,null);
+  }
+
+}
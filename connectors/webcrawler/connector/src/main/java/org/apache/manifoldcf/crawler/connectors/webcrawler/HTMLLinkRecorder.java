@@ -0,0 +1,191 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import java.util.*;
+
+/** This class is an HTML handler that simply remembers the events that link extraction cares about
+* (meta tags and discovered links), in document order, so that they can be replayed later into a real
+* handler.  It is used to parse a document while it is being fetched, so that link extraction does not
+* need to read the cached copy again.
+*
+* Form events and text characters are not recorded.  Handlers that need them must still parse the
+* cached document.
+*/
+public class HTMLLinkRecorder implements IHTMLHandler
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  // Event types
+  protected static final int EVENT_LINK = 0;
+  protected static final int EVENT_METATAG = 1;
+  protected static final int EVENT_AHREF = 2;
+  protected static final int EVENT_LINKHREF = 3;
+  protected static final int EVENT_IMGSRC = 4;
+  protected static final int EVENT_FRAMESRC = 5;
+
+  /** The recorded events, in order */
+  protected final List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+  /** Set if the parse reached the end of the document */
+  protected boolean finished = false;
+
+  /** Constructor.
+  */
+  public HTMLLinkRecorder()
+  {
+  }
+
+  /** Replay the recorded events into another handler.
+  *@param handler is the handler to receive the events.
+  */
+  public void replay(IHTMLHandler handler)
+    throws ManifoldCFException
+  {
+    for (RecordedEvent event : events)
+    {
+      switch (event.type)
+      {
+      case EVENT_LINK:
+        handler.noteDiscoveredLink((String)event.value);
+        break;
+      case EVENT_METATAG:
+        handler.noteMetaTag((Map)event.value);
+        break;
+      case EVENT_AHREF:
+        handler.noteAHREF((String)event.value);
+        break;
+      case EVENT_LINKHREF:
+        handler.noteLINKHREF((String)event.value);
+        break;
+      case EVENT_IMGSRC:
+        handler.noteIMGSRC((String)event.value);
+        break;
+      case EVENT_FRAMESRC:
+        handler.noteFRAMESRC((String)event.value);
+        break;
+      }
+    }
+    if (finished)
+      handler.finishUp();
+  }
+
+  /** Inform the world of a discovered link.
+  *@param rawURL is the raw discovered url.
+  */
+  @Override
+  public void noteDiscoveredLink(String rawURL)
+    throws ManifoldCFException
+  {
+    events.add(new RecordedEvent(EVENT_LINK,rawURL));
+  }
+
+  /** Note a meta tag */
+  @Override
+  public void noteMetaTag(Map metaAttributes)
+    throws ManifoldCFException
+  {
+    events.add(new RecordedEvent(EVENT_METATAG,metaAttributes));
+  }
+
+  /** Note the start of a form */
+  @Override
+  public void noteFormStart(Map formAttributes)
+    throws ManifoldCFException
+  {
+  }
+
+  /** Note an input tag */
+  @Override
+  public void noteFormInput(Map inputAttributes)
+    throws ManifoldCFException
+  {
+  }
+
+  /** Note the end of a form */
+  @Override
+  public void noteFormEnd()
+    throws ManifoldCFException
+  {
+  }
+
+  /** Note discovered href */
+  @Override
+  public void noteAHREF(String rawURL)
+    throws ManifoldCFException
+  {
+    events.add(new RecordedEvent(EVENT_AHREF,rawURL));
+  }
+
+  /** Note discovered href */
+  @Override
+  public void noteLINKHREF(String rawURL)
+    throws ManifoldCFException
+  {
+    events.add(new RecordedEvent(EVENT_LINKHREF,rawURL));
+  }
+
+  /** Note discovered IMG SRC */
+  @Override
+  public void noteIMGSRC(String rawURL)
+    throws ManifoldCFException
+  {
+    events.add(new RecordedEvent(EVENT_IMGSRC,rawURL));
+  }
+
+  /** Note discovered FRAME SRC */
+  @Override
+  public void noteFRAMESRC(String rawURL)
+    throws ManifoldCFException
+  {
+    events.add(new RecordedEvent(EVENT_FRAMESRC,rawURL));
+  }
+
+  /** Note a character of text.
+  */
+  @Override
+  public void noteTextCharacter(char textCharacter)
+    throws ManifoldCFException
+  {
+  }
+
+  /** Done with the document.
+  */
+  @Override
+  public void finishUp()
+    throws ManifoldCFException
+  {
+    finished = true;
+  }
+
+  /** One recorded event.
+  */
+  protected static class RecordedEvent
+  {
+    public final int type;
+    public final Object value;
+
+    public RecordedEvent(int type, Object value)
+    {
+      this.type = type;
+      this.value = value;
+    }
+  }
+
+}
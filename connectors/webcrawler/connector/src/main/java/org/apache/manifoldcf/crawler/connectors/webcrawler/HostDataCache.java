@@ -0,0 +1,321 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler;
+
+import java.util.*;
+import org.apache.manifoldcf.crawler.system.Logging;
+
+/** This class is a process-wide, in-memory tier that sits in front of the database-backed
+* per-host tables (robots data and DNS data).  Entries are held in parsed form, are bounded
+* in number (least-recently-used entries are evicted first), and are dropped once their
+* expiration time has passed.
+*
+* Writes are recorded in this tier immediately, and are queued for write-behind persistence
+* in the database.  The owning manager is responsible for draining the queue when
+* isFlushNeeded() says so, or when the connector is polled.  Losing queued writes (for example
+* because the process exits) is harmless: the data is simply fetched again.
+*
+* Hit, miss, expiration and eviction counts are kept so that the effectiveness of the tier
+* can be reported in the debug log.
+*
+* All methods synchronize on the cache itself, and never call out while holding that lock.  An owning
+* manager that serializes its flushes with a lock of its own takes that lock first, and the cache's lock
+* only inside it.
+*/
+public class HostDataCache<T>
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** Minimum interval between statistics reports, in milliseconds */
+  protected final static long STATISTICS_INTERVAL = 60000L;
+
+  /** The name of this cache, for logging */
+  protected final String cacheName;
+  /** Maximum number of entries */
+  protected int maxSize;
+  /** Maximum number of queued writes before a flush is needed */
+  protected int maxPendingWrites;
+  /** Maximum age of a queued write before a flush is needed, in milliseconds */
+  protected long maxPendingTime;
+
+  /** The entries, in access order */
+  protected final LinkedHashMap<String,CacheEntry<T>> entries;
+  /** The queued writes, in the order they were first queued.  A later write for the same host replaces the earlier one. */
+  protected final LinkedHashMap<String,PendingWrite> pendingWrites = new LinkedHashMap<String,PendingWrite>();
+  /** Time the oldest currently-pending write was queued, or -1L if none */
+  protected long oldestPendingTime = -1L;
+
+  // Statistics
+  protected long hitCount = 0L;
+  protected long missCount = 0L;
+  protected long expirationCount = 0L;
+  protected long evictionCount = 0L;
+  protected long writeCount = 0L;
+  protected long flushCount = 0L;
+  protected long lastReportTime = 0L;
+
+  /** Constructor.
+  *@param cacheName is the name of the cache, used for logging.
+  *@param maxSize is the initial maximum number of entries.
+  *@param maxPendingWrites is the initial write-behind batch size.
+  *@param maxPendingTime is the initial write-behind maximum delay, in milliseconds.
+  */
+  public HostDataCache(String cacheName, int maxSize, int maxPendingWrites, long maxPendingTime)
+  {
+    this.cacheName = cacheName;
+    this.maxSize = maxSize;
+    this.maxPendingWrites = maxPendingWrites;
+    this.maxPendingTime = maxPendingTime;
+    this.entries = new LinkedHashMap<String,CacheEntry<T>>(16,0.75f,true);
+  }
+
+  /** Set the bounds of this cache.  Since the cache is shared by all connection instances in the process,
+  * the last caller wins.
+  *@param maxSize is the maximum number of entries.
+  *@param maxPendingWrites is the write-behind batch size.
+  *@param maxPendingTime is the write-behind maximum delay, in milliseconds.
+  */
+  public synchronized void setLimits(int maxSize, int maxPendingWrites, long maxPendingTime)
+  {
+    this.maxSize = maxSize;
+    this.maxPendingWrites = maxPendingWrites;
+    this.maxPendingTime = maxPendingTime;
+    evictOverflow();
+  }
+
+  /** Look up an entry.
+  *@param hostName is the key.
+  *@param currentTime is the current time.
+  *@return the cached value, or null if there is none or it has expired.
+  */
+  public synchronized T lookup(String hostName, long currentTime)
+  {
+    CacheEntry<T> entry = entries.get(hostName);
+    if (entry == null)
+    {
+      missCount++;
+      return null;
+    }
+    if (entry.getExpirationTime() <= currentTime)
+    {
+      entries.remove(hostName);
+      expirationCount++;
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    return entry.getValue();
+  }
+
+  /** Record an entry that was read from the backing store.
+  *@param hostName is the key.
+  *@param value is the value.
+  *@param expirationTime is the time the value expires.
+  */
+  public synchronized void put(String hostName, T value, long expirationTime)
+  {
+    if (maxSize <= 0)
+      return;
+    entries.put(hostName,new CacheEntry<T>(value,expirationTime));
+    evictOverflow();
+  }
+
+  /** Record a new value, and queue it for write-behind persistence.
+  *@param hostName is the key.
+  *@param value is the value.
+  *@param expirationTime is the time the value expires.
+  *@param writeData is the data the owning manager needs to persist the value.
+  *@param currentTime is the current time.
+  *@return the queued write this one replaces, or null.  The owning manager releases whatever it holds.
+  */
+  public synchronized PendingWrite write(String hostName, T value, long expirationTime, Object writeData, long currentTime)
+  {
+    put(hostName,value,expirationTime);
+    PendingWrite superseded = pendingWrites.remove(hostName);
+    pendingWrites.put(hostName,new PendingWrite(hostName,writeData,currentTime));
+    if (oldestPendingTime == -1L)
+      oldestPendingTime = currentTime;
+    writeCount++;
+    return superseded;
+  }
+
+  /** Check whether queued writes should be flushed now.
+  *@param currentTime is the current time.
+  *@return true if the owning manager should call drainPendingWrites() and persist the result.
+  */
+  public synchronized boolean isFlushNeeded(long currentTime)
+  {
+    if (pendingWrites.size() == 0)
+      return false;
+    return pendingWrites.size() >= maxPendingWrites ||
+      oldestPendingTime + maxPendingTime <= currentTime;
+  }
+
+  /** Remove and return all queued writes.
+  *@return the writes, in the order they were queued.
+  */
+  public synchronized List<PendingWrite> drainPendingWrites()
+  {
+    List<PendingWrite> rval = new ArrayList<PendingWrite>(pendingWrites.values());
+    pendingWrites.clear();
+    oldestPendingTime = -1L;
+    if (rval.size() > 0)
+      flushCount++;
+    return rval;
+  }
+
+  /** Requeue writes that could not be persisted.  Writes queued since the drain take precedence.
+  *@param writes are the writes to requeue.
+  *@return the writes that were not requeued, because newer ones have been queued since.  The owning
+  *  manager releases whatever they hold.
+  */
+  public synchronized List<PendingWrite> requeuePendingWrites(List<PendingWrite> writes)
+  {
+    List<PendingWrite> superseded = new ArrayList<PendingWrite>();
+    for (PendingWrite pw : writes)
+    {
+      if (pendingWrites.get(pw.getHostName()) == null)
+      {
+        pendingWrites.put(pw.getHostName(),pw);
+        if (oldestPendingTime == -1L || pw.getQueueTime() < oldestPendingTime)
+          oldestPendingTime = pw.getQueueTime();
+      }
+      else
+        superseded.add(pw);
+    }
+    return superseded;
+  }
+
+  /** Log statistics, if debugging is enabled and enough time has passed since the last report.
+  *@param currentTime is the current time.
+  */
+  public synchronized void reportStatistics(long currentTime)
+  {
+    if (!Logging.connectors.isDebugEnabled())
+      return;
+    if (lastReportTime + STATISTICS_INTERVAL > currentTime)
+      return;
+    lastReportTime = currentTime;
+    Logging.connectors.debug("Web: "+cacheName+" cache: size="+entries.size()+
+      " hits="+hitCount+" misses="+missCount+" expirations="+expirationCount+
+      " evictions="+evictionCount+" writes="+writeCount+" flushes="+flushCount+
+      " pending="+pendingWrites.size());
+  }
+
+  /** Get the hit count. */
+  public synchronized long getHitCount()
+  {
+    return hitCount;
+  }
+
+  /** Get the miss count. */
+  public synchronized long getMissCount()
+  {
+    return missCount;
+  }
+
+  /** Get the eviction count. */
+  public synchronized long getEvictionCount()
+  {
+    return evictionCount;
+  }
+
+  /** Get the current number of entries. */
+  public synchronized int size()
+  {
+    return entries.size();
+  }
+
+  /** Get the current number of queued writes. */
+  public synchronized int getPendingWriteCount()
+  {
+    return pendingWrites.size();
+  }
+
+  /** Evict least-recently-used entries until the cache is within bounds.
+  */
+  protected void evictOverflow()
+  {
+    if (entries.size() <= maxSize)
+      return;
+    Iterator<String> iter = entries.keySet().iterator();
+    while (entries.size() > maxSize && iter.hasNext())
+    {
+      iter.next();
+      iter.remove();
+      evictionCount++;
+    }
+  }
+
+  /** A cached value, plus its expiration time.
+  */
+  protected static class CacheEntry<T>
+  {
+    protected final T value;
+    protected final long expirationTime;
+
+    public CacheEntry(T value, long expirationTime)
+    {
+      this.value = value;
+      this.expirationTime = expirationTime;
+    }
+
+    public T getValue()
+    {
+      return value;
+    }
+
+    public long getExpirationTime()
+    {
+      return expirationTime;
+    }
+  }
+
+  /** A write that has not yet been persisted.
+  */
+  public static class PendingWrite
+  {
+    protected final String hostName;
+    protected final Object writeData;
+    protected final long queueTime;
+
+    public PendingWrite(String hostName, Object writeData, long queueTime)
+    {
+      this.hostName = hostName;
+      this.writeData = writeData;
+      this.queueTime = queueTime;
+    }
+
+    public String getHostName()
+    {
+      return hostName;
+    }
+
+    public Object getWriteData()
+    {
+      return writeData;
+    }
+
+    public long getQueueTime()
+    {
+      return queueTime;
+    }
+  }
+
+}
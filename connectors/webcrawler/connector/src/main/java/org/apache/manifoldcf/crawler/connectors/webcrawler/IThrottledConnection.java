@@ -76,6 +76,24 @@ public interface IThrottledConnection
     LoginCookies loginCookies)
     throws ManifoldCFException, ServiceInterruption;
 
+  /** Execute a conditional fetch and get the return code.  This is the same as the above, except that the
+  * request carries the validators from an earlier fetch of the same page, so that the server can answer
+  * 304 (not modified) instead of sending the page again.
+  * @param urlPath is the path part of the url, e.g. "/robots.txt"
+  * @param userAgent is the value of the userAgent header to use.
+  * @param from is the value of the from header to use.
+  * @param redirectOK should be set to true if you want redirects to be automatically followed.
+  * @param host is the value to use as the "Host" header, or null to use the default.
+  * @param formData describes additional form arguments and how to fetch the page.
+  * @param loginCookies describes the cookies that should be in effect for this page fetch.
+  * @param ifNoneMatch is the ETag value to send as "If-None-Match", or null.
+  * @param ifModifiedSince is the Last-Modified value to send as "If-Modified-Since", or null.
+  */
+  public void executeFetch(String urlPath, String userAgent, String from,
+    boolean redirectOK, String host, FormData formData,
+    LoginCookies loginCookies, String ifNoneMatch, String ifModifiedSince)
+    throws ManifoldCFException, ServiceInterruption;
+
   /** Get the http response code.
   *@return the response code.  This is either an HTTP response code, or one of the codes above.
   */
@@ -0,0 +1,230 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler;
+
+import java.util.*;
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.crawler.interfaces.IJobManager;
+
+/** This class manages the database table that holds the links of pages that can be fetched conditionally.
+* When such a page turns out to be unchanged, its links must still be noted again, and they are read from
+* here.  The document's version string carries only a hash of the links, which is also stored in each row,
+* so a row that does not belong to the indexed version is never used.
+*
+* <br><br>
+* <b>weblinks</b>
+* <table border="1" cellpadding="3" cellspacing="0">
+* <tr class="TableHeadingColor">
+* <th>Field</th><th>Type</th><th>Description&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;</th>
+* <tr><td>jobkey</td><td>VARCHAR(255)</td><td></td></tr>
+* <tr><td>dochash</td><td>VARCHAR(40)</td><td></td></tr>
+* <tr><td>linkhash</td><td>VARCHAR(40)</td><td></td></tr>
+* <tr><td>linkdata</td><td>LONGTEXT</td><td></td></tr>
+* </table>
+* <br><br>
+*
+*/
+public class PageLinkManager extends org.apache.manifoldcf.core.database.BaseTable
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  // Database fields
+  protected final static String jobKeyField = "jobkey";
+  protected final static String docHashField = "dochash";
+  protected final static String linkHashField = "linkhash";
+  protected final static String linkDataField = "linkdata";
+
+  /** Constructor.  Note that one link manager handle is only useful within a specific thread context,
+  * so the calling connector object logic must recreate the handle whenever the thread context changes.
+  *@param tc is the thread context.
+  *@param database is the database handle.
+  */
+  public PageLinkManager(IThreadContext tc, IDBInterface database)
+    throws ManifoldCFException
+  {
+    super(database,"weblinks");
+  }
+
+  /** Install the manager.
+  */
+  public void install()
+    throws ManifoldCFException
+  {
+    // Standard practice: outer loop on install methods, no transactions
+    while (true)
+    {
+      Map existing = getTableSchema(null,null);
+      if (existing == null)
+      {
+        // Install the table.
+        HashMap map = new HashMap();
+        map.put(jobKeyField,new ColumnDescription("VARCHAR(255)",false,false,null,null,false));
+        map.put(docHashField,new ColumnDescription("VARCHAR(40)",false,false,null,null,false));
+        map.put(linkHashField,new ColumnDescription("VARCHAR(40)",false,false,null,null,false));
+        map.put(linkDataField,new ColumnDescription("LONGTEXT",false,false,null,null,false));
+        performCreate(map,null);
+      }
+      else
+      {
+        // Upgrade code, if needed, goes here
+      }
+
+      // Index management
+      List<IndexDescription> desiredIndexes = new ArrayList<IndexDescription>();
+      desiredIndexes.add(new IndexDescription(true,new String[]{jobKeyField,docHashField}));
+
+      // Get rid of indexes that shouldn't be there
+      Map indexes = getTableIndexes(null,null);
+      Iterator iter = indexes.keySet().iterator();
+      while (iter.hasNext())
+      {
+        String indexName = (String)iter.next();
+        IndexDescription id = (IndexDescription)indexes.get(indexName);
+
+        if (!desiredIndexes.remove(id) && indexName.indexOf("_pkey") == -1)
+          // This index shouldn't be here; drop it
+          performRemoveIndex(indexName);
+      }
+
+      // Add the ones we didn't find
+      for (IndexDescription id : desiredIndexes)
+      {
+        performAddIndex(null,id);
+      }
+
+      break;
+    }
+  }
+
+  /** Uninstall the manager.
+  */
+  public void deinstall()
+    throws ManifoldCFException
+  {
+    performDrop(null);
+  }
+
+  /** Read the links saved for a document.
+  *@param jobKey is the job-specific key.
+  *@param docHash is the hash of the document identifier.
+  *@param linkHash is the link hash from the document's indexed version string.
+  *@return the saved link data, or null if there is none for that link hash.
+  */
+  public String readLinks(String jobKey, String docHash, String linkHash)
+    throws ManifoldCFException
+  {
+    ArrayList params = new ArrayList();
+    params.add(jobKey);
+    params.add(docHash);
+    IResultSet set = performQuery("SELECT "+linkHashField+","+linkDataField+" FROM "+getTableName()+" WHERE "+
+      jobKeyField+"=? AND "+docHashField+"=?",params,null,null);
+    if (set.getRowCount() == 0)
+      return null;
+    IResultRow row = set.getRow(0);
+    if (!linkHash.equals(row.getValue(linkHashField)))
+      return null;
+    return (String)row.getValue(linkDataField);
+  }
+
+  /** Save (or replace) the links of a document.
+  *@param jobKey is the job-specific key.
+  *@param docHash is the hash of the document identifier.
+  *@param linkHash is the hash of the link data, as it appears in the document's version string.
+  *@param linkData is the link data.
+  */
+  public void writeLinks(String jobKey, String docHash, String linkHash, String linkData)
+    throws ManifoldCFException
+  {
+    HashMap values = new HashMap();
+    values.put(linkHashField,linkHash);
+    values.put(linkDataField,linkData);
+    beginTransaction();
+    try
+    {
+      ArrayList params = new ArrayList();
+      params.add(jobKey);
+      params.add(docHash);
+      IResultSet set = performQuery("SELECT "+linkHashField+" FROM "+getTableName()+" WHERE "+
+        jobKeyField+"=? AND "+docHashField+"=? FOR UPDATE",params,null,null);
+      if (set.getRowCount() > 0)
+      {
+        if (!linkHash.equals(set.getRow(0).getValue(linkHashField)))
+          performUpdate(values," WHERE "+jobKeyField+"=? AND "+docHashField+"=?",params,null);
+      }
+      else
+      {
+        values.put(jobKeyField,jobKey);
+        values.put(docHashField,docHash);
+        performInsert(values,null);
+      }
+    }
+    catch (ManifoldCFException e)
+    {
+      signalRollback();
+      throw e;
+    }
+    catch (Error e)
+    {
+      signalRollback();
+      throw e;
+    }
+    finally
+    {
+      endTransaction();
+    }
+  }
+
+  /** Forget the links of a document, e.g. because the document is gone or can no longer be fetched conditionally.
+  *@param jobKey is the job-specific key.
+  *@param docHash is the hash of the document identifier.
+  */
+  public void removeLinks(String jobKey, String docHash)
+    throws ManifoldCFException
+  {
+    ArrayList params = new ArrayList();
+    params.add(jobKey);
+    params.add(docHash);
+    performDelete("WHERE "+jobKeyField+"=? AND "+docHashField+"=?",params,null);
+  }
+
+  /** Remove the links of jobs that no longer exist.
+  *@param jobManager is used to check whether each job still exists.
+  *@param simpleKey is the string from which the job-specific keys were created.
+  *@return the number of jobs whose links were removed.
+  */
+  public int removeDeletedJobs(IJobManager jobManager, String simpleKey)
+    throws ManifoldCFException
+  {
+    IResultSet set = performQuery("SELECT DISTINCT "+jobKeyField+" FROM "+getTableName(),null,null,null);
+    int removed = 0;
+    for (int i = 0; i < set.getRowCount(); i++)
+    {
+      String jobKey = (String)set.getRow(i).getValue(jobKeyField);
+      Long jobID = FingerprintManager.parseJobID(jobKey,simpleKey);
+      if (jobID == null || jobManager.load(jobID,true) != null)
+        continue;
+      ArrayList params = new ArrayList();
+      params.add(jobKey);
+      performDelete("WHERE "+jobKeyField+"=?",params,null);
+      removed++;
+    }
+    return removed;
+  }
+
+}
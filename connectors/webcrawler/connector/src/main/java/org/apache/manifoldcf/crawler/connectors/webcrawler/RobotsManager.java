@@ -32,6 +32,9 @@ import org.apache.manifoldcf.crawler.system.Logging;
 /** This class manages the database table into which we write robots.txt files for hosts.  The data resides in the database,
 * as well as in cache (up to a certain point).  The result is that there is a memory limited, database-backed repository
 * of robots files that we can draw on.
+* In front of both of these sits a process-wide in-memory tier (see HostDataCache) that holds parsed robots data, so that
+* the common case neither queries the database nor re-parses the robots file.  Writes go to that tier immediately and are
+* persisted to the database in batches.
 * 
 * <br><br>
 * <b>robotsdata</b>
@@ -52,6 +55,17 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
   // Robots cache class.  Only one needed.
   protected static RobotsCacheClass robotsCacheClass = new RobotsCacheClass();
 
+  // Properties controlling the in-memory tier
+  public final static String PROPERTY_ROBOTS_CACHE_SIZE = "org.apache.manifoldcf.crawler.connectors.webcrawler.robotscachesize";
+  public final static String PROPERTY_WRITEBEHIND_BATCH_SIZE = "org.apache.manifoldcf.crawler.connectors.webcrawler.writebehindbatchsize";
+  public final static String PROPERTY_WRITEBEHIND_MAX_DELAY = "org.apache.manifoldcf.crawler.connectors.webcrawler.writebehindmaxdelay";
+
+  // In-memory tier, shared by all connection instances in this process.
+  protected final static HostDataCache<RobotsData> robotsTier = new HostDataCache<RobotsData>("Robots",20000,100,10000L);
+  // Lock object which serializes this process's write-behind flushes, so that a failed flush can requeue its writes
+  // before a later flush runs.  Other processes flush independently; the last one to write a host's row wins.
+  protected final static Object flushLock = new Object();
+
   // Database fields
   protected final static String hostField = "hostname";
   protected final static String robotsField = "robotsdata";
@@ -70,6 +84,9 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
   {
     super(database,"robotsdata");
     cacheManager = CacheManagerFactory.make(tc);
+    robotsTier.setLimits(LockManagerFactory.getIntProperty(tc,PROPERTY_ROBOTS_CACHE_SIZE,20000),
+      LockManagerFactory.getIntProperty(tc,PROPERTY_WRITEBEHIND_BATCH_SIZE,100),
+      LockManagerFactory.getLongProperty(tc,PROPERTY_WRITEBEHIND_MAX_DELAY,10000L));
   }
 
   /** Install the manager.
@@ -119,6 +136,11 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
     IProcessActivity activities)
     throws ManifoldCFException
   {
+    // The in-memory tier holds parsed data, so look there first
+    RobotsData rd = robotsTier.lookup(hostName,currentTime);
+    if (rd != null)
+      return new Boolean(rd.isFetchAllowed(userAgent,pathString));
+
     // Build description objects
     HostDescription[] objectDescriptions = new HostDescription[1];
     StringSetBuffer ssb = new StringSetBuffer();
@@ -130,56 +152,147 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
 
     // We do the expiration check here, rather than in the query, so that caching
     // is possible.
-    RobotsData rd = exec.getResults();
+    rd = exec.getResults();
     if (rd == null || rd.getExpirationTime() <= currentTime)
       return null;
+    robotsTier.put(hostName,rd,rd.getExpirationTime());
     return new Boolean(rd.isFetchAllowed(userAgent,pathString));
   }
 
   /** Write robots.txt, replacing any existing row.
+  * The parsed data is available immediately to all callers in this process; it is persisted to the
+  * database in a later batch (see flushPendingWrites()).
   *@param hostName is the host.
   *@param expirationTime is the time this data should expire.
   *@param data is the robots data stream.  May be null.
+  *@param activities is the activities object, used to log the parse of the robots data.
   */
-  public void writeRobotsData(String hostName, long expirationTime, InputStream data)
+  public void writeRobotsData(String hostName, long expirationTime, InputStream data, IProcessActivity activities)
     throws ManifoldCFException, IOException
   {
+    // Spool the file, so that it can be both parsed now and written to the database later
     TempFileInput tfi = null;
+    if (data != null)
+    {
+      try
+      {
+        tfi = new TempFileInput(data);
+      }
+      catch (ManifoldCFException e)
+      {
+        if (e.getErrorCode() == ManifoldCFException.INTERRUPTED)
+          throw e;
+        throw new IOException("Fetch failed: "+e.getMessage());
+      }
+    }
+
     try
     {
-      if (data != null)
+      RobotsData rd;
+      if (tfi == null)
+        rd = new RobotsData(null,expirationTime,hostName,activities);
+      else
       {
         try
         {
-          tfi = new TempFileInput(data);
+          rd = new RobotsData(tfi.getStream(),expirationTime,hostName,activities);
         }
-        catch (ManifoldCFException e)
+        finally
         {
-          if (e.getErrorCode() == ManifoldCFException.INTERRUPTED)
-            throw e;
-          throw new IOException("Fetch failed: "+e.getMessage());
+          tfi.doneWithStream();
         }
       }
 
-      StringSetBuffer ssb = new StringSetBuffer();
-      ssb.add(getRobotsKey(hostName));
-      StringSet cacheKeys = new StringSet(ssb);
-      ICacheHandle ch = cacheManager.enterCache(null,cacheKeys,getTransactionID());
+      long currentTime = System.currentTimeMillis();
+      HostDataCache.PendingWrite superseded = robotsTier.write(hostName,rd,expirationTime,new RobotsWrite(expirationTime,tfi),currentTime);
+      // The spooled file now belongs to the queued write
+      tfi = null;
+      if (superseded != null)
+        ((RobotsWrite)superseded.getWriteData()).discard();
+      if (robotsTier.isFlushNeeded(currentTime))
+        flushPendingWrites();
+    }
+    finally
+    {
+      if (tfi != null)
+        tfi.discard();
+    }
+  }
+
+  /** Persist all robots data that has been written but not yet saved to the database.
+  * This is called periodically, and also whenever enough writes have accumulated.
+  */
+  public void flushPendingWrites()
+    throws ManifoldCFException
+  {
+    synchronized (flushLock)
+    {
+      List<HostDataCache.PendingWrite> writes = robotsTier.drainPendingWrites();
+      if (writes.size() == 0)
+        return;
       try
       {
+        persistRobotsData(writes);
+      }
+      catch (ManifoldCFException e)
+      {
+        discardWrites(robotsTier.requeuePendingWrites(writes));
+        throw e;
+      }
+      catch (Error e)
+      {
+        discardWrites(robotsTier.requeuePendingWrites(writes));
+        throw e;
+      }
+      discardWrites(writes);
+    }
+    robotsTier.reportStatistics(System.currentTimeMillis());
+  }
 
-        beginTransaction();
-        try
+  /** Release the spooled files held by writes that are no longer queued.
+  *@param writes is the list of writes.
+  */
+  protected static void discardWrites(List<HostDataCache.PendingWrite> writes)
+    throws ManifoldCFException
+  {
+    for (HostDataCache.PendingWrite pw : writes)
+    {
+      ((RobotsWrite)pw.getWriteData()).discard();
+    }
+  }
+
+  /** Write a batch of robots rows, replacing any existing rows, in a single transaction.
+  *@param writes is the list of pending writes.
+  */
+  protected void persistRobotsData(List<HostDataCache.PendingWrite> writes)
+    throws ManifoldCFException
+  {
+    StringSetBuffer ssb = new StringSetBuffer();
+    for (HostDataCache.PendingWrite pw : writes)
+    {
+      ssb.add(getRobotsKey(pw.getHostName()));
+    }
+    StringSet cacheKeys = new StringSet(ssb);
+    ICacheHandle ch = cacheManager.enterCache(null,cacheKeys,getTransactionID());
+    try
+    {
+      beginTransaction();
+      try
+      {
+        for (HostDataCache.PendingWrite pw : writes)
         {
+          String hostName = pw.getHostName();
+          RobotsWrite rw = (RobotsWrite)pw.getWriteData();
+
           // See whether the instance exists
           ArrayList params = new ArrayList();
           params.add(hostName);
-          IResultSet set = performQuery("SELECT * FROM "+getTableName()+" WHERE "+
+          IResultSet set = performQuery("SELECT "+hostField+" FROM "+getTableName()+" WHERE "+
             hostField+"=?",params,null,null);
           HashMap values = new HashMap();
-          values.put(expirationField,new Long(expirationTime));
-          if (tfi != null)
-            values.put(robotsField,tfi);
+          values.put(expirationField,new Long(rw.getExpirationTime()));
+          // A null robots field must be written explicitly, or an update would keep the old file
+          values.put(robotsField,rw.getData());
           if (set.getRowCount() > 0)
           {
             // Update
@@ -194,32 +307,27 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
             // We only need the general key because this is new.
             performInsert(values,null);
           }
-          cacheManager.invalidateKeys(ch);
-        }
-        catch (ManifoldCFException e)
-        {
-          signalRollback();
-          throw e;
-        }
-        catch (Error e)
-        {
-          signalRollback();
-          throw e;
-        }
-        finally
-        {
-          endTransaction();
         }
+        cacheManager.invalidateKeys(ch);
+      }
+      catch (ManifoldCFException e)
+      {
+        signalRollback();
+        throw e;
+      }
+      catch (Error e)
+      {
+        signalRollback();
+        throw e;
       }
       finally
       {
-        cacheManager.leaveCache(ch);
+        endTransaction();
       }
     }
     finally
     {
-      if (tfi != null)
-        tfi.discard();
+      cacheManager.leaveCache(ch);
     }
   }
 
@@ -295,6 +403,38 @@ public class RobotsManager extends org.apache.manifoldcf.core.database.BaseTable
     return sb.toString();
   }
 
+  /** This is the data needed to persist a robots row that has been written to the in-memory tier.
+  * It holds the spooled robots file until the row is written or the write is superseded.
+  */
+  protected static class RobotsWrite
+  {
+    protected final long expirationTime;
+    protected final TempFileInput data;
+
+    public RobotsWrite(long expirationTime, TempFileInput data)
+    {
+      this.expirationTime = expirationTime;
+      this.data = data;
+    }
+
+    public long getExpirationTime()
+    {
+      return expirationTime;
+    }
+
+    public TempFileInput getData()
+    {
+      return data;
+    }
+
+    public void discard()
+      throws ManifoldCFException
+    {
+      if (data != null)
+        data.discard();
+    }
+  }
+
   /** This is a cached data item.
   */
   protected static class RobotsData
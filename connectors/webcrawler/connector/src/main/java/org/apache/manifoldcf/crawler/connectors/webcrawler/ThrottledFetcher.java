@@ -20,7 +20,7 @@ package org.apache.manifoldcf.crawler.connectors.webcrawler;
 
 import org.apache.manifoldcf.core.interfaces.*;
 import org.apache.manifoldcf.connectorcommon.interfaces.*;
-import org.apache.manifoldcf.connectorcommon.common.DeflateInputStream;
+import org.apache.manifoldcf.connectorcommon.common.HttpFetchSupport;
 import org.apache.manifoldcf.connectorcommon.common.XThreadInputStream;
 import org.apache.manifoldcf.connectorcommon.common.InterruptibleSocketFactory;
 import org.apache.manifoldcf.agents.interfaces.*;
@@ -32,7 +32,6 @@ import org.apache.manifoldcf.crawler.system.ManifoldCF;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.io.*;
-import java.util.zip.GZIPInputStream;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.http.conn.HttpClientConnectionManager;
@@ -64,8 +63,6 @@ import org.apache.http.util.EntityUtils;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpHost;
 import org.apache.http.Header;
-import org.apache.http.HeaderElement;
-import org.apache.http.message.BasicHeader;
 import org.apache.http.impl.cookie.BasicClientCookie;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.protocol.HTTP;
@@ -422,6 +419,20 @@ public class ThrottledFetcher
       boolean redirectOK, String host, FormData formData,
       LoginCookies loginCookies)
       throws ManifoldCFException, ServiceInterruption
+    {
+      executeFetch(urlPath,userAgent,from,redirectOK,host,formData,loginCookies,null,null);
+    }
+
+    /** Execute a conditional fetch and get the return code.  The validators, if any, are sent as
+    * "If-None-Match" and "If-Modified-Since" headers.
+    * @param ifNoneMatch is the ETag value to send, or null.
+    * @param ifModifiedSince is the Last-Modified value to send, or null.
+    */
+    @Override
+    public void executeFetch(String urlPath, String userAgent, String from,
+      boolean redirectOK, String host, FormData formData,
+      LoginCookies loginCookies, String ifNoneMatch, String ifModifiedSince)
+      throws ManifoldCFException, ServiceInterruption
     {
       // Set up scheme
       SSLConnectionSocketFactory myFactory = new SSLConnectionSocketFactory(new InterruptibleSocketFactory(httpsSocketFactory,connectionTimeoutMilliseconds),
@@ -668,10 +679,8 @@ public class ThrottledFetcher
       }
 
       // Set all appropriate headers and parameters
-      fetchMethod.setHeader(new BasicHeader("User-Agent",userAgent));
-      fetchMethod.setHeader(new BasicHeader("From",from));
-      fetchMethod.setHeader(new BasicHeader("Accept","*/*"));
-      fetchMethod.setHeader(new BasicHeader("Accept-Encoding","gzip,deflate"));
+      HttpFetchSupport.setFetchHeaders(fetchMethod,userAgent,from);
+      HttpFetchSupport.setConditionalHeaders(fetchMethod,ifNoneMatch,ifModifiedSince);
 
       // Use a custom cookie store
       CookieStore cookieStore = new OurBasicCookieStore();
@@ -914,11 +923,9 @@ public class ThrottledFetcher
       try
       {
         InputStream bodyStream = methodThread.getSafeInputStream();
-        if (methodThread.isGZipStream())
-          bodyStream = new GZIPInputStream(bodyStream);
-        else if (methodThread.isDeflateStream())
-          bodyStream = new DeflateInputStream(bodyStream);
-        return bodyStream;
+        if (bodyStream == null)
+          return null;
+        return HttpFetchSupport.decodeContent(bodyStream,methodThread.getContentEncoding());
       }
       catch (InterruptedException e)
       {
@@ -1367,8 +1374,7 @@ public class ThrottledFetcher
     protected boolean streamCreated = false;
     protected Throwable streamException = null;
     protected boolean abortThread = false;
-    protected boolean gzip = false;
-    protected boolean deflate = false;
+    protected Header contentEncoding = null;
 
     protected Throwable shutdownException = null;
 
@@ -1453,26 +1459,7 @@ public class ThrottledFetcher
               {
                 try
                 {
-                  Header ceheader = response.getEntity().getContentEncoding();
-                  if (ceheader != null)
-                  {
-                    HeaderElement[] codecs = ceheader.getElements();
-                    for (int i = 0; i < codecs.length; i++)
-                    {
-                      if (codecs[i].getName().equalsIgnoreCase("gzip"))
-                      {
-                        // GZIP
-                        gzip = true;
-                        break;
-                      }
-                      else if (codecs[i].getName().equalsIgnoreCase("deflate"))
-                      {
-                        // Deflate
-                        deflate = true;
-                        break;
-                      }
-                    }
-                  }
+                  contentEncoding = response.getEntity().getContentEncoding();
                   bodyStream = response.getEntity().getContent();
                   if (bodyStream != null)
                   {
@@ -1635,27 +1622,7 @@ public class ThrottledFetcher
       }
     }
 
-    public boolean isGZipStream()
-      throws InterruptedException, IOException, HttpException
-    {
-      // Must wait until stream is created, or until we note an exception was thrown.
-      while (true)
-      {
-        synchronized (this)
-        {
-          if (responseException != null)
-            throw new IllegalStateException("Check for response before getting stream");
-          if (cookieException != null)
-            throw new IllegalStateException("Check for cookies before getting stream");
-          checkException(streamException);
-          if (streamCreated)
-            return gzip;
-          wait();
-        }
-      }
-    }    
-
-    public boolean isDeflateStream()
+    public Header getContentEncoding()
       throws InterruptedException, IOException, HttpException
     {
       // Must wait until stream is created, or until we note an exception was thrown.
@@ -1669,7 +1636,7 @@ public class ThrottledFetcher
             throw new IllegalStateException("Check for cookies before getting stream");
           checkException(streamException);
           if (streamCreated)
-            return deflate;
+            return contentEncoding;
           wait();
         }
       }
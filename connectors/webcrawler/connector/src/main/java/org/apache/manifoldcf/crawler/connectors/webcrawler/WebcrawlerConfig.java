@@ -153,6 +153,11 @@ public class WebcrawlerConfig
   /** Exclude header node.  The value of this node lists a single header (in lower case) that 
   * should be excluded from the document metadata */
   public static final String NODE_EXCLUDEHEADER = "excludeheader";
+  /** Near-duplicate detection node.  When present, documents whose content fingerprint is within
+  * the "maxdistance" attribute's number of bits of an already-seen document are skipped. */
+  public static final String NODE_NEARDUPLICATES = "nearduplicates";
+  /** maxdistance attribute */
+  public static final String ATTR_MAXDISTANCE = "maxdistance";
   
   /** regexp attribute */
   public static final String ATTR_REGEXP = "regexp";
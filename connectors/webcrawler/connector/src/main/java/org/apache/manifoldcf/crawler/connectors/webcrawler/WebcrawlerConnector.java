@@ -134,6 +134,18 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
   public final static String ACTIVITY_LOGON_START = "begin logon";
   public final static String ACTIVITY_LOGON_END = "end logon";
 
+  // Job-specific key under which a job's content fingerprints are stored
+  protected final static String FINGERPRINT_KEY = "webcrawler:fingerprints";
+  // Job-specific key under which the links of conditionally-fetched pages are stored
+  protected final static String LINKS_KEY = "webcrawler:links";
+
+  /** How often fingerprints and links of deleted jobs are looked for */
+  protected final static long JOBDATA_CLEANUP_INTERVAL = 60L * 60000L;
+  /** Lock protecting nextJobDataCleanupTime */
+  protected final static Object jobDataCleanupLock = new Object();
+  /** When this process next looks for fingerprints and links of deleted jobs */
+  protected static long nextJobDataCleanupTime = 0L;
+
   // Fetch types
   protected final static String FETCH_ROBOTS = "ROBOTS";
   protected final static String FETCH_STANDARD = "URL";
@@ -188,6 +200,10 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
   protected DNSManager dnsManager = null;
   /** The cookie manager used by this instance */
   protected CookieManager cookieManager = null;
+  /** The content fingerprint manager used by this instance */
+  protected FingerprintManager fingerprintManager = null;
+  /** The page link manager used by this instance */
+  protected PageLinkManager pageLinkManager = null;
 
   /** This flag is set when the instance has been initialized */
   protected boolean isInitialized = false;
@@ -248,12 +264,16 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     RobotsManager rm = new RobotsManager(threadContext,mainDatabase);
     DNSManager dns = new DNSManager(threadContext,mainDatabase);
     CookieManager cm = new CookieManager(threadContext,mainDatabase);
+    FingerprintManager fm = new FingerprintManager(threadContext,mainDatabase);
+    PageLinkManager lm = new PageLinkManager(threadContext,mainDatabase);
     mainDatabase.beginTransaction();
     try
     {
       rm.install();
       dns.install();
       cm.install();
+      fm.install();
+      lm.install();
     }
     catch (ManifoldCFException e)
     {
@@ -290,9 +310,13 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     RobotsManager rm = new RobotsManager(threadContext,mainDatabase);
     DNSManager dns = new DNSManager(threadContext,mainDatabase);
     CookieManager cm = new CookieManager(threadContext,mainDatabase);
+    FingerprintManager fm = new FingerprintManager(threadContext,mainDatabase);
+    PageLinkManager lm = new PageLinkManager(threadContext,mainDatabase);
     mainDatabase.beginTransaction();
     try
     {
+      lm.deinstall();
+      fm.deinstall();
       cm.deinstall();
       rm.deinstall();
       dns.deinstall();
@@ -342,6 +366,8 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     robotsManager = null;
     dnsManager = null;
     cookieManager = null;
+    fingerprintManager = null;
+    pageLinkManager = null;
   }
 
   /** Start a session */
@@ -349,7 +375,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     throws ManifoldCFException
   {
     // Handle the stuff that requires a thread context
-    if (robotsManager == null || dnsManager == null || cookieManager == null)
+    if (robotsManager == null || dnsManager == null || cookieManager == null || fingerprintManager == null || pageLinkManager == null)
     {
       IDBInterface databaseHandle = DBInterfaceFactory.make(currentContext,
         ManifoldCF.getMasterDatabaseName(),
@@ -359,6 +385,8 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
       robotsManager = new RobotsManager(currentContext,databaseHandle);
       dnsManager = new DNSManager(currentContext,databaseHandle);
       cookieManager = new CookieManager(currentContext,databaseHandle);
+      fingerprintManager = new FingerprintManager(currentContext,databaseHandle);
+      pageLinkManager = new PageLinkManager(currentContext,databaseHandle);
     }
 
     // Handle everything else
@@ -422,6 +450,25 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     throws ManifoldCFException
   {
     ThrottledFetcher.flushIdleConnections(currentContext);
+    // Persist any robots and DNS data that is still only in memory
+    getSession();
+    robotsManager.flushPendingWrites();
+    dnsManager.flushPendingWrites();
+    // Repository connectors are not told when a job is deleted, so its fingerprints and links are removed here instead
+    long currentTime = System.currentTimeMillis();
+    synchronized (jobDataCleanupLock)
+    {
+      if (currentTime < nextJobDataCleanupTime)
+        return;
+      nextJobDataCleanupTime = currentTime + JOBDATA_CLEANUP_INTERVAL;
+    }
+    IJobManager jobManager = JobManagerFactory.make(currentContext);
+    int removed = fingerprintManager.removeDeletedJobs(jobManager,FINGERPRINT_KEY);
+    if (removed > 0)
+      Logging.connectors.info("WEB: Removed content fingerprints of "+removed+" deleted job(s)");
+    removed = pageLinkManager.removeDeletedJobs(jobManager,LINKS_KEY);
+    if (removed > 0)
+      Logging.connectors.info("WEB: Removed saved page links of "+removed+" deleted job(s)");
   }
 
   /** Check status of connection.
@@ -554,11 +601,16 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
   /** We're in 'login mode' */
   protected static final int SESSIONSTATE_LOGIN = 1;
 
+  /** First character of a version string that starts with a conditional-fetch part.  Older version strings,
+  * which carried the links themselves, started with 'V' and are simply fetched in full once more. */
+  protected static final char CONDITIONAL_VERSION_MARKER = 'W';
+
   // Result signals
   protected static final int RESULT_NO_DOCUMENT = 0;
   protected static final int RESULT_NO_VERSION = 1;
   protected static final int RESULT_VERSION_NEEDED = 2;
   protected static final int RESULT_RETRY_DOCUMENT = 3;
+  protected static final int RESULT_NOT_MODIFIED = 4;
 
 
   /** Process a set of documents.
@@ -586,8 +638,28 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     // Sort it,
     java.util.Arrays.sort(acls);
 
+    // The part of the version string that describes the forced acls
+    StringBuilder aclSb = new StringBuilder();
+    packList(aclSb,acls,'+');
+    if (acls.length > 0)
+    {
+      aclSb.append('+');
+      pack(aclSb,defaultAuthorityDenyToken,'+');
+    }
+    else
+      aclSb.append('-');
+    String aclVersion = aclSb.toString();
+
     // Get the excluded headers
     Set<String> excludedHeaders = findExcludedHeaders(spec);
+    String[] sortedExcludedHeaders = excludedHeaders.toArray(new String[0]);
+    java.util.Arrays.sort(sortedExcludedHeaders);
+
+    // Near-duplicate detection, if enabled for this job
+    int nearDuplicateDistance = findNearDuplicateDistance(spec);
+    String fingerprintJobKey = (nearDuplicateDistance >= 0)?activities.createJobSpecificString(FINGERPRINT_KEY):null;
+    // Links of pages that can be fetched conditionally
+    String linksJobKey = activities.createJobSpecificString(LINKS_KEY);
     
     // Since document specifications can change, we need to look at each url and filter it as part of the
     // process of getting version strings.  To do that, we need to compile the DocumentSpecification into
@@ -611,6 +683,9 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         if (Logging.connectors.isDebugEnabled())
           Logging.connectors.debug("WEB: Removing url '"+documentIdentifier+"' because it's not in the set of allowed ones");
         // Use null because we should have already filtered when we queued.
+        if (fingerprintJobKey != null)
+          fingerprintManager.removeFingerprint(fingerprintJobKey,ManifoldCF.hash(documentIdentifier));
+        pageLinkManager.removeLinks(linksJobKey,ManifoldCF.hash(documentIdentifier));
         activities.deleteDocument(documentIdentifier);
         continue;
       }
@@ -630,6 +705,32 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         // Set up the initial state and state variables.
         // Fetch status
         FetchStatus fetchStatus = new FetchStatus();
+        fetchStatus.computeFingerprint = (fingerprintJobKey != null);
+
+        // If we saved validators for this page last time, and nothing else that the version depends on has changed,
+        // ask the server to send the page only if it has changed.  That includes the output connection, pipeline
+        // and authorities; if the framework would reindex the old version anyway, a 304 is of no use.
+        String indexedVersion = statuses.getIndexedVersionString(documentIdentifier);
+        ConditionalFetchData conditionalData = null;
+        if (sessionCredential == null && isConditionalFetchVersion(indexedVersion) &&
+          !activities.checkDocumentNeedsReindexing(documentIdentifier,indexedVersion))
+        {
+          conditionalData = parseConditionalFetchData(indexedVersion,
+            aclVersion,sortedExcludedHeaders,filterVersion);
+          if (conditionalData != null)
+          {
+            // A 304 is only of use if we still have the links the indexed version was made with
+            String linkData = pageLinkManager.readLinks(linksJobKey,ManifoldCF.hash(documentIdentifier),conditionalData.getLinkHash());
+            if (linkData == null)
+              conditionalData = null;
+            else
+            {
+              conditionalData.setLinks(unpackLinkData(linkData));
+              fetchStatus.ifNoneMatch = conditionalData.getETag();
+              fetchStatus.ifModifiedSince = conditionalData.getLastModified();
+            }
+          }
+        }
 
         // Calculate an event name; we'll need this to control sequencing.
         String globalSequenceEvent;
@@ -656,6 +757,10 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
           case RESULT_NO_DOCUMENT:
             if (Logging.connectors.isDebugEnabled())
               Logging.connectors.debug("WEB: Removing url '"+documentIdentifier+"'"+((fetchStatus.contextMessage!=null)?" because "+fetchStatus.contextMessage:""),fetchStatus.contextException);
+            if (fingerprintJobKey != null)
+              fingerprintManager.removeFingerprint(fingerprintJobKey,ManifoldCF.hash(documentIdentifier));
+            if (isConditionalFetchVersion(indexedVersion))
+              pageLinkManager.removeLinks(linksJobKey,ManifoldCF.hash(documentIdentifier));
             activities.deleteDocument(documentIdentifier);
             break;
           case RESULT_NO_VERSION:
@@ -671,14 +776,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
             StringBuilder sb = new StringBuilder();
 
             // Acls
-            packList(sb,acls,'+');
-            if (acls.length > 0)
-            {
-              sb.append('+');
-              pack(sb,defaultAuthorityDenyToken,'+');
-            }
-            else
-              sb.append('-');
+            sb.append(aclVersion);
 
             // Now, do the metadata. 
             Map<String,Set<String>> metaHash = new HashMap<String,Set<String>>();
@@ -732,15 +830,65 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
               
             String versionString = sb.toString();
 
+            // Near-duplicates of documents we already have are dropped before we spend any effort on them,
+            // and we don't follow their links either, since those generally lead to more duplicates.
+            // The empty version makes sure the page is considered afresh next time, because the document
+            // it duplicates may have changed or gone away even though this page has not.
+            if (fingerprintJobKey != null && isNearDuplicate(activities,documentIdentifier,fingerprintJobKey,nearDuplicateDistance))
+            {
+              if (isConditionalFetchVersion(indexedVersion))
+                pageLinkManager.removeLinks(linksJobKey,ManifoldCF.hash(documentIdentifier));
+              activities.noDocument(documentIdentifier,"");
+              break;
+            }
+
             // Now, extract links.
             // We'll call the "link extractor" series, so we can plug more stuff in over time.
-            boolean indexDocument = extractLinks(documentIdentifier,activities,filter);
+            List<String> htmlLinks = new ArrayList<String>();
+            boolean indexDocument = extractLinks(documentIdentifier,activities,filter,htmlLinks);
+
+            // If the server gave us validators, save them, along with the links we just found, so that the next
+            // fetch can be conditional.  A 304 then tells us everything we would otherwise have fetched the page for.
+            // The links themselves are kept in a table of their own; the version string just has their hash.
+            String conditionalVersion = null;
+            if (sessionCredential == null)
+            {
+              String linkData = packLinkData(htmlLinks);
+              String linkHash = ManifoldCF.hash(linkData);
+              conditionalVersion = makeConditionalFetchVersion(documentIdentifier,fetchStatus.headerData,sortedExcludedHeaders,linkHash);
+              if (conditionalVersion != null)
+              {
+                pageLinkManager.writeLinks(linksJobKey,ManifoldCF.hash(documentIdentifier),linkHash,linkData);
+                versionString = conditionalVersion + versionString;
+              }
+            }
+            if (conditionalVersion == null && isConditionalFetchVersion(indexedVersion))
+              pageLinkManager.removeLinks(linksJobKey,ManifoldCF.hash(documentIdentifier));
 
             // If scanOnly is set, we never ingest.  But all else is the same.
             if (!activities.checkDocumentNeedsReindexing(documentIdentifier,versionString))
               continue;
             
-            processDocument(activities,documentIdentifier,versionString,indexDocument,metaHash,acls,filter);
+            boolean ingested = processDocument(activities,documentIdentifier,versionString,indexDocument,metaHash,acls,filter);
+            // Only indexed documents may make later ones count as duplicates
+            if (fingerprintJobKey != null)
+            {
+              if (ingested)
+                recordFingerprint(documentIdentifier,fingerprintJobKey);
+              else
+                fingerprintManager.removeFingerprint(fingerprintJobKey,ManifoldCF.hash(documentIdentifier));
+            }
+            break;
+          case RESULT_NOT_MODIFIED:
+            // The page has not changed since its last fetch, so its indexed version stands; leaving the document
+            // untouched retains it.  The links it had must still be noted, or they would be forgotten.
+            if (Logging.connectors.isDebugEnabled())
+              Logging.connectors.debug("WEB: Retaining url '"+documentIdentifier+"' because "+fetchStatus.contextMessage);
+            ProcessActivityLinkHandler linkHandler = new ProcessActivityLinkHandler(documentIdentifier,activities,filter,"html",REL_LINK);
+            for (String rawURL : conditionalData.getLinks())
+            {
+              linkHandler.noteDiscoveredLink(rawURL);
+            }
             break;
           case RESULT_RETRY_DOCUMENT:
             // Document could not be processed right now.
@@ -859,12 +1007,24 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
             connection.beginFetch((fetchStatus.sessionState == SESSIONSTATE_LOGIN)?FETCH_LOGIN:FETCH_STANDARD);
             try
             {
-              // Execute the fetch!
-              connection.executeFetch(url.getFile(),userAgent,from,
-                false,hostName,formData,lc);
+              // Execute the fetch!  Only the primary document, fetched outside of any login sequence, is ever fetched conditionally.
+              boolean conditional = currentURI.equals(documentIdentifier) && fetchStatus.sessionState == SESSIONSTATE_NORMAL &&
+                formData == null && (fetchStatus.ifNoneMatch != null || fetchStatus.ifModifiedSince != null);
+              if (conditional)
+                connection.executeFetch(url.getFile(),userAgent,from,
+                  false,hostName,formData,lc,fetchStatus.ifNoneMatch,fetchStatus.ifModifiedSince);
+              else
+                connection.executeFetch(url.getFile(),userAgent,from,
+                  false,hostName,formData,lc);
               int response = connection.getResponseCode();
 
-              if (response == 200 || response == 302 || response == 301)
+              if (response == 304 && conditional)
+              {
+                fetchStatus.contextMessage = "it was not modified since it was last fetched";
+                fetchStatus.resultSignal = RESULT_NOT_MODIFIED;
+                activityResultCode = null;
+              }
+              else if (response == 200 || response == 302 || response == 301)
               {
                 // If this was part of the login sequence, update the cookies regardless of what else happens
                 if (fetchStatus.sessionState == SESSIONSTATE_LOGIN)
@@ -883,7 +1043,15 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
                 if (isContentInteresting(activities,currentURI,response,contentType))
                 {
                   // Treat it as real, and cache it.
-                  fetchStatus.checkSum = cache.addData(activities,currentURI,connection);
+                  // Successful fetches are parsed for links while they are being cached
+                  String htmlEncoding = null;
+                  if (response == 200)
+                  {
+                    htmlEncoding = extractEncoding(contentType);
+                    if (htmlEncoding == null)
+                      htmlEncoding = StandardCharsets.UTF_8.name();
+                  }
+                  fetchStatus.checkSum = cache.addData(activities,currentURI,connection,fetchStatus.computeFingerprint,htmlEncoding);
                   fetchStatus.headerData = connection.getResponseHeaders();
                   fetchStatus.resultSignal = RESULT_VERSION_NEEDED;
                   activityResultCode = null;
@@ -1255,7 +1423,10 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     
   }
 
-  protected void processDocument(IProcessActivity activities, String documentIdentifier, String versionString,
+  /** Ingest a fetched document, or record that it is not to be indexed.
+  *@return true if the document was handed to the output connection.
+  */
+  protected boolean processDocument(IProcessActivity activities, String documentIdentifier, String versionString,
     boolean indexDocument, Map<String,Set<String>> metaHash, String[] acls, DocumentURLFilter filter)
     throws ManifoldCFException, ServiceInterruption
   {
@@ -1275,7 +1446,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         errorCode = "CONTENTNOTINDEXABLE";
         errorDesc = "Content not indexable";
         activities.noDocument(documentIdentifier,versionString);
-        return;
+        return false;
       }
       
       int responseCode = cache.getResponseCode(documentIdentifier);
@@ -1286,7 +1457,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         errorCode = "RESPONSECODENOTINDEXABLE";
         errorDesc = "HTTP response code not indexable ("+responseCode+")";
         activities.noDocument(documentIdentifier,versionString);
-        return;
+        return false;
       }
 
       long dataLength = cache.getDataLength(documentIdentifier);
@@ -1297,7 +1468,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         errorCode = activities.EXCLUDED_LENGTH;
         errorDesc = "Rejected due to length ("+dataLength+")";
         activities.noDocument(documentIdentifier,versionString);
-        return;
+        return false;
       }
 
       if (activities.checkURLIndexable(documentIdentifier) == false)
@@ -1307,7 +1478,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         errorCode = activities.EXCLUDED_URL;
         errorDesc = "Rejected due to URL ('"+documentIdentifier+"')";
         activities.noDocument(documentIdentifier,versionString);
-        return;
+        return false;
       }
 
       String ingestURL = filter.isDocumentIndexable(documentIdentifier);
@@ -1318,7 +1489,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         errorCode = "JOBRESTRICTION";
         errorDesc = "Rejected because job excludes this URL ('"+documentIdentifier+"')";
         activities.noDocument(documentIdentifier,versionString);
-        return;
+        return false;
       }
       
       // Check if it's a recognized content type
@@ -1349,7 +1520,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         errorCode = activities.EXCLUDED_MIMETYPE;
         errorDesc = "Rejected because of mime type ("+contentType+")";
         activities.noDocument(documentIdentifier,versionString);
-        return;
+        return false;
       }
 
       if(!filter.isDocumentContentIndexable(documentIdentifier)){
@@ -1358,7 +1529,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         errorCode = activities.EXCLUDED_CONTENT;
         errorDesc = "Rejected due to content exclusion rule";
         activities.noDocument(documentIdentifier,versionString);
-        return;
+        return false;
       }
       // Ingest the document
       if (Logging.connectors.isDebugEnabled())
@@ -1460,8 +1631,8 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         activities.recordActivity(new Long(startTime),ACTIVITY_PROCESS,
           fileLengthLong,documentIdentifier,errorCode,errorDesc,null);
     }
-
-
+    // The length is set only once the document has been ingested
+    return (fileLengthLong != null);
   }
   
   protected static String extractContentType(String contentType)
@@ -3709,6 +3880,12 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
 "    editjob."+seqPrefix+"seeds.focus();\n"+
 "    return false;\n"+
 "  }\n"+
+"  if (editjob."+seqPrefix+"nearduplicatedistance.value != \"\" && !isInteger(editjob."+seqPrefix+"nearduplicatedistance.value))\n"+
+"  {\n"+
+"    alert(\""+Messages.getBodyJavascriptString(locale,"WebcrawlerConnector.NearDuplicateDistanceMustBeAnInteger")+"\");\n"+
+"    editjob."+seqPrefix+"nearduplicatedistance.focus();\n"+
+"    return false;\n"+
+"  }\n"+
 "  return true;\n"+
 "}\n"+
 "\n"+
@@ -3819,6 +3996,8 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     
     boolean includeMatching = true;
     Set<String> excludedHeaders = new HashSet<String>();
+    boolean skipNearDuplicates = false;
+    String nearDuplicateDistance = Integer.toString(ContentFingerprint.MAX_INDEXED_DISTANCE);
     
     // Now, loop through description
     i = 0;
@@ -3886,6 +4065,13 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         String value = sn.getAttributeValue(WebcrawlerConfig.ATTR_VALUE);
         excludedHeaders.add(value);
       }
+      else if (sn.getType().equals(WebcrawlerConfig.NODE_NEARDUPLICATES))
+      {
+        skipNearDuplicates = true;
+        String value = sn.getAttributeValue(WebcrawlerConfig.ATTR_MAXDISTANCE);
+        if (value != null)
+          nearDuplicateDistance = value;
+      }
 
     }
 
@@ -4236,6 +4422,19 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
 "      <textarea rows=\"10\" cols=\"60\" name=\""+seqPrefix+"exclusionscontentindex\">"+Encoder.bodyEscape(exclusionsContentIndex)+"</textarea>\n"+
 "    </td>\n"+
 "  </tr>\n"+
+"  <tr>\n"+
+"    <td class=\"description\"><nobr>" + Messages.getBodyString(locale,"WebcrawlerConnector.SkipNearDuplicates") + "</nobr></td>\n"+
+"    <td class=\"value\">\n"+
+"      <input type=\"checkbox\" name=\""+seqPrefix+"nearduplicates\" value=\"true\""+(skipNearDuplicates?" checked=\"yes\"":"")+"/>\n"+
+"      <input type=\"hidden\" name=\""+seqPrefix+"nearduplicates_present\" value=\"true\"/>\n"+
+"    </td>\n"+
+"  </tr>\n"+
+"  <tr>\n"+
+"    <td class=\"description\"><nobr>" + Messages.getBodyString(locale,"WebcrawlerConnector.NearDuplicateMaxDistance") + "</nobr></td>\n"+
+"    <td class=\"value\">\n"+
+"      <input type=\"text\" size=\"2\" name=\""+seqPrefix+"nearduplicatedistance\" value=\""+Encoder.attributeEscape(nearDuplicateDistance)+"\"/>\n"+
+"    </td>\n"+
+"  </tr>\n"+
 "</table>\n"
       );
     }
@@ -4246,6 +4445,11 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
                       "<input type=\"hidden\" name=\"" + seqPrefix + "exclusionsindex\" value=\"" + Encoder.attributeEscape(exclusionsIndex) + "\"/>\n" +
                       "<input type=\"hidden\" name=\"" + seqPrefix + "exclusionscontentindex\" value=\"" + Encoder.attributeEscape(exclusionsContentIndex) + "\"/>\n"
       );
+      out.print(
+"<input type=\"hidden\" name=\""+seqPrefix+"nearduplicates\" value=\""+(skipNearDuplicates?"true":"false")+"\"/>\n"+
+"<input type=\"hidden\" name=\""+seqPrefix+"nearduplicates_present\" value=\"true\"/>\n"+
+"<input type=\"hidden\" name=\""+seqPrefix+"nearduplicatedistance\" value=\""+Encoder.attributeEscape(nearDuplicateDistance)+"\"/>\n"
+      );
     }
   
     // Security tab
@@ -4625,6 +4829,32 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
       ds.addChild(ds.getChildCount(),cn);
     }
 
+    // Handle the near-duplicate switch
+    String nearDuplicatesPresent = variableContext.getParameter(seqPrefix+"nearduplicates_present");
+    if (nearDuplicatesPresent != null)
+    {
+      // Delete existing switch record first
+      int i = 0;
+      while (i < ds.getChildCount())
+      {
+        SpecificationNode sn = ds.getChild(i);
+        if (sn.getType().equals(WebcrawlerConfig.NODE_NEARDUPLICATES))
+          ds.removeChild(i);
+        else
+          i++;
+      }
+
+      String nearDuplicates = variableContext.getParameter(seqPrefix+"nearduplicates");
+      if (nearDuplicates != null && nearDuplicates.equals("true"))
+      {
+        SpecificationNode cn = new SpecificationNode(WebcrawlerConfig.NODE_NEARDUPLICATES);
+        String nearDuplicateDistance = variableContext.getParameter(seqPrefix+"nearduplicatedistance");
+        if (nearDuplicateDistance != null && nearDuplicateDistance.length() > 0)
+          cn.setAttribute(WebcrawlerConfig.ATTR_MAXDISTANCE,nearDuplicateDistance);
+        ds.addChild(ds.getChildCount(),cn);
+      }
+    }
+
     // Read the url specs
     String urlRegexpCount = variableContext.getParameter(seqPrefix+"urlregexpcount");
     if (urlRegexpCount != null && urlRegexpCount.length() > 0)
@@ -4785,6 +5015,8 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
 
     boolean includeMatching = false;
     Set<String> excludedHeaders = new HashSet<String>();
+    boolean skipNearDuplicates = false;
+    String nearDuplicateDistance = Integer.toString(ContentFingerprint.MAX_INDEXED_DISTANCE);
     
     int i = 0;
     while (i < ds.getChildCount())
@@ -4839,6 +5071,13 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
         String value = sn.getAttributeValue(WebcrawlerConfig.ATTR_VALUE);
         excludedHeaders.add(value);
       }
+      else if (sn.getType().equals(WebcrawlerConfig.NODE_NEARDUPLICATES))
+      {
+        skipNearDuplicates = true;
+        String value = sn.getAttributeValue(WebcrawlerConfig.ATTR_MAXDISTANCE);
+        if (value != null)
+          nearDuplicateDistance = value;
+      }
     }
     out.print(
 "<table class=\"displaytable\">\n"+
@@ -5246,6 +5485,12 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     out.print(
 "    </td>\n"+
 "  </tr>\n"+
+"  <tr>\n"+
+"    <td class=\"description\"><nobr>" + Messages.getBodyString(locale,"WebcrawlerConnector.SkipNearDuplicates") + "</nobr></td>\n"+
+"    <td class=\"value\">\n"+
+"    "+(skipNearDuplicates?Messages.getBodyString(locale,"WebcrawlerConnector.yes")+" ("+Encoder.bodyEscape(nearDuplicateDistance)+")":Messages.getBodyString(locale,"WebcrawlerConnector.no"))+"\n"+
+"    </td>\n"+
+"  </tr>\n"+
 "    \n"+
 "  <tr><td class=\"separator\" colspan=\"2\"><hr/></td></tr>\n"
     );
@@ -5454,7 +5699,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
               try
               {
                 // Write this to the cache - expiration time 24 hours
-                robotsManager.writeRobotsData(hostNameAndPort,expirationTime,is);
+                robotsManager.writeRobotsData(hostNameAndPort,expirationTime,is,versionActivities);
               }
               finally
               {
@@ -5466,7 +5711,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
               if (Logging.connectors.isDebugEnabled())
                 Logging.connectors.debug("Web: Fetch of robots.txt from "+protocol+"://"+hostIPAddressAndPort+"(host='"+hostName+"') failed with error "+Integer.toString(code));
               // Write this to the cache - expiration time 24 hours
-              robotsManager.writeRobotsData(hostNameAndPort,expirationTime,null);
+              robotsManager.writeRobotsData(hostNameAndPort,expirationTime,null,versionActivities);
             }
           }
           catch (ServiceInterruption e)
@@ -5477,7 +5722,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
             long expirationTime = currentTime + 1000*60*60*6;
             try
             {
-              robotsManager.writeRobotsData(hostNameAndPort,expirationTime,null);
+              robotsManager.writeRobotsData(hostNameAndPort,expirationTime,null,versionActivities);
             }
             catch (IOException e2)
             {
@@ -5492,7 +5737,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
             long expirationTime = currentTime + 1000*60*60*6;
             try
             {
-              robotsManager.writeRobotsData(hostNameAndPort,expirationTime,null);
+              robotsManager.writeRobotsData(hostNameAndPort,expirationTime,null,versionActivities);
             }
             catch (java.net.SocketTimeoutException e2)
             {
@@ -5520,7 +5765,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
             long expirationTime = currentTime + 1000*60*60*6;
             try
             {
-              robotsManager.writeRobotsData(hostNameAndPort,expirationTime,null);
+              robotsManager.writeRobotsData(hostNameAndPort,expirationTime,null,versionActivities);
             }
             catch (java.net.SocketTimeoutException e2)
             {
@@ -5553,7 +5798,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
             long expirationTime = currentTime + 1000*60*60*6;
             try
             {
-              robotsManager.writeRobotsData(hostNameAndPort,expirationTime,null);
+              robotsManager.writeRobotsData(hostNameAndPort,expirationTime,null,versionActivities);
             }
             catch (java.net.SocketTimeoutException e2)
             {
@@ -5583,7 +5828,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
           connection.close();
         }
 
-        // Right now we have no choice but to read it again.
+        // The robots data we just wrote is now in the in-memory tier, so this does not go to the database.
         info = robotsManager.checkFetchAllowed(userAgent,hostNameAndPort,currentTime,pathString,versionActivities);
         if (info.booleanValue())
           return RESULTSTATUS_TRUE;
@@ -6042,14 +6287,29 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
   /** Code to extract links from an already-fetched document. */
   protected boolean extractLinks(String documentIdentifier, IProcessActivity activities, DocumentURLFilter filter)
     throws ManifoldCFException, ServiceInterruption
+  {
+    return extractLinks(documentIdentifier,activities,filter,null);
+  }
+
+  /** Code to extract links from an already-fetched document, optionally keeping the raw html links.
+  *@param htmlLinks is a list to add the raw links found in html to, or null.
+  */
+  protected boolean extractLinks(String documentIdentifier, IProcessActivity activities, DocumentURLFilter filter,
+    List<String> htmlLinks)
+    throws ManifoldCFException, ServiceInterruption
   {
     ProcessActivityRedirectionHandler redirectHandler = new ProcessActivityRedirectionHandler(documentIdentifier,activities,filter);
     handleRedirects(documentIdentifier,redirectHandler);
     if (Logging.connectors.isDebugEnabled() && redirectHandler.shouldIndex() == false)
       Logging.connectors.debug("Web: Not indexing document '"+documentIdentifier+"' because of redirection");
     // For html, we don't want any actions, because we don't do form submission.
-    ProcessActivityHTMLHandler htmlHandler = new ProcessActivityHTMLHandler(documentIdentifier,activities,filter);
-    handleHTML(documentIdentifier,htmlHandler);
+    ProcessActivityHTMLHandler htmlHandler = new ProcessActivityHTMLHandler(documentIdentifier,activities,filter,htmlLinks);
+    // If the document was parsed while it was fetched, replay what was found rather than parsing it again
+    HTMLLinkRecorder recordedHTML = cache.getHTMLEvents(documentIdentifier);
+    if (recordedHTML != null)
+      recordedHTML.replay(htmlHandler);
+    else
+      handleHTML(documentIdentifier,htmlHandler);
     if (Logging.connectors.isDebugEnabled() && htmlHandler.shouldIndex() == false)
       Logging.connectors.debug("Web: Not indexing document '"+documentIdentifier+"' because of HTML robots or content tags prohibiting indexing");
     ProcessActivityXMLHandler xmlHandler = new ProcessActivityXMLHandler(documentIdentifier,activities,filter);
@@ -6069,15 +6329,26 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     protected DocumentURLFilter filter;
     protected String contextDescription;
     protected String linkType;
+    protected List<String> rawLinks;
 
     /** Constructor. */
     public ProcessActivityLinkHandler(String documentIdentifier, IProcessActivity activities, DocumentURLFilter filter, String contextDescription, String linkType)
+    {
+      this(documentIdentifier,activities,filter,contextDescription,linkType,null);
+    }
+
+    /** Constructor.
+    *@param rawLinks is a list to add every raw link to, or null.
+    */
+    public ProcessActivityLinkHandler(String documentIdentifier, IProcessActivity activities, DocumentURLFilter filter, String contextDescription, String linkType,
+      List<String> rawLinks)
     {
       this.documentIdentifier = documentIdentifier;
       this.activities = activities;
       this.filter = filter;
       this.contextDescription = contextDescription;
       this.linkType = linkType;
+      this.rawLinks = rawLinks;
     }
 
     /** Inform the world of a discovered link.
@@ -6087,6 +6358,8 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     public void noteDiscoveredLink(String rawURL)
       throws ManifoldCFException
     {
+      if (rawLinks != null)
+        rawLinks.add(rawURL);
       String newIdentifier = makeDocumentIdentifier(documentIdentifier,rawURL,filter);
       if (newIdentifier != null)
       {
@@ -6128,7 +6401,15 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     /** Constructor. */
     public ProcessActivityHTMLHandler(String documentIdentifier, IProcessActivity activities, DocumentURLFilter filter)
     {
-      super(documentIdentifier,activities,filter,"html",REL_LINK);
+      this(documentIdentifier,activities,filter,null);
+    }
+
+    /** Constructor.
+    *@param rawLinks is a list to add every followed raw link to, or null.
+    */
+    public ProcessActivityHTMLHandler(String documentIdentifier, IProcessActivity activities, DocumentURLFilter filter, List<String> rawLinks)
+    {
+      super(documentIdentifier,activities,filter,"html",REL_LINK,rawLinks);
     }
 
     /** Decide whether we should index. */
@@ -6323,6 +6604,166 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     }
   }
 
+  /** Decide whether a mime type is one we look at for XML links. */
+  protected static boolean isXMLMimeType(String mimeType)
+  {
+    return
+      mimeType.equals("text/xml") ||
+      mimeType.equals("application/rss+xml") ||
+      mimeType.equals("application/xml") ||
+      mimeType.equals("application/atom+xml") ||
+      mimeType.equals("application/xhtml+xml") ||
+      mimeType.equals("text/XML") ||
+      mimeType.equals("application/rdf+xml") ||
+      mimeType.equals("text/application") ||
+      mimeType.equals("XML");
+  }
+
+  /** Build the conditional-fetch part of a document's version string, if the document can be fetched
+  * conditionally next time.  That part goes at the front of the version string, and holds the validators,
+  * the excluded headers (which otherwise shape the version in ways a 304 cannot reproduce), and the hash of
+  * the html links, which must be noted again whenever the page turns out to be unchanged.  The links are
+  * saved by the PageLinkManager under that hash.
+  *@param documentIdentifier is the document identifier.
+  *@param headerData is the response headers.
+  *@param sortedExcludedHeaders is the sorted list of excluded headers.
+  *@param linkHash is the hash of the packed list of raw links found in the document.
+  *@return the version prefix, or null if the next fetch cannot be conditional.
+  */
+  protected String makeConditionalFetchVersion(String documentIdentifier, Map<String,List<String>> headerData,
+    String[] sortedExcludedHeaders, String linkHash)
+  {
+    // Only plain html pages; anything else (redirections, feeds) has to be fetched to be understood
+    if (cache.getResponseCode(documentIdentifier) != 200)
+      return null;
+    String mimeType = extractMimeType(extractContentType(cache.getContentType(documentIdentifier)));
+    if (isXMLMimeType(mimeType))
+      return null;
+    String eTag = null;
+    String lastModified = null;
+    for (String headerName : headerData.keySet())
+    {
+      List<String> values = headerData.get(headerName);
+      if (values == null || values.size() == 0)
+        continue;
+      String lowerHeaderName = headerName.toLowerCase(Locale.ROOT);
+      if (lowerHeaderName.equals("etag"))
+        eTag = values.get(0);
+      else if (lowerHeaderName.equals("last-modified"))
+        lastModified = values.get(0);
+    }
+    if (eTag == null && lastModified == null)
+      return null;
+    StringBuilder sb = new StringBuilder();
+    sb.append(CONDITIONAL_VERSION_MARKER);
+    pack(sb,(eTag==null)?"":eTag,'+');
+    pack(sb,(lastModified==null)?"":lastModified,'+');
+    packList(sb,sortedExcludedHeaders,'+');
+    pack(sb,linkHash,'+');
+    return sb.toString();
+  }
+
+  /** Check whether an indexed version string was made with a conditional-fetch part, so that links may
+  * have been saved for the document.
+  */
+  protected static boolean isConditionalFetchVersion(String version)
+  {
+    return version != null && version.length() > 0 && version.charAt(0) == CONDITIONAL_VERSION_MARKER;
+  }
+
+  /** Pack a list of raw links for the PageLinkManager. */
+  protected static String packLinkData(List<String> links)
+  {
+    StringBuilder sb = new StringBuilder();
+    packList(sb,links,'+');
+    return sb.toString();
+  }
+
+  /** Unpack a list of raw links saved by packLinkData(). */
+  protected static List<String> unpackLinkData(String linkData)
+  {
+    List<String> links = new ArrayList<String>();
+    unpackList(links,linkData,0,'+');
+    return links;
+  }
+
+  /** Parse the conditional-fetch part of an indexed version string, and decide whether it can be used.
+  * It can only be used if everything else the version depends on, other than the page itself, is unchanged.
+  *@param oldVersion is the indexed version string, or null.
+  *@param aclVersion is the current acl part of the version string.
+  *@param sortedExcludedHeaders is the current sorted list of excluded headers.
+  *@param filterVersion is the current filter version.
+  *@return the conditional fetch data, or null if the fetch cannot be conditional.
+  */
+  protected static ConditionalFetchData parseConditionalFetchData(String oldVersion, String aclVersion,
+    String[] sortedExcludedHeaders, String filterVersion)
+  {
+    if (!isConditionalFetchVersion(oldVersion))
+      return null;
+    String[] validators = new String[2];
+    int position = unpackFixedList(validators,oldVersion,1,'+');
+    List<String> oldExcludedHeaders = new ArrayList<String>();
+    position = unpackList(oldExcludedHeaders,oldVersion,position,'+');
+    StringBuilder linkHash = new StringBuilder();
+    position = unpack(linkHash,oldVersion,position,'+');
+    if (!oldVersion.startsWith(aclVersion,position) || !oldVersion.endsWith("+"+filterVersion))
+      return null;
+    if (!oldExcludedHeaders.equals(java.util.Arrays.asList(sortedExcludedHeaders)))
+      return null;
+    String eTag = (validators[0].length() == 0)?null:validators[0];
+    String lastModified = (validators[1].length() == 0)?null:validators[1];
+    if (eTag == null && lastModified == null)
+      return null;
+    return new ConditionalFetchData(eTag,lastModified,linkHash.toString());
+  }
+
+  /** The validators and links saved from a previous fetch of a document.
+  */
+  protected static class ConditionalFetchData
+  {
+    protected final String eTag;
+    protected final String lastModified;
+    protected final String linkHash;
+    protected List<String> links = null;
+
+    public ConditionalFetchData(String eTag, String lastModified, String linkHash)
+    {
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+      this.linkHash = linkHash;
+    }
+
+    /** Get the hash of the saved links */
+    public String getLinkHash()
+    {
+      return linkHash;
+    }
+
+    /** Set the raw html links, once they have been read */
+    public void setLinks(List<String> links)
+    {
+      this.links = links;
+    }
+
+    /** Get the ETag value, or null */
+    public String getETag()
+    {
+      return eTag;
+    }
+
+    /** Get the Last-Modified value, or null */
+    public String getLastModified()
+    {
+      return lastModified;
+    }
+
+    /** Get the raw html links */
+    public List<String> getLinks()
+    {
+      return links;
+    }
+  }
+
   /** Handle document references from XML.  Right now we only understand RSS. */
   protected void handleXML(String documentURI, IXMLHandler handler)
     throws ManifoldCFException, ServiceInterruption
@@ -6336,18 +6777,7 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
       // We ONLY look for XML if the content type *says* it is XML.
       String contentType = extractContentType(cache.getContentType(documentURI));
       String mimeType = extractMimeType(contentType);
-      boolean isXML =
-        mimeType.equals("text/xml") ||
-        mimeType.equals("application/rss+xml") ||
-        mimeType.equals("application/xml") ||
-        mimeType.equals("application/atom+xml") ||
-        mimeType.equals("application/xhtml+xml") ||
-        mimeType.equals("text/XML") ||
-        mimeType.equals("application/rdf+xml") ||
-        mimeType.equals("text/application") ||
-        mimeType.equals("XML");
-
-      if (!isXML)
+      if (!isXMLMimeType(mimeType))
         return;
 
       // OK, it's XML.  Now what?  Well, we get the encoding, and we verify that it is text, then we try to get links
@@ -7147,57 +7577,13 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     }
   }
 
-  /** Is the document text, as far as we can tell? */
+  /** Is the document text, as far as we can tell?  This was decided from the first 4K of the
+  * document when it was cached.
+  */
   protected boolean isDocumentText(String documentURI)
     throws ManifoldCFException
   {
-    try
-    {
-      // Look at the first 4K
-      byte[] byteBuffer = new byte[4096];
-      int amt;
-
-      // Open file for reading.
-      InputStream is = cache.getData(documentURI);
-      if (is == null)
-        return false;
-      try
-      {
-        amt = 0;
-        while (amt < byteBuffer.length)
-        {
-          int incr = is.read(byteBuffer,amt,byteBuffer.length-amt);
-          if (incr == -1)
-            break;
-          amt += incr;
-        }
-      }
-      finally
-      {
-        is.close();
-      }
-
-      if (amt == 0)
-        return false;
-
-      return isText(byteBuffer,amt);
-    }
-    catch (SocketTimeoutException e)
-    {
-      throw new ManifoldCFException("Socket timeout exception accessing cached document: "+e.getMessage(),e);
-    }
-    catch (ConnectTimeoutException e)
-    {
-      throw new ManifoldCFException("Socket timeout exception accessing cached document: "+e.getMessage(),e);
-    }
-    catch (InterruptedIOException e)
-    {
-      throw new ManifoldCFException("Interrupted: "+e.getMessage(),e,ManifoldCFException.INTERRUPTED);
-    }
-    catch (IOException e)
-    {
-      throw new ManifoldCFException("IO exception accessing cached document: "+e.getMessage(),e);
-    }
+    return cache.isText(documentURI);
   }
 
   /** Test to see if a document is text or not.  The first n bytes are passed
@@ -7345,6 +7731,74 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     return rval;
   }
 
+  /** Read a document specification to find the near-duplicate distance.
+  *@return the maximum number of differing fingerprint bits for a document to count as a near-duplicate,
+  * or -1 if near-duplicate detection is disabled.
+  */
+  protected static int findNearDuplicateDistance(Specification spec)
+    throws ManifoldCFException
+  {
+    int i = 0;
+    while (i < spec.getChildCount())
+    {
+      SpecificationNode n = spec.getChild(i++);
+      if (n.getType().equals(WebcrawlerConfig.NODE_NEARDUPLICATES))
+      {
+        String value = n.getAttributeValue(WebcrawlerConfig.ATTR_MAXDISTANCE);
+        if (value == null || value.length() == 0)
+          return ContentFingerprint.MAX_INDEXED_DISTANCE;
+        try
+        {
+          return Math.max(0,Math.min(ContentFingerprint.MAX_INDEXED_DISTANCE,Integer.parseInt(value)));
+        }
+        catch (NumberFormatException e)
+        {
+          throw new ManifoldCFException("Bad near-duplicate distance: "+value,e);
+        }
+      }
+    }
+    return -1;
+  }
+
+  /** Check the fetched content of a document against the job's fingerprint index.  Nothing is recorded here;
+  * a document's fingerprint goes into the index only once the document itself has been indexed, so that
+  * documents which end up excluded never cause others to be skipped.  A near-duplicate's own fingerprint, if
+  * it had one from an earlier crawl, is removed, since the document is about to leave the index.
+  *@return true if the document is a near-duplicate and should be skipped.
+  */
+  protected boolean isNearDuplicate(IProcessActivity activities, String documentIdentifier, String fingerprintJobKey,
+    int nearDuplicateDistance)
+    throws ManifoldCFException
+  {
+    // Only real content is fingerprinted; redirections and the like carry little text
+    if (cache.getResponseCode(documentIdentifier) != 200)
+      return false;
+    Long fingerprint = cache.getFingerprint(documentIdentifier);
+    if (fingerprint == null)
+      return false;
+    String docHash = ManifoldCF.hash(documentIdentifier);
+    String duplicateOf = fingerprintManager.findNearDuplicate(fingerprintJobKey,docHash,fingerprint.longValue(),nearDuplicateDistance);
+    if (duplicateOf == null)
+      return false;
+    if (Logging.connectors.isDebugEnabled())
+      Logging.connectors.debug("WEB: Skipping url '"+documentIdentifier+"' because its content is a near-duplicate of document with hash "+duplicateOf);
+    activities.recordActivity(null,ACTIVITY_PROCESS,null,documentIdentifier,
+      "NEARDUPLICATE","Content is a near-duplicate of another document",null);
+    fingerprintManager.removeFingerprint(fingerprintJobKey,docHash);
+    return true;
+  }
+
+  /** Record the fingerprint of a document that has just been indexed, so later documents can be checked against it.
+  */
+  protected void recordFingerprint(String documentIdentifier, String fingerprintJobKey)
+    throws ManifoldCFException
+  {
+    Long fingerprint = cache.getFingerprint(documentIdentifier);
+    if (fingerprint == null)
+      return;
+    fingerprintManager.recordFingerprint(fingerprintJobKey,ManifoldCF.hash(documentIdentifier),fingerprint.longValue());
+  }
+
   /** Read a document specification to get a set of excluded headers */
   protected static Set<String> findExcludedHeaders(Specification spec)
     throws ManifoldCFException
@@ -8224,6 +8678,11 @@ public class WebcrawlerConnector extends org.apache.manifoldcf.crawler.connector
     public String checkSum = null;
     // The headers, which will be needed if resultSignal is RESULT_VERSION_NEEDED.
     public Map<String,List<String>> headerData = null;
+    // Set if the fetched content should be fingerprinted for near-duplicate detection.
+    public boolean computeFingerprint = false;
+    // Validators from the last fetch, to make the fetch conditional, or null.
+    public String ifNoneMatch = null;
+    public String ifModifiedSince = null;
 
   }
   
@@ -0,0 +1,58 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler;
+
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class ConditionalFetchVersionTest
+{
+
+  @Test
+  public void linkDataRoundTrip()
+    throws Exception
+  {
+    List<String> links = Arrays.asList("http://a/b?c=d+e","/relative","mailto:x@y","with\\backslash");
+    assertEquals(links,WebcrawlerConnector.unpackLinkData(WebcrawlerConnector.packLinkData(links)));
+    assertEquals(new ArrayList<String>(),WebcrawlerConnector.unpackLinkData(WebcrawlerConnector.packLinkData(new ArrayList<String>())));
+  }
+
+  @Test
+  public void parseVersion()
+    throws Exception
+  {
+    String aclVersion = "0+-";
+    String filterVersion = "filter";
+    String[] excludedHeaders = new String[]{"date"};
+    String version = "W" + "\"etag\"+" + "+" + "1+date+" + "abc123+" + aclVersion + "rest+" + filterVersion;
+    WebcrawlerConnector.ConditionalFetchData data = WebcrawlerConnector.parseConditionalFetchData(version,aclVersion,excludedHeaders,filterVersion);
+    assertNotNull(data);
+    assertEquals("\"etag\"",data.getETag());
+    assertNull(data.getLastModified());
+    assertEquals("abc123",data.getLinkHash());
+    // A different filter or header exclusion means the old version cannot be relied on
+    assertNull(WebcrawlerConnector.parseConditionalFetchData(version,aclVersion,excludedHeaders,"other"));
+    assertNull(WebcrawlerConnector.parseConditionalFetchData(version,aclVersion,new String[0],filterVersion));
+    // Versions from before the links moved out of the version string are not used
+    assertNull(WebcrawlerConnector.parseConditionalFetchData("V"+version.substring(1),aclVersion,excludedHeaders,filterVersion));
+    assertFalse(WebcrawlerConnector.isConditionalFetchVersion(aclVersion+"rest+"+filterVersion));
+  }
+
+}
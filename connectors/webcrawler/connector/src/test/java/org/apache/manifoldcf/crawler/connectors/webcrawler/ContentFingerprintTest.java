@@ -0,0 +1,113 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class ContentFingerprintTest
+{
+  protected static final String BODY =
+    "ManifoldCF is a framework for connecting source content repositories like file systems, DMS, "+
+    "Wikis, RSS feeds and web sites to target repositories or indexes, such as Apache Solr or "+
+    "ElasticSearch.  It provides an effective way to keep target indexes up to date, and it can "+
+    "also carry document security along, so that searchers only see what they are allowed to see. ";
+
+  @Test
+  public void markupDifferencesIgnored()
+    throws Exception
+  {
+    long a = fingerprint("<html><body><a href=\"/x?jsessionid=1\">"+BODY+"</a></body></html>",7);
+    long b = fingerprint("<html><body><a href=\"http://mirror/x?jsessionid=2\">"+BODY+"</a></body></html>",4096);
+    assertEquals(0,ContentFingerprint.distance(a,b));
+  }
+
+  @Test
+  public void nearAndFar()
+    throws Exception
+  {
+    StringBuilder longBody = new StringBuilder();
+    for (int i = 0; i < 20; i++)
+    {
+      longBody.append("Paragraph ").append(i).append(": ").append(BODY);
+    }
+    long a = fingerprint(longBody.toString(),4096);
+    long b = fingerprint(longBody.toString()+" Last updated today.",4096);
+    long c = fingerprint("Completely different text about the weather, which is sunny and warm with a light breeze "+
+      "coming off the water, and no sign of rain anywhere in the forecast for the coming week at all.",4096);
+    assertTrue(ContentFingerprint.distance(a,b) <= ContentFingerprint.MAX_INDEXED_DISTANCE);
+    assertTrue(ContentFingerprint.distance(a,c) > ContentFingerprint.MAX_INDEXED_DISTANCE);
+  }
+
+  @Test
+  public void bandsCoverDistance()
+    throws Exception
+  {
+    long a = 0x0123456789abcdefL;
+    // Flip one bit in each of three bands; the fourth band must still match
+    long b = a ^ 0x0001000100010000L;
+    assertEquals(3,ContentFingerprint.distance(a,b));
+    int matching = 0;
+    for (int band = 0; band < ContentFingerprint.BAND_COUNT; band++)
+    {
+      if (ContentFingerprint.getBand(a,band) == ContentFingerprint.getBand(b,band))
+        matching++;
+    }
+    assertEquals(1,matching);
+  }
+
+  @Test
+  public void tooLittleText()
+    throws Exception
+  {
+    ContentFingerprint cf = new ContentFingerprint();
+    byte[] data = "<html><body>Hello world</body></html>".getBytes(StandardCharsets.UTF_8);
+    cf.update(data,0,data.length);
+    assertNull(cf.getFingerprint());
+  }
+
+  @Test
+  public void jobKeyRoundTrip()
+    throws Exception
+  {
+    String key = org.apache.manifoldcf.crawler.system.ManifoldCF.createJobSpecificString(new Long(1234567890123L),WebcrawlerConnector.FINGERPRINT_KEY);
+    assertEquals(new Long(1234567890123L),FingerprintManager.parseJobID(key,WebcrawlerConnector.FINGERPRINT_KEY));
+    assertNull(FingerprintManager.parseJobID(key,"other"));
+    assertNull(FingerprintManager.parseJobID("C conn:"+WebcrawlerConnector.FINGERPRINT_KEY,WebcrawlerConnector.FINGERPRINT_KEY));
+  }
+
+  /** Fingerprint a string, feeding it in blocks of the given size. */
+  protected static long fingerprint(String text, int blockSize)
+  {
+    ContentFingerprint cf = new ContentFingerprint();
+    byte[] data = text.getBytes(StandardCharsets.UTF_8);
+    int offset = 0;
+    while (offset < data.length)
+    {
+      int amt = Math.min(blockSize,data.length-offset);
+      cf.update(data,offset,amt);
+      offset += amt;
+    }
+    Long rval = cf.getFingerprint();
+    assertNotNull(rval);
+    return rval.longValue();
+  }
+
+}
@@ -0,0 +1,458 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler;
+
+import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.agents.interfaces.*;
+import org.apache.manifoldcf.crawler.interfaces.*;
+import org.apache.manifoldcf.crawler.system.Logging;
+import org.apache.manifoldcf.connectorcommon.fuzzyml.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Spools response bodies through the DataCache, and checks that what was kept, and what the
+* in-flight parse recorded, is what a fetch followed by a separate parse would have produced.
+*/
+public class DataCacheTest
+{
+  /** Largest amount the fake connection hands out per read, so the sniff takes several reads */
+  protected static final int READ_CHUNK = 1000;
+
+  protected int activeChecks = 0;
+
+  @BeforeClass
+  public static void setUpEnvironment()
+  {
+    // No properties file here, so set up only the loggers and the file tracker the cache and parser use
+    if (Logging.connectors == null)
+      Logging.connectors = org.apache.log4j.Logger.getLogger("org.apache.manifoldcf.connectors");
+    if (org.apache.manifoldcf.core.system.Logging.misc == null)
+      org.apache.manifoldcf.core.system.Logging.misc = org.apache.log4j.Logger.getLogger("org.apache.manifoldcf.misc");
+    TestManifoldCF.setUpFileTracker();
+  }
+
+  @Test
+  public void shortTextBody()
+    throws Exception
+  {
+    // Shorter than the sniff, so all of it is read ahead before the parser starts
+    byte[] body = makeHTML(3,"<meta name=\"robots\" content=\"nofollow\">");
+    assertTrue(body.length < DataCache.SpoolingInputStream.SNIFF_SIZE);
+    checkTextBody("http://example.com/short",body,true,false);
+  }
+
+  @Test
+  public void longTextBody()
+    throws Exception
+  {
+    // Links on both sides of the sniffed part, with a meta tag split across the boundary
+    StringBuilder sb = new StringBuilder("<html><head><title>t</title></head><body>");
+    while (sb.length() < DataCache.SpoolingInputStream.SNIFF_SIZE - 20)
+      sb.append("filler text ");
+    sb.append("<meta name=\"robots\" content=\"noindex\">");
+    byte[] body = (sb.toString() + new String(makeHTML(200,""),StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+    assertTrue(body.length > DataCache.SpoolingInputStream.SNIFF_SIZE * 4);
+    checkTextBody("http://example.com/long",body,false,true);
+  }
+
+  @Test
+  public void truncatedTextBody()
+    throws Exception
+  {
+    // The body ends in the middle of a tag; whatever the parser makes of that, both parses must agree
+    byte[] whole = makeHTML(150,"");
+    byte[] body = Arrays.copyOf(whole,whole.length - 10);
+    checkTextBody("http://example.com/truncated",body,true,true);
+  }
+
+  @Test
+  public void binaryBody()
+    throws Exception
+  {
+    // Not text, so nothing is parsed, yet every byte after the sniff still has to be drained into the file
+    byte[] body = new byte[DataCache.SpoolingInputStream.SNIFF_SIZE * 3 + 5];
+    new Random(42L).nextBytes(body);
+    for (int i = 0; i < 64; i++)
+      body[i] = 0;
+    String documentIdentifier = "http://example.com/binary";
+    DataCache cache = new DataCache();
+    try
+    {
+      String checkSum = cache.addData(makeActivities(),documentIdentifier,makeConnection(body,-1),true,"UTF-8");
+      assertEquals(Long.toString(expectedChecksum(body)),checkSum);
+      assertEquals((long)body.length,cache.getDataLength(documentIdentifier));
+      assertArrayEquals(body,readCached(cache,documentIdentifier));
+      assertFalse(cache.isText(documentIdentifier));
+      assertEquals(expectedFingerprint(body),cache.getFingerprint(documentIdentifier));
+      // The document was fetched for html, so events were kept, but there are none
+      RecordingHandler replayed = new RecordingHandler();
+      cache.getHTMLEvents(documentIdentifier).replay(replayed);
+      assertEquals(new ArrayList<String>(),replayed.events);
+      assertTrue(activeChecks > 0);
+    }
+    finally
+    {
+      cache.deleteData(documentIdentifier);
+    }
+  }
+
+  @Test
+  public void bodyCutOffByConnection()
+    throws Exception
+  {
+    // The connection fails part way through the body; the fetch is retried later, and nothing is cached
+    byte[] body = makeHTML(150,"");
+    String documentIdentifier = "http://example.com/cutoff";
+    DataCache cache = new DataCache();
+    try
+    {
+      cache.addData(makeActivities(),documentIdentifier,makeConnection(body,DataCache.SpoolingInputStream.SNIFF_SIZE + 1500),
+        true,"UTF-8");
+      fail("Should have seen a service interruption");
+    }
+    catch (ServiceInterruption e)
+    {
+      // Expected
+    }
+    assertNull(cache.getData(documentIdentifier));
+    assertNull(cache.getHTMLEvents(documentIdentifier));
+  }
+
+  @Test
+  public void noParseWithoutEncoding()
+    throws Exception
+  {
+    byte[] body = makeHTML(5,"");
+    String documentIdentifier = "http://example.com/unparsed";
+    DataCache cache = new DataCache();
+    try
+    {
+      String checkSum = cache.addData(makeActivities(),documentIdentifier,makeConnection(body,-1),false,null);
+      assertEquals(Long.toString(expectedChecksum(body)),checkSum);
+      assertEquals((long)body.length,cache.getDataLength(documentIdentifier));
+      assertArrayEquals(body,readCached(cache,documentIdentifier));
+      assertTrue(cache.isText(documentIdentifier));
+      assertNull(cache.getFingerprint(documentIdentifier));
+      assertNull(cache.getHTMLEvents(documentIdentifier));
+    }
+    finally
+    {
+      cache.deleteData(documentIdentifier);
+    }
+  }
+
+  /** Spool a text body, then compare the cache file, checksum and fingerprint with the body itself,
+  * and the recorded events, and the links extraction finds from them, with a parse of the cache file.
+  *@param expectIndex is what the page's robots directives should say about indexing it.
+  *@param expectLinks is true if the page's robots directives let its links be followed.
+  */
+  protected void checkTextBody(String documentIdentifier, byte[] body, boolean expectIndex, boolean expectLinks)
+    throws Exception
+  {
+    // The connector's own cache, so that its link extraction can be run over what was spooled
+    DataCache cache = WebcrawlerConnector.cache;
+    String unparsedIdentifier = documentIdentifier + "?unparsed";
+    try
+    {
+      String checkSum = cache.addData(makeActivities(),documentIdentifier,makeConnection(body,-1),true,"UTF-8");
+      assertEquals(Long.toString(expectedChecksum(body)),checkSum);
+      assertEquals((long)body.length,cache.getDataLength(documentIdentifier));
+      assertArrayEquals(body,readCached(cache,documentIdentifier));
+      assertTrue(cache.isText(documentIdentifier));
+      assertEquals(expectedFingerprint(body),cache.getFingerprint(documentIdentifier));
+      assertTrue(activeChecks > 0);
+
+      // Recorded events against a parse of the cached file
+      RecordingHandler replayed = new RecordingHandler();
+      cache.getHTMLEvents(documentIdentifier).replay(replayed);
+      RecordingHandler parsed = new RecordingHandler();
+      InputStream is = cache.getData(documentIdentifier);
+      try
+      {
+        new Parser().parseWithoutCharsetDetection("UTF-8",is,new FormParseState(parsed));
+      }
+      finally
+      {
+        is.close();
+      }
+      assertEquals(parsed.events,replayed.events);
+      assertFalse(replayed.events.isEmpty());
+
+      // The same body, cached without a parse, goes through extraction the old way
+      cache.addData(makeActivities(),unparsedIdentifier,makeConnection(body,-1),false,null);
+      assertNull(cache.getHTMLEvents(unparsedIdentifier));
+
+      WebcrawlerConnector connector = new WebcrawlerConnector();
+      WebcrawlerConnector.DocumentURLFilter filter = connector.new DocumentURLFilter(makeSpecification());
+      List<String> replayedLinks = new ArrayList<String>();
+      boolean replayedIndex = connector.extractLinks(documentIdentifier,makeActivities(),filter,replayedLinks);
+      List<String> parsedLinks = new ArrayList<String>();
+      boolean parsedIndex = connector.extractLinks(unparsedIdentifier,makeActivities(),filter,parsedLinks);
+      assertEquals(parsedLinks,replayedLinks);
+      assertEquals(parsedIndex,replayedIndex);
+      assertEquals(expectIndex,replayedIndex);
+      assertEquals(expectLinks,!replayedLinks.isEmpty());
+    }
+    finally
+    {
+      cache.deleteData(documentIdentifier);
+      cache.deleteData(unparsedIdentifier);
+    }
+  }
+
+  /** Make a job specification that keeps every link found on the test pages out of the crawl,
+  * so that extraction only collects the raw links.
+  */
+  protected static Specification makeSpecification()
+  {
+    Specification spec = new Specification();
+    SpecificationNode sn = new SpecificationNode(WebcrawlerConfig.NODE_SEEDS);
+    sn.setValue("http://elsewhere.example.org/");
+    spec.addChild(spec.getChildCount(),sn);
+    sn = new SpecificationNode(WebcrawlerConfig.NODE_LIMITTOSEEDS);
+    sn.setAttribute(WebcrawlerConfig.ATTR_VALUE,WebcrawlerConfig.ATTRVALUE_TRUE);
+    spec.addChild(spec.getChildCount(),sn);
+    return spec;
+  }
+
+  /** Make an html page with a number of links, and some extra markup in its head. */
+  protected static byte[] makeHTML(int linkCount, String headExtra)
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<html><head><title>Test page</title>").append(headExtra)
+      .append("<link rel=\"stylesheet\" href=\"/style.css\"></head><body>\n");
+    for (int i = 0; i < linkCount; i++)
+    {
+      sb.append("<p>Paragraph ").append(i).append(" has some words in it, and a ")
+        .append("<a href=\"/page").append(i).append(".html\">link</a>");
+      if (i % 10 == 0)
+        sb.append(" and an image <img src=\"/image").append(i).append(".png\">");
+      sb.append("</p>\n");
+    }
+    sb.append("<frame src=\"/frame.html\"></body></html>\n");
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** The version checksum, computed the same way as the spooling stream does it. */
+  protected static long expectedChecksum(byte[] body)
+  {
+    long checkSum = 0L;
+    for (byte x : body)
+    {
+      long bytevalue = (long)x;
+      checkSum = (checkSum << 5) ^ (checkSum >> 3) ^ (bytevalue << 2) ^ (bytevalue >> 3);
+    }
+    return checkSum;
+  }
+
+  /** The fingerprint of the whole body, added in one go. */
+  protected static Long expectedFingerprint(byte[] body)
+  {
+    ContentFingerprint fingerprint = new ContentFingerprint();
+    fingerprint.update(body,0,body.length);
+    return fingerprint.getFingerprint();
+  }
+
+  protected static byte[] readCached(DataCache cache, String documentIdentifier)
+    throws Exception
+  {
+    InputStream is = cache.getData(documentIdentifier);
+    assertNotNull(is);
+    try
+    {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int amt;
+      while ((amt = is.read(buffer)) != -1)
+        baos.write(buffer,0,amt);
+      return baos.toByteArray();
+    }
+    finally
+    {
+      is.close();
+    }
+  }
+
+  protected IProcessActivity makeActivities()
+  {
+    return (IProcessActivity)Proxy.newProxyInstance(IProcessActivity.class.getClassLoader(),
+      new Class[]{IProcessActivity.class},
+      new InvocationHandler()
+      {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+          if (method.getName().equals("checkJobStillActive"))
+            activeChecks++;
+          return null;
+        }
+      });
+  }
+
+  /** Make a connection that has fetched the given body as a 200 text/html response.
+  *@param failAfter is the number of bytes after which reading the body fails, or -1.
+  */
+  protected static IThrottledConnection makeConnection(final byte[] body, final int failAfter)
+  {
+    return (IThrottledConnection)Proxy.newProxyInstance(IThrottledConnection.class.getClassLoader(),
+      new Class[]{IThrottledConnection.class},
+      new InvocationHandler()
+      {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+          String name = method.getName();
+          if (name.equals("getResponseCode"))
+            return new Integer(200);
+          if (name.equals("getResponseHeader"))
+            return ((String)args[0]).equalsIgnoreCase("Content-Type")?"text/html; charset=utf-8":null;
+          if (name.equals("getResponseBodyStream"))
+            return new ChunkedInputStream(body,failAfter);
+          return null;
+        }
+      });
+  }
+
+  /** A body stream that hands out a little at a time, and can fail part way through. */
+  protected static class ChunkedInputStream extends InputStream
+  {
+    protected final byte[] body;
+    protected final int failAfter;
+    protected int position = 0;
+
+    public ChunkedInputStream(byte[] body, int failAfter)
+    {
+      this.body = body;
+      this.failAfter = failAfter;
+    }
+
+    @Override
+    public int read()
+      throws IOException
+    {
+      byte[] oneByte = new byte[1];
+      int amt = read(oneByte,0,1);
+      if (amt == -1)
+        return -1;
+      return ((int)oneByte[0]) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+      throws IOException
+    {
+      if (failAfter >= 0 && position >= failAfter)
+        throw new IOException("Connection reset");
+      if (position == body.length)
+        return -1;
+      int amt = Math.min(Math.min(len,READ_CHUNK),body.length - position);
+      if (failAfter >= 0)
+        amt = Math.min(amt,failAfter - position);
+      System.arraycopy(body,position,b,off,amt);
+      position += amt;
+      return amt;
+    }
+  }
+
+  /** Writes down every event the link extraction cares about. */
+  protected static class RecordingHandler implements IHTMLHandler
+  {
+    public final List<String> events = new ArrayList<String>();
+
+    @Override
+    public void noteDiscoveredLink(String rawURL)
+    {
+      events.add("link:"+rawURL);
+    }
+
+    @Override
+    public void noteMetaTag(Map metaAttributes)
+    {
+      events.add("meta:"+new TreeMap(metaAttributes));
+    }
+
+    @Override
+    public void noteFormStart(Map formAttributes)
+    {
+    }
+
+    @Override
+    public void noteFormInput(Map inputAttributes)
+    {
+    }
+
+    @Override
+    public void noteFormEnd()
+    {
+    }
+
+    @Override
+    public void noteAHREF(String rawURL)
+    {
+      events.add("a:"+rawURL);
+    }
+
+    @Override
+    public void noteLINKHREF(String rawURL)
+    {
+      events.add("linkhref:"+rawURL);
+    }
+
+    @Override
+    public void noteIMGSRC(String rawURL)
+    {
+      events.add("img:"+rawURL);
+    }
+
+    @Override
+    public void noteFRAMESRC(String rawURL)
+    {
+      events.add("frame:"+rawURL);
+    }
+
+    @Override
+    public void noteTextCharacter(char textCharacter)
+    {
+    }
+
+    @Override
+    public void finishUp()
+    {
+      events.add("finish");
+    }
+  }
+
+  /** Gives the test the file tracker that environment initialization would otherwise set up. */
+  protected static class TestManifoldCF extends org.apache.manifoldcf.crawler.system.ManifoldCF
+  {
+    public static void setUpFileTracker()
+    {
+      if (tracker == null)
+        tracker = new FileTrack();
+    }
+  }
+
+}
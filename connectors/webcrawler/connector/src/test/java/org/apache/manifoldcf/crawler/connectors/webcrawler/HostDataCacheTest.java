@@ -0,0 +1,81 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.connectors.webcrawler;
+
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class HostDataCacheTest
+{
+
+  @Test
+  public void expirationAndEviction()
+    throws Exception
+  {
+    HostDataCache<String> cache = new HostDataCache<String>("Test",2,10,1000L);
+    cache.put("a","A",100L);
+    cache.put("b","B",200L);
+    assertEquals("A",cache.lookup("a",50L));
+    // "b" is now least recently used, so it goes first
+    cache.put("c","C",300L);
+    assertNull(cache.lookup("b",50L));
+    assertEquals("C",cache.lookup("c",50L));
+    // Expired entries are not returned
+    assertNull(cache.lookup("a",100L));
+    assertEquals(1L,cache.getEvictionCount());
+    assertEquals(2L,cache.getHitCount());
+    assertEquals(2L,cache.getMissCount());
+  }
+
+  @Test
+  public void writeBehind()
+    throws Exception
+  {
+    HostDataCache<String> cache = new HostDataCache<String>("Test",100,2,1000L);
+    assertNull(cache.write("a","A1",10000L,"a1",0L));
+    assertFalse(cache.isFlushNeeded(0L));
+    assertTrue(cache.isFlushNeeded(1000L));
+    // A second write for the same host replaces the first, and hands it back to be released
+    HostDataCache.PendingWrite superseded = cache.write("a","A2",10000L,"a2",0L);
+    assertNotNull(superseded);
+    assertEquals("a1",superseded.getWriteData());
+    assertFalse(cache.isFlushNeeded(0L));
+    cache.write("b","B",10000L,"b",0L);
+    assertTrue(cache.isFlushNeeded(0L));
+    assertEquals("A2",cache.lookup("a",0L));
+
+    List<HostDataCache.PendingWrite> writes = cache.drainPendingWrites();
+    assertEquals(2,writes.size());
+    assertEquals("a2",writes.get(0).getWriteData());
+    assertEquals("b",writes.get(1).getWriteData());
+    assertEquals(0,cache.getPendingWriteCount());
+
+    // Requeued writes never override newer ones
+    cache.write("b","B2",10000L,"b2",5L);
+    List<HostDataCache.PendingWrite> dropped = cache.requeuePendingWrites(writes);
+    assertEquals(1,dropped.size());
+    assertEquals("b",dropped.get(0).getWriteData());
+    writes = cache.drainPendingWrites();
+    assertEquals(2,writes.size());
+    assertEquals("b2",writes.get(0).getWriteData());
+    assertEquals("a2",writes.get(1).getWriteData());
+  }
+
+}
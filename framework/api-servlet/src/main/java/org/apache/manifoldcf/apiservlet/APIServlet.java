@@ -284,6 +284,13 @@ public class APIServlet extends HttpServlet
     // If query string exists, parse it
     Map<String,List<String>> queryParameters = parseQueryString(queryString);
     
+    // Reports and job lists can be very large, so write those out as they are produced
+    if (protocol.equals("json") && ManifoldCF.isStreamingReadCommand(command))
+    {
+      executeStreamingRead(tc,response,command,queryParameters,ap);
+      return;
+    }
+    
     // Execute the request.
     // Since there are no input arguments, we can do this before we look at the protocol.
     
@@ -340,6 +347,96 @@ public class APIServlet extends HttpServlet
 
   }
   
+  /** Perform a "read" operation whose output may be large, writing the JSON while the command is
+  * still producing it, rather than assembling the whole thing in memory first.  The JSON goes to a spool
+  * and not to the client, so that a failure part way through can still be reported the same way
+  * executeRead() reports it: the partial rows are thrown away and only the error is sent.
+  */
+  protected static void executeStreamingRead(IThreadContext tc, HttpServletResponse response, String command,
+    Map<String,List<String>> queryParameters, APIProfile ap)
+    throws ManifoldCFException, IOException
+  {
+    ResponseSpool spool = new ResponseSpool();
+    try
+    {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(spool,StandardCharsets.UTF_8));
+      JSONConfigurationWriter rowOutput = new JSONConfigurationWriter(writer);
+      Configuration output = new Configuration();
+      int readResult = ManifoldCF.executeStreamingReadCommand(tc,output,rowOutput,command,queryParameters,ap);
+
+      if (!rowOutput.isStarted() || ManifoldCF.hasErrorNode(output))
+      {
+        // Nothing streamed, or what was streamed is incomplete; send just the output
+        String outputText;
+        try
+        {
+          outputText = output.toJSON();
+        }
+        catch (ManifoldCFException e)
+        {
+          // Log it
+          Logging.api.error("Error forming JSON response: "+e.getMessage(),e);
+          // Internal server error
+          response.sendError(response.SC_INTERNAL_SERVER_ERROR);
+          return;
+        }
+
+        if (readResult == ManifoldCF.READRESULT_NOTFOUND)
+          response.setStatus(response.SC_NOT_FOUND);
+        else if (readResult == ManifoldCF.READRESULT_NOTALLOWED)
+          response.setStatus(response.SC_UNAUTHORIZED);
+
+        byte[] responseValue = outputText.getBytes(StandardCharsets.UTF_8);
+        response.setContentType("text/plain; charset=utf-8");
+        response.setIntHeader("Content-Length", (int)responseValue.length);
+        ServletOutputStream out = response.getOutputStream();
+        try
+        {
+          out.write(responseValue,0,responseValue.length);
+          out.flush();
+        }
+        finally
+        {
+          out.close();
+        }
+        return;
+      }
+
+      try
+      {
+        rowOutput.addChildren(output);
+        rowOutput.finish();
+      }
+      catch (ManifoldCFException e)
+      {
+        // Log it
+        Logging.api.error("Error forming JSON response: "+e.getMessage(),e);
+        // Internal server error
+        response.sendError(response.SC_INTERNAL_SERVER_ERROR);
+        return;
+      }
+
+      // The response is complete, so now it can go to the client
+      response.setContentType("text/plain; charset=utf-8");
+      if (spool.getLength() <= (long)Integer.MAX_VALUE)
+        response.setIntHeader("Content-Length", (int)spool.getLength());
+      ServletOutputStream out = response.getOutputStream();
+      try
+      {
+        spool.writeTo(out);
+        out.flush();
+      }
+      finally
+      {
+        out.close();
+      }
+    }
+    finally
+    {
+      spool.discard();
+    }
+  }
+  
   /** Perform a general "write" operation.
   */
   protected static void executeWrite(IThreadContext tc, HttpServletResponse response, String pathInfo, InputStream data, APIProfile ap)
@@ -0,0 +1,152 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.apiservlet;
+
+import java.io.*;
+
+/** This class holds a response body until it is complete, so that nothing reaches the client
+* until the status is known.  Up to a fixed amount is kept in memory; anything beyond that goes
+* to a temporary file.  The spool must be discarded when done with, so the file is removed.
+*/
+public class ResponseSpool extends OutputStream
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  protected final static int DEFAULT_MAX_MEM_SIZE = 1048576;
+  protected final static int CHUNK_SIZE = 65536;
+
+  protected final int maxMemSize;
+  protected ByteArrayOutputStream memory = new ByteArrayOutputStream();
+  protected File file = null;
+  protected OutputStream fileStream = null;
+  protected long length = 0L;
+
+  /** Constructor */
+  public ResponseSpool()
+  {
+    this(DEFAULT_MAX_MEM_SIZE);
+  }
+
+  /** Constructor.
+  *@param maxMemSize is the number of bytes kept in memory before switching to a temporary file.
+  */
+  public ResponseSpool(int maxMemSize)
+  {
+    this.maxMemSize = maxMemSize;
+  }
+
+  @Override
+  public void write(int b)
+    throws IOException
+  {
+    write(new byte[]{(byte)b},0,1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len)
+    throws IOException
+  {
+    if (fileStream == null && memory.size() + len > maxMemSize)
+    {
+      file = File.createTempFile("_MC_API_","");
+      fileStream = new BufferedOutputStream(new FileOutputStream(file));
+      memory.writeTo(fileStream);
+      memory = null;
+    }
+    if (fileStream != null)
+      fileStream.write(b,off,len);
+    else
+      memory.write(b,off,len);
+    length += len;
+  }
+
+  @Override
+  public void flush()
+    throws IOException
+  {
+    if (fileStream != null)
+      fileStream.flush();
+  }
+
+  /** Get the number of bytes spooled so far */
+  public long getLength()
+  {
+    return length;
+  }
+
+  /** Is the spool using a temporary file? */
+  public boolean isOnDisk()
+  {
+    return file != null;
+  }
+
+  /** Copy everything spooled to another stream.
+  *@param out is the stream to write to.
+  */
+  public void writeTo(OutputStream out)
+    throws IOException
+  {
+    if (fileStream == null)
+    {
+      memory.writeTo(out);
+      return;
+    }
+    fileStream.flush();
+    InputStream is = new FileInputStream(file);
+    try
+    {
+      byte[] buffer = new byte[CHUNK_SIZE];
+      while (true)
+      {
+        int amt = is.read(buffer);
+        if (amt == -1)
+          break;
+        out.write(buffer,0,amt);
+      }
+    }
+    finally
+    {
+      is.close();
+    }
+  }
+
+  /** Throw away the spooled data, and remove the temporary file if there is one */
+  public void discard()
+  {
+    memory = null;
+    if (fileStream != null)
+    {
+      try
+      {
+        fileStream.close();
+      }
+      catch (IOException e)
+      {
+        // Nothing more we can do
+      }
+      fileStream = null;
+    }
+    if (file != null)
+    {
+      file.delete();
+      file = null;
+    }
+  }
+
+}
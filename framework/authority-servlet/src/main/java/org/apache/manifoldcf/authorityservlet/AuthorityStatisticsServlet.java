@@ -0,0 +1,154 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.authorityservlet;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.authorities.system.ManifoldCF;
+import org.apache.manifoldcf.authorities.system.Logging;
+import org.apache.manifoldcf.authorities.system.AuthorityStatistics;
+import org.apache.manifoldcf.authorities.system.RequestQueue;
+import org.apache.manifoldcf.core.util.URLEncoder;
+import org.apache.manifoldcf.core.common.Base64;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+/** This servlet reports the authority service's latency statistics and ACL cache counters.
+* The response is a list of lines, one per authority connection, of the form
+* "AUTHORITY:&lt;name&gt; REQUESTS:&lt;n&gt; FAILURES:&lt;n&gt; AVGMS:&lt;n&gt; MAXMS:&lt;n&gt;", followed by
+* "QUEUE:" lines for the authority and mapping request queues, and a single "CACHE:" line.
+*
+* Access is checked the same way as for the API service: the caller must pass API login verification,
+* and have the capability to view reports.  Credentials are taken from a basic Authorization header;
+* without one, the empty login that the API service starts every session with is tried.
+*
+* The content type will always be text/plain.
+*/
+public class AuthorityStatisticsServlet extends HttpServlet
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** The get method.
+  */
+  protected void doGet(HttpServletRequest request, HttpServletResponse response)
+    throws ServletException, IOException
+  {
+    try
+    {
+      IThreadContext tc = ThreadContextFactory.make();
+      if (!checkAccess(tc,request.getHeader("Authorization")))
+      {
+        response.setHeader("WWW-Authenticate","Basic realm=\"ManifoldCF\"");
+        response.sendError(response.SC_UNAUTHORIZED);
+        return;
+      }
+    }
+    catch (ManifoldCFException e)
+    {
+      Logging.authorityService.error("Error checking access to authority statistics: "+e.getMessage(),e);
+      response.sendError(response.SC_INTERNAL_SERVER_ERROR,e.getMessage());
+      return;
+    }
+
+    StringBuilder sb = new StringBuilder();
+    AuthorityStatistics statistics = ManifoldCF.getAuthorityStatistics();
+    if (statistics != null)
+    {
+      for (AuthorityStatistics.AuthorityStatistic statistic : statistics.getStatistics())
+      {
+        sb.append("AUTHORITY:").append(URLEncoder.encode(statistic.getConnectionName()))
+          .append(" REQUESTS:").append(statistic.getRequestCount())
+          .append(" FAILURES:").append(statistic.getFailureCount())
+          .append(" AVGMS:").append(statistic.getAverageResponseTime())
+          .append(" MAXMS:").append(statistic.getMaxResponseTime())
+          .append("\n");
+      }
+    }
+    writeQueueStatistics(sb,"authority",ManifoldCF.getRequestQueue());
+    writeQueueStatistics(sb,"mapping",ManifoldCF.getMappingRequestQueue());
+    UserACLCache cache = UserACLServlet.aclCache;
+    if (cache != null)
+    {
+      sb.append("CACHE:")
+        .append(" SIZE:").append(cache.getSize())
+        .append(" HITS:").append(cache.getHitCount())
+        .append(" MISSES:").append(cache.getMissCount())
+        .append(" COALESCED:").append(cache.getCoalescedCount())
+        .append("\n");
+    }
+
+    byte[] responseValue = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    response.setContentType("text/plain; charset=ISO8859-1");
+    response.setIntHeader("Content-Length", (int)responseValue.length);
+    ServletOutputStream out = response.getOutputStream();
+    try
+    {
+      out.write(responseValue,0,responseValue.length);
+      out.flush();
+    }
+    finally
+    {
+      out.close();
+    }
+  }
+
+  /** Check whether the caller may see the statistics.
+  *@param tc is the thread context.
+  *@param authorization is the value of the Authorization header, or null.
+  *@return true if access is allowed.
+  */
+  protected static boolean checkAccess(IThreadContext tc, String authorization)
+    throws ManifoldCFException
+  {
+    String userID = "";
+    String password = "";
+    if (authorization != null)
+    {
+      authorization = authorization.trim();
+      if (!authorization.regionMatches(true,0,"Basic ",0,6))
+        return false;
+      String credentials = new String(new Base64().decodeString(authorization.substring(6).trim()),StandardCharsets.UTF_8);
+      int index = credentials.indexOf(":");
+      if (index == -1)
+        return false;
+      userID = credentials.substring(0,index);
+      password = credentials.substring(index+1);
+    }
+    IAuth auth = AuthFactory.make(tc);
+    return auth.verifyAPILogin(userID,password) && auth.checkCapability(userID,IAuth.CAPABILITY_VIEW_REPORTS);
+  }
+
+  protected static void writeQueueStatistics(StringBuilder sb, String queueName, RequestQueue<?> queue)
+  {
+    if (queue == null)
+      return;
+    sb.append("QUEUE:").append(queueName)
+      .append(" SIZE:").append(queue.getQueueSize())
+      .append(" SERVED:").append(queue.getServedCount())
+      .append(" REJECTED:").append(queue.getRejectedCount())
+      .append(" AVGWAITMS:").append(queue.getAverageWaitTime())
+      .append(" MAXWAITMS:").append(queue.getMaxWaitTime())
+      .append("\n");
+  }
+
+}
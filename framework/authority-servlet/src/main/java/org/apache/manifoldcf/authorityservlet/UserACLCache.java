@@ -0,0 +1,263 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.authorityservlet;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.authorities.interfaces.*;
+
+import java.util.*;
+
+/** This class caches the resolved authority answers for a user ACL request, keyed by the request's
+* domain/user map and the set of authority connections that serve it.  Entries expire after a fixed
+* time, and the least recently used entries are discarded when the cache is full.
+*
+* Concurrent lookups for the same key are coalesced: only one of them actually resolves the answers,
+* and the others wait for and share its result.  This happens even if caching is disabled.
+*/
+public class UserACLCache
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** Time to live for an entry, in milliseconds; zero disables caching */
+  protected final long timeToLive;
+  /** Maximum number of entries */
+  protected final int maxSize;
+
+  /** The cached entries, in access order */
+  protected final LinkedHashMap<String,CacheEntry> entries;
+  /** The resolutions that are currently in progress */
+  protected final Map<String,InFlight> inFlight = new HashMap<String,InFlight>();
+
+  protected long hitCount = 0L;
+  protected long missCount = 0L;
+  protected long coalescedCount = 0L;
+
+  /** Constructor.
+  *@param timeToLive is the entry lifetime in milliseconds, or 0 to disable caching.
+  *@param maxSize is the maximum number of entries to keep.
+  */
+  public UserACLCache(long timeToLive, int maxSize)
+  {
+    this.timeToLive = timeToLive;
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<String,CacheEntry>(16,0.75f,true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String,CacheEntry> eldest)
+      {
+        return size() > UserACLCache.this.maxSize;
+      }
+    };
+  }
+
+  /** Look up the answers for a key, resolving them if they are not cached.
+  *@param key is the cache key.
+  *@param resolver resolves the answers if needed.
+  *@return the answers.
+  */
+  public List<AuthorityAnswer> lookup(String key, Resolver resolver)
+    throws ManifoldCFException, InterruptedException
+  {
+    while (true)
+    {
+      InFlight current;
+      boolean isLeader = false;
+      synchronized (this)
+      {
+        CacheEntry entry = entries.get(key);
+        if (entry != null)
+        {
+          if (entry.expirationTime > System.currentTimeMillis())
+          {
+            hitCount++;
+            return entry.answers;
+          }
+          entries.remove(key);
+        }
+        current = inFlight.get(key);
+        if (current == null)
+        {
+          current = new InFlight();
+          inFlight.put(key,current);
+          isLeader = true;
+          missCount++;
+        }
+        else
+          coalescedCount++;
+      }
+
+      if (isLeader)
+      {
+        List<AuthorityAnswer> answers = null;
+        try
+        {
+          answers = resolver.resolve();
+          return answers;
+        }
+        finally
+        {
+          synchronized (this)
+          {
+            inFlight.remove(key);
+            if (answers != null && timeToLive > 0L && isCacheable(answers))
+              entries.put(key,new CacheEntry(answers,System.currentTimeMillis() + timeToLive));
+          }
+          current.complete(answers);
+        }
+      }
+
+      List<AuthorityAnswer> answers = current.waitForComplete();
+      if (answers != null)
+        return answers;
+      // The leader failed (most likely it was interrupted); try again ourselves.
+    }
+  }
+
+  /** Get the number of lookups answered from the cache */
+  public synchronized long getHitCount()
+  {
+    return hitCount;
+  }
+
+  /** Get the number of lookups that had to be resolved */
+  public synchronized long getMissCount()
+  {
+    return missCount;
+  }
+
+  /** Get the number of lookups that shared another lookup's resolution */
+  public synchronized long getCoalescedCount()
+  {
+    return coalescedCount;
+  }
+
+  /** Get the current number of entries */
+  public synchronized int getSize()
+  {
+    return entries.size();
+  }
+
+  /** Answers are only cached if every authority gave a definitive reply.  Errors and unreachable
+  * authorities are presumed to be transient.
+  */
+  protected static boolean isCacheable(List<AuthorityAnswer> answers)
+  {
+    for (AuthorityAnswer answer : answers)
+    {
+      if (answer.getException() != null)
+        return false;
+      AuthorizationResponse response = answer.getResponse();
+      if (response != null && response.getResponseStatus() == AuthorizationResponse.RESPONSE_UNREACHABLE)
+        return false;
+    }
+    return true;
+  }
+
+  /** Resolve the answers for a cache miss.
+  */
+  public static interface Resolver
+  {
+    public List<AuthorityAnswer> resolve()
+      throws ManifoldCFException, InterruptedException;
+  }
+
+  /** The answer from one authority connection.
+  */
+  public static class AuthorityAnswer
+  {
+    protected final String identifyingString;
+    protected final String authGroup;
+    protected final String userID;
+    protected final AuthorizationResponse response;
+    protected final Throwable exception;
+
+    public AuthorityAnswer(String identifyingString, String authGroup, String userID,
+      AuthorizationResponse response, Throwable exception)
+    {
+      this.identifyingString = identifyingString;
+      this.authGroup = authGroup;
+      this.userID = userID;
+      this.response = response;
+      this.exception = exception;
+    }
+
+    public String getIdentifyingString()
+    {
+      return identifyingString;
+    }
+
+    public String getAuthGroup()
+    {
+      return authGroup;
+    }
+
+    public String getUserID()
+    {
+      return userID;
+    }
+
+    /** Get the response; null means the user mapping failed */
+    public AuthorizationResponse getResponse()
+    {
+      return response;
+    }
+
+    public Throwable getException()
+    {
+      return exception;
+    }
+  }
+
+  protected static class CacheEntry
+  {
+    public final List<AuthorityAnswer> answers;
+    public final long expirationTime;
+
+    public CacheEntry(List<AuthorityAnswer> answers, long expirationTime)
+    {
+      this.answers = answers;
+      this.expirationTime = expirationTime;
+    }
+  }
+
+  protected static class InFlight
+  {
+    protected boolean isComplete = false;
+    protected List<AuthorityAnswer> answers = null;
+
+    public synchronized void complete(List<AuthorityAnswer> answers)
+    {
+      this.answers = answers;
+      isComplete = true;
+      notifyAll();
+    }
+
+    /** Wait for the leader to finish.
+    *@return the answers, or null if the leader failed.
+    */
+    public synchronized List<AuthorityAnswer> waitForComplete()
+      throws InterruptedException
+    {
+      while (!isComplete)
+        wait();
+      return answers;
+    }
+  }
+
+}
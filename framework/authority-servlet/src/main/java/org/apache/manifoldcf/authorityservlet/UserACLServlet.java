@@ -57,6 +57,12 @@ public class UserACLServlet extends HttpServlet
   protected final static String ID_PREFIX = "ID:";
   protected final static String TOKEN_PREFIX = "TOKEN:";
 
+  protected final static String cacheLifetimeProperty = "org.apache.manifoldcf.authorityservice.cachelifetime";
+  protected final static String cacheSizeProperty = "org.apache.manifoldcf.authorityservice.cachesize";
+
+  /** The ACL cache, shared by all requests */
+  protected static UserACLCache aclCache = null;
+
   /** The init method.
   */
   public void init(ServletConfig config)
@@ -69,6 +75,9 @@ public class UserACLServlet extends HttpServlet
       //ManifoldCF.initializeEnvironment();
       IThreadContext itc = ThreadContextFactory.make();
       ManifoldCF.startSystem(itc);
+      long cacheLifetime = LockManagerFactory.getLongProperty(itc,cacheLifetimeProperty,60000L);
+      int cacheSize = LockManagerFactory.getIntProperty(itc,cacheSizeProperty,1000);
+      aclCache = new UserACLCache(cacheLifetime,cacheSize);
     }
     catch (ManifoldCFException e)
     {
@@ -176,14 +185,14 @@ public class UserACLServlet extends HttpServlet
         Logging.authorityService.debug("Received authority request for domain:user set "+sb2.toString());
       }
 
-      RequestQueue<MappingRequest> mappingQueue = ManifoldCF.getMappingRequestQueue();
+      final RequestQueue<MappingRequest> mappingQueue = ManifoldCF.getMappingRequestQueue();
       if (mappingQueue == null)
       {
         // System wasn't started; return unauthorized
         throw new ManifoldCFException("System improperly initialized");
       }
 
-      RequestQueue<AuthRequest> queue = ManifoldCF.getRequestQueue();
+      final RequestQueue<AuthRequest> queue = ManifoldCF.getRequestQueue();
       if (queue == null)
       {
         // System wasn't started; return unauthorized
@@ -193,143 +202,27 @@ public class UserACLServlet extends HttpServlet
       
       IThreadContext itc = ThreadContextFactory.make();
       
-      IMappingConnectionManager mappingConnManager = MappingConnectionManagerFactory.make(itc);
+      final IMappingConnectionManager mappingConnManager = MappingConnectionManagerFactory.make(itc);
       IAuthorityConnectionManager authConnManager = AuthorityConnectionManagerFactory.make(itc);
 
-      // Get all mapping connections; we may not need them all but we do need to be able to look them all up
-      IMappingConnection[] mappingConnections = mappingConnManager.getAllConnections();
-      
-      // One thread per connection, which is responsible for starting the mapping process when it is ready.
-      List<MappingOrderThread> mappingThreads = new ArrayList<MappingOrderThread>();
-      // One thread per authority, which is responsible for starting the auth request when it is ready.
-      List<AuthOrderThread> authThreads = new ArrayList<AuthOrderThread>();
-
-      Map<MapperDescription,MappingRequest> mappingRequests = new HashMap<MapperDescription,MappingRequest>();
-      Map<String,AuthRequest> authRequests = new HashMap<String,AuthRequest>();
-
-      Map<String,IMappingConnection> mappingConnMap = new HashMap<String,IMappingConnection>();
-      
-      // Fill in mappingConnMap, since we need to be able to find connections given connection names
-      for (IMappingConnection c : mappingConnections)
-      {
-        mappingConnMap.put(c.getName(),c);
-      }
-
-      // Set of connections we need to fire off
-      Set<MapperDescription> activeConnections = new HashSet<MapperDescription>();
-
-      // We do the minimal set of mapping requests and authorities.  Since it is the authority tokens we are
-      // looking for, we start there, and build authority requests first, then mapping requests that support them,
-      // etc.
-      // Create auth requests
+      // Find the authority connections for every domain; these, together with the users, form the cache key
+      final Map<String,IAuthorityConnection[]> domainConnections = new HashMap<String,IAuthorityConnection[]>();
       for (String authDomain : domainMap.keySet())
       {
-        IAuthorityConnection[] connections = authConnManager.getDomainConnections(authDomain);
-        for (int i = 0; i < connections.length; i++)
-        {
-          IAuthorityConnection thisConnection = connections[i];
-          String identifyingString = thisConnection.getDescription();
-          if (identifyingString == null || identifyingString.length() == 0)
-            identifyingString = thisConnection.getName();
-          
-          // Create a request
-          AuthRequest ar = new AuthRequest(thisConnection,identifyingString);
-          authRequests.put(thisConnection.getName(), ar);
-          
-          // We create an auth thread if there are prerequisites to meet.
-          // Otherwise, we just fire off the request
-          String domainUserID = domainMap.get(authDomain);
-          if (thisConnection.getPrerequisiteMapping() == null)
-          {
-            ar.setUserID(domainUserID);
-            queue.addRequest(ar);
-          }
-          else
-          {
-            MapperDescription md = new MapperDescription(thisConnection.getPrerequisiteMapping(),authDomain);
-            AuthOrderThread thread = new AuthOrderThread(identifyingString,
-              ar, md,
-              queue, mappingRequests);
-            authThreads.add(thread);
-            // The same mapper can be used for multiple domains, although this is likely to be uncommon.  Nevertheless,
-            // mapper invocations need to be segregated to prevent trouble
-            activeConnections.add(md);
-          }
-        }
-      }
-
-      // Create mapping requests
-      while (!activeConnections.isEmpty())
-      {
-        Iterator<MapperDescription> connectionIter = activeConnections.iterator();
-        MapperDescription mapperDesc = connectionIter.next();
-        String connectionName = mapperDesc.mapperName;
-        String authDomain = mapperDesc.authDomain;
-        IMappingConnection thisConnection = mappingConnMap.get(connectionName);
-        String identifyingString = thisConnection.getDescription();
-        if (identifyingString == null || identifyingString.length() == 0)
-          identifyingString = connectionName;
-
-        // Create a request
-        MappingRequest mr = new MappingRequest(thisConnection,identifyingString);
-        mappingRequests.put(mapperDesc, mr);
-
-        // Either start up a thread, or just fire it off immediately.
-        if (thisConnection.getPrerequisiteMapping() == null)
-        {
-          mr.setUserID(domainMap.get(authDomain));
-          mappingQueue.addRequest(mr);
-        }
-        else
-        {
-          //System.out.println("Mapper: prerequisite found: '"+thisConnection.getPrerequisiteMapping()+"'");
-          MapperDescription p = new MapperDescription(thisConnection.getPrerequisiteMapping(),authDomain);
-          MappingOrderThread thread = new MappingOrderThread(identifyingString,
-            mr, p, mappingQueue, mappingRequests);
-          mappingThreads.add(thread);
-          if (mappingRequests.get(p) == null)
-            activeConnections.add(p);
-        }
-        activeConnections.remove(mapperDesc);
-      }
-      
-      // Start threads.  We have to wait until all the requests have been
-      // at least created before we do this.
-      for (MappingOrderThread thread : mappingThreads)
-      {
-        thread.start();
-      }
-      for (AuthOrderThread thread : authThreads)
-      {
-        thread.start();
-      }
-      
-      // Wait for the threads to finish up.  This will guarantee that all entities have run to completion.
-      for (MappingOrderThread thread : mappingThreads)
-      {
-        thread.finishUp();
-      }
-      for (AuthOrderThread thread : authThreads)
-      {
-        thread.finishUp();
+        domainConnections.put(authDomain,authConnManager.getDomainConnections(authDomain));
       }
       
-      // This is probably unnecessary, but we do it anyway just to adhere to the contract
-      for (MappingRequest mr : mappingRequests.values())
-      {
-        mr.waitForComplete();
-      }
-      
-      // Handle all exceptions thrown during mapping.  In general this just means logging them, because
-      // the downstream authorities will presumably not find what they are looking for and error out that way.
-      for (MappingRequest mr : mappingRequests.values())
-      {
-        Throwable exception = mr.getAnswerException();
-        if (exception != null)
+      final Map<String,String> finalDomainMap = domainMap;
+      List<UserACLCache.AuthorityAnswer> answers = aclCache.lookup(buildCacheKey(domainMap,domainConnections),
+        new UserACLCache.Resolver()
         {
-          Logging.authorityService.warn("Mapping exception logged from "+mr.getIdentifyingString()+": "+exception.getMessage()+"; mapper aborted", exception);
-        }
-      }
+          @Override
+          public List<UserACLCache.AuthorityAnswer> resolve()
+            throws ManifoldCFException, InterruptedException
+          {
+            return resolveAnswers(finalDomainMap,domainConnections,mappingConnManager,queue,mappingQueue);
+          }
+        });
       
       // Now, work through the returning answers.
 
@@ -340,20 +233,10 @@ public class UserACLServlet extends HttpServlet
       ServletOutputStream out = response.getOutputStream();
       try
       {
-        for (String connectionName : authRequests.keySet())
+        for (UserACLCache.AuthorityAnswer ar : answers)
         {
-          AuthRequest ar = authRequests.get(connectionName);
-
-          if (Logging.authorityService.isDebugEnabled())
-            Logging.authorityService.debug("Waiting for answer from authority connection "+ar.getIdentifyingString()+" for user '"+ar.getUserID()+"'");
-
-          ar.waitForComplete();
-
-          if (Logging.authorityService.isDebugEnabled())
-            Logging.authorityService.debug("Received answer from authority connection "+ar.getIdentifyingString()+" for user '"+ar.getUserID()+"'");
-
-          Throwable exception = ar.getAnswerException();
-          AuthorizationResponse reply = ar.getAnswerResponse();
+          Throwable exception = ar.getException();
+          AuthorizationResponse reply = ar.getResponse();
           if (exception != null)
           {
             // Exceptions are always bad now
@@ -365,7 +248,7 @@ public class UserACLServlet extends HttpServlet
             return;
           }
 
-          String authGroup = ar.getAuthorityConnection().getAuthGroup();
+          String authGroup = ar.getAuthGroup();
           
           // A null reply means the same as USERNOTFOUND; it occurs because a user mapping failed somewhere.
           if (reply == null)
@@ -453,6 +336,193 @@ public class UserACLServlet extends HttpServlet
     }
   }
 
+  /** Fire off the mapping and authority requests for a domain/user map, and collect the authority answers.
+  */
+  protected static List<UserACLCache.AuthorityAnswer> resolveAnswers(Map<String,String> domainMap,
+    Map<String,IAuthorityConnection[]> domainConnections, IMappingConnectionManager mappingConnManager,
+    RequestQueue<AuthRequest> queue, RequestQueue<MappingRequest> mappingQueue)
+    throws ManifoldCFException, InterruptedException
+  {
+    // Get all mapping connections; we may not need them all but we do need to be able to look them all up
+    IMappingConnection[] mappingConnections = mappingConnManager.getAllConnections();
+    
+    // One thread per connection, which is responsible for starting the mapping process when it is ready.
+    List<MappingOrderThread> mappingThreads = new ArrayList<MappingOrderThread>();
+    // One thread per authority, which is responsible for starting the auth request when it is ready.
+    List<AuthOrderThread> authThreads = new ArrayList<AuthOrderThread>();
+
+    Map<MapperDescription,MappingRequest> mappingRequests = new HashMap<MapperDescription,MappingRequest>();
+    Map<String,AuthRequest> authRequests = new HashMap<String,AuthRequest>();
+
+    Map<String,IMappingConnection> mappingConnMap = new HashMap<String,IMappingConnection>();
+    
+    // Fill in mappingConnMap, since we need to be able to find connections given connection names
+    for (IMappingConnection c : mappingConnections)
+    {
+      mappingConnMap.put(c.getName(),c);
+    }
+
+    // Set of connections we need to fire off
+    Set<MapperDescription> activeConnections = new HashSet<MapperDescription>();
+
+    // We do the minimal set of mapping requests and authorities.  Since it is the authority tokens we are
+    // looking for, we start there, and build authority requests first, then mapping requests that support them,
+    // etc.
+    // Create auth requests
+    for (String authDomain : domainMap.keySet())
+    {
+      IAuthorityConnection[] connections = domainConnections.get(authDomain);
+      for (int i = 0; i < connections.length; i++)
+      {
+        IAuthorityConnection thisConnection = connections[i];
+        String identifyingString = thisConnection.getDescription();
+        if (identifyingString == null || identifyingString.length() == 0)
+          identifyingString = thisConnection.getName();
+        
+        // Create a request
+        AuthRequest ar = new AuthRequest(thisConnection,identifyingString);
+        authRequests.put(thisConnection.getName(), ar);
+        
+        // We create an auth thread if there are prerequisites to meet.
+        // Otherwise, we just fire off the request
+        String domainUserID = domainMap.get(authDomain);
+        if (thisConnection.getPrerequisiteMapping() == null)
+        {
+          ar.setUserID(domainUserID);
+          if (!queue.addRequest(ar,thisConnection.getName()))
+            ar.completeRejectedRequest();
+        }
+        else
+        {
+          MapperDescription md = new MapperDescription(thisConnection.getPrerequisiteMapping(),authDomain);
+          AuthOrderThread thread = new AuthOrderThread(identifyingString,
+            ar, md,
+            queue, mappingRequests);
+          authThreads.add(thread);
+          // The same mapper can be used for multiple domains, although this is likely to be uncommon.  Nevertheless,
+          // mapper invocations need to be segregated to prevent trouble
+          activeConnections.add(md);
+        }
+      }
+    }
+
+    // Create mapping requests
+    while (!activeConnections.isEmpty())
+    {
+      Iterator<MapperDescription> connectionIter = activeConnections.iterator();
+      MapperDescription mapperDesc = connectionIter.next();
+      String connectionName = mapperDesc.mapperName;
+      String authDomain = mapperDesc.authDomain;
+      IMappingConnection thisConnection = mappingConnMap.get(connectionName);
+      String identifyingString = thisConnection.getDescription();
+      if (identifyingString == null || identifyingString.length() == 0)
+        identifyingString = connectionName;
+
+      // Create a request
+      MappingRequest mr = new MappingRequest(thisConnection,identifyingString);
+      mappingRequests.put(mapperDesc, mr);
+
+      // Either start up a thread, or just fire it off immediately.
+      if (thisConnection.getPrerequisiteMapping() == null)
+      {
+        mr.setUserID(domainMap.get(authDomain));
+        if (!mappingQueue.addRequest(mr,connectionName))
+          mr.completeRejectedRequest();
+      }
+      else
+      {
+        //System.out.println("Mapper: prerequisite found: '"+thisConnection.getPrerequisiteMapping()+"'");
+        MapperDescription p = new MapperDescription(thisConnection.getPrerequisiteMapping(),authDomain);
+        MappingOrderThread thread = new MappingOrderThread(identifyingString,
+          mr, p, mappingQueue, mappingRequests);
+        mappingThreads.add(thread);
+        if (mappingRequests.get(p) == null)
+          activeConnections.add(p);
+      }
+      activeConnections.remove(mapperDesc);
+    }
+    
+    // Start threads.  We have to wait until all the requests have been
+    // at least created before we do this.
+    for (MappingOrderThread thread : mappingThreads)
+    {
+      thread.start();
+    }
+    for (AuthOrderThread thread : authThreads)
+    {
+      thread.start();
+    }
+    
+    // Wait for the threads to finish up.  This will guarantee that all entities have run to completion.
+    for (MappingOrderThread thread : mappingThreads)
+    {
+      thread.finishUp();
+    }
+    for (AuthOrderThread thread : authThreads)
+    {
+      thread.finishUp();
+    }
+    
+    // This is probably unnecessary, but we do it anyway just to adhere to the contract
+    for (MappingRequest mr : mappingRequests.values())
+    {
+      mr.waitForComplete();
+    }
+    
+    // Handle all exceptions thrown during mapping.  In general this just means logging them, because
+    // the downstream authorities will presumably not find what they are looking for and error out that way.
+    for (MappingRequest mr : mappingRequests.values())
+    {
+      Throwable exception = mr.getAnswerException();
+      if (exception != null)
+      {
+        Logging.authorityService.warn("Mapping exception logged from "+mr.getIdentifyingString()+": "+exception.getMessage()+"; mapper aborted", exception);
+      }
+    }
+
+    // Wait for the authorities to answer
+    List<UserACLCache.AuthorityAnswer> answers = new ArrayList<UserACLCache.AuthorityAnswer>();
+    for (AuthRequest ar : authRequests.values())
+    {
+      if (Logging.authorityService.isDebugEnabled())
+        Logging.authorityService.debug("Waiting for answer from authority connection "+ar.getIdentifyingString()+" for user '"+ar.getUserID()+"'");
+
+      ar.waitForComplete();
+
+      if (Logging.authorityService.isDebugEnabled())
+        Logging.authorityService.debug("Received answer from authority connection "+ar.getIdentifyingString()+" for user '"+ar.getUserID()+"'");
+
+      answers.add(new UserACLCache.AuthorityAnswer(ar.getIdentifyingString(),ar.getAuthorityConnection().getAuthGroup(),
+        ar.getUserID(),ar.getAnswerResponse(),ar.getAnswerException()));
+    }
+    return answers;
+  }
+
+  /** Build the cache key for a request.  This covers the domain/user pairs and the authority connections
+  * (and their groups) that will be consulted for them.
+  */
+  protected static String buildCacheKey(Map<String,String> domainMap, Map<String,IAuthorityConnection[]> domainConnections)
+  {
+    StringBuilder sb = new StringBuilder();
+    for (String domain : new TreeSet<String>(domainMap.keySet()))
+    {
+      sb.append(URLEncoder.encode(domain)).append(":").append(URLEncoder.encode(domainMap.get(domain))).append("=");
+      IAuthorityConnection[] connections = domainConnections.get(domain);
+      String[] connectionDescriptions = new String[connections.length];
+      for (int i = 0; i < connections.length; i++)
+      {
+        connectionDescriptions[i] = URLEncoder.encode(connections[i].getName())+":"+URLEncoder.encode(connections[i].getAuthGroup());
+      }
+      Arrays.sort(connectionDescriptions);
+      for (String connectionDescription : connectionDescriptions)
+      {
+        sb.append(connectionDescription).append(",");
+      }
+      sb.append(";");
+    }
+    return sb.toString();
+  }
+
   /** This class represents a tuple of (mapper_name, auth_domain).
   */
   protected static class MapperDescription
@@ -521,7 +591,8 @@ public class UserACLServlet extends HttpServlet
         mappingRequest.waitForComplete();
         // Constraints are met.  Fire off the request.
         request.setUserID(mappingRequest.getAnswerResponse());
-        mappingRequestQueue.addRequest(request);
+        if (!mappingRequestQueue.addRequest(request,request.getMappingConnection().getName()))
+          request.completeRejectedRequest();
       }
       catch (Throwable e)
       {
@@ -584,7 +655,8 @@ public class UserACLServlet extends HttpServlet
         mappingRequest.waitForComplete();
         // Constraints are met.  Fire off the request.  User may be null if mapper failed!!
         request.setUserID(mappingRequest.getAnswerResponse());
-        authRequestQueue.addRequest(request);
+        if (!authRequestQueue.addRequest(request,request.getAuthorityConnection().getName()))
+          request.completeRejectedRequest();
       }
       catch (Throwable e)
       {
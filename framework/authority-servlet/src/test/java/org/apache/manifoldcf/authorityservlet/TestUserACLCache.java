@@ -0,0 +1,244 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.authorityservlet;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.authorities.interfaces.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestUserACLCache
+{
+
+  @Test
+  public void cachesUntilExpired()
+    throws Exception
+  {
+    UserACLCache cache = new UserACLCache(200L,10);
+    CountingResolver resolver = new CountingResolver(okAnswers("a"));
+    assertSame(resolver.answers,cache.lookup("key",resolver));
+    assertSame(resolver.answers,cache.lookup("key",resolver));
+    assertEquals(1,resolver.count.get());
+    assertEquals(1L,cache.getHitCount());
+    assertEquals(1L,cache.getMissCount());
+    Thread.sleep(300L);
+    cache.lookup("key",resolver);
+    assertEquals(2,resolver.count.get());
+    assertEquals(2L,cache.getMissCount());
+  }
+
+  @Test
+  public void zeroLifetimeDisablesCaching()
+    throws Exception
+  {
+    UserACLCache cache = new UserACLCache(0L,10);
+    CountingResolver resolver = new CountingResolver(okAnswers("a"));
+    cache.lookup("key",resolver);
+    cache.lookup("key",resolver);
+    assertEquals(2,resolver.count.get());
+    assertEquals(0,cache.getSize());
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed()
+    throws Exception
+  {
+    UserACLCache cache = new UserACLCache(60000L,2);
+    CountingResolver resolver = new CountingResolver(okAnswers("a"));
+    cache.lookup("one",resolver);
+    cache.lookup("two",resolver);
+    // Touch "one", so "two" is the eldest when "three" comes in
+    cache.lookup("one",resolver);
+    cache.lookup("three",resolver);
+    assertEquals(2,cache.getSize());
+    assertEquals(3,resolver.count.get());
+    cache.lookup("one",resolver);
+    assertEquals(3,resolver.count.get());
+    cache.lookup("two",resolver);
+    assertEquals(4,resolver.count.get());
+  }
+
+  @Test
+  public void doesNotCacheErrorsOrUnreachable()
+    throws Exception
+  {
+    UserACLCache cache = new UserACLCache(60000L,10);
+    List<UserACLCache.AuthorityAnswer> unreachable = new ArrayList<UserACLCache.AuthorityAnswer>();
+    unreachable.add(new UserACLCache.AuthorityAnswer("conn","group","user",
+      new AuthorizationResponse(new String[0],AuthorizationResponse.RESPONSE_UNREACHABLE),null));
+    CountingResolver unreachableResolver = new CountingResolver(unreachable);
+    cache.lookup("unreachable",unreachableResolver);
+    cache.lookup("unreachable",unreachableResolver);
+    assertEquals(2,unreachableResolver.count.get());
+
+    List<UserACLCache.AuthorityAnswer> failed = new ArrayList<UserACLCache.AuthorityAnswer>();
+    failed.add(new UserACLCache.AuthorityAnswer("conn","group","user",null,new ManifoldCFException("Failed")));
+    CountingResolver failedResolver = new CountingResolver(failed);
+    cache.lookup("failed",failedResolver);
+    cache.lookup("failed",failedResolver);
+    assertEquals(2,failedResolver.count.get());
+    assertEquals(0,cache.getSize());
+  }
+
+  @Test
+  public void coalescesConcurrentLookups()
+    throws Exception
+  {
+    final UserACLCache cache = new UserACLCache(0L,10);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountingResolver resolver = new CountingResolver(okAnswers("a"))
+    {
+      @Override
+      public List<UserACLCache.AuthorityAnswer> resolve()
+        throws ManifoldCFException, InterruptedException
+      {
+        release.await();
+        return super.resolve();
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try
+    {
+      List<Future<List<UserACLCache.AuthorityAnswer>>> futures = new ArrayList<Future<List<UserACLCache.AuthorityAnswer>>>();
+      for (int i = 0; i < 4; i++)
+      {
+        futures.add(executor.submit(new Callable<List<UserACLCache.AuthorityAnswer>>()
+          {
+            @Override
+            public List<UserACLCache.AuthorityAnswer> call()
+              throws Exception
+            {
+              return cache.lookup("key",resolver);
+            }
+          }));
+      }
+      // Wait until the other three are waiting on the leader
+      long deadline = System.currentTimeMillis() + 10000L;
+      while (cache.getCoalescedCount() < 3L && System.currentTimeMillis() < deadline)
+        Thread.sleep(10L);
+      release.countDown();
+      for (Future<List<UserACLCache.AuthorityAnswer>> future : futures)
+        assertSame(resolver.answers,future.get(10L,TimeUnit.SECONDS));
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+    assertEquals(1,resolver.count.get());
+    assertEquals(1L,cache.getMissCount());
+    assertEquals(3L,cache.getCoalescedCount());
+  }
+
+  @Test
+  public void waiterRetriesWhenLeaderFails()
+    throws Exception
+  {
+    final UserACLCache cache = new UserACLCache(60000L,10);
+    final CountDownLatch leaderStarted = new CountDownLatch(1);
+    final CountDownLatch failLeader = new CountDownLatch(1);
+    Thread leader = new Thread()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          cache.lookup("key",new UserACLCache.Resolver()
+            {
+              @Override
+              public List<UserACLCache.AuthorityAnswer> resolve()
+                throws ManifoldCFException, InterruptedException
+              {
+                leaderStarted.countDown();
+                failLeader.await();
+                throw new ManifoldCFException("Leader failed");
+              }
+            });
+        }
+        catch (Exception e)
+        {
+          // Expected
+        }
+      }
+    };
+    leader.start();
+    leaderStarted.await();
+
+    final CountingResolver resolver = new CountingResolver(okAnswers("a"));
+    final List<UserACLCache.AuthorityAnswer>[] result = new List[1];
+    Thread waiter = new Thread()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          result[0] = cache.lookup("key",resolver);
+        }
+        catch (Exception e)
+        {
+          // Leaves the result unset
+        }
+      }
+    };
+    waiter.start();
+    long deadline = System.currentTimeMillis() + 10000L;
+    while (cache.getCoalescedCount() < 1L && System.currentTimeMillis() < deadline)
+      Thread.sleep(10L);
+    failLeader.countDown();
+    leader.join(10000L);
+    waiter.join(10000L);
+    assertSame(resolver.answers,result[0]);
+    assertEquals(1,resolver.count.get());
+    assertEquals(1,cache.getSize());
+  }
+
+  protected static List<UserACLCache.AuthorityAnswer> okAnswers(String token)
+  {
+    List<UserACLCache.AuthorityAnswer> answers = new ArrayList<UserACLCache.AuthorityAnswer>();
+    answers.add(new UserACLCache.AuthorityAnswer("conn","group","user",
+      new AuthorizationResponse(new String[]{token},AuthorizationResponse.RESPONSE_OK),null));
+    return answers;
+  }
+
+  protected static class CountingResolver implements UserACLCache.Resolver
+  {
+    public final List<UserACLCache.AuthorityAnswer> answers;
+    public final AtomicInteger count = new AtomicInteger(0);
+
+    public CountingResolver(List<UserACLCache.AuthorityAnswer> answers)
+    {
+      this.answers = answers;
+    }
+
+    @Override
+    public List<UserACLCache.AuthorityAnswer> resolve()
+      throws ManifoldCFException, InterruptedException
+    {
+      count.incrementAndGet();
+      return answers;
+    }
+  }
+
+}
@@ -0,0 +1,226 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.connectorcommon.common;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.connectorcommon.interfaces.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.NTCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultRedirectStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+/** A set of http clients whose connections are kept alive between fetches, so that polling the same hosts
+* over and over does not pay for connection setup (and the TLS handshake) every time.  There is one client for
+* each distinct combination of timeouts and proxy settings; each client pools its connections per host.
+* Callers are expected to limit their own use of connections per host; the pool only bounds the number of
+* connections it keeps.  Content decompression is left to the caller; see HttpFetchSupport.
+*/
+public class HttpClientPool
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** Current host name, for NTLM proxy authentication */
+  protected static String currentHost = null;
+  static
+  {
+    try
+    {
+      currentHost = java.net.InetAddress.getLocalHost().getHostName();
+    }
+    catch (java.net.UnknownHostException e)
+    {
+    }
+  }
+
+  /** The maximum connections kept per host, for each client */
+  protected final int maxConnectionsPerHost;
+  /** The maximum connections kept by each client */
+  protected final int maxConnections;
+
+  /** The clients, keyed by their settings */
+  protected final Map<String,PooledClient> clients = new HashMap<String,PooledClient>();
+
+  /** Constructor.
+  *@param maxConnectionsPerHost is the maximum number of connections any one client keeps open to a single host.
+  *@param maxConnections is the maximum number of connections any one client keeps open in total.  When it is
+  *  reached, the connections that have been idle the longest are closed to make room.
+  */
+  public HttpClientPool(int maxConnectionsPerHost, int maxConnections)
+  {
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+    this.maxConnections = maxConnections;
+  }
+
+  /** Get the client for a set of settings, creating it if need be.
+  *@param socketTimeoutMilliseconds is the socket timeout.
+  *@param connectionTimeoutMilliseconds is the connection timeout.
+  *@param proxyHost is the proxy host, or null if none.
+  *@param proxyPort is the proxy port.
+  *@param proxyAuthDomain is the proxy authentication domain, or null.
+  *@param proxyAuthUsername is the proxy authentication user name, or null.
+  *@param proxyAuthPassword is the proxy authentication password, or null.
+  *@return the client.  Release connections by reading response bodies to the end, or by aborting the request.
+  */
+  public synchronized HttpClient getClient(int socketTimeoutMilliseconds, int connectionTimeoutMilliseconds,
+    String proxyHost, int proxyPort, String proxyAuthDomain, String proxyAuthUsername, String proxyAuthPassword)
+    throws ManifoldCFException
+  {
+    if (proxyHost != null && proxyHost.length() == 0)
+      proxyHost = null;
+    if (proxyHost == null || proxyAuthUsername == null || proxyAuthUsername.length() == 0)
+    {
+      proxyAuthDomain = null;
+      proxyAuthUsername = null;
+      proxyAuthPassword = null;
+    }
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(Integer.toString(socketTimeoutMilliseconds)).append(":")
+      .append(Integer.toString(connectionTimeoutMilliseconds)).append(":");
+    if (proxyHost != null)
+    {
+      sb.append(proxyHost).append(":").append(Integer.toString(proxyPort)).append(":");
+      if (proxyAuthUsername != null)
+        sb.append(proxyAuthDomain).append("\\").append(proxyAuthUsername).append(":").append(proxyAuthPassword);
+    }
+    String key = sb.toString();
+
+    PooledClient client = clients.get(key);
+    if (client == null)
+    {
+      client = new PooledClient(socketTimeoutMilliseconds,connectionTimeoutMilliseconds,
+        proxyHost,proxyPort,proxyAuthDomain,proxyAuthUsername,proxyAuthPassword);
+      clients.put(key,client);
+    }
+    return client.getHttpClient();
+  }
+
+  /** Close connections that have not been used for a while, and any the servers have closed.
+  *@param idleTimeoutMilliseconds is how long a connection may sit unused before it is closed.
+  */
+  public synchronized void closeIdleConnections(long idleTimeoutMilliseconds)
+  {
+    for (PooledClient client : clients.values())
+    {
+      client.closeIdleConnections(idleTimeoutMilliseconds);
+    }
+  }
+
+  /** Close all connections, and forget all clients.  Clients that are still in use stop working.
+  */
+  public synchronized void closeAll()
+  {
+    for (PooledClient client : clients.values())
+    {
+      client.shutdown();
+    }
+    clients.clear();
+  }
+
+  /** One client, with its connection manager */
+  protected class PooledClient
+  {
+    protected final PoolingHttpClientConnectionManager connectionManager;
+    protected final HttpClient httpClient;
+
+    public PooledClient(int socketTimeoutMilliseconds, int connectionTimeoutMilliseconds,
+      String proxyHost, int proxyPort, String proxyAuthDomain, String proxyAuthUsername, String proxyAuthPassword)
+      throws ManifoldCFException
+    {
+      javax.net.ssl.SSLSocketFactory httpsSocketFactory = KeystoreManagerFactory.getTrustingSecureSocketFactory();
+      SSLConnectionSocketFactory myFactory = new SSLConnectionSocketFactory(new InterruptibleSocketFactory(httpsSocketFactory,connectionTimeoutMilliseconds),
+        NoopHostnameVerifier.INSTANCE);
+
+      connectionManager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+        .register("https", myFactory)
+        .build());
+      connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+      connectionManager.setMaxTotal(maxConnections);
+      connectionManager.setValidateAfterInactivity(2000);
+      connectionManager.setDefaultSocketConfig(SocketConfig.custom()
+        .setTcpNoDelay(true)
+        .setSoTimeout(socketTimeoutMilliseconds)
+        .build());
+
+      CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+
+      RequestConfig.Builder requestBuilder = RequestConfig.custom()
+        .setCircularRedirectsAllowed(true)
+        .setSocketTimeout(socketTimeoutMilliseconds)
+        .setExpectContinueEnabled(true)
+        .setConnectTimeout(connectionTimeoutMilliseconds)
+        .setConnectionRequestTimeout(socketTimeoutMilliseconds);
+
+      if (proxyHost != null)
+      {
+        if (proxyAuthUsername != null)
+        {
+          credentialsProvider.setCredentials(
+            new AuthScope(proxyHost, proxyPort),
+            new NTCredentials(proxyAuthUsername, (proxyAuthPassword==null)?"":proxyAuthPassword, currentHost, (proxyAuthDomain==null)?"":proxyAuthDomain));
+        }
+        requestBuilder.setProxy(new HttpHost(proxyHost, proxyPort));
+      }
+
+      httpClient = HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .disableAutomaticRetries()
+        .disableContentCompression()
+        .setDefaultRequestConfig(requestBuilder.build())
+        .setDefaultCredentialsProvider(credentialsProvider)
+        .setRequestExecutor(new HttpRequestExecutor(socketTimeoutMilliseconds))
+        .setRedirectStrategy(new DefaultRedirectStrategy())
+        .build();
+    }
+
+    public HttpClient getHttpClient()
+    {
+      return httpClient;
+    }
+
+    public void closeIdleConnections(long idleTimeoutMilliseconds)
+    {
+      connectionManager.closeExpiredConnections();
+      connectionManager.closeIdleConnections(idleTimeoutMilliseconds, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown()
+    {
+      connectionManager.shutdown();
+    }
+  }
+
+}
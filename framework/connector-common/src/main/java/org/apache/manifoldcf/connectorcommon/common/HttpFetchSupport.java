@@ -0,0 +1,160 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.connectorcommon.common;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.message.BasicHeader;
+
+/** Request and response handling shared by the connectors that crawl over http.  Fetches ask for
+* compressed content, may be made conditional on the validators from the previous fetch, and have their
+* bodies decoded here, so that the clients that execute them should have automatic content decompression
+* turned off.
+*/
+public class HttpFetchSupport
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** The content codings we can decode */
+  public static final String ACCEPT_ENCODING = "gzip,deflate";
+
+  private HttpFetchSupport()
+  {
+  }
+
+  /** Set the headers that go with every fetch.
+  *@param method is the request.
+  *@param userAgent is the User-Agent header value.
+  *@param from is the From header value.
+  */
+  public static void setFetchHeaders(HttpRequestBase method, String userAgent, String from)
+  {
+    method.setHeader(new BasicHeader("User-Agent",userAgent));
+    method.setHeader(new BasicHeader("From",from));
+    method.setHeader(new BasicHeader("Accept","*/*"));
+    method.setHeader(new BasicHeader("Accept-Encoding",ACCEPT_ENCODING));
+  }
+
+  /** Make a fetch conditional, so that the server answers 304 (Not Modified) if the document
+  * still matches what was fetched before.
+  *@param method is the request.
+  *@param ifNoneMatch is the ETag value from the previous fetch, or null.
+  *@param ifModifiedSince is the Last-Modified value from the previous fetch, or null.
+  */
+  public static void setConditionalHeaders(HttpRequestBase method, String ifNoneMatch, String ifModifiedSince)
+  {
+    if (ifNoneMatch != null)
+      method.setHeader(new BasicHeader("If-None-Match",ifNoneMatch));
+    if (ifModifiedSince != null)
+      method.setHeader(new BasicHeader("If-Modified-Since",ifModifiedSince));
+  }
+
+  /** Wrap a response body so that it is decoded according to the response's content coding.  The decoder
+  * is set up on the first read, so that a body that is not really compressed fails where reads fail.
+  *@param bodyStream is the body as it came over the wire.
+  *@param contentEncoding is the Content-Encoding header, or null.
+  *@return the decoded stream.
+  */
+  public static InputStream decodeContent(InputStream bodyStream, Header contentEncoding)
+  {
+    if (contentEncoding != null)
+    {
+      for (HeaderElement codec : contentEncoding.getElements())
+      {
+        if (codec.getName().equalsIgnoreCase("gzip") || codec.getName().equalsIgnoreCase("x-gzip"))
+          return new DecodingInputStream(bodyStream,true);
+        if (codec.getName().equalsIgnoreCase("deflate"))
+          return new DecodingInputStream(bodyStream,false);
+      }
+    }
+    return bodyStream;
+  }
+
+  /** Input stream that decodes a gzip or deflate body, once there is something to read */
+  protected static class DecodingInputStream extends InputStream
+  {
+    protected final InputStream bodyStream;
+    protected final boolean gzip;
+    protected InputStream decodedStream = null;
+
+    public DecodingInputStream(InputStream bodyStream, boolean gzip)
+    {
+      this.bodyStream = bodyStream;
+      this.gzip = gzip;
+    }
+
+    protected InputStream getDecodedStream()
+      throws IOException
+    {
+      if (decodedStream == null)
+      {
+        if (gzip)
+          decodedStream = new GZIPInputStream(bodyStream);
+        else
+          decodedStream = new DeflateInputStream(bodyStream);
+      }
+      return decodedStream;
+    }
+
+    @Override
+    public int read()
+      throws IOException
+    {
+      return getDecodedStream().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+      throws IOException
+    {
+      return getDecodedStream().read(b,off,len);
+    }
+
+    @Override
+    public long skip(long n)
+      throws IOException
+    {
+      return getDecodedStream().skip(n);
+    }
+
+    @Override
+    public int available()
+      throws IOException
+    {
+      if (decodedStream == null)
+        return 0;
+      return decodedStream.available();
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      if (decodedStream != null)
+        decodedStream.close();
+      else
+        bodyStream.close();
+    }
+  }
+
+}
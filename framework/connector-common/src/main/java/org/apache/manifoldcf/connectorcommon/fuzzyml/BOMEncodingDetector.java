@@ -242,11 +242,7 @@ public class BOMEncodingDetector extends SingleByteReceiver implements EncodingD
     if (overflowByteReceiver == null)
       return super.dealWithRemainder(buffer,offset,len,inputStream);
     // Create a wrapped input stream with all the missing bytes
-    while (len > 0)
-    {
-      replayBuffer.appendByte(buffer[offset++]);
-      len--;
-    }
+    replayBuffer.appendBytes(buffer,offset,len);
     return overflowByteReceiver.dealWithBytes(new PrefixedInputStream(replayBuffer,inputStream));
   }
 
@@ -69,6 +69,29 @@ public class ByteBuffer
     totalBytes++;
   }
   
+  /** Add a run of bytes to the buffer at the end.
+  */
+  public void appendBytes(byte[] buffer, int offset, int len)
+  {
+    while (len > 0)
+    {
+      if (currentIndex == arraySize || currentIndex == -1)
+      {
+        currentBuffer = new byte[arraySize];
+        arrayOfArrays.add(currentBuffer);
+        currentIndex = 0;
+      }
+      int amt = arraySize - currentIndex;
+      if (amt > len)
+        amt = len;
+      System.arraycopy(buffer,offset,currentBuffer,currentIndex,amt);
+      currentIndex += amt;
+      totalBytes += amt;
+      offset += amt;
+      len -= amt;
+    }
+  }
+  
   /** Read a byte from the buffer from the specified place.
   */
   public byte readByte(int position)
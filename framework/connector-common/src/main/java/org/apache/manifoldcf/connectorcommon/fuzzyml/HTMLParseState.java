@@ -160,4 +160,15 @@ public class HTMLParseState extends TagParseState
     return super.noteEscapedCharacter(thisChar);
   }
 
+  /** This method gets called for runs of characters that are found within an
+  * escape block, e.g. CDATA.
+  *@return -1 to continue, or the index just past the character that halted further processing.
+  */
+  @Override
+  protected final int noteEscapedCharacters(char[] buffer, int offset, int len)
+    throws ManifoldCFException
+  {
+    return super.noteEscapedCharacters(buffer,offset,len);
+  }
+
 }
@@ -21,6 +21,7 @@ package org.apache.manifoldcf.connectorcommon.fuzzyml;
 import org.apache.manifoldcf.core.interfaces.*;
 import org.apache.manifoldcf.core.system.Logging;
 import java.util.*;
+import java.io.*;
 
 /** This class represents a basic xml/html tag parser.
 * It is capable of recognizing the following xml and html constructs:
@@ -118,6 +119,69 @@ public class TagParseState extends SingleCharacterReceiver
     super(65536);
   }
 
+  /** Deal with a block of characters.  Plain text, comment bodies, and CDATA bodies are
+  * scanned ahead to the next character that could change the parse state, and each run is
+  * handled in one go; everything else goes through dealWithCharacter() as usual.
+  */
+  @Override
+  public int dealWithCharacters(char[] buffer, int offset, int len)
+    throws IOException, ManifoldCFException
+  {
+    int end = offset + len;
+    int i = offset;
+    while (i < end)
+    {
+      if (currentState == TAGPARSESTATE_NORMAL && bTagDepth == 0 && !inAmpersand)
+      {
+        int runEnd = i;
+        while (runEnd < end)
+        {
+          char c = buffer[runEnd];
+          if (c == '<' || c == '&')
+            break;
+          runEnd++;
+        }
+        if (runEnd > i)
+        {
+          int doneIndex = noteNormalCharacters(buffer, i, runEnd - i);
+          if (doneIndex != -1)
+            return doneIndex;
+          i = runEnd;
+          continue;
+        }
+      }
+      else if (currentState == TAGPARSESTATE_IN_COMMENT)
+      {
+        // Nothing in a comment matters until a dash shows up
+        while (i < end && buffer[i] != '-')
+        {
+          i++;
+        }
+        if (i == end)
+          break;
+      }
+      else if (currentState == TAGPARSESTATE_IN_CDATA_BODY)
+      {
+        int runEnd = i;
+        while (runEnd < end && buffer[runEnd] != ']')
+        {
+          runEnd++;
+        }
+        if (runEnd > i)
+        {
+          int doneIndex = noteEscapedCharacters(buffer, i, runEnd - i);
+          if (doneIndex != -1)
+            return doneIndex;
+          i = runEnd;
+          continue;
+        }
+      }
+      if (dealWithCharacter(buffer[i++]))
+        return i;
+    }
+    return -1;
+  }
+
   /** Deal with a character.  No exceptions are allowed, since those would represent
   * syntax errors, and we don't want those to cause difficulty. */
   @Override
@@ -1082,6 +1146,23 @@ public class TagParseState extends SingleCharacterReceiver
     return false;
   }
 
+  /** This method gets called for runs of characters that are not part of a tag etc.
+  * By default it calls noteNormalCharacter() for each character; override it to
+  * handle a whole run at once.
+  *@return -1 to continue, or the index just past the character that halted further processing.
+  */
+  protected int noteNormalCharacters(char[] buffer, int offset, int len)
+    throws ManifoldCFException
+  {
+    int end = offset + len;
+    for (int i = offset; i < end; i++)
+    {
+      if (noteNormalCharacter(buffer[i]))
+        return i+1;
+    }
+    return -1;
+  }
+
   /** This method gets called for every character that is found within an
   * escape block, e.g. CDATA.
   * Override this method to intercept such characters.
@@ -1092,6 +1173,24 @@ public class TagParseState extends SingleCharacterReceiver
   {
     return false;
   }
+
+  /** This method gets called for runs of characters that are found within an
+  * escape block, e.g. CDATA.
+  * By default it calls noteEscapedCharacter() for each character; override it to
+  * handle a whole run at once.
+  *@return -1 to continue, or the index just past the character that halted further processing.
+  */
+  protected int noteEscapedCharacters(char[] buffer, int offset, int len)
+    throws ManifoldCFException
+  {
+    int end = offset + len;
+    for (int i = offset; i < end; i++)
+    {
+      if (noteEscapedCharacter(buffer[i]))
+        return i+1;
+    }
+    return -1;
+  }
   
   /** Decode an html attribute */
   protected static String attributeDecode(String input)
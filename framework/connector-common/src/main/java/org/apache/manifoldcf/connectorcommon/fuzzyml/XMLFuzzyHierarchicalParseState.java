@@ -126,6 +126,17 @@ public class XMLFuzzyHierarchicalParseState extends XMLFuzzyParseState
     appendToCharacterBuffer(thisChar);
     return false;
   }
+
+  /** This method gets called for runs of characters that are not part of a tag etc.
+  *@return -1 to continue, or the index just past the character that halted further processing.
+  */
+  @Override
+  protected int noteNormalCharacters(char[] buffer, int offset, int len)
+    throws ManifoldCFException
+  {
+    appendToCharacterBuffer(buffer,offset,len);
+    return -1;
+  }
   
   protected void appendToCharacterBuffer(char thisChar)
     throws ManifoldCFException
@@ -135,6 +146,23 @@ public class XMLFuzzyHierarchicalParseState extends XMLFuzzyParseState
       flushCharacterBuffer();
   }
 
+  protected void appendToCharacterBuffer(char[] buffer, int offset, int len)
+    throws ManifoldCFException
+  {
+    // Fill up to the chunk size at a time, so that chunks come out exactly as they would one character at a time
+    while (len > 0)
+    {
+      int amt = MAX_CHUNK_SIZE - characterBuffer.length();
+      if (amt > len)
+        amt = len;
+      characterBuffer.append(buffer,offset,amt);
+      offset += amt;
+      len -= amt;
+      if (characterBuffer.length() >= MAX_CHUNK_SIZE)
+        flushCharacterBuffer();
+    }
+  }
+
   protected void flushCharacterBuffer()
     throws ManifoldCFException
   {
@@ -172,6 +200,19 @@ public class XMLFuzzyHierarchicalParseState extends XMLFuzzyParseState
     return false;
   }
 
+  /** This method gets called for runs of characters that are found within an
+  * escape block, e.g. CDATA.
+  *@return -1 to continue, or the index just past the character that halted further processing.
+  */
+  @Override
+  protected int noteEscapedCharacters(char[] buffer, int offset, int len)
+    throws ManifoldCFException
+  {
+    if (captureEscaped)
+      appendToCharacterBuffer(buffer,offset,len);
+    return -1;
+  }
+
   /** Called for the end of every cdata-like tag.
   *@return true to halt further processing.
   */
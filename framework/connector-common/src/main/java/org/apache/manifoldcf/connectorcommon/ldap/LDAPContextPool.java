@@ -0,0 +1,292 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.connectorcommon.ldap;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import java.util.*;
+
+/** A pool of bound LDAP contexts, kept alive between requests and shared by every
+* connector instance in the process that talks to the same server with the same credentials.
+* Callers grab a session, use it, and then either release it back to the pool or, if it
+* failed in a way that suggests the connection is broken, invalidate it.
+*
+* Each idle session is owned by the connector instance that last released it, and each owner keeps
+* at most one idle session per key.  A connector instance reports itself as connected while it owns an
+* idle session, so every open context is accounted for by the framework's connection throttling: in use
+* by a connector instance that has been handed out, or idle and owned by a pooled instance that counts
+* as connected.  When a connector instance is disconnected, the sessions it owns are closed.
+*/
+public class LDAPContextPool
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** Default time an unused context is kept open: 5 minutes */
+  public final static long DEFAULT_IDLE_TIMEOUT = 300000L;
+  /** Default time after which an idle context is checked before being reused */
+  public final static long DEFAULT_VALIDATION_INTERVAL = 30000L;
+  /** Default maximum number of idle contexts kept per key */
+  public final static int DEFAULT_MAX_IDLE_PER_KEY = 10;
+
+  /** Creates new sessions when the pool has none to offer */
+  public interface SessionFactory
+  {
+    /** Create and bind a new session.
+    *@return the session.
+    */
+    public LDAPSession createSession()
+      throws ManifoldCFException;
+  }
+
+  protected final long idleTimeout;
+  protected final long validationInterval;
+  protected final int maxIdlePerKey;
+
+  /** Idle sessions, by key.  The most recently used session is at the end of each list. */
+  protected final Map<String,LinkedList<LDAPSession>> idleSessions = new HashMap<String,LinkedList<LDAPSession>>();
+
+  /** Constructor, with default settings.
+  */
+  public LDAPContextPool()
+  {
+    this(DEFAULT_IDLE_TIMEOUT,DEFAULT_VALIDATION_INTERVAL,DEFAULT_MAX_IDLE_PER_KEY);
+  }
+
+  /** Constructor.
+  *@param idleTimeout is the time an unused session is kept open.
+  *@param validationInterval is the idle time after which a session is checked before reuse.
+  *@param maxIdlePerKey is the maximum number of idle sessions kept for one key.
+  */
+  public LDAPContextPool(long idleTimeout, long validationInterval, int maxIdlePerKey)
+  {
+    this.idleTimeout = idleTimeout;
+    this.validationInterval = validationInterval;
+    this.maxIdlePerKey = maxIdlePerKey;
+  }
+
+  /** Grab a session.
+  *@param poolKey describes the server, credentials, and anything else that makes sessions interchangeable.
+  *@param owner is the connector instance grabbing the session.
+  *@param factory creates a session if no idle one is usable.
+  *@return the session, for the exclusive use of the caller until released.
+  */
+  public LDAPSession grab(String poolKey, Object owner, SessionFactory factory)
+    throws ManifoldCFException
+  {
+    while (true)
+    {
+      LDAPSession session;
+      synchronized (this)
+      {
+        LinkedList<LDAPSession> list = idleSessions.get(poolKey);
+        if (list == null)
+          break;
+        // Take the owner's own session if there is one, otherwise the most recently used one,
+        // so that surplus sessions age out
+        session = null;
+        Iterator<LDAPSession> iter = list.iterator();
+        while (iter.hasNext())
+        {
+          LDAPSession candidate = iter.next();
+          if (candidate.owner == owner)
+          {
+            iter.remove();
+            session = candidate;
+            break;
+          }
+        }
+        if (session == null)
+          session = list.removeLast();
+        session.owner = null;
+        if (list.size() == 0)
+          idleSessions.remove(poolKey);
+      }
+      long currentTime = System.currentTimeMillis();
+      if (currentTime - session.lastUsedTime > idleTimeout)
+      {
+        session.close();
+        continue;
+      }
+      if (currentTime - session.lastValidatedTime > validationInterval && !session.validate(currentTime))
+      {
+        session.close();
+        continue;
+      }
+      return session;
+    }
+    LDAPSession session = factory.createSession();
+    session.poolKey = poolKey;
+    return session;
+  }
+
+  /** Return a working session to the pool.
+  *@param session is the session.
+  *@param owner is the connector instance releasing it, which becomes its owner.
+  */
+  public void release(LDAPSession session, Object owner)
+  {
+    long currentTime = System.currentTimeMillis();
+    session.lastUsedTime = currentTime;
+    session.lastValidatedTime = currentTime;
+    List<LDAPSession> excess = new ArrayList<LDAPSession>();
+    synchronized (this)
+    {
+      LinkedList<LDAPSession> list = idleSessions.get(session.poolKey);
+      if (list == null)
+      {
+        list = new LinkedList<LDAPSession>();
+        idleSessions.put(session.poolKey,list);
+      }
+      // An owner keeps only one idle session per key
+      Iterator<LDAPSession> iter = list.iterator();
+      while (iter.hasNext())
+      {
+        LDAPSession other = iter.next();
+        if (other.owner == owner)
+        {
+          iter.remove();
+          excess.add(other);
+        }
+      }
+      session.owner = owner;
+      list.addLast(session);
+      if (list.size() > maxIdlePerKey)
+        excess.add(list.removeFirst());
+    }
+    for (LDAPSession other : excess)
+    {
+      other.close();
+    }
+  }
+
+  /** Discard a session that may be broken.
+  *@param session is the session.
+  */
+  public void invalidate(LDAPSession session)
+  {
+    session.close();
+  }
+
+  /** Close all idle sessions for a key, so that the next grab binds afresh.
+  *@param poolKey is the key.
+  */
+  public void flush(String poolKey)
+  {
+    LinkedList<LDAPSession> list;
+    synchronized (this)
+    {
+      list = idleSessions.remove(poolKey);
+    }
+    if (list != null)
+    {
+      for (LDAPSession session : list)
+      {
+        session.close();
+      }
+    }
+  }
+
+  /** Close the idle sessions an owner holds, e.g. because the owner is being disconnected.
+  *@param owner is the owner.
+  */
+  public void closeOwned(Object owner)
+  {
+    List<LDAPSession> owned = new ArrayList<LDAPSession>();
+    synchronized (this)
+    {
+      Iterator<Map.Entry<String,LinkedList<LDAPSession>>> iter = idleSessions.entrySet().iterator();
+      while (iter.hasNext())
+      {
+        LinkedList<LDAPSession> list = iter.next().getValue();
+        Iterator<LDAPSession> sessionIter = list.iterator();
+        while (sessionIter.hasNext())
+        {
+          LDAPSession session = sessionIter.next();
+          if (session.owner == owner)
+          {
+            sessionIter.remove();
+            owned.add(session);
+          }
+        }
+        if (list.size() == 0)
+          iter.remove();
+      }
+    }
+    for (LDAPSession session : owned)
+    {
+      session.close();
+    }
+  }
+
+  /** Check whether an owner holds any idle session.  Connector instances use this to
+  * answer isConnected().
+  *@param owner is the owner.
+  *@return true if the owner holds an idle session.
+  */
+  public synchronized boolean isOwner(Object owner)
+  {
+    for (LinkedList<LDAPSession> list : idleSessions.values())
+    {
+      for (LDAPSession session : list)
+      {
+        if (session.owner == owner)
+          return true;
+      }
+    }
+    return false;
+  }
+
+  /** Close every session that has been idle for longer than the idle timeout.
+  * Connectors call this from their poll() method.
+  *@param currentTime is the current time.
+  */
+  public void expireIdle(long currentTime)
+  {
+    List<LDAPSession> expired = new ArrayList<LDAPSession>();
+    synchronized (this)
+    {
+      Iterator<Map.Entry<String,LinkedList<LDAPSession>>> iter = idleSessions.entrySet().iterator();
+      while (iter.hasNext())
+      {
+        LinkedList<LDAPSession> list = iter.next().getValue();
+        // Oldest first
+        while (list.size() > 0 && currentTime - list.getFirst().lastUsedTime > idleTimeout)
+        {
+          expired.add(list.removeFirst());
+        }
+        if (list.size() == 0)
+          iter.remove();
+      }
+    }
+    for (LDAPSession session : expired)
+    {
+      session.close();
+    }
+  }
+
+  /** Get the number of idle sessions for a key.
+  */
+  public synchronized int getIdleCount(String poolKey)
+  {
+    LinkedList<LDAPSession> list = idleSessions.get(poolKey);
+    if (list == null)
+      return 0;
+    return list.size();
+  }
+
+}
@@ -0,0 +1,202 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.connectorcommon.ldap;
+
+import java.io.*;
+import java.util.*;
+import javax.naming.*;
+
+/** Process-wide cache of the group membership graph of a directory.
+* Each node records the groups that directly contain one group, so that nested
+* membership can be resolved transitively without going back to the server for every
+* level of every request.  Nodes expire after a fixed lifetime, and a single group can be
+* invalidated when it is known to have changed.  Different directories, or different group
+* searches against the same directory, are kept apart by a namespace string.
+*/
+public class LDAPGroupCache
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** Looks up direct group membership on the server */
+  public interface GroupLookup
+  {
+    /** Find the groups that directly contain a member.
+    *@param memberDN is the distinguished name of a user or group.
+    *@return the containing groups' names (i.e. their tokens), keyed by the groups' distinguished names.
+    */
+    public Map<String,String[]> findGroups(String memberDN)
+      throws NamingException, IOException;
+  }
+
+  protected final long lifetime;
+  protected final int maxSize;
+
+  /** Cached nodes, in access order */
+  protected final LinkedHashMap<String,GroupNode> nodes = new LinkedHashMap<String,GroupNode>(16,0.75f,true);
+
+  protected long hitCount = 0L;
+  protected long missCount = 0L;
+
+  /** Constructor.
+  *@param lifetime is the time in milliseconds a node stays valid.
+  *@param maxSize is the maximum number of nodes kept.
+  */
+  public LDAPGroupCache(long lifetime, int maxSize)
+  {
+    this.lifetime = lifetime;
+    this.maxSize = maxSize;
+  }
+
+  /** Resolve all groups a member belongs to, directly or through nested groups.
+  * The member's own direct groups are always looked up; only group-to-group edges are cached.
+  * Cycles are tolerated.
+  *@param namespace identifies the directory and group search.
+  *@param memberDN is the member's distinguished name.
+  *@param lookup performs uncached lookups.
+  *@param maxDepth is the maximum nesting depth to follow; 1 means direct groups only.
+  *@return the groups' names, keyed by the groups' distinguished names, in discovery order.
+  */
+  public Map<String,String[]> resolveGroups(String namespace, String memberDN, GroupLookup lookup, int maxDepth)
+    throws NamingException, IOException
+  {
+    Map<String,String[]> rval = new LinkedHashMap<String,String[]>();
+    Set<String> seen = new HashSet<String>();
+    seen.add(normalize(memberDN));
+    List<String> currentLevel = new ArrayList<String>();
+    addGroups(lookup.findGroups(memberDN),rval,seen,currentLevel);
+    int depth = 1;
+    while (currentLevel.size() > 0 && depth < maxDepth)
+    {
+      List<String> nextLevel = new ArrayList<String>();
+      for (String groupDN : currentLevel)
+      {
+        addGroups(getParentGroups(namespace,groupDN,lookup),rval,seen,nextLevel);
+      }
+      currentLevel = nextLevel;
+      depth++;
+    }
+    return rval;
+  }
+
+  /** Forget what is known about one group.
+  *@param namespace identifies the directory and group search.
+  *@param groupDN is the group's distinguished name.
+  */
+  public synchronized void invalidateGroup(String namespace, String groupDN)
+  {
+    nodes.remove(makeKey(namespace,groupDN));
+  }
+
+  /** Forget everything known about a namespace.
+  *@param namespace identifies the directory and group search.
+  */
+  public synchronized void invalidateNamespace(String namespace)
+  {
+    String prefix = namespace + "\u0000";
+    Iterator<String> iter = nodes.keySet().iterator();
+    while (iter.hasNext())
+    {
+      if (iter.next().startsWith(prefix))
+        iter.remove();
+    }
+  }
+
+  /** Get the number of lookups answered from the cache. */
+  public synchronized long getHitCount()
+  {
+    return hitCount;
+  }
+
+  /** Get the number of lookups that went to the server. */
+  public synchronized long getMissCount()
+  {
+    return missCount;
+  }
+
+  /** Get the groups directly containing a group, from the cache if possible.
+  */
+  protected Map<String,String[]> getParentGroups(String namespace, String groupDN, GroupLookup lookup)
+    throws NamingException, IOException
+  {
+    String key = makeKey(namespace,groupDN);
+    synchronized (this)
+    {
+      GroupNode node = nodes.get(key);
+      if (node != null)
+      {
+        if (node.expirationTime > System.currentTimeMillis())
+        {
+          hitCount++;
+          return node.parents;
+        }
+        nodes.remove(key);
+      }
+      missCount++;
+    }
+    // Look it up without holding the lock; two threads may occasionally both do so, which is harmless
+    Map<String,String[]> parents = lookup.findGroups(groupDN);
+    synchronized (this)
+    {
+      nodes.put(key,new GroupNode(parents,System.currentTimeMillis() + lifetime));
+      Iterator<String> iter = nodes.keySet().iterator();
+      while (nodes.size() > maxSize && iter.hasNext())
+      {
+        iter.next();
+        iter.remove();
+      }
+    }
+    return parents;
+  }
+
+  protected static void addGroups(Map<String,String[]> groups, Map<String,String[]> rval, Set<String> seen, List<String> newGroups)
+  {
+    for (Map.Entry<String,String[]> entry : groups.entrySet())
+    {
+      if (seen.add(normalize(entry.getKey())))
+      {
+        rval.put(entry.getKey(),entry.getValue());
+        newGroups.add(entry.getKey());
+      }
+    }
+  }
+
+  protected static String makeKey(String namespace, String dn)
+  {
+    return namespace + "\u0000" + normalize(dn);
+  }
+
+  /** Distinguished names compare case-insensitively for all practical purposes. */
+  protected static String normalize(String dn)
+  {
+    return dn.toLowerCase(Locale.ROOT);
+  }
+
+  protected static class GroupNode
+  {
+    public final Map<String,String[]> parents;
+    public final long expirationTime;
+
+    public GroupNode(Map<String,String[]> parents, long expirationTime)
+    {
+      this.parents = parents;
+      this.expirationTime = expirationTime;
+    }
+  }
+
+}
@@ -0,0 +1,90 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.connectorcommon.ldap;
+
+import java.io.*;
+import java.util.*;
+import javax.naming.*;
+import javax.naming.directory.*;
+import javax.naming.ldap.*;
+
+/** LDAP search helpers.
+*/
+public class LDAPSearch
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** Default page size; below the usual server size limit of 1000 */
+  public final static int DEFAULT_PAGE_SIZE = 500;
+
+  /** Run a search a page at a time, using the simple paged results control (RFC 2696), so that
+  * results larger than the server's size limit come back whole.  The control is non-critical,
+  * so servers that do not support it simply return everything (up to their size limit) at once.
+  * The request controls on the context are cleared afterwards, because contexts are pooled.
+  *@param ctx is the context.
+  *@param base is the search base.
+  *@param filter is the search filter.
+  *@param searchControls are the search controls.
+  *@param pageSize is the page size.
+  *@return all results.
+  */
+  public static List<SearchResult> pagedSearch(LdapContext ctx, String base, String filter, SearchControls searchControls, int pageSize)
+    throws NamingException, IOException
+  {
+    List<SearchResult> rval = new ArrayList<SearchResult>();
+    byte[] cookie = null;
+    try
+    {
+      while (true)
+      {
+        ctx.setRequestControls(new Control[]{new PagedResultsControl(pageSize,cookie,Control.NONCRITICAL)});
+        NamingEnumeration<SearchResult> answer = ctx.search(base,filter,searchControls);
+        try
+        {
+          while (answer.hasMoreElements())
+          {
+            rval.add(answer.next());
+          }
+        }
+        finally
+        {
+          answer.close();
+        }
+        cookie = null;
+        Control[] responseControls = ctx.getResponseControls();
+        if (responseControls != null)
+        {
+          for (Control control : responseControls)
+          {
+            if (control instanceof PagedResultsResponseControl)
+              cookie = ((PagedResultsResponseControl)control).getCookie();
+          }
+        }
+        if (cookie == null || cookie.length == 0)
+          break;
+      }
+    }
+    finally
+    {
+      ctx.setRequestControls(null);
+    }
+    return rval;
+  }
+
+}
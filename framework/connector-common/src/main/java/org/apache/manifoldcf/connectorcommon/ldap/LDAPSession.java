@@ -0,0 +1,107 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.connectorcommon.ldap;
+
+import java.io.*;
+import javax.naming.*;
+import javax.naming.ldap.*;
+
+/** A bound LDAP context, plus the StartTLS response that secures it (if any).
+* Instances are handed out by an LDAPContextPool, and must be used by only one thread
+* at a time.
+*/
+public class LDAPSession
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** The context */
+  protected final LdapContext ctx;
+  /** The TLS response, or null if StartTLS was not used */
+  protected final StartTlsResponse tls;
+  /** The pool key, set when the session is first handed out */
+  protected String poolKey = null;
+  /** The connector instance that owns the session while it is idle in the pool, or null */
+  protected Object owner = null;
+  /** The time the session was last returned to the pool */
+  protected long lastUsedTime;
+  /** The time the session was last known to work */
+  protected long lastValidatedTime;
+
+  /** Constructor.
+  *@param ctx is the bound context.
+  *@param tls is the StartTLS response, or null.
+  */
+  public LDAPSession(LdapContext ctx, StartTlsResponse tls)
+  {
+    this.ctx = ctx;
+    this.tls = tls;
+    long currentTime = System.currentTimeMillis();
+    this.lastUsedTime = currentTime;
+    this.lastValidatedTime = currentTime;
+  }
+
+  /** Get the context.
+  */
+  public LdapContext getContext()
+  {
+    return ctx;
+  }
+
+  /** Check that the server still answers on this context.  A base-level read of the
+  * context's own entry is about the cheapest request there is.
+  *@return true if the session is usable.
+  */
+  protected boolean validate(long currentTime)
+  {
+    try
+    {
+      ctx.getAttributes("",new String[]{"objectClass"});
+      lastValidatedTime = currentTime;
+      return true;
+    }
+    catch (NamingException e)
+    {
+      return false;
+    }
+  }
+
+  /** Close the session, eating any errors.
+  */
+  protected void close()
+  {
+    try
+    {
+      if (tls != null)
+        tls.close();
+    }
+    catch (IOException e)
+    {
+      // Eat this error
+    }
+    try
+    {
+      ctx.close();
+    }
+    catch (NamingException e)
+    {
+      // Eat this error
+    }
+  }
+
+}
@@ -0,0 +1,97 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.connectorcommon.common;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.*;
+import org.apache.http.message.BasicHeader;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestHttpFetchSupport
+{
+  protected static final String CONTENT = "<rss version=\"2.0\"><channel><title>Test</title></channel></rss>";
+
+  @Test
+  public void decodesGzip()
+    throws Exception
+  {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    GZIPOutputStream gzos = new GZIPOutputStream(baos);
+    gzos.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+    gzos.close();
+    InputStream is = HttpFetchSupport.decodeContent(new ByteArrayInputStream(baos.toByteArray()),
+      new BasicHeader("Content-Encoding","gzip"));
+    assertEquals(CONTENT,readAll(is));
+  }
+
+  @Test
+  public void decodesDeflate()
+    throws Exception
+  {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DeflaterOutputStream dos = new DeflaterOutputStream(baos);
+    dos.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+    dos.close();
+    InputStream is = HttpFetchSupport.decodeContent(new ByteArrayInputStream(baos.toByteArray()),
+      new BasicHeader("Content-Encoding","deflate"));
+    assertEquals(CONTENT,readAll(is));
+  }
+
+  @Test
+  public void passesIdentityThrough()
+    throws Exception
+  {
+    InputStream is = HttpFetchSupport.decodeContent(new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.UTF_8)),null);
+    assertEquals(CONTENT,readAll(is));
+  }
+
+  @Test
+  public void reportsBadContentOnRead()
+    throws Exception
+  {
+    InputStream is = HttpFetchSupport.decodeContent(new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.UTF_8)),
+      new BasicHeader("Content-Encoding","gzip"));
+    try
+    {
+      is.read();
+      fail("Expected an IOException");
+    }
+    catch (IOException e)
+    {
+      // Expected
+    }
+  }
+
+  protected static String readAll(InputStream is)
+    throws IOException
+  {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int amt;
+    while ((amt = is.read(buffer)) != -1)
+    {
+      baos.write(buffer,0,amt);
+    }
+    is.close();
+    return new String(baos.toByteArray(),StandardCharsets.UTF_8);
+  }
+
+}
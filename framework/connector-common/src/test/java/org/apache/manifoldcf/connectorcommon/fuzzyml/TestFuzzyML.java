@@ -269,4 +269,258 @@ public class TestFuzzyML
 
   }
   
+  protected final static String trickyTestString =
+"<html><!-- a comment - with -- dashes --><body a=b c='d' e=\"f\">Text &amp; more &lt;text&gt; &bogus stuff &#65;\n"+
+"< not a tag <![CDATA[ escaped ] text ]] with ]]] brackets ]]> <!DOCTYPE html [ <!ENTITY x \"y\"> ]>"+
+"<?xml version=\"1.0\"?>tail & end</body></html>";
+
+  @Test
+  public void testBlockParsingMatchesCharacterParsing()
+    throws IOException, ManifoldCFException
+  {
+    org.apache.manifoldcf.core.system.Logging.misc = org.apache.log4j.Logger.getLogger("test");
+    String[] inputs = new String[]{fuzzyTestString, trickyTestString};
+    for (String input : inputs)
+    {
+      RecordingParseState characterState = new RecordingParseState(false);
+      characterState.dealWithCharacters(new StringReader(input));
+      String expected = characterState.events.toString();
+      // Every read size, so that runs are broken up at every possible point
+      for (int chunkSize = 1; chunkSize < 20; chunkSize++)
+      {
+        RecordingParseState blockState = new RecordingParseState(true);
+        blockState.dealWithCharacters(new ChunkedReader(new StringReader(input),chunkSize));
+        Assert.assertEquals(expected,blockState.events.toString());
+      }
+      RecordingParseState blockState = new RecordingParseState(true);
+      blockState.dealWithCharacters(new StringReader(input));
+      Assert.assertEquals(expected,blockState.events.toString());
+    }
+  }
+
+  @Test
+  public void testBlockParsingStopsAtHaltingCharacter()
+    throws IOException, ManifoldCFException
+  {
+    TagParseState x = new TagParseState()
+    {
+      @Override
+      protected boolean noteNormalCharacter(char thisChar)
+        throws ManifoldCFException
+      {
+        return thisChar == 'x';
+      }
+    };
+    char[] buffer = "<a>abcxdef".toCharArray();
+    Assert.assertEquals(7,x.dealWithCharacters(buffer,0,buffer.length));
+  }
+
+  @Test
+  public void testHierarchicalBlockParsingMatchesCharacterParsing()
+    throws IOException, ManifoldCFException
+  {
+    org.apache.manifoldcf.core.system.Logging.misc = org.apache.log4j.Logger.getLogger("test");
+    // Text and CDATA runs longer than the character chunk size, so they are delivered in several pieces
+    StringBuilder longText = new StringBuilder();
+    for (int i = 0; i < 3 * XMLFuzzyHierarchicalParseState.MAX_CHUNK_SIZE + 123; i++)
+      longText.append((char)('a' + (i % 26)));
+    String input = "<doc><text>" + longText + "</text><data><![CDATA[" + longText + " ] ]] ]]></data>" +
+      "<mixed>before<![CDATA[inside]]>after</mixed></doc>";
+    String[] inputs = new String[]{input, fuzzyTestString};
+    for (String thisInput : inputs)
+    {
+      String expected = parseHierarchical(new StringReader(thisInput),false);
+      int[] chunkSizes = new int[]{1, 7, XMLFuzzyHierarchicalParseState.MAX_CHUNK_SIZE - 1,
+        XMLFuzzyHierarchicalParseState.MAX_CHUNK_SIZE, XMLFuzzyHierarchicalParseState.MAX_CHUNK_SIZE + 1, 65536};
+      for (int chunkSize : chunkSizes)
+      {
+        Assert.assertEquals(expected,parseHierarchical(new ChunkedReader(new StringReader(thisInput),chunkSize),true));
+      }
+    }
+    // The long runs must really have been split at the chunk size
+    String events = parseHierarchical(new StringReader(input),true);
+    Assert.assertTrue(events.contains("[text " + longText.substring(0,XMLFuzzyHierarchicalParseState.MAX_CHUNK_SIZE) + "]"));
+    Assert.assertTrue(events.contains("[text " + longText.substring(3 * XMLFuzzyHierarchicalParseState.MAX_CHUNK_SIZE) + "]"));
+    Assert.assertTrue(events.contains("[text " + longText.substring(3 * XMLFuzzyHierarchicalParseState.MAX_CHUNK_SIZE) + " ] ]] ]"));
+    Assert.assertTrue(events.contains("[text beforeinsideafter]"));
+  }
+
+  protected static String parseHierarchical(Reader reader, final boolean useBlocks)
+    throws IOException, ManifoldCFException
+  {
+    XMLFuzzyHierarchicalParseState x = new XMLFuzzyHierarchicalParseState()
+    {
+      @Override
+      public int dealWithCharacters(char[] buffer, int offset, int len)
+        throws IOException, ManifoldCFException
+      {
+        if (useBlocks)
+          return super.dealWithCharacters(buffer,offset,len);
+        int end = offset + len;
+        for (int i = offset; i < end; i++)
+        {
+          if (dealWithCharacter(buffer[i]))
+            return i+1;
+        }
+        return -1;
+      }
+    };
+    StringBuilder events = new StringBuilder();
+    x.setContext(new RecordingParsingContext(x,events));
+    try
+    {
+      x.dealWithCharacters(reader);
+      x.finishUp();
+    }
+    finally
+    {
+      x.cleanup();
+    }
+    return events.toString();
+  }
+
+  /** Parsing context that records tags and the character chunks it is handed. */
+  protected static class RecordingParsingContext extends XMLParsingContext
+  {
+    protected final StringBuilder events;
+
+    public RecordingParsingContext(XMLFuzzyHierarchicalParseState theStream, StringBuilder events)
+    {
+      super(theStream);
+      this.events = events;
+    }
+
+    public RecordingParsingContext(XMLFuzzyHierarchicalParseState theStream, String namespace, String localname, String qname, Map<String,String> theseAttributes,
+      StringBuilder events)
+    {
+      super(theStream,namespace,localname,qname,theseAttributes);
+      this.events = events;
+    }
+
+    @Override
+    protected XMLParsingContext beginTag(String namespace, String localName, String qName, Map<String,String> atts)
+      throws ManifoldCFException
+    {
+      events.append("[begin ").append(qName).append("]");
+      return new RecordingParsingContext(theStream,namespace,localName,qName,atts,events);
+    }
+
+    @Override
+    protected void endTag()
+      throws ManifoldCFException
+    {
+      events.append("[end]");
+    }
+
+    @Override
+    protected void tagContents(String contents)
+      throws ManifoldCFException
+    {
+      events.append("[text ").append(contents).append("]");
+    }
+  }
+
+  /** Parse state that records everything it sees, optionally forcing the
+  * one-character-at-a-time path. */
+  protected static class RecordingParseState extends TagParseState
+  {
+    public final StringBuilder events = new StringBuilder();
+    protected final boolean useBlocks;
+
+    public RecordingParseState(boolean useBlocks)
+    {
+      super();
+      this.useBlocks = useBlocks;
+    }
+
+    @Override
+    public int dealWithCharacters(char[] buffer, int offset, int len)
+      throws IOException, ManifoldCFException
+    {
+      if (useBlocks)
+        return super.dealWithCharacters(buffer,offset,len);
+      int end = offset + len;
+      for (int i = offset; i < end; i++)
+      {
+        if (dealWithCharacter(buffer[i]))
+          return i+1;
+      }
+      return -1;
+    }
+
+    @Override
+    protected boolean noteTag(String tagName, List<AttrNameValue> attributes)
+      throws ManifoldCFException
+    {
+      events.append("[tag ").append(tagName);
+      for (AttrNameValue anv : attributes)
+      {
+        events.append(" ").append(anv.getName()).append("=").append(anv.getValue());
+      }
+      events.append("]");
+      return super.noteTag(tagName,attributes);
+    }
+
+    @Override
+    protected boolean noteEndTag(String tagName)
+      throws ManifoldCFException
+    {
+      events.append("[end ").append(tagName).append("]");
+      return super.noteEndTag(tagName);
+    }
+
+    @Override
+    protected boolean noteQTag(String tagName, List<AttrNameValue> attributes)
+      throws ManifoldCFException
+    {
+      events.append("[qtag ").append(tagName).append("]");
+      return super.noteQTag(tagName,attributes);
+    }
+
+    @Override
+    protected boolean noteBTagToken(String token)
+      throws ManifoldCFException
+    {
+      events.append("[btoken ").append(token).append("]");
+      return super.noteBTagToken(token);
+    }
+
+    @Override
+    protected boolean noteNormalCharacter(char thisChar)
+      throws ManifoldCFException
+    {
+      events.append(thisChar);
+      return super.noteNormalCharacter(thisChar);
+    }
+
+    @Override
+    protected boolean noteEscapedCharacter(char thisChar)
+      throws ManifoldCFException
+    {
+      events.append("{").append(thisChar).append("}");
+      return super.noteEscapedCharacter(thisChar);
+    }
+  }
+
+  /** Reader that never returns more than a fixed number of characters per read. */
+  protected static class ChunkedReader extends FilterReader
+  {
+    protected final int chunkSize;
+
+    public ChunkedReader(Reader in, int chunkSize)
+    {
+      super(in);
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len)
+      throws IOException
+    {
+      if (len > chunkSize)
+        len = chunkSize;
+      return super.read(cbuf,off,len);
+    }
+  }
+
 }
@@ -0,0 +1,185 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.connectorcommon.ldap;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestLDAPContextPool
+{
+
+  @Test
+  public void reusesReleasedSession()
+    throws Exception
+  {
+    LDAPContextPool pool = new LDAPContextPool();
+    TestFactory factory = new TestFactory();
+    Object owner = new Object();
+    LDAPSession session = pool.grab("key",owner,factory);
+    assertFalse(pool.isOwner(owner));
+    pool.release(session,owner);
+    assertTrue(pool.isOwner(owner));
+    assertSame(session,pool.grab("key",owner,factory));
+    assertFalse(pool.isOwner(owner));
+    assertEquals(1,factory.created.size());
+  }
+
+  @Test
+  public void ownerKeepsOneIdleSessionPerKey()
+    throws Exception
+  {
+    LDAPContextPool pool = new LDAPContextPool();
+    TestFactory factory = new TestFactory();
+    Object owner = new Object();
+    LDAPSession first = pool.grab("key",owner,factory);
+    LDAPSession second = pool.grab("key",owner,factory);
+    pool.release(first,owner);
+    pool.release(second,owner);
+    assertEquals(1,pool.getIdleCount("key"));
+    assertTrue(((TestSession)first).closed);
+    assertFalse(((TestSession)second).closed);
+    // A different key is a different session
+    pool.release(pool.grab("other",owner,factory),owner);
+    assertEquals(1,pool.getIdleCount("other"));
+  }
+
+  @Test
+  public void prefersOwnSessionAndTakesOthersWhenNone()
+    throws Exception
+  {
+    LDAPContextPool pool = new LDAPContextPool();
+    TestFactory factory = new TestFactory();
+    Object ownerA = new Object();
+    Object ownerB = new Object();
+    LDAPSession sessionA = pool.grab("key",ownerA,factory);
+    LDAPSession sessionB = pool.grab("key",ownerB,factory);
+    pool.release(sessionA,ownerA);
+    pool.release(sessionB,ownerB);
+    // A's session is not the most recently released, but A still gets it back
+    assertSame(sessionA,pool.grab("key",ownerA,factory));
+    pool.release(sessionA,ownerA);
+    // A third instance takes someone else's session, which then no longer counts for its former owner
+    Object ownerC = new Object();
+    LDAPSession taken = pool.grab("key",ownerC,factory);
+    assertEquals(2,factory.created.size());
+    assertFalse(pool.isOwner(taken == sessionA ? ownerA : ownerB));
+    pool.release(taken,ownerC);
+    assertTrue(pool.isOwner(ownerC));
+  }
+
+  @Test
+  public void closeOwnedClosesOnlyThatOwnersSessions()
+    throws Exception
+  {
+    LDAPContextPool pool = new LDAPContextPool();
+    TestFactory factory = new TestFactory();
+    Object ownerA = new Object();
+    Object ownerB = new Object();
+    LDAPSession sessionA = pool.grab("key",ownerA,factory);
+    LDAPSession sessionB = pool.grab("key",ownerB,factory);
+    LDAPSession otherA = pool.grab("other",ownerA,factory);
+    pool.release(sessionA,ownerA);
+    pool.release(sessionB,ownerB);
+    pool.release(otherA,ownerA);
+    pool.closeOwned(ownerA);
+    assertFalse(pool.isOwner(ownerA));
+    assertTrue(pool.isOwner(ownerB));
+    assertTrue(((TestSession)sessionA).closed);
+    assertTrue(((TestSession)otherA).closed);
+    assertFalse(((TestSession)sessionB).closed);
+    assertEquals(1,pool.getIdleCount("key"));
+    assertEquals(0,pool.getIdleCount("other"));
+  }
+
+  @Test
+  public void expiresIdleSessions()
+    throws Exception
+  {
+    LDAPContextPool pool = new LDAPContextPool(1000L,1000L,10);
+    TestFactory factory = new TestFactory();
+    Object owner = new Object();
+    LDAPSession session = pool.grab("key",owner,factory);
+    pool.release(session,owner);
+    pool.expireIdle(System.currentTimeMillis());
+    assertTrue(pool.isOwner(owner));
+    pool.expireIdle(System.currentTimeMillis() + 2000L);
+    assertFalse(pool.isOwner(owner));
+    assertTrue(((TestSession)session).closed);
+  }
+
+  @Test
+  public void discardsSessionsThatFailValidation()
+    throws Exception
+  {
+    LDAPContextPool pool = new LDAPContextPool(60000L,0L,10);
+    TestFactory factory = new TestFactory();
+    Object owner = new Object();
+    TestSession session = (TestSession)pool.grab("key",owner,factory);
+    pool.release(session,owner);
+    Thread.sleep(5L);
+    session.valid = false;
+    LDAPSession replacement = pool.grab("key",owner,factory);
+    assertNotSame(session,replacement);
+    assertTrue(session.closed);
+    assertEquals(2,factory.created.size());
+  }
+
+  protected static class TestFactory implements LDAPContextPool.SessionFactory
+  {
+    public final List<TestSession> created = new ArrayList<TestSession>();
+
+    @Override
+    public LDAPSession createSession()
+      throws ManifoldCFException
+    {
+      TestSession session = new TestSession();
+      created.add(session);
+      return session;
+    }
+  }
+
+  /** A session without a directory behind it */
+  protected static class TestSession extends LDAPSession
+  {
+    public boolean valid = true;
+    public boolean closed = false;
+
+    public TestSession()
+    {
+      super(null,null);
+    }
+
+    @Override
+    protected boolean validate(long currentTime)
+    {
+      if (valid)
+        lastValidatedTime = currentTime;
+      return valid;
+    }
+
+    @Override
+    protected void close()
+    {
+      closed = true;
+    }
+  }
+
+}
@@ -0,0 +1,132 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.connectorcommon.ldap;
+
+import java.util.*;
+import javax.naming.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestLDAPGroupCache
+{
+
+  @Test
+  public void resolvesNestedGroups()
+    throws Exception
+  {
+    TestLookup lookup = new TestLookup();
+    lookup.addMembership("cn=user","cn=a");
+    lookup.addMembership("cn=a","cn=b");
+    lookup.addMembership("cn=b","cn=c");
+    LDAPGroupCache cache = new LDAPGroupCache(60000L,100);
+    Map<String,String[]> groups = cache.resolveGroups("ns","cn=user",lookup,10);
+    assertEquals(Arrays.asList("cn=a","cn=b","cn=c"),new ArrayList<String>(groups.keySet()));
+    assertEquals("c",groups.get("cn=c")[0]);
+    // Direct groups only
+    groups = cache.resolveGroups("ns","cn=user",lookup,1);
+    assertEquals(Arrays.asList("cn=a"),new ArrayList<String>(groups.keySet()));
+  }
+
+  @Test
+  public void toleratesCycles()
+    throws Exception
+  {
+    TestLookup lookup = new TestLookup();
+    lookup.addMembership("cn=user","cn=a");
+    lookup.addMembership("cn=a","cn=b");
+    lookup.addMembership("cn=b","cn=A");
+    lookup.addMembership("cn=b","cn=user");
+    LDAPGroupCache cache = new LDAPGroupCache(60000L,100);
+    Map<String,String[]> groups = cache.resolveGroups("ns","cn=user",lookup,10);
+    assertEquals(Arrays.asList("cn=a","cn=b"),new ArrayList<String>(groups.keySet()));
+  }
+
+  @Test
+  public void cachesGroupEdgesAndInvalidates()
+    throws Exception
+  {
+    TestLookup lookup = new TestLookup();
+    lookup.addMembership("cn=user","cn=a");
+    lookup.addMembership("cn=a","cn=b");
+    LDAPGroupCache cache = new LDAPGroupCache(60000L,100);
+    cache.resolveGroups("ns","cn=user",lookup,10);
+    // user, a, b
+    assertEquals(3,lookup.lookupCount);
+    cache.resolveGroups("ns","cn=user",lookup,10);
+    // Only the user's own groups are looked up again
+    assertEquals(4,lookup.lookupCount);
+
+    // Membership change, not yet visible
+    lookup.addMembership("cn=a","cn=d");
+    assertFalse(cache.resolveGroups("ns","cn=user",lookup,10).containsKey("cn=d"));
+    cache.invalidateGroup("ns","CN=A");
+    assertTrue(cache.resolveGroups("ns","cn=user",lookup,10).containsKey("cn=d"));
+
+    // Other namespaces are separate
+    int count = lookup.lookupCount;
+    cache.resolveGroups("other","cn=user",lookup,10);
+    assertEquals(count+4,lookup.lookupCount);
+    cache.invalidateNamespace("other");
+    cache.resolveGroups("ns","cn=user",lookup,10);
+    assertEquals(count+5,lookup.lookupCount);
+  }
+
+  @Test
+  public void expiresNodes()
+    throws Exception
+  {
+    TestLookup lookup = new TestLookup();
+    lookup.addMembership("cn=user","cn=a");
+    lookup.addMembership("cn=a","cn=b");
+    LDAPGroupCache cache = new LDAPGroupCache(0L,100);
+    cache.resolveGroups("ns","cn=user",lookup,10);
+    Thread.sleep(5L);
+    cache.resolveGroups("ns","cn=user",lookup,10);
+    assertEquals(6,lookup.lookupCount);
+  }
+
+  protected static class TestLookup implements LDAPGroupCache.GroupLookup
+  {
+    protected final Map<String,Map<String,String[]>> memberships = new HashMap<String,Map<String,String[]>>();
+    public int lookupCount = 0;
+
+    public void addMembership(String memberDN, String groupDN)
+    {
+      Map<String,String[]> groups = memberships.get(memberDN.toLowerCase(Locale.ROOT));
+      if (groups == null)
+      {
+        groups = new LinkedHashMap<String,String[]>();
+        memberships.put(memberDN.toLowerCase(Locale.ROOT),groups);
+      }
+      groups.put(groupDN,new String[]{groupDN.substring(3).toLowerCase(Locale.ROOT)});
+    }
+
+    @Override
+    public Map<String,String[]> findGroups(String memberDN)
+      throws NamingException
+    {
+      lookupCount++;
+      Map<String,String[]> groups = memberships.get(memberDN.toLowerCase(Locale.ROOT));
+      if (groups == null)
+        return new HashMap<String,String[]>();
+      return new LinkedHashMap<String,String[]>(groups);
+    }
+  }
+
+}
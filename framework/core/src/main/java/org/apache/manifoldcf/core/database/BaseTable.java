@@ -236,6 +236,25 @@ public class BaseTable
     return dbInterface.performQuery(query,params,cacheKeys,queryClass,resultLimit,null);
   }
 
+  /** Perform a general "data fetch" query, with the ability to provide a limit and a row handler.
+  * If a row handler is supplied, each row is handed to it as it is read, and the returned resultset is empty.
+  *@param query is the query string.
+  *@param params are the parameterized values, if needed.
+  *@param cacheKeys are the cache keys, if needed (null if no cache desired).
+  *@param queryClass is the LRU class name against which this query would be cached,
+  * or null if no LRU behavior desired.
+  *@param resultLimit is the maximum number of results desired.
+  *@param rowHandler is the row handler, or null if the rows should be returned.
+  *@return a resultset.
+  */
+  protected IResultSet performQuery(String query, List params, StringSet cacheKeys, String queryClass, int resultLimit,
+    IResultRowHandler rowHandler)
+    throws ManifoldCFException
+  {
+    return dbInterface.performQuery(query,params,cacheKeys,queryClass,resultLimit,
+      (rowHandler==null)?null:new RowHandlerLimitChecker(rowHandler));
+  }
+
   /** Begin a database transaction.  This method call MUST be paired with an endTransaction() call,
   * or database handles will be lost.  If the transaction should be rolled back, then signalRollback() should
   * be called before the transaction is ended.
@@ -800,6 +800,8 @@ public abstract class Database
       {
         // Initialize the connection (for HSQLDB)
         initializeConnection(tempConnection.getConnection());
+        if (returnLimit instanceof RowHandlerLimitChecker)
+          return executeStreamingViaThread(tempConnection.getConnection(),query,params,bResults,maxResults,spec,returnLimit);
         return executeViaThread(tempConnection.getConnection(),query,params,bResults,maxResults,spec,returnLimit);
       }
       catch (ManifoldCFException e)
@@ -818,6 +820,58 @@ public abstract class Database
   }
 
 
+  /** Run a row-handler query outside of any transaction, with autocommit off for its duration.
+  * Some drivers (PostgreSQL's among them) only honor the fetch size when autocommit is off, and otherwise
+  * read the entire resultset into memory before handing back the first row.  Queries that run inside a
+  * transaction are left alone: transactions are begun with SQL statements on some databases, and turning
+  * autocommit back on would commit them.
+  */
+  protected IResultSet executeStreamingViaThread(Connection connection, String query, List params, boolean bResults, int maxResults,
+    ResultSpecification spec, ILimitChecker returnLimit)
+    throws ManifoldCFException
+  {
+    try
+    {
+      connection.setAutoCommit(false);
+    }
+    catch (java.sql.SQLException e)
+    {
+      throw new ManifoldCFException("SQLException turning off autocommit: "+e.getMessage(),e,ManifoldCFException.DATABASE_CONNECTION_ERROR);
+    }
+    IResultSet rval;
+    try
+    {
+      rval = executeViaThread(connection,query,params,bResults,maxResults,spec,returnLimit);
+    }
+    catch (ManifoldCFException e)
+    {
+      // An interrupted query may still be using the connection, which the caller abandons
+      if (e.getErrorCode() != ManifoldCFException.INTERRUPTED)
+      {
+        try
+        {
+          connection.rollback();
+          connection.setAutoCommit(true);
+        }
+        catch (java.sql.SQLException e2)
+        {
+          // The query's exception is the interesting one
+        }
+      }
+      throw e;
+    }
+    try
+    {
+      connection.commit();
+      connection.setAutoCommit(true);
+    }
+    catch (java.sql.SQLException e)
+    {
+      throw new ManifoldCFException("SQLException ending streaming query: "+e.getMessage(),e,ManifoldCFException.DATABASE_CONNECTION_ERROR);
+    }
+    return rval;
+  }
+
   // These are protected helper methods
 
   /** Initialize the connection (for HSQLDB).
@@ -873,6 +927,8 @@ public abstract class Database
           Statement stmt = connection.createStatement();
           try
           {
+            if (returnLimit instanceof RowHandlerLimitChecker)
+              stmt.setFetchSize(RowHandlerLimitChecker.FETCH_SIZE);
             stmt.execute(query);
             rs = stmt.getResultSet();
             try
@@ -899,6 +955,9 @@ public abstract class Database
             loadPS(ps, params);
             if (bResults)
             {
+              // Rows handed to a row handler are not retained, so don't let the driver hold them all either
+              if (returnLimit instanceof RowHandlerLimitChecker)
+                ps.setFetchSize(RowHandlerLimitChecker.FETCH_SIZE);
               rs = ps.executeQuery();
               try
               {
@@ -0,0 +1,106 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.database;
+
+import org.apache.manifoldcf.core.interfaces.*;
+
+/** This limit checker hands every row to an IResultRowHandler as it is read, and then
+* excludes it from the resultset.  Passing one of these to a query therefore turns the query into a
+* row cursor: the returned resultset is always empty, and rows are never retained.
+*/
+public class RowHandlerLimitChecker implements ILimitChecker
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** The number of rows we ask the jdbc driver to fetch at a time, for drivers that honor the hint */
+  public static final int FETCH_SIZE = 500;
+
+  protected final IResultRowHandler handler;
+
+  /** Constructor.
+  *@param handler is the row handler.
+  */
+  public RowHandlerLimitChecker(IResultRowHandler handler)
+  {
+    this.handler = handler;
+  }
+
+  /** See if this class can be legitimately compared against another of
+  * the same type.
+  *@return true if comparisons will ever return "true".
+  */
+  @Override
+  public boolean doesCompareWork()
+  {
+    return false;
+  }
+
+  /** Create a duplicate of this class instance.  All current state should be preserved.
+  *@return the duplicate.
+  */
+  @Override
+  public ILimitChecker duplicate()
+  {
+    return new RowHandlerLimitChecker(handler);
+  }
+
+  /** Find the hashcode for this class.  This will only ever be used if
+  * doesCompareWork() returns true.
+  *@return the hashcode.
+  */
+  @Override
+  public int hashCode()
+  {
+    return 0;
+  }
+
+  /** Compare two objects and see if equal.  This will only ever be used
+  * if doesCompareWork() returns true.
+  *@param object is the object to compare against.
+  *@return true if equal.
+  */
+  @Override
+  public boolean equals(Object object)
+  {
+    return false;
+  }
+
+  /** See if a result row should be included in the final result set.
+  *@param row is the result row to check.
+  *@return true if it should be included, false otherwise.
+  */
+  @Override
+  public boolean checkInclude(IResultRow row)
+    throws ManifoldCFException
+  {
+    handler.handleRow(row);
+    return false;
+  }
+
+  /** See if we should examine another row.
+  *@return true if we need to keep going, or false if we are done.
+  */
+  @Override
+  public boolean checkContinue()
+    throws ManifoldCFException
+  {
+    return true;
+  }
+
+}
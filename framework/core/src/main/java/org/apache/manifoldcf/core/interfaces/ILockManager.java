@@ -189,6 +189,36 @@ public interface ILockManager
   public void writeData(String resourceName, byte[] data)
     throws ManifoldCFException;
 
+  // Events
+
+  /** Signal a named event.  Use this method to wake up threads that are waiting for a change of state,
+  * instead of having them poll.  Events carry no data; each named event simply has a counter that is
+  * bumped on every signal.  Delivery is best-effort: a waiter may wake up without a matching change, and
+  * signals from other cluster members may be coalesced, so waiters must always recheck the actual state
+  * and must always wait with a finite timeout.
+  *@param eventName is the name of the event to signal.
+  */
+  public void signalEvent(String eventName)
+    throws ManifoldCFException;
+
+  /** Get the current count for a named event.  Read this before checking the state the event describes,
+  * and pass it to waitForEvent() afterwards, so that a signal arriving in between is not lost.
+  *@param eventName is the name of the event.
+  *@return the current event count.
+  */
+  public long getEventCount(String eventName)
+    throws ManifoldCFException;
+
+  /** Wait for a named event to be signalled.
+  *@param eventName is the name of the event.
+  *@param eventCount is the event count previously returned by getEventCount().  The method returns immediately
+  * if the event has been signalled since that count was obtained.
+  *@param maxWaitTime is the maximum time to wait, in milliseconds.
+  *@return the current event count.
+  */
+  public long waitForEvent(String eventName, long eventCount, long maxWaitTime)
+    throws ManifoldCFException;
+
   // Locks
   
   /** Wait for a time before retrying a lock.  Use this method to wait
@@ -0,0 +1,35 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.interfaces;
+
+/** This interface describes a receiver of result rows, which is handed each row of a query
+* as it is read from the jdbc driver.  Queries performed this way do not accumulate a resultset,
+* so memory use does not depend on the number of rows returned.
+*/
+public interface IResultRowHandler
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** Handle a result row.
+  *@param row is the row just read.
+  */
+  public void handleRow(IResultRow row)
+    throws ManifoldCFException;
+
+}
@@ -0,0 +1,166 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.interfaces;
+
+import java.util.*;
+import java.io.*;
+import org.json.*;
+
+/** This class writes the JSON form of a Configuration to a stream, one top-level node at a time,
+* so that a large response never has to be assembled in memory.  The output is identical to what
+* Configuration.toJSON() produces for a Configuration with the same children, provided that all
+* children of the same type are added consecutively.  (Configuration.toJSON() uses an alternate
+* representation when they are not, which requires seeing all children in advance, so that case
+* is signalled as an error here.)
+*
+* Only the most recent node is ever held, because a lone child of a given type is written as a
+* plain value rather than a one-element array.
+*/
+public class JSONConfigurationWriter
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  protected final Writer output;
+  protected final JSONWriter writer;
+  protected final Set<String> finishedTypes = new HashSet<String>();
+
+  /** True once the enclosing object has been opened */
+  protected boolean started = false;
+  /** The type of the children currently being written, or null */
+  protected String currentType = null;
+  /** A single child of currentType that has not yet been written, or null */
+  protected ConfigurationNode pendingNode = null;
+  /** True if an array for currentType has been opened */
+  protected boolean inArray = false;
+
+  /** Constructor.
+  *@param output is the stream to write to.  It is flushed, but not closed, by finish().
+  */
+  public JSONConfigurationWriter(Writer output)
+  {
+    this.output = output;
+    this.writer = new JSONWriter(output);
+  }
+
+  /** Write a top-level node.
+  *@param node is the node to write.
+  */
+  public void addChild(ConfigurationNode node)
+    throws ManifoldCFException
+  {
+    try
+    {
+      if (!started)
+      {
+        writer.object();
+        started = true;
+      }
+      String type = node.getType();
+      if (currentType != null && currentType.equals(type))
+      {
+        if (!inArray)
+        {
+          writer.key(type);
+          writer.array();
+          Configuration.writeNode(writer,pendingNode,false,false);
+          pendingNode = null;
+          inArray = true;
+        }
+        Configuration.writeNode(writer,node,false,false);
+        return;
+      }
+      
+      if (finishedTypes.contains(type))
+        throw new ManifoldCFException("Cannot stream node of type '"+type+"' out of order");
+      closeCurrent();
+      currentType = type;
+      pendingNode = node;
+    }
+    catch (JSONException e)
+    {
+      throw new ManifoldCFException(e.getMessage(),e);
+    }
+  }
+
+  /** Check whether any node has been written yet.  Until one has, nothing at all has been
+  * sent to the underlying stream.
+  *@return true if at least one node has been written.
+  */
+  public boolean isStarted()
+  {
+    return started;
+  }
+
+  /** Write all the top-level nodes of a Configuration, in order.
+  *@param configuration is the configuration whose children should be written.
+  */
+  public void addChildren(Configuration configuration)
+    throws ManifoldCFException
+  {
+    int i = 0;
+    while (i < configuration.getChildCount())
+    {
+      addChild(configuration.findChild(i++));
+    }
+  }
+
+  /** Finish the output, and flush the underlying stream.
+  */
+  public void finish()
+    throws ManifoldCFException
+  {
+    try
+    {
+      if (!started)
+      {
+        writer.object();
+        started = true;
+      }
+      closeCurrent();
+      writer.endObject();
+      output.flush();
+    }
+    catch (JSONException e)
+    {
+      throw new ManifoldCFException(e.getMessage(),e);
+    }
+    catch (IOException e)
+    {
+      throw new ManifoldCFException(e.getMessage(),e);
+    }
+  }
+
+  /** Complete the children of the current type.
+  */
+  protected void closeCurrent()
+    throws ManifoldCFException, JSONException
+  {
+    if (currentType == null)
+      return;
+    if (inArray)
+      writer.endArray();
+    else
+      Configuration.writeNode(writer,pendingNode,true,false);
+    finishedTypes.add(currentType);
+    currentType = null;
+    pendingNode = null;
+    inArray = false;
+  }
+
+}
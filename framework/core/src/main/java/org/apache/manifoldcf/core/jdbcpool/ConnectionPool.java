@@ -66,6 +66,24 @@ public class ConnectionPool
   */
   public WrappedConnection getConnection()
     throws SQLException, InterruptedException
+  {
+    return getConnection(true);
+  }
+
+  /** Obtain a connection from the pool, but only if one is free without waiting.
+  *@return the connection, or null if the pool is already completely tapped.
+  */
+  public WrappedConnection getConnectionIfAvailable()
+    throws SQLException, InterruptedException
+  {
+    return getConnection(false);
+  }
+
+  /** Obtain a connection from the pool.
+  *@param wait is true if the caller should wait for a connection to free up, false to get null instead.
+  */
+  protected WrappedConnection getConnection(boolean wait)
+    throws SQLException, InterruptedException
   {
     Exception instantiationException;
     if (debug)
@@ -128,6 +146,8 @@ public class ConnectionPool
                 }
               }
             }
+            if (!wait)
+              return null;
             // Wait until kicked; we hope something will free up...
             this.wait();
             continue;
@@ -61,6 +61,9 @@ public class BaseLockManager implements ILockManager
 
   /** Global resource data.  Used only when ManifoldCF is run entirely out of one process. */
   protected final static Map<String,byte[]> globalData = new HashMap<String,byte[]>();
+
+  /** Event counters.  Events are always delivered within this JVM; cross-JVM implementations add to this. */
+  protected final static LocalEventPool localEvents = new LocalEventPool();
   
   public BaseLockManager()
     throws ManifoldCFException
@@ -689,6 +692,48 @@ public class BaseLockManager implements ILockManager
     }
   }
 
+  /** Signal a named event.  Use this method to wake up threads that are waiting for a change of state,
+  * instead of having them poll.
+  *@param eventName is the name of the event to signal.
+  */
+  @Override
+  public void signalEvent(String eventName)
+    throws ManifoldCFException
+  {
+    localEvents.signal(eventName);
+  }
+
+  /** Get the current count for a named event.
+  *@param eventName is the name of the event.
+  *@return the current event count.
+  */
+  @Override
+  public long getEventCount(String eventName)
+    throws ManifoldCFException
+  {
+    return localEvents.getCount(eventName);
+  }
+
+  /** Wait for a named event to be signalled.
+  *@param eventName is the name of the event.
+  *@param eventCount is the event count previously returned by getEventCount().
+  *@param maxWaitTime is the maximum time to wait, in milliseconds.
+  *@return the current event count.
+  */
+  @Override
+  public long waitForEvent(String eventName, long eventCount, long maxWaitTime)
+    throws ManifoldCFException
+  {
+    try
+    {
+      return localEvents.waitFor(eventName,eventCount,maxWaitTime);
+    }
+    catch (InterruptedException e)
+    {
+      throw new ManifoldCFException("Interrupted",e,ManifoldCFException.INTERRUPTED);
+    }
+  }
+
   /** Wait for a time before retrying a lock.
   */
   @Override
@@ -0,0 +1,101 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.lockmanager;
+
+import java.util.*;
+
+/** Pool of named event counters, shared by all threads in one JVM.
+* Signalling an event bumps its counter and wakes up every thread waiting on it.
+* Waiters compare against a count they obtained earlier, so a signal that arrives
+* between checking state and starting to wait is never lost.
+*/
+public class LocalEventPool
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  protected final Map<String,LocalEvent> events = new HashMap<String,LocalEvent>();
+
+  public LocalEventPool()
+  {
+  }
+
+  /** Signal an event.
+  */
+  public void signal(String eventName)
+  {
+    LocalEvent event = getEvent(eventName);
+    synchronized (event)
+    {
+      event.count++;
+      event.notifyAll();
+    }
+  }
+
+  /** Get the current count for an event.
+  */
+  public long getCount(String eventName)
+  {
+    LocalEvent event = getEvent(eventName);
+    synchronized (event)
+    {
+      return event.count;
+    }
+  }
+
+  /** Wait until an event's count differs from a given count, or a time expires.
+  *@return the current count.
+  */
+  public long waitFor(String eventName, long eventCount, long maxWaitTime)
+    throws InterruptedException
+  {
+    LocalEvent event = getEvent(eventName);
+    long endTime = System.currentTimeMillis() + maxWaitTime;
+    synchronized (event)
+    {
+      while (event.count == eventCount)
+      {
+        long waitTime = endTime - System.currentTimeMillis();
+        if (waitTime <= 0L)
+          break;
+        event.wait(waitTime);
+      }
+      return event.count;
+    }
+  }
+
+  protected LocalEvent getEvent(String eventName)
+  {
+    synchronized (events)
+    {
+      LocalEvent event = events.get(eventName);
+      if (event == null)
+      {
+        event = new LocalEvent();
+        events.put(eventName,event);
+      }
+      return event;
+    }
+  }
+
+  protected static class LocalEvent
+  {
+    public long count = 0L;
+  }
+
+}
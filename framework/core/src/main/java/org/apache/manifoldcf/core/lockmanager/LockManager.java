@@ -254,6 +254,41 @@ public class LockManager implements ILockManager
     lockManager.writeData(resourceName,data);
   }
 
+  /** Signal a named event.  Use this method to wake up threads that are waiting for a change of state,
+  * instead of having them poll.
+  *@param eventName is the name of the event to signal.
+  */
+  @Override
+  public void signalEvent(String eventName)
+    throws ManifoldCFException
+  {
+    lockManager.signalEvent(eventName);
+  }
+
+  /** Get the current count for a named event.
+  *@param eventName is the name of the event.
+  *@return the current event count.
+  */
+  @Override
+  public long getEventCount(String eventName)
+    throws ManifoldCFException
+  {
+    return lockManager.getEventCount(eventName);
+  }
+
+  /** Wait for a named event to be signalled.
+  *@param eventName is the name of the event.
+  *@param eventCount is the event count previously returned by getEventCount().
+  *@param maxWaitTime is the maximum time to wait, in milliseconds.
+  *@return the current event count.
+  */
+  @Override
+  public long waitForEvent(String eventName, long eventCount, long maxWaitTime)
+    throws ManifoldCFException
+  {
+    return lockManager.waitForEvent(eventName,eventCount,maxWaitTime);
+  }
+
   /** Wait for a time before retrying a lock.
   */
   @Override
@@ -952,6 +952,54 @@ public class ZooKeeperConnection
     }
   }
   
+  /** Publish an event, by bumping the version of the event's node.
+  */
+  public void signalEvent(String eventPath)
+    throws ManifoldCFException, InterruptedException
+  {
+    while (true)
+    {
+      try
+      {
+        try
+        {
+          zookeeper.setData(eventPath, null, -1);
+        }
+        catch (KeeperException.NoNodeException e)
+        {
+          createPersistentPath(eventPath, null);
+        }
+        break;
+      }
+      catch (KeeperException e)
+      {
+        handleKeeperException(e,true);
+      }
+    }
+  }
+
+  /** Leave a watch on an event's node, and return the node's current version.
+  *@return the version, or -1 if the event has never been published.
+  */
+  public int watchEvent(String eventPath, Watcher watcher)
+    throws ManifoldCFException, InterruptedException
+  {
+    while (true)
+    {
+      try
+      {
+        Stat s = zookeeper.exists(eventPath, watcher);
+        if (s == null)
+          return -1;
+        return s.getVersion();
+      }
+      catch (KeeperException e)
+      {
+        handleKeeperException(e,true);
+      }
+    }
+  }
+
   /** Close this connection. */
   public void close()
     throws InterruptedException
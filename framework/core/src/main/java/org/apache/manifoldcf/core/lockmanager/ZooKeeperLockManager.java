@@ -40,6 +40,7 @@ public class ZooKeeperLockManager extends BaseLockManager implements ILockManage
   private final static String CONFIGURATION_PATH = "/org.apache.manifoldcf/configuration";
   private final static String RESOURCE_PATH_PREFIX = "/org.apache.manifoldcf/resources-";
   private final static String FLAG_PATH_PREFIX = "/org.apache.manifoldcf/flags-";
+  private final static String EVENT_PATH_PREFIX = "/org.apache.manifoldcf/events-";
   private final static String SERVICETYPE_LOCK_PATH_PREFIX = "/org.apache.manifoldcf/servicelock-";
   private final static String SERVICETYPE_ACTIVE_PATH_PREFIX = "/org.apache.manifoldcf/serviceactive-";
   private final static String SERVICETYPE_REGISTER_PATH_PREFIX = "/org.apache.manifoldcf/service-";
@@ -57,6 +58,21 @@ public class ZooKeeperLockManager extends BaseLockManager implements ILockManage
   protected static Integer ephemeralPoolLocker = new Integer(0);
   protected static ZooKeeperEphemeralNodePool myEphemeralNodes = null;
 
+  /** Minimum time between publications of the same event from this JVM, in milliseconds.  Signals in between
+  * are delivered locally at once, and coalesced into a single publication when the interval is up, so a busy
+  * crawler does not write to ZooKeeper on every change. */
+  protected final static long EVENT_PUBLISH_INTERVAL = 1000L;
+  /** Time each event was last published from this JVM.  Also the monitor for deferredEvents and eventPublisher. */
+  protected final static Map<String,Long> eventPublishTimes = new HashMap<String,Long>();
+  /** Events with a coalesced publication still to come, and the time each is due */
+  protected final static Map<String,Long> deferredEvents = new HashMap<String,Long>();
+  /** Thread publishing deferred events, or null if not started */
+  protected static EventPublisherThread eventPublisher = null;
+  /** Last node version seen for each event */
+  protected final static Map<String,Integer> eventVersions = new HashMap<String,Integer>();
+  /** Watcher for each event */
+  protected final static Map<String,EventWatcher> eventWatchers = new HashMap<String,EventWatcher>();
+
   // Cached local values
   protected ManifoldCFConfiguration cachedConfiguration = null;
   
@@ -813,6 +829,117 @@ public class ZooKeeperLockManager extends BaseLockManager implements ILockManage
     }
   }
 
+  /** Signal a named event.  The event is delivered to this JVM immediately, and published through ZooKeeper
+  * to the rest of the cluster no more often than EVENT_PUBLISH_INTERVAL.
+  *@param eventName is the name of the event to signal.
+  */
+  @Override
+  public void signalEvent(String eventName)
+    throws ManifoldCFException
+  {
+    super.signalEvent(eventName);
+    long currentTime = System.currentTimeMillis();
+    synchronized (eventPublishTimes)
+    {
+      Long lastTime = eventPublishTimes.get(eventName);
+      if (lastTime != null && currentTime - lastTime.longValue() < EVENT_PUBLISH_INTERVAL)
+      {
+        // Too soon; fold this signal into one publication at the end of the interval, rather than dropping it
+        if (!deferredEvents.containsKey(eventName))
+        {
+          deferredEvents.put(eventName,new Long(lastTime.longValue() + EVENT_PUBLISH_INTERVAL));
+          if (eventPublisher == null)
+          {
+            eventPublisher = new EventPublisherThread();
+            eventPublisher.start();
+          }
+          eventPublishTimes.notifyAll();
+        }
+        return;
+      }
+      eventPublishTimes.put(eventName,new Long(currentTime));
+      // This publication covers any that was deferred
+      deferredEvents.remove(eventName);
+    }
+    publishEvent(eventName);
+  }
+
+  /** Publish an event through ZooKeeper.
+  */
+  protected static void publishEvent(String eventName)
+    throws ManifoldCFException
+  {
+    try
+    {
+      ZooKeeperConnection connection = pool.grab();
+      try
+      {
+        connection.signalEvent(EVENT_PATH_PREFIX + ZooKeeperConnection.zooKeeperSafeName(eventName));
+      }
+      finally
+      {
+        pool.release(connection);
+      }
+    }
+    catch (InterruptedException e)
+    {
+      throw new ManifoldCFException(e.getMessage(),e,ManifoldCFException.INTERRUPTED);
+    }
+  }
+
+  /** Wait for a named event to be signalled, either in this JVM or anywhere in the cluster.
+  *@param eventName is the name of the event.
+  *@param eventCount is the event count previously returned by getEventCount().
+  *@param maxWaitTime is the maximum time to wait, in milliseconds.
+  *@return the current event count.
+  */
+  @Override
+  public long waitForEvent(String eventName, long eventCount, long maxWaitTime)
+    throws ManifoldCFException
+  {
+    if (localEvents.getCount(eventName) != eventCount)
+      return super.waitForEvent(eventName,eventCount,0L);
+
+    EventWatcher watcher;
+    synchronized (eventWatchers)
+    {
+      watcher = eventWatchers.get(eventName);
+      if (watcher == null)
+      {
+        watcher = new EventWatcher(eventName);
+        eventWatchers.put(eventName,watcher);
+      }
+    }
+
+    // Re-arm the watch (ZooKeeper keeps only one per watcher and path), and catch any publication we
+    // missed while no watch was set.
+    try
+    {
+      int version;
+      ZooKeeperConnection connection = pool.grab();
+      try
+      {
+        version = connection.watchEvent(EVENT_PATH_PREFIX + ZooKeeperConnection.zooKeeperSafeName(eventName),watcher);
+      }
+      finally
+      {
+        pool.release(connection);
+      }
+      synchronized (eventVersions)
+      {
+        Integer lastVersion = eventVersions.put(eventName,new Integer(version));
+        if (lastVersion != null && lastVersion.intValue() != version)
+          localEvents.signal(eventName);
+      }
+    }
+    catch (InterruptedException e)
+    {
+      throw new ManifoldCFException(e.getMessage(),e,ManifoldCFException.INTERRUPTED);
+    }
+
+    return super.waitForEvent(eventName,eventCount,maxWaitTime);
+  }
+
   /** Read data from a shared data resource.  Use this method to read any existing data, or get a null back if there is no such resource.
   * Note well that this is not necessarily an atomic operation, and it must thus be protected by a lock.
   *@param resourceName is the global name of the resource.
@@ -923,6 +1050,26 @@ public class ZooKeeperLockManager extends BaseLockManager implements ILockManage
   protected static void shutdownPool()
     throws ManifoldCFException
   {
+    EventPublisherThread publisher;
+    synchronized (eventPublishTimes)
+    {
+      publisher = eventPublisher;
+      eventPublisher = null;
+      deferredEvents.clear();
+    }
+    if (publisher != null)
+    {
+      publisher.interrupt();
+      try
+      {
+        publisher.join();
+      }
+      catch (InterruptedException e)
+      {
+        throw new ManifoldCFException(e.getMessage(),e,ManifoldCFException.INTERRUPTED);
+      }
+    }
+
     synchronized (ephemeralPoolLocker)
     {
       if (myEphemeralNodes != null)
@@ -973,4 +1120,93 @@ public class ZooKeeperLockManager extends BaseLockManager implements ILockManage
 
   }
   
+  /** Thread that publishes deferred events once their interval is up.
+  */
+  protected static class EventPublisherThread extends Thread
+  {
+    public EventPublisherThread()
+    {
+      super();
+      setName("ZooKeeper event publisher");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run()
+    {
+      while (true)
+      {
+        String eventName;
+        try
+        {
+          synchronized (eventPublishTimes)
+          {
+            while (true)
+            {
+              if (eventPublisher != this)
+                return;
+              // Find the deferred event that is due first
+              eventName = null;
+              long dueTime = Long.MAX_VALUE;
+              for (Map.Entry<String,Long> entry : deferredEvents.entrySet())
+              {
+                if (entry.getValue().longValue() < dueTime)
+                {
+                  eventName = entry.getKey();
+                  dueTime = entry.getValue().longValue();
+                }
+              }
+              long currentTime = System.currentTimeMillis();
+              if (eventName == null)
+                eventPublishTimes.wait();
+              else if (dueTime > currentTime)
+                eventPublishTimes.wait(dueTime - currentTime);
+              else
+              {
+                deferredEvents.remove(eventName);
+                eventPublishTimes.put(eventName,new Long(currentTime));
+                break;
+              }
+            }
+          }
+          publishEvent(eventName);
+        }
+        catch (InterruptedException e)
+        {
+          return;
+        }
+        catch (ManifoldCFException e)
+        {
+          if (e.getErrorCode() == ManifoldCFException.INTERRUPTED)
+            return;
+          // Delivery is best effort; waiters fall back on their maximum wait
+          Logging.lock.warn("Could not publish event: "+e.getMessage(),e);
+        }
+        catch (Throwable e)
+        {
+          Logging.lock.error("Event publisher error: "+e.getMessage(),e);
+        }
+      }
+    }
+  }
+
+  /** Watcher that turns a ZooKeeper notification on an event node into a local event signal.
+  */
+  protected static class EventWatcher implements Watcher
+  {
+    protected final String eventName;
+
+    public EventWatcher(String eventName)
+    {
+      this.eventName = eventName;
+    }
+
+    @Override
+    public void process(WatchedEvent event)
+    {
+      if (event.getType() != Watcher.Event.EventType.None)
+        localEvents.signal(eventName);
+    }
+  }
+
 }
@@ -0,0 +1,108 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.interfaces;
+
+import java.io.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestJSONConfigurationWriter
+{
+
+  @Test
+  public void emptyOutput()
+    throws Exception
+  {
+    compare(new ConfigurationNode[0]);
+  }
+
+  @Test
+  public void singleRow()
+    throws Exception
+  {
+    compare(new ConfigurationNode[]{row("a","1")});
+  }
+
+  @Test
+  public void manyRows()
+    throws Exception
+  {
+    compare(new ConfigurationNode[]{row("a","1"),row("b","2"),row("c","3")});
+  }
+
+  @Test
+  public void rowsFollowedByError()
+    throws Exception
+  {
+    ConfigurationNode error = new ConfigurationNode("error");
+    error.setValue("Something failed");
+    compare(new ConfigurationNode[]{row("a","1"),row("b","2"),error});
+    compare(new ConfigurationNode[]{row("a","1"),error});
+  }
+
+  @Test
+  public void outOfOrderTypesRejected()
+    throws Exception
+  {
+    StringWriter sw = new StringWriter();
+    JSONConfigurationWriter writer = new JSONConfigurationWriter(sw);
+    writer.addChild(row("a","1"));
+    writer.addChild(new ConfigurationNode("error"));
+    try
+    {
+      writer.addChild(row("b","2"));
+      fail("Expected exception");
+    }
+    catch (ManifoldCFException e)
+    {
+    }
+  }
+
+  protected static void compare(ConfigurationNode[] nodes)
+    throws Exception
+  {
+    Configuration c = new Configuration();
+    StringWriter sw = new StringWriter();
+    JSONConfigurationWriter writer = new JSONConfigurationWriter(sw);
+    assertFalse(writer.isStarted());
+    for (ConfigurationNode node : nodes)
+    {
+      c.addChild(c.getChildCount(),node);
+      writer.addChild(node);
+    }
+    writer.finish();
+    assertEquals(c.toJSON(),sw.toString());
+  }
+
+  protected static ConfigurationNode row(String name, String value)
+  {
+    ConfigurationNode rowNode = new ConfigurationNode("row");
+    ConfigurationNode column = new ConfigurationNode("column");
+    ConfigurationNode nameNode = new ConfigurationNode("name");
+    nameNode.setValue(name);
+    column.addChild(column.getChildCount(),nameNode);
+    ConfigurationNode valueNode = new ConfigurationNode("value");
+    valueNode.setValue(value);
+    column.addChild(column.getChildCount(),valueNode);
+    rowNode.addChild(rowNode.getChildCount(),column);
+    rowNode.addChild(rowNode.getChildCount(),new ConfigurationNode(column));
+    return rowNode;
+  }
+
+}
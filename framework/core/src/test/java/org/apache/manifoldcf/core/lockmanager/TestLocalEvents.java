@@ -0,0 +1,78 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.core.lockmanager;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestLocalEvents
+{
+
+  @Test
+  public void signalBeforeWaitIsNotLost()
+    throws Exception
+  {
+    LocalEventPool pool = new LocalEventPool();
+    long count = pool.getCount("test");
+    pool.signal("test");
+    long startTime = System.currentTimeMillis();
+    assertEquals(count+1L,pool.waitFor("test",count,10000L));
+    assertTrue(System.currentTimeMillis() - startTime < 5000L);
+  }
+
+  @Test
+  public void signalWakesWaiter()
+    throws Exception
+  {
+    final LocalEventPool pool = new LocalEventPool();
+    long count = pool.getCount("test");
+    Thread signaller = new Thread()
+    {
+      public void run()
+      {
+        try
+        {
+          Thread.sleep(100L);
+        }
+        catch (InterruptedException e)
+        {
+        }
+        pool.signal("test");
+      }
+    };
+    long startTime = System.currentTimeMillis();
+    signaller.start();
+    assertEquals(count+1L,pool.waitFor("test",count,10000L));
+    assertTrue(System.currentTimeMillis() - startTime < 5000L);
+    signaller.join();
+  }
+
+  @Test
+  public void waitTimesOut()
+    throws Exception
+  {
+    LocalEventPool pool = new LocalEventPool();
+    pool.signal("other");
+    long count = pool.getCount("test");
+    long startTime = System.currentTimeMillis();
+    assertEquals(count,pool.waitFor("test",count,200L));
+    assertTrue(System.currentTimeMillis() - startTime >= 200L);
+  }
+
+}
@@ -128,6 +128,8 @@ try
   Long reseedInterval = new Long(60L);
   // Expiration interval (Default: never)
   Long expirationInterval = null;
+  // Processing budget, in seconds (Default: system default)
+  Long processingBudget = null;
   // Start method
   int startMethod = IJobDescription.START_DISABLE;
   // Hopcount mode
@@ -184,6 +186,8 @@ try
     reseedInterval = (value==null)?null:new Long(value.longValue()/60000L);
     value = job.getExpiration();
     expirationInterval = (value==null)?null:new Long(value.longValue()/60000L);
+    value = job.getProcessingBudget();
+    processingBudget = (value==null)?null:new Long(value.longValue()/1000L);
     hopFilterMap = job.getHopCountFilters();
   }
 
@@ -526,6 +530,8 @@ function checkForm()
     return false;
   if (!checkExpiration())
     return false;
+  if (!checkProcessingBudget())
+    return false;
   if (!checkSchedule())
     return false;
 <%
@@ -632,6 +638,17 @@ function checkExpiration()
   return true;
 }
 
+function checkProcessingBudget()
+{
+  if (editjob.processingbudget.value != "" && !isInteger(editjob.processingbudget.value))
+  {
+    alert("<%=Messages.getBodyJavascriptString(pageContext.getRequest().getLocale(),"editjob.ProcessingBudgetMustBeAValidIntegerOrNull")%>");
+    editjob.processingbudget.focus();
+    return false;
+  }
+  return true;
+}
+
 function isInteger(value)
 {
   var anum=/(^\d+$)/;
@@ -1313,6 +1330,12 @@ function isRegularExpression(value)
                       </select>
                     </td>
                   </tr>
+                  <tr>
+                    <td class="description"><nobr><%=Messages.getBodyString(pageContext.getRequest().getLocale(),"editjob.ProcessingBudgetColon")%></nobr></td>
+                    <td class="value" colspan="3">
+                      <nobr><input type="text" size="5" name="processingbudget" value='<%=((processingBudget==null)?"":processingBudget.toString())%>'/> <%=Messages.getBodyString(pageContext.getRequest().getLocale(),"editjob.secondsBlankSystemDefault")%></nobr>
+                    </td>
+                  </tr>
                 </table>
 <%
   }
@@ -1351,6 +1374,7 @@ function isRegularExpression(value)
 %>
                 <input type="hidden" name="priority" value='<%=priority%>'/>
                 <input type="hidden" name="startmethod" value='<%=startMethod%>'/>
+                <input type="hidden" name="processingbudget" value='<%=((processingBudget==null)?"":processingBudget.toString())%>'/>
 <%
   }
 
@@ -1322,6 +1322,14 @@
             else
               job.setExpiration(new Long(new Long(x).longValue() * 60000L));
           }
+          x = variableContext.getParameter("processingbudget");
+          if (x != null)
+          {
+            if (x.length() == 0)
+              job.setProcessingBudget(null);
+            else
+              job.setProcessingBudget(new Long(new Long(x).longValue() * 1000L));
+          }
 
           IRepositoryConnection connection = null;
           if (job.getConnectionName() != null && job.getConnectionName().length() > 0)
@@ -732,7 +732,8 @@ function isInteger(value)
           <input type="hidden" name="startrow" value='<%=Integer.toString(startRow)%>'/>
           <input type="hidden" name="sortorder" value='<%=org.apache.manifoldcf.ui.util.Encoder.attributeEscape(sortOrder.toString())%>'/>
 <%
-    long count = connMgr.countHistoryRows(reportConnection,criteria);
+    BucketDescription idBucket = new BucketDescription(reportBucketDesc,false);
+    long count = connMgr.countHistoryRows(reportConnection,criteria,idBucket,intervalMilliseconds);
     long maxCount = connMgr.getMaxRows();
     boolean hasMoreRows;
     if (count > maxCount)
@@ -744,7 +745,6 @@ function isInteger(value)
     }
     else
     {
-      BucketDescription idBucket = new BucketDescription(reportBucketDesc,false);
 
       IResultSet set = connMgr.genHistoryByteCount(reportConnection,criteria,sortOrder,idBucket,
         intervalMilliseconds,startRow,rowCount+1);
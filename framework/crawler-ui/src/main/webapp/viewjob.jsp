@@ -256,6 +256,10 @@ function StartOver(jobID)
               <td class="description"><nobr><%=Messages.getBodyString(pageContext.getRequest().getLocale(),"viewjob.StartMethodColon")%></nobr></td>
               <td class="value"><%=startMethod%></td>
             </tr>
+            <tr>
+              <td class="description"><nobr><%=Messages.getBodyString(pageContext.getRequest().getLocale(),"viewjob.ProcessingBudgetColon")%></nobr></td>
+              <td class="value" colspan="3"><nobr><%=(job.getProcessingBudget()==null)?Messages.getBodyString(pageContext.getRequest().getLocale(),"viewjob.SystemDefault"):(new Long(job.getProcessingBudget().longValue()/1000L).toString()+" "+Messages.getBodyString(pageContext.getRequest().getLocale(),"viewjob.seconds"))%></nobr></td>
+            </tr>
 <%
     if (model != -1 && model != IRepositoryConnector.MODEL_ADD_CHANGE_DELETE)
     {
@@ -34,14 +34,16 @@ public class AuthCheckThread extends Thread
 
   // Local data
   protected RequestQueue<AuthRequest> requestQueue;
+  protected AuthorityStatistics statistics;
 
   /** Constructor.
   */
-  public AuthCheckThread(String id, RequestQueue<AuthRequest> requestQueue)
+  public AuthCheckThread(String id, RequestQueue<AuthRequest> requestQueue, AuthorityStatistics statistics)
     throws ManifoldCFException
   {
     super();
     this.requestQueue = requestQueue;
+    this.statistics = statistics;
     setName("Auth check thread "+id);
     setDaemon(true);
   }
@@ -67,69 +69,79 @@ public class AuthCheckThread extends Thread
           // Wait for a request.
           AuthRequest theRequest = requestQueue.getRequest();
 
-          // Try to fill the request before going back to sleep.
-          if (Logging.authorityService.isDebugEnabled())
+          try
           {
-            Logging.authorityService.debug(" Calling connector class '"+theRequest.getAuthorityConnection().getClassName()+"'");
-          }
+            // Try to fill the request before going back to sleep.
+            if (Logging.authorityService.isDebugEnabled())
+            {
+              Logging.authorityService.debug(" Calling connector class '"+theRequest.getAuthorityConnection().getClassName()+"'");
+            }
 
-          AuthorizationResponse response = null;
-          Throwable exception = null;
+            AuthorizationResponse response = null;
+            Throwable exception = null;
 
-          // Grab an authorization response only if there's a user
-          if (theRequest.getUserID() != null)
-          {
-            try
+            // Grab an authorization response only if there's a user
+            if (theRequest.getUserID() != null)
             {
-              IAuthorityConnector connector = authorityConnectorPool.grab(theRequest.getAuthorityConnection());
-              // If this is null, we MUST treat this as an "unauthorized" condition!!
-              // We signal that by setting the exception value.
+              long startTime = System.currentTimeMillis();
               try
               {
-                if (connector == null)
-                  exception = new ManifoldCFException("Authority connector "+theRequest.getAuthorityConnection().getClassName()+" is not registered.");
-                else
+                IAuthorityConnector connector = authorityConnectorPool.grab(theRequest.getAuthorityConnection());
+                // If this is null, we MUST treat this as an "unauthorized" condition!!
+                // We signal that by setting the exception value.
+                try
                 {
-                  // Get the acl for the user
-                  try
-                  {
-                    response = connector.getAuthorizationResponse(theRequest.getUserID());
-                  }
-                  catch (ManifoldCFException e)
+                  if (connector == null)
+                    exception = new ManifoldCFException("Authority connector "+theRequest.getAuthorityConnection().getClassName()+" is not registered.");
+                  else
                   {
-                    if (e.getErrorCode() == ManifoldCFException.INTERRUPTED)
-                      throw e;
-                    Logging.authorityService.warn("Authority error: "+e.getMessage(),e);
-                    response = AuthorityConnectorFactory.getDefaultAuthorizationResponse(threadContext,theRequest.getAuthorityConnection().getClassName(),theRequest.getUserID());
-                  }
+                    // Get the acl for the user
+                    try
+                    {
+                      response = connector.getAuthorizationResponse(theRequest.getUserID());
+                    }
+                    catch (ManifoldCFException e)
+                    {
+                      if (e.getErrorCode() == ManifoldCFException.INTERRUPTED)
+                        throw e;
+                      Logging.authorityService.warn("Authority error: "+e.getMessage(),e);
+                      response = AuthorityConnectorFactory.getDefaultAuthorizationResponse(threadContext,theRequest.getAuthorityConnection().getClassName(),theRequest.getUserID());
+                    }
 
+                  }
+                }
+                finally
+                {
+                  authorityConnectorPool.release(theRequest.getAuthorityConnection(),connector);
                 }
               }
-              finally
+              catch (ManifoldCFException e)
               {
-                authorityConnectorPool.release(theRequest.getAuthorityConnection(),connector);
+                if (e.getErrorCode() == ManifoldCFException.INTERRUPTED)
+                  throw e;
+                Logging.authorityService.warn("Authority connection exception: "+e.getMessage(),e);
+                response = AuthorityConnectorFactory.getDefaultAuthorizationResponse(threadContext,theRequest.getAuthorityConnection().getClassName(),theRequest.getUserID());
+                if (response == null)
+                  exception = e;
               }
+              catch (Throwable e)
+              {
+                Logging.authorityService.warn("Authority connection error: "+e.getMessage(),e);
+                response = AuthorityConnectorFactory.getDefaultAuthorizationResponse(threadContext,theRequest.getAuthorityConnection().getClassName(),theRequest.getUserID());
+                if (response == null)
+                  exception = e;
+              }
+              statistics.noteRequest(theRequest.getAuthorityConnection().getName(),System.currentTimeMillis()-startTime,
+                exception != null || response == null || response.getResponseStatus() == AuthorizationResponse.RESPONSE_UNREACHABLE);
             }
-            catch (ManifoldCFException e)
-            {
-              if (e.getErrorCode() == ManifoldCFException.INTERRUPTED)
-                throw e;
-              Logging.authorityService.warn("Authority connection exception: "+e.getMessage(),e);
-              response = AuthorityConnectorFactory.getDefaultAuthorizationResponse(threadContext,theRequest.getAuthorityConnection().getClassName(),theRequest.getUserID());
-              if (response == null)
-                exception = e;
-            }
-            catch (Throwable e)
-            {
-              Logging.authorityService.warn("Authority connection error: "+e.getMessage(),e);
-              response = AuthorityConnectorFactory.getDefaultAuthorizationResponse(threadContext,theRequest.getAuthorityConnection().getClassName(),theRequest.getUserID());
-              if (response == null)
-                exception = e;
-            }
-          }
 
-          // The request is complete
-          theRequest.completeRequest(response,exception);
+            // The request is complete
+            theRequest.completeRequest(response,exception);
+          }
+          finally
+          {
+            requestQueue.releaseRequest(theRequest.getAuthorityConnection().getName());
+          }
 
           // Repeat, and only go to sleep if there are no more requests.
         }
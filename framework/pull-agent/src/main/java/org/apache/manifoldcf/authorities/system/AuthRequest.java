@@ -104,6 +104,31 @@ public class AuthRequest
     }
   }
 
+  /** Complete a request that could not be queued, without consulting the authority.
+  * The answer is the authority connector's default response, the same as if the authority could not be reached.
+  */
+  public void completeRejectedRequest()
+  {
+    if (userID == null)
+    {
+      completeRequest(null,null);
+      return;
+    }
+    try
+    {
+      AuthorizationResponse response = AuthorityConnectorFactory.getDefaultAuthorizationResponse(ThreadContextFactory.make(),
+        authorityConnection.getClassName(),userID);
+      if (response == null)
+        completeRequest(null,new ManifoldCFException("Authority request queue is saturated"));
+      else
+        completeRequest(response,null);
+    }
+    catch (ManifoldCFException e)
+    {
+      completeRequest(null,e);
+    }
+  }
+
   /** Get the answer tokens */
   public AuthorizationResponse getAnswerResponse()
   {
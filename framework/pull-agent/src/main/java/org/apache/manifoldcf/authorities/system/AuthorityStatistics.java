@@ -0,0 +1,127 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.authorities.system;
+
+import java.util.*;
+
+/** This class accumulates per-authority-connection latency statistics for the authority service.
+* One instance is shared by all the auth check threads in a JVM.
+*/
+public class AuthorityStatistics
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  protected final Map<String,AuthorityStatistic> statistics = new HashMap<String,AuthorityStatistic>();
+
+  /** Constructor.
+  */
+  public AuthorityStatistics()
+  {
+  }
+
+  /** Note the completion of an authorization request.
+  *@param connectionName is the name of the authority connection.
+  *@param responseTime is the time the authority took to answer, in milliseconds.
+  *@param failed is true if the authority did not produce a usable answer.
+  */
+  public synchronized void noteRequest(String connectionName, long responseTime, boolean failed)
+  {
+    AuthorityStatistic statistic = statistics.get(connectionName);
+    if (statistic == null)
+    {
+      statistic = new AuthorityStatistic(connectionName);
+      statistics.put(connectionName,statistic);
+    }
+    statistic.requestCount++;
+    if (failed)
+      statistic.failureCount++;
+    statistic.totalResponseTime += responseTime;
+    if (responseTime > statistic.maxResponseTime)
+      statistic.maxResponseTime = responseTime;
+  }
+
+  /** Get a snapshot of the current statistics, sorted by connection name.
+  */
+  public synchronized List<AuthorityStatistic> getStatistics()
+  {
+    String[] names = statistics.keySet().toArray(new String[0]);
+    Arrays.sort(names);
+    List<AuthorityStatistic> rval = new ArrayList<AuthorityStatistic>(names.length);
+    for (String name : names)
+    {
+      rval.add(new AuthorityStatistic(statistics.get(name)));
+    }
+    return rval;
+  }
+
+  /** Statistics for a single authority connection.
+  */
+  public static class AuthorityStatistic
+  {
+    protected final String connectionName;
+    protected long requestCount = 0L;
+    protected long failureCount = 0L;
+    protected long totalResponseTime = 0L;
+    protected long maxResponseTime = 0L;
+
+    protected AuthorityStatistic(String connectionName)
+    {
+      this.connectionName = connectionName;
+    }
+
+    protected AuthorityStatistic(AuthorityStatistic other)
+    {
+      this.connectionName = other.connectionName;
+      this.requestCount = other.requestCount;
+      this.failureCount = other.failureCount;
+      this.totalResponseTime = other.totalResponseTime;
+      this.maxResponseTime = other.maxResponseTime;
+    }
+
+    public String getConnectionName()
+    {
+      return connectionName;
+    }
+
+    public long getRequestCount()
+    {
+      return requestCount;
+    }
+
+    public long getFailureCount()
+    {
+      return failureCount;
+    }
+
+    /** Get the mean response time in milliseconds */
+    public long getAverageResponseTime()
+    {
+      if (requestCount == 0L)
+        return 0L;
+      return totalResponseTime / requestCount;
+    }
+
+    /** Get the maximum response time in milliseconds */
+    public long getMaxResponseTime()
+    {
+      return maxResponseTime;
+    }
+  }
+
+}
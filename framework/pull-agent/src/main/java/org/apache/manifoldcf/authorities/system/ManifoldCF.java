@@ -40,11 +40,17 @@ public class ManifoldCF extends org.apache.manifoldcf.core.system.ManifoldCF
   
   protected static final String authCheckThreadCountProperty = "org.apache.manifoldcf.authorityservice.threads";
   protected static final String mappingThreadCountProperty = "org.apache.manifoldcf.authorityservice.mappingthreads";
+  protected static final String queueSizeProperty = "org.apache.manifoldcf.authorityservice.queuesize";
+  protected static final String queueTimeoutProperty = "org.apache.manifoldcf.authorityservice.queuetimeout";
+  protected static final String connectionThreadCountProperty = "org.apache.manifoldcf.authorityservice.connectionthreads";
+  protected static final String mappingConnectionThreadCountProperty = "org.apache.manifoldcf.authorityservice.mappingconnectionthreads";
 
   // Request queue
   protected static RequestQueue<AuthRequest> requestQueue = null;
   // Mapping request queue
   protected static RequestQueue<MappingRequest> mappingRequestQueue = null;
+  // Authority latency statistics
+  protected static AuthorityStatistics authorityStatistics = null;
   
   /** Initialize environment.
   */
@@ -161,17 +167,33 @@ public class ManifoldCF extends org.apache.manifoldcf.core.system.ManifoldCF
     if (numMappingThreads < 1 || numMappingThreads > 100)
       throw new ManifoldCFException("Illegal value for the number of mapping threads");
 
+    int queueSize = LockManagerFactory.getIntProperty(threadContext, queueSizeProperty, 1000);
+    if (queueSize < 1)
+      throw new ManifoldCFException("Illegal value for the request queue size");
+    long queueTimeout = LockManagerFactory.getLongProperty(threadContext, queueTimeoutProperty, 30000L);
+    if (queueTimeout < 0L)
+      throw new ManifoldCFException("Illegal value for the request queue timeout");
+
+    // By default, no single connection may use more than three quarters of the threads
+    int connectionThreadCount = LockManagerFactory.getIntProperty(threadContext, connectionThreadCountProperty, Math.max(1,(numAuthCheckThreads*3)/4));
+    if (connectionThreadCount < 1)
+      throw new ManifoldCFException("Illegal value for the number of auth check threads per connection");
+    int mappingConnectionThreadCount = LockManagerFactory.getIntProperty(threadContext, mappingConnectionThreadCountProperty, Math.max(1,(numMappingThreads*3)/4));
+    if (mappingConnectionThreadCount < 1)
+      throw new ManifoldCFException("Illegal value for the number of mapping threads per connection");
+
     // Start up threads
     idleCleanupThread = new IdleCleanupThread();
     idleCleanupThread.start();
 
-    requestQueue = new RequestQueue<AuthRequest>();
-    mappingRequestQueue = new RequestQueue<MappingRequest>();
+    requestQueue = new RequestQueue<AuthRequest>(queueSize,connectionThreadCount,queueTimeout);
+    mappingRequestQueue = new RequestQueue<MappingRequest>(queueSize,mappingConnectionThreadCount,queueTimeout);
+    authorityStatistics = new AuthorityStatistics();
 
     authCheckThreads = new AuthCheckThread[numAuthCheckThreads];
     for (int i = 0; i < numAuthCheckThreads; i++)
     {
-      authCheckThreads[i] = new AuthCheckThread(Integer.toString(i),requestQueue);
+      authCheckThreads[i] = new AuthCheckThread(Integer.toString(i),requestQueue,authorityStatistics);
       authCheckThreads[i].start();
     }
     
@@ -282,6 +304,12 @@ public class ManifoldCF extends org.apache.manifoldcf.core.system.ManifoldCF
     return requestQueue;
   }
 
+  /** Get the current authority statistics */
+  public static AuthorityStatistics getAuthorityStatistics()
+  {
+    return authorityStatistics;
+  }
+
   /** Get the current mapping request queue */
   public static RequestQueue<MappingRequest> getMappingRequestQueue()
   {
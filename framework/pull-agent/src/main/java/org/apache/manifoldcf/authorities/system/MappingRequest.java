@@ -105,6 +105,13 @@ public class MappingRequest
     }
   }
 
+  /** Complete a request that could not be queued, without consulting the mapper.
+  */
+  public void completeRejectedRequest()
+  {
+    completeRequest(null,new ManifoldCFException("Mapping request queue is saturated"));
+  }
+
   /** Get the answer user */
   public String getAnswerResponse()
   {
@@ -23,38 +23,99 @@ import org.apache.manifoldcf.authorities.interfaces.*;
 import java.util.*;
 
 /** This class describes a authorization request queue, which has a "stuffer" servlet and many "reader" threads.
-* The queue manages thread synchronization so that (a) the "stuffer" servlet blindly appends authority requests, and
+* The queue manages thread synchronization so that (a) the "stuffer" servlet appends requests, and
 * then waits for these requests to be completed, and
-* (b) the "reader" threads block if queue is empty.
-* The objects being queued are all AuthRequest objects.
+* (b) the "reader" threads block if there is nothing they are allowed to work on.
+*
+* Requests are served oldest first.  Each request belongs to a connection, and no more than a fixed number of
+* requests for any one connection are handed out at a time, so a slow connection cannot tie up every reader thread.
+* Readers must call releaseRequest() when they are done with a request.
+*
+* The queue is bounded.  A request is rejected immediately if the queue is full, or if the oldest request already
+* waiting for the same connection has been waiting longer than the maximum wait time; the caller is then expected
+* to answer the request itself.
 */
 public class RequestQueue<T>
 {
   public static final String _rcsid = "@(#)$Id: RequestQueue.java 988245 2010-08-23 18:39:35Z kwright $";
 
-  // Since the queue has a maximum size, an ArrayList is a fine way to keep it
-  protected List<T> queue = new ArrayList<T>();
+  /** Maximum number of waiting requests */
+  protected final int maxSize;
+  /** Maximum number of requests per connection being worked on at once */
+  protected final int maxPerConnection;
+  /** Maximum time a connection's oldest request may wait before new requests for it are rejected; 0 means forever */
+  protected final long maxWaitTime;
 
-  /** Constructor.
+  // Waiting requests, oldest first
+  protected final LinkedList<QueuedRequest<T>> queue = new LinkedList<QueuedRequest<T>>();
+  // Number of requests being worked on, by connection name
+  protected final Map<String,Integer> activeCounts = new HashMap<String,Integer>();
+
+  // Statistics
+  protected long servedCount = 0L;
+  protected long rejectedCount = 0L;
+  protected long totalWaitTime = 0L;
+  protected long maxObservedWaitTime = 0L;
+
+  /** Constructor, for an unbounded queue.
   */
   public RequestQueue()
   {
+    this(Integer.MAX_VALUE,Integer.MAX_VALUE,0L);
+  }
+
+  /** Constructor.
+  *@param maxSize is the maximum number of waiting requests.
+  *@param maxPerConnection is the maximum number of requests for a single connection that may be worked on at once.
+  *@param maxWaitTime is the maximum time, in milliseconds, that a connection's oldest request may wait before new
+  * requests for that connection are rejected, or 0 for no limit.
+  */
+  public RequestQueue(int maxSize, int maxPerConnection, long maxWaitTime)
+  {
+    this.maxSize = maxSize;
+    this.maxPerConnection = maxPerConnection;
+    this.maxWaitTime = maxWaitTime;
   }
 
   /** Add a request to the queue.
   *@param dd is the request.
+  *@param connectionName is the name of the connection the request is for.
+  *@return true if the request was queued, false if it was rejected.
   */
-  public void addRequest(T dd)
+  public boolean addRequest(T dd, String connectionName)
   {
+    long currentTime = System.currentTimeMillis();
     synchronized (queue)
     {
-      queue.add(dd);
-      queue.notify();
+      if (queue.size() >= maxSize)
+      {
+        rejectedCount++;
+        return false;
+      }
+      if (maxWaitTime > 0L)
+      {
+        for (QueuedRequest<T> qr : queue)
+        {
+          if (qr.connectionName.equals(connectionName))
+          {
+            if (currentTime - qr.queuedTime > maxWaitTime)
+            {
+              rejectedCount++;
+              return false;
+            }
+            break;
+          }
+        }
+      }
+      queue.add(new QueuedRequest<T>(dd,connectionName,currentTime));
+      // Not every reader may be allowed to take this request, so wake them all
+      queue.notifyAll();
+      return true;
     }
   }
 
-  /** Pull the next request off the queue, but wait if there is
-  * nothing there.
+  /** Pull the oldest request that may be worked on off the queue, but wait if there is
+  * no such request.
   *@return the request to be processed.
   */
   public T getRequest()
@@ -62,13 +123,111 @@ public class RequestQueue<T>
   {
     synchronized (queue)
     {
-      // If queue is empty, go to sleep
-      while (queue.size() == 0)
+      while (true)
+      {
+        Iterator<QueuedRequest<T>> iter = queue.iterator();
+        while (iter.hasNext())
+        {
+          QueuedRequest<T> qr = iter.next();
+          Integer activeCount = activeCounts.get(qr.connectionName);
+          int count = (activeCount == null)?0:activeCount.intValue();
+          if (count < maxPerConnection)
+          {
+            iter.remove();
+            activeCounts.put(qr.connectionName,new Integer(count+1));
+            long waitTime = System.currentTimeMillis() - qr.queuedTime;
+            servedCount++;
+            totalWaitTime += waitTime;
+            if (waitTime > maxObservedWaitTime)
+              maxObservedWaitTime = waitTime;
+            return qr.request;
+          }
+        }
+        // Nothing we can take; go to sleep
         queue.wait();
+      }
+    }
+  }
+
+  /** Note that a request obtained from getRequest() is done.
+  *@param connectionName is the name of the connection the request was for.
+  */
+  public void releaseRequest(String connectionName)
+  {
+    synchronized (queue)
+    {
+      Integer activeCount = activeCounts.get(connectionName);
+      if (activeCount != null)
+      {
+        if (activeCount.intValue() <= 1)
+          activeCounts.remove(connectionName);
+        else
+          activeCounts.put(connectionName,new Integer(activeCount.intValue()-1));
+      }
+      // A reader may have been waiting for this connection's slot
+      queue.notifyAll();
+    }
+  }
 
-      return queue.remove(queue.size()-1);
+  /** Get the number of requests currently waiting */
+  public int getQueueSize()
+  {
+    synchronized (queue)
+    {
+      return queue.size();
     }
   }
 
+  /** Get the number of requests handed out so far */
+  public long getServedCount()
+  {
+    synchronized (queue)
+    {
+      return servedCount;
+    }
+  }
+
+  /** Get the number of requests rejected so far */
+  public long getRejectedCount()
+  {
+    synchronized (queue)
+    {
+      return rejectedCount;
+    }
+  }
+
+  /** Get the mean time, in milliseconds, that served requests waited in the queue */
+  public long getAverageWaitTime()
+  {
+    synchronized (queue)
+    {
+      if (servedCount == 0L)
+        return 0L;
+      return totalWaitTime / servedCount;
+    }
+  }
+
+  /** Get the longest time, in milliseconds, that a served request waited in the queue */
+  public long getMaxWaitTime()
+  {
+    synchronized (queue)
+    {
+      return maxObservedWaitTime;
+    }
+  }
+
+  protected static class QueuedRequest<T>
+  {
+    public final T request;
+    public final String connectionName;
+    public final long queuedTime;
+
+    public QueuedRequest(T request, String connectionName, long queuedTime)
+    {
+      this.request = request;
+      this.connectionName = connectionName;
+      this.queuedTime = queuedTime;
+    }
+  }
 
 }
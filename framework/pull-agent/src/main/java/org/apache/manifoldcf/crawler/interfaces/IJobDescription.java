@@ -282,6 +282,17 @@ public interface IJobDescription
   */
   public Long getReseedInterval();
 
+  /** Set the document processing budget, in milliseconds.
+  * A set of documents that takes longer than this to process is interrupted, and its documents are quarantined.
+  *@param budget is the budget, or null to use the system default.
+  */
+  public void setProcessingBudget(Long budget);
+
+  /** Get the document processing budget, in milliseconds.
+  *@return the budget, or null if the system default applies.
+  */
+  public Long getProcessingBudget();
+
   // Document specification
 
   /** Get the document specification (which can be modified).
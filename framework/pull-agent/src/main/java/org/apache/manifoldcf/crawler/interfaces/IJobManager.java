@@ -52,6 +52,7 @@ public interface IJobManager
   public static final int DOCSTATUS_WAITINGFOREXPIRATION = 7;
   public static final int DOCSTATUS_WAITINGFOREVER = 8;
   public static final int DOCSTATUS_HOPCOUNTEXCEEDED = 9;
+  public static final int DOCSTATUS_QUARANTINED = 10;
 
   // Job stop reasons
   public static final int STOP_ERRORABORT = 0;
@@ -59,7 +60,17 @@ public interface IJobManager
   public static final int STOP_MANUALPAUSE = 2;
   public static final int STOP_SCHEDULEPAUSE = 3;
   public static final int STOP_RESTART = 4;
-  
+
+  // Lock manager events signalled by the job manager, so that crawler threads can wait for them instead of polling.
+  /** Documents may have become available for processing */
+  public static final String EVENT_DOCUMENTSQUEUED = "_CRAWLER_DOCUMENTSQUEUED_";
+  /** Documents may have become available for deletion or cleanup */
+  public static final String EVENT_DOCUMENTSDELETABLE = "_CRAWLER_DOCUMENTSDELETABLE_";
+  /** A job's last outstanding documents have finished processing, so it may be ready to finish */
+  public static final String EVENT_DOCUMENTSCOMPLETED = "_CRAWLER_DOCUMENTSCOMPLETED_";
+  /** Jobs may have become ready for startup, seeding, or deletion */
+  public static final String EVENT_JOBSCHANGED = "_CRAWLER_JOBSCHANGED_";
+
   /** Install the job manager's tables.
   */
   public void install()
@@ -84,6 +95,19 @@ public interface IJobManager
   public IJobDescription[] getAllJobs()
     throws ManifoldCFException;
 
+  /** Get the identifiers of all jobs, in the order getAllJobs() would return them.
+  *@return the identifiers, sorted by description.
+  */
+  public Long[] getAllJobIDs()
+    throws ManifoldCFException;
+
+  /** Load multiple jobs, read-only.
+  *@param ids are the jobs' identifiers.
+  *@return the jobs, in order; null for any job that doesn't exist.
+  */
+  public IJobDescription[] loadMultiple(Long[] ids)
+    throws ManifoldCFException;
+
   /** Create a new job.
   *@return the new job.
   */
@@ -483,6 +507,17 @@ public interface IJobManager
     int action, long failTime, int failCount)
     throws ManifoldCFException;
 
+  /** Quarantine documents whose processing ran past the job's processing budget.
+  * Each document is held back for a delay that doubles every time it is quarantined again.
+  *@param documentDescriptions is the set of description objects for the documents.
+  *@param currentTime is the current time in ms since epoch.
+  *@param baseDelay is the delay after a document's first quarantine, in ms.
+  *@param maxDelay is the largest delay, in ms.
+  */
+  public void quarantineDocumentMultiple(DocumentDescription[] documentDescriptions, long currentTime,
+    long baseDelay, long maxDelay)
+    throws ManifoldCFException;
+
   /** Reset an active document back to its former state.
   * This gets done when there's a service interruption and the document cannot be processed yet.
   *@param documentDescription is the description object for the document that was processed.
@@ -1245,6 +1280,20 @@ public interface IJobManager
     int startRow, int rowCount)
     throws ManifoldCFException;
 
+  /** Run a 'document status' report, streaming the rows.
+  * Each row of the report is handed to the row handler as it is read, rather than being accumulated,
+  * so memory use does not depend on the size of the report.  The rows have the same columns as genDocumentStatus() returns.
+  *@param connectionName is the name of the connection.
+  *@param filterCriteria are the criteria used to limit the records considered for the report.
+  *@param sortOrder is the specified sort order of the final report.
+  *@param startRow is the first row to include.
+  *@param rowCount is the number of rows to include.
+  *@param rowHandler receives the rows.
+  */
+  public void genDocumentStatus(String connectionName, StatusFilterCriteria filterCriteria, SortOrder sortOrder,
+    int startRow, int rowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException;
+
   /** Run a 'queue status' report.
   *@param connectionName is the name of the connection.
   *@param filterCriteria are the criteria used to limit the records considered for the report.
@@ -1258,4 +1307,19 @@ public interface IJobManager
   public IResultSet genQueueStatus(String connectionName, StatusFilterCriteria filterCriteria, SortOrder sortOrder,
     BucketDescription idBucketDescription, int startRow, int rowCount)
     throws ManifoldCFException;
+
+  /** Run a 'queue status' report, streaming the rows.
+  * Each row of the report is handed to the row handler as it is read, rather than being accumulated,
+  * so memory use does not depend on the size of the report.  The rows have the same columns as genQueueStatus() returns.
+  *@param connectionName is the name of the connection.
+  *@param filterCriteria are the criteria used to limit the records considered for the report.
+  *@param sortOrder is the specified sort order of the final report.
+  *@param idBucketDescription is the bucket description for generating the identifier class.
+  *@param startRow is the first row to include.
+  *@param rowCount is the number of rows to include.
+  *@param rowHandler receives the rows.
+  */
+  public void genQueueStatus(String connectionName, StatusFilterCriteria filterCriteria, SortOrder sortOrder,
+    BucketDescription idBucketDescription, int startRow, int rowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException;
 }
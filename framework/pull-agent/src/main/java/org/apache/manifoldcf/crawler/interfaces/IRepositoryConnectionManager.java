@@ -197,6 +197,36 @@ public interface IRepositoryConnectionManager
   public IResultSet genHistorySimple(String connectionName, FilterCriteria criteria, SortOrder sort, int startRow, int maxRowCount)
     throws ManifoldCFException;
 
+  /** Generate a simple history report, streaming the rows.
+  * Each row of the report is handed to the row handler as it is read, rather than being accumulated,
+  * so memory use does not depend on the size of the report.  The rows have the same columns as genHistorySimple() returns.
+  *@param connectionName is the name of the connection.
+  *@param criteria is the filtering criteria, which selects the records of interest.
+  *@param sort is the sorting order, which can specify sort based on the result columns.
+  *@param startRow is the first row to include (beginning with 0)
+  *@param maxRowCount is the maximum number of rows to include.
+  *@param rowHandler receives the rows.
+  */
+  public void genHistorySimple(String connectionName, FilterCriteria criteria, SortOrder sort, int startRow, int maxRowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException;
+
+  /** Wait until queued history records are due to be written, or until a maximum time has passed, and then
+  * write whatever is due.  This is called repeatedly by the history writer thread; while it keeps being
+  * called, recordHistory() only queues records.
+  *@param maxWaitTime is the longest time to wait, in milliseconds.
+  */
+  public void writeQueuedHistory(long maxWaitTime)
+    throws ManifoldCFException;
+
+  /** Note that the history writer thread has stopped, so recordHistory() callers write their own batches.
+  */
+  public void noteHistoryWriterStopped();
+
+  /** Write all queued history records now.  This is called on shutdown.
+  */
+  public void flushHistory()
+    throws ManifoldCFException;
+
   /** Count the number of rows specified by a given set of criteria.  This can be used to make decisions
   * as to whether a query based on those rows will complete in an acceptable amount of time.
   *@param connectionName is the name of the connection.
@@ -206,6 +236,18 @@ public interface IRepositoryConnectionManager
   public long countHistoryRows(String connectionName, FilterCriteria criteria)
     throws ManifoldCFException;
 
+  /** Count the number of rows a windowed report would have to work with, given its criteria, identifier
+  * bucket and interval.  Reports that can be answered from pre-aggregated history count the aggregated
+  * rows rather than the individual history rows.
+  *@param connectionName is the name of the connection.
+  *@param criteria is the filtering criteria, which selects the records of interest.
+  *@param idBucket is the identifier bucket description.
+  *@param interval is the window interval, in milliseconds.
+  *@return the number of rows included by the criteria.
+  */
+  public long countHistoryRows(String connectionName, FilterCriteria criteria, BucketDescription idBucket, long interval)
+    throws ManifoldCFException;
+
   /** Get the maximum number of rows a window-based report can work with.
   *@return the maximum rows.
   */
@@ -232,6 +274,22 @@ public interface IRepositoryConnectionManager
     long interval, int startRow, int maxRowCount)
     throws ManifoldCFException;
 
+  /** Generate a maximum activity report, streaming the rows.
+  * Each row of the report is handed to the row handler as it is read, rather than being accumulated,
+  * so memory use does not depend on the size of the report.  The rows have the same columns as genHistoryActivityCount() returns.
+  *@param connectionName is the name of the connection.
+  *@param criteria is the filtering criteria, which selects the records of interest.
+  *@param sort is the sorting order, which can specify sort based on the result columns.
+  *@param idBucket is the description of the bucket based on processed entity identifiers.
+  *@param interval is the time interval, in milliseconds, to locate.
+  *@param startRow is the first row to include (beginning with 0)
+  *@param maxRowCount is the maximum number of rows to include.
+  *@param rowHandler receives the rows.
+  */
+  public void genHistoryActivityCount(String connectionName, FilterCriteria criteria, SortOrder sort, BucketDescription idBucket,
+    long interval, int startRow, int maxRowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException;
+
   /** Generate a report, listing the start time, bytes processed, and identifier bucket, given
   * a time slice (interval) size.
   * The records selected for this report are based on the filtering criteria object passed into this method.
@@ -252,6 +310,22 @@ public interface IRepositoryConnectionManager
     long interval, int startRow, int maxRowCount)
     throws ManifoldCFException;
 
+  /** Generate a maximum byte count report, streaming the rows.
+  * Each row of the report is handed to the row handler as it is read, rather than being accumulated,
+  * so memory use does not depend on the size of the report.  The rows have the same columns as genHistoryByteCount() returns.
+  *@param connectionName is the name of the connection.
+  *@param criteria is the filtering criteria, which selects the records of interest.
+  *@param sort is the sorting order, which can specify sort based on the result columns.
+  *@param idBucket is the description of the bucket based on processed entity identifiers.
+  *@param interval is the time interval, in milliseconds, to locate.
+  *@param startRow is the first row to include (beginning with 0)
+  *@param maxRowCount is the maximum number of rows to include.
+  *@param rowHandler receives the rows.
+  */
+  public void genHistoryByteCount(String connectionName, FilterCriteria criteria, SortOrder sort, BucketDescription idBucket,
+    long interval, int startRow, int maxRowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException;
+
 
   /** Generate a report, listing the result bucket and identifier bucket.
   * The records selected for this report are based on the filtering criteria object passed into this method.
@@ -271,5 +345,21 @@ public interface IRepositoryConnectionManager
     BucketDescription resultCodeBucket, BucketDescription idBucket, int startRow, int maxRowCount)
     throws ManifoldCFException;
 
+  /** Generate a result code report, streaming the rows.
+  * Each row of the report is handed to the row handler as it is read, rather than being accumulated,
+  * so memory use does not depend on the size of the report.  The rows have the same columns as genHistoryResultCodes() returns.
+  *@param connectionName is the name of the connection.
+  *@param criteria is the filtering criteria, which selects the records of interest.
+  *@param sort is the sorting order, which can specify sort based on the result columns.
+  *@param resultCodeBucket is the description of the bucket based on processed result codes.
+  *@param idBucket is the description of the bucket based on processed entity identifiers.
+  *@param startRow is the first row to include (beginning with 0)
+  *@param maxRowCount is the maximum number of rows to include.
+  *@param rowHandler receives the rows.
+  */
+  public void genHistoryResultCodes(String connectionName, FilterCriteria criteria, SortOrder sort,
+    BucketDescription resultCodeBucket, BucketDescription idBucket, int startRow, int maxRowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException;
+
 
 }
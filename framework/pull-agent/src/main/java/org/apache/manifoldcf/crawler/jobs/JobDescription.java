@@ -67,6 +67,9 @@ public class JobDescription implements IJobDescription
   // Default reseed interval for continuous crawling
   protected Long reseedInterval = new Long(60L * 60L * 1000L);    // 1 hour is the default
 
+  // Maximum time to spend processing one set of documents, in milliseconds
+  protected Long processingBudget = null;                 // Use the system default
+
   // Document specification
   protected Specification documentSpecification = new Specification();
 
@@ -115,6 +118,7 @@ public class JobDescription implements IJobDescription
     rval.maxInterval = maxInterval;
     rval.expiration = expiration;
     rval.reseedInterval = reseedInterval;
+    rval.processingBudget = processingBudget;
     rval.rate = rate;
     rval.priority = priority;
     rval.startMethod = startMethod;
@@ -628,6 +632,26 @@ public class JobDescription implements IJobDescription
     return reseedInterval;
   }
 
+  /** Set the document processing budget, in milliseconds.
+  *@param budget is the budget, or null to use the system default.
+  */
+  @Override
+  public void setProcessingBudget(Long budget)
+  {
+    if (readOnly)
+      throw new IllegalStateException("Attempt to change read-only object");
+    this.processingBudget = budget;
+  }
+
+  /** Get the document processing budget, in milliseconds.
+  *@return the budget, or null if the system default applies.
+  */
+  @Override
+  public Long getProcessingBudget()
+  {
+    return processingBudget;
+  }
+
   /** Get the document specification.
   *@return the document specification object.
   */
@@ -19,6 +19,7 @@
 package org.apache.manifoldcf.crawler.jobs;
 
 import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.core.database.RowHandlerLimitChecker;
 import org.apache.manifoldcf.agents.interfaces.*;
 import org.apache.manifoldcf.crawler.interfaces.*;
 import java.util.*;
@@ -41,6 +42,9 @@ public class JobManager implements IJobManager
   protected static final String jobResumeLock = "_JOBRESUME_";
   protected static final String hopLock = "_HOPLOCK_";
 
+  /** Seed batches at least this large, without prerequisites, are merged into the queue with set-based statements */
+  protected static final int MIN_BULK_SEED_COUNT = 50;
+
   // Member variables
   protected final IDBInterface database;
   protected final IOutputConnectionManager outputMgr;
@@ -124,7 +128,7 @@ public class JobManager implements IJobManager
     throws java.io.IOException, ManifoldCFException
   {
     // Write a version indicator
-    ManifoldCF.writeDword(os,8);
+    ManifoldCF.writeDword(os,9);
     // Get the job list
     IJobDescription[] list = getAllJobs();
     // Write the number of authorities
@@ -140,6 +144,7 @@ public class JobManager implements IJobManager
       ManifoldCF.writeLong(os,job.getMaxInterval());
       ManifoldCF.writeLong(os,job.getExpiration());
       ManifoldCF.writeLong(os,job.getReseedInterval());
+      ManifoldCF.writeLong(os,job.getProcessingBudget());
       ManifoldCF.writeDword(os,job.getPriority());
       ManifoldCF.writeDword(os,job.getHopcountMode());
       ManifoldCF.writeString(os,job.getSpecification().toXML());
@@ -219,7 +224,7 @@ public class JobManager implements IJobManager
     throws java.io.IOException, ManifoldCFException
   {
     int version = ManifoldCF.readDword(is);
-    if (version != 5 && version != 6 && version != 8)
+    if (version != 5 && version != 6 && version != 8 && version != 9)
       throw new java.io.IOException("Unknown job configuration version: "+Integer.toString(version));
     int count = ManifoldCF.readDword(is);
     for (int i = 0; i < count; i++)
@@ -235,6 +240,8 @@ public class JobManager implements IJobManager
         job.setMaxInterval(ManifoldCF.readLong(is));
       job.setExpiration(ManifoldCF.readLong(is));
       job.setReseedInterval(ManifoldCF.readLong(is));
+      if (version >= 9)
+        job.setProcessingBudget(ManifoldCF.readLong(is));
       job.setPriority(ManifoldCF.readDword(is));
       job.setHopcountMode(ManifoldCF.readDword(is));
       job.getSpecification().fromXML(ManifoldCF.readString(is));
@@ -870,6 +877,32 @@ public class JobManager implements IJobManager
     return jobs.getAll();
   }
 
+  /** Get the identifiers of all jobs, in the order getAllJobs() would return them.
+  *@return the identifiers, sorted by description.
+  */
+  @Override
+  public Long[] getAllJobIDs()
+    throws ManifoldCFException
+  {
+    return jobs.getAllIDs();
+  }
+
+  /** Load multiple jobs, read-only.
+  *@param ids are the jobs' identifiers.
+  *@return the jobs, in order; null for any job that doesn't exist.
+  */
+  @Override
+  public IJobDescription[] loadMultiple(Long[] ids)
+    throws ManifoldCFException
+  {
+    boolean[] readOnlies = new boolean[ids.length];
+    for (int i = 0; i < ids.length; i++)
+    {
+      readOnlies[i] = true;
+    }
+    return jobs.loadMultiple(ids,readOnlies);
+  }
+
   /** Create a new job.
   *@return the new job.
   */
@@ -936,7 +969,7 @@ public class JobManager implements IJobManager
     {
       database.endTransaction();
     }
-
+    lockManager.signalEvent(EVENT_JOBSCHANGED);
   }
 
   /** Load a job for editing.
@@ -3308,6 +3341,7 @@ public class JobManager implements IJobManager
         sleepFor(sleepAmt);
       }
     }
+    signalIfJobsDone(documentDescriptions);
   }
 
   /** Note completion of document processing by a job thread of a document.
@@ -3338,7 +3372,33 @@ public class JobManager implements IJobManager
   {
     // It's no longer an issue to have to deal with documents being conditionally deleted; that's been
     // taken over by the hopcountremoval method below.  So just use the simple 'delete' functionality.
-    return doDeleteMultiple(jobID,legalLinkTypes,documentDescriptions,hopcountMethod);
+    DocumentDescription[] rval = doDeleteMultiple(jobID,legalLinkTypes,documentDescriptions,hopcountMethod);
+    signalIfJobsDone(documentDescriptions);
+    return rval;
+  }
+
+  /** Signal EVENT_DOCUMENTSCOMPLETED if a job that the given documents belong to has nothing left to process.
+  * This runs after the completions have been committed, so whichever thread completes a job's last document
+  * sees the job as done.  While jobs still have work queued nothing is signalled, and the finisher thread is
+  * not woken up for every batch.
+  *@param documentDescriptions are the documents just completed.
+  */
+  protected void signalIfJobsDone(DocumentDescription[] documentDescriptions)
+    throws ManifoldCFException
+  {
+    Set<Long> jobIDs = new HashSet<Long>();
+    for (DocumentDescription dd : documentDescriptions)
+    {
+      jobIDs.add(dd.getJobID());
+    }
+    for (Long jobID : jobIDs)
+    {
+      if (!jobQueue.checkJobUnfinished(jobID))
+      {
+        lockManager.signalEvent(EVENT_DOCUMENTSCOMPLETED);
+        return;
+      }
+    }
   }
 
   /** Delete from queue as a result of processing of an active document.
@@ -3838,7 +3898,7 @@ public class JobManager implements IJobManager
         i = 0;
         while (i < ids.length)
         {
-          jobQueue.setRequeuedStatus(ids[i],executeTimesNew[i],actionsNew[i],-1L,-1);
+          jobQueue.setRequeuedStatus(ids[i],executeTimesNew[i],actionsNew[i],-1L,-1,true);
           i++;
         }
 
@@ -3967,7 +4027,7 @@ public class JobManager implements IJobManager
         i = 0;
         while (i < ids.length)
         {
-          jobQueue.setRequeuedStatus(ids[i],executeTimes[i],actions[i],(failTimes==null)?-1L:failTimes[i],(failCounts==null)?-1:failCounts[i]);
+          jobQueue.setRequeuedStatus(ids[i],executeTimes[i],actions[i],(failTimes==null)?-1L:failTimes[i],(failCounts==null)?-1:failCounts[i],false);
           i++;
         }
 
@@ -4221,6 +4281,103 @@ public class JobManager implements IJobManager
     resetDocumentMultiple(new DocumentDescription[]{documentDescription},executeTime,action,failTime,failCount);
   }
 
+  /** Quarantine a set of documents whose processing ran past the job's processing budget.
+  * Each document is held back for a delay that doubles every time it is quarantined again, and is then
+  * processed normally.  The quarantine count is dropped once the document is processed successfully.
+  *@param documentDescriptions is the set of description objects for the documents.
+  *@param currentTime is the current time in ms since epoch.
+  *@param baseDelay is the delay after a document's first quarantine, in ms.
+  *@param maxDelay is the largest delay, in ms.
+  */
+  @Override
+  public void quarantineDocumentMultiple(DocumentDescription[] documentDescriptions, long currentTime,
+    long baseDelay, long maxDelay)
+    throws ManifoldCFException
+  {
+    Long[] ids = new Long[documentDescriptions.length];
+    String[] docIDHashes = new String[documentDescriptions.length];
+
+    // First loop maps document identifier back to an index.
+    HashMap indexMap = new HashMap();
+    int i = 0;
+    while (i < documentDescriptions.length)
+    {
+      docIDHashes[i] =documentDescriptions[i].getDocumentIdentifierHash() + ":" + documentDescriptions[i].getJobID();
+      indexMap.put(docIDHashes[i],new Integer(i));
+      i++;
+    }
+
+    // Sort!
+    java.util.Arrays.sort(docIDHashes);
+
+    // Next loop populates the actual arrays we use to feed the operation so that the ordering is correct.
+    i = 0;
+    while (i < docIDHashes.length)
+    {
+      String docIDHash = docIDHashes[i];
+      Integer x = (Integer)indexMap.remove(docIDHash);
+      if (x == null)
+        throw new ManifoldCFException("Assertion failure: duplicate document identifier jobid/hash detected!");
+      int index = x.intValue();
+      ids[i] = documentDescriptions[index].getID();
+      i++;
+    }
+
+    while (true)
+    {
+      long sleepAmt = 0L;
+      database.beginTransaction();
+      try
+      {
+        // Going through ids in order should greatly reduce or eliminate chances of deadlock occurring.  We thus need to pay attention to the sorted order.
+        i = 0;
+        while (i < ids.length)
+        {
+          ArrayList list = new ArrayList();
+          String query = database.buildConjunctionClause(list,new ClauseDescription[]{
+            new UnitaryClause(jobQueue.idField,ids[i])});
+          IResultSet set = database.performQuery("SELECT "+jobQueue.quarantineCountField+" FROM "+
+            jobQueue.getTableName()+" WHERE "+query+" FOR UPDATE",list,null,null);
+          int quarantineCount = 1;
+          if (set.getRowCount() > 0)
+          {
+            Long priorCount = (Long)set.getRow(0).getValue(jobQueue.quarantineCountField);
+            if (priorCount != null)
+              quarantineCount = (int)priorCount.longValue() + 1;
+          }
+          long checkTime = currentTime + JobQueue.calculateQuarantineDelay(quarantineCount,baseDelay,maxDelay);
+          jobQueue.setQuarantinedStatus(ids[i],checkTime,quarantineCount);
+          i++;
+        }
+
+        database.performCommit();
+        break;
+      }
+      catch (Error e)
+      {
+        database.signalRollback();
+        throw e;
+      }
+      catch (ManifoldCFException e)
+      {
+        database.signalRollback();
+        if (e.getErrorCode() == e.DATABASE_TRANSACTION_ABORT)
+        {
+          if (Logging.perf.isDebugEnabled())
+            Logging.perf.debug("Aborted transaction quarantining documents: "+e.getMessage());
+          sleepAmt = getRandomAmount();
+          continue;
+        }
+        throw e;
+      }
+      finally
+      {
+        database.endTransaction();
+        sleepFor(sleepAmt);
+      }
+    }
+  }
+
   /** Eliminate duplicates, and sort */
   protected static String[] eliminateDuplicates(String[] docIDHashes)
   {
@@ -4566,6 +4723,16 @@ public class JobManager implements IJobManager
       i++;
     }
 
+    // Large batches without prerequisites can be merged into the queue in bulk
+    boolean useBulk = reorderedDocIDHashes.length >= MIN_BULK_SEED_COUNT;
+    i = 0;
+    while (useBulk && i < reorderedDocumentPrerequisites.length)
+    {
+      String[] docPrereqs = reorderedDocumentPrerequisites[i++];
+      if (docPrereqs != null && docPrereqs.length > 0)
+        useBulk = false;
+    }
+
     long startTime = 0L;
     if (Logging.perf.isDebugEnabled())
     {
@@ -4586,51 +4753,60 @@ public class JobManager implements IJobManager
           Logging.perf.debug("Waited "+new Long(System.currentTimeMillis()-startTime).toString()+" ms to start adding "+Integer.toString(reorderedDocIDHashes.length)+
           " initial docs and hopcounts for job "+jobID.toString());
 
-        // Go through document id's one at a time, in order - mainly to prevent deadlock as much as possible.  Search for any existing row in jobqueue first (for update)
-        int z = 0;
-        while (z < reorderedDocIDHashes.length)
+        long executeTime = overrideSchedule?0L:-1L;
+
+        if (useBulk)
         {
-          String docIDHash = reorderedDocIDHashes[z];
-          IPriorityCalculator docPriority = reorderedDocumentPriorities[z];
-          String docID = reorderedDocumentIdentifiers[z];
-          String[] docPrereqs = reorderedDocumentPrerequisites[z];
+          // Stage the whole batch and merge it with set-based statements
+          jobQueue.addRecordsInitialBulk(jobID,reorderedDocIDHashes,reorderedDocumentIdentifiers,reorderedDocumentPriorities,
+            executeTime,processID);
+        }
+        else
+        {
+          // Go through document id's one at a time, in order - mainly to prevent deadlock as much as possible.  Search for any existing row in jobqueue first (for update)
+          int z = 0;
+          while (z < reorderedDocIDHashes.length)
+          {
+            String docIDHash = reorderedDocIDHashes[z];
+            IPriorityCalculator docPriority = reorderedDocumentPriorities[z];
+            String docID = reorderedDocumentIdentifiers[z];
+            String[] docPrereqs = reorderedDocumentPrerequisites[z];
 
-          StringBuilder sb = new StringBuilder("SELECT ");
-          ArrayList list = new ArrayList();
+            StringBuilder sb = new StringBuilder("SELECT ");
+            ArrayList list = new ArrayList();
           
-          sb.append(jobQueue.idField).append(",")
-            .append(jobQueue.statusField).append(",")
-            .append(jobQueue.checkTimeField)
-            .append(" FROM ").append(jobQueue.getTableName()).append(" WHERE ")
-            .append(database.buildConjunctionClause(list,new ClauseDescription[]{
-              new UnitaryClause(jobQueue.docHashField,docIDHash),
-              new UnitaryClause(jobQueue.jobIDField,jobID)}));
+            sb.append(jobQueue.idField).append(",")
+              .append(jobQueue.statusField).append(",")
+              .append(jobQueue.checkTimeField)
+              .append(" FROM ").append(jobQueue.getTableName()).append(" WHERE ")
+              .append(database.buildConjunctionClause(list,new ClauseDescription[]{
+                new UnitaryClause(jobQueue.docHashField,docIDHash),
+                new UnitaryClause(jobQueue.jobIDField,jobID)}));
 
-          sb.append(" FOR UPDATE");
+            sb.append(" FOR UPDATE");
 
-          IResultSet set = database.performQuery(sb.toString(),list,null,null);
+            IResultSet set = database.performQuery(sb.toString(),list,null,null);
 
-          long executeTime = overrideSchedule?0L:-1L;
+            if (set.getRowCount() > 0)
+            {
+              // Found a row, and it is now locked.
+              IResultRow row = set.getRow(0);
 
-          if (set.getRowCount() > 0)
-          {
-            // Found a row, and it is now locked.
-            IResultRow row = set.getRow(0);
+              // Decode the row
+              Long rowID = (Long)row.getValue(jobQueue.idField);
+              int status = jobQueue.stringToStatus((String)row.getValue(jobQueue.statusField));
+              Long checkTimeValue = (Long)row.getValue(jobQueue.checkTimeField);
 
-            // Decode the row
-            Long rowID = (Long)row.getValue(jobQueue.idField);
-            int status = jobQueue.stringToStatus((String)row.getValue(jobQueue.statusField));
-            Long checkTimeValue = (Long)row.getValue(jobQueue.checkTimeField);
+              jobQueue.updateExistingRecordInitial(rowID,status,checkTimeValue,executeTime,docPriority,docPrereqs,processID);
+            }
+            else
+            {
+              // Not found.  Attempt an insert instead.  This may fail due to constraints, but if this happens, the whole transaction will be retried.
+              jobQueue.insertNewRecordInitial(jobID,docIDHash,docID,docPriority,executeTime,docPrereqs,processID);
+            }
 
-            jobQueue.updateExistingRecordInitial(rowID,status,checkTimeValue,executeTime,docPriority,docPrereqs,processID);
-          }
-          else
-          {
-            // Not found.  Attempt an insert instead.  This may fail due to constraints, but if this happens, the whole transaction will be retried.
-            jobQueue.insertNewRecordInitial(jobID,docIDHash,docID,docPriority,executeTime,docPrereqs,processID);
+            z++;
           }
-
-          z++;
         }
 
         if (Logging.perf.isDebugEnabled())
@@ -4643,6 +4819,7 @@ public class JobManager implements IJobManager
         TrackerClass.notePrecommit();
         database.performCommit();
         TrackerClass.noteCommit();
+        lockManager.signalEvent(EVENT_DOCUMENTSQUEUED);
         
         if (Logging.perf.isDebugEnabled())
           Logging.perf.debug("Took "+new Long(System.currentTimeMillis()-startTime).toString()+" ms to add "+Integer.toString(reorderedDocIDHashes.length)+
@@ -5268,6 +5445,7 @@ public class JobManager implements IJobManager
         TrackerClass.notePrecommit();
         database.performCommit();
         TrackerClass.noteCommit();
+        lockManager.signalEvent(EVENT_DOCUMENTSQUEUED);
         
         if (Logging.perf.isDebugEnabled())
           Logging.perf.debug("Took "+new Long(System.currentTimeMillis()-startTime).toString()+" ms to add "+Integer.toString(reorderedDocIDHashes.length)+
@@ -5800,6 +5978,7 @@ public class JobManager implements IJobManager
         sleepFor(sleepAmt);
       }
     }
+    lockManager.signalEvent(EVENT_DOCUMENTSQUEUED);
   }
 
   /** Requeue a document because of carrydown changes.
@@ -5896,6 +6075,7 @@ public class JobManager implements IJobManager
     while (true)
     {
       long sleepAmt = 0L;
+      boolean jobsStarted = false;
       database.beginTransaction();
       try
       {
@@ -6037,6 +6217,7 @@ public class JobManager implements IJobManager
             jobs.startJob(jobID,windowEnd,requestMinimum);
             jobQueue.clearFailTimes(jobID);
             Logging.jobs.info("Signalled for job start for job "+jobID);
+            jobsStarted = true;
             break;
           case Jobs.STATUS_ACTIVEWAIT:
             unwaitList.add(jobID);
@@ -6076,6 +6257,8 @@ public class JobManager implements IJobManager
 
         }
         database.performCommit();
+        if (jobsStarted)
+          lockManager.signalEvent(EVENT_JOBSCHANGED);
         return;
       }
       catch (ManifoldCFException e)
@@ -6481,6 +6664,7 @@ public class JobManager implements IJobManager
     {
       database.endTransaction();
     }
+    lockManager.signalEvent(EVENT_JOBSCHANGED);
   }
 
   /** Note job delete started.
@@ -6492,6 +6676,7 @@ public class JobManager implements IJobManager
     throws ManifoldCFException
   {
     jobs.noteJobDeleteStarted(jobID,startTime);
+    lockManager.signalEvent(EVENT_DOCUMENTSDELETABLE);
     Logging.jobs.info("Job "+jobID+" delete is now started");
   }
 
@@ -6504,6 +6689,8 @@ public class JobManager implements IJobManager
     throws ManifoldCFException
   {
     jobs.noteJobStarted(jobID,startTime,seedingVersion);
+    lockManager.signalEvent(EVENT_DOCUMENTSQUEUED);
+    lockManager.signalEvent(EVENT_JOBSCHANGED);
     Logging.jobs.info("Job "+jobID+" is now started");
   }
 
@@ -6516,6 +6703,8 @@ public class JobManager implements IJobManager
     throws ManifoldCFException
   {
     jobs.noteJobSeeded(jobID,seedingVersion);
+    lockManager.signalEvent(EVENT_DOCUMENTSQUEUED);
+    lockManager.signalEvent(EVENT_DOCUMENTSCOMPLETED);
     Logging.jobs.info("Job "+jobID+" has been successfully reseeded");
   }
 
@@ -6531,6 +6720,7 @@ public class JobManager implements IJobManager
     TrackerClass.notePrecommit();
     jobQueue.prepareDeleteScan(jobID);
     TrackerClass.noteCommit();
+    lockManager.signalEvent(EVENT_DOCUMENTSDELETABLE);
   }
   
   /** Prepare a job to be run.
@@ -6989,6 +7179,7 @@ public class JobManager implements IJobManager
       }
     }
 
+    lockManager.signalEvent(EVENT_DOCUMENTSQUEUED);
     Logging.jobs.info("Job "+jobID+" successfully restarted");
   }
 
@@ -7903,6 +8094,7 @@ public class JobManager implements IJobManager
     while (true)
     {
       long sleepAmt = 0L;
+      boolean jobsShuttingDown = false;
       // The jobs we should transition:
       // - are active
       // - have no ACTIVE, PENDING, ACTIVEPURGATORY, or PENDINGPURGATORY records
@@ -7941,32 +8133,18 @@ public class JobManager implements IJobManager
           Long jobID = (Long)row.getValue(jobs.idField);
 
           // Check to be sure the job is a candidate for shutdown
-          sb = new StringBuilder("SELECT ");
-          list.clear();
-          
-          sb.append(jobQueue.idField).append(" FROM ").append(jobQueue.getTableName()).append(" WHERE ")
-            .append(database.buildConjunctionClause(list,new ClauseDescription[]{
-              new UnitaryClause(jobQueue.jobIDField,jobID),
-              new MultiClause(jobQueue.statusField,new Object[]{
-                jobQueue.statusToString(jobQueue.STATUS_ACTIVE),
-                jobQueue.statusToString(jobQueue.STATUS_ACTIVENEEDRESCAN),
-                jobQueue.statusToString(jobQueue.STATUS_PENDING),
-                jobQueue.statusToString(jobQueue.STATUS_ACTIVEPURGATORY),
-                jobQueue.statusToString(jobQueue.STATUS_ACTIVENEEDRESCANPURGATORY),
-                jobQueue.statusToString(jobQueue.STATUS_PENDINGPURGATORY)})}))
-            .append(" ").append(database.constructOffsetLimitClause(0,1));
-
-          IResultSet confirmSet = database.performQuery(sb.toString(),list,null,null,1,null);
-
-          if (confirmSet.getRowCount() > 0)
+          if (jobQueue.checkJobUnfinished(jobID))
             continue;
 
           // Mark status of job as "finishing"
           jobs.writePermanentStatus(jobID,jobs.STATUS_SHUTTINGDOWN,true);
           Logging.jobs.info("Marked job "+jobID+" for shutdown");
-
+          jobsShuttingDown = true;
         }
         database.performCommit();
+        // Shutting-down jobs have documents to clean up
+        if (jobsShuttingDown)
+          lockManager.signalEvent(EVENT_DOCUMENTSDELETABLE);
         return;
       }
       catch (ManifoldCFException e)
@@ -8203,6 +8381,8 @@ public class JobManager implements IJobManager
     {
       lockManager.leaveWriteLock(jobResumeLock);
     }
+    if (modifiedJobs.size() > 0)
+      lockManager.signalEvent(EVENT_DOCUMENTSQUEUED);
   }
 
   /** Complete the sequence that stops jobs, either for abort, pause, or because of a scheduling
@@ -9044,6 +9224,28 @@ public class JobManager implements IJobManager
   public IResultSet genDocumentStatus(String connectionName, StatusFilterCriteria filterCriteria, SortOrder sortOrder,
     int startRow, int rowCount)
     throws ManifoldCFException
+  {
+    return runDocumentStatus(connectionName,filterCriteria,sortOrder,startRow,rowCount,null);
+  }
+
+  /** Generate the same report as genDocumentStatus(), handing each row to a row handler as it is read.
+  *@param rowHandler receives the rows.
+  */
+  @Override
+  public void genDocumentStatus(String connectionName, StatusFilterCriteria filterCriteria, SortOrder sortOrder,
+    int startRow, int rowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException
+  {
+    runDocumentStatus(connectionName,filterCriteria,sortOrder,startRow,rowCount,rowHandler);
+  }
+
+  /** Build and run the 'document status' report query.
+  *@param rowHandler receives the rows, or null if they should be returned instead.
+  *@return the results, empty if a row handler was supplied.
+  */
+  protected IResultSet runDocumentStatus(String connectionName, StatusFilterCriteria filterCriteria, SortOrder sortOrder,
+    int startRow, int rowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException
   {
     // Build the query.
     Long currentTime = new Long(System.currentTimeMillis());
@@ -9088,6 +9290,13 @@ public class JobManager implements IJobManager
       .append("t0.").append(jobQueue.statusField).append(" IN (?,?)")
       .append(" AND ").append("t0.").append(jobQueue.checkActionField).append("=?")
       .append(" AND t0.").append(jobQueue.checkTimeField).append(">").append(currentTime.toString())
+      .append(" AND t0.").append(jobQueue.quarantineCountField).append(" IS NOT NULL")
+      .append(" THEN 'Quarantined'")
+      .append(" WHEN ")
+      .append("t0.").append(jobQueue.statusField).append(" IN (?,?)")
+      .append(" AND ").append("t0.").append(jobQueue.checkActionField).append("=?")
+      .append(" AND t0.").append(jobQueue.checkTimeField).append(">").append(currentTime.toString())
+      .append(" AND t0.").append(jobQueue.quarantineCountField).append(" IS NULL")
       .append(" THEN 'Waiting for processing'")
       .append(" WHEN ")
       .append("t0.").append(jobQueue.statusField).append(" IN (?,?)")
@@ -9155,6 +9364,10 @@ public class JobManager implements IJobManager
     list.add(jobQueue.statusToString(jobQueue.STATUS_PENDINGPURGATORY));
     list.add(jobQueue.actionToString(jobQueue.ACTION_RESCAN));
     
+    list.add(jobQueue.statusToString(jobQueue.STATUS_PENDING));
+    list.add(jobQueue.statusToString(jobQueue.STATUS_PENDINGPURGATORY));
+    list.add(jobQueue.actionToString(jobQueue.ACTION_RESCAN));
+    
     list.add(jobQueue.statusToString(jobQueue.STATUS_PENDING));
     list.add(jobQueue.statusToString(jobQueue.STATUS_PENDINGPURGATORY));
     list.add(jobQueue.actionToString(jobQueue.ACTION_REMOVE));
@@ -9187,7 +9400,8 @@ public class JobManager implements IJobManager
     // The intrinsic ordering is provided by the "id" column, and nothing else.
     addOrdering(sb,new String[]{"id"},sortOrder);
     addLimits(sb,startRow,rowCount);
-    return database.performQuery(sb.toString(),list,null,null,rowCount,null);
+    return database.performQuery(sb.toString(),list,null,null,rowCount,
+      (rowHandler==null)?null:new RowHandlerLimitChecker(rowHandler));
   }
 
   /** Run a 'queue status' report.
@@ -9204,6 +9418,28 @@ public class JobManager implements IJobManager
   public IResultSet genQueueStatus(String connectionName, StatusFilterCriteria filterCriteria, SortOrder sortOrder,
     BucketDescription idBucketDescription, int startRow, int rowCount)
     throws ManifoldCFException
+  {
+    return runQueueStatus(connectionName,filterCriteria,sortOrder,idBucketDescription,startRow,rowCount,null);
+  }
+
+  /** Generate the same report as genQueueStatus(), handing each row to a row handler as it is read.
+  *@param rowHandler receives the rows.
+  */
+  @Override
+  public void genQueueStatus(String connectionName, StatusFilterCriteria filterCriteria, SortOrder sortOrder,
+    BucketDescription idBucketDescription, int startRow, int rowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException
+  {
+    runQueueStatus(connectionName,filterCriteria,sortOrder,idBucketDescription,startRow,rowCount,rowHandler);
+  }
+
+  /** Build and run the 'queue status' report query.
+  *@param rowHandler receives the rows, or null if they should be returned instead.
+  *@return the results, empty if a row handler was supplied.
+  */
+  protected IResultSet runQueueStatus(String connectionName, StatusFilterCriteria filterCriteria, SortOrder sortOrder,
+    BucketDescription idBucketDescription, int startRow, int rowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException
   {
     // SELECT substring(docid FROM '<id_regexp>') AS idbucket,
     //        substring(entityidentifier FROM '<id_regexp>') AS idbucket,
@@ -9340,7 +9576,8 @@ public class JobManager implements IJobManager
     sb.append(") t1 GROUP BY idbucket");
     addOrdering(sb,new String[]{"idbucket","inactive","processing","expiring","deleting","processready","expireready","processwaiting","expirewaiting","waitingforever","hopcountexceeded"},sortOrder);
     addLimits(sb,startRow,rowCount);
-    return database.performQuery(sb.toString(),list,null,null,rowCount,null);
+    return database.performQuery(sb.toString(),list,null,null,rowCount,
+      (rowHandler==null)?null:new RowHandlerLimitChecker(rowHandler));
   }
 
   // Protected methods for report generation
@@ -9500,7 +9737,8 @@ public class JobManager implements IJobManager
             jobQueue.statusToString(jobQueue.STATUS_PENDING),
             jobQueue.statusToString(jobQueue.STATUS_PENDINGPURGATORY)}),
           new UnitaryClause(fieldPrefix+jobQueue.checkActionField,jobQueue.actionToString(jobQueue.ACTION_RESCAN)),
-          new UnitaryClause(fieldPrefix+jobQueue.checkTimeField,">",nowTime)}));
+          new UnitaryClause(fieldPrefix+jobQueue.checkTimeField,">",nowTime)}))
+          .append(" AND ").append(fieldPrefix).append(jobQueue.quarantineCountField).append(" IS NULL");
         break;
       case DOCSTATUS_WAITINGFOREXPIRATION:
         sb.append(database.buildConjunctionClause(list,new ClauseDescription[]{
@@ -9522,6 +9760,15 @@ public class JobManager implements IJobManager
           new MultiClause(fieldPrefix+jobQueue.statusField,new Object[]{
             jobQueue.statusToString(jobQueue.STATUS_HOPCOUNTREMOVED)})}));
         break;
+      case DOCSTATUS_QUARANTINED:
+        sb.append(database.buildConjunctionClause(list,new ClauseDescription[]{
+          new MultiClause(fieldPrefix+jobQueue.statusField,new Object[]{
+            jobQueue.statusToString(jobQueue.STATUS_PENDING),
+            jobQueue.statusToString(jobQueue.STATUS_PENDINGPURGATORY)}),
+          new UnitaryClause(fieldPrefix+jobQueue.checkActionField,jobQueue.actionToString(jobQueue.ACTION_RESCAN)),
+          new UnitaryClause(fieldPrefix+jobQueue.checkTimeField,">",nowTime)}))
+          .append(" AND ").append(fieldPrefix).append(jobQueue.quarantineCountField).append(" IS NOT NULL");
+        break;
       }
       k++;
     }
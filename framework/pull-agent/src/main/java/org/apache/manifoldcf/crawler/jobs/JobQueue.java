@@ -118,6 +118,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
   public static final String statusField = "status";
   public static final String failTimeField = "failtime";
   public static final String failCountField = "failcount";
+  public static final String quarantineCountField = "quarantinecount";
   public static final String isSeedField = "isseed";
   public static final String docPriorityField = "docpriority";
   public static final String checkActionField = "checkaction";
@@ -176,6 +177,8 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
   
   /** Prerequisite event manager */
   protected PrereqEventManager prereqEventManager;
+  /** Seed staging manager */
+  protected SeedStagingManager seedStagingManager;
 
   /** Thread context */
   protected IThreadContext threadContext;
@@ -192,6 +195,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     super(database,"jobqueue");
     this.threadContext = tc;
     prereqEventManager = new PrereqEventManager(database);
+    seedStagingManager = new SeedStagingManager(database);
   }
 
   /** Install or upgrade.
@@ -223,15 +227,23 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
         map.put(seedingProcessIDField,new ColumnDescription("VARCHAR(16)",false,true,null,null,false));
         map.put(needPriorityField,new ColumnDescription("CHAR(1)",false,true,null,null,false));
         map.put(needPriorityProcessIDField,new ColumnDescription("VARCHAR(16)",false,true,null,null,false));
+        map.put(quarantineCountField,new ColumnDescription("BIGINT",false,true,null,null,false));
         performCreate(map,null);
       }
       else
       {
         // Upgrade; null docpriority fields bashed to 'infinity', so they don't slow down MySQL
+        if (existing.get(quarantineCountField) == null)
+        {
+          HashMap map = new HashMap();
+          map.put(quarantineCountField,new ColumnDescription("BIGINT",false,true,null,null,false));
+          performAlter(map,null,null,null);
+        }
       }
 
       // Secondary table installation
       prereqEventManager.install(getTableName(),idField);
+      seedStagingManager.install(jobsTable,jobsColumn);
 
       // Handle indexes
       IndexDescription uniqueIndex = new IndexDescription(true,new String[]{docHashField,jobIDField});
@@ -330,6 +342,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     beginTransaction();
     try
     {
+      seedStagingManager.deinstall();
       prereqEventManager.deinstall();
       performDrop(null);
     }
@@ -873,6 +886,27 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     noteModifications(0,0,identifiers.length);
   }
 
+  /** Check if a job has any documents left to process, either active or pending.  A job with none is
+  * ready to finish.
+  */
+  public boolean checkJobUnfinished(Long jobID)
+    throws ManifoldCFException
+  {
+    ArrayList list = new ArrayList();
+    String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID),
+      new MultiClause(statusField,new Object[]{
+        statusToString(STATUS_ACTIVE),
+        statusToString(STATUS_ACTIVENEEDRESCAN),
+        statusToString(STATUS_PENDING),
+        statusToString(STATUS_ACTIVEPURGATORY),
+        statusToString(STATUS_ACTIVENEEDRESCANPURGATORY),
+        statusToString(STATUS_PENDINGPURGATORY)})});
+    IResultSet set = performQuery("SELECT "+idField+" FROM "+getTableName()+
+      " WHERE "+query+" "+constructOffsetLimitClause(0,1),list,null,null,1);
+    return set.getRowCount() > 0;
+  }
+
   /** Check if there are any outstanding active documents for a job */
   public boolean checkJobBusy(Long jobID)
     throws ManifoldCFException
@@ -1025,6 +1059,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     map.put(checkActionField,actionFieldValue);
     map.put(failTimeField,null);
     map.put(failCountField,null);
+    map.put(quarantineCountField,null);
     ArrayList list = new ArrayList();
     String query = buildConjunctionClause(list,new ClauseDescription[]{
       new UnitaryClause(idField,recID)});
@@ -1079,6 +1114,7 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     map.put(checkActionField,actionFieldValue);
     map.put(failTimeField,null);
     map.put(failCountField,null);
+    map.put(quarantineCountField,null);
     ArrayList list = new ArrayList();
     String query = buildConjunctionClause(list,new ClauseDescription[]{
       new UnitaryClause(idField,recID)});
@@ -1123,12 +1159,15 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
   /** Set the status on a record, including check time and priority.
   *@param id is the job queue id.
   *@param checkTime is the check time.
+  *@param clearQuarantine is true if the document was processed, so any quarantine count should be dropped.
   */
   public void setRequeuedStatus(Long id,
-    Long checkTime, int action, long failTime, int failCount)
+    Long checkTime, int action, long failTime, int failCount, boolean clearQuarantine)
     throws ManifoldCFException
   {
     HashMap map = new HashMap();
+    if (clearQuarantine)
+      map.put(quarantineCountField,null);
     map.put(statusField,statusToString(STATUS_PENDINGPURGATORY));
     map.put(processIDField,null);
     map.put(checkTimeField,checkTime);
@@ -1151,6 +1190,50 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     TrackerClass.noteRecordChange(id, STATUS_PENDINGPURGATORY, "Set requeued status");
   }
 
+  /** Put a record into quarantine, after its processing ran past the job's processing budget.
+  * The record is rescheduled for the given time; its fail time and fail count are left alone.
+  *@param id is the job queue id.
+  *@param checkTime is the time the document may next be processed.
+  *@param quarantineCount is the number of times the document has now been quarantined.
+  */
+  public void setQuarantinedStatus(Long id, long checkTime, int quarantineCount)
+    throws ManifoldCFException
+  {
+    HashMap map = new HashMap();
+    map.put(statusField,statusToString(STATUS_PENDINGPURGATORY));
+    map.put(processIDField,null);
+    map.put(checkTimeField,new Long(checkTime));
+    map.put(checkActionField,actionToString(ACTION_RESCAN));
+    map.put(quarantineCountField,new Long(quarantineCount));
+    ArrayList list = new ArrayList();
+    String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(idField,id)});
+    performUpdate(map,"WHERE "+query,list,null);
+    noteModifications(0,1,0);
+    TrackerClass.noteRecordChange(id, STATUS_PENDINGPURGATORY, "Set quarantined status");
+  }
+
+  /** Calculate how long a document should be held back when it is quarantined.
+  * The delay doubles with every quarantine, up to the maximum.
+  *@param quarantineCount is the number of times the document has now been quarantined, starting at 1.
+  *@param baseDelay is the delay after the first quarantine, in ms.
+  *@param maxDelay is the largest delay, in ms.
+  *@return the delay in ms.
+  */
+  public static long calculateQuarantineDelay(int quarantineCount, long baseDelay, long maxDelay)
+  {
+    long delay = baseDelay;
+    int i = 1;
+    while (i < quarantineCount && delay < maxDelay)
+    {
+      delay *= 2L;
+      i++;
+    }
+    if (delay > maxDelay)
+      delay = maxDelay;
+    return delay;
+  }
+
   /** Set the status of a document to "being deleted".
   */
   public void setDeletingStatus(Long id, String processID)
@@ -1404,6 +1487,185 @@ public class JobQueue extends org.apache.manifoldcf.core.database.BaseTable
     TrackerClass.noteRecordChange(recordID, STATUS_PENDING, "Create initial");
   }
 
+  /** Add a batch of initial records that have no prerequisites, using set-based statements.
+  * The effect on each row is the same as that of updateExistingRecordInitial() or insertNewRecordInitial(),
+  * but the whole batch is staged with multi-row inserts and merged into the jobqueue table with a fixed number of
+  * statements, rather than being selected and written one row at a time.
+  *@param jobID is the job identifier.
+  *@param docHashes are the document identifier hashes; these must be unique.
+  *@param docIDs are the document identifiers.
+  *@param desiredDocPriorities are the document priorities.
+  *@param desiredExecuteTime is the desired execute time, or -1 if no schedule override is desired.
+  *@param processID is the current process ID.
+  */
+  public void addRecordsInitialBulk(Long jobID, String[] docHashes, String[] docIDs, IPriorityCalculator[] desiredDocPriorities,
+    long desiredExecuteTime, String processID)
+    throws ManifoldCFException
+  {
+    if (docHashes.length == 0)
+      return;
+
+    // Only new rows and rows that become PENDINGPURGATORY take the desired priority, so only those get one calculated
+    Set<String> keptPriorityHashes = findKeptPriorityHashes(jobID,docHashes);
+
+    Long[] recordIDs = new Long[docHashes.length];
+    Double[] priorities = new Double[docHashes.length];
+    int i = 0;
+    while (i < docHashes.length)
+    {
+      recordIDs[i] = new Long(IDFactory.make(threadContext));
+      if (!keptPriorityHashes.contains(docHashes[i]))
+        priorities[i] = new Double(desiredDocPriorities[i].getDocumentPriority());
+      i++;
+    }
+
+    // Stage the batch
+    seedStagingManager.addRows(jobID,recordIDs,docHashes,docIDs,priorities);
+
+    String stagedClause = seedStagingManager.buildExistsClause(getTableName()+"."+jobIDField,getTableName()+"."+docHashField);
+    Long checkTime = new Long((desiredExecuteTime == -1L)?0L:desiredExecuteTime);
+
+    // Existing rows will not have prerequisites any more
+    ArrayList list = new ArrayList();
+    String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause("t0."+jobIDField,jobID)});
+    prereqEventManager.deleteRows(getTableName()+" t0","t0."+idField,
+      query+" AND "+seedStagingManager.buildExistsClause("t0."+jobIDField,"t0."+docHashField),list);
+
+    // COMPLETE, UNCHANGED, and PURGATORY rows become PENDINGPURGATORY, with the staged priority
+    list.clear();
+    StringBuilder sb = new StringBuilder("UPDATE ");
+    sb.append(getTableName()).append(" SET ")
+      .append(statusField).append("=?,")
+      .append(checkTimeField).append("=?,")
+      .append(checkActionField).append("=?,")
+      .append(failTimeField).append("=NULL,")
+      .append(failCountField).append("=NULL,")
+      .append(needPriorityField).append("=?,")
+      .append(docPriorityField).append("=")
+      .append(seedStagingManager.buildPrioritySubquery(getTableName()+"."+jobIDField,getTableName()+"."+docHashField))
+      .append(" WHERE ");
+    list.add(statusToString(STATUS_PENDINGPURGATORY));
+    list.add(checkTime);
+    list.add(actionToString(ACTION_RESCAN));
+    list.add(needPriorityToString(NEEDPRIORITY_FALSE));
+    sb.append(buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID),
+      new MultiClause(statusField,new Object[]{
+        statusToString(STATUS_COMPLETE),
+        statusToString(STATUS_UNCHANGED),
+        statusToString(STATUS_PURGATORY)})}))
+      .append(" AND ").append(stagedClause);
+    performModification(sb.toString(),list,null);
+
+    // PENDING rows have their schedule bumped up, if called for
+    if (desiredExecuteTime != -1L)
+    {
+      HashMap map = new HashMap();
+      map.put(checkTimeField,checkTime);
+      map.put(checkActionField,actionToString(ACTION_RESCAN));
+      map.put(failTimeField,null);
+      map.put(failCountField,null);
+      list.clear();
+      query = buildConjunctionClause(list,new ClauseDescription[]{
+        new UnitaryClause(jobIDField,jobID),
+        new UnitaryClause(statusField,statusToString(STATUS_PENDING))});
+      list.add(checkTime);
+      performUpdate(map,"WHERE "+query+" AND ("+checkTimeField+" IS NULL OR "+checkTimeField+">?) AND "+stagedClause,list,null);
+    }
+
+    // Every existing row becomes a new seed
+    HashMap map = new HashMap();
+    map.put(isSeedField,seedstatusToString(SEEDSTATUS_NEWSEED));
+    map.put(seedingProcessIDField,processID);
+    list.clear();
+    query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID)});
+    performUpdate(map,"WHERE "+query+" AND "+stagedClause,list,null);
+
+    // What remains staged is new; insert it as PENDING
+    seedStagingManager.deleteExistingRows(jobID,getTableName(),jobIDField,docHashField);
+    list.clear();
+    sb = new StringBuilder("INSERT INTO ");
+    sb.append(getTableName()).append(" (")
+      .append(idField).append(",")
+      .append(jobIDField).append(",")
+      .append(docHashField).append(",")
+      .append(docIDField).append(",")
+      .append(docPriorityField).append(",")
+      .append(checkTimeField).append(",")
+      .append(checkActionField).append(",")
+      .append(statusField).append(",")
+      .append(isSeedField).append(",")
+      .append(seedingProcessIDField).append(",")
+      .append(needPriorityField).append(") SELECT ")
+      .append(SeedStagingManager.idField).append(",")
+      .append(SeedStagingManager.jobIDField).append(",")
+      .append(SeedStagingManager.docHashField).append(",")
+      .append(SeedStagingManager.docIDField).append(",")
+      .append(SeedStagingManager.docPriorityField).append(",?,?,?,?,?,? FROM ")
+      .append(seedStagingManager.getTableName()).append(" WHERE ");
+    list.add(checkTime);
+    list.add(actionToString(ACTION_RESCAN));
+    list.add(statusToString(STATUS_PENDING));
+    list.add(seedstatusToString(SEEDSTATUS_NEWSEED));
+    list.add(processID);
+    list.add(needPriorityToString(NEEDPRIORITY_FALSE));
+    sb.append(buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(SeedStagingManager.jobIDField,jobID)}));
+    performModification(sb.toString(),list,null);
+
+    seedStagingManager.deleteRows(jobID);
+    // The split between inserts and updates is not known here; count them all as inserts, which errs on the side of reanalysis.
+    noteModifications(docHashes.length,0,0);
+  }
+
+  /** Find which of a batch of initial records already exist in a state that keeps its current priority,
+  * i.e. any state that addRecordsInitialBulk() does not turn into PENDINGPURGATORY.
+  *@param jobID is the job identifier.
+  *@param docHashes are the document identifier hashes.
+  *@return the hashes of those records.
+  */
+  protected Set<String> findKeptPriorityHashes(Long jobID, String[] docHashes)
+    throws ManifoldCFException
+  {
+    Set<String> rval = new HashSet<String>();
+    int maxClause = maxClauseProcessRemainingDocuments(jobID);
+    ArrayList list = new ArrayList();
+    int j = 0;
+    while (j < docHashes.length)
+    {
+      if (list.size() == maxClause)
+      {
+        findKeptPriorityHashes(rval,jobID,list);
+        list.clear();
+      }
+      list.add(docHashes[j++]);
+    }
+    if (list.size() > 0)
+      findKeptPriorityHashes(rval,jobID,list);
+    return rval;
+  }
+
+  /** Find the records that keep their priority, for one chunk of hashes. */
+  protected void findKeptPriorityHashes(Set<String> rval, Long jobID, ArrayList list)
+    throws ManifoldCFException
+  {
+    ArrayList newList = new ArrayList();
+    String query = buildConjunctionClause(newList,new ClauseDescription[]{
+      new MultiClause(docHashField,list),
+      new UnitaryClause(jobIDField,jobID)});
+    IResultSet set = performQuery("SELECT "+docHashField+","+statusField+" FROM "+getTableName()+" WHERE "+query,newList,null,null);
+    int i = 0;
+    while (i < set.getRowCount())
+    {
+      IResultRow row = set.getRow(i++);
+      int status = stringToStatus((String)row.getValue(statusField));
+      if (status != STATUS_COMPLETE && status != STATUS_UNCHANGED && status != STATUS_PURGATORY)
+        rval.add((String)row.getValue(docHashField));
+    }
+  }
+
   /** Note the remaining documents that do NOT need to be queued.  These are noted so that the
   * doneDocumentsInitial() method does not clean up seeds from previous runs wrongly.
   */
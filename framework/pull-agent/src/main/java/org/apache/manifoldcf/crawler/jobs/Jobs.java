@@ -170,6 +170,8 @@ public class Jobs extends org.apache.manifoldcf.core.database.BaseTable
   public final static String startMethodField = "startmethod";
   /** If this is an adaptive job, what should the reseed interval be (in milliseconds) */
   public final static String reseedIntervalField = "reseedinterval";
+  /** The longest a set of documents may be processed before it is interrupted (in milliseconds) */
+  public final static String processingBudgetField = "processingbudget";
 
   // These fields are NOT part of the definition, but are operational
   /** Status of this job. */
@@ -424,11 +426,18 @@ public class Jobs extends org.apache.manifoldcf.core.database.BaseTable
         map.put(failTimeField,new ColumnDescription("BIGINT",false,true,null,null,false));
         map.put(failCountField,new ColumnDescription("BIGINT",false,true,null,null,false));
         map.put(assessmentStateField,new ColumnDescription("CHAR(1)",false,true,null,null,false));
+        map.put(processingBudgetField,new ColumnDescription("BIGINT",false,true,null,null,false));
         performCreate(map,null);
       }
       else
       {
         // Do any needed upgrades
+        if (existing.get(processingBudgetField) == null)
+        {
+          HashMap map = new HashMap();
+          map.put(processingBudgetField,new ColumnDescription("BIGINT",false,true,null,null,false));
+          performAlter(map,null,null,null);
+        }
       }
 
       // Handle related tables
@@ -690,28 +699,10 @@ public class Jobs extends org.apache.manifoldcf.core.database.BaseTable
     lockManager.enterReadLock(jobsLock);
     try
     {
-      // Put together cache key
-      StringSetBuffer ssb = new StringSetBuffer();
-      ssb.add(getJobsKey());
-      ssb.add(getJobStatusKey());
-      StringSet cacheKeys = new StringSet(ssb);
-
-      ArrayList list = new ArrayList();
-      list.add(statusToString(STATUS_READYFORDELETE));
-      list.add(statusToString(STATUS_DELETESTARTINGUP));
-      list.add(statusToString(STATUS_DELETING));
-      list.add(statusToString(STATUS_DELETING_NOOUTPUT));
-      IResultSet set = performQuery("SELECT "+idField+","+descriptionField+" FROM "+
-        getTableName()+" WHERE "+statusField+"!=? AND "+statusField+"!=? AND "+statusField+"!=? AND "+statusField+"!=?"+
-        " ORDER BY "+descriptionField+" ASC",list,cacheKeys,null);
-      
-      Long[] ids = new Long[set.getRowCount()];
-      boolean[] readOnlies = new boolean[set.getRowCount()];
-      
-      for (int i = 0; i < set.getRowCount(); i++)
+      Long[] ids = getAllIDsInternal();
+      boolean[] readOnlies = new boolean[ids.length];
+      for (int i = 0; i < ids.length; i++)
       {
-        IResultRow row = set.getRow(i);
-        ids[i] = (Long)row.getValue(idField);
         readOnlies[i] = true;
       }
       return loadMultiple(ids,readOnlies);
@@ -722,6 +713,50 @@ public class Jobs extends org.apache.manifoldcf.core.database.BaseTable
     }
   }
 
+  /** Get the identifiers of all jobs which are not in the process of being deleted already.
+  *@return the identifiers, in description order.
+  */
+  public Long[] getAllIDs()
+    throws ManifoldCFException
+  {
+    lockManager.enterReadLock(jobsLock);
+    try
+    {
+      return getAllIDsInternal();
+    }
+    finally
+    {
+      lockManager.leaveReadLock(jobsLock);
+    }
+  }
+
+  protected Long[] getAllIDsInternal()
+    throws ManifoldCFException
+  {
+    // Put together cache key
+    StringSetBuffer ssb = new StringSetBuffer();
+    ssb.add(getJobsKey());
+    ssb.add(getJobStatusKey());
+    StringSet cacheKeys = new StringSet(ssb);
+
+    ArrayList list = new ArrayList();
+    list.add(statusToString(STATUS_READYFORDELETE));
+    list.add(statusToString(STATUS_DELETESTARTINGUP));
+    list.add(statusToString(STATUS_DELETING));
+    list.add(statusToString(STATUS_DELETING_NOOUTPUT));
+    IResultSet set = performQuery("SELECT "+idField+","+descriptionField+" FROM "+
+      getTableName()+" WHERE "+statusField+"!=? AND "+statusField+"!=? AND "+statusField+"!=? AND "+statusField+"!=?"+
+      " ORDER BY "+descriptionField+" ASC",list,cacheKeys,null);
+    
+    Long[] ids = new Long[set.getRowCount()];
+    for (int i = 0; i < set.getRowCount(); i++)
+    {
+      IResultRow row = set.getRow(i);
+      ids[i] = (Long)row.getValue(idField);
+    }
+    return ids;
+  }
+
   /** Get a list of active job identifiers and their associated connection names.
   *@return a resultset with "jobid" and "connectionname" fields.
   */
@@ -935,6 +970,7 @@ public class Jobs extends org.apache.manifoldcf.core.database.BaseTable
               values.put(intervalField,jobDescription.getInterval());
               values.put(maxIntervalField,jobDescription.getMaxInterval());
               values.put(reseedIntervalField,jobDescription.getReseedInterval());
+              values.put(processingBudgetField,jobDescription.getProcessingBudget());
               values.put(expirationField,jobDescription.getExpiration());
               values.put(priorityField,new Integer(jobDescription.getPriority()));
               values.put(hopcountModeField,hopcountModeToString(jobDescription.getHopcountMode()));
@@ -3594,6 +3630,7 @@ public class Jobs extends org.apache.manifoldcf.core.database.BaseTable
         rc.setInterval((Long)row.getValue(intervalField));
         rc.setMaxInterval((Long)row.getValue(maxIntervalField));
         rc.setReseedInterval((Long)row.getValue(reseedIntervalField));
+        rc.setProcessingBudget((Long)row.getValue(processingBudgetField));
         rc.setExpiration((Long)row.getValue(expirationField));
 
         rc.setPriority(Integer.parseInt(row.getValue(priorityField).toString()));
@@ -0,0 +1,242 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.jobs;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.crawler.interfaces.*;
+import java.util.*;
+
+/** This class manages the seed staging table.
+* Batches of seeds are written here with multi-row inserts, and then merged into the jobqueue
+* table with a handful of set-based statements, rather than being looked up and written one row at a time.
+* Rows only ever live for the duration of a single seeding transaction, so other transactions never see them.
+*
+* <br><br>
+* <b>seedstaging</b>
+* <table border="1" cellpadding="3" cellspacing="0">
+* <tr class="TableHeadingColor">
+* <th>Field</th><th>Type</th><th>Description&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;</th>
+* <tr><td>id</td><td>BIGINT</td><td>jobqueue.id to use if the row is new</td></tr>
+* <tr><td>jobid</td><td>BIGINT</td><td>Reference:jobs.id</td></tr>
+* <tr><td>dochash</td><td>VARCHAR(40)</td><td></td></tr>
+* <tr><td>docid</td><td>LONGTEXT</td><td></td></tr>
+* <tr><td>docpriority</td><td>FLOAT</td><td></td></tr>
+* </table>
+* <br><br>
+*
+*/
+public class SeedStagingManager extends org.apache.manifoldcf.core.database.BaseTable
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  // Field names
+  public final static String idField = "id";
+  public final static String jobIDField = "jobid";
+  public final static String docHashField = "dochash";
+  public final static String docIDField = "docid";
+  public final static String docPriorityField = "docpriority";
+
+  /** The number of rows written by a single insert statement */
+  protected final static int MAX_ROWS_PER_INSERT = 200;
+
+  /** Constructor.
+  *@param database is the database handle.
+  */
+  public SeedStagingManager(IDBInterface database)
+    throws ManifoldCFException
+  {
+    super(database,"seedstaging");
+  }
+
+  /** Install or upgrade this table.
+  */
+  public void install(String jobsTable, String jobsColumn)
+    throws ManifoldCFException
+  {
+    // Standard practice: Outer loop for upgrade support.
+    while (true)
+    {
+      Map existing = getTableSchema(null,null);
+      if (existing == null)
+      {
+        HashMap map = new HashMap();
+        map.put(idField,new ColumnDescription("BIGINT",false,false,null,null,false));
+        map.put(jobIDField,new ColumnDescription("BIGINT",false,false,jobsTable,jobsColumn,false));
+        map.put(docHashField,new ColumnDescription("VARCHAR(40)",false,false,null,null,false));
+        map.put(docIDField,new ColumnDescription("LONGTEXT",false,false,null,null,false));
+        map.put(docPriorityField,new ColumnDescription("FLOAT",false,true,null,null,false));
+        performCreate(map,null);
+      }
+      else
+      {
+        // Schema upgrade goes here, when needed.
+      }
+
+      // Index management
+      IndexDescription jobHashIndex = new IndexDescription(true,new String[]{jobIDField,docHashField});
+
+      // Get rid of indexes that shouldn't be there
+      Map indexes = getTableIndexes(null,null);
+      Iterator iter = indexes.keySet().iterator();
+      while (iter.hasNext())
+      {
+        String indexName = (String)iter.next();
+        IndexDescription id = (IndexDescription)indexes.get(indexName);
+
+        if (jobHashIndex != null && id.equals(jobHashIndex))
+          jobHashIndex = null;
+        else if (indexName.indexOf("_pkey") == -1)
+          // This index shouldn't be here; drop it
+          performRemoveIndex(indexName);
+      }
+
+      // Add the ones we didn't find
+      if (jobHashIndex != null)
+        performAddIndex(null,jobHashIndex);
+
+      break;
+    }
+  }
+
+  /** Uninstall.
+  */
+  public void deinstall()
+    throws ManifoldCFException
+  {
+    beginTransaction();
+    try
+    {
+      performDrop(null);
+    }
+    catch (ManifoldCFException e)
+    {
+      signalRollback();
+      throw e;
+    }
+    catch (Error e)
+    {
+      signalRollback();
+      throw e;
+    }
+    finally
+    {
+      endTransaction();
+    }
+  }
+
+  /** Stage a set of seeds for a job.  The document hashes must be unique.
+  *@param jobID is the job identifier.
+  *@param recordIDs are the jobqueue identifiers to use for rows that turn out to be new.
+  *@param docHashes are the document identifier hashes.
+  *@param docIDs are the document identifiers.
+  *@param docPriorities are the document priorities, or null for rows whose priority will not be used.
+  */
+  public void addRows(Long jobID, Long[] recordIDs, String[] docHashes, String[] docIDs, Double[] docPriorities)
+    throws ManifoldCFException
+  {
+    int i = 0;
+    while (i < docHashes.length)
+    {
+      int end = i + MAX_ROWS_PER_INSERT;
+      if (end > docHashes.length)
+        end = docHashes.length;
+      StringBuilder sb = new StringBuilder("INSERT INTO ");
+      sb.append(getTableName()).append(" (")
+        .append(idField).append(",")
+        .append(jobIDField).append(",")
+        .append(docHashField).append(",")
+        .append(docIDField).append(",")
+        .append(docPriorityField).append(") VALUES ");
+      ArrayList list = new ArrayList();
+      int j = i;
+      while (j < end)
+      {
+        if (j > i)
+          sb.append(",");
+        list.add(recordIDs[j]);
+        list.add(jobID);
+        list.add(docHashes[j]);
+        list.add(docIDs[j]);
+        if (docPriorities[j] == null)
+          sb.append("(?,?,?,?,NULL)");
+        else
+        {
+          sb.append("(?,?,?,?,?)");
+          list.add(docPriorities[j]);
+        }
+        j++;
+      }
+      performModification(sb.toString(),list,null);
+      i = end;
+    }
+    noteModifications(docHashes.length,0,0);
+  }
+
+  /** Build a clause that matches the staged row corresponding to a row in another table.
+  *@param jobIDColumn is the fully-qualified job id column of the other table.
+  *@param docHashColumn is the fully-qualified document hash column of the other table.
+  *@return the EXISTS clause.
+  */
+  public String buildExistsClause(String jobIDColumn, String docHashColumn)
+  {
+    return "EXISTS(SELECT 'x' FROM "+getTableName()+" s WHERE s."+jobIDField+"="+jobIDColumn+
+      " AND s."+docHashField+"="+docHashColumn+")";
+  }
+
+  /** Build a subquery that selects the staged priority for a row in another table.
+  *@param jobIDColumn is the fully-qualified job id column of the other table.
+  *@param docHashColumn is the fully-qualified document hash column of the other table.
+  *@return the subquery.
+  */
+  public String buildPrioritySubquery(String jobIDColumn, String docHashColumn)
+  {
+    return "(SELECT s."+docPriorityField+" FROM "+getTableName()+" s WHERE s."+jobIDField+"="+jobIDColumn+
+      " AND s."+docHashField+"="+docHashColumn+")";
+  }
+
+  /** Remove the staged rows that match rows already present in another table.
+  *@param jobID is the job identifier.
+  *@param otherTableName is the name of the other table.
+  *@param otherJobIDField is the job id column name in the other table.
+  *@param otherDocHashField is the document hash column name in the other table.
+  */
+  public void deleteExistingRows(Long jobID, String otherTableName, String otherJobIDField, String otherDocHashField)
+    throws ManifoldCFException
+  {
+    ArrayList list = new ArrayList();
+    String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID)});
+    performDelete("WHERE "+query+" AND EXISTS(SELECT 'x' FROM "+otherTableName+" q WHERE q."+otherJobIDField+"="+
+      getTableName()+"."+jobIDField+" AND q."+otherDocHashField+"="+getTableName()+"."+docHashField+")",list,null);
+  }
+
+  /** Remove all staged rows for a job.
+  *@param jobID is the job identifier.
+  */
+  public void deleteRows(Long jobID)
+    throws ManifoldCFException
+  {
+    ArrayList list = new ArrayList();
+    String query = buildConjunctionClause(list,new ClauseDescription[]{
+      new UnitaryClause(jobIDField,jobID)});
+    performDelete("WHERE "+query,list,null);
+    noteModifications(0,0,1);
+  }
+
+}
@@ -0,0 +1,98 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.repository;
+
+/** This class describes one repository history record that has not been written yet.
+*/
+public class HistoryRecord
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  protected final Long id;
+  protected final String connectionName;
+  protected final long startTime;
+  protected final long endTime;
+  protected final long dataSize;
+  protected final String activityType;
+  protected final String entityIdentifier;
+  protected final String resultCode;
+  protected final String resultDescription;
+
+  /** Constructor.
+  */
+  public HistoryRecord(Long id, String connectionName, long startTime, long endTime, long dataSize, String activityType,
+    String entityIdentifier, String resultCode, String resultDescription)
+  {
+    this.id = id;
+    this.connectionName = connectionName;
+    this.startTime = startTime;
+    this.endTime = endTime;
+    this.dataSize = dataSize;
+    this.activityType = activityType;
+    this.entityIdentifier = entityIdentifier;
+    this.resultCode = resultCode;
+    this.resultDescription = resultDescription;
+  }
+
+  public Long getID()
+  {
+    return id;
+  }
+
+  public String getConnectionName()
+  {
+    return connectionName;
+  }
+
+  public long getStartTime()
+  {
+    return startTime;
+  }
+
+  public long getEndTime()
+  {
+    return endTime;
+  }
+
+  public long getDataSize()
+  {
+    return dataSize;
+  }
+
+  public String getActivityType()
+  {
+    return activityType;
+  }
+
+  public String getEntityIdentifier()
+  {
+    return entityIdentifier;
+  }
+
+  public String getResultCode()
+  {
+    return resultCode;
+  }
+
+  public String getResultDescription()
+  {
+    return resultDescription;
+  }
+
+}
@@ -709,6 +709,35 @@ public class RepositoryConnectionManager extends org.apache.manifoldcf.core.data
     // MHL
   }
 
+  /** Wait until queued history records are due to be written, or until a maximum time has passed, and then
+  * write whatever is due.  This is called repeatedly by the history writer thread; while it keeps being
+  * called, recordHistory() only queues records.
+  *@param maxWaitTime is the longest time to wait, in milliseconds.
+  */
+  @Override
+  public void writeQueuedHistory(long maxWaitTime)
+    throws ManifoldCFException
+  {
+    historyManager.writeQueuedRecords(maxWaitTime);
+  }
+
+  /** Note that the history writer thread has stopped, so recordHistory() callers write their own batches.
+  */
+  @Override
+  public void noteHistoryWriterStopped()
+  {
+    RepositoryHistoryManager.noteWriterStopped();
+  }
+
+  /** Write all queued history records now.  This is called on shutdown.
+  */
+  @Override
+  public void flushHistory()
+    throws ManifoldCFException
+  {
+    historyManager.flushPendingRecords();
+  }
+
   /** Count the number of rows specified by a given set of criteria.  This can be used to make decisions
   * as to whether a query based on those rows will complete in an acceptable amount of time.
   *@param connectionName is the name of the connection.
@@ -721,6 +750,22 @@ public class RepositoryConnectionManager extends org.apache.manifoldcf.core.data
     return historyManager.countHistoryRows(connectionName,criteria);
   }
 
+  /** Count the number of rows a windowed report would have to work with, given its criteria, identifier
+  * bucket and interval.  Reports that can be answered from pre-aggregated history count the aggregated
+  * rows rather than the individual history rows.
+  *@param connectionName is the name of the connection.
+  *@param criteria is the filtering criteria, which selects the records of interest.
+  *@param idBucket is the identifier bucket description.
+  *@param interval is the window interval, in milliseconds.
+  *@return the number of rows included by the criteria.
+  */
+  @Override
+  public long countHistoryRows(String connectionName, FilterCriteria criteria, BucketDescription idBucket, long interval)
+    throws ManifoldCFException
+  {
+    return historyManager.countHistoryRows(connectionName,criteria,idBucket,interval);
+  }
+
   /** Get the maximum number of rows a window-based report can work with.
   *@return the maximum rows.
   */
@@ -746,6 +791,16 @@ public class RepositoryConnectionManager extends org.apache.manifoldcf.core.data
     return historyManager.simpleReport(connectionName,criteria,sort,startRow,maxRowCount);
   }
 
+  /** Generate the same report as genHistorySimple(), handing each row to a row handler as it is read.
+  *@param rowHandler receives the rows.
+  */
+  @Override
+  public void genHistorySimple(String connectionName, FilterCriteria criteria, SortOrder sort, int startRow, int maxRowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException
+  {
+    historyManager.simpleReport(connectionName,criteria,sort,startRow,maxRowCount,rowHandler);
+  }
+
   /** Generate a report, listing the start time, activity count, and identifier bucket, given
   * a time slice (interval) size.
   * The records selected for this report are based on the filtering criteria object passed into this method.
@@ -769,6 +824,17 @@ public class RepositoryConnectionManager extends org.apache.manifoldcf.core.data
     return historyManager.maxActivityCountReport(connectionName,criteria,sort,idBucket,interval,startRow,maxRowCount);
   }
 
+  /** Generate the same report as genHistoryActivityCount(), handing each row to a row handler as it is read.
+  *@param rowHandler receives the rows.
+  */
+  @Override
+  public void genHistoryActivityCount(String connectionName, FilterCriteria criteria, SortOrder sort, BucketDescription idBucket,
+    long interval, int startRow, int maxRowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException
+  {
+    historyManager.maxActivityCountReport(connectionName,criteria,sort,idBucket,interval,startRow,maxRowCount,rowHandler);
+  }
+
   /** Generate a report, listing the start time, bytes processed, and identifier bucket, given
   * a time slice (interval) size.
   * The records selected for this report are based on the filtering criteria object passed into this method.
@@ -792,6 +858,17 @@ public class RepositoryConnectionManager extends org.apache.manifoldcf.core.data
     return historyManager.maxByteCountReport(connectionName,criteria,sort,idBucket,interval,startRow,maxRowCount);
   }
 
+  /** Generate the same report as genHistoryByteCount(), handing each row to a row handler as it is read.
+  *@param rowHandler receives the rows.
+  */
+  @Override
+  public void genHistoryByteCount(String connectionName, FilterCriteria criteria, SortOrder sort, BucketDescription idBucket,
+    long interval, int startRow, int maxRowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException
+  {
+    historyManager.maxByteCountReport(connectionName,criteria,sort,idBucket,interval,startRow,maxRowCount,rowHandler);
+  }
+
 
   /** Generate a report, listing the result bucket and identifier bucket.
   * The records selected for this report are based on the filtering criteria object passed into this method.
@@ -814,6 +891,17 @@ public class RepositoryConnectionManager extends org.apache.manifoldcf.core.data
     return historyManager.resultCodesReport(connectionName,criteria,sort,resultCodeBucket,idBucket,startRow,maxRowCount);
   }
 
+  /** Generate the same report as genHistoryResultCodes(), handing each row to a row handler as it is read.
+  *@param rowHandler receives the rows.
+  */
+  @Override
+  public void genHistoryResultCodes(String connectionName, FilterCriteria criteria, SortOrder sort,
+    BucketDescription resultCodeBucket, BucketDescription idBucket, int startRow, int maxRowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException
+  {
+    historyManager.resultCodesReport(connectionName,criteria,sort,resultCodeBucket,idBucket,startRow,maxRowCount,rowHandler);
+  }
+
   // Caching strategy: Individual connection descriptions are cached, and there is a global cache key for the list of
   // repository connections.
 
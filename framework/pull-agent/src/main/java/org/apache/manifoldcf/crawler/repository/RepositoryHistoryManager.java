@@ -20,6 +20,7 @@ package org.apache.manifoldcf.crawler.repository;
 
 import org.apache.manifoldcf.core.interfaces.*;
 import org.apache.manifoldcf.crawler.interfaces.*;
+import org.apache.manifoldcf.crawler.system.Logging;
 import java.util.*;
 
 /** This class is the manager for the history records belonging to the repository connector.
@@ -41,6 +42,12 @@ import java.util.*;
  * </table>
  * <br><br>
  * 
+ * History records are not written as they arrive.  They are queued in memory, and written in batches
+ * (together with the matching updates to the rolled-up history, see RepositoryHistoryRollupManager) once
+ * enough of them have accumulated, once the oldest has waited long enough, or before any report or
+ * deletion is run against the history.  The windowed and result-code reports are answered from the
+ * rollups whenever they do not need to discriminate by entity identifier.
+ * 
  */
 public class RepositoryHistoryManager extends org.apache.manifoldcf.core.database.BaseTable
 {
@@ -57,12 +64,33 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
   protected final static String resultCodeField = "resultcode";
   protected final static String resultDescriptionField = "resultdesc";
 
+  /** Time range of the raw history read at once when rebuilding rollups */
+  protected final static long REBUILD_INTERVAL = 24L * 60L * 60L * 1000L;
+
+  /** How long a history writer thread may go without checking in before producers stop relying on it */
+  protected final static long WRITER_TIMEOUT = 10000L;
+
+  /** Write-behind queue of history records not yet written, shared by all instances in this process.
+  * Its size is bounded; see addRow(). */
+  protected final static ArrayDeque<HistoryRecord> pendingRecords = new ArrayDeque<HistoryRecord>();
+  /** Time the oldest pending record was queued, or -1L if none */
+  protected static long oldestPendingTime = -1L;
+  /** Time a history writer thread last checked in, or -1L if there never was one */
+  protected static long writerCheckInTime = -1L;
+  /** Number of records dropped because the queue was full */
+  protected static long droppedCount = 0L;
+  /** Lock object which serializes flushes, so that records reach the database in order */
+  protected final static Integer flushLock = new Integer(0);
+
   /** Thread context */
   protected IThreadContext threadContext;
 
   /** A lock manager handle. */
   protected final ILockManager lockManager;
 
+  /** The rolled-up history */
+  protected final RepositoryHistoryRollupManager rollupManager;
+
   /** Constructor.
   *@param database is the database instance.
   */
@@ -72,6 +100,7 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
     super(database,"repohistory");
     this.threadContext = tc;
     this.lockManager = LockManagerFactory.make(tc);
+    this.rollupManager = new RepositoryHistoryRollupManager(tc,database);
   }
 
   /** Install or upgrade the table.
@@ -141,6 +170,12 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
       if (activityTypeIndex != null)
         performAddIndex(null,activityTypeIndex);
 
+      // Install the rollups.  If they are new, they need to be built from whatever history already exists.
+      boolean rollupsExist = rollupManager.isInstalled();
+      rollupManager.install(parentTable,parentField);
+      if (!rollupsExist)
+        rebuildRollups();
+
       break;
 
     }
@@ -151,9 +186,66 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
   public void deinstall()
     throws ManifoldCFException
   {
+    synchronized (pendingRecords)
+    {
+      pendingRecords.clear();
+      oldestPendingTime = -1L;
+      pendingRecords.notifyAll();
+    }
+    rollupManager.deinstall();
     performDrop(null);
   }
 
+  /** Build the rollups from the raw history, one day of start times at a time.
+  */
+  protected void rebuildRollups()
+    throws ManifoldCFException
+  {
+    IResultSet set = performQuery("SELECT MIN("+startTimeField+") AS minstart,MAX("+startTimeField+") AS maxstart FROM "+
+      getTableName(),null,null,null);
+    if (set.getRowCount() == 0)
+      return;
+    IResultRow row = set.getRow(0);
+    Long minStart = (Long)row.getValue("minstart");
+    Long maxStart = (Long)row.getValue("maxstart");
+    if (minStart == null || maxStart == null)
+      return;
+    long rangeStart = minStart.longValue();
+    while (rangeStart <= maxStart.longValue())
+    {
+      final Map<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue> aggregates =
+        new HashMap<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue>();
+      ArrayList params = new ArrayList();
+      String query = buildConjunctionClause(params,new ClauseDescription[]{
+        new UnitaryClause(startTimeField,">=",new Long(rangeStart)),
+        new UnitaryClause(startTimeField,"<",new Long(rangeStart + REBUILD_INTERVAL))});
+      performQuery("SELECT "+ownerNameField+","+startTimeField+","+endTimeField+","+dataSizeField+","+
+        activityTypeField+","+resultCodeField+" FROM "+getTableName()+" WHERE "+query,params,null,null,-1,
+        new IResultRowHandler()
+        {
+          public void handleRow(IResultRow row)
+            throws ManifoldCFException
+          {
+            RepositoryHistoryRollupManager.aggregate(aggregates,(String)row.getValue(ownerNameField),
+              ((Long)row.getValue(startTimeField)).longValue(),((Long)row.getValue(endTimeField)).longValue(),
+              ((Long)row.getValue(dataSizeField)).longValue(),(String)row.getValue(activityTypeField),
+              (String)row.getValue(resultCodeField));
+          }
+        });
+      if (aggregates.size() > 0)
+        mergeAggregatesInTransaction(aggregates);
+      rangeStart += REBUILD_INTERVAL;
+    }
+  }
+
+  /** Merge aggregates into the rollups, in a retryable transaction of their own.
+  */
+  protected void mergeAggregatesInTransaction(Map<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue> aggregates)
+    throws ManifoldCFException
+  {
+    writeRecords(new ArrayList<HistoryRecord>(),aggregates);
+  }
+
   /** Delete all records associated with given owner.
   *@param owner is the name of the owner.
   *@param invKeys are the invalidation keys.
@@ -161,6 +253,20 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
   public void deleteOwner(String owner)
     throws ManifoldCFException
   {
+    // Records for this owner that have not been written yet must never be written.
+    synchronized (pendingRecords)
+    {
+      Iterator<HistoryRecord> iter = pendingRecords.iterator();
+      while (iter.hasNext())
+      {
+        if (iter.next().getConnectionName().equals(owner))
+          iter.remove();
+      }
+      if (pendingRecords.size() == 0)
+        oldestPendingTime = -1L;
+      pendingRecords.notifyAll();
+    }
+    rollupManager.deleteOwner(owner);
     ArrayList params = new ArrayList();
     String query = buildConjunctionClause(params,new ClauseDescription[]{
       new UnitaryClause(ownerNameField,owner)});
@@ -173,6 +279,8 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
   public void deleteOldRows(long timeCutoff)
     throws ManifoldCFException
   {
+    flushPendingRecords();
+    rollupManager.deleteOldRows(timeCutoff);
     ArrayList params = new ArrayList();
     String query = buildConjunctionClause(params,new ClauseDescription[]{
       new UnitaryClause(startTimeField,"<",new Long(timeCutoff))});
@@ -180,33 +288,298 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
   }
   
   /** Add row to table, and reanalyze if necessary.
+  * The row is queued, and is written in a later batch.  When a history writer thread is running (see
+  * writeQueuedRecords()), that thread does the writing; otherwise the caller writes the batch whenever enough
+  * records have accumulated.  If the queue is full, the caller either waits for room, or the oldest queued
+  * record is dropped, depending on the configured overflow policy.
   */
   public Long addRow(String connectionName, long startTime, long endTime, long dataSize, String activityType,
     String entityIdentifier, String resultCode, String resultDescription)
     throws ManifoldCFException
   {
     Long id = new Long(IDFactory.make(threadContext));   
-    if (lockManager.getSharedConfiguration().getBooleanProperty("org.apache.manifoldcf.crawler.repository.store_history",true))
+    ManifoldCFConfiguration configuration = lockManager.getSharedConfiguration();
+    if (configuration.getBooleanProperty("org.apache.manifoldcf.crawler.repository.store_history",true))
     {
-      HashMap map = new HashMap();
-      map.put(idField,id);
-      map.put(ownerNameField,connectionName);
-      map.put(startTimeField,new Long(startTime));
-      map.put(endTimeField,new Long(endTime));
-      map.put(dataSizeField,new Long(dataSize));
-      map.put(activityTypeField,activityType);
-      map.put(entityIdentifierField,entityIdentifier);
-      if (resultCode != null)
-        map.put(resultCodeField,resultCode);
-      if (resultDescription != null)
-        map.put(resultDescriptionField,resultDescription);
-      performInsert(map,null);
-      // Not accurate, but best we can do without overhead
-      noteModifications(1,0,0);
+      int batchSize = configuration.getIntProperty("org.apache.manifoldcf.crawler.repository.history_batch_size",100);
+      long maxDelay = configuration.getLongProperty("org.apache.manifoldcf.crawler.repository.history_max_delay",5000L);
+      int queueSize = configuration.getIntProperty("org.apache.manifoldcf.crawler.repository.history_queue_size",10000);
+      boolean dropWhenFull = configuration.getStringProperty("org.apache.manifoldcf.crawler.repository.history_overflow_policy",
+        "block").equals("drop");
+      queueRecord(new HistoryRecord(id,connectionName,startTime,endTime,dataSize,activityType,
+        entityIdentifier,resultCode,resultDescription),batchSize,maxDelay,queueSize,dropWhenFull);
     }
     return id;
   }
 
+  /** Queue a history record, writing a batch or waiting for room as needed.
+  *@param record is the record.
+  *@param batchSize is the number of queued records that should be written together.
+  *@param maxDelay is the longest a record should stay queued, in milliseconds.
+  *@param queueSize is the most records that can be queued.
+  *@param dropWhenFull is true if the oldest record should be dropped when the queue is full, rather than waiting.
+  */
+  protected void queueRecord(HistoryRecord record, int batchSize, long maxDelay, int queueSize, boolean dropWhenFull)
+    throws ManifoldCFException
+  {
+    boolean queued = false;
+    while (true)
+    {
+      boolean flushNeeded;
+      synchronized (pendingRecords)
+      {
+        long currentTime = System.currentTimeMillis();
+        boolean writerActive = isWriterActive(currentTime);
+        if (pendingRecords.size() >= queueSize)
+        {
+          if (dropWhenFull)
+          {
+            pendingRecords.removeFirst();
+            droppedCount++;
+            if (droppedCount == 1L || droppedCount % 1000L == 0L)
+              Logging.perf.warn("Repository history queue is full; "+droppedCount+" history records dropped so far");
+          }
+          else if (writerActive)
+          {
+            // Wait for the writer to make room
+            pendingRecords.notifyAll();
+            try
+            {
+              pendingRecords.wait(1000L);
+            }
+            catch (InterruptedException e)
+            {
+              throw new ManifoldCFException("Interrupted",ManifoldCFException.INTERRUPTED);
+            }
+            continue;
+          }
+        }
+        if (pendingRecords.size() < queueSize)
+        {
+          pendingRecords.addLast(record);
+          if (oldestPendingTime == -1L)
+            oldestPendingTime = currentTime;
+          queued = true;
+        }
+        flushNeeded = !queued || isFlushNeeded(currentTime,batchSize,maxDelay);
+        if (flushNeeded && writerActive)
+        {
+          pendingRecords.notifyAll();
+          flushNeeded = false;
+        }
+      }
+      // With no writer thread running, the caller has to write the batch.
+      if (flushNeeded)
+        flushPendingRecords();
+      if (queued)
+        break;
+    }
+  }
+
+  /** Check whether the queue should be written now.  Call this while synchronized on pendingRecords.
+  */
+  protected static boolean isFlushNeeded(long currentTime, int batchSize, long maxDelay)
+  {
+    if (pendingRecords.size() == 0)
+      return false;
+    return pendingRecords.size() >= batchSize || oldestPendingTime + maxDelay <= currentTime;
+  }
+
+  /** Check whether a history writer thread has checked in recently.  Call this while synchronized on pendingRecords.
+  */
+  protected static boolean isWriterActive(long currentTime)
+  {
+    return writerCheckInTime != -1L && writerCheckInTime + WRITER_TIMEOUT > currentTime;
+  }
+
+  /** Wait until the queued history records are due to be written, or until a maximum time has passed, and then
+  * write whatever is due.  This is meant to be called repeatedly by a single history writer thread; while that
+  * thread keeps calling, other threads only queue records.
+  *@param maxWaitTime is the longest time to wait, in milliseconds.
+  */
+  public void writeQueuedRecords(long maxWaitTime)
+    throws ManifoldCFException
+  {
+    ManifoldCFConfiguration configuration = lockManager.getSharedConfiguration();
+    int batchSize = configuration.getIntProperty("org.apache.manifoldcf.crawler.repository.history_batch_size",100);
+    long maxDelay = configuration.getLongProperty("org.apache.manifoldcf.crawler.repository.history_max_delay",5000L);
+    int queueSize = configuration.getIntProperty("org.apache.manifoldcf.crawler.repository.history_queue_size",10000);
+    // A full queue must always be written, or producers waiting for room would wait forever
+    writeQueuedRecords(maxWaitTime,Math.min(batchSize,queueSize),maxDelay);
+  }
+
+  /** Wait until the queued history records are due to be written, or until a maximum time has passed, and then
+  * write whatever is due.
+  *@param maxWaitTime is the longest time to wait, in milliseconds.
+  *@param batchSize is the number of queued records that should be written together.
+  *@param maxDelay is the longest a record should stay queued, in milliseconds.
+  */
+  protected void writeQueuedRecords(long maxWaitTime, int batchSize, long maxDelay)
+    throws ManifoldCFException
+  {
+    synchronized (pendingRecords)
+    {
+      long currentTime = System.currentTimeMillis();
+      long waitUntil = currentTime + maxWaitTime;
+      while (true)
+      {
+        writerCheckInTime = currentTime;
+        if (isFlushNeeded(currentTime,batchSize,maxDelay))
+          break;
+        long waitTime = waitUntil - currentTime;
+        if (oldestPendingTime != -1L && oldestPendingTime + maxDelay - currentTime < waitTime)
+          waitTime = oldestPendingTime + maxDelay - currentTime;
+        if (waitTime <= 0L)
+          return;
+        try
+        {
+          pendingRecords.wait(waitTime);
+        }
+        catch (InterruptedException e)
+        {
+          throw new ManifoldCFException("Interrupted",ManifoldCFException.INTERRUPTED);
+        }
+        currentTime = System.currentTimeMillis();
+      }
+    }
+    flushPendingRecords();
+  }
+
+  /** Note that the history writer thread has stopped, so that callers of addRow() write their own batches again.
+  */
+  public static void noteWriterStopped()
+  {
+    synchronized (pendingRecords)
+    {
+      writerCheckInTime = -1L;
+      pendingRecords.notifyAll();
+    }
+  }
+
+  /** Write all queued history records to the database, and update the rollups to match.
+  * This is called whenever enough records have accumulated, before the history is read or deleted, and
+  * on shutdown.
+  */
+  public void flushPendingRecords()
+    throws ManifoldCFException
+  {
+    synchronized (flushLock)
+    {
+      List<HistoryRecord> records;
+      synchronized (pendingRecords)
+      {
+        if (pendingRecords.size() == 0)
+          return;
+        records = new ArrayList<HistoryRecord>(pendingRecords);
+        pendingRecords.clear();
+        oldestPendingTime = -1L;
+        // Wake anyone waiting for room
+        pendingRecords.notifyAll();
+      }
+      try
+      {
+        Map<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue> aggregates =
+          new HashMap<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue>();
+        RepositoryHistoryRollupManager.aggregate(aggregates,records);
+        writeRecords(records,aggregates);
+      }
+      catch (ManifoldCFException e)
+      {
+        requeuePendingRecords(records);
+        throw e;
+      }
+      catch (Error e)
+      {
+        requeuePendingRecords(records);
+        throw e;
+      }
+      catch (RuntimeException e)
+      {
+        requeuePendingRecords(records);
+        throw e;
+      }
+    }
+  }
+
+  /** Put records that could not be written back at the front of the queue.
+  */
+  protected static void requeuePendingRecords(List<HistoryRecord> records)
+  {
+    synchronized (pendingRecords)
+    {
+      for (int i = records.size() - 1; i >= 0; i--)
+      {
+        pendingRecords.addFirst(records.get(i));
+      }
+      oldestPendingTime = System.currentTimeMillis();
+    }
+  }
+
+  /** Write a batch of history records and the matching rollup changes, in a single retryable transaction.
+  *@param records are the records to insert.
+  *@param aggregates are the rollup changes.
+  */
+  protected void writeRecords(List<HistoryRecord> records,
+    Map<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue> aggregates)
+    throws ManifoldCFException
+  {
+    while (true)
+    {
+      long sleepAmt = 0L;
+      beginTransaction();
+      try
+      {
+        for (HistoryRecord record : records)
+        {
+          HashMap map = new HashMap();
+          map.put(idField,record.getID());
+          map.put(ownerNameField,record.getConnectionName());
+          map.put(startTimeField,new Long(record.getStartTime()));
+          map.put(endTimeField,new Long(record.getEndTime()));
+          map.put(dataSizeField,new Long(record.getDataSize()));
+          map.put(activityTypeField,record.getActivityType());
+          map.put(entityIdentifierField,record.getEntityIdentifier());
+          if (record.getResultCode() != null)
+            map.put(resultCodeField,record.getResultCode());
+          if (record.getResultDescription() != null)
+            map.put(resultDescriptionField,record.getResultDescription());
+          performInsert(map,null);
+        }
+        rollupManager.mergeAggregates(aggregates);
+        // Not accurate, but best we can do without overhead
+        noteModifications(records.size(),0,0);
+        return;
+      }
+      catch (ManifoldCFException e)
+      {
+        signalRollback();
+        if (e.getErrorCode() == e.DATABASE_TRANSACTION_ABORT)
+        {
+          if (Logging.perf.isDebugEnabled())
+            Logging.perf.debug("Aborted transaction writing repository history: "+e.getMessage());
+          sleepAmt = getSleepAmt();
+          continue;
+        }
+        throw e;
+      }
+      catch (Error e)
+      {
+        signalRollback();
+        throw e;
+      }
+      catch (RuntimeException e)
+      {
+        signalRollback();
+        throw e;
+      }
+      finally
+      {
+        endTransaction();
+        sleepFor(sleepAmt);
+      }
+    }
+  }
+
   // For result analysis, we make heavy use of Postgresql's more advanced posix regular expression
   // handling.  The queries in general are fairly messy.  There's a "front aligned" way of doing things,
   // which uses the start time of a row and finds everything that overlaps the interval from "start time"
@@ -285,6 +658,17 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
   public IResultSet simpleReport(String connectionName, FilterCriteria criteria, SortOrder sort, int startRow, int maxRowCount)
     throws ManifoldCFException
   {
+    return simpleReport(connectionName,criteria,sort,startRow,maxRowCount,null);
+  }
+
+  /** Get a simple history, based on the passed-in filtering criteria and sort order.
+  * The resultset returned should have the following columns: "activity","starttime","elapsedtime","resultcode","resultdesc","bytes","identifier".
+  * If a row handler is supplied, each row is handed to it as it is read, and the returned resultset is empty.
+  */
+  public IResultSet simpleReport(String connectionName, FilterCriteria criteria, SortOrder sort, int startRow, int maxRowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException
+  {
+    flushPendingRecords();
     // Build the query.
     StringBuilder sb = new StringBuilder("SELECT ");
     ArrayList list = new ArrayList();
@@ -298,7 +682,7 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
     // order for the OFFSET/LIMIT clause.  We include "starttime" because that's the default ordering.
     addOrdering(sb,new String[]{"starttime","id"},sort);
     addLimits(sb,startRow,maxRowCount);
-    return performQuery(sb.toString(),list,null,null,maxRowCount);
+    return performQuery(sb.toString(),list,null,null,maxRowCount,rowHandler);
   }
 
   /** Count the number of rows specified by a given set of criteria.  This can be used to make decisions
@@ -310,6 +694,7 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
   public long countHistoryRows(String connectionName, FilterCriteria criteria)
     throws ManifoldCFException
   {
+    flushPendingRecords();
     StringBuilder sb = new StringBuilder("SELECT ");
     ArrayList list = new ArrayList();
     sb.append(constructCountClause("*")).append(" AS countcol FROM ");
@@ -323,6 +708,35 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
     return value.longValue();
   }
 
+  /** Count the number of rows a windowed report with the given criteria, identifier bucket and interval would have
+  * to work with.  This is the number of rolled-up rows if the report can be answered from the rollups, and the
+  * number of history rows otherwise.
+  *@param connectionName is the name of the connection.
+  *@param criteria is the filtering criteria, which selects the records of interest.
+  *@param idBucket is the identifier bucket description.
+  *@param interval is the window size, in milliseconds.
+  *@return the number of rows included by the criteria.
+  */
+  public long countHistoryRows(String connectionName, FilterCriteria criteria, BucketDescription idBucket, long interval)
+    throws ManifoldCFException
+  {
+    long bucketSize = getRollupBucketSize(criteria,idBucket,interval);
+    if (bucketSize == 0L)
+      return countHistoryRows(connectionName,criteria);
+    flushPendingRecords();
+    StringBuilder sb = new StringBuilder("SELECT ");
+    ArrayList list = new ArrayList();
+    sb.append(constructCountClause("*")).append(" AS countcol FROM ");
+    sb.append(rollupManager.getTableName());
+    addRollupCriteria(sb,list,"",connectionName,criteria,bucketSize,false);
+    IResultSet set = performQuery(sb.toString(),list,null,null);
+    if (set.getRowCount() < 1)
+      throw new ManifoldCFException("Expected at least one row");
+    IResultRow row = set.getRow(0);
+    Long value = (Long)row.getValue("countcol");
+    return value.longValue();
+  }
+
   /** Get the maximum number of rows a window-based report can work with.
   *@return the maximum rows.
   */
@@ -341,6 +755,25 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
     long interval, int startRow, int maxRowCount)
     throws ManifoldCFException
   {
+    return maxActivityCountReport(connectionName,filterCriteria,sort,idBucket,interval,startRow,maxRowCount,null);
+  }
+
+  /** Get a bucketed history, with sliding window, of maximum activity level.
+  * The resultset returned should have the following columns: "starttime","endtime","activitycount","idbucket".
+  * An activity is counted as being within the interval window on a prorated basis, which can lead to fractional
+  * counts.
+  * If a row handler is supplied, each row is handed to it as it is read, and the returned resultset is empty.
+  */
+  public IResultSet maxActivityCountReport(String connectionName, FilterCriteria filterCriteria, SortOrder sort, BucketDescription idBucket,
+    long interval, int startRow, int maxRowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException
+  {
+    flushPendingRecords();
+    long bucketSize = getRollupBucketSize(filterCriteria,idBucket,interval);
+    if (bucketSize != 0L)
+      return rollupMaxWindowReport(connectionName,filterCriteria,sort,idBucket,interval,bucketSize,
+        "activitycount",RepositoryHistoryRollupManager.activityCountField,startRow,maxRowCount,rowHandler);
+
     // The query we will generate here looks like this:
     // SELECT *
     //   FROM
@@ -433,7 +866,7 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
       new String[]{"activitycount"},new boolean[]{false},otherColumns)).append(") t4");
     addOrdering(newsb,new String[]{"activitycount","starttime","endtime","idbucket"},sort);
     addLimits(newsb,startRow,maxRowCount);
-    return performQuery(newsb.toString(),newList,null,null,maxRowCount);
+    return performQuery(newsb.toString(),newList,null,null,maxRowCount,rowHandler);
   }
 
 
@@ -444,6 +877,23 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
     long interval, int startRow, int maxRowCount)
     throws ManifoldCFException
   {
+    return maxByteCountReport(connectionName,filterCriteria,sort,idBucket,interval,startRow,maxRowCount,null);
+  }
+
+  /** Get a bucketed history, with sliding window, of maximum byte count.
+  * The resultset returned should have the following columns: "starttime","endtime","bytecount","idbucket".
+  * If a row handler is supplied, each row is handed to it as it is read, and the returned resultset is empty.
+  */
+  public IResultSet maxByteCountReport(String connectionName, FilterCriteria filterCriteria, SortOrder sort, BucketDescription idBucket,
+    long interval, int startRow, int maxRowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException
+  {
+    flushPendingRecords();
+    long bucketSize = getRollupBucketSize(filterCriteria,idBucket,interval);
+    if (bucketSize != 0L)
+      return rollupMaxWindowReport(connectionName,filterCriteria,sort,idBucket,interval,bucketSize,
+        "bytecount",RepositoryHistoryRollupManager.byteCountField,startRow,maxRowCount,rowHandler);
+
     // The query we will generate here looks like this:
     // SELECT *
     //   FROM
@@ -541,7 +991,7 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
       new String[]{"bytecount"},new boolean[]{false},otherColumns)).append(") t4");
     addOrdering(newsb,new String[]{"bytecount","starttime","endtime","idbucket"},sort);
     addLimits(newsb,startRow,maxRowCount);
-    return performQuery(newsb.toString(),newList,null,null,maxRowCount);
+    return performQuery(newsb.toString(),newList,null,null,maxRowCount,rowHandler);
   }
 
   /** Get a bucketed history of different result code/identifier combinations.
@@ -551,6 +1001,23 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
     BucketDescription resultCodeBucket, BucketDescription idBucket, int startRow, int maxRowCount)
     throws ManifoldCFException
   {
+    return resultCodesReport(connectionName,filterCriteria,sort,resultCodeBucket,idBucket,startRow,maxRowCount,null);
+  }
+
+  /** Get a bucketed history of different result code/identifier combinations.
+  * The resultset returned should have the following columns: "eventcount","resultcodebucket","idbucket".
+  * If a row handler is supplied, each row is handed to it as it is read, and the returned resultset is empty.
+  */
+  public IResultSet resultCodesReport(String connectionName, FilterCriteria filterCriteria, SortOrder sort,
+    BucketDescription resultCodeBucket, BucketDescription idBucket, int startRow, int maxRowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException
+  {
+    flushPendingRecords();
+    long bucketSize = getRollupBucketSize(filterCriteria,idBucket,0L);
+    if (bucketSize != 0L)
+      return rollupResultCodesReport(connectionName,filterCriteria,sort,resultCodeBucket,idBucket,bucketSize,
+        startRow,maxRowCount,rowHandler);
+
     // The query we'll use here will be:
     //
     // SELECT * FROM (SELECT substring(resultcode FROM '<result_regexp>') AS resultcodebucket,
@@ -570,7 +1037,206 @@ public class RepositoryHistoryManager extends org.apache.manifoldcf.core.databas
     sb.append(") t1 GROUP BY resultcodebucket,idbucket");
     addOrdering(sb,new String[]{"eventcount","resultcodebucket","idbucket"},sort);
     addLimits(sb,startRow,maxRowCount);
-    return performQuery(sb.toString(),list,null,null,maxRowCount);
+    return performQuery(sb.toString(),list,null,null,maxRowCount,rowHandler);
+  }
+
+  /** Get a bucketed history, with a window that slides in rollup-bucket steps, of maximum activity level or byte count.
+  * The windows considered are those that start on a rollup bucket boundary, so the maximum found is the highest
+  * over those window positions only.
+  *@param countColumn is the name of the count column in the resultset.
+  *@param rollupField is the rollup column that gets summed.
+  */
+  protected IResultSet rollupMaxWindowReport(String connectionName, FilterCriteria filterCriteria, SortOrder sort, BucketDescription idBucket,
+    long interval, long bucketSize, String countColumn, String rollupField, int startRow, int maxRowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException
+  {
+    // The query we will generate here looks like this:
+    // SELECT *
+    //   FROM
+    //     (SELECT DISTINCT ON (idbucket) t2.bucket AS idbucket, t2.<count> AS <count>,
+    //                               t2.windowstart AS starttime, t2.windowend AS endtime
+    //        FROM (SELECT t6.bucket AS bucket, t6.windowstart AS windowstart, t6.windowend AS windowend, SUM(t6.<count>) AS <count>
+    //                FROM (SELECT t0.bucket AS bucket, t0.buckettime AS windowstart, t0.buckettime + <interval> AS windowend,
+    //                   t1.<rollupfield> AS <count>
+    //                   FROM (SELECT DISTINCT substring(owner from '<bucketregexp>') AS bucket, buckettime FROM repohistoryrollup WHERE <criteria>) t0,
+    //                     repohistoryrollup t1
+    //                   WHERE t1.buckettime >= t0.buckettime AND t1.buckettime < t0.buckettime + <interval>
+    //                      AND <criteria on t1>) t6
+    //                          GROUP BY bucket,windowstart,windowend) t2
+    //                              ORDER BY bucket ASC,<count> DESC) t4 ORDER BY xxx LIMIT yyy OFFSET zzz;
+    //
+    // The bucket expression matches every string the same way, so applying it to the owner yields the same
+    // single bucket that applying it to the entity identifier would.
+
+    if (Logging.perf.isDebugEnabled())
+      Logging.perf.debug("Answering repository history "+countColumn+" report for '"+connectionName+"' from "+
+        new Long(bucketSize).toString()+" ms rollups");
+
+    String intervalString = new Long(interval).toString();
+    String rollupTable = rollupManager.getTableName();
+    String bucketTimeField = RepositoryHistoryRollupManager.bucketTimeField;
+
+    StringBuilder sb = new StringBuilder();
+    ArrayList list = new ArrayList();
+    sb.append("SELECT * FROM (SELECT t6.bucket AS bucket,")
+      .append("t6.windowstart AS windowstart,t6.windowend AS windowend, SUM(t6.").append(countColumn).append(") AS ").append(countColumn)
+      .append(" FROM (SELECT t0.bucket AS bucket, t0.").append(bucketTimeField).append(" AS windowstart, t0.")
+      .append(bucketTimeField).append("+").append(intervalString).append(" AS windowend, t1.").append(rollupField)
+      .append(" AS ").append(countColumn).append(" FROM (SELECT DISTINCT ");
+    addBucketExtract(sb,list,"",RepositoryHistoryRollupManager.ownerNameField,idBucket);
+    sb.append(" AS bucket,").append(bucketTimeField).append(" FROM ").append(rollupTable);
+    addRollupCriteria(sb,list,"",connectionName,filterCriteria,bucketSize,false);
+    sb.append(") t0,").append(rollupTable).append(" t1 WHERE t1.").append(bucketTimeField).append(">=t0.").append(bucketTimeField)
+      .append(" AND t1.").append(bucketTimeField).append("<t0.").append(bucketTimeField).append("+").append(intervalString);
+    addRollupCriteria(sb,list,"t1.",connectionName,filterCriteria,bucketSize,true);
+    sb.append(") t6 GROUP BY bucket,windowstart,windowend) t2");
+
+    Map otherColumns = new HashMap();
+    otherColumns.put("idbucket","bucket");
+    otherColumns.put(countColumn,countColumn);
+    otherColumns.put("starttime","windowstart");
+    otherColumns.put("endtime","windowend");
+    StringBuilder newsb = new StringBuilder("SELECT * FROM (");
+    ArrayList newList = new ArrayList();
+    newsb.append(constructDistinctOnClause(newList,sb.toString(),list,new String[]{"idbucket"},
+      new String[]{countColumn},new boolean[]{false},otherColumns)).append(") t4");
+    addOrdering(newsb,new String[]{countColumn,"starttime","endtime","idbucket"},sort);
+    addLimits(newsb,startRow,maxRowCount);
+    return performQuery(newsb.toString(),newList,null,null,maxRowCount,rowHandler);
+  }
+
+  /** Get a bucketed history of different result code/identifier combinations, from the rollups.
+  * Each event is counted in the bucket in which it started.
+  */
+  protected IResultSet rollupResultCodesReport(String connectionName, FilterCriteria filterCriteria, SortOrder sort,
+    BucketDescription resultCodeBucket, BucketDescription idBucket, long bucketSize, int startRow, int maxRowCount, IResultRowHandler rowHandler)
+    throws ManifoldCFException
+  {
+    // The query we'll use here will be:
+    //
+    // SELECT * FROM (SELECT substring(resultcode FROM '<result_regexp>') AS resultcodebucket,
+    //        substring(owner FROM '<id_regexp>') AS idbucket,
+    //        startcount FROM repohistoryrollup WHERE <criteria>) t1
+    //              GROUP BY t1.resultcodebucket,t1.idbucket
+    //                      ORDER BY xxx LIMIT yyy OFFSET zzz
+
+    if (Logging.perf.isDebugEnabled())
+      Logging.perf.debug("Answering repository history result code report for '"+connectionName+"' from "+
+        new Long(bucketSize).toString()+" ms rollups");
+
+    StringBuilder sb = new StringBuilder("SELECT t1.resultcodebucket,t1.idbucket,SUM(t1.");
+    ArrayList list = new ArrayList();
+    sb.append(RepositoryHistoryRollupManager.startCountField).append(") AS eventcount FROM (SELECT ");
+    addBucketExtract(sb,list,"",rollupManager.resultCodeExpression(""),resultCodeBucket);
+    sb.append(" AS resultcodebucket, ");
+    addBucketExtract(sb,list,"",RepositoryHistoryRollupManager.ownerNameField,idBucket);
+    sb.append(" AS idbucket,").append(RepositoryHistoryRollupManager.startCountField).append(" FROM ").append(rollupManager.getTableName());
+    addRollupCriteria(sb,list,"",connectionName,filterCriteria,bucketSize,false);
+    sb.append(") t1 GROUP BY resultcodebucket,idbucket");
+    addOrdering(sb,new String[]{"eventcount","resultcodebucket","idbucket"},sort);
+    addLimits(sb,startRow,maxRowCount);
+    return performQuery(sb.toString(),list,null,null,maxRowCount,rowHandler);
+  }
+
+  /** Decide whether a report can be answered from the rollups, and if so, at what bucket size.
+  * That is possible when the report does not discriminate by entity, when the window interval is a
+  * whole number of buckets, and when the time criteria fall within the first (smallest) rollup bucket of
+  * a bucket.  Time criteria are rounded down to the start of their bucket.
+  *@param criteria is the filtering criteria.
+  *@param idBucket is the identifier bucket description.
+  *@param interval is the window interval, or 0L if there is no window.
+  *@return the largest usable bucket size, or 0L if the raw history must be used.
+  */
+  protected static long getRollupBucketSize(FilterCriteria criteria, BucketDescription idBucket, long interval)
+  {
+    if (criteria.getEntityMatch() != null || !isConstantBucket(idBucket))
+      return 0L;
+    Long startTime = criteria.getStartTime();
+    Long endTime = criteria.getEndTime();
+    long[] bucketSizes = RepositoryHistoryRollupManager.BUCKET_SIZES;
+    for (int i = bucketSizes.length - 1; i >= 0; i--)
+    {
+      long bucketSize = bucketSizes[i];
+      if (interval % bucketSize != 0L)
+        continue;
+      if (startTime != null && startTime.longValue() - RepositoryHistoryRollupManager.bucketStart(startTime.longValue(),bucketSize) >= bucketSizes[0])
+        continue;
+      if (endTime != null && endTime.longValue() - RepositoryHistoryRollupManager.bucketStart(endTime.longValue(),bucketSize) >= bucketSizes[0])
+        continue;
+      return bucketSize;
+    }
+    return 0L;
+  }
+
+  /** Check whether a bucket description puts every identifier into the same (empty) bucket.
+  */
+  protected static boolean isConstantBucket(BucketDescription bucketDesc)
+  {
+    String regexp = bucketDesc.getRegexp();
+    return regexp.length() == 0 || regexp.equals("()");
+  }
+
+  /** Add criteria clauses to a query against the rollups.
+  */
+  protected boolean addRollupCriteria(StringBuilder sb, ArrayList list, String fieldPrefix, String connectionName, FilterCriteria criteria,
+    long bucketSize, boolean whereEmitted)
+  {
+    whereEmitted = emitClauseStart(sb,whereEmitted);
+    sb.append(fieldPrefix).append(RepositoryHistoryRollupManager.ownerNameField).append("=?");
+    list.add(connectionName);
+
+    whereEmitted = emitClauseStart(sb,whereEmitted);
+    sb.append(fieldPrefix).append(RepositoryHistoryRollupManager.bucketSizeField).append("=").append(new Long(bucketSize).toString());
+
+    String[] activities = criteria.getActivities();
+    if (activities != null)
+    {
+      whereEmitted = emitClauseStart(sb,whereEmitted);
+      if (activities.length == 0)
+      {
+        sb.append("0>1");
+      }
+      else
+      {
+        sb.append(fieldPrefix).append(RepositoryHistoryRollupManager.activityTypeField).append(" IN(");
+        int i = 0;
+        while (i < activities.length)
+        {
+          if (i > 0)
+            sb.append(",");
+          String activity = activities[i++];
+          sb.append("?");
+          list.add(activity);
+        }
+        sb.append(")");
+      }
+    }
+
+    Long startTime = criteria.getStartTime();
+    if (startTime != null)
+    {
+      whereEmitted = emitClauseStart(sb,whereEmitted);
+      sb.append(fieldPrefix).append(RepositoryHistoryRollupManager.bucketTimeField).append(">=")
+        .append(new Long(RepositoryHistoryRollupManager.bucketStart(startTime.longValue(),bucketSize)).toString());
+    }
+
+    Long endTime = criteria.getEndTime();
+    if (endTime != null)
+    {
+      whereEmitted = emitClauseStart(sb,whereEmitted);
+      sb.append(fieldPrefix).append(RepositoryHistoryRollupManager.bucketTimeField).append("<=")
+        .append(new Long(RepositoryHistoryRollupManager.bucketStart(endTime.longValue(),bucketSize) - bucketSize).toString());
+    }
+
+    RegExpCriteria resultCodeMatch = criteria.getResultCodeMatch();
+    if (resultCodeMatch != null)
+    {
+      whereEmitted = emitClauseStart(sb,whereEmitted);
+      sb.append(constructRegexpClause(rollupManager.resultCodeExpression(fieldPrefix),"?",resultCodeMatch.isInsensitive()));
+      list.add(resultCodeMatch.getRegexpString());
+    }
+
+    return whereEmitted;
   }
 
   /** Turn a bucket description into a return column.
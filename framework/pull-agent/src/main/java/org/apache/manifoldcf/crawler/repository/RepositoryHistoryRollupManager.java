@@ -0,0 +1,413 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.repository;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.crawler.interfaces.*;
+import java.util.*;
+
+/** This class manages the pre-aggregated (rolled-up) form of the repository history.
+* Each row sums up the history records of one connection, activity type and result code that
+* fall within one fixed time bucket.  Rows are kept for two bucket sizes, one minute and one hour.
+* Activity and byte counts are prorated across the buckets an event overlaps, exactly as the
+* sliding-window reports prorate them; the start count is the unprorated number of events that
+* began in the bucket.
+*
+* Since there is no way to know ahead of time which identifier buckets a report will ask for,
+* the entity identifier is not part of the rollup.  Rollups can therefore only answer reports
+* that do not discriminate by entity.
+*
+* There is exactly one row per owner, bucket and result code; a unique index enforces that, so
+* that two processes creating the same row at once see a duplicate key error, which causes the
+* writing transaction to be retried.  Since NULL values are never equal to one another in a
+* unique index, a missing result code is stored as an empty string, and read back with
+* resultCodeExpression().
+*
+* <br><br>
+* <b>repohistoryrollup</b>
+* <table border="1" cellpadding="3" cellspacing="0">
+* <tr class="TableHeadingColor">
+* <th>Field</th><th>Type</th><th>Description&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;</th>
+* <tr><td>id</td><td>BIGINT</td><td>Primary Key</td></tr>
+* <tr><td>owner</td><td>VARCHAR(32)</td><td>Reference:repoconnections.connectionname</td></tr>
+* <tr><td>bucketsize</td><td>BIGINT</td><td></td></tr>
+* <tr><td>buckettime</td><td>BIGINT</td><td></td></tr>
+* <tr><td>activitytype</td><td>VARCHAR(64)</td><td></td></tr>
+* <tr><td>resultcode</td><td>VARCHAR(255)</td><td>Empty if there was no result code</td></tr>
+* <tr><td>activitycount</td><td>FLOAT</td><td></td></tr>
+* <tr><td>bytecount</td><td>FLOAT</td><td></td></tr>
+* <tr><td>startcount</td><td>BIGINT</td><td></td></tr>
+* </table>
+* <br><br>
+*
+*/
+public class RepositoryHistoryRollupManager extends org.apache.manifoldcf.core.database.BaseTable
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** The bucket sizes that are maintained, smallest first */
+  public final static long[] BUCKET_SIZES = new long[]{60000L, 3600000L};
+
+  /** Maximum number of buckets a single event is prorated across, for each bucket size.  Longer events
+  * are attributed to their last buckets only. */
+  protected final static int MAX_BUCKETS_PER_EVENT = 1440;
+
+  /** The stored form of a missing result code */
+  protected final static String NO_RESULTCODE = "";
+
+  // Fields
+  protected final static String idField = "id";
+  protected final static String ownerNameField = "owner";
+  protected final static String bucketSizeField = "bucketsize";
+  protected final static String bucketTimeField = "buckettime";
+  protected final static String activityTypeField = "activitytype";
+  protected final static String resultCodeField = "resultcode";
+  protected final static String activityCountField = "activitycount";
+  protected final static String byteCountField = "bytecount";
+  protected final static String startCountField = "startcount";
+
+  /** Thread context */
+  protected final IThreadContext threadContext;
+
+  /** Constructor.
+  *@param tc is the thread context.
+  *@param database is the database instance.
+  */
+  public RepositoryHistoryRollupManager(IThreadContext tc, IDBInterface database)
+    throws ManifoldCFException
+  {
+    super(database,"repohistoryrollup");
+    this.threadContext = tc;
+  }
+
+  /** Check whether the table exists yet.
+  *@return true if the table has been installed.
+  */
+  public boolean isInstalled()
+    throws ManifoldCFException
+  {
+    return getTableSchema(null,null) != null;
+  }
+
+  /** Install or upgrade the table.
+  *@param parentTable is the parent table.
+  *@param parentField is the parent field.
+  */
+  public void install(String parentTable, String parentField)
+    throws ManifoldCFException
+  {
+    // Always have an outer loop, in case of upgrade
+    while (true)
+    {
+      Map existing = getTableSchema(null,null);
+      if (existing == null)
+      {
+        HashMap map = new HashMap();
+        map.put(idField,new ColumnDescription("BIGINT",true,false,null,null,false));
+        map.put(ownerNameField,new ColumnDescription("VARCHAR(32)",false,false,parentTable,parentField,false));
+        map.put(bucketSizeField,new ColumnDescription("BIGINT",false,false,null,null,false));
+        map.put(bucketTimeField,new ColumnDescription("BIGINT",false,false,null,null,false));
+        map.put(activityTypeField,new ColumnDescription("VARCHAR(64)",false,false,null,null,false));
+        map.put(resultCodeField,new ColumnDescription("VARCHAR(255)",false,false,null,null,false));
+        map.put(activityCountField,new ColumnDescription("FLOAT",false,false,null,null,false));
+        map.put(byteCountField,new ColumnDescription("FLOAT",false,false,null,null,false));
+        map.put(startCountField,new ColumnDescription("BIGINT",false,false,null,null,false));
+        performCreate(map,null);
+      }
+      else
+      {
+        // Upgrade code.
+      }
+
+      // Index management
+      IndexDescription bucketIndex = new IndexDescription(true,new String[]{ownerNameField,bucketSizeField,bucketTimeField,
+        activityTypeField,resultCodeField});
+      IndexDescription bucketTimeIndex = new IndexDescription(false,new String[]{bucketTimeField});
+
+      // Get rid of indexes that shouldn't be there
+      Map indexes = getTableIndexes(null,null);
+      Iterator iter = indexes.keySet().iterator();
+      while (iter.hasNext())
+      {
+        String indexName = (String)iter.next();
+        IndexDescription id = (IndexDescription)indexes.get(indexName);
+
+        if (bucketIndex != null && id.equals(bucketIndex))
+          bucketIndex = null;
+        else if (bucketTimeIndex != null && id.equals(bucketTimeIndex))
+          bucketTimeIndex = null;
+        else if (indexName.indexOf("_pkey") == -1)
+          // This index shouldn't be here; drop it
+          performRemoveIndex(indexName);
+      }
+
+      // Add the ones we didn't find
+      if (bucketIndex != null)
+        performAddIndex(null,bucketIndex);
+      if (bucketTimeIndex != null)
+        performAddIndex(null,bucketTimeIndex);
+
+      break;
+    }
+  }
+
+  /** Uninstall the table.
+  */
+  public void deinstall()
+    throws ManifoldCFException
+  {
+    performDrop(null);
+  }
+
+  /** Delete all rollups associated with given owner.
+  *@param owner is the name of the owner.
+  */
+  public void deleteOwner(String owner)
+    throws ManifoldCFException
+  {
+    ArrayList params = new ArrayList();
+    String query = buildConjunctionClause(params,new ClauseDescription[]{
+      new UnitaryClause(ownerNameField,owner)});
+    performDelete("WHERE "+query,params,null);
+  }
+
+  /** Delete rollups for buckets that end before a specified time.  A bucket that straddles the cutoff
+  * is kept.
+  *@param timeCutoff is the time, earlier than which records are removed.
+  */
+  public void deleteOldRows(long timeCutoff)
+    throws ManifoldCFException
+  {
+    for (long bucketSize : BUCKET_SIZES)
+    {
+      ArrayList params = new ArrayList();
+      String query = buildConjunctionClause(params,new ClauseDescription[]{
+        new UnitaryClause(bucketSizeField,new Long(bucketSize)),
+        new UnitaryClause(bucketTimeField,"<",new Long(timeCutoff - bucketSize))});
+      performDelete("WHERE "+query,params,null);
+    }
+  }
+
+  /** Build the SQL expression that reads the result code back, with a missing result code as NULL,
+  * the way the raw history has it.
+  *@param fieldPrefix is the prefix to put on the column name.
+  *@return the expression.
+  */
+  public String resultCodeExpression(String fieldPrefix)
+  {
+    return "NULLIF("+fieldPrefix+resultCodeField+",'')";
+  }
+
+  /** Add a set of history records to an in-memory aggregation.
+  *@param aggregates is the aggregation, keyed by RollupKey.
+  *@param records are the records to add.
+  */
+  public static void aggregate(Map<RollupKey,RollupValue> aggregates, List<HistoryRecord> records)
+  {
+    for (HistoryRecord record : records)
+    {
+      aggregate(aggregates,record.getConnectionName(),record.getStartTime(),record.getEndTime(),
+        record.getDataSize(),record.getActivityType(),record.getResultCode());
+    }
+  }
+
+  /** Add one history event to an in-memory aggregation.
+  *@param aggregates is the aggregation, keyed by RollupKey.
+  */
+  public static void aggregate(Map<RollupKey,RollupValue> aggregates, String connectionName, long startTime, long endTime,
+    long dataSize, String activityType, String resultCode)
+  {
+    long duration = endTime - startTime;
+    for (long bucketSize : BUCKET_SIZES)
+    {
+      long startBucket = bucketStart(startTime,bucketSize);
+      RollupValue startValue = findValue(aggregates,new RollupKey(connectionName,bucketSize,startBucket,activityType,resultCode));
+      startValue.startCount++;
+      if (duration <= 0L)
+      {
+        // Not legal for recorded history, but be safe: the whole event belongs to its start bucket.
+        startValue.activityCount += 1.0;
+        startValue.byteCount += (double)dataSize;
+        continue;
+      }
+      long endBucket = bucketStart(endTime - 1L,bucketSize);
+      long firstBucket = startBucket;
+      if ((endBucket - firstBucket) / bucketSize >= MAX_BUCKETS_PER_EVENT)
+        firstBucket = endBucket - (MAX_BUCKETS_PER_EVENT - 1) * bucketSize;
+      for (long bucket = firstBucket; bucket <= endBucket; bucket += bucketSize)
+      {
+        long overlapStart = (startTime > bucket)?startTime:bucket;
+        long overlapEnd = (endTime < bucket + bucketSize)?endTime:(bucket + bucketSize);
+        double fraction = (double)(overlapEnd - overlapStart) / (double)duration;
+        RollupValue value = (bucket == startBucket)?startValue:
+          findValue(aggregates,new RollupKey(connectionName,bucketSize,bucket,activityType,resultCode));
+        value.activityCount += fraction;
+        value.byteCount += (double)dataSize * fraction;
+      }
+    }
+  }
+
+  /** Find the start of the bucket containing a time.
+  */
+  public static long bucketStart(long time, long bucketSize)
+  {
+    long remainder = time % bucketSize;
+    if (remainder < 0L)
+      remainder += bucketSize;
+    return time - remainder;
+  }
+
+  protected static RollupValue findValue(Map<RollupKey,RollupValue> aggregates, RollupKey key)
+  {
+    RollupValue value = aggregates.get(key);
+    if (value == null)
+    {
+      value = new RollupValue();
+      aggregates.put(key,value);
+    }
+    return value;
+  }
+
+  /** Merge an in-memory aggregation into the table.  Existing rows for the same bucket are incremented; new
+  * rows are created otherwise.  This must be called within a transaction, which must be retried if it is
+  * aborted: if another process creates one of the same rows first, the insert here fails with a duplicate
+  * key, which the database layer reports as a transaction abort.
+  *@param aggregates is the aggregation to merge.
+  */
+  public void mergeAggregates(Map<RollupKey,RollupValue> aggregates)
+    throws ManifoldCFException
+  {
+    int insertCount = 0;
+    int modifyCount = 0;
+    for (Map.Entry<RollupKey,RollupValue> entry : aggregates.entrySet())
+    {
+      RollupKey key = entry.getKey();
+      RollupValue value = entry.getValue();
+      ArrayList params = new ArrayList();
+      StringBuilder sb = new StringBuilder("SELECT ");
+      sb.append(idField).append(",").append(activityCountField).append(",").append(byteCountField).append(",")
+        .append(startCountField).append(" FROM ").append(getTableName()).append(" WHERE ")
+        .append(buildConjunctionClause(params,new ClauseDescription[]{
+          new UnitaryClause(ownerNameField,key.connectionName),
+          new UnitaryClause(bucketSizeField,new Long(key.bucketSize)),
+          new UnitaryClause(bucketTimeField,new Long(key.bucketTime)),
+          new UnitaryClause(activityTypeField,key.activityType),
+          new UnitaryClause(resultCodeField,(key.resultCode == null)?NO_RESULTCODE:key.resultCode)}))
+        .append(" FOR UPDATE");
+      IResultSet set = performQuery(sb.toString(),params,null,null);
+      if (set.getRowCount() > 0)
+      {
+        IResultRow row = set.getRow(0);
+        Long id = (Long)row.getValue(idField);
+        HashMap map = new HashMap();
+        map.put(activityCountField,new Double(((Double)row.getValue(activityCountField)).doubleValue() + value.activityCount));
+        map.put(byteCountField,new Double(((Double)row.getValue(byteCountField)).doubleValue() + value.byteCount));
+        map.put(startCountField,new Long(((Long)row.getValue(startCountField)).longValue() + value.startCount));
+        ArrayList updateParams = new ArrayList();
+        String query = buildConjunctionClause(updateParams,new ClauseDescription[]{
+          new UnitaryClause(idField,id)});
+        performUpdate(map,"WHERE "+query,updateParams,null);
+        modifyCount++;
+      }
+      else
+      {
+        HashMap map = new HashMap();
+        map.put(idField,new Long(IDFactory.make(threadContext)));
+        map.put(ownerNameField,key.connectionName);
+        map.put(bucketSizeField,new Long(key.bucketSize));
+        map.put(bucketTimeField,new Long(key.bucketTime));
+        map.put(activityTypeField,key.activityType);
+        map.put(resultCodeField,(key.resultCode == null)?NO_RESULTCODE:key.resultCode);
+        map.put(activityCountField,new Double(value.activityCount));
+        map.put(byteCountField,new Double(value.byteCount));
+        map.put(startCountField,new Long(value.startCount));
+        performInsert(map,null);
+        insertCount++;
+      }
+    }
+    noteModifications(insertCount,modifyCount,0);
+  }
+
+  /** Key of one rollup row.
+  */
+  public static class RollupKey
+  {
+    protected final String connectionName;
+    protected final long bucketSize;
+    protected final long bucketTime;
+    protected final String activityType;
+    protected final String resultCode;
+
+    public RollupKey(String connectionName, long bucketSize, long bucketTime, String activityType, String resultCode)
+    {
+      this.connectionName = connectionName;
+      this.bucketSize = bucketSize;
+      this.bucketTime = bucketTime;
+      this.activityType = activityType;
+      this.resultCode = resultCode;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return connectionName.hashCode() + activityType.hashCode() + ((resultCode == null)?0:resultCode.hashCode()) +
+        (int)(bucketTime ^ (bucketTime >>> 32)) + (int)bucketSize;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof RollupKey))
+        return false;
+      RollupKey other = (RollupKey)o;
+      if (other.bucketSize != bucketSize || other.bucketTime != bucketTime)
+        return false;
+      if (!other.connectionName.equals(connectionName) || !other.activityType.equals(activityType))
+        return false;
+      if (resultCode == null || other.resultCode == null)
+        return resultCode == other.resultCode;
+      return resultCode.equals(other.resultCode);
+    }
+  }
+
+  /** Accumulated values of one rollup row.
+  */
+  public static class RollupValue
+  {
+    protected double activityCount = 0.0;
+    protected double byteCount = 0.0;
+    protected long startCount = 0L;
+
+    public double getActivityCount()
+    {
+      return activityCount;
+    }
+
+    public double getByteCount()
+    {
+      return byteCount;
+    }
+
+    public long getStartCount()
+    {
+      return startCount;
+    }
+  }
+
+}
@@ -50,6 +50,9 @@ public class CrawlerAgent implements IAgent
   protected IdleCleanupThread idleCleanupThread = null;
   protected SetPriorityThread setPriorityThread = null;
   protected HistoryCleanupThread historyCleanupThread = null;
+  protected HistoryWriterThread historyWriterThread = null;
+  protected ProcessingWatchdogThread processingWatchdogThread = null;
+  protected ProcessingWatchdog processingWatchdog = null;
   protected AssessmentThread assessmentThread = null;
   
   // Reset managers
@@ -386,6 +389,8 @@ public class CrawlerAgent implements IAgent
 
     BlockingDocuments blockingDocuments = new BlockingDocuments();
 
+    processingWatchdog = new ProcessingWatchdog();
+
     workerResetManager = new WorkerResetManager(documentQueue,expireQueue,processID);
     docDeleteResetManager = new DocDeleteResetManager(documentDeleteQueue,processID);
     docCleanupResetManager = new DocCleanupResetManager(documentCleanupQueue,processID);
@@ -400,12 +405,14 @@ public class CrawlerAgent implements IAgent
     expireStufferThread = new ExpireStufferThread(expireQueue,numExpireThreads,workerResetManager,processID);
     setPriorityThread = new SetPriorityThread(numWorkerThreads,blockingDocuments,processID);
     historyCleanupThread = new HistoryCleanupThread(processID);
+    historyWriterThread = new HistoryWriterThread(processID);
+    processingWatchdogThread = new ProcessingWatchdogThread(processingWatchdog,processID);
 
     workerThreads = new WorkerThread[numWorkerThreads];
     int i = 0;
     while (i < numWorkerThreads)
     {
-      workerThreads[i] = new WorkerThread(Integer.toString(i),documentQueue,workerResetManager,queueTracker,processID);
+      workerThreads[i] = new WorkerThread(Integer.toString(i),documentQueue,workerResetManager,queueTracker,processingWatchdog,processID);
       i++;
     }
 
@@ -451,6 +458,8 @@ public class CrawlerAgent implements IAgent
     expireStufferThread.start();
     setPriorityThread.start();
     historyCleanupThread.start();
+    historyWriterThread.start();
+    processingWatchdogThread.start();
 
     i = 0;
     while (i < numWorkerThreads)
@@ -496,12 +505,16 @@ public class CrawlerAgent implements IAgent
     throws ManifoldCFException
   {
     Logging.root.info("Shutting down pull-agent...");
+    // Worker threads past their processing budget must keep the interruption they are about to get
+    if (processingWatchdog != null)
+      processingWatchdog.noteShutdown();
     while (jobDeleteThread != null || startupThread != null || startDeleteThread != null ||
       jobStartThread != null || stufferThread != null ||
       finisherThread != null || notificationThread != null || workerThreads != null || expireStufferThread != null || expireThreads != null ||
       deleteStufferThread != null || deleteThreads != null ||
       cleanupStufferThread != null || cleanupThreads != null ||
-      jobResetThread != null || seedingThread != null || idleCleanupThread != null || assessmentThread != null || setPriorityThread != null || historyCleanupThread != null)
+      jobResetThread != null || seedingThread != null || idleCleanupThread != null || assessmentThread != null || setPriorityThread != null || historyCleanupThread != null ||
+      historyWriterThread != null || processingWatchdogThread != null)
     {
       // Send an interrupt to all threads that are still there.
       // In theory, this only needs to be done once.  In practice, I have seen cases where the thread loses track of the fact that it has been
@@ -510,6 +523,14 @@ public class CrawlerAgent implements IAgent
       {
         historyCleanupThread.interrupt();
       }
+      if (historyWriterThread != null)
+      {
+        historyWriterThread.interrupt();
+      }
+      if (processingWatchdogThread != null)
+      {
+        processingWatchdogThread.interrupt();
+      }
       if (setPriorityThread != null)
       {
         setPriorityThread.interrupt();
@@ -626,6 +647,16 @@ public class CrawlerAgent implements IAgent
         if (!historyCleanupThread.isAlive())
           historyCleanupThread = null;
       }
+      if (historyWriterThread != null)
+      {
+        if (!historyWriterThread.isAlive())
+          historyWriterThread = null;
+      }
+      if (processingWatchdogThread != null)
+      {
+        if (!processingWatchdogThread.isAlive())
+          processingWatchdogThread = null;
+      }
       if (setPriorityThread != null)
       {
         if (!setPriorityThread.isAlive())
@@ -782,9 +813,20 @@ public class CrawlerAgent implements IAgent
       }
     }
 
-    // Threads are down; release connectors
+    // Threads are down; write out whatever history they left queued
+    try
+    {
+      RepositoryConnectionManagerFactory.make(threadContext).flushHistory();
+    }
+    catch (ManifoldCFException e)
+    {
+      Logging.root.error("Could not write queued repository history during shutdown: "+e.getMessage(),e);
+    }
+
+    // Release connectors
     RepositoryConnectorPoolFactory.make(threadContext).flushUnusedConnectors();
     NotificationConnectorPoolFactory.make(threadContext).flushUnusedConnectors();
+    processingWatchdog = null;
     numWorkerThreads = 0;
     numDeleteThreads = 0;
     numExpireThreads = 0;
@@ -33,6 +33,8 @@ public class DocumentCleanupQueue
 
   // Since the queue has a maximum size, an ArrayList is a fine way to keep it
   protected final List<DocumentCleanupSet> queue = new ArrayList<DocumentCleanupSet>();
+  // Low-water mark the stuffer thread is waiting for, or -1 if it is not waiting
+  protected int emptyThreshold = -1;
   // This flag gets set to 'true' if the queue is being cleared due to a reset
   protected boolean resetFlag = false;
 
@@ -77,6 +79,36 @@ public class DocumentCleanupQueue
     return false;
   }
 
+  /** Wait until the queue is "empty", or a time expires.
+  *@param n is the low-water mark; if the number falls below this, then this method will return true.
+  *@param maxWaitTime is the maximum time to wait, in milliseconds.
+  *@return true if the queue is "empty".
+  */
+  public boolean waitForEmpty(int n, long maxWaitTime)
+    throws InterruptedException
+  {
+    long endTime = System.currentTimeMillis() + maxWaitTime;
+    synchronized (queue)
+    {
+      try
+      {
+        while (queue.size() > n)
+        {
+          long waitTime = endTime - System.currentTimeMillis();
+          if (waitTime <= 0L)
+            return false;
+          emptyThreshold = n;
+          queue.wait(waitTime);
+        }
+        return true;
+      }
+      finally
+      {
+        emptyThreshold = -1;
+      }
+    }
+  }
+
   /** Add a document set to the queue.  This will be a set of n documents (where n is some chunk size
   * set by experiment).
   *@param dd is the document set.
@@ -86,7 +118,11 @@ public class DocumentCleanupQueue
     synchronized (queue)
     {
       queue.add(dd);
-      queue.notify();
+      // Readers and the stuffer share the monitor, so don't risk waking only the stuffer
+      if (emptyThreshold >= 0)
+        queue.notifyAll();
+      else
+        queue.notify();
     }
   }
 
@@ -113,6 +149,8 @@ public class DocumentCleanupQueue
       
       // If we've been awakened, there's an entry to grab
       DocumentCleanupSet dd = queue.remove(queue.size()-1);
+      if (queue.size() <= emptyThreshold)
+        queue.notifyAll();
       return dd;
     }
   }
@@ -71,6 +71,7 @@ public class DocumentCleanupStufferThread extends Thread
       IThreadContext threadContext = ThreadContextFactory.make();
       IRepositoryConnectionManager mgr = RepositoryConnectionManagerFactory.make(threadContext);
       IJobManager jobManager = JobManagerFactory.make(threadContext);
+      ILockManager lockManager = LockManagerFactory.make(threadContext);
 
       ArrayList docList = new ArrayList();
 
@@ -91,14 +92,13 @@ public class DocumentCleanupStufferThread extends Thread
 
           // Wait until the delete queue is "empty" (meaning that some delete threads
           // can run out of work if we don't act).
-          if (documentCleanupQueue.checkIfEmpty(n) == false)
-          {
-            ManifoldCF.sleep(100L);
+          if (documentCleanupQueue.waitForEmpty(n,1000L) == false)
             continue;
-          }
 
           Logging.threads.debug("Document cleanup stuffer thread woke up");
 
+          // Note the event count before looking, so that documents becoming deletable while we look still wake us up
+          long deletableEventCount = lockManager.getEventCount(IJobManager.EVENT_DOCUMENTSDELETABLE);
           long currentTime = System.currentTimeMillis();
           
           // Get a single chunk at a time (but keep going until everything is stuffed)
@@ -114,7 +114,7 @@ public class DocumentCleanupStufferThread extends Thread
           if (descs.length == 0)
           {
             Logging.threads.debug("Document cleanup stuffer thread found nothing to do");
-            ManifoldCF.sleep(1000L);       // 1 second
+            lockManager.waitForEvent(IJobManager.EVENT_DOCUMENTSDELETABLE,deletableEventCount,1000L);       // 1 second at most
             continue;
           }
 
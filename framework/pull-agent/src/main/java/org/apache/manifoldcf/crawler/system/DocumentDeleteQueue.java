@@ -33,6 +33,8 @@ public class DocumentDeleteQueue
 
   // Since the queue has a maximum size, an ArrayList is a fine way to keep it
   protected ArrayList queue = new ArrayList();
+  // Low-water mark the stuffer thread is waiting for, or -1 if it is not waiting
+  protected int emptyThreshold = -1;
 
   /** Constructor.
   */
@@ -73,6 +75,36 @@ public class DocumentDeleteQueue
     return false;
   }
 
+  /** Wait until the queue is "empty", or a time expires.
+  *@param n is the low-water mark; if the number falls below this, then this method will return true.
+  *@param maxWaitTime is the maximum time to wait, in milliseconds.
+  *@return true if the queue is "empty".
+  */
+  public boolean waitForEmpty(int n, long maxWaitTime)
+    throws InterruptedException
+  {
+    long endTime = System.currentTimeMillis() + maxWaitTime;
+    synchronized (queue)
+    {
+      try
+      {
+        while (queue.size() > n)
+        {
+          long waitTime = endTime - System.currentTimeMillis();
+          if (waitTime <= 0L)
+            return false;
+          emptyThreshold = n;
+          queue.wait(waitTime);
+        }
+        return true;
+      }
+      finally
+      {
+        emptyThreshold = -1;
+      }
+    }
+  }
+
   /** Add a document set to the queue.  This will be a set of n documents (where n is some chunk size
   * set by experiment).
   *@param dd is the document set.
@@ -82,7 +114,11 @@ public class DocumentDeleteQueue
     synchronized (queue)
     {
       queue.add(dd);
-      queue.notify();
+      // Readers and the stuffer share the monitor, so don't risk waking only the stuffer
+      if (emptyThreshold >= 0)
+        queue.notifyAll();
+      else
+        queue.notify();
     }
   }
 
@@ -104,6 +140,8 @@ public class DocumentDeleteQueue
         return null;
       // If we've been awakened, there's an entry to grab
       DocumentDeleteSet dd = (DocumentDeleteSet)queue.remove(queue.size()-1);
+      if (queue.size() <= emptyThreshold)
+        queue.notifyAll();
       return dd;
     }
   }
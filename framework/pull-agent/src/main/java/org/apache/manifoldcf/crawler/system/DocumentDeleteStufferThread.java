@@ -71,6 +71,7 @@ public class DocumentDeleteStufferThread extends Thread
       IThreadContext threadContext = ThreadContextFactory.make();
       IRepositoryConnectionManager mgr = RepositoryConnectionManagerFactory.make(threadContext);
       IJobManager jobManager = JobManagerFactory.make(threadContext);
+      ILockManager lockManager = LockManagerFactory.make(threadContext);
 
       ArrayList docList = new ArrayList();
 
@@ -91,14 +92,13 @@ public class DocumentDeleteStufferThread extends Thread
 
           // Wait until the delete queue is "empty" (meaning that some delete threads
           // can run out of work if we don't act).
-          if (documentDeleteQueue.checkIfEmpty(n * 3) == false)
-          {
-            ManifoldCF.sleep(100L);
+          if (documentDeleteQueue.waitForEmpty(n * 3,1000L) == false)
             continue;
-          }
 
           Logging.threads.debug("Document delete stuffer thread woke up");
 
+          // Note the event count before looking, so that documents becoming deletable while we look still wake us up
+          long deletableEventCount = lockManager.getEventCount(IJobManager.EVENT_DOCUMENTSDELETABLE);
           long currentTime = System.currentTimeMillis();
           
           // Get a single chunk at a time (but keep going until everything is stuffed)
@@ -112,7 +112,7 @@ public class DocumentDeleteStufferThread extends Thread
           if (descs.length == 0)
           {
             Logging.threads.debug("Document delete stuffer thread found nothing to do");
-            ManifoldCF.sleep(1000L);       // 1 second
+            lockManager.waitForEvent(IJobManager.EVENT_DOCUMENTSDELETABLE,deletableEventCount,1000L);       // 1 second at most
             continue;
           }
 
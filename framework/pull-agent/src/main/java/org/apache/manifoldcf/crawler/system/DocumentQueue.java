@@ -33,6 +33,8 @@ public class DocumentQueue
 
   // Since the queue has a maximum size, an ArrayList is a fine way to keep it
   protected final List<QueuedDocumentSet> queue = new ArrayList<QueuedDocumentSet>();
+  // Low-water mark the stuffer thread is waiting for, or -1 if it is not waiting
+  protected int emptyThreshold = -1;
   // This flag gets set to 'true' if the queue is being cleared due to a reset
   protected boolean resetFlag = false;
 
@@ -77,6 +79,36 @@ public class DocumentQueue
     return false;
   }
 
+  /** Wait until the queue is "empty", or a time expires.
+  *@param n is the low-water mark; if the number falls below this, then this method will return true.
+  *@param maxWaitTime is the maximum time to wait, in milliseconds.
+  *@return true if the queue is "empty".
+  */
+  public boolean waitForEmpty(int n, long maxWaitTime)
+    throws InterruptedException
+  {
+    long endTime = System.currentTimeMillis() + maxWaitTime;
+    synchronized (queue)
+    {
+      try
+      {
+        while (queue.size() > n)
+        {
+          long waitTime = endTime - System.currentTimeMillis();
+          if (waitTime <= 0L)
+            return false;
+          emptyThreshold = n;
+          queue.wait(waitTime);
+        }
+        return true;
+      }
+      finally
+      {
+        emptyThreshold = -1;
+      }
+    }
+  }
+
 
   /** Add a document to the queue.
   *@param dd is the document description.
@@ -86,7 +118,11 @@ public class DocumentQueue
     synchronized (queue)
     {
       queue.add(dd);
-      queue.notify();
+      // Readers and the stuffer share the monitor, so don't risk waking only the stuffer
+      if (emptyThreshold >= 0)
+        queue.notifyAll();
+      else
+        queue.notify();
     }
   }
 
@@ -132,6 +168,8 @@ public class DocumentQueue
       }
       // Pull off the best one.  DON'T REORDER!!
       QueuedDocumentSet rval = queue.remove(bestIndex);
+      if (queue.size() <= emptyThreshold)
+        queue.notifyAll();
       return rval;
     }
   }
@@ -105,12 +105,8 @@ public class ExpireStufferThread extends Thread
 
           // System.out.println("Waiting...");
           // Wait until queue is empty enough.
-          boolean isEmpty = documentQueue.checkIfEmpty(n*3);
-          if (isEmpty == false)
-          {
-            sleep(1000);
+          if (documentQueue.waitForEmpty(n*3,1000L) == false)
             continue;
-          }
 
           Logging.threads.debug("Expiration stuffer thread woke up");
 
@@ -31,6 +31,9 @@ public class FinisherThread extends Thread
 {
   public static final String _rcsid = "@(#)$Id: FinisherThread.java 991295 2010-08-31 19:12:14Z kwright $";
 
+  /** Maximum time between checks for finished jobs, in milliseconds */
+  protected static final long MAX_FINISH_INTERVAL = 10000L;
+
   // Local data
   /** Process ID */
   protected final String processID;
@@ -54,6 +57,7 @@ public class FinisherThread extends Thread
       // Create a thread context object.
       IThreadContext threadContext = ThreadContextFactory.make();
       IJobManager jobManager = JobManagerFactory.make(threadContext);
+      ILockManager lockManager = LockManagerFactory.make(threadContext);
       IRepositoryConnectionManager connectionManager = RepositoryConnectionManagerFactory.make(threadContext);
 
       // Loop
@@ -63,10 +67,12 @@ public class FinisherThread extends Thread
         try
         {
           Logging.threads.debug("Cleaning up completed jobs...");
+          long completedEventCount = lockManager.getEventCount(IJobManager.EVENT_DOCUMENTSCOMPLETED);
           // See if there are any completed jobs
           jobManager.finishJobs();
           Logging.threads.debug("Done cleaning up completed jobs");
-          ManifoldCF.sleep(10000L);
+          // The event is signalled only when some job has run out of documents, so it is rare while jobs are busy
+          lockManager.waitForEvent(IJobManager.EVENT_DOCUMENTSCOMPLETED,completedEventCount,MAX_FINISH_INTERVAL);
         }
         catch (ManifoldCFException e)
         {
@@ -98,11 +104,6 @@ public class FinisherThread extends Thread
           }
 
         }
-        catch (InterruptedException e)
-        {
-          // We're supposed to quit
-          break;
-        }
         catch (OutOfMemoryError e)
         {
           System.err.println("agents process ran out of memory - shutting down");
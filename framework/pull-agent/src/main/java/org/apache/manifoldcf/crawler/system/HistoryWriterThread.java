@@ -0,0 +1,135 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.system;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.crawler.interfaces.*;
+import java.util.*;
+
+/** This class describes the thread that writes queued history records.
+* Worker and other threads only queue their activity records; this thread writes them to the database
+* in batches, so that history writes stay off the document processing path.
+*/
+public class HistoryWriterThread extends Thread
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  // Local data
+  /** Process ID */
+  protected final String processID;
+
+  /** Constructor.
+  */
+  public HistoryWriterThread(String processID)
+    throws ManifoldCFException
+  {
+    super();
+    this.processID = processID;
+    setName("History writer thread");
+    setDaemon(true);
+  }
+
+  public void run()
+  {
+    try
+    {
+      // Create a thread context object.
+      IThreadContext threadContext = ThreadContextFactory.make();
+      IRepositoryConnectionManager connectionManager = RepositoryConnectionManagerFactory.make(threadContext);
+      try
+      {
+        // Loop
+        while (true)
+        {
+          if (Thread.currentThread().isInterrupted())
+            break;
+
+          // Do another try/catch around everything in the loop
+          try
+          {
+            connectionManager.writeQueuedHistory(1000L);
+          }
+          catch (ManifoldCFException e)
+          {
+            if (e.getErrorCode() == ManifoldCFException.INTERRUPTED)
+              break;
+
+            if (e.getErrorCode() == ManifoldCFException.DATABASE_CONNECTION_ERROR)
+            {
+              Logging.threads.error("History writer thread aborting and restarting due to database connection reset: "+e.getMessage(),e);
+              try
+              {
+                // Give the database a chance to catch up/wake up
+                ManifoldCF.sleep(10000L);
+              }
+              catch (InterruptedException se)
+              {
+                break;
+              }
+              continue;
+            }
+
+            // Log it, but keep the thread alive
+            Logging.threads.error("Exception tossed: "+e.getMessage(),e);
+
+            if (e.getErrorCode() == ManifoldCFException.SETUP_ERROR)
+            {
+              // Shut the whole system down!
+              System.exit(1);
+            }
+
+            // Don't hammer the database while it's refusing the writes
+            try
+            {
+              ManifoldCF.sleep(1000L);
+            }
+            catch (InterruptedException se)
+            {
+              break;
+            }
+          }
+          catch (OutOfMemoryError e)
+          {
+            System.err.println("agents process ran out of memory - shutting down");
+            e.printStackTrace(System.err);
+            System.exit(-200);
+          }
+          catch (Throwable e)
+          {
+            // A more severe error - but stay alive
+            Logging.threads.fatal("Error tossed: "+e.getMessage(),e);
+          }
+        }
+      }
+      finally
+      {
+        // Threads still recording history must now write it themselves
+        connectionManager.noteHistoryWriterStopped();
+      }
+    }
+    catch (Throwable e)
+    {
+      // Severe error on initialization
+      System.err.println("agents process could not start - shutting down");
+      Logging.threads.fatal("HistoryWriterThread initialization error tossed: "+e.getMessage(),e);
+      System.exit(-300);
+    }
+  }
+
+}
@@ -59,6 +59,7 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
   protected static final String expireThreadCountProperty = "org.apache.manifoldcf.crawler.expirethreads";
   protected static final String lowWaterFactorProperty = "org.apache.manifoldcf.crawler.lowwaterfactor";
   protected static final String stuffAmtFactorProperty = "org.apache.manifoldcf.crawler.stuffamountfactor";
+  protected static final String seedingBatchSizeProperty = "org.apache.manifoldcf.crawler.seedingbatchsize";
   protected static final String connectorsConfigurationFileProperty = "org.apache.manifoldcf.connectorsconfigurationfile";
   protected static final String databaseSuperuserNameProperty = "org.apache.manifoldcf.dbsuperusername";
   protected static final String databaseSuperuserPasswordProperty = "org.apache.manifoldcf.dbsuperuserpassword";
@@ -104,6 +105,16 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
   
   public static void localCleanup(IThreadContext tc)
   {
+    try
+    {
+      // Repository history recorded by this process may still be queued
+      RepositoryConnectionManagerFactory.make(tc).flushHistory();
+    }
+    catch (ManifoldCFException e)
+    {
+      if (Logging.root != null)
+        Logging.root.warn("Exception tossed writing queued repository history: "+e.getMessage(),e);
+    }
     try
     {
       RepositoryConnectorPoolFactory.make(tc).closeAllConnectors();
@@ -1020,6 +1031,14 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
     return LockManagerFactory.getIntProperty(threadContext,deleteThreadCountProperty,10);
   }
 
+  /** Get the number of seeds handed to the job queue at one time.
+  */
+  public static int getSeedingBatchSize(IThreadContext threadContext)
+    throws ManifoldCFException
+  {
+    return LockManagerFactory.getIntProperty(threadContext,seedingBatchSizeProperty,1000);
+  }
+
   /** Get the maximum number of expire threads.
   */
   public static int getMaxExpireThreads(IThreadContext threadContext)
@@ -1378,8 +1397,11 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
   public static final int READRESULT_FOUND = 1;
   public static final int READRESULT_NOTALLOWED = 2;
   
+  /** Number of jobs read at a time when listing jobs */
+  protected static final int JOB_PAGE_SIZE = 200;
+  
   /** Read jobs */
-  protected static int apiReadJobs(IThreadContext tc, Configuration output, IAuthorizer authorizer)
+  protected static int apiReadJobs(IThreadContext tc, Configuration output, JSONConfigurationWriter rowOutput, IAuthorizer authorizer)
     throws ManifoldCFException
   {
     if (!authorizer.checkAllowed(tc, IAuthorizer.CAPABILITY_VIEW_JOBS))
@@ -1388,13 +1410,26 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
     try
     {
       IJobManager jobManager = JobManagerFactory.make(tc);
-      IJobDescription[] jobs = jobManager.getAllJobs();
-      int i = 0;
-      while (i < jobs.length)
-      {
-        ConfigurationNode jobNode = new ConfigurationNode(API_JOBNODE);
-        formatJobDescription(jobNode,jobs[i++]);
-        output.addChild(output.getChildCount(),jobNode);
+      // Load the jobs a page at a time, so they are never all in memory together when streaming
+      Long[] jobIDs = jobManager.getAllJobIDs();
+      int start = 0;
+      while (start < jobIDs.length)
+      {
+        int end = Math.min(start + JOB_PAGE_SIZE, jobIDs.length);
+        IJobDescription[] jobs = jobManager.loadMultiple(Arrays.copyOfRange(jobIDs,start,end));
+        start = end;
+        for (IJobDescription job : jobs)
+        {
+          // Deleted since the identifiers were read
+          if (job == null)
+            continue;
+          ConfigurationNode jobNode = new ConfigurationNode(API_JOBNODE);
+          formatJobDescription(jobNode,job);
+          if (rowOutput != null)
+            rowOutput.addChild(jobNode);
+          else
+            output.addChild(output.getChildCount(),jobNode);
+        }
       }
     }
     catch (ManifoldCFException e)
@@ -2676,10 +2711,11 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
     docStatus.put("waitingforexpiration",new Integer(IJobManager.DOCSTATUS_WAITINGFOREXPIRATION));
     docStatus.put("waitingforever",new Integer(IJobManager.DOCSTATUS_WAITINGFOREVER));
     docStatus.put("hopcountexceeded",new Integer(IJobManager.DOCSTATUS_HOPCOUNTEXCEEDED));
+    docStatus.put("quarantined",new Integer(IJobManager.DOCSTATUS_QUARANTINED));
   }
 
   /** Queue reports */
-  protected static int apiReadRepositoryConnectionQueue(IThreadContext tc, Configuration output,
+  protected static int apiReadRepositoryConnectionQueue(IThreadContext tc, Configuration output, JSONConfigurationWriter rowOutput,
     String connectionName, Map<String,List<String>> queryParameters, IAuthorizer authorizer) throws ManifoldCFException
   {
     if (!authorizer.checkAllowed(tc, IAuthorizer.CAPABILITY_VIEW_REPORTS))
@@ -2826,16 +2862,22 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
       
     if (reportType.equals("document"))
     {
+      resultColumns = new String[]{"identifier","job","state","status","scheduled","action","retrycount","retrylimit"};
       try
       {
-        result = jobManager.genDocumentStatus(connectionName,filterCriteria,sortOrder,startRow,rowCount);
+        if (rowOutput == null)
+          result = jobManager.genDocumentStatus(connectionName,filterCriteria,sortOrder,startRow,rowCount);
+        else
+        {
+          jobManager.genDocumentStatus(connectionName,filterCriteria,sortOrder,startRow,rowCount,new ResultRowWriter(rowOutput,resultColumns));
+          result = null;
+        }
       }
       catch (ManifoldCFException e)
       {
         createErrorNode(output,e);
         return READRESULT_FOUND;
       }
-      resultColumns = new String[]{"identifier","job","state","status","scheduled","action","retrycount","retrylimit"};
     }
     else if (reportType.equals("status"))
     {
@@ -2859,22 +2901,29 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
       else
         idBucket = new BucketDescription(idBucketList.get(0),isInsensitiveIdBucket);
         
+      resultColumns = new String[]{"idbucket","inactive","processing","expiring","deleting",
+        "processready","expireready","processwaiting","expirewaiting","waitingforever","hopcountexceeded"};
       try
       {
-        result = jobManager.genQueueStatus(connectionName,filterCriteria,sortOrder,idBucket,startRow,rowCount);
+        if (rowOutput == null)
+          result = jobManager.genQueueStatus(connectionName,filterCriteria,sortOrder,idBucket,startRow,rowCount);
+        else
+        {
+          jobManager.genQueueStatus(connectionName,filterCriteria,sortOrder,idBucket,startRow,rowCount,new ResultRowWriter(rowOutput,resultColumns));
+          result = null;
+        }
       }
       catch (ManifoldCFException e)
       {
         createErrorNode(output,e);
         return READRESULT_FOUND;
       }
-      resultColumns = new String[]{"idbucket","inactive","processing","expiring","deleting",
-        "processready","expireready","processwaiting","expirewaiting","waitingforever","hopcountexceeded"};
     }
     else
       throw new ManifoldCFException("Unknown report type '"+reportType+"'.");
 
-    createResultsetNode(output,result,resultColumns);
+    if (result != null)
+      createResultsetNode(output,result,resultColumns);
     return READRESULT_FOUND;
   }
   
@@ -2910,7 +2959,7 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
   }
   
   /** History reports */
-  protected static int apiReadRepositoryConnectionHistory(IThreadContext tc, Configuration output,
+  protected static int apiReadRepositoryConnectionHistory(IThreadContext tc, Configuration output, JSONConfigurationWriter rowOutput,
     String connectionName, Map<String,List<String>> queryParameters, IAuthorizer authorizer) throws ManifoldCFException
   {
     if (!authorizer.checkAllowed(tc, IAuthorizer.CAPABILITY_VIEW_REPORTS))
@@ -3054,24 +3103,25 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
       
     if (reportType.equals("simple"))
     {
+      resultColumns = new String[]{"starttime","resultcode","resultdesc","identifier","activity","bytes","elapsedtime"};
       try
       {
-        result = connectionManager.genHistorySimple(connectionName,filterCriteria,sortOrder,startRow,rowCount);
+        if (rowOutput == null)
+          result = connectionManager.genHistorySimple(connectionName,filterCriteria,sortOrder,startRow,rowCount);
+        else
+        {
+          connectionManager.genHistorySimple(connectionName,filterCriteria,sortOrder,startRow,rowCount,new ResultRowWriter(rowOutput,resultColumns));
+          result = null;
+        }
       }
       catch (ManifoldCFException e)
       {
         createErrorNode(output,e);
         return READRESULT_FOUND;
       }
-      resultColumns = new String[]{"starttime","resultcode","resultdesc","identifier","activity","bytes","elapsedtime"};
     }
     else if (reportType.equals("maxactivity"))
     {
-      long maxInterval = connectionManager.getMaxRows();
-      long actualRows = connectionManager.countHistoryRows(connectionName,filterCriteria);
-      if (actualRows > maxInterval)
-        throw new ManifoldCFException("Too many history rows specified for maxactivity report - actual is "+actualRows+", max is "+maxInterval+".");
-        
       BucketDescription idBucket;
       List<String> idBucketList = queryParameters.get("idbucket");
       List<String> idBucketInsensitiveList = queryParameters.get("idbucket_insensitive");
@@ -3100,25 +3150,31 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
         throw new ManifoldCFException("Multiple intervals specified.");
       else
         interval = new Long(intervalList.get(0)).longValue();
+
+      long maxInterval = connectionManager.getMaxRows();
+      long actualRows = connectionManager.countHistoryRows(connectionName,filterCriteria,idBucket,interval);
+      if (actualRows > maxInterval)
+        throw new ManifoldCFException("Too many history rows specified for maxactivity report - actual is "+actualRows+", max is "+maxInterval+".");
         
+      resultColumns = new String[]{"starttime","endtime","activitycount","idbucket"};
       try
       {
-        result = connectionManager.genHistoryActivityCount(connectionName,filterCriteria,sortOrder,idBucket,interval,startRow,rowCount);
+        if (rowOutput == null)
+          result = connectionManager.genHistoryActivityCount(connectionName,filterCriteria,sortOrder,idBucket,interval,startRow,rowCount);
+        else
+        {
+          connectionManager.genHistoryActivityCount(connectionName,filterCriteria,sortOrder,idBucket,interval,startRow,rowCount,new ResultRowWriter(rowOutput,resultColumns));
+          result = null;
+        }
       }
       catch (ManifoldCFException e)
       {
         createErrorNode(output,e);
         return READRESULT_FOUND;
       }
-      resultColumns = new String[]{"starttime","endtime","activitycount","idbucket"};
     }
     else if (reportType.equals("maxbandwidth"))
     {
-      long maxInterval = connectionManager.getMaxRows();
-      long actualRows = connectionManager.countHistoryRows(connectionName,filterCriteria);
-      if (actualRows > maxInterval)
-        throw new ManifoldCFException("Too many history rows specified for maxbandwidth report - actual is "+actualRows+", max is "+maxInterval+".");
-        
       BucketDescription idBucket;
       List<String> idBucketList = queryParameters.get("idbucket");
       List<String> idBucketInsensitiveList = queryParameters.get("idbucket_insensitive");
@@ -3148,16 +3204,27 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
       else
         interval = new Long(intervalList.get(0)).longValue();
 
+      long maxInterval = connectionManager.getMaxRows();
+      long actualRows = connectionManager.countHistoryRows(connectionName,filterCriteria,idBucket,interval);
+      if (actualRows > maxInterval)
+        throw new ManifoldCFException("Too many history rows specified for maxbandwidth report - actual is "+actualRows+", max is "+maxInterval+".");
+
+      resultColumns = new String[]{"starttime","endtime","bytecount","idbucket"};
       try
       {
-        result = connectionManager.genHistoryByteCount(connectionName,filterCriteria,sortOrder,idBucket,interval,startRow,rowCount);
+        if (rowOutput == null)
+          result = connectionManager.genHistoryByteCount(connectionName,filterCriteria,sortOrder,idBucket,interval,startRow,rowCount);
+        else
+        {
+          connectionManager.genHistoryByteCount(connectionName,filterCriteria,sortOrder,idBucket,interval,startRow,rowCount,new ResultRowWriter(rowOutput,resultColumns));
+          result = null;
+        }
       }
       catch (ManifoldCFException e)
       {
         createErrorNode(output,e);
         return READRESULT_FOUND;
       }
-      resultColumns = new String[]{"starttime","endtime","bytecount","idbucket"};
     }
     else if (reportType.equals("result"))
     {
@@ -3201,21 +3268,28 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
       else
         resultCodeBucket = new BucketDescription(resultCodeBucketList.get(0),isInsensitiveResultCodeBucket);
 
+      resultColumns = new String[]{"idbucket","resultcodebucket","eventcount"};
       try
       {
-        result = connectionManager.genHistoryResultCodes(connectionName,filterCriteria,sortOrder,resultCodeBucket,idBucket,startRow,rowCount);
+        if (rowOutput == null)
+          result = connectionManager.genHistoryResultCodes(connectionName,filterCriteria,sortOrder,resultCodeBucket,idBucket,startRow,rowCount);
+        else
+        {
+          connectionManager.genHistoryResultCodes(connectionName,filterCriteria,sortOrder,resultCodeBucket,idBucket,startRow,rowCount,new ResultRowWriter(rowOutput,resultColumns));
+          result = null;
+        }
       }
       catch (ManifoldCFException e)
       {
         createErrorNode(output,e);
         return READRESULT_FOUND;
       }
-      resultColumns = new String[]{"idbucket","resultcodebucket","eventcount"};
     }
     else
       throw new ManifoldCFException("Unknown report type '"+reportType+"'.");
 
-    createResultsetNode(output,result,resultColumns);
+    if (result != null)
+      createResultsetNode(output,result,resultColumns);
     return READRESULT_FOUND;
   }
   
@@ -3226,26 +3300,51 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
     // Go through result set and add results to output
     for (int i = 0; i < result.getRowCount(); i++)
     {
-      IResultRow row = result.getRow(i);
-      ConfigurationNode rowValue = new ConfigurationNode(API_ROWNODE);
-      for (String columnName : resultColumns)
-      {
-        ConfigurationNode columnValue = new ConfigurationNode(API_COLUMNNODE);
-        Object value = row.getValue(columnName);
-        String valueToUse;
-        if (value == null)
-          valueToUse = "";
-        else
-          valueToUse = value.toString();
-        ConfigurationNode nameNode = new ConfigurationNode(API_NAMENODE);
-        nameNode.setValue(columnName);
-        columnValue.addChild(columnValue.getChildCount(),nameNode);
-        ConfigurationNode valueNode = new ConfigurationNode(API_VALUENODE);
-        valueNode.setValue(valueToUse);
-        columnValue.addChild(columnValue.getChildCount(),valueNode);
-        rowValue.addChild(rowValue.getChildCount(),columnValue);
-      }
-      output.addChild(output.getChildCount(),rowValue);
+      output.addChild(output.getChildCount(),createRowNode(result.getRow(i),resultColumns));
+    }
+  }
+  
+  /** Build the node describing one result row. */
+  protected static ConfigurationNode createRowNode(IResultRow row, String[] resultColumns)
+  {
+    ConfigurationNode rowValue = new ConfigurationNode(API_ROWNODE);
+    for (String columnName : resultColumns)
+    {
+      ConfigurationNode columnValue = new ConfigurationNode(API_COLUMNNODE);
+      Object value = row.getValue(columnName);
+      String valueToUse;
+      if (value == null)
+        valueToUse = "";
+      else
+        valueToUse = value.toString();
+      ConfigurationNode nameNode = new ConfigurationNode(API_NAMENODE);
+      nameNode.setValue(columnName);
+      columnValue.addChild(columnValue.getChildCount(),nameNode);
+      ConfigurationNode valueNode = new ConfigurationNode(API_VALUENODE);
+      valueNode.setValue(valueToUse);
+      columnValue.addChild(columnValue.getChildCount(),valueNode);
+      rowValue.addChild(rowValue.getChildCount(),columnValue);
+    }
+    return rowValue;
+  }
+  
+  /** Row handler that writes each report row straight to a streamed response. */
+  protected static class ResultRowWriter implements IResultRowHandler
+  {
+    protected final JSONConfigurationWriter rowOutput;
+    protected final String[] resultColumns;
+    
+    public ResultRowWriter(JSONConfigurationWriter rowOutput, String[] resultColumns)
+    {
+      this.rowOutput = rowOutput;
+      this.resultColumns = resultColumns;
+    }
+    
+    @Override
+    public void handleRow(IResultRow row)
+      throws ManifoldCFException
+    {
+      rowOutput.addChild(createRowNode(row,resultColumns));
     }
   }
   
@@ -3278,6 +3377,62 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
     return READRESULT_FOUND;
   }
   
+  /** Check whether a read command can produce output large enough that it should be streamed.
+  *@param path is the object path.
+  *@return true if executeStreamingReadCommand() should be used for this path.
+  */
+  public static boolean isStreamingReadCommand(String path)
+  {
+    return path.equals("jobs") ||
+      path.startsWith("repositoryconnectionhistory/") ||
+      path.startsWith("repositoryconnectionqueue/");
+  }
+  
+  /** Check whether the output of a command contains an error.
+  *@param output is the output object.
+  *@return true if there is an error node among the output's children.
+  */
+  public static boolean hasErrorNode(Configuration output)
+  {
+    for (int i = 0; i < output.getChildCount(); i++)
+    {
+      if (output.findChild(i).getType().equals(API_ERRORNODE))
+        return true;
+    }
+    return false;
+  }
+  
+  /** Execute specified read command, writing its rows (or jobs) to a streamed response as they are produced.
+  * Anything else the command outputs, such as an error, is placed in the output object instead, and
+  * should be written after the streamed nodes.
+  *@param tc is the thread context.
+  *@param output is the output object, to be filled in.
+  *@param rowOutput is the stream to write the bulk of the output to.
+  *@param path is the object path.
+  *@return read status - either found, not found, or bad args
+  */
+  public static int executeStreamingReadCommand(IThreadContext tc, Configuration output, JSONConfigurationWriter rowOutput,
+    String path, Map<String,List<String>> queryParameters, IAuthorizer authorizer) throws ManifoldCFException
+  {
+    if (path.equals("jobs"))
+    {
+      return apiReadJobs(tc,output,rowOutput,authorizer);
+    }
+    else if (path.startsWith("repositoryconnectionhistory/"))
+    {
+      int firstSeparator = "repositoryconnectionhistory/".length();
+      String connectionName = decodeAPIPathElement(path.substring(firstSeparator));
+      return apiReadRepositoryConnectionHistory(tc,output,rowOutput,connectionName,queryParameters,authorizer);
+    }
+    else if (path.startsWith("repositoryconnectionqueue/"))
+    {
+      int firstSeparator = "repositoryconnectionqueue/".length();
+      String connectionName = decodeAPIPathElement(path.substring(firstSeparator));
+      return apiReadRepositoryConnectionQueue(tc,output,rowOutput,connectionName,queryParameters,authorizer);
+    }
+    return executeReadCommand(tc,output,path,queryParameters,authorizer);
+  }
+  
   /** Execute specified read command.
   *@param tc is the thread context.
   *@param output is the output object, to be filled in.
@@ -3289,7 +3444,7 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
   {
     if (path.equals("jobs"))
     {
-      return apiReadJobs(tc,output,authorizer);
+      return apiReadJobs(tc,output,null,authorizer);
     }
     else if (path.startsWith("jobs/"))
     {
@@ -3306,13 +3461,13 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
     {
       int firstSeparator = "repositoryconnectionhistory/".length();
       String connectionName = decodeAPIPathElement(path.substring(firstSeparator));
-      return apiReadRepositoryConnectionHistory(tc,output,connectionName,queryParameters,authorizer);
+      return apiReadRepositoryConnectionHistory(tc,output,null,connectionName,queryParameters,authorizer);
     }
     else if (path.startsWith("repositoryconnectionqueue/"))
     {
       int firstSeparator = "repositoryconnectionqueue/".length();
       String connectionName = decodeAPIPathElement(path.substring(firstSeparator));
-      return apiReadRepositoryConnectionQueue(tc,output,connectionName,queryParameters,authorizer);
+      return apiReadRepositoryConnectionQueue(tc,output,null,connectionName,queryParameters,authorizer);
     }
     else if (path.startsWith("repositoryconnectionjobs/"))
     {
@@ -4416,6 +4571,7 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
   protected static final String JOBNODE_RECRAWLINTERVAL = "recrawl_interval";
   protected static final String JOBNODE_EXPIRATIONINTERVAL = "expiration_interval";
   protected static final String JOBNODE_RESEEDINTERVAL = "reseed_interval";
+  protected static final String JOBNODE_PROCESSINGBUDGET = "processing_budget";
   protected static final String JOBNODE_HOPCOUNT = "hopcount";
   protected static final String JOBNODE_SCHEDULE = "schedule";
   protected static final String JOBNODE_LINKTYPE = "link_type";
@@ -4584,6 +4740,17 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
       {
         jobDescription.setReseedInterval(interpretInterval(child.getValue()));
       }
+      else if (childType.equals(JOBNODE_PROCESSINGBUDGET))
+      {
+        try
+        {
+          jobDescription.setProcessingBudget(new Long(child.getValue()));
+        }
+        catch (NumberFormatException e)
+        {
+          throw new ManifoldCFException(e.getMessage(),e);
+        }
+      }
       else if (childType.equals(JOBNODE_HOPCOUNT))
       {
         // Read the hopcount values
@@ -4883,6 +5050,14 @@ public class ManifoldCF extends org.apache.manifoldcf.agents.system.ManifoldCF
     child.setValue((job.getReseedInterval()==null)?"infinite":job.getReseedInterval().toString());
     jobNode.addChild(jobNode.getChildCount(),child);
 
+    // Processing budget; absent means the system default applies
+    if (job.getProcessingBudget() != null)
+    {
+      child = new ConfigurationNode(JOBNODE_PROCESSINGBUDGET);
+      child.setValue(job.getProcessingBudget().toString());
+      jobNode.addChild(jobNode.getChildCount(),child);
+    }
+
     // Hopcount records
     Map filters = job.getHopCountFilters();
     Iterator iter = filters.keySet().iterator();
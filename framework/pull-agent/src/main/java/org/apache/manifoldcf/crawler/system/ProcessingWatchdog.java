@@ -0,0 +1,157 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.system;
+
+import java.util.*;
+
+/** This class keeps track of how long each worker thread has spent processing its current set of documents.
+* A worker thread registers a deadline before it hands a set to its connector, and deregisters when the
+* connector returns.  The watchdog thread periodically interrupts every worker that is past its deadline, and
+* marks it as expired, so that the worker can tell a budget interruption apart from a shutdown.
+*
+* A thread has only one interrupt flag, so once the watchdog has interrupted a worker, a shutdown interrupt
+* arriving at the same time cannot be told apart from it.  The agent therefore tells the watchdog when it is
+* shutting down, and the watchdog leaves the worker interrupted from then on.
+*/
+public class ProcessingWatchdog
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  /** Deadlines of the threads currently processing, keyed by thread */
+  protected final Map<Thread,Deadline> deadlines = new HashMap<Thread,Deadline>();
+  /** Set once the agent has begun shutting down */
+  protected boolean shuttingDown = false;
+
+  /** Constructor.
+  */
+  public ProcessingWatchdog()
+  {
+  }
+
+  /** Note that the current thread is about to process a set of documents.
+  *@param currentTime is the current time in ms since epoch.
+  *@param budget is the processing budget in ms; zero or less means there is no limit.
+  */
+  public synchronized void beginProcessing(long currentTime, long budget)
+  {
+    if (budget > 0L)
+      deadlines.put(Thread.currentThread(),new Deadline(currentTime + budget));
+  }
+
+  /** Check whether the current thread has run past its processing budget.
+  *@return true if the watchdog has interrupted the current thread.
+  */
+  public synchronized boolean isExpired()
+  {
+    Deadline deadline = deadlines.get(Thread.currentThread());
+    return deadline != null && deadline.isExpired();
+  }
+
+  /** Note that the current thread is done processing its set of documents.
+  * If the watchdog interrupted the thread, that interruption is cleared, so that the thread can go on to
+  * dispose of the documents.  Any other interruption is left alone.
+  *@return true if the thread ran past its processing budget.
+  */
+  public synchronized boolean endProcessing()
+  {
+    Deadline deadline = deadlines.remove(Thread.currentThread());
+    if (deadline == null)
+      return false;
+    if (deadline.isInterruptPending())
+    {
+      // Clearing the flag also clears any shutdown interruption that came in with ours, so put that back
+      Thread.interrupted();
+      if (shuttingDown)
+        Thread.currentThread().interrupt();
+    }
+    return deadline.isExpired();
+  }
+
+  /** Note that the agent is shutting down.  Call this before interrupting the worker threads, so that
+  * endProcessing() does not clear their interruptions.
+  */
+  public synchronized void noteShutdown()
+  {
+    shuttingDown = true;
+  }
+
+  /** Interrupt every thread that is past its deadline.  Threads that were interrupted before, but that are
+  * still processing, are interrupted again, in case the connector swallowed the first interruption.
+  *@param currentTime is the current time in ms since epoch.
+  *@return the names of the threads that went past their deadline since the last check.
+  */
+  public synchronized List<String> interruptExpired(long currentTime)
+  {
+    List<String> rval = new ArrayList<String>();
+    for (Map.Entry<Thread,Deadline> entry : deadlines.entrySet())
+    {
+      Deadline deadline = entry.getValue();
+      if (deadline.getDeadlineTime() <= currentTime)
+      {
+        if (!deadline.isExpired())
+        {
+          deadline.setExpired();
+          rval.add(entry.getKey().getName());
+        }
+        deadline.setInterruptPending();
+        entry.getKey().interrupt();
+      }
+    }
+    return rval;
+  }
+
+  /** A thread's processing deadline */
+  protected static class Deadline
+  {
+    protected final long deadlineTime;
+    protected boolean expired = false;
+    protected boolean interruptPending = false;
+
+    public Deadline(long deadlineTime)
+    {
+      this.deadlineTime = deadlineTime;
+    }
+
+    public long getDeadlineTime()
+    {
+      return deadlineTime;
+    }
+
+    public boolean isExpired()
+    {
+      return expired;
+    }
+
+    public void setExpired()
+    {
+      expired = true;
+    }
+
+    public boolean isInterruptPending()
+    {
+      return interruptPending;
+    }
+
+    public void setInterruptPending()
+    {
+      interruptPending = true;
+    }
+  }
+
+}
@@ -0,0 +1,95 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.system;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import java.util.*;
+
+/** This class describes the thread that enforces the document processing budget.
+* Once a second it interrupts every worker thread whose current set of documents has run past its job's budget.
+*/
+public class ProcessingWatchdogThread extends Thread
+{
+  public static final String _rcsid = "@(#)$Id$";
+
+  // Local data
+  /** The watchdog */
+  protected final ProcessingWatchdog watchdog;
+  /** Process ID */
+  protected final String processID;
+
+  /** Constructor.
+  */
+  public ProcessingWatchdogThread(ProcessingWatchdog watchdog, String processID)
+    throws ManifoldCFException
+  {
+    super();
+    this.watchdog = watchdog;
+    this.processID = processID;
+    setName("Processing watchdog thread");
+    setDaemon(true);
+  }
+
+  public void run()
+  {
+    try
+    {
+      // Loop
+      while (true)
+      {
+        if (Thread.currentThread().isInterrupted())
+          break;
+
+        // Do another try/catch around everything in the loop
+        try
+        {
+          List<String> expiredThreads = watchdog.interruptExpired(System.currentTimeMillis());
+          for (String threadName : expiredThreads)
+          {
+            Logging.threads.warn("'"+threadName+"' exceeded its document processing budget; interrupting it");
+          }
+          ManifoldCF.sleep(1000L);
+        }
+        catch (InterruptedException e)
+        {
+          break;
+        }
+        catch (OutOfMemoryError e)
+        {
+          System.err.println("agents process ran out of memory - shutting down");
+          e.printStackTrace(System.err);
+          System.exit(-200);
+        }
+        catch (Throwable e)
+        {
+          // A more severe error - but stay alive
+          Logging.threads.fatal("Error tossed: "+e.getMessage(),e);
+        }
+      }
+    }
+    catch (Throwable e)
+    {
+      // Severe error on initialization
+      System.err.println("agents process could not start - shutting down");
+      Logging.threads.fatal("ProcessingWatchdogThread initialization error tossed: "+e.getMessage(),e);
+      System.exit(-300);
+    }
+  }
+
+}
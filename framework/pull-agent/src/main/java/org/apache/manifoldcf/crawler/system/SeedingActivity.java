@@ -32,8 +32,8 @@ public class SeedingActivity implements ISeedingActivity
 {
   public static final String _rcsid = "@(#)$Id: SeedingActivity.java 988245 2010-08-23 18:39:35Z kwright $";
 
-  // This is the maximum number of documents passed to the queue at one time.
-  protected static final int MAX_COUNT = 100;
+  // This is the default maximum number of documents passed to the queue at one time.
+  protected static final int DEFAULT_MAX_COUNT = 100;
 
   // Variables
   protected final String processID;
@@ -48,11 +48,13 @@ public class SeedingActivity implements ISeedingActivity
   protected final boolean overrideSchedule;
   protected final int hopcountMethod;
   
-  protected final String[] documentHashList = new String[MAX_COUNT];
-  protected final String[] documentList = new String[MAX_COUNT];
-  protected final String[][] documentPrereqList = new String[MAX_COUNT][];
+  protected final int maxCount;
+  
+  protected final String[] documentHashList;
+  protected final String[] documentList;
+  protected final String[][] documentPrereqList;
   protected int documentCount = 0;
-  protected final String[] remainingDocumentHashList = new String[MAX_COUNT];
+  protected final String[] remainingDocumentHashList;
   protected int remainingDocumentCount = 0;
 
   /** Constructor.
@@ -61,6 +63,20 @@ public class SeedingActivity implements ISeedingActivity
     IJobManager jobManager,
     IReprioritizationTracker rt, IRepositoryConnection connection, IRepositoryConnector connector,
     Long jobID, String[] legalLinkTypes, boolean overrideSchedule, int hopcountMethod, String processID)
+  {
+    this(connectionName,connManager,jobManager,rt,connection,connector,jobID,legalLinkTypes,overrideSchedule,hopcountMethod,processID,
+      DEFAULT_MAX_COUNT);
+  }
+
+  /** Constructor.
+  *@param maxCount is the maximum number of documents passed to the queue at one time.  Larger batches of seeds without
+  * prerequisites are merged into the queue in bulk.
+  */
+  public SeedingActivity(String connectionName, IRepositoryConnectionManager connManager,
+    IJobManager jobManager,
+    IReprioritizationTracker rt, IRepositoryConnection connection, IRepositoryConnector connector,
+    Long jobID, String[] legalLinkTypes, boolean overrideSchedule, int hopcountMethod, String processID,
+    int maxCount)
   {
     this.processID = processID;
     this.connectionName = connectionName;
@@ -73,6 +89,11 @@ public class SeedingActivity implements ISeedingActivity
     this.legalLinkTypes = legalLinkTypes;
     this.overrideSchedule = overrideSchedule;
     this.hopcountMethod = hopcountMethod;
+    this.maxCount = maxCount;
+    this.documentHashList = new String[maxCount];
+    this.documentList = new String[maxCount];
+    this.documentPrereqList = new String[maxCount][];
+    this.remainingDocumentHashList = new String[maxCount];
   }
 
   /** Record a "seed" document identifier.
@@ -92,7 +113,7 @@ public class SeedingActivity implements ISeedingActivity
   public void addSeedDocument(String documentIdentifier, String[] prereqEventNames)
     throws ManifoldCFException
   {
-    if (documentCount == MAX_COUNT)
+    if (documentCount == maxCount)
     {
       // Prioritize and write the seed documents.
       writeSeedDocuments(documentHashList,documentList,documentPrereqList);
@@ -140,7 +161,7 @@ public class SeedingActivity implements ISeedingActivity
   public void addUnqueuedSeedDocument(String documentIdentifier)
     throws ManifoldCFException
   {
-    if (remainingDocumentCount == MAX_COUNT)
+    if (remainingDocumentCount == maxCount)
     {
       // Flush the remaining documents
       jobManager.addRemainingDocumentsInitial(processID,jobID,legalLinkTypes,remainingDocumentHashList,hopcountMethod);
@@ -142,7 +142,8 @@ public class SeedingThread extends Thread
 
                     SeedingActivity activity = new SeedingActivity(connection.getName(),connectionMgr,
                       jobManager,rt,
-                      connection,connector,jobID,legalLinkTypes,false,hopcountMethod,processID);
+                      connection,connector,jobID,legalLinkTypes,false,hopcountMethod,processID,
+                      ManifoldCF.getSeedingBatchSize(threadContext));
 
                     if (Logging.threads.isDebugEnabled())
                       Logging.threads.debug("Seeding thread: Getting seeds for job "+jobID.toString());
@@ -145,6 +145,10 @@ public class SetPriorityThread extends Thread
             }
 
             Logging.threads.debug("Done reprioritizing because no more documents to reprioritize");
+            // This thread keeps its timed wait rather than waiting on a lock manager event.  Documents come to need
+            // a priority through most job queue updates (queuing, requeuing, scan preparation, priority resets), and
+            // blocking documents are handed over within this process only, so no single event covers its work.
+            // One indexed query every few seconds is cheap when there is nothing to do.
             ManifoldCF.sleep(5000L);
             break;
 
@@ -58,6 +58,7 @@ public class StartDeleteThread extends Thread
       // Create a thread context object.
       IThreadContext threadContext = ThreadContextFactory.make();
       IJobManager jobManager = JobManagerFactory.make(threadContext);
+      ILockManager lockManager = LockManagerFactory.make(threadContext);
       IRepositoryConnectionManager connectionMgr = RepositoryConnectionManagerFactory.make(threadContext);
 
       IDBInterface database = DBInterfaceFactory.make(threadContext,
@@ -84,13 +85,14 @@ public class StartDeleteThread extends Thread
 
           // See if there are any starting jobs.
           // Note: Since this following call changes the job state, we must be careful to reset it on any kind of failure.
+          long jobsEventCount = lockManager.getEventCount(IJobManager.EVENT_JOBSCHANGED);
           JobDeleteRecord[] deleteJobs = jobManager.getJobsReadyForDeleteCleanup(processID);
           try
           {
 
             if (deleteJobs.length == 0)
             {
-              ManifoldCF.sleep(waitTime);
+              lockManager.waitForEvent(IJobManager.EVENT_JOBSCHANGED,jobsEventCount,waitTime);
               continue;
             }
 
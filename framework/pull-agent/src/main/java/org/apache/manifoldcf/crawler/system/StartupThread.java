@@ -59,6 +59,7 @@ public class StartupThread extends Thread
       // Create a thread context object.
       IThreadContext threadContext = ThreadContextFactory.make();
       IJobManager jobManager = JobManagerFactory.make(threadContext);
+      ILockManager lockManager = LockManagerFactory.make(threadContext);
       IRepositoryConnectionManager connectionMgr = RepositoryConnectionManagerFactory.make(threadContext);
       IReprioritizationTracker rt = ReprioritizationTrackerFactory.make(threadContext);
 
@@ -83,13 +84,14 @@ public class StartupThread extends Thread
 
           // See if there are any starting jobs.
           // Note: Since this following call changes the job state, we must be careful to reset it on any kind of failure.
+          long jobsEventCount = lockManager.getEventCount(IJobManager.EVENT_JOBSCHANGED);
           JobStartRecord[] startupJobs = jobManager.getJobsReadyForStartup(processID);
           try
           {
 
             if (startupJobs.length == 0)
             {
-              ManifoldCF.sleep(waitTime);
+              lockManager.waitForEvent(IJobManager.EVENT_JOBSCHANGED,jobsEventCount,waitTime);
               continue;
             }
 
@@ -146,7 +148,8 @@ public class StartupThread extends Thread
                   {
                     SeedingActivity activity = new SeedingActivity(connection.getName(),connectionMgr,
                       jobManager,rt,
-                      connection,connector,jobID,legalLinkTypes,true,hopcountMethod,processID);
+                      connection,connector,jobID,legalLinkTypes,true,hopcountMethod,processID,
+                      ManifoldCF.getSeedingBatchSize(threadContext));
 
                     if (Logging.threads.isDebugEnabled())
                       Logging.threads.debug("Adding initial seed documents for job "+jobID.toString()+"...");
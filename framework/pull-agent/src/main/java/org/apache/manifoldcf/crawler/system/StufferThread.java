@@ -133,13 +133,9 @@ public class StufferThread extends Thread
           resetManager.waitForReset(threadContext);
 
           // System.out.println("Waiting...");
-          // Wait until queue is below low water mark.
-          boolean isEmpty = documentQueue.checkIfEmpty(lowWaterMark);
-          if (isEmpty == false)
-          {
-            ManifoldCF.sleep(1000L);
+          // Wait until queue is below low water mark.  The worker threads wake us up as soon as it is.
+          if (documentQueue.waitForEmpty(lowWaterMark,1000L) == false)
             continue;
-          }
           long queueNeededTime = System.currentTimeMillis();
 
           Logging.threads.debug("Document stuffer thread woke up");
@@ -181,6 +177,8 @@ public class StufferThread extends Thread
             lockManager.leaveWriteLock(stufferThreadLockName);
           }
 
+          // Note the event count before looking, so that documents queued while we look still wake us up
+          long queuedEventCount = lockManager.getEventCount(IJobManager.EVENT_DOCUMENTSQUEUED);
           lastQueueStart = System.currentTimeMillis();
           DepthStatistics depthStatistics = new DepthStatistics();
           DocumentDescription[] descs = jobManager.getNextDocuments(processID,stuffAmt,stuffingEndTime,stuffingEndTime-stuffingStartTime,
@@ -199,11 +197,11 @@ public class StufferThread extends Thread
             Logging.threads.debug("Stuffer thread: Found "+Integer.toString(descs.length)+" documents to queue");
           }
 
-          // If there are no queuable documents at all, then we can sleep for a while.
-          // The theory is that we need to allow stuff to accumulate.
+          // If there are no queuable documents at all, then we can sleep for a while, or until
+          // documents are queued.  The theory is that we need to allow stuff to accumulate.
           if (descs.length == 0)
           {
-            ManifoldCF.sleep(2000L);       // 2 seconds
+            lockManager.waitForEvent(IJobManager.EVENT_DOCUMENTSQUEUED,queuedEventCount,2000L);       // 2 seconds at most
             continue;
           }
 
@@ -33,6 +33,9 @@ public class WorkerThread extends Thread
 {
   public static final String _rcsid = "@(#)$Id: WorkerThread.java 988245 2010-08-23 18:39:35Z kwright $";
 
+  protected static final String processingBudgetProperty = "org.apache.manifoldcf.crawler.processingbudget";
+  protected static final String quarantineBaseDelayProperty = "org.apache.manifoldcf.crawler.quarantinebasedelay";
+  protected static final String quarantineMaxDelayProperty = "org.apache.manifoldcf.crawler.quarantinemaxdelay";
 
   // Local data
   /** Thread id */
@@ -43,13 +46,16 @@ public class WorkerThread extends Thread
   protected final WorkerResetManager resetManager;
   /** Queue tracker */
   protected final QueueTracker queueTracker;
+  /** Processing budget watchdog */
+  protected final ProcessingWatchdog processingWatchdog;
   /** Process ID */
   protected final String processID;
 
   /** Constructor.
   *@param id is the worker thread id.
   */
-  public WorkerThread(String id, DocumentQueue documentQueue, WorkerResetManager resetManager, QueueTracker queueTracker, String processID)
+  public WorkerThread(String id, DocumentQueue documentQueue, WorkerResetManager resetManager, QueueTracker queueTracker,
+    ProcessingWatchdog processingWatchdog, String processID)
     throws ManifoldCFException
   {
     super();
@@ -57,6 +63,7 @@ public class WorkerThread extends Thread
     this.documentQueue = documentQueue;
     this.resetManager = resetManager;
     this.queueTracker = queueTracker;
+    this.processingWatchdog = processingWatchdog;
     this.processID = processID;
     setName("Worker thread '"+id+"'");
     setDaemon(true);
@@ -81,6 +88,11 @@ public class WorkerThread extends Thread
       IReprioritizationTracker rt = ReprioritizationTrackerFactory.make(threadContext);
 
       IRepositoryConnectorPool repositoryConnectorPool = RepositoryConnectorPoolFactory.make(threadContext);
+
+      // Default zero processing budget means that document processing is never interrupted
+      long defaultProcessingBudget = LockManagerFactory.getLongProperty(threadContext,processingBudgetProperty,0L);
+      long quarantineBaseDelay = LockManagerFactory.getLongProperty(threadContext,quarantineBaseDelayProperty,300000L);
+      long quarantineMaxDelay = LockManagerFactory.getLongProperty(threadContext,quarantineMaxDelayProperty,86400000L);
       
       // This is the set of documents that we will either be marking as complete, or requeued, depending on the kind of crawl.
       List<QueuedDocument> finishList = new ArrayList<QueuedDocument>();
@@ -394,9 +406,34 @@ public class WorkerThread extends Thread
 
                       // Now, process in bulk -- catching and handling ServiceInterruptions
                       ServiceInterruption serviceInterruption = null;
+                      // Set if the watchdog interrupted the connector because the set ran past its processing budget
+                      boolean budgetExceeded = false;
                       try
                       {
-                        connector.processDocuments(documentIDs,existingVersions,job.getSpecification(),activity,jobType,isDefaultAuthority);
+                        Long jobProcessingBudget = job.getProcessingBudget();
+                        processingWatchdog.beginProcessing(System.currentTimeMillis(),
+                          (jobProcessingBudget == null)?defaultProcessingBudget:jobProcessingBudget.longValue());
+                        try
+                        {
+                          connector.processDocuments(documentIDs,existingVersions,job.getSpecification(),activity,jobType,isDefaultAuthority);
+                        }
+                        catch (ManifoldCFException e)
+                        {
+                          // However the connector reacted to the watchdog's interruption, the set is quarantined
+                          if (!processingWatchdog.isExpired())
+                            throw e;
+                          budgetExceeded = true;
+                        }
+                        catch (ServiceInterruption e)
+                        {
+                          if (!processingWatchdog.isExpired())
+                            throw e;
+                          budgetExceeded = true;
+                        }
+                        finally
+                        {
+                          processingWatchdog.endProcessing();
+                        }
                         
                         // Now do everything that the connector might have done if we were not doing it for it.
 
@@ -404,7 +441,7 @@ public class WorkerThread extends Thread
                         for (QueuedDocument qd : activeDocuments)
                         {
                           String documentIdentifier = qd.getDocumentDescription().getDocumentIdentifier();
-                          if (!activity.wasDocumentAborted(documentIdentifier) && !activity.wasDocumentDeleted(documentIdentifier))
+                          if (!budgetExceeded && !activity.wasDocumentAborted(documentIdentifier) && !activity.wasDocumentDeleted(documentIdentifier))
                           {
                             String documentIdentifierHash = qd.getDocumentDescription().getDocumentIdentifierHash();
                             // In order to be able to loop over all the components that the incremental ingester knows about, we need to know
@@ -451,6 +488,8 @@ public class WorkerThread extends Thread
                       // Either way, handle the documents we were supposed to process.  But if there was a service interruption,
                       // and the disposition of the document was unclear, then the document will need to be requeued instead of handled normally.
                       List<QueuedDocument> requeueList = new ArrayList<QueuedDocument>();
+                      // Documents from a set that ran past its processing budget
+                      List<QueuedDocument> quarantineList = new ArrayList<QueuedDocument>();
 
                       for (QueuedDocument qd : activeDocuments)
                       {
@@ -472,6 +511,13 @@ public class WorkerThread extends Thread
                             Logging.threads.debug(" Adding "+qd.getDocumentDescription().getID()+" to deleteList");
                           deleteList.add(qd);
                         }
+                        else if (budgetExceeded)
+                        {
+                          // We can't tell which document of the set was the slow one, so the whole set is held back
+                          if (Logging.threads.isDebugEnabled())
+                            Logging.threads.debug(" Adding "+qd.getDocumentDescription().getID()+" to quarantineList");
+                          quarantineList.add(qd);
+                        }
                         else if (serviceInterruption != null)
                         {
 
@@ -535,6 +581,13 @@ public class WorkerThread extends Thread
                         requeueDocuments(jobManager,requeueList,serviceInterruption.getRetryTime(),serviceInterruption.getFailTime(),
                           serviceInterruption.getFailRetryCount());
                       }
+
+                      if (quarantineList.size() > 0)
+                      {
+                        Logging.jobs.warn("Processing budget exceeded for job "+job.getID()+" connection '"+job.getConnectionName()+
+                          "'; quarantining documents "+makeListString(quarantineList));
+                        quarantineDocuments(jobManager,quarantineList,quarantineBaseDelay,quarantineMaxDelay);
+                      }
                       
                       // Note the documents that have been checked but not reingested.  This should happen BEFORE we need
                       // the statistics (which are calculated during the finishlist step below)
@@ -1128,6 +1181,26 @@ public class WorkerThread extends Thread
     }
   }
 
+  /** Quarantine documents from a set that ran past its processing budget.
+  */
+  protected static void quarantineDocuments(IJobManager jobManager, List<QueuedDocument> quarantineList, long baseDelay, long maxDelay)
+    throws ManifoldCFException
+  {
+    DocumentDescription[] quarantineDocs = new DocumentDescription[quarantineList.size()];
+
+    for (int i = 0; i < quarantineDocs.length; i++)
+    {
+      quarantineDocs[i] = quarantineList.get(i).getDocumentDescription();
+    }
+
+    jobManager.quarantineDocumentMultiple(quarantineDocs,System.currentTimeMillis(),baseDelay,maxDelay);
+
+    for (QueuedDocument qd : quarantineList)
+    {
+      qd.setProcessed();
+    }
+  }
+
   /** The maximum number of adds that happen in a single transaction */
   protected static final int MAX_ADDS_IN_TRANSACTION = 20;
 
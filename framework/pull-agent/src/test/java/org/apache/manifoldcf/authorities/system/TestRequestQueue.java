@@ -0,0 +1,81 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.authorities.system;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestRequestQueue
+{
+
+  @Test
+  public void servesOldestFirst()
+    throws Exception
+  {
+    RequestQueue<String> queue = new RequestQueue<String>(10,10,0L);
+    assertTrue(queue.addRequest("a","conn"));
+    assertTrue(queue.addRequest("b","conn"));
+    assertTrue(queue.addRequest("c","conn"));
+    assertEquals("a",queue.getRequest());
+    assertEquals("b",queue.getRequest());
+    assertEquals("c",queue.getRequest());
+    assertEquals(3L,queue.getServedCount());
+  }
+
+  @Test
+  public void rejectsWhenFull()
+    throws Exception
+  {
+    RequestQueue<String> queue = new RequestQueue<String>(2,10,0L);
+    assertTrue(queue.addRequest("a","conn"));
+    assertTrue(queue.addRequest("b","other"));
+    assertFalse(queue.addRequest("c","conn"));
+    assertEquals(1L,queue.getRejectedCount());
+    assertEquals(2,queue.getQueueSize());
+  }
+
+  @Test
+  public void limitsRequestsPerConnection()
+    throws Exception
+  {
+    RequestQueue<String> queue = new RequestQueue<String>(10,1,0L);
+    assertTrue(queue.addRequest("slow1","slow"));
+    assertTrue(queue.addRequest("slow2","slow"));
+    assertTrue(queue.addRequest("fast1","fast"));
+    assertEquals("slow1",queue.getRequest());
+    // The second slow request must wait for the first one to be released
+    assertEquals("fast1",queue.getRequest());
+    queue.releaseRequest("slow");
+    assertEquals("slow2",queue.getRequest());
+  }
+
+  @Test
+  public void rejectsStalledConnection()
+    throws Exception
+  {
+    RequestQueue<String> queue = new RequestQueue<String>(10,1,50L);
+    assertTrue(queue.addRequest("slow1","slow"));
+    assertEquals("slow1",queue.getRequest());
+    assertTrue(queue.addRequest("slow2","slow"));
+    Thread.sleep(100L);
+    assertFalse(queue.addRequest("slow3","slow"));
+    assertTrue(queue.addRequest("fast1","fast"));
+  }
+
+}
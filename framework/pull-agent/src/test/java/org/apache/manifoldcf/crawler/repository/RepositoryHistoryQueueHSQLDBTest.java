@@ -0,0 +1,287 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.repository;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.crawler.interfaces.*;
+import org.apache.manifoldcf.crawler.system.ManifoldCF;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Checks the bounded repository history queue, its overflow policies, and the hand-off between
+* the history writer thread and the threads recording history. */
+public class RepositoryHistoryQueueHSQLDBTest extends org.apache.manifoldcf.crawler.tests.ConnectorBaseHSQLDB
+{
+  protected final static String CONNECTION_NAME = "Queue Connection";
+
+  protected final static int QUEUE_SIZE = 3;
+  protected final static int BATCH_SIZE = 1000;
+  protected final static long MAX_DELAY = 600000L;
+
+  @Override
+  protected String[] getConnectorClasses()
+  {
+    return new String[]{"org.apache.manifoldcf.crawler.tests.TestingRepositoryConnector"};
+  }
+
+  @Override
+  protected String[] getConnectorNames()
+  {
+    return new String[]{"TestingConnector"};
+  }
+
+  @Before
+  public void createConnection()
+    throws Exception
+  {
+    RepositoryHistoryManager.noteWriterStopped();
+    IThreadContext tc = ThreadContextFactory.make();
+    IRepositoryConnectionManager mgr = RepositoryConnectionManagerFactory.make(tc);
+    IRepositoryConnection conn = mgr.create();
+    conn.setName(CONNECTION_NAME);
+    conn.setDescription(CONNECTION_NAME);
+    conn.setClassName("org.apache.manifoldcf.crawler.tests.TestingRepositoryConnector");
+    conn.setMaxConnections(10);
+    mgr.save(conn);
+  }
+
+  @After
+  public void stopWriter()
+    throws Exception
+  {
+    RepositoryHistoryManager.noteWriterStopped();
+  }
+
+  @Test
+  public void dropPolicyKeepsTheNewestRecords()
+    throws Exception
+  {
+    RecordingHistoryManager history = makeHistoryManager();
+    long droppedBefore = getDroppedCount();
+    List<Long> ids = new ArrayList<Long>();
+    for (int i = 0; i < 5; i++)
+    {
+      ids.add(history.queue(i,true));
+    }
+    assertEquals(2L,getDroppedCount() - droppedBefore);
+    assertEquals(ids.subList(2,5),getPendingIDs());
+    assertEquals(0,history.selfFlushCount.get());
+    history.flushPendingRecords();
+    assertEquals(3L,history.countWrittenRows());
+  }
+
+  @Test
+  public void blockPolicyWithoutWriterWritesItsOwnBatches()
+    throws Exception
+  {
+    RecordingHistoryManager history = makeHistoryManager();
+    long droppedBefore = getDroppedCount();
+    for (int i = 0; i < 5; i++)
+    {
+      history.queue(i,false);
+    }
+    // The fourth record found the queue full, so the first three were written
+    assertEquals(1,history.selfFlushCount.get());
+    assertEquals(3L,history.countWrittenRows());
+    assertEquals(2,getPendingIDs().size());
+    assertEquals(droppedBefore,getDroppedCount());
+  }
+
+  @Test
+  public void blockPolicyWaitsForTheWriter()
+    throws Exception
+  {
+    RecordingHistoryManager history = makeHistoryManager();
+    WriterThread writer = new WriterThread(makeHistoryManager());
+    writer.start();
+    try
+    {
+      waitForWriter();
+      for (int i = 0; i < 10; i++)
+      {
+        history.queue(i,false);
+        assertTrue(getPendingIDs().size() <= QUEUE_SIZE);
+      }
+    }
+    finally
+    {
+      writer.finish();
+    }
+    assertNull(writer.exception);
+    // Only the writer wrote anything
+    assertEquals(0,history.selfFlushCount.get());
+    assertEquals(10L,history.countWrittenRows() + getPendingIDs().size());
+  }
+
+  @Test
+  public void recordersTakeOverWhenTheWriterStops()
+    throws Exception
+  {
+    RecordingHistoryManager history = makeHistoryManager();
+    WriterThread writer = new WriterThread(makeHistoryManager());
+    writer.start();
+    waitForWriter();
+    writer.finish();
+    RepositoryHistoryManager.noteWriterStopped();
+    for (int i = 0; i < 4; i++)
+    {
+      history.queue(i,false);
+    }
+    assertEquals(1,history.selfFlushCount.get());
+
+    // A writer that has not checked in for too long counts as gone, too
+    synchronized (RepositoryHistoryManager.pendingRecords)
+    {
+      RepositoryHistoryManager.writerCheckInTime = System.currentTimeMillis() - RepositoryHistoryManager.WRITER_TIMEOUT - 1L;
+    }
+    for (int i = 0; i < 3; i++)
+    {
+      history.queue(i,false);
+    }
+    assertEquals(2,history.selfFlushCount.get());
+    assertEquals(6L,history.countWrittenRows());
+  }
+
+  protected static void waitForWriter()
+    throws Exception
+  {
+    long deadline = System.currentTimeMillis() + 10000L;
+    while (System.currentTimeMillis() < deadline)
+    {
+      synchronized (RepositoryHistoryManager.pendingRecords)
+      {
+        if (RepositoryHistoryManager.isWriterActive(System.currentTimeMillis()))
+          return;
+      }
+      Thread.sleep(10L);
+    }
+    fail("History writer never checked in");
+  }
+
+  protected static long getDroppedCount()
+  {
+    synchronized (RepositoryHistoryManager.pendingRecords)
+    {
+      return RepositoryHistoryManager.droppedCount;
+    }
+  }
+
+  protected static List<Long> getPendingIDs()
+  {
+    List<Long> rval = new ArrayList<Long>();
+    synchronized (RepositoryHistoryManager.pendingRecords)
+    {
+      for (HistoryRecord record : RepositoryHistoryManager.pendingRecords)
+      {
+        rval.add(record.getID());
+      }
+    }
+    return rval;
+  }
+
+  protected static RecordingHistoryManager makeHistoryManager()
+    throws ManifoldCFException
+  {
+    IThreadContext tc = ThreadContextFactory.make();
+    return new RecordingHistoryManager(tc,DBInterfaceFactory.make(tc,
+      ManifoldCF.getMasterDatabaseName(),
+      ManifoldCF.getMasterDatabaseUsername(),
+      ManifoldCF.getMasterDatabasePassword()));
+  }
+
+  /** History manager that queues with fixed limits, and notes when the calling thread writes a batch itself */
+  protected static class RecordingHistoryManager extends RepositoryHistoryManager
+  {
+    public final AtomicInteger selfFlushCount = new AtomicInteger(0);
+
+    public RecordingHistoryManager(IThreadContext tc, IDBInterface database)
+      throws ManifoldCFException
+    {
+      super(tc,database);
+    }
+
+    public Long queue(int index, boolean dropWhenFull)
+      throws ManifoldCFException
+    {
+      Long id = new Long(IDFactory.make(threadContext));
+      long startTime = System.currentTimeMillis() - 10000L;
+      queueRecord(new HistoryRecord(id,CONNECTION_NAME,startTime,startTime + 1000L,100L,"fetch","doc"+index,"200",null),
+        BATCH_SIZE,MAX_DELAY,QUEUE_SIZE,dropWhenFull);
+      return id;
+    }
+
+    @Override
+    public void flushPendingRecords()
+      throws ManifoldCFException
+    {
+      selfFlushCount.incrementAndGet();
+      super.flushPendingRecords();
+    }
+
+    public long countWrittenRows()
+      throws ManifoldCFException
+    {
+      IResultSet set = performQuery("SELECT "+constructCountClause("*")+" AS countcol FROM "+getTableName(),null,null,null);
+      return ((Long)set.getRow(0).getValue("countcol")).longValue();
+    }
+  }
+
+  /** Stands in for the history writer thread */
+  protected static class WriterThread extends Thread
+  {
+    protected final RepositoryHistoryManager history;
+    protected volatile boolean done = false;
+    public Throwable exception = null;
+
+    public WriterThread(RepositoryHistoryManager history)
+    {
+      super();
+      this.history = history;
+      setDaemon(true);
+    }
+
+    @Override
+    public void run()
+    {
+      try
+      {
+        while (!done)
+        {
+          // A full queue is due as soon as it is full
+          history.writeQueuedRecords(100L,QUEUE_SIZE,MAX_DELAY);
+        }
+      }
+      catch (Throwable e)
+      {
+        exception = e;
+      }
+    }
+
+    public void finish()
+      throws InterruptedException
+    {
+      done = true;
+      join(10000L);
+    }
+  }
+
+}
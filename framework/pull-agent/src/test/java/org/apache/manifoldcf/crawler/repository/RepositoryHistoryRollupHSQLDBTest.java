@@ -0,0 +1,224 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.repository;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.crawler.interfaces.*;
+import org.apache.manifoldcf.crawler.system.ManifoldCF;
+
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/** Checks the rolled-up repository history against a real database */
+public class RepositoryHistoryRollupHSQLDBTest extends org.apache.manifoldcf.crawler.tests.ConnectorBaseHSQLDB
+{
+  protected final static String CONNECTION_NAME = "History Connection";
+
+  @Override
+  protected String[] getConnectorClasses()
+  {
+    return new String[]{"org.apache.manifoldcf.crawler.tests.TestingRepositoryConnector"};
+  }
+
+  @Override
+  protected String[] getConnectorNames()
+  {
+    return new String[]{"TestingConnector"};
+  }
+
+  @Override
+  protected void writeProperties(StringBuilder output)
+    throws Exception
+  {
+    super.writeProperties(output);
+    // Keep records queued until something flushes them
+    output.append(
+      "  <property name=\"org.apache.manifoldcf.crawler.repository.history_batch_size\" value=\"1000\"/>\n" +
+      "  <property name=\"org.apache.manifoldcf.crawler.repository.history_max_delay\" value=\"600000\"/>\n"
+    );
+  }
+
+  @Before
+  public void createConnection()
+    throws Exception
+  {
+    IThreadContext tc = ThreadContextFactory.make();
+    IRepositoryConnectionManager mgr = RepositoryConnectionManagerFactory.make(tc);
+    IRepositoryConnection conn = mgr.create();
+    conn.setName(CONNECTION_NAME);
+    conn.setDescription(CONNECTION_NAME);
+    conn.setClassName("org.apache.manifoldcf.crawler.tests.TestingRepositoryConnector");
+    conn.setMaxConnections(10);
+    mgr.save(conn);
+  }
+
+  @Test
+  public void reportsAddUpAcrossBatches()
+    throws Exception
+  {
+    RepositoryHistoryManager history = makeHistoryManager();
+    // An hour boundary, some time ago
+    long base = RepositoryHistoryRollupManager.bucketStart(System.currentTimeMillis(),3600000L) - 2L * 3600000L;
+    addEvents(history,base + 1000L,3,"200");
+    addEvents(history,base + 5000L,2,null);
+    addEvents(history,base + 61000L,1,"404");
+
+    FilterCriteria criteria = new FilterCriteria(null,new Long(base),new Long(base + 3600000L),null,null);
+    BucketDescription allBucket = new BucketDescription("()",false);
+    BucketDescription codeBucket = new BucketDescription("(.*)",false);
+    Map<String,Long> counts = getResultCounts(history.resultCodesReport(CONNECTION_NAME,criteria,new SortOrder(),
+      codeBucket,allBucket,0,100));
+    assertEquals(new Long(3L),counts.get("200"));
+    assertEquals(new Long(2L),counts.get(null));
+    assertEquals(new Long(1L),counts.get("404"));
+
+    // A second batch updates the same rollup rows, rather than adding rows
+    addEvents(history,base + 2000L,2,"200");
+    addEvents(history,base + 6000L,1,null);
+    counts = getResultCounts(history.resultCodesReport(CONNECTION_NAME,criteria,new SortOrder(),
+      codeBucket,allBucket,0,100));
+    assertEquals(new Long(5L),counts.get("200"));
+    assertEquals(new Long(3L),counts.get(null));
+    assertEquals(3L,history.countHistoryRows(CONNECTION_NAME,criteria,allBucket,60000L));
+
+    // Result code matching treats a missing result code as the raw history does
+    FilterCriteria nullCriteria = new FilterCriteria(null,new Long(base),new Long(base + 3600000L),null,
+      new RegExpCriteria("^$",false));
+    assertEquals(0,history.resultCodesReport(CONNECTION_NAME,nullCriteria,new SortOrder(),
+      codeBucket,allBucket,0,100).getRowCount());
+
+    // The same maximum, with and without rollups (an entity match forces the raw history)
+    IResultSet fromRollups = history.maxActivityCountReport(CONNECTION_NAME,criteria,new SortOrder(),allBucket,60000L,0,100);
+    FilterCriteria rawCriteria = new FilterCriteria(null,new Long(base),new Long(base + 3600000L),
+      new RegExpCriteria(".*",false),null);
+    IResultSet fromHistory = history.maxActivityCountReport(CONNECTION_NAME,rawCriteria,new SortOrder(),allBucket,60000L,0,100);
+    assertEquals(1,fromRollups.getRowCount());
+    assertEquals(1,fromHistory.getRowCount());
+    assertEquals(8.0,new Double(fromRollups.getRow(0).getValue("activitycount").toString()).doubleValue(),0.000001);
+    assertEquals(8.0,new Double(fromHistory.getRow(0).getValue("activitycount").toString()).doubleValue(),0.000001);
+    assertEquals(base,new Long(fromRollups.getRow(0).getValue("starttime").toString()).longValue());
+  }
+
+  @Test
+  public void duplicateRollupRowAbortsTheTransaction()
+    throws Exception
+  {
+    IThreadContext tc = ThreadContextFactory.make();
+    InsertingRollupManager rollups = new InsertingRollupManager(tc,makeDatabase(tc));
+    RepositoryHistoryRollupManager.RollupKey key = new RepositoryHistoryRollupManager.RollupKey(CONNECTION_NAME,60000L,0L,"fetch",null);
+    rollups.insertRow(key);
+    try
+    {
+      rollups.insertRow(key);
+      fail("Duplicate rollup row was accepted");
+    }
+    catch (ManifoldCFException e)
+    {
+      // This is what makes the history writer retry
+      assertEquals(ManifoldCFException.DATABASE_TRANSACTION_ABORT,e.getErrorCode());
+    }
+  }
+
+  @Test
+  public void cleanupWritesQueuedHistory()
+    throws Exception
+  {
+    IThreadContext tc = ThreadContextFactory.make();
+    RepositoryHistoryManager history = makeHistoryManager();
+    long base = RepositoryHistoryRollupManager.bucketStart(System.currentTimeMillis(),60000L) - 60000L;
+    addEvents(history,base,2,"200");
+    synchronized (RepositoryHistoryManager.pendingRecords)
+    {
+      assertEquals(2,RepositoryHistoryManager.pendingRecords.size());
+    }
+    ManifoldCF.localCleanup(tc);
+    synchronized (RepositoryHistoryManager.pendingRecords)
+    {
+      assertEquals(0,RepositoryHistoryManager.pendingRecords.size());
+    }
+    // The raw history start time limit is exclusive
+    FilterCriteria criteria = new FilterCriteria(null,new Long(base - 1L),null,null,null);
+    assertEquals(2L,history.countHistoryRows(CONNECTION_NAME,criteria));
+  }
+
+  protected static void addEvents(RepositoryHistoryManager history, long startTime, int count, String resultCode)
+    throws ManifoldCFException
+  {
+    for (int i = 0; i < count; i++)
+    {
+      history.addRow(CONNECTION_NAME,startTime,startTime + 1000L,100L,"fetch","doc"+i,resultCode,null);
+    }
+  }
+
+  protected static Map<String,Long> getResultCounts(IResultSet set)
+  {
+    Map<String,Long> rval = new HashMap<String,Long>();
+    for (int i = 0; i < set.getRowCount(); i++)
+    {
+      IResultRow row = set.getRow(i);
+      rval.put((String)row.getValue("resultcodebucket"),new Long(row.getValue("eventcount").toString()));
+    }
+    return rval;
+  }
+
+  protected static IDBInterface makeDatabase(IThreadContext tc)
+    throws ManifoldCFException
+  {
+    return DBInterfaceFactory.make(tc,
+      ManifoldCF.getMasterDatabaseName(),
+      ManifoldCF.getMasterDatabaseUsername(),
+      ManifoldCF.getMasterDatabasePassword());
+  }
+
+  protected static RepositoryHistoryManager makeHistoryManager()
+    throws ManifoldCFException
+  {
+    IThreadContext tc = ThreadContextFactory.make();
+    return new RepositoryHistoryManager(tc,makeDatabase(tc));
+  }
+
+  /** Rollup manager that can insert a row without looking for an existing one first, as a concurrent
+  * writer would. */
+  protected static class InsertingRollupManager extends RepositoryHistoryRollupManager
+  {
+    public InsertingRollupManager(IThreadContext tc, IDBInterface database)
+      throws ManifoldCFException
+    {
+      super(tc,database);
+    }
+
+    public void insertRow(RollupKey key)
+      throws ManifoldCFException
+    {
+      HashMap map = new HashMap();
+      map.put(idField,new Long(IDFactory.make(threadContext)));
+      map.put(ownerNameField,key.connectionName);
+      map.put(bucketSizeField,new Long(key.bucketSize));
+      map.put(bucketTimeField,new Long(key.bucketTime));
+      map.put(activityTypeField,key.activityType);
+      map.put(resultCodeField,(key.resultCode == null)?NO_RESULTCODE:key.resultCode);
+      map.put(activityCountField,new Double(0.0));
+      map.put(byteCountField,new Double(0.0));
+      map.put(startCountField,new Long(0L));
+      performInsert(map,null);
+    }
+  }
+
+}
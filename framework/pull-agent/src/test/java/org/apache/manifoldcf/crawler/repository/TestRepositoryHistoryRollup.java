@@ -0,0 +1,148 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.repository;
+
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestRepositoryHistoryRollup
+{
+
+  protected static RepositoryHistoryRollupManager.RollupValue get(Map<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue> aggregates,
+    long bucketSize, long bucketTime, String resultCode)
+  {
+    return aggregates.get(new RepositoryHistoryRollupManager.RollupKey("conn",bucketSize,bucketTime,"fetch",resultCode));
+  }
+
+  @Test
+  public void eventWithinOneBucket()
+    throws Exception
+  {
+    Map<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue> aggregates =
+      new HashMap<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue>();
+    RepositoryHistoryRollupManager.aggregate(aggregates,"conn",60500L,61500L,100L,"fetch","200");
+    RepositoryHistoryRollupManager.aggregate(aggregates,"conn",62000L,63000L,50L,"fetch","200");
+    // One minute bucket and one hour bucket
+    assertEquals(2,aggregates.size());
+    RepositoryHistoryRollupManager.RollupValue minute = get(aggregates,60000L,60000L,"200");
+    assertEquals(2.0,minute.getActivityCount(),0.000001);
+    assertEquals(150.0,minute.getByteCount(),0.000001);
+    assertEquals(2L,minute.getStartCount());
+    RepositoryHistoryRollupManager.RollupValue hour = get(aggregates,3600000L,0L,"200");
+    assertEquals(2L,hour.getStartCount());
+  }
+
+  @Test
+  public void eventIsProratedAcrossBuckets()
+    throws Exception
+  {
+    Map<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue> aggregates =
+      new HashMap<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue>();
+    // 45 of the 80 seconds fall in the first minute, 35 in the second
+    RepositoryHistoryRollupManager.aggregate(aggregates,"conn",15000L,95000L,800L,"fetch",null);
+    RepositoryHistoryRollupManager.RollupValue first = get(aggregates,60000L,0L,null);
+    RepositoryHistoryRollupManager.RollupValue second = get(aggregates,60000L,60000L,null);
+    assertEquals(0.5625,first.getActivityCount(),0.000001);
+    assertEquals(450.0,first.getByteCount(),0.000001);
+    assertEquals(1L,first.getStartCount());
+    assertEquals(0.4375,second.getActivityCount(),0.000001);
+    assertEquals(350.0,second.getByteCount(),0.000001);
+    assertEquals(0L,second.getStartCount());
+    RepositoryHistoryRollupManager.RollupValue hour = get(aggregates,3600000L,0L,null);
+    assertEquals(1.0,hour.getActivityCount(),0.000001);
+    assertEquals(800.0,hour.getByteCount(),0.000001);
+  }
+
+  @Test
+  public void resultCodesAreKeptApart()
+    throws Exception
+  {
+    Map<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue> aggregates =
+      new HashMap<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue>();
+    RepositoryHistoryRollupManager.aggregate(aggregates,"conn",1000L,2000L,0L,"fetch","200");
+    RepositoryHistoryRollupManager.aggregate(aggregates,"conn",1000L,2000L,0L,"fetch","404");
+    RepositoryHistoryRollupManager.aggregate(aggregates,"conn",1000L,2000L,0L,"fetch",null);
+    assertEquals(1L,get(aggregates,60000L,0L,"200").getStartCount());
+    assertEquals(1L,get(aggregates,60000L,0L,"404").getStartCount());
+    assertEquals(1L,get(aggregates,60000L,0L,null).getStartCount());
+  }
+
+  @Test
+  public void longEventsAreAttributedToTheirLastBuckets()
+    throws Exception
+  {
+    Map<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue> aggregates =
+      new HashMap<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue>();
+    // Two days long, so more minute buckets than are kept per event
+    long duration = 2L * 24L * 3600000L;
+    RepositoryHistoryRollupManager.aggregate(aggregates,"conn",0L,duration,0L,"fetch","200");
+    int minuteBuckets = 0;
+    for (RepositoryHistoryRollupManager.RollupKey key : aggregates.keySet())
+    {
+      if (key.bucketSize == 60000L)
+        minuteBuckets++;
+    }
+    // The start bucket always gets its start count, even though it is before the kept range
+    assertEquals(RepositoryHistoryRollupManager.MAX_BUCKETS_PER_EVENT + 1,minuteBuckets);
+    assertEquals(1L,get(aggregates,60000L,0L,"200").getStartCount());
+    assertEquals(0.0,get(aggregates,60000L,0L,"200").getActivityCount(),0.000001);
+    assertEquals(60000.0/(double)duration,get(aggregates,60000L,duration - 60000L,"200").getActivityCount(),0.000001);
+    assertNull(get(aggregates,60000L,60000L,"200"));
+    // All 48 hour buckets fit
+    assertEquals(1.0/48.0,get(aggregates,3600000L,0L,"200").getActivityCount(),0.000001);
+  }
+
+  @Test
+  public void zeroLengthEventBelongsToItsStartBucket()
+    throws Exception
+  {
+    Map<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue> aggregates =
+      new HashMap<RepositoryHistoryRollupManager.RollupKey,RepositoryHistoryRollupManager.RollupValue>();
+    RepositoryHistoryRollupManager.aggregate(aggregates,"conn",120000L,120000L,25L,"fetch","200");
+    RepositoryHistoryRollupManager.RollupValue minute = get(aggregates,60000L,120000L,"200");
+    assertEquals(1.0,minute.getActivityCount(),0.000001);
+    assertEquals(25.0,minute.getByteCount(),0.000001);
+    assertEquals(1L,minute.getStartCount());
+    assertEquals(2,aggregates.size());
+  }
+
+  @Test
+  public void bucketStartRoundsDown()
+    throws Exception
+  {
+    assertEquals(0L,RepositoryHistoryRollupManager.bucketStart(59999L,60000L));
+    assertEquals(60000L,RepositoryHistoryRollupManager.bucketStart(60000L,60000L));
+    assertEquals(-60000L,RepositoryHistoryRollupManager.bucketStart(-1L,60000L));
+  }
+
+  @Test
+  public void rollupKeysCompareResultCodes()
+    throws Exception
+  {
+    RepositoryHistoryRollupManager.RollupKey nullKey = new RepositoryHistoryRollupManager.RollupKey("conn",60000L,0L,"fetch",null);
+    RepositoryHistoryRollupManager.RollupKey emptyKey = new RepositoryHistoryRollupManager.RollupKey("conn",60000L,0L,"fetch","");
+    assertEquals(nullKey,new RepositoryHistoryRollupManager.RollupKey("conn",60000L,0L,"fetch",null));
+    assertEquals(nullKey.hashCode(),new RepositoryHistoryRollupManager.RollupKey("conn",60000L,0L,"fetch",null).hashCode());
+    assertFalse(nullKey.equals(emptyKey));
+    assertFalse(emptyKey.equals(nullKey));
+    assertFalse(nullKey.equals(new RepositoryHistoryRollupManager.RollupKey("conn",3600000L,0L,"fetch",null)));
+  }
+
+}
@@ -0,0 +1,108 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.system;
+
+import org.apache.manifoldcf.crawler.jobs.JobQueue;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TestProcessingWatchdog
+{
+
+  @Test
+  public void withinBudget()
+    throws Exception
+  {
+    ProcessingWatchdog watchdog = new ProcessingWatchdog();
+    watchdog.beginProcessing(1000L,5000L);
+    assertEquals(0,watchdog.interruptExpired(5999L).size());
+    assertFalse(watchdog.isExpired());
+    assertFalse(watchdog.endProcessing());
+    assertFalse(Thread.currentThread().isInterrupted());
+    // Once processing is done, the deadline no longer applies
+    assertEquals(0,watchdog.interruptExpired(100000L).size());
+  }
+
+  @Test
+  public void overBudget()
+    throws Exception
+  {
+    ProcessingWatchdog watchdog = new ProcessingWatchdog();
+    watchdog.beginProcessing(1000L,5000L);
+    List<String> expired = watchdog.interruptExpired(6000L);
+    assertEquals(1,expired.size());
+    assertEquals(Thread.currentThread().getName(),expired.get(0));
+    assertTrue(Thread.currentThread().isInterrupted());
+    assertTrue(watchdog.isExpired());
+    // A thread is only reported once
+    assertEquals(0,watchdog.interruptExpired(7000L).size());
+    assertTrue(watchdog.endProcessing());
+    // The interruption is cleared
+    assertFalse(Thread.currentThread().isInterrupted());
+  }
+
+  @Test
+  public void otherInterruptionKept()
+    throws Exception
+  {
+    ProcessingWatchdog watchdog = new ProcessingWatchdog();
+    watchdog.beginProcessing(1000L,5000L);
+    // Not the watchdog's interruption, so it stays
+    Thread.currentThread().interrupt();
+    assertFalse(watchdog.endProcessing());
+    assertTrue(Thread.interrupted());
+  }
+
+  @Test
+  public void shutdownInterruptionKept()
+    throws Exception
+  {
+    ProcessingWatchdog watchdog = new ProcessingWatchdog();
+    watchdog.beginProcessing(1000L,5000L);
+    assertEquals(1,watchdog.interruptExpired(6000L).size());
+    // The agent shuts down while the expired set is still being processed
+    watchdog.noteShutdown();
+    Thread.currentThread().interrupt();
+    assertTrue(watchdog.endProcessing());
+    assertTrue(Thread.interrupted());
+  }
+
+  @Test
+  public void noBudget()
+    throws Exception
+  {
+    ProcessingWatchdog watchdog = new ProcessingWatchdog();
+    watchdog.beginProcessing(1000L,0L);
+    assertEquals(0,watchdog.interruptExpired(Long.MAX_VALUE).size());
+    assertFalse(watchdog.endProcessing());
+  }
+
+  @Test
+  public void quarantineDelayDoubles()
+    throws Exception
+  {
+    assertEquals(1000L,JobQueue.calculateQuarantineDelay(1,1000L,10000L));
+    assertEquals(2000L,JobQueue.calculateQuarantineDelay(2,1000L,10000L));
+    assertEquals(8000L,JobQueue.calculateQuarantineDelay(4,1000L,10000L));
+    assertEquals(10000L,JobQueue.calculateQuarantineDelay(5,1000L,10000L));
+    assertEquals(10000L,JobQueue.calculateQuarantineDelay(1000,1000L,10000L));
+  }
+
+}
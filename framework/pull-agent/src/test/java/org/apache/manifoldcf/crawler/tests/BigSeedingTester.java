@@ -0,0 +1,123 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.tests;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.agents.interfaces.*;
+import org.apache.manifoldcf.crawler.interfaces.*;
+import org.apache.manifoldcf.crawler.system.SeedingActivity;
+
+import java.io.*;
+import java.util.*;
+
+/** This is a load test of seeding.  It pushes a large number of seeds through the seeding path twice,
+* once to insert them into the queue, and once to update them, and reports how long each pass took.
+* The number of seeds may be set with the system property "manifoldcf.bigseeding.count".
+*/
+public class BigSeedingTester
+{
+  protected final static String seedCountProperty = "manifoldcf.bigseeding.count";
+  protected final static String batchSizeProperty = "manifoldcf.bigseeding.batchsize";
+
+  protected final ManifoldCFInstance instance;
+  
+  public BigSeedingTester(ManifoldCFInstance instance)
+  {
+    this.instance = instance;
+  }
+  
+  public void executeTest()
+    throws Exception
+  {
+    int seedCount = Integer.parseInt(System.getProperty(seedCountProperty,"10000000"));
+    int batchSize = Integer.parseInt(System.getProperty(batchSizeProperty,"1000"));
+    
+    IThreadContext tc = ThreadContextFactory.make();
+      
+    // Create a basic repository connection, and save it.
+    IRepositoryConnectionManager mgr = RepositoryConnectionManagerFactory.make(tc);
+    IRepositoryConnection conn = mgr.create();
+    conn.setName("BigSeeding Connection");
+    conn.setDescription("BigSeeding Connection");
+    conn.setClassName("org.apache.manifoldcf.crawler.tests.TestingRepositoryConnector");
+    conn.setMaxConnections(10);
+    // Now, save
+    mgr.save(conn);
+      
+    // Create a basic null output connection, and save it.
+    IOutputConnectionManager outputMgr = OutputConnectionManagerFactory.make(tc);
+    IOutputConnection outputConn = outputMgr.create();
+    outputConn.setName("Null Connection");
+    outputConn.setDescription("Null Connection");
+    outputConn.setClassName("org.apache.manifoldcf.agents.tests.TestingOutputConnector");
+    outputConn.setMaxConnections(10);
+    // Now, save
+    outputMgr.save(outputConn);
+
+    // Create a job.
+    IJobManager jobManager = JobManagerFactory.make(tc);
+    IJobDescription job = jobManager.createJob();
+    job.setDescription("Test Job");
+    job.setConnectionName("BigSeeding Connection");
+    job.addPipelineStage(-1,true,"Null Connection","");
+    job.setType(job.TYPE_SPECIFIED);
+    job.setStartMethod(job.START_DISABLE);
+    job.setHopcountMode(job.HOPCOUNT_ACCURATE);
+      
+    // Save the job.
+    jobManager.save(job);
+
+    IReprioritizationTracker rt = ReprioritizationTrackerFactory.make(tc);
+    IRepositoryConnector connector = new TestingRepositoryConnector();
+
+    // First pass inserts every seed; second pass finds every seed already present.
+    long insertTime = seedPass(mgr,jobManager,rt,conn,connector,job.getID(),seedCount,batchSize);
+    System.out.println("Seeding "+seedCount+" new documents took "+insertTime+" milliseconds ("+rate(seedCount,insertTime)+" seeds/second)");
+    long updateTime = seedPass(mgr,jobManager,rt,conn,connector,job.getID(),seedCount,batchSize);
+    System.out.println("Reseeding "+seedCount+" existing documents took "+updateTime+" milliseconds ("+rate(seedCount,updateTime)+" seeds/second)");
+
+    // Now, delete the job.  The seeded documents were never processed, so this goes quickly.
+    jobManager.deleteJob(job.getID());
+    instance.waitJobDeletedNative(jobManager,job.getID(),1200000L);
+  }
+  
+  protected static long seedPass(IRepositoryConnectionManager mgr, IJobManager jobManager, IReprioritizationTracker rt,
+    IRepositoryConnection conn, IRepositoryConnector connector, Long jobID, int seedCount, int batchSize)
+    throws Exception
+  {
+    long startTime = System.currentTimeMillis();
+    SeedingActivity activity = new SeedingActivity(conn.getName(),mgr,jobManager,rt,conn,connector,jobID,
+      new String[0],true,IJobDescription.HOPCOUNT_ACCURATE,"A",batchSize);
+    int i = 0;
+    while (i < seedCount)
+    {
+      activity.addSeedDocument("http://www.example.com/document/"+i);
+      i++;
+    }
+    activity.doneSeeding(false);
+    return System.currentTimeMillis() - startTime;
+  }
+  
+  protected static long rate(int count, long elapsedTime)
+  {
+    if (elapsedTime == 0L)
+      return 0L;
+    return ((long)count) * 1000L / elapsedTime;
+  }
+}
@@ -0,0 +1,130 @@
+/* $Id$ */
+
+/**
+* Licensed to the Apache Software Foundation (ASF) under one or more
+* contributor license agreements. See the NOTICE file distributed with
+* this work for additional information regarding copyright ownership.
+* The ASF licenses this file to You under the Apache License, Version 2.0
+* (the "License"); you may not use this file except in compliance with
+* the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.manifoldcf.crawler.tests;
+
+import org.apache.manifoldcf.core.interfaces.*;
+import org.apache.manifoldcf.agents.interfaces.*;
+import org.apache.manifoldcf.crawler.interfaces.*;
+import org.apache.manifoldcf.crawler.system.ManifoldCF;
+
+import java.io.*;
+import java.util.*;
+
+/** This is a test whether a document that runs past the job's processing budget is quarantined */
+public class QuarantineTester
+{
+  protected final ManifoldCFInstance instance;
+  
+  public QuarantineTester(ManifoldCFInstance instance)
+  {
+    this.instance = instance;
+  }
+  
+  public void executeTest()
+    throws Exception
+  {
+    instance.start();
+    
+    IThreadContext tc = ThreadContextFactory.make();
+      
+    IRepositoryConnectionManager mgr = RepositoryConnectionManagerFactory.make(tc);
+    IRepositoryConnection conn = mgr.create();
+    conn.setName("QuarantineTest Connection");
+    conn.setDescription("QuarantineTest Connection");
+    conn.setClassName("org.apache.manifoldcf.crawler.tests.QuarantineRepositoryConnector");
+    conn.setMaxConnections(100);
+    mgr.save(conn);
+      
+    IOutputConnectionManager outputMgr = OutputConnectionManagerFactory.make(tc);
+    IOutputConnection outputConn = outputMgr.create();
+    outputConn.setName("Null Connection");
+    outputConn.setDescription("Null Connection");
+    outputConn.setClassName("org.apache.manifoldcf.agents.tests.TestingOutputConnector");
+    outputConn.setMaxConnections(100);
+    outputMgr.save(outputConn);
+
+    // Create a job with a short processing budget.
+    IJobManager jobManager = JobManagerFactory.make(tc);
+    IJobDescription job = jobManager.createJob();
+    job.setDescription("Test Job");
+    job.setConnectionName("QuarantineTest Connection");
+    job.addPipelineStage(-1,true,"Null Connection","");
+    job.setType(job.TYPE_SPECIFIED);
+    job.setStartMethod(job.START_DISABLE);
+    job.setHopcountMode(job.HOPCOUNT_ACCURATE);
+    job.setProcessingBudget(new Long(2000L));
+    jobManager.save(job);
+
+    jobManager.manualStart(job.getID());
+    instance.waitJobRunningNative(jobManager,job.getID(),30000L);
+
+    // The watchdog should interrupt the slow document, and the worker thread should quarantine it.
+    waitDocumentStatus(jobManager,job.getID(),IJobManager.DOCSTATUS_QUARANTINED,60000L);
+    
+    // A quarantined document is not also waiting for processing.
+    if (countDocuments(jobManager,job.getID(),IJobManager.DOCSTATUS_WAITINGFORPROCESSING) != 0)
+      throw new Exception("Quarantined document also reported as waiting for processing");
+    IResultSet set = jobManager.genDocumentStatus("QuarantineTest Connection",
+      makeCriteria(job.getID(),IJobManager.DOCSTATUS_QUARANTINED),new SortOrder(),0,10);
+    // Some databases pad the status to the longest one
+    String status = ((String)set.getRow(0).getValue("status")).trim();
+    if (!"Quarantined".equals(status))
+      throw new Exception("Expected status 'Quarantined', saw '"+status+"'");
+    // The document is held back rather than finished, so the job keeps running.
+    JobStatus jobStatus = jobManager.getStatus(job.getID());
+    if (jobStatus.getStatus() != JobStatus.JOBSTATUS_RUNNING)
+      throw new Exception("Expected the job to still be running, saw status "+jobStatus.getStatus());
+    if (jobStatus.getDocumentsOutstanding() != 1)
+      throw new Exception("Expected 1 outstanding document, saw "+jobStatus.getDocumentsOutstanding());
+
+    // The quarantined document would not come back for a long time, so abort the job.
+    jobManager.manualAbort(job.getID());
+    instance.waitJobInactiveNative(jobManager,job.getID(),60000L);
+
+    jobManager.deleteJob(job.getID());
+    instance.waitJobDeletedNative(jobManager,job.getID(),60000L);
+
+    instance.stop();
+  }
+
+  protected static StatusFilterCriteria makeCriteria(Long jobID, int docStatus)
+  {
+    return new StatusFilterCriteria(new Long[]{jobID},System.currentTimeMillis(),null,
+      new int[]{IJobManager.DOCSTATE_NEVERPROCESSED,IJobManager.DOCSTATE_PREVIOUSLYPROCESSED},new int[]{docStatus});
+  }
+
+  protected static int countDocuments(IJobManager jobManager, Long jobID, int docStatus)
+    throws ManifoldCFException
+  {
+    return jobManager.genDocumentStatus("QuarantineTest Connection",makeCriteria(jobID,docStatus),new SortOrder(),0,10).getRowCount();
+  }
+
+  protected static void waitDocumentStatus(IJobManager jobManager, Long jobID, int docStatus, long maxTime)
+    throws Exception
+  {
+    long startTime = System.currentTimeMillis();
+    while (System.currentTimeMillis() < startTime + maxTime)
+    {
+      if (countDocuments(jobManager,jobID,docStatus) > 0)
+        return;
+      ManifoldCF.sleep(1000L);
+    }
+    throw new ManifoldCFException("Document status "+docStatus+" never seen");
+  }
+}